@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2020 The SureThing project
+ * @author João Tiago <joao.marques.tiago@tecnico.ulisboa.pt>
+ * http://surething.tecnico.ulisboa.pt/en/
+ */
+
+package pt.ulisboa.tecnico.surespace.common.connection;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of channels to the instances of a service. Instance <code>i</code> is expected to listen on
+ * <code>port + i</code>, which is how servers started with consecutive {@link
+ * ServerInitializer#getId()} values pick their ports. Channels are handed out in round-robin.
+ */
+public final class ChannelPool implements AutoCloseable {
+  private static final int MAX_ATTEMPTS = 3;
+  private final ArrayList<ManagedChannel> channels;
+  private final AtomicInteger next = new AtomicInteger();
+
+  public ChannelPool(String host, int port, int instances, String serviceName) {
+    if (instances <= 0)
+      throw new IllegalArgumentException("Invalid instances '" + instances + "': must be positive");
+
+    Map<String, ?> serviceConfig = serviceConfig(serviceName);
+    channels = new ArrayList<>(instances);
+
+    for (int i = 0; i < instances; i++) {
+      channels.add(
+          ManagedChannelBuilder.forAddress(host, port + i)
+              .usePlaintext()
+              .defaultServiceConfig(serviceConfig)
+              .enableRetry()
+              .maxRetryAttempts(MAX_ATTEMPTS)
+              .maxHedgedAttempts(MAX_ATTEMPTS)
+              .build());
+    }
+  }
+
+  /**
+   * Signed requests carry a nonce, so they are only retried when they never reached the server.
+   * Pings are idempotent and can therefore be hedged.
+   */
+  private static Map<String, ?> serviceConfig(String serviceName) {
+    Map<String, ?> retryPolicy =
+        Map.of(
+            "maxAttempts", (double) MAX_ATTEMPTS,
+            "initialBackoff", "0.1s",
+            "maxBackoff", "1s",
+            "backoffMultiplier", 2.0,
+            "retryableStatusCodes", List.of("UNAVAILABLE"));
+
+    Map<String, ?> hedgingPolicy =
+        Map.of(
+            "maxAttempts", (double) MAX_ATTEMPTS,
+            "hedgingDelay", "0.5s",
+            "nonFatalStatusCodes", List.of("UNAVAILABLE"));
+
+    Map<String, ?> pingConfig =
+        Map.of(
+            "name", List.of(Map.of("service", serviceName, "method", "Ping")),
+            "hedgingPolicy", hedgingPolicy);
+
+    Map<String, ?> defaultConfig =
+        Map.of("name", List.of(Map.of("service", serviceName)), "retryPolicy", retryPolicy);
+
+    return Map.of("methodConfig", List.of(pingConfig, defaultConfig));
+  }
+
+  @Override
+  public void close() {
+    for (ManagedChannel channel : channels) channel.shutdownNow();
+  }
+
+  public ManagedChannel get(int instance) {
+    return channels.get(instance);
+  }
+
+  public ManagedChannel next() {
+    return channels.get(Math.floorMod(next.getAndIncrement(), channels.size()));
+  }
+
+  public int size() {
+    return channels.size();
+  }
+}
@@ -6,20 +6,115 @@
 
 package pt.ulisboa.tecnico.surespace.common.connection;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.ManagedChannel;
+import io.grpc.StatusRuntimeException;
+import pt.ulisboa.tecnico.surespace.common.async.AsyncListener;
 import pt.ulisboa.tecnico.surespace.common.exception.BroadException;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
 public abstract class Client<ClientException extends BroadException> implements AutoCloseable {
   protected static final long TIMEOUT = 3000;
+  private final ChannelPool channels;
+  private final Function<String, ClientException> exceptionFactory;
+  private final Class<ClientException> exceptionType;
   private final String host;
   private final int port;
 
-  protected Client(final String host, final int port) {
+  protected Client(
+      final String host,
+      final int port,
+      final int instances,
+      final String serviceName,
+      final Class<ClientException> exceptionType,
+      final Function<String, ClientException> exceptionFactory) {
     this.host = host;
     this.port = port;
+    this.channels = new ChannelPool(host, port, instances, serviceName);
+    this.exceptionType = exceptionType;
+    this.exceptionFactory = exceptionFactory;
+  }
+
+  /** Blocks until an asynchronous call completes, without holding any thread while it is sent. */
+  protected final <Result> Result await(CompletableFuture<Result> future) throws ClientException {
+    try {
+      return future.get();
+
+    } catch (ExecutionException e) {
+      throw exceptionFromThrowable(e.getCause());
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw exceptionFromThrowable(e);
+    }
+  }
+
+  /** Adapts a gRPC future into a {@link CompletableFuture} failing with a client exception. */
+  protected final <Response, Result> CompletableFuture<Result> call(
+      ListenableFuture<Response> call, Function<Response, Result> adapter) {
+    CompletableFuture<Result> future = new CompletableFuture<>();
+    Futures.addCallback(
+        call,
+        new FutureCallback<>() {
+          @Override
+          public void onFailure(Throwable throwable) {
+            future.completeExceptionally(exceptionFromThrowable(throwable));
+          }
+
+          @Override
+          public void onSuccess(Response response) {
+            try {
+              future.complete(adapter.apply(response));
+
+            } catch (RuntimeException e) {
+              future.completeExceptionally(exceptionFromThrowable(e));
+            }
+          }
+        },
+        directExecutor());
+
+    // Cancelling the returned future cancels the RPC as well.
+    future.whenComplete(
+        (result, throwable) -> {
+          if (future.isCancelled()) call.cancel(true);
+        });
+
+    return future;
+  }
+
+  protected final ChannelPool channels() {
+    return channels;
   }
 
   @Override
-  public abstract void close();
+  public void close() {
+    channels.close();
+  }
+
+  /**
+   * Converts any failure of a call into a client exception. Client exceptions are returned
+   * unchanged, since they may be handed back by {@link #await(CompletableFuture)}.
+   */
+  protected final ClientException exceptionFromThrowable(Throwable throwable) {
+    if (throwable instanceof CompletionException && throwable.getCause() != null)
+      return exceptionFromThrowable(throwable.getCause());
+
+    if (exceptionType.isInstance(throwable)) return exceptionType.cast(throwable);
+
+    if (throwable instanceof StatusRuntimeException)
+      return exceptionFactory.apply(
+          ((StatusRuntimeException) throwable).getStatus().getDescription());
+
+    return exceptionFactory.apply(throwable.getMessage());
+  }
 
   public String getHost() {
     return host;
@@ -29,5 +124,18 @@ public abstract class Client<ClientException extends BroadException> implements
     return port;
   }
 
+  protected final ManagedChannel nextChannel() {
+    return channels.next();
+  }
+
+  protected final <Result> void listen(
+      CompletableFuture<Result> future, AsyncListener<Result, ClientException> listener) {
+    future.whenComplete(
+        (result, throwable) -> {
+          if (throwable == null) listener.onComplete(result);
+          else listener.onError(exceptionFromThrowable(throwable));
+        });
+  }
+
   public abstract void ping() throws ClientException;
 }
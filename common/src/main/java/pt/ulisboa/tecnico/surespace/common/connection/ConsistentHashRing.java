@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2020 The SureThing project
+ * @author João Tiago <joao.marques.tiago@tecnico.ulisboa.pt>
+ * http://surething.tecnico.ulisboa.pt/en/
+ */
+
+package pt.ulisboa.tecnico.surespace.common.connection;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Consistent hashing of keys onto the instances of a service, identified as in {@link
+ * ServerInitializer#getId()}, from 1 to the number of instances. Every instance is placed on the
+ * ring several times so that keys spread evenly even with few instances.
+ */
+public final class ConsistentHashRing {
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+  private static final int VIRTUAL_NODES = 64;
+  private final int instances;
+  private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+  public ConsistentHashRing(int instances) {
+    if (instances <= 0)
+      throw new IllegalArgumentException("Invalid instances '" + instances + "': must be positive");
+
+    this.instances = instances;
+    for (int id = 1; id <= instances; id++) {
+      for (int node = 0; node < VIRTUAL_NODES; node++) ring.put(hash(id + "#" + node), id);
+    }
+  }
+
+  private static long hash(String key) {
+    return HASH_FUNCTION.hashString(key, UTF_8).asLong();
+  }
+
+  public int getInstances() {
+    return instances;
+  }
+
+  /** @return the identifier of the instance responsible for the key. */
+  public int instanceOf(String key) {
+    if (instances == 1) return 1;
+
+    Map.Entry<Long, Integer> entry = ring.ceilingEntry(hash(key));
+    return entry == null ? ring.firstEntry().getValue() : entry.getValue();
+  }
+}
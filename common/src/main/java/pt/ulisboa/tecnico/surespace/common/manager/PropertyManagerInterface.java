@@ -34,6 +34,10 @@ public interface PropertyManagerInterface extends ManagerInterface<PropertyManag
       this.value = value;
     }
 
+    public boolean asBoolean() {
+      return Boolean.parseBoolean(asString());
+    }
+
     public char[] asCharArray() {
       return asString().toCharArray();
     }
@@ -0,0 +1,153 @@
+package org.ds2os.vsl.agentregistry;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+
+/**
+ * Queue of the agents on the lists of the {@link AgentRegistryService}, ordered by the time they
+ * were last seen. Finding the stale agents only visits the head of the queue instead of all
+ * agents. An agent is queued once with the timestamp it had when it was queued, newer timestamps
+ * are only recorded and the agent is queued again with them when it reaches the head. The class
+ * isn't thread safe.
+ */
+final class AgentDeadlines {
+
+    /**
+     * The timestamp each agent was last seen by its list path and ID.
+     */
+    private final Map<String, Long> lastSeen;
+
+    /**
+     * The current deadline of each agent by its list path and ID. Deadlines in the queue that
+     * aren't in this map are outdated.
+     */
+    private final Map<String, Deadline> queued;
+
+    /**
+     * The deadlines, the oldest first.
+     */
+    private final PriorityQueue<Deadline> deadlines;
+
+    /**
+     * Constructor.
+     */
+    AgentDeadlines() {
+        lastSeen = new HashMap<String, Long>();
+        queued = new HashMap<String, Deadline>();
+        deadlines = new PriorityQueue<Deadline>();
+    }
+
+    /**
+     * Records the time an agent was seen.
+     *
+     * @param listPath
+     *            The path of the list the agent is on.
+     * @param agentID
+     *            The ID of the agent.
+     * @param timestamp
+     *            The time the agent was seen.
+     */
+    void touch(final String listPath, final String agentID, final long timestamp) {
+        final String key = listPath + "/" + agentID;
+        lastSeen.put(key, timestamp);
+        final Deadline current = queued.get(key);
+        // an earlier timestamp must be queued again, the queued one would expire too late.
+        if (current == null || timestamp < current.timestamp) {
+            final Deadline deadline = new Deadline(listPath, agentID, timestamp);
+            queued.put(key, deadline);
+            deadlines.add(deadline);
+        }
+    }
+
+    /**
+     * Forgets an agent that was removed from a list.
+     *
+     * @param listPath
+     *            The path of the list the agent was on.
+     * @param agentID
+     *            The ID of the agent.
+     */
+    void remove(final String listPath, final String agentID) {
+        final String key = listPath + "/" + agentID;
+        lastSeen.remove(key);
+        queued.remove(key);
+    }
+
+    /**
+     * Removes and returns the agents that weren't seen since the given time. Agents seen since
+     * then are queued again with the time they were last seen.
+     *
+     * @param cutoff
+     *            Agents last seen before this time are stale.
+     * @return The list paths and IDs of the stale agents.
+     */
+    List<Entry<String, String>> pollStale(final long cutoff) {
+        final List<Entry<String, String>> stale = new ArrayList<Entry<String, String>>();
+        while (!deadlines.isEmpty() && deadlines.peek().timestamp < cutoff) {
+            final Deadline deadline = deadlines.poll();
+            final String key = deadline.listPath + "/" + deadline.agentID;
+            if (queued.get(key) != deadline) {
+                continue;
+            }
+            final long seen = lastSeen.get(key);
+            if (seen < cutoff) {
+                lastSeen.remove(key);
+                queued.remove(key);
+                stale.add(new SimpleImmutableEntry<String, String>(deadline.listPath,
+                        deadline.agentID));
+            } else {
+                final Deadline renewed = new Deadline(deadline.listPath, deadline.agentID, seen);
+                queued.put(key, renewed);
+                deadlines.add(renewed);
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * The deadline of an agent in the queue.
+     */
+    private static final class Deadline implements Comparable<Deadline> {
+
+        /**
+         * The path of the list the agent is on.
+         */
+        private final String listPath;
+
+        /**
+         * The ID of the agent.
+         */
+        private final String agentID;
+
+        /**
+         * The time the agent was seen when it was queued.
+         */
+        private final long timestamp;
+
+        /**
+         * Constructor.
+         *
+         * @param listPath
+         *            The path of the list the agent is on.
+         * @param agentID
+         *            The ID of the agent.
+         * @param timestamp
+         *            The time the agent was seen.
+         */
+        Deadline(final String listPath, final String agentID, final long timestamp) {
+            this.listPath = listPath;
+            this.agentID = agentID;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public int compareTo(final Deadline other) {
+            return timestamp < other.timestamp ? -1 : timestamp == other.timestamp ? 0 : 1;
+        }
+    }
+}
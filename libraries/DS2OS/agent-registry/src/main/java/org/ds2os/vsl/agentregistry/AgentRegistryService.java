@@ -8,10 +8,13 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.ds2os.vsl.agentregistry.cryptography.SymmetricKeyStore;
 import org.ds2os.vsl.core.AbstractVslModule;
+import org.ds2os.vsl.core.VslAgentRegistryListener;
 import org.ds2os.vsl.core.VslAgentRegistryService;
 import org.ds2os.vsl.core.VslAlivePing;
 import org.ds2os.vsl.core.VslConnector;
@@ -33,7 +36,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Class for storing and accessing AlivePing and GroupKey information in the KOR.
+ * Class for storing and accessing AlivePing and GroupKey information in the KOR. The transports of
+ * the known agents are additionally kept in an immutable {@link RoutingTable} that is replaced as a
+ * whole on changes, so looking up the transports of an agent never waits for the processing of
+ * alive pings. Stale agents are found with {@link AgentDeadlines}.
  *
  * @author jay
  * @author Johannes Straßer
@@ -92,6 +98,23 @@ public class AgentRegistryService extends AbstractVslModule implements VslAgentR
      */
     private final AgentRegistryCleaner agentRegistryCleaner;
 
+    /**
+     * The listeners informed about changed and removed agents.
+     */
+    private final List<VslAgentRegistryListener> listeners =
+            new CopyOnWriteArrayList<VslAgentRegistryListener>();
+
+    /**
+     * The current snapshot of the transports of the known agents. Only replaced while holding the
+     * lock of this service, read without locking.
+     */
+    private volatile RoutingTable routingTable = RoutingTable.EMPTY;
+
+    /**
+     * The times the agents on the lists were last seen. Guarded by the lock of this service.
+     */
+    private final AgentDeadlines agentDeadlines = new AgentDeadlines();
+
     /**
      * Service manifest object. At the moment, created dummy instance. TODO Use real manifest when
      * available
@@ -150,9 +173,73 @@ public class AgentRegistryService extends AbstractVslModule implements VslAgentR
             LOGGER.error("The virtual node at {} could not be registered: {}",
                     servicePath + "/newGroupKey", e.getMessage());
         }
+        loadAgents();
         agentRegistryCleaner.start();
     }
 
+    /**
+     * Fills the {@link #routingTable} and the {@link #agentDeadlines} with the agents already
+     * stored in the KOR, e.g. before a restart.
+     */
+    private synchronized void loadAgents() {
+        RoutingTable loaded = RoutingTable.EMPTY;
+        for (final String listPath : new String[] { connectedKAPath, unConnectedKAPath }) {
+            try {
+                final VslNode list = connector.get(listPath, new AddressParameters().withDepth(-1));
+                for (final String agent : list.getChild("elements").getValue().split(";")) {
+                    if (agent.isEmpty()) {
+                        continue;
+                    }
+                    loaded = loaded.withTransports(listPath.equals(connectedKAPath), agent,
+                            readTransports(list.getChild(agent + "/supportedTransports")));
+                    long timestamp;
+                    try {
+                        timestamp = Long.parseLong(list.getChild(agent + "/timestamp").getValue());
+                    } catch (final NumberFormatException e) {
+                        // purged by the next cleanup.
+                        timestamp = 0L;
+                    }
+                    agentDeadlines.touch(listPath, agent, timestamp);
+                }
+            } catch (final VslException e) {
+                LOGGER.error("Could not load the agents of list {}: {}", listPath, e.getMessage());
+            }
+        }
+        routingTable = loaded;
+    }
+
+    /**
+     * Reads the transports of an agent from its supportedTransports list.
+     *
+     * @param transports
+     *            The supportedTransports node of the agent, including its children.
+     * @return The transports.
+     */
+    private Set<VslTransportConnector> readTransports(final VslNode transports) {
+        final Set<VslTransportConnector> connectors = new HashSet<VslTransportConnector>();
+        final String elements = transports.getChild("elements").getValue();
+        if (!elements.equals("")) {
+            for (final String transport : elements.split(";")) {
+                connectors.add(new TransportConnector(transports.getChild(transport).getValue()));
+            }
+        }
+        return connectors;
+    }
+
+    /**
+     * Removes an agent from the {@link #routingTable} and the {@link #agentDeadlines} after it was
+     * removed from a list. Must be called while holding the lock of this service.
+     *
+     * @param listPath
+     *            The path of the list the agent was removed from.
+     * @param agentID
+     *            The ID of the agent.
+     */
+    private void forgetAgent(final String listPath, final String agentID) {
+        agentDeadlines.remove(listPath, agentID);
+        routingTable = routingTable.without(listPath.equals(connectedKAPath), agentID);
+    }
+
     @Override
     public final void shutdown() {
         /*
@@ -250,46 +337,18 @@ public class AgentRegistryService extends AbstractVslModule implements VslAgentR
     }
 
     @Override
-    public final synchronized HashSet<VslTransportConnector> getTransports(final String agentID) {
-        final HashSet<VslTransportConnector> connectors = new HashSet<VslTransportConnector>();
-        VslNode transports = null;
-        try {
-            // Try to get transports from unconnected list
-            transports = connector.get(unConnectedKAPath + "/" + agentID + "/supportedTransports",
-                    new AddressParameters().withDepth(1));
-        } catch (final NodeNotExistingException e) {
-            try {
-                // Try to get transports from connected list
-                transports = connector.get(connectedKAPath + "/" + agentID + "/supportedTransports",
-                        new AddressParameters().withDepth(1));
-            } catch (final NodeNotExistingException e1) {
-                LOGGER.debug("Could not get transports of agent {} with address {}: {}", agentID,
-                        connectedKAPath + "/" + agentID + "/supportedTransports", e1.getMessage());
-            } catch (final VslException e1) {
-                LOGGER.error("Could not read transports from " + connectedKAPath + "/" + agentID
-                        + ": {}", e1.getMessage());
-            }
-        } catch (final VslException e) {
-            LOGGER.error(
-                    "Could not read transports from " + unConnectedKAPath + "/" + agentID + ": {}",
-                    e.getMessage());
+    public final HashSet<VslTransportConnector> getTransports(final String agentID) {
+        // reads the current snapshot, so the request path isn't delayed by alive pings.
+        final Set<VslTransportConnector> transports = routingTable.getTransports(agentID);
+        if (transports == null) {
+            LOGGER.debug("Could not get transports of unknown agent {}", agentID);
+            return new HashSet<VslTransportConnector>();
         }
-
-        if (transports != null) {
-            final String elements = transports.getChild("elements").getValue();
-            if (!elements.equals("")) {
-                for (final String transport : elements.split(";")) {
-                    connectors
-                            .add(new TransportConnector(transports.getChild(transport).getValue()));
-                }
-            }
-        }
-        return connectors;
+        return new HashSet<VslTransportConnector>(transports);
     }
 
     @Override
-    public final synchronized String getAttribute(final String agentID,
-            final String attributeName) {
+    public final String getAttribute(final String agentID, final String attributeName) {
         String attribute = null;
         try {
             // Try to get transports from unconnected list
@@ -372,6 +431,30 @@ public class AgentRegistryService extends AbstractVslModule implements VslAgentR
                     nodefactory.createMutableNode(Integer.toString(receivedPing.getNumKAs())));
 
             connector.set(rootNode, alivePingData);
+            agentDeadlines.touch(listPath, receivedPing.getAgentId(), timestamp.getTime());
+
+            final Collection<VslTransportConnector> connectors = receivedPing.getTransports();
+            final Set<String> urlSet = new HashSet<String>(connectors.size());
+            final Iterator<VslTransportConnector> connIterator = connectors.iterator();
+            while (connIterator.hasNext()) {
+                urlSet.add(connIterator.next().getURL());
+            }
+
+            // the stored transports only need to be compared if they changed since the last ping.
+            final boolean connectedList = listPath.equals(connectedKAPath);
+            final Set<VslTransportConnector> knownTransports = routingTable
+                    .getTransports(connectedList, receivedPing.getAgentId());
+            if (knownTransports != null) {
+                final Set<String> knownURLs = new HashSet<String>(knownTransports.size());
+                for (final VslTransportConnector knownTransport : knownTransports) {
+                    knownURLs.add(knownTransport.getURL());
+                }
+                if (knownURLs.equals(urlSet)) {
+                    LOGGER.debug("Successfully stored AlivePing in the list: " + listPath);
+                    return;
+                }
+            }
+
             /*
              * Update transport information
              */
@@ -387,13 +470,6 @@ public class AgentRegistryService extends AbstractVslModule implements VslAgentR
                 }
             }
 
-            final Collection<VslTransportConnector> connectors = receivedPing.getTransports();
-            final Set<String> urlSet = new HashSet<String>(connectors.size());
-            final Iterator<VslTransportConnector> connIterator = connectors.iterator();
-            while (connIterator.hasNext()) {
-                urlSet.add(connIterator.next().getURL());
-            }
-
             // Compare received values with stored ones
             final Set<String> urlsToAdd = new HashSet<String>(urlSet);
             final Set<String> urlsToDelete = new HashSet<String>();
@@ -425,6 +501,11 @@ public class AgentRegistryService extends AbstractVslModule implements VslAgentR
                 connector.get(rootNode + "/supportedTransports" + "/del/"
                         + storedTransports.get(valueToDelete));
             }
+            routingTable = routingTable.withTransports(connectedList, receivedPing.getAgentId(),
+                    connectors);
+            if (!urlsToAdd.isEmpty() || !urlsToDelete.isEmpty()) {
+                fireAgentTransportsChanged(receivedPing.getAgentId());
+            }
 
             /*
              * Check Size (removed for performance, assuming the operations went well. Otherwise the
@@ -486,6 +567,7 @@ public class AgentRegistryService extends AbstractVslModule implements VslAgentR
         // Try to remove agent from unconnected list
         try {
             connector.get(this.unConnectedKAPath + "/del/" + agentID);
+            forgetAgent(unConnectedKAPath, agentID);
         } catch (final VslException e) {
             LOGGER.debug("Generic VslException occurred while removing an AgentRecord"
                     + " from the unconnected KA list. Error message: {}", e.getMessage());
@@ -530,6 +612,13 @@ public class AgentRegistryService extends AbstractVslModule implements VslAgentR
             node.putChild("certificateExpiration",
                     nodefactory.createMutableNode(certificateExpiration.toString()));
             connector.set(listPath + "/" + agentID, node);
+            agentDeadlines.touch(listPath, agentID, timestamp.getTime());
+            final boolean connectedList = listPath.equals(connectedKAPath);
+            if (routingTable.getTransports(connectedList, agentID) == null) {
+                routingTable = routingTable.withTransports(connectedList, agentID,
+                        readTransports(connector.get(listPath + "/" + agentID
+                                + "/supportedTransports", new AddressParameters().withDepth(1))));
+            }
         } catch (final NodeNotExistingException e) {
             LOGGER.debug("Failed to update an agentRecord on the list {}"
                     + " due to the record not existing: {} ", listPath, e.getMessage());
@@ -691,30 +780,20 @@ public class AgentRegistryService extends AbstractVslModule implements VslAgentR
 
     @Override
     public final synchronized void cleanStaleAgents(final long timeout) {
-        final Date cutoff = new Date(System.currentTimeMillis() - timeout);
-        for (final String listType : new String[] { connectedKAPath, unConnectedKAPath }) {
-            VslNode listRoot;
+        final long cutoff = System.currentTimeMillis() - timeout;
+        for (final Entry<String, String> stale : agentDeadlines.pollStale(cutoff)) {
+            final String listType = stale.getKey();
+            final String agent = stale.getValue();
             try {
-                listRoot = connector.get(listType, new AddressParameters().withDepth(2));
-                final String[] agents = listRoot.getChild("elements").getValue().split(";");
-                for (final String agent : agents) {
-                    if (agent.isEmpty()) {
-                        continue;
-                    }
-                    if (new Date(Long.decode(listRoot.getChild(agent + "/timestamp").getValue()))
-                            .before(cutoff)) {
-                        try {
-                            connector.get(listType + "/del/" + agent);
-
-                            LOGGER.debug("Purging stale agent {}", agent);
-                        } catch (final VslException e) {
-                            LOGGER.error("Could not delete element {} from list {}: {}", agent,
-                                    listType, e);
-                        }
-                    }
-                }
+                connector.get(listType + "/del/" + agent);
+
+                LOGGER.debug("Purging stale agent {}", agent);
+                routingTable = routingTable.without(listType.equals(connectedKAPath), agent);
+                fireAgentRemoved(agent);
             } catch (final VslException e) {
-                LOGGER.error("Could not get elements of list {}: {}", listType, e);
+                LOGGER.error("Could not delete element {} from list {}: {}", agent, listType, e);
+                // still stale on the next run, so the deletion is retried.
+                agentDeadlines.touch(listType, agent, cutoff);
             }
         }
 
@@ -730,7 +809,7 @@ public class AgentRegistryService extends AbstractVslModule implements VslAgentR
     }
 
     @Override
-    public final void cleanDoubleConnectedAgents() {
+    public final synchronized void cleanDoubleConnectedAgents() {
         final List<String> connected = Arrays.asList(getConnectedAgentIds());
         final String[] unconnected = getUnConnectedAgentIds();
         for (int i = 0; i < unconnected.length; i++) {
@@ -738,6 +817,9 @@ public class AgentRegistryService extends AbstractVslModule implements VslAgentR
                 try {
                     LOGGER.error("Purging double stored agent {}", unconnected[i]);
                     connector.get(unConnectedKAPath + "/del/" + unconnected[i]);
+                    forgetAgent(unConnectedKAPath, unconnected[i]);
+                    // the transports are read from the connected list from now on.
+                    fireAgentTransportsChanged(unconnected[i]);
 
                 } catch (final VslException e) {
                     LOGGER.error("Could not delete element {} from list {}", unconnected[i],
@@ -747,4 +829,41 @@ public class AgentRegistryService extends AbstractVslModule implements VslAgentR
         }
 
     }
+
+    @Override
+    public final void addAgentRegistryListener(final VslAgentRegistryListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Informs all listeners that the stored transports of an agent changed.
+     *
+     * @param agentID
+     *            The ID of the agent.
+     */
+    private void fireAgentTransportsChanged(final String agentID) {
+        for (final VslAgentRegistryListener listener : listeners) {
+            try {
+                listener.agentTransportsChanged(agentID);
+            } catch (final RuntimeException e) {
+                LOGGER.error("Listener failed on changed transports of agent {}:", agentID, e);
+            }
+        }
+    }
+
+    /**
+     * Informs all listeners that an agent was removed.
+     *
+     * @param agentID
+     *            The ID of the agent.
+     */
+    private void fireAgentRemoved(final String agentID) {
+        for (final VslAgentRegistryListener listener : listeners) {
+            try {
+                listener.agentRemoved(agentID);
+            } catch (final RuntimeException e) {
+                LOGGER.error("Listener failed on removed agent {}:", agentID, e);
+            }
+        }
+    }
 }
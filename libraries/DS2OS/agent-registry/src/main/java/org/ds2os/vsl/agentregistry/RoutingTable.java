@@ -0,0 +1,124 @@
+package org.ds2os.vsl.agentregistry;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.ds2os.vsl.core.VslTransportConnector;
+
+/**
+ * Immutable snapshot of the transports of the agents on the connected and the unconnected list of
+ * the {@link AgentRegistryService}. Changes create a new snapshot, so readers never need a lock.
+ */
+final class RoutingTable {
+
+    /**
+     * The snapshot without any agents.
+     */
+    static final RoutingTable EMPTY = new RoutingTable(
+            Collections.<String, Set<VslTransportConnector>>emptyMap(),
+            Collections.<String, Set<VslTransportConnector>>emptyMap());
+
+    /**
+     * The transports of the agents on the connected list.
+     */
+    private final Map<String, Set<VslTransportConnector>> connected;
+
+    /**
+     * The transports of the agents on the unconnected list.
+     */
+    private final Map<String, Set<VslTransportConnector>> unconnected;
+
+    /**
+     * Constructor.
+     *
+     * @param connected
+     *            The transports of the agents on the connected list, not copied.
+     * @param unconnected
+     *            The transports of the agents on the unconnected list, not copied.
+     */
+    private RoutingTable(final Map<String, Set<VslTransportConnector>> connected,
+            final Map<String, Set<VslTransportConnector>> unconnected) {
+        this.connected = connected;
+        this.unconnected = unconnected;
+    }
+
+    /**
+     * Returns the transports of an agent. Like the agent registry, the unconnected list is
+     * checked first.
+     *
+     * @param agentID
+     *            The ID of the agent.
+     * @return The unmodifiable transports, null if the agent is on neither list.
+     */
+    Set<VslTransportConnector> getTransports(final String agentID) {
+        final Set<VslTransportConnector> transports = unconnected.get(agentID);
+        if (transports != null) {
+            return transports;
+        }
+        return connected.get(agentID);
+    }
+
+    /**
+     * Returns the transports of an agent on one of the lists.
+     *
+     * @param connectedList
+     *            True for the connected list, false for the unconnected list.
+     * @param agentID
+     *            The ID of the agent.
+     * @return The unmodifiable transports, null if the agent isn't on the list.
+     */
+    Set<VslTransportConnector> getTransports(final boolean connectedList, final String agentID) {
+        return (connectedList ? connected : unconnected).get(agentID);
+    }
+
+    /**
+     * Returns a snapshot in which the agent is on the given list with the given transports.
+     *
+     * @param connectedList
+     *            True for the connected list, false for the unconnected list.
+     * @param agentID
+     *            The ID of the agent.
+     * @param transports
+     *            The transports of the agent.
+     * @return The new snapshot.
+     */
+    RoutingTable withTransports(final boolean connectedList, final String agentID,
+            final Collection<VslTransportConnector> transports) {
+        final Map<String, Set<VslTransportConnector>> changed =
+                new HashMap<String, Set<VslTransportConnector>>(
+                        connectedList ? connected : unconnected);
+        changed.put(agentID,
+                Collections.unmodifiableSet(new HashSet<VslTransportConnector>(transports)));
+        final Map<String, Set<VslTransportConnector>> published = Collections
+                .unmodifiableMap(changed);
+        return connectedList ? new RoutingTable(published, unconnected)
+                : new RoutingTable(connected, published);
+    }
+
+    /**
+     * Returns a snapshot without the agent on the given list.
+     *
+     * @param connectedList
+     *            True for the connected list, false for the unconnected list.
+     * @param agentID
+     *            The ID of the agent.
+     * @return The new snapshot, this one if the agent wasn't on the list.
+     */
+    RoutingTable without(final boolean connectedList, final String agentID) {
+        if (getTransports(connectedList, agentID) == null) {
+            return this;
+        }
+        final Map<String, Set<VslTransportConnector>> changed =
+                new HashMap<String, Set<VslTransportConnector>>(
+                        connectedList ? connected : unconnected);
+        changed.remove(agentID);
+        final Map<String, Set<VslTransportConnector>> published = Collections
+                .unmodifiableMap(changed);
+        return connectedList ? new RoutingTable(published, unconnected)
+                : new RoutingTable(connected, published);
+    }
+}
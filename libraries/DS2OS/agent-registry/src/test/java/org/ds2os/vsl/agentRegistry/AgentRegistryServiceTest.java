@@ -516,6 +516,80 @@ public final class AgentRegistryServiceTest {
         assertThat(agentRegistry.isAgentConnected("KA3"), is(false));
     }
 
+    /**
+     * Test that getTransports() follows an agent from the unconnected to the connected list and
+     * forgets it once it was purged.
+     */
+    @Test
+    public void testTransportsFollowLists() {
+        final Date before = new Date(System.currentTimeMillis() - 20000);
+        final HashSet<VslTransportConnector> unconnected = new HashSet<VslTransportConnector>();
+        unconnected.add(new TransportConnector("https://168.192.10.4:5000"));
+        final HashSet<VslTransportConnector> connected = new HashSet<VslTransportConnector>();
+        connected.add(new TransportConnector("https://168.192.10.4:5000"));
+        connected.add(new TransportConnector("coap://www.example.com"));
+
+        assertThat(agentRegistry.getTransports("agent2").isEmpty(), is(true));
+        agentRegistry.addAgentToUnconnectedKAList("agent2", before);
+        agentRegistry.storeAlivePingToUnConnectedKAs(
+                new AlivePing("agent2", 2, "ca", unconnected, "groupID", "hash"), before);
+        assertThat(agentRegistry.getTransports("agent2").size(), is(1));
+        assertThat(compareConnectors(unconnected, agentRegistry.getTransports("agent2")),
+                is(true));
+
+        agentRegistry.addAgentToConnectedKAList("agent2", before, before);
+        agentRegistry.storeAlivePingToConnectedKAs(
+                new AlivePing("agent2", 2, "ca", connected, "groupID", "hash"), before);
+        assertThat(agentRegistry.getTransports("agent2").size(), is(2));
+        assertThat(compareConnectors(connected, agentRegistry.getTransports("agent2")),
+                is(true));
+
+        agentRegistry.cleanStaleAgents(10000);
+        assertThat(agentRegistry.getTransports("agent2").isEmpty(), is(true));
+    }
+
+    /**
+     * Test that a restarted AgentRegistryService serves the transports stored in the KOR.
+     */
+    @Test
+    public void testTransportsLoadedOnActivate() {
+        final Date now = new Date(System.currentTimeMillis());
+        final HashSet<VslTransportConnector> connectors = new HashSet<VslTransportConnector>();
+        connectors.add(new TransportConnector("https://168.192.10.4:5000"));
+        connectors.add(new TransportConnector("xmpp://20b3::1:5000"));
+        agentRegistry.addAgentToConnectedKAList("agent2", now, now);
+        agentRegistry.storeAlivePingToConnectedKAs(
+                new AlivePing("agent2", 2, "ca", connectors, "groupID", "hash"), now);
+
+        final AgentRegistryService restarted = new AgentRegistryService(
+                new RequestHandlerToConnectorBridge(kor, IDENTITY, new VslNodeFactoryImpl()),
+                new VslAgentRegistryConfig() {
+
+                    @Override
+                    public String getAgentName() {
+                        return "agent1";
+                    }
+
+                    @Override
+                    public long getAgentRegistryStalenessTime() {
+                        return 60000;
+                    }
+
+                    @Override
+                    public long getAgentRegistryCleanerInterval() {
+                        return 60000;
+                    }
+                });
+        restarted.activate();
+        try {
+            assertThat(restarted.getTransports("agent2").size(), is(2));
+            assertThat(compareConnectors(connectors, restarted.getTransports("agent2")),
+                    is(true));
+        } finally {
+            restarted.shutdown();
+        }
+    }
+
     /**
      * Compare two VslTransportConnector collections.
      *
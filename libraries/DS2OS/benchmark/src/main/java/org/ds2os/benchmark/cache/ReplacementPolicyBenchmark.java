@@ -0,0 +1,265 @@
+package org.ds2os.benchmark.cache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.ds2os.vsl.cache.metaCache.CachedNode;
+import org.ds2os.vsl.cache.replacement.ReplacementPolicies;
+import org.ds2os.vsl.cache.replacement.VslReplacementPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the latency of cache accesses with the scanning replacement methods of
+ * {@link ReplacementPolicies} and the constant time {@link VslReplacementPolicy} implementations.
+ * The accessed addresses follow a Zipf distribution and their values have different sizes. The hit
+ * rates of both are logged at the end of each trial.
+ */
+@Measurement(iterations = 10, time = 2)
+@Warmup(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 2)
+public class ReplacementPolicyBenchmark {
+
+    /**
+     * The SLF4J logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplacementPolicyBenchmark.class);
+
+    /**
+     * The number of distinct addresses that are accessed.
+     */
+    private static final int ADDRESSES = 10000;
+
+    /**
+     * The length of the precomputed access sequence, must be a power of two.
+     */
+    private static final int SEQUENCE_LENGTH = 1 << 16;
+
+    /**
+     * The skew of the Zipf distribution of the accesses.
+     */
+    private static final double SKEW = 0.99;
+
+    /**
+     * The maximum size of a cached value in bytes.
+     */
+    private static final int MAX_VALUE_SIZE = 256;
+
+    /**
+     * State class used for holding necessary state informations for all benchmarks.
+     */
+    @State(Scope.Thread)
+    public static class MyState {
+
+        /**
+         * The replacement policy, tinylfu has no scanning counterpart and falls back to rr there.
+         */
+        @Param({ ("fifo"), ("lru"), ("lfu"), ("rr"), ("tinylfu") })
+        private String policy;
+
+        /**
+         * The capacity of the cache in bytes.
+         */
+        @Param({ ("10000"), ("100000") })
+        private long capacity;
+
+        /**
+         * The precomputed sequence of accessed addresses.
+         */
+        private final String[] sequence = new String[SEQUENCE_LENGTH];
+
+        /**
+         * The sizes of the values of the addresses in the {@link #sequence} in bytes.
+         */
+        private final int[] valueSizes = new int[SEQUENCE_LENGTH];
+
+        /**
+         * The position of the next access in the {@link #sequence}.
+         */
+        private int position;
+
+        /**
+         * The cached nodes for the scanning replacement methods.
+         */
+        private Map<String, CachedNode> scannedNodes;
+
+        /**
+         * The total size of the {@link #scannedNodes} in bytes.
+         */
+        private long scannedSize;
+
+        /**
+         * The cached addresses for the constant time policy.
+         */
+        private Set<String> cachedAddresses;
+
+        /**
+         * The constant time policy.
+         */
+        private VslReplacementPolicy replacementPolicy;
+
+        /**
+         * The number of hits of the scanning replacement methods.
+         */
+        private long scanningHits;
+
+        /**
+         * The number of accesses with the scanning replacement methods.
+         */
+        private long scanningAccesses;
+
+        /**
+         * The number of hits of the constant time policy.
+         */
+        private long policyHits;
+
+        /**
+         * The number of accesses with the constant time policy.
+         */
+        private long policyAccesses;
+
+        /**
+         * Initialize the state. Level is Trial, means this is done for every fork.
+         */
+        @Setup(Level.Trial)
+        public final void doSetup() {
+            final double[] cumulative = new double[ADDRESSES];
+            double sum = 0;
+            for (int i = 0; i < ADDRESSES; i++) {
+                sum += 1.0 / Math.pow(i + 1, SKEW);
+                cumulative[i] = sum;
+            }
+            final Random random = new Random(42);
+            for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+                int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                if (index < 0) {
+                    index = -index - 1;
+                }
+                index = Math.min(index, ADDRESSES - 1);
+                sequence[i] = "/agent2/service/node" + index;
+                // the same address always has the same size.
+                valueSizes[i] = 1 + new Random(index).nextInt(MAX_VALUE_SIZE);
+            }
+            scannedNodes = new HashMap<String, CachedNode>();
+            cachedAddresses = new HashSet<String>();
+            replacementPolicy = ReplacementPolicies.createPolicy(policy, capacity);
+        }
+
+        /**
+         * Logs the hit rates of the trial.
+         */
+        @TearDown(Level.Trial)
+        public final void doTearDown() {
+            if (scanningAccesses > 0) {
+                LOGGER.info("{} ({}) scanning hit rate: {}", policy, capacity,
+                        (double) scanningHits / scanningAccesses);
+            }
+            if (policyAccesses > 0) {
+                LOGGER.info("{} ({}) constant time hit rate: {}", policy, capacity,
+                        (double) policyHits / policyAccesses);
+            }
+        }
+
+        /**
+         * Advances to the next access of the {@link #sequence}.
+         *
+         * @return The position of the access.
+         */
+        final int nextAccess() {
+            final int access = position;
+            position = (position + 1) & (SEQUENCE_LENGTH - 1);
+            return access;
+        }
+
+        /**
+         * Returns the nodes to drop with the scanning replacement method of the policy.
+         *
+         * @return The nodes to drop.
+         */
+        final Collection<String> getNodesToRemove() {
+            if ("fifo".equals(policy)) {
+                return ReplacementPolicies.getNodesToRemoveFIFO(scannedNodes, 1);
+            } else if ("lru".equals(policy)) {
+                return ReplacementPolicies.getNodesToRemoveLRU(scannedNodes, 1);
+            } else if ("lfu".equals(policy)) {
+                return ReplacementPolicies.getNodesToRemoveLFU(scannedNodes, 1);
+            } else {
+                return ReplacementPolicies.getNodesToRemoveRR(scannedNodes, 1);
+            }
+        }
+    }
+
+    /**
+     * One cache access with the scanning replacement methods, as used by the MetaCache before.
+     *
+     * @param state
+     *            The state.
+     * @return Whether the access was a hit.
+     */
+    @Benchmark
+    public final boolean scanningReplacement(final MyState state) {
+        final int access = state.nextAccess();
+        final String address = state.sequence[access];
+        state.scanningAccesses++;
+        final CachedNode cached = state.scannedNodes.get(address);
+        if (cached != null) {
+            cached.nodeAccessed();
+            state.scanningHits++;
+            return true;
+        }
+        final CachedNode node = new CachedNode(1, 60, state.valueSizes[access]);
+        while (!state.scannedNodes.isEmpty()
+                && state.scannedSize + node.getSize() > state.capacity) {
+            for (final String removed : state.getNodesToRemove()) {
+                state.scannedSize -= state.scannedNodes.remove(removed).getSize();
+            }
+        }
+        state.scannedNodes.put(address, node);
+        state.scannedSize += node.getSize();
+        return false;
+    }
+
+    /**
+     * One cache access with the constant time {@link VslReplacementPolicy}.
+     *
+     * @param state
+     *            The state.
+     * @return Whether the access was a hit.
+     */
+    @Benchmark
+    public final boolean constantTimeReplacement(final MyState state) {
+        final int access = state.nextAccess();
+        final String address = state.sequence[access];
+        state.policyAccesses++;
+        if (state.cachedAddresses.contains(address)) {
+            state.replacementPolicy.accessed(address);
+            state.policyHits++;
+            return true;
+        }
+        state.cachedAddresses.add(address);
+        state.cachedAddresses.removeAll(state.replacementPolicy.add(address,
+                state.valueSizes[access] + CachedNode.SIZE));
+        return false;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * This package contains benchmark tests for the cache module.
+ */
+package org.ds2os.benchmark.cache;
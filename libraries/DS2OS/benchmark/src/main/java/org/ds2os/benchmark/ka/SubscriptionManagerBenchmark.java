@@ -0,0 +1,164 @@
+package org.ds2os.benchmark.ka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.ds2os.vsl.core.VslSubscriber;
+import org.ds2os.vsl.core.impl.ServiceIdentity;
+import org.ds2os.vsl.core.node.VslNode;
+import org.ds2os.vsl.core.node.VslNodeFactory;
+import org.ds2os.vsl.core.node.VslNodeFactoryImpl;
+import org.ds2os.vsl.core.utils.AddressParameters;
+import org.ds2os.vsl.exception.VslException;
+import org.ds2os.vsl.ka.SubscriptionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the notification latency and throughput of the {@link SubscriptionManager}. All
+ * subscribers subscribe to the same service, each benchmark waits until every subscriber received
+ * its notifications.
+ */
+@Measurement(iterations = 10, time = 2)
+@Warmup(iterations = 5)
+@Fork(value = 2)
+public class SubscriptionManagerBenchmark {
+
+    /**
+     * Vsl node factory.
+     */
+    private static final VslNodeFactory NODE_FACTORY = new VslNodeFactoryImpl();
+
+    /**
+     * The subscribed service.
+     */
+    private static final String SERVICE = "/agent1/service";
+
+    /**
+     * The number of child nodes of the subscribed service.
+     */
+    private static final int CHILDREN = 100;
+
+    /**
+     * The maximum time in seconds to wait for the notifications of one invocation.
+     */
+    private static final long TIMEOUT = 10L;
+
+    /**
+     * State class used for holding necessary state informations for all benchmarks.
+     */
+    @State(Scope.Thread)
+    public static class MyState {
+
+        /**
+         * Number of subscribers of the service.
+         */
+        @Param({ ("1"), ("10"), ("100") })
+        private int numberOfSubscribers;
+
+        /**
+         * The {@link SubscriptionManager} to be benchmarked.
+         */
+        private SubscriptionManager subscriptionManager;
+
+        /**
+         * The addresses of all child nodes of the service.
+         */
+        private final List<String> childAddresses = new ArrayList<String>();
+
+        /**
+         * Latch counting down the notifications of the current invocation.
+         */
+        private volatile CountDownLatch latch = new CountDownLatch(0);
+
+        /**
+         * Initialize the state. Level is Trial, means this is done for every fork.
+         *
+         * @throws VslException
+         *             shouldn't happen.
+         */
+        @Setup(Level.Trial)
+        public final void doSetup() throws VslException {
+            subscriptionManager = new SubscriptionManager();
+            subscriptionManager.activate(null, null, null);
+
+            final Map<String, VslNode> children = new TreeMap<String, VslNode>();
+            for (int i = 0; i < CHILDREN; i++) {
+                children.put("child" + i, NODE_FACTORY.createImmutableLeaf("0"));
+                childAddresses.add(SERVICE + "/child" + i);
+            }
+            final VslNode affectedNodes = NODE_FACTORY.createImmutableNode(children.entrySet());
+            for (int i = 0; i < numberOfSubscribers; i++) {
+                final VslSubscriber subscriber = new VslSubscriber() {
+                    @Override
+                    public void notificationCallback(final String address) {
+                        latch.countDown();
+                    }
+                };
+                subscriptionManager.addSubscription(SERVICE, subscriber,
+                        new AddressParameters(), new ServiceIdentity("subscriber" + i,
+                                "subscriber" + i), affectedNodes);
+            }
+        }
+
+        /**
+         * Notifies the given addresses and waits until all subscribers were notified.
+         *
+         * @param addresses
+         *            The changed addresses.
+         * @throws Exception
+         *             If the notifications didn't arrive in time.
+         */
+        final void notifyAndWait(final List<String> addresses) throws Exception {
+            latch = new CountDownLatch(numberOfSubscribers * addresses.size());
+            subscriptionManager.notifySubscribers(addresses);
+            if (!latch.await(TIMEOUT, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("notifications didn't arrive in time");
+            }
+        }
+    }
+
+    /**
+     * Latency from a single change to the notification of all subscribers.
+     *
+     * @param state
+     *            The state.
+     * @throws Exception
+     *             If the notifications didn't arrive in time.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public final void notificationLatency(final MyState state) throws Exception {
+        state.notifyAndWait(state.childAddresses.subList(0, 1));
+    }
+
+    /**
+     * Throughput of changes of all child nodes of the service at once.
+     *
+     * @param state
+     *            The state.
+     * @throws Exception
+     *             If the notifications didn't arrive in time.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public final void notificationThroughput(final MyState state) throws Exception {
+        state.notifyAndWait(state.childAddresses);
+    }
+}
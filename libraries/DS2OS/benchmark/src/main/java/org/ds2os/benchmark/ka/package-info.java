@@ -0,0 +1,4 @@
+/**
+ * This package contains benchmark tests for the KA wiring module.
+ */
+package org.ds2os.benchmark.ka;
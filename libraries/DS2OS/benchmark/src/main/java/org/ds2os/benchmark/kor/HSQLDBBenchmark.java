@@ -17,6 +17,7 @@ import org.ds2os.vsl.core.utils.VslAddressParameters.NodeInformationScope;
 import org.ds2os.vsl.exception.NodeNotExistingException;
 import org.ds2os.vsl.exception.VslException;
 import org.ds2os.vsl.kor.HSQLDatabase;
+import org.ds2os.vsl.kor.MemoryDatabase;
 import org.ds2os.vsl.kor.VslNodeDatabase;
 import org.ds2os.vsl.kor.dataStructures.InternalNode;
 import org.openjdk.jmh.annotations.Benchmark;
@@ -26,6 +27,7 @@ import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -69,7 +71,11 @@ public class HSQLDBBenchmark {
             when(configMock.isDatabasePersistent()).thenReturn(false);
 
             final VslStatisticsProvider statisticsProvider = new DummyStatisticsProvider();
-            db = new HSQLDatabase(configMock, statisticsProvider);
+            if ("memory".equals(database)) {
+                db = new MemoryDatabase(configMock);
+            } else {
+                db = new HSQLDatabase(configMock, statisticsProvider);
+            }
             db.activate();
             final List<String> types = Arrays.asList("type");
             final List<String> readerIds = Arrays.asList("reader");
@@ -93,18 +99,42 @@ public class HSQLDBBenchmark {
 
                 db.setValueTree(nodesToSet);
 
+                // archive older values of an unrelated agent, the reads below shouldn't get slower
+                // with the size of the history.
+                db.addNode(agent2, types, readerIds, writerIds, restriction, cacheParameters);
+                db.addNode(agent2node, types, readerIds, writerIds, restriction, cacheParameters);
+                nodesToSet.clear();
+                for (int i = 0; i < history; i++) {
+                    nodesToSet.put(agent2node, Integer.toString(i));
+                    db.setValueTree(nodesToSet);
+                }
+
             } catch (final NodeNotExistingException e) {
                 e.printStackTrace();
             }
 
         }
 
+        /**
+         * The number of archived values stored before the benchmarks are run.
+         */
+        @Param({ ("0"), ("1000"), ("10000") })
+        private int history;
+
+        /**
+         * The database implementation to benchmark, see
+         * {@link VslKORDatabaseConfig#getDatabaseType()}.
+         */
+        @Param({ ("hsqldb"), ("memory") })
+        private String database;
+
         /**
          *
          */
         private final String agent1 = "/agent1", service = "/agent1/service",
                 node1 = "/agent1/service/node1", node2 = "/agent1/service/node2",
-                node1node1 = "/agent1/service/node1/node1";
+                node1node1 = "/agent1/service/node1/node1", agent2 = "/agent2",
+                agent2node = "/agent2/node";
 
         /**
          * finished.
@@ -149,4 +179,36 @@ public class HSQLDBBenchmark {
         return state.db.getNodeRecord(state.agent1, new AddressParameters().withDepth(-1)
                 .withNodeInformationScope(NodeInformationScope.COMPLETE));
     }
+
+    /**
+     * Benchmarks gets on retrieving the direct children of a node.
+     *
+     * @param state
+     *            Contains the necessary state information for the benchmark.
+     * @return The get result (in order to avoid jvm optimizations because the result isn't used)
+     * @throws VslException
+     *             shouldn't happen.
+     */
+    @Benchmark
+    public final TreeMap<String, InternalNode> benchmarkDepthLimitedGet(final MyState state)
+            throws VslException {
+        return state.db.getNodeRecord(state.service, new AddressParameters().withDepth(1)
+                .withNodeInformationScope(NodeInformationScope.COMPLETE));
+    }
+
+    /**
+     * Benchmarks gets on retrieving only the value of a single node.
+     *
+     * @param state
+     *            Contains the necessary state information for the benchmark.
+     * @return The get result (in order to avoid jvm optimizations because the result isn't used)
+     * @throws VslException
+     *             shouldn't happen.
+     */
+    @Benchmark
+    public final TreeMap<String, InternalNode> benchmarkValueGet(final MyState state)
+            throws VslException {
+        return state.db.getNodeRecord(state.node1, new AddressParameters().withDepth(0)
+                .withNodeInformationScope(NodeInformationScope.VALUE));
+    }
 }
@@ -5,18 +5,22 @@ import java.util.Map.Entry;
 import org.ds2os.vsl.cache.cacheCleaner.CacheCleaner;
 import org.ds2os.vsl.cache.dataCache.KORDataCache;
 import org.ds2os.vsl.cache.dataCache.VslDataCache;
+import org.ds2os.vsl.cache.metaCache.CacheMetrics;
+import org.ds2os.vsl.cache.metaCache.CachedNode;
 import org.ds2os.vsl.cache.metaCache.MetaCache;
 import org.ds2os.vsl.cache.metaCache.VslMetaCache;
 import org.ds2os.vsl.core.AbstractVslModule;
-import org.ds2os.vsl.core.VslConnector;
 import org.ds2os.vsl.core.VslIdentity;
 import org.ds2os.vsl.core.VslKORCacheHandler;
 import org.ds2os.vsl.core.VslNodeCache;
+import org.ds2os.vsl.core.VslParametrizedConnector;
 import org.ds2os.vsl.core.VslServiceManifest;
 import org.ds2os.vsl.core.VslVirtualNodeHandler;
 import org.ds2os.vsl.core.adapter.VirtualNodeAdapter;
 import org.ds2os.vsl.core.config.VslCacheConfig;
+import org.ds2os.vsl.core.node.VslMutableNode;
 import org.ds2os.vsl.core.node.VslNode;
+import org.ds2os.vsl.core.node.VslNodeFactory;
 import org.ds2os.vsl.core.node.VslStructureNode;
 import org.ds2os.vsl.core.utils.VslAddressParameters;
 import org.ds2os.vsl.exception.NodeNotExistingException;
@@ -28,7 +32,9 @@ import org.slf4j.LoggerFactory;
  * Implementation of the {@link VslNodeCache}. This Class is responsible for managing the
  * interactions between the {@link VslMetaCache} which stores metadata of cached items (what is
  * cached, last access, access frequency,...). and the {@link VslDataCache} which stores the actual
- * cached content (e.g. using the KOR.).
+ * cached content (e.g. using the KOR.). Accesses are synchronized per service with a
+ * {@link StripedLock}. The cached remote subtrees are subscribed with {@link CacheSubscriptions},
+ * notified nodes are replaced if their version advanced.
  *
  * @author liebald
  */
@@ -40,9 +46,14 @@ public class Cache extends AbstractVslModule implements VslNodeCache {
     private static final Logger LOGGER = LoggerFactory.getLogger(Cache.class);
 
     /**
-     * Used to synchronize access to the cache.
+     * The number of lock stripes.
      */
-    private final Object threadLock = new Object();
+    private static final int LOCK_STRIPES = 16;
+
+    /**
+     * Used to synchronize access to the cache, per service.
+     */
+    private final StripedLock locks = new StripedLock(LOCK_STRIPES);
 
     /**
      * Access to the KOR for cache specific requests.
@@ -70,6 +81,11 @@ public class Cache extends AbstractVslModule implements VslNodeCache {
      */
     private final Thread cleanerThread;
 
+    /**
+     * The subscriptions of the cached remote subtrees.
+     */
+    private final CacheSubscriptions subscriptions;
+
     /**
      * Name of the local agent.
      */
@@ -99,7 +115,7 @@ public class Cache extends AbstractVslModule implements VslNodeCache {
     /**
      * Connector for local KOR access.
      */
-    private final VslConnector connector;
+    private final VslParametrizedConnector connector;
 
     /**
      * address of the registered model.
@@ -113,8 +129,11 @@ public class Cache extends AbstractVslModule implements VslNodeCache {
         @Override
         public void set(final String address, final VslNode value, final VslIdentity identity)
                 throws VslException {
-            synchronized (threadLock) {
+            final int stripe = locks.lockAll();
+            try {
                 metaCache.clearCache();
+            } finally {
+                locks.unlock(stripe);
             }
 
         }
@@ -122,32 +141,71 @@ public class Cache extends AbstractVslModule implements VslNodeCache {
         @Override
         public VslNode get(final String address, final VslAddressParameters params,
                 final VslIdentity identity) throws VslException {
-            synchronized (threadLock) {
+            final int stripe = locks.lockAll();
+            try {
                 metaCache.clearCache();
+            } finally {
+                locks.unlock(stripe);
             }
             return connector.getNodeFactory().createImmutableLeaf("cache cleaned");
         }
     };
 
+    /**
+     * Virtualnode handler for the statistics of the cache. Returns the current size of the cache
+     * and the bytes cached, evicted and rejected by each replacement policy that was used.
+     */
+    private final VslVirtualNodeHandler statisticsHandler = new VirtualNodeAdapter() {
+        @Override
+        public VslNode get(final String address, final VslAddressParameters params,
+                final VslIdentity identity) throws VslException {
+            final VslNodeFactory nodeFactory = connector.getNodeFactory();
+            final VslMutableNode statistics = nodeFactory.createMutableNode();
+            statistics.putChild("size", nodeFactory
+                    .createMutableNode(Long.toString(metaCache.getCurrentCacheSize())));
+            for (final Entry<String, CacheMetrics> metrics : metaCache.getMetrics().entrySet()) {
+                final String policy = metrics.getKey();
+                statistics.putChild(policy + "/cached", nodeFactory
+                        .createMutableNode(Long.toString(metrics.getValue().getCachedBytes())));
+                statistics.putChild(policy + "/evicted", nodeFactory
+                        .createMutableNode(Long.toString(metrics.getValue().getEvictedBytes())));
+                statistics.putChild(policy + "/rejected", nodeFactory
+                        .createMutableNode(Long.toString(metrics.getValue().getRejectedBytes())));
+            }
+
+            final String statisticsAddress = modelAddress + "/statistics";
+            if (!address.startsWith(statisticsAddress + "/")) {
+                return statistics;
+            }
+            final String relativeAddress = address.substring(statisticsAddress.length() + 1);
+            if (!statistics.hasChild(relativeAddress)) {
+                throw new NodeNotExistingException(
+                        "cache statistics " + relativeAddress + " don't exist");
+            }
+            return statistics.getChild(relativeAddress);
+        }
+    };
+
     /**
      * Constructor.
      *
      * @param connector
-     *            {@link VslConnector} for accessing the local KOR
+     *            {@link VslParametrizedConnector} for accessing the local KOR
      * @param cacheHandler
      *            {@link VslKORCacheHandler} for accessing the KOR for cache specific methods.
      * @param cacheConfig
      *            The {@link VslCacheConfig} service for the cache.
      */
-    public Cache(final VslConnector connector, final VslKORCacheHandler cacheHandler,
+    public Cache(final VslParametrizedConnector connector, final VslKORCacheHandler cacheHandler,
             final VslCacheConfig cacheConfig) {
         this.connector = connector;
         this.cacheHandler = cacheHandler;
         this.cacheConfig = cacheConfig;
+        this.subscriptions = new CacheSubscriptions(connector, this);
         this.metaCache = new MetaCache(this.cacheHandler, this.cacheConfig,
-                connector.getNodeFactory());
+                connector.getNodeFactory(), subscriptions);
         this.dataCache = new KORDataCache(this.cacheHandler);
-        cleanerThread = new Thread(new CacheCleaner(this.cacheConfig, metaCache, dataCache));
+        cleanerThread = new Thread(new CacheCleaner(metaCache, dataCache));
         agentName = cacheConfig.getAgentName();
     }
 
@@ -163,6 +221,11 @@ public class Cache extends AbstractVslModule implements VslNodeCache {
         } catch (final VslException e) {
             LOGGER.warn("could not register clearCache node as virtual: {}", e.getMessage());
         }
+        try {
+            connector.registerVirtualNode(modelAddress + "/statistics", statisticsHandler);
+        } catch (final VslException e) {
+            LOGGER.warn("could not register statistics node as virtual: {}", e.getMessage());
+        }
 
         cleanerThread.start();
     }
@@ -179,13 +242,16 @@ public class Cache extends AbstractVslModule implements VslNodeCache {
             return;
         }
 
-        synchronized (threadLock) {
+        final int stripe = locks.lock(address);
+        try {
             final VslNode cachable = metaCache.cache(address, node);
             if (cachable == null) {
                 return;
             }
             dataCache.cache(address, cachable);
             LOGGER.debug("cached VSLnode and children at {}", address);
+        } finally {
+            locks.unlock(stripe);
         }
 
     }
@@ -203,13 +269,16 @@ public class Cache extends AbstractVslModule implements VslNodeCache {
             return null;
         }
         VslNode cachedNode;
-        synchronized (threadLock) {
+        final int stripe = locks.lock(address);
+        try {
             if (!metaCache.isCached(address, identity)) {
                 return null;
             }
             cachedNode = dataCache.get(address, identity);
             LOGGER.debug("dataCache get: {} {}", address, cachedNode);
             metaCache.updatedCachedData(address, cachedNode);
+        } finally {
+            locks.unlock(stripe);
         }
         LOGGER.debug("served from Cache: {}", address);
         // TODO: add config option to enable cache marking returned nodes, used for tests
@@ -237,9 +306,15 @@ public class Cache extends AbstractVslModule implements VslNodeCache {
     //
     // }
 
+    @Override
+    public final boolean isRefreshDue(final String address) {
+        return cacheConfig.isCacheEnabled() && metaCache.isRefreshDue(address);
+    }
+
     @Override
     public final void shutdown() {
         cleanerThread.interrupt();
+        subscriptions.shutdown();
     }
 
     @Override
@@ -251,7 +326,8 @@ public class Cache extends AbstractVslModule implements VslNodeCache {
          */
         // could also check structure first if set operation is allowed, but would slow down
         // processing a bit
-        synchronized (threadLock) {
+        final int stripe = locks.lock(address);
+        try {
             if (node.getValue() != null) {
                 metaCache.removeFromCache(address);
             }
@@ -260,6 +336,8 @@ public class Cache extends AbstractVslModule implements VslNodeCache {
                     metaCache.removeFromCache(address + "/" + child.getKey());
                 }
             }
+        } finally {
+            locks.unlock(stripe);
         }
     }
 
@@ -277,11 +355,56 @@ public class Cache extends AbstractVslModule implements VslNodeCache {
         } catch (final NodeNotExistingException e) {
             return;
         }
-        synchronized (threadLock) {
+        final int stripe = locks.lock(address);
+        try {
             metaCache.removeFromCache(address);
             for (final Entry<String, VslStructureNode> child : structure.getAllChildren()) {
                 metaCache.removeFromCache(address + "/" + child.getKey());
             }
+        } finally {
+            locks.unlock(stripe);
+        }
+    }
+
+    /**
+     * Revalidates a cached node after a notification of its subscribed subtree. The node is
+     * requested again and replaced if its version advanced, otherwise the cached node is kept. If
+     * the request fails, the node is invalidated.
+     *
+     * @param address
+     *            The address of the notified node.
+     */
+    final void revalidate(final String address) {
+        final CachedNode cached = metaCache.getAllCachedNodes().get(address);
+        if (cached == null || !cacheConfig.isCacheEnabled()) {
+            return;
+        }
+        final VslNode current;
+        try {
+            current = connector.get(address);
+        } catch (final VslException e) {
+            LOGGER.debug("could not revalidate {}: {}", address, e.getMessage());
+            invalidate(address);
+            return;
+        }
+        if (current.getVersion() > cached.getNodeVersion()) {
+            cacheNode(address, current);
+            LOGGER.debug("replaced {} with version {}", address, current.getVersion());
+        }
+    }
+
+    /**
+     * Removes a single node from the cache.
+     *
+     * @param address
+     *            The address of the node.
+     */
+    final void invalidate(final String address) {
+        final int stripe = locks.lock(address);
+        try {
+            metaCache.removeFromCache(address);
+        } finally {
+            locks.unlock(stripe);
         }
     }
 
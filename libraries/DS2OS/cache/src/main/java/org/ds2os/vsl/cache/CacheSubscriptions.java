@@ -0,0 +1,251 @@
+package org.ds2os.vsl.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ds2os.vsl.cache.metaCache.VslCacheListener;
+import org.ds2os.vsl.core.VslParametrizedConnector;
+import org.ds2os.vsl.core.VslSubscriber;
+import org.ds2os.vsl.core.utils.AddressParameters;
+import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.ds2os.vsl.exception.VslException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Subscribes the cache to the remote subtrees it holds, so cached nodes are revalidated when they
+ * change instead of being served until their TTL ran out. Each cached root is subscribed once and
+ * reference counted by the nodes cached below it, the subscription is removed when the last of
+ * them left the cache. If a subscription fails, the nodes below the root simply expire by their
+ * TTL. Subscriptions are changed and notifications are handled on a single background thread, as
+ * both need requests to the remote KA.
+ */
+final class CacheSubscriptions implements VslCacheListener, VslSubscriber {
+
+    /**
+     * Get the logger instance for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheSubscriptions.class);
+
+    /**
+     * The maximum number of tasks waiting for the thread, further tasks are dropped.
+     */
+    private static final int QUEUE_SIZE = 1024;
+
+    /**
+     * Connector used for subscribing to the cached subtrees.
+     */
+    private final VslParametrizedConnector connector;
+
+    /**
+     * The cache whose nodes are revalidated on notifications.
+     */
+    private final Cache cache;
+
+    /**
+     * The addresses of the cached nodes by the root they are counted for. Roots are never below
+     * other roots.
+     */
+    private final Map<String, Set<String>> roots;
+
+    /**
+     * The root each cached node is counted for.
+     */
+    private final Map<String, String> owners;
+
+    /**
+     * Addresses that were notified and aren't revalidated yet.
+     */
+    private final Set<String> pendingNotifications;
+
+    /**
+     * Runs the subscription changes and revalidations in order.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Constructor.
+     *
+     * @param connector
+     *            the {@link VslParametrizedConnector} used for subscribing.
+     * @param cache
+     *            the {@link Cache} whose nodes are revalidated on notifications.
+     */
+    CacheSubscriptions(final VslParametrizedConnector connector, final Cache cache) {
+        this.connector = connector;
+        this.cache = cache;
+        roots = new HashMap<String, Set<String>>();
+        owners = new HashMap<String, String>();
+        pendingNotifications = Collections
+                .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r,
+                                "cache subscriptions " + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public synchronized void nodesCached(final String address,
+            final Collection<String> cachedAddresses) {
+        String root = getRoot(address);
+        if (root == null) {
+            root = address;
+            // roots below the new one are covered by its subscription from now on.
+            final Set<String> nodes = new HashSet<String>();
+            final List<String> coveredRoots = new ArrayList<String>();
+            for (final Iterator<Entry<String, Set<String>>> it = roots.entrySet().iterator(); it
+                    .hasNext();) {
+                final Entry<String, Set<String>> entry = it.next();
+                if (entry.getKey().startsWith(address + "/")) {
+                    for (final String node : entry.getValue()) {
+                        owners.put(node, root);
+                    }
+                    nodes.addAll(entry.getValue());
+                    coveredRoots.add(entry.getKey());
+                    it.remove();
+                }
+            }
+            roots.put(root, nodes);
+            changeSubscription(root, true);
+            // unsubscribed after the new subscription, so no change below them is missed.
+            for (final String coveredRoot : coveredRoots) {
+                changeSubscription(coveredRoot, false);
+            }
+        }
+        final Set<String> nodes = roots.get(root);
+        for (final String cachedAddress : cachedAddresses) {
+            if (owners.put(cachedAddress, root) == null) {
+                nodes.add(cachedAddress);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void nodeRemoved(final String address) {
+        final String root = owners.remove(address);
+        if (root == null) {
+            return;
+        }
+        final Set<String> nodes = roots.get(root);
+        nodes.remove(address);
+        if (nodes.isEmpty()) {
+            roots.remove(root);
+            changeSubscription(root, false);
+        }
+    }
+
+    /**
+     * Returns the subscribed root the given address belongs to.
+     *
+     * @param address
+     *            The address.
+     * @return The address itself or the ancestor that is a root, null if there is none.
+     */
+    private String getRoot(final String address) {
+        String current = address;
+        while (!roots.containsKey(current)) {
+            final int lastSlash = current.lastIndexOf('/');
+            if (lastSlash <= 0) {
+                return null;
+            }
+            current = current.substring(0, lastSlash);
+        }
+        return current;
+    }
+
+    /**
+     * Returns whether the given root is currently subscribed.
+     *
+     * @param root
+     *            The address of the root.
+     * @return True if nodes are cached below the root.
+     */
+    synchronized boolean isSubscribed(final String root) {
+        return roots.containsKey(root);
+    }
+
+    /**
+     * Subscribes to or unsubscribes from the subtree of the given root in the background.
+     *
+     * @param root
+     *            The address of the root.
+     * @param subscribe
+     *            True to subscribe, false to unsubscribe.
+     */
+    private void changeSubscription(final String root, final boolean subscribe) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final VslAddressParameters params = new AddressParameters().withDepth(-1);
+                    try {
+                        if (subscribe) {
+                            connector.subscribe(root, CacheSubscriptions.this, params);
+                        } else {
+                            connector.unsubscribe(root, params);
+                        }
+                    } catch (final VslException e) {
+                        LOGGER.debug(
+                                "could not {} cached subtree {}, nodes expire by their TTL: {}",
+                                subscribe ? "subscribe" : "unsubscribe", root, e.getMessage());
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            LOGGER.warn("dropped {} of cached subtree {}",
+                    subscribe ? "subscription" : "unsubscription", root);
+        }
+    }
+
+    @Override
+    public void notificationCallback(final String address) throws VslException {
+        if (!pendingNotifications.add(address)) {
+            // a revalidation of the address is already waiting.
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // removed first, so notifications arriving during the revalidation aren't lost.
+                    pendingNotifications.remove(address);
+                    cache.revalidate(address);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            pendingNotifications.remove(address);
+            cache.invalidate(address);
+        }
+    }
+
+    /**
+     * Stops the background thread. Remaining subscriptions are kept.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,110 @@
+package org.ds2os.vsl.cache;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Set of locks used instead of a single lock for the whole cache. Cache operations on an address
+ * affect the whole subtree of this address, so the lock of an address is chosen by its service
+ * (the first two address levels). Operations on different services can run in parallel, operations
+ * on an agent or the root lock all stripes.
+ */
+final class StripedLock {
+
+    /**
+     * Stripe number used for operations holding all stripes.
+     */
+    static final int ALL = -1;
+
+    /**
+     * The locks, the number of locks is a power of two.
+     */
+    private final ReentrantLock[] locks;
+
+    /**
+     * Constructor.
+     *
+     * @param stripes
+     *            The number of locks, rounded up to a power of two.
+     */
+    StripedLock(final int stripes) {
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Acquires the lock for operations on the subtree of an address.
+     *
+     * @param address
+     *            The address.
+     * @return The stripe number that must be passed to {@link #unlock(int)}.
+     */
+    int lock(final String address) {
+        final int stripe = stripeOf(address);
+        if (stripe == ALL) {
+            lockAll();
+        } else {
+            locks[stripe].lock();
+        }
+        return stripe;
+    }
+
+    /**
+     * Acquires all stripes, in ascending order to avoid deadlocks.
+     *
+     * @return {@link #ALL}, to be passed to {@link #unlock(int)}.
+     */
+    int lockAll() {
+        for (final ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        return ALL;
+    }
+
+    /**
+     * Releases a lock acquired by {@link #lock(String)} or {@link #lockAll()}.
+     *
+     * @param stripe
+     *            The stripe number returned when acquiring the lock.
+     */
+    void unlock(final int stripe) {
+        if (stripe == ALL) {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        } else {
+            locks[stripe].unlock();
+        }
+    }
+
+    /**
+     * Returns the stripe of an address.
+     *
+     * @param address
+     *            The address.
+     * @return The stripe number, {@link #ALL} for addresses above the service level.
+     */
+    private int stripeOf(final String address) {
+        // the service address is everything up to the third slash.
+        final int agentEnd = address.indexOf('/', 1);
+        if (agentEnd < 0) {
+            return ALL;
+        }
+        final int serviceEnd = address.indexOf('/', agentEnd + 1);
+        final int end = serviceEnd < 0 ? address.length() : serviceEnd;
+        if (end == agentEnd + 1) {
+            return ALL;
+        }
+        int hash = 0;
+        for (int i = 0; i < end; i++) {
+            hash = 31 * hash + address.charAt(i);
+        }
+        hash ^= hash >>> 16;
+        return hash & (locks.length - 1);
+    }
+}
@@ -0,0 +1,83 @@
+package org.ds2os.vsl.cache.metaCache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes that were cached, evicted and rejected while a replacement policy was used. The
+ * counters are cumulative and thread safe.
+ */
+public class CacheMetrics {
+
+    /**
+     * The total size of the nodes that were admitted to the cache in bytes.
+     */
+    private final AtomicLong cachedBytes = new AtomicLong();
+
+    /**
+     * The total size of the nodes that were dropped from the cache to make room in bytes.
+     */
+    private final AtomicLong evictedBytes = new AtomicLong();
+
+    /**
+     * The total size of the nodes that weren't admitted to the cache in bytes.
+     */
+    private final AtomicLong rejectedBytes = new AtomicLong();
+
+    /**
+     * Returns the total size of the nodes that were admitted to the cache.
+     *
+     * @return The size in bytes.
+     */
+    public final long getCachedBytes() {
+        return cachedBytes.get();
+    }
+
+    /**
+     * Returns the total size of the nodes that were dropped from the cache to make room for others.
+     *
+     * @return The size in bytes.
+     */
+    public final long getEvictedBytes() {
+        return evictedBytes.get();
+    }
+
+    /**
+     * Returns the total size of the nodes that weren't admitted to the cache, because they were too
+     * large or the replacement policy decided against them.
+     *
+     * @return The size in bytes.
+     */
+    public final long getRejectedBytes() {
+        return rejectedBytes.get();
+    }
+
+    /**
+     * Counts a node that was admitted to the cache.
+     *
+     * @param size
+     *            The size of the node in bytes.
+     */
+    final void cached(final long size) {
+        cachedBytes.addAndGet(size);
+    }
+
+    /**
+     * Counts a node that was dropped from the cache to make room for others.
+     *
+     * @param size
+     *            The size of the node in bytes.
+     */
+    final void evicted(final long size) {
+        evictedBytes.addAndGet(size);
+    }
+
+    /**
+     * Counts a node that wasn't admitted to the cache.
+     *
+     * @param size
+     *            The size of the node in bytes.
+     */
+    final void rejected(final long size) {
+        rejectedBytes.addAndGet(size);
+    }
+}
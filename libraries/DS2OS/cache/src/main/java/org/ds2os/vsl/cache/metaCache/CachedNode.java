@@ -113,6 +113,24 @@ public class CachedNode {
         return size;
     }
 
+    /**
+     * Returns the time to live of the node.
+     *
+     * @return The TTL in seconds.
+     */
+    public final int getTTL() {
+        return ttl;
+    }
+
+    /**
+     * Returns the time when the node expires.
+     *
+     * @return Unix timestamp in milliseconds after which the node is expired.
+     */
+    public final long getExpiryTime() {
+        return initialCacheTimestamp + ttl * 1000L;
+    }
+
     /**
      * Returns whether or not the node is expired and should be removed.
      *
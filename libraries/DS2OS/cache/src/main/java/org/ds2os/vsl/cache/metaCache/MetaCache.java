@@ -1,16 +1,25 @@
 package org.ds2os.vsl.cache.metaCache;
 
 import java.io.UnsupportedEncodingException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.ds2os.vsl.cache.replacement.ReplacementPolicies;
+import org.ds2os.vsl.cache.replacement.VslReplacementPolicy;
 import org.ds2os.vsl.core.VslIdentity;
 import org.ds2os.vsl.core.VslKORCacheHandler;
 import org.ds2os.vsl.core.config.VslCacheConfig;
@@ -23,7 +32,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Class for storage of Cache metaData.
+ * Class for storage of Cache metaData. The capacity of the cache is the total size of the cached
+ * nodes in bytes. Which nodes are dropped when the cache is full is decided by a
+ * {@link VslReplacementPolicy}, expired nodes are found with a {@link TimerWheel}. Added and
+ * removed nodes are reported to an optional {@link VslCacheListener}. The class is thread safe.
  *
  * @author liebald
  */
@@ -39,6 +51,11 @@ public class MetaCache implements VslMetaCache {
      */
     private static Pattern ttlPattern = Pattern.compile("ttl='\\d+'");
 
+    /**
+     * The duration of a tick of the {@link #expiryWheel} in milliseconds.
+     */
+    private static final long EXPIRY_TICK = 1000L;
+
     /**
      * Access to the KOR for cache specific requests.
      */
@@ -47,13 +64,38 @@ public class MetaCache implements VslMetaCache {
     /**
      * The map where the actual content is cached.
      */
-    final Map<String, CachedNode> cachedNodes;
+    final ConcurrentMap<String, CachedNode> cachedNodes;
 
     /**
      * This collection contains all nodes that were removed from the metacache and should be removed
      * from the dataCache too.
      */
-    Collection<String> removedFromCache;
+    final Set<String> removedFromCache;
+
+    /**
+     * Used to synchronize access to the {@link #policy}.
+     */
+    private final Object policyLock = new Object();
+
+    /**
+     * The replacement policy, created on the first cached node.
+     */
+    private VslReplacementPolicy policy;
+
+    /**
+     * The abbreviation of the configured replacement policy the {@link #policy} was created for.
+     */
+    private String policyName;
+
+    /**
+     * The {@link CacheMetrics} of each replacement policy that was used, by its abbreviation.
+     */
+    private final ConcurrentMap<String, CacheMetrics> metrics;
+
+    /**
+     * Schedules the expiry of the cached nodes.
+     */
+    private final TimerWheel<Entry<String, CachedNode>> expiryWheel;
 
     /**
      * The configuration service for the cache.
@@ -65,6 +107,11 @@ public class MetaCache implements VslMetaCache {
      */
     private final VslNodeFactory nodeFactory;
 
+    /**
+     * Informed about added and removed nodes, null if there is none.
+     */
+    private final VslCacheListener listener;
+
     /**
      * Constructor.
      *
@@ -77,35 +124,48 @@ public class MetaCache implements VslMetaCache {
      */
     public MetaCache(final VslKORCacheHandler cacheHandler, final VslCacheConfig cacheConfig,
             final VslNodeFactory nodeFactory) {
+        this(cacheHandler, cacheConfig, nodeFactory, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param cacheHandler
+     *            access to the KOR (structure).
+     * @param cacheConfig
+     *            The configuration service for the cache.
+     * @param nodeFactory
+     *            the {@link VslNodeFactory} used for creating cached nodes.
+     * @param listener
+     *            the {@link VslCacheListener} informed about added and removed nodes, may be null.
+     */
+    public MetaCache(final VslKORCacheHandler cacheHandler, final VslCacheConfig cacheConfig,
+            final VslNodeFactory nodeFactory, final VslCacheListener listener) {
+        this.listener = listener;
         this.cacheHandler = cacheHandler;
-        cachedNodes = new ConcurrentHashMap<String, CachedNode>(cacheConfig.getCacheCapacity());
+        cachedNodes = new ConcurrentHashMap<String, CachedNode>();
+        metrics = new ConcurrentHashMap<String, CacheMetrics>();
         this.cacheConfig = cacheConfig;
-        removedFromCache = new LinkedList<String>();
+        removedFromCache = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
         this.nodeFactory = nodeFactory;
+        expiryWheel = new TimerWheel<Entry<String, CachedNode>>(EXPIRY_TICK,
+                System.currentTimeMillis());
     }
 
     @Override
     public final VslNode cache(final String address, final VslNode node) {
         VslStructureNode structure;
-        VslMutableNode cachable = null;
-        int newNodeSize = 0;
         try {
             structure = cacheHandler.getStructure(address);
         } catch (final NodeNotExistingException e) {
             return null;
         }
 
-        if (getTTLfromStructure(structure.getCacheParameters()) <= 0
-                || (cachedNodes.containsKey(address)
-                        && cachedNodes.get(address).getNodeVersion() <= node.getVersion())) {
-            // if the TTL is 0, don't cache this node -> set it to null
-            // same if the node is already cached and the version is lower or equal.
-            cachable = nodeFactory.createMutableNode();
-        } else {
-            cachable = nodeFactory.createMutableClone(nodeFactory.createImmutableLeaf(
-                    node.getTypes(), node.getValue(), node.getTimestamp(), node.getVersion(),
-                    node.getAccess(), node.getRestrictions()));
-            newNodeSize++;
+        // the meta information of all nodes that should be cached, by their relative address.
+        final Map<String, CachedNode> toCache = new LinkedHashMap<String, CachedNode>();
+        final int ttl = getTTLfromStructure(structure.getCacheParameters());
+        if (isCachable(address, node, ttl)) {
+            toCache.put("", createCachedNode(node, ttl));
         }
 
         // check if all child nodes that should be cached actually exist (virtual Subtree) and have
@@ -117,63 +177,222 @@ public class MetaCache implements VslMetaCache {
             if (!structure.hasChild(child.getKey())) {
                 return null;
             }
-            if (getTTLfromStructure(structure.getChild(child.getKey()).getCacheParameters()) <= 0
-                    || (cachedNodes.containsKey(address + "/" + child.getKey())
-                            && cachedNodes.get(address + "/" + child.getKey())
-                                    .getNodeVersion() <= child.getValue().getVersion())) {
-                // if the TTL is 0, don't cache this node -> set it to null
-                // same if the node is already cached and the version is lower or equal.
-                cachable.putChild(child.getKey(), nodeFactory.createMutableNode());
-            } else {
-                cachable.putChild(child.getKey(),
-                        nodeFactory.createMutableClone(nodeFactory.createImmutableLeaf(
-                                child.getValue().getTypes(), child.getValue().getValue(),
-                                child.getValue().getTimestamp(), child.getValue().getVersion(),
-                                child.getValue().getAccess(), child.getValue().getRestrictions())));
-                newNodeSize++;
+            final int childTTL = getTTLfromStructure(
+                    structure.getChild(child.getKey()).getCacheParameters());
+            if (isCachable(address + "/" + child.getKey(), child.getValue(), childTTL)) {
+                toCache.put(child.getKey(), createCachedNode(child.getValue(), childTTL));
             }
         }
 
-        final int capacity = cacheConfig.getCacheCapacity();
+        final long capacity = cacheConfig.getCacheCapacity();
+        final CacheMetrics policyMetrics = getPolicyMetrics(cacheConfig.getReplacementPolicy());
+
+        // nodes larger than the configured maximum entry size aren't cached at all, so a single
+        // large value can't push out many small ones.
+        final long maxEntrySize = cacheConfig.getCacheMaxEntrySize();
+        long weight = 0;
+        for (final Iterator<CachedNode> it = toCache.values().iterator(); it.hasNext();) {
+            final CachedNode cachedNode = it.next();
+            if (maxEntrySize > 0 && cachedNode.getSize() > maxEntrySize) {
+                policyMetrics.rejected(cachedNode.getSize());
+                it.remove();
+            } else {
+                weight += cachedNode.getSize();
+            }
+        }
 
         // if the requested node is larger than the available maximum capacity of the cache, nothing
         // can be cached.
-        if (newNodeSize > capacity) {
+        if (weight > capacity) {
+            policyMetrics.rejected(weight);
             return null;
         }
-        makePlaceIfCacheFull(newNodeSize, capacity);
-
-        // add the node information to the metaCache.
-        // also make sure when stuff is added it's not in the removedFromCache list.
-
-        if (cachable.getValue() != null) {
-            try {
-                cachedNodes.put(address,
-                        new CachedNode(node.getVersion(),
-                                getTTLfromStructure(structure.getCacheParameters()),
-                                node.getValue().getBytes(cacheConfig.getCharset()).length));
-            } catch (final UnsupportedEncodingException e) {
-                e.printStackTrace();
+
+        // add the node information to the metaCache, the replacement policy decides which nodes
+        // are dropped for them or whether they are admitted at all.
+        final Map<String, CachedNode> admitted = new LinkedHashMap<String, CachedNode>();
+        synchronized (policyLock) {
+            final VslReplacementPolicy replacementPolicy = getPolicy(capacity);
+            for (final Entry<String, CachedNode> entry : toCache.entrySet()) {
+                final String nodeAddress = entry.getKey().isEmpty() ? address
+                        : address + "/" + entry.getKey();
+                admitted.put(nodeAddress, entry.getValue());
+                for (final String dropped : replacementPolicy.add(nodeAddress,
+                        entry.getValue().getSize())) {
+                    final CachedNode rejected = admitted.remove(dropped);
+                    if (rejected != null) {
+                        policyMetrics.rejected(rejected.getSize());
+                        // an older version of a rejected node is no longer tracked by the policy.
+                        if (cachedNodes.remove(dropped) != null) {
+                            removedFromCache.add(dropped);
+                            nodeRemoved(dropped);
+                        }
+                    } else {
+                        evict(dropped, policyMetrics);
+                    }
+                }
+            }
+            // also make sure when stuff is added it's not in the removedFromCache list.
+            cachedNodes.putAll(admitted);
+            removedFromCache.removeAll(admitted.keySet());
+            if (listener != null && !admitted.isEmpty()) {
+                listener.nodesCached(address, admitted.keySet());
             }
-            removedFromCache.remove(address);
         }
-        for (final Entry<String, VslNode> child : cachable.getAllChildren()) {
-            if (child.getValue().getValue() != null) {
-                try {
-                    cachedNodes.put(address + "/" + child.getKey(), new CachedNode(
-                            child.getValue().getVersion(),
-                            getTTLfromStructure(
-                                    structure.getChild(child.getKey()).getCacheParameters()),
-                            child.getValue().getValue().getBytes(cacheConfig.getCharset()).length));
-                } catch (final UnsupportedEncodingException e) {
-                    e.printStackTrace();
-                }
-                removedFromCache.remove(address + "/" + child.getKey());
+        for (final CachedNode cachedNode : admitted.values()) {
+            policyMetrics.cached(cachedNode.getSize());
+        }
+        for (final Entry<String, CachedNode> entry : admitted.entrySet()) {
+            expiryWheel.schedule(
+                    new SimpleImmutableEntry<String, CachedNode>(entry.getKey(), entry.getValue()),
+                    entry.getValue().getExpiryTime());
+        }
+
+        // nodes that aren't cached are set to empty nodes.
+        final VslMutableNode cachable;
+        if (admitted.containsKey(address)) {
+            cachable = cloneLeaf(node);
+        } else {
+            cachable = nodeFactory.createMutableNode();
+        }
+        for (final Entry<String, VslNode> child : node.getAllChildren()) {
+            if (child.getValue().getValue() == null) {
+                continue;
+            }
+            if (admitted.containsKey(address + "/" + child.getKey())) {
+                cachable.putChild(child.getKey(), cloneLeaf(child.getValue()));
+            } else {
+                cachable.putChild(child.getKey(), nodeFactory.createMutableNode());
             }
         }
         return cachable;
     }
 
+    /**
+     * Checks whether a node should be cached. It isn't if the TTL is 0, if it has no value or if
+     * a newer version of the node is already cached. Caching the same version again renews its
+     * TTL.
+     *
+     * @param address
+     *            The address of the node.
+     * @param node
+     *            The node.
+     * @param ttl
+     *            The TTL of the node.
+     * @return True if the node should be cached, false otherwise.
+     */
+    private boolean isCachable(final String address, final VslNode node, final int ttl) {
+        final CachedNode cached = cachedNodes.get(address);
+        return ttl > 0 && node.getValue() != null
+                && (cached == null || cached.getNodeVersion() <= node.getVersion());
+    }
+
+    /**
+     * Creates the meta information of a node that is cached.
+     *
+     * @param node
+     *            The node to cache.
+     * @param ttl
+     *            The TTL of the node.
+     * @return The {@link CachedNode} with the meta information.
+     */
+    private CachedNode createCachedNode(final VslNode node, final int ttl) {
+        long size = 0;
+        try {
+            size = node.getValue().getBytes(cacheConfig.getCharset()).length;
+        } catch (final UnsupportedEncodingException e) {
+            LOGGER.error("unsupported charset for cached node size:", e);
+        }
+        return new CachedNode(node.getVersion(), ttl, size);
+    }
+
+    /**
+     * Creates a mutable copy of the given node without its children.
+     *
+     * @param node
+     *            The node to copy.
+     * @return The copy.
+     */
+    private VslMutableNode cloneLeaf(final VslNode node) {
+        return nodeFactory.createMutableClone(nodeFactory.createImmutableLeaf(node.getTypes(),
+                node.getValue(), node.getTimestamp(), node.getVersion(), node.getAccess(),
+                node.getRestrictions()));
+    }
+
+    /**
+     * Returns the replacement policy for the configured policy and capacity. If the configuration
+     * changed, a new policy is created and filled with the currently cached nodes. Must be called
+     * while holding the {@link #policyLock}.
+     *
+     * @param capacity
+     *            The configured capacity of the cache.
+     * @return The {@link VslReplacementPolicy}.
+     */
+    private VslReplacementPolicy getPolicy(final long capacity) {
+        final String configuredPolicy = cacheConfig.getReplacementPolicy();
+        if (policy == null || policy.getCapacity() != capacity
+                || !configuredPolicy.equals(policyName)) {
+            policy = ReplacementPolicies.createPolicy(configuredPolicy, capacity);
+            policyName = configuredPolicy;
+            final CacheMetrics policyMetrics = getPolicyMetrics(configuredPolicy);
+            for (final Entry<String, CachedNode> cached : cachedNodes.entrySet()) {
+                for (final String dropped : policy.add(cached.getKey(),
+                        cached.getValue().getSize())) {
+                    evict(dropped, policyMetrics);
+                }
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * Removes a node the replacement policy dropped to make room for others. Must be called while
+     * holding the {@link #policyLock}.
+     *
+     * @param address
+     *            The address of the dropped node.
+     * @param policyMetrics
+     *            The {@link CacheMetrics} of the replacement policy.
+     */
+    private void evict(final String address, final CacheMetrics policyMetrics) {
+        final CachedNode evicted = cachedNodes.remove(address);
+        if (evicted != null) {
+            policyMetrics.evicted(evicted.getSize());
+            nodeRemoved(address);
+        }
+        removedFromCache.add(address);
+    }
+
+    /**
+     * Informs the {@link #listener} that a node was removed. Must be called while holding the
+     * {@link #policyLock}.
+     *
+     * @param address
+     *            The address of the removed node.
+     */
+    private void nodeRemoved(final String address) {
+        if (listener != null) {
+            listener.nodeRemoved(address);
+        }
+    }
+
+    /**
+     * Returns the {@link CacheMetrics} of the given replacement policy, creating them if needed.
+     *
+     * @param replacementPolicy
+     *            The abbreviation of the replacement policy.
+     * @return The {@link CacheMetrics}.
+     */
+    private CacheMetrics getPolicyMetrics(final String replacementPolicy) {
+        final CacheMetrics existing = metrics.get(replacementPolicy);
+        if (existing != null) {
+            return existing;
+        }
+        final CacheMetrics created = new CacheMetrics();
+        final CacheMetrics raced = metrics.putIfAbsent(replacementPolicy, created);
+        return raced == null ? created : raced;
+    }
+
     @Override
     public final Map<String, CachedNode> getAllCachedNodes() {
         return cachedNodes;
@@ -181,17 +400,20 @@ public class MetaCache implements VslMetaCache {
 
     @Override
     public final long getCurrentCacheSize() {
-        long size = 0;
-        for (final Entry<String, CachedNode> cachedNodesEntries : cachedNodes.entrySet()) {
-            size += cachedNodesEntries.getValue().getSize();
+        synchronized (policyLock) {
+            return policy == null ? 0 : policy.getWeight();
         }
-        return size;
+    }
+
+    @Override
+    public final Map<String, CacheMetrics> getMetrics() {
+        return Collections.unmodifiableMap(metrics);
     }
 
     @Override
     public final Collection<String> getNodesForRemoval() {
-        final Collection<String> toRemove = removedFromCache;
-        removedFromCache = new LinkedList<String>();
+        final Collection<String> toRemove = new ArrayList<String>(removedFromCache);
+        removedFromCache.removeAll(toRemove);
         return toRemove;
     }
 
@@ -245,99 +467,106 @@ public class MetaCache implements VslMetaCache {
         return true;
     }
 
-    /**
-     * This method makes room for the specified amount of nodes in the cache if necessary.
-     *
-     * @param newNodeSize
-     *            The size of the new node.
-     * @param capacity
-     *            The capacity of the cache.
-     */
-    private void makePlaceIfCacheFull(final int newNodeSize, final int capacity) {
-        // FIXME: replace node count based cache size by actual memory used
-        // if (toCache.getValue() != null) {
-        // newNodeSize += CachedNode.SIZE + toCache.getValue().getBytes().length
-        // + 2 * Long.SIZE / 8;
-        // // add two longs for version and timestamp
-        // }
-        //
-        // for (final Entry<String, VslNode> child : toCache.getChildren().entrySet()) {
-        // if (child.getValue().getValue() != null) {
-        // newNodeSize += CachedNode.SIZE + child.getValue().getValue().getBytes().length
-        // + 2 * Long.SIZE / 8;
-        // // add two longs for version and timestamp
-        // }
-        // }
-
-        // if (getCurrentCacheSize() + newNodeSize > capacity) {
-        // final String policy = cacheConfig.getReplacementPolicy();
-        // Collection<String> toRemove;
-        // if (policy.equals("fifo")) {
-        // toRemove = ReplacementPolicies.getNodesToRemoveFIFO(cachedNodes,
-        // getCurrentCacheSize() + newNodeSize - capacity);
-        // } else if (policy.equals("lru")) {
-        // toRemove = ReplacementPolicies.getNodesToRemoveLRU(cachedNodes,
-        // getCurrentCacheSize() + newNodeSize - capacity);
-        // } else if (policy.equals("lfu")) {
-        // toRemove = ReplacementPolicies.getNodesToRemoveLFU(cachedNodes,
-        // getCurrentCacheSize() + newNodeSize - capacity);
-        // } else {
-        // toRemove = ReplacementPolicies.getNodesToRemoveRR(cachedNodes,
-        // getCurrentCacheSize() + newNodeSize - capacity);
-        // }
-        // for (final String node : toRemove) {
-        // cachedNodes.remove(node);
-        // }
-        // removedFromCache.addAll(toRemove);
-        // }
+    @Override
+    public final boolean isRefreshDue(final String address) {
+        final CachedNode cachedNode = cachedNodes.get(address);
+        final int refreshAhead = cacheConfig.getRefreshAhead();
+        if (cachedNode == null || refreshAhead <= 0) {
+            return false;
+        }
+        final long window = cachedNode.getTTL() * 1000L * refreshAhead / 100;
+        final long remaining = cachedNode.getExpiryTime() - System.currentTimeMillis();
+        if (remaining > window) {
+            return false;
+        }
+        if (!cacheConfig.isEarlyRefreshEnabled()) {
+            return true;
+        }
+        // probabilistic early refresh: the probability grows from 0 at the start of the window to
+        // 1 at the expiry, so nodes cached at the same time aren't all refreshed at once.
+        return ThreadLocalRandom.current().nextDouble() * window >= remaining;
+    }
 
-        if (getCurrentCacheSize() + newNodeSize > capacity) {
-            final String policy = cacheConfig.getReplacementPolicy();
-            Collection<String> toRemove;
-            if (policy.equals("fifo")) {
-                toRemove = ReplacementPolicies.getNodesToRemoveFIFO(cachedNodes,
-                        cachedNodes.size() + newNodeSize - capacity);
-            } else if (policy.equals("lru")) {
-                toRemove = ReplacementPolicies.getNodesToRemoveLRU(cachedNodes,
-                        cachedNodes.size() + newNodeSize - capacity);
-            } else if (policy.equals("lfu")) {
-                toRemove = ReplacementPolicies.getNodesToRemoveLFU(cachedNodes,
-                        cachedNodes.size() + newNodeSize - capacity);
-            } else {
-                toRemove = ReplacementPolicies.getNodesToRemoveRR(cachedNodes,
-                        cachedNodes.size() + newNodeSize - capacity);
+    @Override
+    public final void removeFromCache(final String address) {
+        synchronized (policyLock) {
+            if (cachedNodes.remove(address) != null) {
+                nodeRemoved(address);
             }
-            for (final String node : toRemove) {
-                cachedNodes.remove(node);
+            if (policy != null) {
+                policy.remove(address);
             }
-            removedFromCache.addAll(toRemove);
         }
-
     }
 
     @Override
-    public final void removeFromCache(final String address) {
-        cachedNodes.remove(address);
+    public final Collection<String> removeExpiredNodes() {
+        final List<String> expired = new LinkedList<String>();
+        final Collection<Entry<String, CachedNode>> timeouts = expiryWheel
+                .advance(System.currentTimeMillis());
+        if (timeouts.isEmpty()) {
+            return expired;
+        }
+        synchronized (policyLock) {
+            for (final Entry<String, CachedNode> timeout : timeouts) {
+                // nodes that were removed or cached again in the meantime have another
+                // CachedNode.
+                if (cachedNodes.remove(timeout.getKey(), timeout.getValue())) {
+                    expired.add(timeout.getKey());
+                    if (policy != null) {
+                        policy.remove(timeout.getKey());
+                    }
+                    nodeRemoved(timeout.getKey());
+                }
+            }
+        }
+        return expired;
     }
 
     @Override
     public final void updatedCachedData(final String address, final VslNode node) {
-        if (node.getValue() != null) {
-            cachedNodes.get(address).nodeAccessed();
+        synchronized (policyLock) {
+            if (node.getValue() != null) {
+                accessed(address);
+            }
+            for (final Entry<String, VslNode> child : node.getAllChildren()) {
+                if (child.getValue().getValue() != null) {
+                    accessed(address + "/" + child.getKey());
+                }
+            }
         }
-        for (final Entry<String, VslNode> child : node.getAllChildren()) {
-            if (child.getValue().getValue() != null) {
-                cachedNodes.get(address + "/" + child.getKey()).nodeAccessed();
+    }
+
+    /**
+     * Updates the meta information of an accessed node. Must be called while holding the
+     * {@link #policyLock}.
+     *
+     * @param address
+     *            The address of the accessed node.
+     */
+    private void accessed(final String address) {
+        final CachedNode cachedNode = cachedNodes.get(address);
+        if (cachedNode != null) {
+            cachedNode.nodeAccessed();
+            if (policy != null) {
+                policy.accessed(address);
             }
         }
     }
 
     @Override
     public final void clearCache() {
-        for (final String string : cachedNodes.keySet()) {
-            removedFromCache.add(string);
+        synchronized (policyLock) {
+            removedFromCache.addAll(cachedNodes.keySet());
+            for (final String address : cachedNodes.keySet()) {
+                nodeRemoved(address);
+            }
+            cachedNodes.clear();
+            if (policy != null) {
+                policy.clear();
+            }
         }
-        cachedNodes.clear();
+        expiryWheel.clear();
         LOGGER.debug("cleared cache, size: {}", cachedNodes.size());
     }
 
@@ -0,0 +1,139 @@
+package org.ds2os.vsl.cache.metaCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Hashed timer wheel used to find expired cache entries without scanning the whole cache. Each
+ * scheduled element is put into the slot of the first tick after its deadline, advancing the wheel
+ * only visits the slots of the ticks that passed since the last advance. Elements with a deadline
+ * more than one revolution ahead stay in their slot until their round comes. Scheduled elements
+ * can't be cancelled, the caller has to ignore elements that are no longer relevant when they
+ * expire.
+ *
+ * @param <E>
+ *            The type of the scheduled elements.
+ */
+final class TimerWheel<E> {
+
+    /**
+     * The number of slots, must be a power of two.
+     */
+    private static final int SLOTS = 64;
+
+    /**
+     * The duration of a tick in milliseconds.
+     */
+    private final long tickDuration;
+
+    /**
+     * The slots of the wheel.
+     */
+    private final List<List<Timeout<E>>> wheel;
+
+    /**
+     * The last tick the wheel was advanced to.
+     */
+    private long currentTick;
+
+    /**
+     * Constructor.
+     *
+     * @param tickDuration
+     *            The duration of a tick in milliseconds.
+     * @param now
+     *            The current time in milliseconds.
+     */
+    TimerWheel(final long tickDuration, final long now) {
+        this.tickDuration = tickDuration;
+        wheel = new ArrayList<List<Timeout<E>>>(SLOTS);
+        for (int i = 0; i < SLOTS; i++) {
+            wheel.add(new LinkedList<Timeout<E>>());
+        }
+        currentTick = now / tickDuration;
+    }
+
+    /**
+     * Schedules an element to expire at the given time.
+     *
+     * @param element
+     *            The element.
+     * @param deadline
+     *            The time in milliseconds at which the element expires.
+     */
+    synchronized void schedule(final E element, final long deadline) {
+        // the first tick that starts at or after the deadline.
+        final long tick = Math.max((deadline + tickDuration - 1) / tickDuration, currentTick + 1);
+        wheel.get((int) (tick & (SLOTS - 1))).add(new Timeout<E>(element, deadline));
+    }
+
+    /**
+     * Advances the wheel to the given time and returns all elements that expired until then.
+     *
+     * @param now
+     *            The current time in milliseconds.
+     * @return The expired elements.
+     */
+    synchronized Collection<E> advance(final long now) {
+        final long tick = now / tickDuration;
+        final List<E> expired = new ArrayList<E>();
+        final long ticks = Math.min(tick - currentTick, SLOTS);
+        for (long i = 1; i <= ticks; i++) {
+            final Iterator<Timeout<E>> it = wheel.get((int) ((currentTick + i) & (SLOTS - 1)))
+                    .iterator();
+            while (it.hasNext()) {
+                final Timeout<E> timeout = it.next();
+                if (timeout.deadline <= now) {
+                    expired.add(timeout.element);
+                    it.remove();
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, tick);
+        return expired;
+    }
+
+    /**
+     * Removes all scheduled elements.
+     */
+    synchronized void clear() {
+        for (final List<Timeout<E>> slot : wheel) {
+            slot.clear();
+        }
+    }
+
+    /**
+     * A scheduled element with its deadline.
+     *
+     * @param <E>
+     *            The type of the element.
+     */
+    private static final class Timeout<E> {
+
+        /**
+         * The scheduled element.
+         */
+        private final E element;
+
+        /**
+         * The time in milliseconds at which the element expires.
+         */
+        private final long deadline;
+
+        /**
+         * Constructor.
+         *
+         * @param element
+         *            The scheduled element.
+         * @param deadline
+         *            The time in milliseconds at which the element expires.
+         */
+        Timeout(final E element, final long deadline) {
+            this.element = element;
+            this.deadline = deadline;
+        }
+    }
+}
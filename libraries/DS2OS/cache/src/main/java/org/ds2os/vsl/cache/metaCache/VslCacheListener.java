@@ -0,0 +1,30 @@
+package org.ds2os.vsl.cache.metaCache;
+
+import java.util.Collection;
+
+/**
+ * Listener that is informed about nodes added to and removed from a {@link VslMetaCache}. It is
+ * called while the meta cache is locked, so it must neither block nor call back into the meta
+ * cache.
+ */
+public interface VslCacheListener {
+
+    /**
+     * Called after nodes were added to the cache.
+     *
+     * @param address
+     *            The address the nodes were cached for.
+     * @param cachedAddresses
+     *            The addresses of the added nodes, the given one and/or its children.
+     */
+    void nodesCached(String address, Collection<String> cachedAddresses);
+
+    /**
+     * Called after a node was removed from the cache, either because it was evicted, expired or
+     * invalidated.
+     *
+     * @param address
+     *            The address of the removed node.
+     */
+    void nodeRemoved(String address);
+}
@@ -42,6 +42,13 @@ public interface VslMetaCache {
      */
     long getCurrentCacheSize();
 
+    /**
+     * Returns the bytes cached, evicted and rejected by each replacement policy that was used.
+     *
+     * @return Map of the {@link CacheMetrics} by the abbreviation of the replacement policy.
+     */
+    Map<String, CacheMetrics> getMetrics();
+
     /**
      * Returns a collection of all nodes that were removed from the metaCache but still need to be
      * removed from the dataCache. The nodesForRemoval list of the metaCache is cleared after this
@@ -51,6 +58,14 @@ public interface VslMetaCache {
      */
     Collection<String> getNodesForRemoval();
 
+    /**
+     * Removes all nodes whose TTL expired from the metaCache and returns them, so they can be
+     * removed from the dataCache too.
+     *
+     * @return Collection of the expired nodes.
+     */
+    Collection<String> removeExpiredNodes();
+
     /**
      * Returns whether or not an address is cached. This includes all accessible children of this
      * node. If any of these are not cached, this returns false.
@@ -65,6 +80,16 @@ public interface VslMetaCache {
      */
     boolean isCached(String address, VslIdentity identity);
 
+    /**
+     * Returns whether the cached node at the given address is in the refresh window before its
+     * expiry and should be refreshed.
+     *
+     * @param address
+     *            The address to check.
+     * @return True if the node is cached and should be refreshed, false otherwise.
+     */
+    boolean isRefreshDue(String address);
+
     /**
      * Removes the given node from the cache.
      *
@@ -0,0 +1,147 @@
+package org.ds2os.vsl.cache.replacement;
+
+/**
+ * Doubly linked list of {@link PolicyEntry}s using the links stored in the entries. The first entry
+ * is the oldest one, all operations run in constant time. The list keeps track of the total weight
+ * of its entries.
+ */
+class EntryList {
+
+    /**
+     * Sentinel entry, its next entry is the first and its previous entry the last of the list.
+     */
+    private final PolicyEntry head;
+
+    /**
+     * The number of entries in the list.
+     */
+    private int size;
+
+    /**
+     * The total weight of the entries in bytes.
+     */
+    private long weight;
+
+    /**
+     * Constructor.
+     */
+    EntryList() {
+        head = new PolicyEntry(null, 0);
+        head.previous = head;
+        head.next = head;
+        size = 0;
+        weight = 0;
+    }
+
+    /**
+     * Returns the total weight of the entries in the list.
+     *
+     * @return The weight in bytes.
+     */
+    final long weight() {
+        return weight;
+    }
+
+    /**
+     * Returns the number of entries in the list.
+     *
+     * @return The number of entries.
+     */
+    final int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether the list is empty.
+     *
+     * @return True if the list has no entries, false otherwise.
+     */
+    final boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the first (oldest) entry without removing it.
+     *
+     * @return The first entry, null if the list is empty.
+     */
+    final PolicyEntry peekFirst() {
+        return size == 0 ? null : head.next;
+    }
+
+    /**
+     * Removes and returns the first (oldest) entry.
+     *
+     * @return The first entry, null if the list is empty.
+     */
+    final PolicyEntry pollFirst() {
+        final PolicyEntry first = peekFirst();
+        if (first != null) {
+            remove(first);
+        }
+        return first;
+    }
+
+    /**
+     * Appends an entry that doesn't belong to any list.
+     *
+     * @param entry
+     *            The entry to append.
+     */
+    final void addLast(final PolicyEntry entry) {
+        entry.previous = head.previous;
+        entry.next = head;
+        head.previous.next = entry;
+        head.previous = entry;
+        entry.list = this;
+        size++;
+        weight += entry.weight;
+    }
+
+    /**
+     * Removes an entry of this list.
+     *
+     * @param entry
+     *            The entry to remove.
+     */
+    final void remove(final PolicyEntry entry) {
+        entry.previous.next = entry.next;
+        entry.next.previous = entry.previous;
+        entry.previous = null;
+        entry.next = null;
+        entry.list = null;
+        size--;
+        weight -= entry.weight;
+    }
+
+    /**
+     * Moves an entry of this list to its end.
+     *
+     * @param entry
+     *            The entry to move.
+     */
+    final void moveToLast(final PolicyEntry entry) {
+        if (head.previous != entry) {
+            remove(entry);
+            addLast(entry);
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    final void clear() {
+        PolicyEntry entry = head.next;
+        while (entry != head) {
+            final PolicyEntry next = entry.next;
+            entry.previous = null;
+            entry.next = null;
+            entry.list = null;
+            entry = next;
+        }
+        head.previous = head;
+        head.next = head;
+        size = 0;
+        weight = 0;
+    }
+}
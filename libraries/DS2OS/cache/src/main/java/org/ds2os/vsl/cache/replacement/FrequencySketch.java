@@ -0,0 +1,136 @@
+package org.ds2os.vsl.cache.replacement;
+
+/**
+ * Count-min sketch estimating how often an address was requested recently. Each address is counted
+ * in four 4-bit counters, the estimate is the smallest of them. After a sample of ten times the
+ * capacity all counters are halved, so the sketch forgets old popularity. Used by the
+ * {@link TinyLfuPolicy} to decide whether a new address is worth replacing a cached one.
+ */
+final class FrequencySketch {
+
+    /**
+     * Seeds of the four hash functions.
+     */
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+        0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    /**
+     * Mask to halve all sixteen 4-bit counters of a long at once.
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * The maximum value of a 4-bit counter.
+     */
+    private static final long MAX_COUNT = 15L;
+
+    /**
+     * The counters, sixteen 4-bit counters per long.
+     */
+    private final long[] table;
+
+    /**
+     * The number of counted requests after which the counters are halved.
+     */
+    private final int sampleSize;
+
+    /**
+     * The number of requests counted since the last halving.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            The capacity of the cache.
+     */
+    FrequencySketch(final int capacity) {
+        final int maximum = Math.max(1, Math.min(capacity, 1 << 30));
+        table = new long[Math.max(8, Integer.highestOneBit(maximum - 1) << 1)];
+        sampleSize = 10 * maximum;
+        size = 0;
+    }
+
+    /**
+     * Returns the estimated number of recent requests of an address.
+     *
+     * @param address
+     *            The address.
+     * @return The estimate, at most 15.
+     */
+    int frequency(final String address) {
+        final int hash = spread(address.hashCode());
+        long frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final long index = indexOf(hash, i);
+            final long count = table[(int) (index >>> 32)] >>> (int) index & MAX_COUNT;
+            frequency = Math.min(frequency, count);
+        }
+        return (int) frequency;
+    }
+
+    /**
+     * Counts a request of an address.
+     *
+     * @param address
+     *            The requested address.
+     */
+    void increment(final String address) {
+        final int hash = spread(address.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final long index = indexOf(hash, i);
+            final int slot = (int) (index >>> 32);
+            final int shift = (int) index;
+            if ((table[slot] >>> shift & MAX_COUNT) != MAX_COUNT) {
+                table[slot] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Halves all counters.
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = table[i] >>> 1 & RESET_MASK;
+        }
+        size = size >>> 1;
+    }
+
+    /**
+     * Returns the position of the counter of a hash function.
+     *
+     * @param hash
+     *            The spread hash of the address.
+     * @param function
+     *            The number of the hash function.
+     * @return The index in the table in the upper and the bit offset of the counter in the lower
+     *         32 bits.
+     */
+    private long indexOf(final int hash, final int function) {
+        long h = (hash + SEEDS[function]) * SEEDS[function];
+        h += h >>> 32;
+        final long slot = (int) h & (table.length - 1);
+        final long shift = (h >>> 40 & 15L) << 2;
+        return slot << 32 | shift;
+    }
+
+    /**
+     * Applies a supplemental hash function to the hash code of an address.
+     *
+     * @param hashCode
+     *            The hash code.
+     * @return The spread hash.
+     */
+    private static int spread(final int hashCode) {
+        int h = hashCode * 0x9e3779b9;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,199 @@
+package org.ds2os.vsl.cache.replacement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LFU replacement in constant time. Entries are kept in one {@link FrequencyBucket} per access
+ * count, the buckets are linked in ascending order of their count. An access moves the entry to
+ * the bucket of the next count. The oldest entries of the lowest bucket are dropped until the new
+ * one fits.
+ */
+final class LfuPolicy implements VslReplacementPolicy {
+
+    /**
+     * The maximum total weight of the kept addresses.
+     */
+    private final long capacity;
+
+    /**
+     * The total weight of the kept addresses.
+     */
+    private long weight;
+
+    /**
+     * The entries of all kept addresses.
+     */
+    private final Map<String, PolicyEntry> entries;
+
+    /**
+     * Sentinel bucket, its next bucket has the lowest and its previous bucket the highest count.
+     */
+    private final FrequencyBucket buckets;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            The maximum total weight of the kept addresses in bytes.
+     */
+    LfuPolicy(final long capacity) {
+        this.capacity = capacity;
+        weight = 0;
+        entries = new HashMap<String, PolicyEntry>();
+        buckets = new FrequencyBucket(-1);
+        buckets.previousBucket = buckets;
+        buckets.nextBucket = buckets;
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getWeight() {
+        return weight;
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public Collection<String> add(final String address, final long entryWeight) {
+        remove(address);
+        if (entryWeight > capacity) {
+            return Collections.singletonList(address);
+        }
+        List<String> removed = Collections.emptyList();
+        while (weight + entryWeight > capacity) {
+            if (removed.isEmpty()) {
+                removed = new ArrayList<String>(1);
+            }
+            final FrequencyBucket lowest = buckets.nextBucket;
+            final PolicyEntry victim = lowest.pollFirst();
+            removeIfEmpty(lowest);
+            entries.remove(victim.address);
+            weight -= victim.weight;
+            removed.add(victim.address);
+        }
+
+        final PolicyEntry entry = new PolicyEntry(address, entryWeight);
+        entries.put(address, entry);
+        weight += entryWeight;
+        FrequencyBucket first = buckets.nextBucket;
+        if (first.count != 0) {
+            first = insertAfter(buckets, 0);
+        }
+        first.addLast(entry);
+        return removed;
+    }
+
+    @Override
+    public void accessed(final String address) {
+        final PolicyEntry entry = entries.get(address);
+        if (entry == null) {
+            return;
+        }
+        final FrequencyBucket bucket = (FrequencyBucket) entry.list;
+        FrequencyBucket next = bucket.nextBucket;
+        if (next.count != bucket.count + 1) {
+            next = insertAfter(bucket, bucket.count + 1);
+        }
+        bucket.remove(entry);
+        next.addLast(entry);
+        removeIfEmpty(bucket);
+    }
+
+    @Override
+    public void remove(final String address) {
+        final PolicyEntry entry = entries.remove(address);
+        if (entry != null) {
+            weight -= entry.weight;
+            final FrequencyBucket bucket = (FrequencyBucket) entry.list;
+            bucket.remove(entry);
+            removeIfEmpty(bucket);
+        }
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+        weight = 0;
+        FrequencyBucket bucket = buckets.nextBucket;
+        while (bucket != buckets) {
+            bucket.clear();
+            bucket = bucket.nextBucket;
+        }
+        buckets.previousBucket = buckets;
+        buckets.nextBucket = buckets;
+    }
+
+    /**
+     * Creates a new bucket and links it after the given one.
+     *
+     * @param bucket
+     *            The bucket after which the new bucket is linked.
+     * @param count
+     *            The access count of the new bucket.
+     * @return The new bucket.
+     */
+    private FrequencyBucket insertAfter(final FrequencyBucket bucket, final int count) {
+        final FrequencyBucket inserted = new FrequencyBucket(count);
+        inserted.previousBucket = bucket;
+        inserted.nextBucket = bucket.nextBucket;
+        bucket.nextBucket.previousBucket = inserted;
+        bucket.nextBucket = inserted;
+        return inserted;
+    }
+
+    /**
+     * Unlinks the given bucket if it has no entries left.
+     *
+     * @param bucket
+     *            The bucket to check.
+     */
+    private void removeIfEmpty(final FrequencyBucket bucket) {
+        if (bucket.isEmpty() && bucket != buckets) {
+            bucket.previousBucket.nextBucket = bucket.nextBucket;
+            bucket.nextBucket.previousBucket = bucket.previousBucket;
+        }
+    }
+
+    /**
+     * The entries with the same access count, in the order they reached this count.
+     */
+    private static final class FrequencyBucket extends EntryList {
+
+        /**
+         * The access count of the entries in this bucket.
+         */
+        private final int count;
+
+        /**
+         * The bucket with the next lower count.
+         */
+        private FrequencyBucket previousBucket;
+
+        /**
+         * The bucket with the next higher count.
+         */
+        private FrequencyBucket nextBucket;
+
+        /**
+         * Constructor.
+         *
+         * @param count
+         *            The access count of the entries in this bucket.
+         */
+        FrequencyBucket(final int count) {
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.ds2os.vsl.cache.replacement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FIFO and LRU replacement in constant time. The cached addresses are kept in one
+ * {@link EntryList} ordered by insertion or, for LRU, by last access. The first addresses of the
+ * list are dropped until the new one fits.
+ */
+final class LinkedPolicy implements VslReplacementPolicy {
+
+    /**
+     * The maximum total weight of the kept addresses.
+     */
+    private final long capacity;
+
+    /**
+     * Whether accesses move an address to the end of the list (LRU) or not (FIFO).
+     */
+    private final boolean accessOrder;
+
+    /**
+     * The entries of all kept addresses.
+     */
+    private final Map<String, PolicyEntry> entries;
+
+    /**
+     * The entries in replacement order.
+     */
+    private final EntryList list;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            The maximum total weight of the kept addresses in bytes.
+     * @param accessOrder
+     *            True for LRU replacement, false for FIFO replacement.
+     */
+    LinkedPolicy(final long capacity, final boolean accessOrder) {
+        this.capacity = capacity;
+        this.accessOrder = accessOrder;
+        entries = new HashMap<String, PolicyEntry>();
+        list = new EntryList();
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getWeight() {
+        return list.weight();
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public Collection<String> add(final String address, final long weight) {
+        remove(address);
+        if (weight > capacity) {
+            return Collections.singletonList(address);
+        }
+        List<String> removed = Collections.emptyList();
+        while (list.weight() + weight > capacity) {
+            if (removed.isEmpty()) {
+                removed = new ArrayList<String>(1);
+            }
+            final PolicyEntry first = list.pollFirst();
+            entries.remove(first.address);
+            removed.add(first.address);
+        }
+        final PolicyEntry entry = new PolicyEntry(address, weight);
+        entries.put(address, entry);
+        list.addLast(entry);
+        return removed;
+    }
+
+    @Override
+    public void accessed(final String address) {
+        if (accessOrder) {
+            final PolicyEntry entry = entries.get(address);
+            if (entry != null) {
+                list.moveToLast(entry);
+            }
+        }
+    }
+
+    @Override
+    public void remove(final String address) {
+        final PolicyEntry entry = entries.remove(address);
+        if (entry != null) {
+            list.remove(entry);
+        }
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+        list.clear();
+    }
+}
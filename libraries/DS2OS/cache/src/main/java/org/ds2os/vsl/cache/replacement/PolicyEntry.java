@@ -0,0 +1,46 @@
+package org.ds2os.vsl.cache.replacement;
+
+/**
+ * Entry of a cached address in the {@link EntryList}s of a replacement policy. The entry holds its
+ * own links, so moving it within or between lists doesn't allocate.
+ */
+final class PolicyEntry {
+
+    /**
+     * The cached address.
+     */
+    final String address;
+
+    /**
+     * The weight of the cached node in bytes.
+     */
+    final long weight;
+
+    /**
+     * The list the entry currently belongs to, null if none.
+     */
+    EntryList list;
+
+    /**
+     * The previous entry in the list.
+     */
+    PolicyEntry previous;
+
+    /**
+     * The next entry in the list.
+     */
+    PolicyEntry next;
+
+    /**
+     * Constructor.
+     *
+     * @param address
+     *            The cached address.
+     * @param weight
+     *            The weight of the cached node in bytes.
+     */
+    PolicyEntry(final String address, final long weight) {
+        this.address = address;
+        this.weight = weight;
+    }
+}
@@ -0,0 +1,117 @@
+package org.ds2os.vsl.cache.replacement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Random replacement in constant time. The entries are kept in an array together with a map of
+ * their index, so a random entry can be picked and removed by swapping in the last one.
+ */
+final class RandomPolicy implements VslReplacementPolicy {
+
+    /**
+     * The maximum total weight of the kept addresses.
+     */
+    private final long capacity;
+
+    /**
+     * The total weight of the kept addresses.
+     */
+    private long weight;
+
+    /**
+     * All kept entries.
+     */
+    private final List<PolicyEntry> entries;
+
+    /**
+     * The index of each kept address in {@link #entries}.
+     */
+    private final Map<String, Integer> indexes;
+
+    /**
+     * Used to pick the dropped addresses.
+     */
+    private final Random random;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            The maximum total weight of the kept addresses in bytes.
+     */
+    RandomPolicy(final long capacity) {
+        this.capacity = capacity;
+        weight = 0;
+        entries = new ArrayList<PolicyEntry>();
+        indexes = new HashMap<String, Integer>();
+        random = new Random();
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getWeight() {
+        return weight;
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public Collection<String> add(final String address, final long entryWeight) {
+        remove(address);
+        if (entryWeight > capacity) {
+            return Collections.singletonList(address);
+        }
+        List<String> removed = Collections.emptyList();
+        while (weight + entryWeight > capacity) {
+            if (removed.isEmpty()) {
+                removed = new ArrayList<String>(1);
+            }
+            final String victim = entries.get(random.nextInt(entries.size())).address;
+            remove(victim);
+            removed.add(victim);
+        }
+        indexes.put(address, entries.size());
+        entries.add(new PolicyEntry(address, entryWeight));
+        weight += entryWeight;
+        return removed;
+    }
+
+    @Override
+    public void accessed(final String address) {
+        // random replacement doesn't care about accesses.
+    }
+
+    @Override
+    public void remove(final String address) {
+        final Integer index = indexes.remove(address);
+        if (index == null) {
+            return;
+        }
+        weight -= entries.get(index).weight;
+        final PolicyEntry last = entries.remove(entries.size() - 1);
+        if (index < entries.size()) {
+            entries.set(index, last);
+            indexes.put(last.address, index);
+        }
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+        indexes.clear();
+        weight = 0;
+    }
+}
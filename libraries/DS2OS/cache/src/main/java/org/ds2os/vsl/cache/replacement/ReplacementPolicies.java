@@ -12,7 +12,10 @@ import java.util.TreeMap;
 import org.ds2os.vsl.cache.metaCache.CachedNode;
 
 /**
- * Class with implemenations for different replacement policies.
+ * Class with implemenations for different replacement policies. The static
+ * <code>getNodesToRemove</code> methods scan all cached nodes on each call, the
+ * {@link VslReplacementPolicy} instances created by {@link #createPolicy(String, long)} track the
+ * cached addresses themselves and decide in constant time.
  *
  * @author liebald
  */
@@ -25,6 +28,30 @@ public final class ReplacementPolicies {
 
     }
 
+    /**
+     * Creates the {@link VslReplacementPolicy} with the given abbreviation. Unknown abbreviations
+     * result in random replacement.
+     *
+     * @param policy
+     *            Abbreviation of the replacement strategy (fifo, lru, lfu, tinylfu or rr).
+     * @param capacity
+     *            The maximum total size of the cached nodes in bytes.
+     * @return The new replacement policy.
+     */
+    public static VslReplacementPolicy createPolicy(final String policy, final long capacity) {
+        if ("fifo".equals(policy)) {
+            return new LinkedPolicy(capacity, false);
+        } else if ("lru".equals(policy)) {
+            return new LinkedPolicy(capacity, true);
+        } else if ("lfu".equals(policy)) {
+            return new LfuPolicy(capacity);
+        } else if ("tinylfu".equals(policy)) {
+            return new TinyLfuPolicy(capacity);
+        } else {
+            return new RandomPolicy(capacity);
+        }
+    }
+
     /**
      * This method is used to decide which nodes to drop from the cache and should be implemented by
      * classes that implement the replacement. At least the specified amount of nodes that should be
@@ -0,0 +1,222 @@
+package org.ds2os.vsl.cache.replacement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Segmented LRU replacement with a frequency based admission filter (W-TinyLFU). New addresses
+ * enter a small LRU window. When it overflows, its oldest address competes with the oldest
+ * address of the probation segment of the main cache, and the one requested less often according
+ * to the {@link FrequencySketch} is dropped. If the candidate wins, as many addresses are dropped
+ * from the main cache as needed to fit its weight. Accessed addresses are promoted from probation
+ * to the protected segment. This keeps addresses requested only once from replacing popular ones.
+ */
+final class TinyLfuPolicy implements VslReplacementPolicy {
+
+    /**
+     * Share of the capacity used for the window in percent.
+     */
+    private static final int WINDOW_PERCENT = 1;
+
+    /**
+     * Share of the main cache used for the protected segment in percent.
+     */
+    private static final int PROTECTED_PERCENT = 80;
+
+    /**
+     * The assumed average weight of a cached node in bytes, used to size the sketch.
+     */
+    private static final int AVERAGE_WEIGHT = 64;
+
+    /**
+     * The maximum total weight of the kept addresses.
+     */
+    private final long capacity;
+
+    /**
+     * The maximum total weight of the addresses in the window.
+     */
+    private final long windowCapacity;
+
+    /**
+     * The maximum total weight of the addresses in the main cache (probation and protected).
+     */
+    private final long mainCapacity;
+
+    /**
+     * The maximum total weight of the addresses in the protected segment.
+     */
+    private final long protectedCapacity;
+
+    /**
+     * The entries of all kept addresses.
+     */
+    private final Map<String, PolicyEntry> entries;
+
+    /**
+     * LRU list of recently added addresses.
+     */
+    private final EntryList window;
+
+    /**
+     * LRU list of addresses in the main cache that weren't accessed since they were admitted.
+     */
+    private final EntryList probation;
+
+    /**
+     * LRU list of addresses in the main cache that were accessed since they were admitted.
+     */
+    private final EntryList protectedSegment;
+
+    /**
+     * Estimates the recent request frequency of addresses.
+     */
+    private final FrequencySketch sketch;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            The maximum total weight of the kept addresses in bytes.
+     */
+    TinyLfuPolicy(final long capacity) {
+        this.capacity = capacity;
+        windowCapacity = capacity * WINDOW_PERCENT / 100;
+        mainCapacity = capacity - windowCapacity;
+        protectedCapacity = mainCapacity * PROTECTED_PERCENT / 100;
+        entries = new HashMap<String, PolicyEntry>();
+        window = new EntryList();
+        probation = new EntryList();
+        protectedSegment = new EntryList();
+        sketch = new FrequencySketch(
+                (int) Math.min(Integer.MAX_VALUE, Math.max(1, capacity / AVERAGE_WEIGHT)));
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getWeight() {
+        return window.weight() + getMainWeight();
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public Collection<String> add(final String address, final long weight) {
+        remove(address);
+        sketch.increment(address);
+        if (weight > capacity) {
+            return Collections.singletonList(address);
+        }
+        final PolicyEntry entry = new PolicyEntry(address, weight);
+        entries.put(address, entry);
+        window.addLast(entry);
+
+        List<String> removed = Collections.emptyList();
+        while (window.weight() > windowCapacity) {
+            if (removed.isEmpty()) {
+                removed = new ArrayList<String>(1);
+            }
+            admit(window.pollFirst(), removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Moves the oldest entry of the window to the probation segment if it is requested more often
+     * than the first entry it would replace, and drops the entries needed to fit it. Otherwise the
+     * candidate is dropped.
+     *
+     * @param candidate
+     *            The entry removed from the window.
+     * @param removed
+     *            The list of dropped addresses to add to.
+     */
+    private void admit(final PolicyEntry candidate, final List<String> removed) {
+        if (getMainWeight() + candidate.weight <= mainCapacity) {
+            probation.addLast(candidate);
+            return;
+        }
+        final PolicyEntry victim = getVictim();
+        if (candidate.weight > mainCapacity || victim == null || sketch
+                .frequency(candidate.address) <= sketch.frequency(victim.address)) {
+            entries.remove(candidate.address);
+            removed.add(candidate.address);
+            return;
+        }
+        while (getMainWeight() + candidate.weight > mainCapacity) {
+            final PolicyEntry dropped = getVictim();
+            dropped.list.remove(dropped);
+            entries.remove(dropped.address);
+            removed.add(dropped.address);
+        }
+        probation.addLast(candidate);
+    }
+
+    /**
+     * Returns the next entry to drop from the main cache, the oldest of the probation segment or,
+     * if it is empty, of the protected segment.
+     *
+     * @return The entry, null if the main cache is empty.
+     */
+    private PolicyEntry getVictim() {
+        final PolicyEntry victim = probation.peekFirst();
+        if (victim == null) {
+            return protectedSegment.peekFirst();
+        }
+        return victim;
+    }
+
+    /**
+     * Returns the total weight of the main cache.
+     *
+     * @return The weight of the probation and protected segments in bytes.
+     */
+    private long getMainWeight() {
+        return probation.weight() + protectedSegment.weight();
+    }
+
+    @Override
+    public void accessed(final String address) {
+        sketch.increment(address);
+        final PolicyEntry entry = entries.get(address);
+        if (entry == null) {
+            return;
+        }
+        if (entry.list == probation) {
+            probation.remove(entry);
+            protectedSegment.addLast(entry);
+            while (protectedSegment.weight() > protectedCapacity) {
+                probation.addLast(protectedSegment.pollFirst());
+            }
+        } else {
+            entry.list.moveToLast(entry);
+        }
+    }
+
+    @Override
+    public void remove(final String address) {
+        final PolicyEntry entry = entries.remove(address);
+        if (entry != null) {
+            entry.list.remove(entry);
+        }
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+}
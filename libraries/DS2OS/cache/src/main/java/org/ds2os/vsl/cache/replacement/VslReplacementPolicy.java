@@ -0,0 +1,67 @@
+package org.ds2os.vsl.cache.replacement;
+
+import java.util.Collection;
+
+/**
+ * Interface for replacement policies that keep track of the cached addresses themselves and decide
+ * in constant time which addresses to drop when the cache reaches its capacity. Each address has a
+ * weight, the size of its cached node in bytes, and the capacity limits the total weight.
+ * Implementations are not thread safe, callers have to synchronize on the policy.
+ */
+public interface VslReplacementPolicy {
+
+    /**
+     * Returns the maximum total weight of the addresses that are kept by this policy.
+     *
+     * @return The capacity of the policy in bytes.
+     */
+    long getCapacity();
+
+    /**
+     * Returns the total weight of the addresses currently kept by this policy.
+     *
+     * @return The weight in bytes.
+     */
+    long getWeight();
+
+    /**
+     * Returns the number of addresses currently kept by this policy.
+     *
+     * @return The number of addresses.
+     */
+    int size();
+
+    /**
+     * Adds a newly cached address. If the capacity is exceeded, addresses are dropped. This can
+     * include the added address itself if the policy decides not to admit it or it is heavier than
+     * the capacity. An address that is already kept is replaced.
+     *
+     * @param address
+     *            The address that was cached.
+     * @param weight
+     *            The weight of the cached node in bytes.
+     * @return The addresses that were dropped and must be removed from the cache, empty if none.
+     */
+    Collection<String> add(String address, long weight);
+
+    /**
+     * Records an access to a cached address. Addresses that aren't kept by the policy are ignored.
+     *
+     * @param address
+     *            The accessed address.
+     */
+    void accessed(String address);
+
+    /**
+     * Removes an address that was dropped from the cache for another reason (expired, changed,...).
+     *
+     * @param address
+     *            The removed address.
+     */
+    void remove(String address);
+
+    /**
+     * Removes all addresses.
+     */
+    void clear();
+}
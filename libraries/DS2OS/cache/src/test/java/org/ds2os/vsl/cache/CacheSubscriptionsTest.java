@@ -0,0 +1,110 @@
+package org.ds2os.vsl.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+
+import org.ds2os.vsl.core.VslParametrizedConnector;
+import org.ds2os.vsl.core.VslSubscriber;
+import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+/**
+ * Testclass for {@link CacheSubscriptions}.
+ */
+public class CacheSubscriptionsTest {
+
+    /**
+     * Timeout for the background subscription changes in milliseconds.
+     */
+    private static final int TIMEOUT = 1000;
+
+    /**
+     * Unit under test.
+     */
+    private CacheSubscriptions subscriptions;
+
+    /**
+     * Mock of the {@link VslParametrizedConnector} used for subscribing.
+     */
+    private VslParametrizedConnector connectorMock;
+
+    /**
+     * Setup function.
+     */
+    @Before
+    public final void setUp() {
+        connectorMock = mock(VslParametrizedConnector.class);
+        subscriptions = new CacheSubscriptions(connectorMock, null);
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    @After
+    public final void tearDown() {
+        subscriptions.shutdown();
+    }
+
+    /**
+     * Test that a root is subscribed once and unsubscribed when its last node was removed.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testReferenceCounting() throws Exception {
+        subscriptions.nodesCached("/agent2/a", Arrays.asList("/agent2/a", "/agent2/a/b"));
+        subscriptions.nodesCached("/agent2/a/c", Arrays.asList("/agent2/a/c"));
+        assertThat(subscriptions.isSubscribed("/agent2/a"), is(true));
+        assertThat(subscriptions.isSubscribed("/agent2/a/c"), is(false));
+        verify(connectorMock, timeout(TIMEOUT)).subscribe(eq("/agent2/a"),
+                any(VslSubscriber.class), any(VslAddressParameters.class));
+
+        subscriptions.nodeRemoved("/agent2/a");
+        subscriptions.nodeRemoved("/agent2/a/b");
+        subscriptions.nodeRemoved("/agent2/unknown");
+        assertThat(subscriptions.isSubscribed("/agent2/a"), is(true));
+        subscriptions.nodeRemoved("/agent2/a/c");
+        assertThat(subscriptions.isSubscribed("/agent2/a"), is(false));
+        verify(connectorMock, timeout(TIMEOUT)).unsubscribe(eq("/agent2/a"),
+                any(VslAddressParameters.class));
+    }
+
+    /**
+     * Test that roots below a newly cached root are merged into it and unsubscribed after the new
+     * root was subscribed.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testNestedRoots() throws Exception {
+        subscriptions.nodesCached("/agent2/a/b", Arrays.asList("/agent2/a/b"));
+        subscriptions.nodesCached("/agent2/a", Arrays.asList("/agent2/a"));
+        assertThat(subscriptions.isSubscribed("/agent2/a"), is(true));
+        assertThat(subscriptions.isSubscribed("/agent2/a/b"), is(false));
+        final InOrder inOrder = inOrder(connectorMock);
+        inOrder.verify(connectorMock, timeout(TIMEOUT)).subscribe(eq("/agent2/a"),
+                any(VslSubscriber.class), any(VslAddressParameters.class));
+        inOrder.verify(connectorMock, timeout(TIMEOUT)).unsubscribe(eq("/agent2/a/b"),
+                any(VslAddressParameters.class));
+
+        subscriptions.nodeRemoved("/agent2/a");
+        assertThat(subscriptions.isSubscribed("/agent2/a"), is(true));
+        subscriptions.nodeRemoved("/agent2/a/b");
+        assertThat(subscriptions.isSubscribed("/agent2/a"), is(false));
+        verify(connectorMock, timeout(TIMEOUT)).unsubscribe(eq("/agent2/a"),
+                any(VslAddressParameters.class));
+    }
+}
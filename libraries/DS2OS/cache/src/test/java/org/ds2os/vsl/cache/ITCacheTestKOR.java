@@ -8,6 +8,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -16,9 +17,9 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
-import org.ds2os.vsl.core.VslConnector;
 import org.ds2os.vsl.core.VslIdentity;
 import org.ds2os.vsl.core.VslKORCacheHandler;
+import org.ds2os.vsl.core.VslParametrizedConnector;
 import org.ds2os.vsl.core.VslServiceManifest;
 import org.ds2os.vsl.core.config.VslCacheConfig;
 import org.ds2os.vsl.core.impl.ServiceIdentity;
@@ -28,6 +29,7 @@ import org.ds2os.vsl.core.node.VslNode;
 import org.ds2os.vsl.core.node.VslNodeFactoryImpl;
 import org.ds2os.vsl.core.node.VslStructureNodeImpl;
 import org.ds2os.vsl.exception.NodeNotExistingException;
+import org.ds2os.vsl.exception.NoPermissionException;
 import org.ds2os.vsl.exception.VslException;
 import org.junit.Before;
 import org.junit.Test;
@@ -55,9 +57,9 @@ public class ITCacheTestKOR {
     private VslCacheConfig cacheConfigMock;
 
     /**
-     * Mock of the {@link VslConnector} for accessing the KOR.
+     * Mock of the {@link VslParametrizedConnector} for accessing the KOR.
      */
-    private VslConnector connectorMock;
+    private VslParametrizedConnector connectorMock;
 
     /**
      * Setup the tests.
@@ -69,11 +71,11 @@ public class ITCacheTestKOR {
     public final void setUp() throws Exception {
         cacheHandlerMock = mock(VslKORCacheHandler.class);
         cacheConfigMock = mock(VslCacheConfig.class);
-        connectorMock = mock(VslConnector.class);
+        connectorMock = mock(VslParametrizedConnector.class);
         when(cacheConfigMock.getDefaultTTL()).thenReturn(10);
         when(cacheConfigMock.getCharset()).thenReturn("UTF-8");
         when(cacheConfigMock.isCacheEnabled()).thenReturn(true);
-        when(cacheConfigMock.getCacheCapacity()).thenReturn(100);
+        when(cacheConfigMock.getCacheCapacity()).thenReturn(100000);
         when(cacheConfigMock.getReplacementPolicy()).thenReturn("rr");
         when(connectorMock.registerService(any(VslServiceManifest.class)))
                 .thenReturn("/agent1/system/cache");
@@ -409,4 +411,43 @@ public class ITCacheTestKOR {
 
     }
 
+    /**
+     * Test of the {@link Cache#revalidate(String)} method.
+     *
+     * @throws VslException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testRevalidate() throws VslException {
+        final List<String> readers = Arrays.asList("ID1", "ID2");
+        final List<String> writers = Arrays.asList("ID2", "ID3");
+        final List<String> types = Arrays.asList("/basic/text");
+        final VslIdentity id = new ServiceIdentity("clientID", "ID1");
+
+        when(cacheHandlerMock.getStructure("/a"))
+                .thenReturn(new VslStructureNodeImpl(readers, writers, "", types, "TTL='30'"));
+        when(cacheHandlerMock.get("/a", id))
+                .thenReturn(connectorMock.getNodeFactory().createImmutableLeaf("dummy"));
+        unitUnderTest.cacheNode("/a", connectorMock.getNodeFactory().createImmutableLeaf(types,
+                "root", new Date(1234L), 5L, null, Collections.<String, String>emptyMap()));
+        verify(cacheHandlerMock).cacheVslNodes(eq("/a"), any(VslNode.class));
+
+        // the version didn't advance, the cached node is kept.
+        when(connectorMock.get("/a")).thenReturn(connectorMock.getNodeFactory().createImmutableLeaf(
+                types, "root", new Date(1234L), 5L, null, Collections.<String, String>emptyMap()));
+        unitUnderTest.revalidate("/a");
+        verify(cacheHandlerMock).cacheVslNodes(eq("/a"), any(VslNode.class));
+
+        // the version advanced, the cached node is replaced.
+        when(connectorMock.get("/a")).thenReturn(connectorMock.getNodeFactory().createImmutableLeaf(
+                types, "new", new Date(2345L), 6L, null, Collections.<String, String>emptyMap()));
+        unitUnderTest.revalidate("/a");
+        verify(cacheHandlerMock, times(2)).cacheVslNodes(eq("/a"), any(VslNode.class));
+        assertThat(unitUnderTest.getCachedNode("/a", id).getValue(), is(equalTo("dummy")));
+
+        // the node can't be requested anymore, it is invalidated.
+        when(connectorMock.get("/a")).thenThrow(new NoPermissionException("no access"));
+        unitUnderTest.revalidate("/a");
+        assertNull(unitUnderTest.getCachedNode("/a", id));
+    }
 }
@@ -1,24 +1,18 @@
 package org.ds2os.vsl.cache.cacheCleaner;
 
-import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.atLeast;
-import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collections;
 
 import org.ds2os.vsl.cache.dataCache.VslDataCache;
-import org.ds2os.vsl.cache.metaCache.CachedNode;
 import org.ds2os.vsl.cache.metaCache.VslMetaCache;
 import org.junit.Before;
-import org.junit.Ignore;
 import org.junit.Test;
-import org.mockito.invocation.InvocationOnMock;
-import org.mockito.stubbing.Answer;
 
 /**
  * Testclass for the {@link CacheCleaner} Class.
@@ -27,11 +21,6 @@ import org.mockito.stubbing.Answer;
  */
 public class CacheCleanerTest {
 
-    /**
-     * Object to synchronize access on the {@link VslMetaCache}.
-     */
-    private final Object threadLock = new Object();
-
     /**
      * Mock of the used {@link VslMetaCache}.
      */
@@ -54,52 +43,33 @@ public class CacheCleanerTest {
     public final void setUp() {
         metaCacheMock = mock(VslMetaCache.class);
         dataCacheMock = mock(VslDataCache.class);
-        unitUnderTest = new CacheCleaner(threadLock, metaCacheMock, dataCacheMock);
+        unitUnderTest = new CacheCleaner(metaCacheMock, dataCacheMock);
     }
 
     /**
      * Test of the cleaner thread.
      */
     @Test
-    @Ignore
     public final void test() {
-        final Map<String, CachedNode> cachedNodes = new HashMap<String, CachedNode>();
-        cachedNodes.put("/a/b", new CachedNode(1, 1, 10));
-        cachedNodes.put("/c/d", new CachedNode(2, 2, 10));
-        cachedNodes.put("/e/f", new CachedNode(3, 2, 10));
-        cachedNodes.put("/g/h", new CachedNode(4, 4, 10));
-        cachedNodes.put("/i/j", new CachedNode(5, 6, 10));
-
-        when(metaCacheMock.getAllCachedNodes()).thenReturn(cachedNodes);
-        doAnswer(new Answer<Void>() {
-
-            @Override
-            public Void answer(final InvocationOnMock invocation) throws Throwable {
-                cachedNodes.remove(invocation.getArguments()[0]);
-                return null;
-            }
-        }).when(metaCacheMock).removeFromCache(anyString());
+        when(metaCacheMock.removeExpiredNodes()).thenReturn(Arrays.asList("/a/b", "/c/d"))
+                .thenReturn(Collections.<String>emptyList());
+        when(metaCacheMock.getNodesForRemoval()).thenReturn(Arrays.asList("/e/f"))
+                .thenReturn(Collections.<String>emptyList());
 
         final Thread t = new Thread(unitUnderTest);
         t.start();
         try {
-            Thread.sleep(7000);
+            Thread.sleep(1500);
         } catch (final InterruptedException e) {
 
         }
         t.interrupt();
 
-        verify(metaCacheMock, atLeast(2)).getAllCachedNodes();
-        verify(metaCacheMock).removeFromCache("/a/b");
-        verify(metaCacheMock).removeFromCache("/c/d");
-        verify(metaCacheMock).removeFromCache("/e/f");
-        verify(metaCacheMock, never()).removeFromCache("/g/h");
-        verify(metaCacheMock, never()).removeFromCache("/i/j");
+        verify(metaCacheMock, atLeast(2)).removeExpiredNodes();
         verify(dataCacheMock).removeFromCache("/a/b");
         verify(dataCacheMock).removeFromCache("/c/d");
         verify(dataCacheMock).removeFromCache("/e/f");
         verify(dataCacheMock, never()).removeFromCache("/g/h");
-        verify(dataCacheMock, never()).removeFromCache("/i/j");
     }
 
 }
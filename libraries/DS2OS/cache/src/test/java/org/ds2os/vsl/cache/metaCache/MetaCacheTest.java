@@ -7,6 +7,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -18,6 +19,7 @@ import org.ds2os.vsl.core.config.VslCacheConfig;
 import org.ds2os.vsl.core.impl.ServiceIdentity;
 import org.ds2os.vsl.core.node.VslMutableNode;
 import org.ds2os.vsl.core.node.VslMutableStructureNode;
+import org.ds2os.vsl.core.node.VslNode;
 import org.ds2os.vsl.core.node.VslNodeFactory;
 import org.ds2os.vsl.core.node.VslNodeFactoryImpl;
 import org.ds2os.vsl.core.node.VslStructureNodeImpl;
@@ -74,7 +76,8 @@ public class MetaCacheTest {
         when(cacheConfigMock.getDefaultTTL()).thenReturn(60);
         when(cacheConfigMock.getCharset()).thenReturn("UTF-8");
         when(cacheConfigMock.getReplacementPolicy()).thenReturn("rr");
-        when(cacheConfigMock.getCacheCapacity()).thenReturn(100);
+        when(cacheConfigMock.getCacheCapacity()).thenReturn(100000);
+        when(cacheConfigMock.getCacheMaxEntrySize()).thenReturn(65536);
 
         nodeFactory = new VslNodeFactoryImpl();
         unitUnderTest = new MetaCache(cacheHandlerMock, cacheConfigMock, nodeFactory);
@@ -352,4 +355,146 @@ public class MetaCacheTest {
 
     }
 
+    /**
+     * Test that nodes are dropped by the configured replacement policy when the cache is full. The
+     * size of a cached node is the size of its value plus {@link CachedNode#SIZE}.
+     *
+     * @throws NodeNotExistingException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testReplacement() throws NodeNotExistingException {
+        // room for /a (44 bytes), /a/b (47 bytes) and one of /x and /y (41 bytes).
+        when(cacheConfigMock.getCacheCapacity()).thenReturn(135);
+        when(cacheConfigMock.getReplacementPolicy()).thenReturn("lru");
+        final List<String> readers = Arrays.asList("ID1", "ID2");
+        final List<String> writers = Arrays.asList("ID2", "ID3");
+        final List<String> types = Arrays.asList("/basic/text");
+
+        final VslMutableStructureNode structure = new VslStructureNodeImpl(readers, writers, "",
+                types, "TTL='30'");
+        structure.putChild("b", new VslStructureNodeImpl(readers, writers, "", types, ""));
+        when(cacheHandlerMock.getStructure("/a")).thenReturn(structure);
+        when(cacheHandlerMock.getStructure("/x"))
+                .thenReturn(new VslStructureNodeImpl(readers, writers, "", types, ""));
+        when(cacheHandlerMock.getStructure("/y"))
+                .thenReturn(new VslStructureNodeImpl(readers, writers, "", types, ""));
+
+        final VslMutableNode toCache = nodeFactory.createMutableClone(nodeFactory
+                .createImmutableLeaf(types, "root", new Date(1234L), 5L, null,
+                        Collections.<String, String>emptyMap()));
+        toCache.putChild("b", nodeFactory.createMutableClone(nodeFactory.createImmutableLeaf(types,
+                "child_b", new Date(1234L), 5L, null, Collections.<String, String>emptyMap())));
+        unitUnderTest.cache("/a", toCache);
+        unitUnderTest.cache("/x", nodeFactory.createImmutableLeaf(types, "x", new Date(1234L), 5L,
+                null, Collections.<String, String>emptyMap()));
+        unitUnderTest.updatedCachedData("/a", toCache);
+
+        // /x is the least recently used node.
+        unitUnderTest.cache("/y", nodeFactory.createImmutableLeaf(types, "y", new Date(1234L), 5L,
+                null, Collections.<String, String>emptyMap()));
+        final Map<String, CachedNode> cached = unitUnderTest.getAllCachedNodes();
+        assertThat(cached.size(), is(equalTo(3)));
+        assertThat(cached.containsKey("/x"), is(equalTo(false)));
+        assertThat(cached.containsKey("/y"), is(equalTo(true)));
+        assertThat(unitUnderTest.getNodesForRemoval(),
+                is(equalTo((Collection<String>) Arrays.asList("/x"))));
+        assertThat(unitUnderTest.getNodesForRemoval().isEmpty(), is(equalTo(true)));
+
+        assertThat(unitUnderTest.getCurrentCacheSize(), is(equalTo(132L)));
+        final CacheMetrics metrics = unitUnderTest.getMetrics().get("lru");
+        assertThat(metrics.getCachedBytes(), is(equalTo(173L)));
+        assertThat(metrics.getEvictedBytes(), is(equalTo(41L)));
+        assertThat(metrics.getRejectedBytes(), is(equalTo(0L)));
+    }
+
+    /**
+     * Test that nodes larger than the maximum entry size and requests larger than the capacity
+     * aren't cached.
+     *
+     * @throws NodeNotExistingException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testMaxEntrySize() throws NodeNotExistingException {
+        when(cacheConfigMock.getCacheCapacity()).thenReturn(200);
+        when(cacheConfigMock.getCacheMaxEntrySize()).thenReturn(50);
+        final List<String> readers = Arrays.asList("ID1", "ID2");
+        final List<String> writers = Arrays.asList("ID2", "ID3");
+        final List<String> types = Arrays.asList("/basic/text");
+
+        final VslMutableStructureNode structure = new VslStructureNodeImpl(readers, writers, "",
+                types, "TTL='30'");
+        structure.putChild("b", new VslStructureNodeImpl(readers, writers, "", types, ""));
+        when(cacheHandlerMock.getStructure("/a")).thenReturn(structure);
+        when(cacheHandlerMock.getStructure("/x"))
+                .thenReturn(new VslStructureNodeImpl(readers, writers, "", types, ""));
+
+        // the child has 20 bytes, 60 bytes including the metadata.
+        final VslMutableNode toCache = nodeFactory.createMutableClone(nodeFactory
+                .createImmutableLeaf(types, "root", new Date(1234L), 5L, null,
+                        Collections.<String, String>emptyMap()));
+        toCache.putChild("b", nodeFactory.createMutableClone(nodeFactory.createImmutableLeaf(types,
+                "01234567890123456789", new Date(1234L), 5L, null,
+                Collections.<String, String>emptyMap())));
+        final VslNode cachable = unitUnderTest.cache("/a", toCache);
+        assertThat(cachable.getValue(), is(equalTo("root")));
+        assertThat(cachable.getChild("b").getValue(), is(equalTo((String) null)));
+
+        final Map<String, CachedNode> cached = unitUnderTest.getAllCachedNodes();
+        assertThat(cached.containsKey("/a"), is(equalTo(true)));
+        assertThat(cached.containsKey("/a/b"), is(equalTo(false)));
+
+        // without a maximum entry size, the node is still larger than the capacity.
+        when(cacheConfigMock.getCacheMaxEntrySize()).thenReturn(0);
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            value.append('x');
+        }
+        assertThat(unitUnderTest.cache("/x", nodeFactory.createImmutableLeaf(types,
+                value.toString(), new Date(1234L), 5L, null,
+                Collections.<String, String>emptyMap())), is(equalTo((VslNode) null)));
+        assertThat(cached.containsKey("/x"), is(equalTo(false)));
+
+        assertThat(unitUnderTest.getCurrentCacheSize(), is(equalTo(44L)));
+        final CacheMetrics metrics = unitUnderTest.getMetrics().get("rr");
+        assertThat(metrics.getCachedBytes(), is(equalTo(44L)));
+        assertThat(metrics.getRejectedBytes(), is(equalTo(60L + 240L)));
+        assertThat(metrics.getEvictedBytes(), is(equalTo(0L)));
+    }
+
+    /**
+     * Test that cached nodes are due for a refresh in the configured share of their TTL before
+     * they expire, and that caching the same version again renews them.
+     *
+     * @throws NodeNotExistingException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testRefreshDue() throws NodeNotExistingException {
+        final List<String> readers = Arrays.asList("ID1", "ID2");
+        final List<String> writers = Arrays.asList("ID2", "ID3");
+        final List<String> types = Arrays.asList("/basic/text");
+        when(cacheHandlerMock.getStructure("/x"))
+                .thenReturn(new VslStructureNodeImpl(readers, writers, "", types, ""));
+        when(cacheConfigMock.getRefreshAhead()).thenReturn(100);
+        assertThat(unitUnderTest.isRefreshDue("/x"), is(equalTo(false)));
+
+        final VslNode node = nodeFactory.createImmutableLeaf(types, "x", new Date(1234L), 5L,
+                null, Collections.<String, String>emptyMap());
+        unitUnderTest.cache("/x", node);
+        assertThat(unitUnderTest.isRefreshDue("/x"), is(equalTo(true)));
+        // the node was just cached, 60 seconds are left.
+        when(cacheConfigMock.getRefreshAhead()).thenReturn(10);
+        assertThat(unitUnderTest.isRefreshDue("/x"), is(equalTo(false)));
+        when(cacheConfigMock.getRefreshAhead()).thenReturn(0);
+        assertThat(unitUnderTest.isRefreshDue("/x"), is(equalTo(false)));
+
+        final CachedNode cachedNode = unitUnderTest.getAllCachedNodes().get("/x");
+        unitUnderTest.cache("/x", node);
+        assertThat(unitUnderTest.getAllCachedNodes().get("/x") == cachedNode,
+                is(equalTo(false)));
+        assertThat(unitUnderTest.getAllCachedNodes().size(), is(equalTo(1)));
+    }
+
 }
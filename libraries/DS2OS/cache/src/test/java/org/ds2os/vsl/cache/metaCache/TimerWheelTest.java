@@ -0,0 +1,78 @@
+package org.ds2os.vsl.cache.metaCache;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testclass for the {@link TimerWheel}.
+ */
+public class TimerWheelTest {
+
+    /**
+     * The unit under test, with ticks of one second, started at 0.
+     */
+    private TimerWheel<String> unitUnderTest;
+
+    /**
+     * Set up the tests.
+     */
+    @Before
+    public final void setUp() {
+        unitUnderTest = new TimerWheel<String>(1000L, 0L);
+    }
+
+    /**
+     * Test that elements expire not before their deadline.
+     */
+    @Test
+    public final void testAdvance() {
+        unitUnderTest.schedule("a", 1500L);
+        unitUnderTest.schedule("b", 2000L);
+        unitUnderTest.schedule("c", 5000L);
+
+        assertThat(unitUnderTest.advance(1499L).isEmpty(), is(equalTo(true)));
+        assertThat(unitUnderTest.advance(2000L),
+                is(equalTo((Collection<String>) Arrays.asList("a", "b"))));
+        assertThat(unitUnderTest.advance(4999L).isEmpty(), is(equalTo(true)));
+        assertThat(unitUnderTest.advance(5000L),
+                is(equalTo((Collection<String>) Collections.singletonList("c"))));
+        assertThat(unitUnderTest.advance(100000L).isEmpty(), is(equalTo(true)));
+    }
+
+    /**
+     * Test elements with a deadline more than one revolution of the wheel ahead.
+     */
+    @Test
+    public final void testMultipleRounds() {
+        unitUnderTest.schedule("a", 3000L);
+        unitUnderTest.schedule("b", 3000L + 64 * 1000L);
+
+        assertThat(unitUnderTest.advance(3000L),
+                is(equalTo((Collection<String>) Collections.singletonList("a"))));
+        assertThat(unitUnderTest.advance(66000L).isEmpty(), is(equalTo(true)));
+        assertThat(unitUnderTest.advance(67000L),
+                is(equalTo((Collection<String>) Collections.singletonList("b"))));
+    }
+
+    /**
+     * Test that elements in the past expire on the next tick and cleared elements never.
+     */
+    @Test
+    public final void testPastDeadlineAndClear() {
+        unitUnderTest.advance(10000L);
+        unitUnderTest.schedule("a", 5000L);
+        unitUnderTest.schedule("b", 12000L);
+        assertThat(unitUnderTest.advance(11000L),
+                is(equalTo((Collection<String>) Collections.singletonList("a"))));
+        unitUnderTest.clear();
+        assertThat(unitUnderTest.advance(20000L).isEmpty(), is(equalTo(true)));
+    }
+}
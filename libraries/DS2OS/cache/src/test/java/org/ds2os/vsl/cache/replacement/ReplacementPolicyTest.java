@@ -0,0 +1,199 @@
+package org.ds2os.vsl.cache.replacement;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Testclass for the {@link VslReplacementPolicy} implementations created by
+ * {@link ReplacementPolicies#createPolicy(String, long)}.
+ */
+public class ReplacementPolicyTest {
+
+    /**
+     * Adds the given addresses with a weight of 1 to the policy and returns all dropped addresses.
+     *
+     * @param policy
+     *            The policy.
+     * @param addresses
+     *            The addresses to add.
+     * @return The dropped addresses.
+     */
+    private Set<String> addAll(final VslReplacementPolicy policy, final String... addresses) {
+        final Set<String> dropped = new HashSet<String>();
+        for (final String address : addresses) {
+            dropped.addAll(policy.add(address, 1));
+        }
+        return dropped;
+    }
+
+    /**
+     * Test the FIFO policy, accesses don't change the order.
+     */
+    @Test
+    public final void testFIFO() {
+        final VslReplacementPolicy policy = ReplacementPolicies.createPolicy("fifo", 3);
+        assertThat(addAll(policy, "a", "b", "c").isEmpty(), is(equalTo(true)));
+        policy.accessed("a");
+        assertThat(policy.add("d", 1), is(equalTo((Collection<String>) Arrays.asList("a"))));
+        assertThat(policy.add("e", 1), is(equalTo((Collection<String>) Arrays.asList("b"))));
+        assertThat(policy.size(), is(equalTo(3)));
+    }
+
+    /**
+     * Test the LRU policy, accesses move addresses to the end.
+     */
+    @Test
+    public final void testLRU() {
+        final VslReplacementPolicy policy = ReplacementPolicies.createPolicy("lru", 3);
+        addAll(policy, "a", "b", "c");
+        policy.accessed("a");
+        assertThat(policy.add("d", 1), is(equalTo((Collection<String>) Arrays.asList("b"))));
+        policy.remove("c");
+        assertThat(policy.add("e", 1).isEmpty(), is(equalTo(true)));
+        assertThat(policy.add("f", 1), is(equalTo((Collection<String>) Arrays.asList("a"))));
+    }
+
+    /**
+     * Test the LFU policy, the least frequently accessed address is dropped first.
+     */
+    @Test
+    public final void testLFU() {
+        final VslReplacementPolicy policy = ReplacementPolicies.createPolicy("lfu", 3);
+        addAll(policy, "a", "b", "c");
+        policy.accessed("a");
+        policy.accessed("a");
+        policy.accessed("b");
+        policy.accessed("c");
+        policy.accessed("c");
+        assertThat(policy.add("d", 1), is(equalTo((Collection<String>) Arrays.asList("b"))));
+        // d was never accessed.
+        assertThat(policy.add("e", 1), is(equalTo((Collection<String>) Arrays.asList("d"))));
+        policy.clear();
+        assertThat(policy.size(), is(equalTo(0)));
+        assertThat(addAll(policy, "a", "b", "c").isEmpty(), is(equalTo(true)));
+    }
+
+    /**
+     * Test the random replacement policy keeps the capacity.
+     */
+    @Test
+    public final void testRR() {
+        final VslReplacementPolicy policy = ReplacementPolicies.createPolicy("rr", 10);
+        final Set<String> kept = new HashSet<String>();
+        for (int i = 0; i < 100; i++) {
+            kept.add("n" + i);
+            kept.removeAll(policy.add("n" + i, 1));
+            assertThat(policy.size(), is(equalTo(kept.size())));
+        }
+        assertThat(kept.size(), is(equalTo(10)));
+        for (final String address : kept) {
+            policy.remove(address);
+        }
+        assertThat(policy.size(), is(equalTo(0)));
+    }
+
+    /**
+     * Test that the TinyLFU policy doesn't admit addresses that are requested less often than the
+     * cached ones.
+     */
+    @Test
+    public final void testTinyLFU() {
+        // the main cache has room for 10 addresses of 64 bytes, the window (1%) for none.
+        final VslReplacementPolicy policy = ReplacementPolicies.createPolicy("tinylfu", 650);
+        final Set<String> kept = new HashSet<String>();
+        for (int i = 0; i < 10; i++) {
+            kept.add("hot" + i);
+            kept.removeAll(policy.add("hot" + i, 64));
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 10; i++) {
+                policy.accessed("hot" + i);
+            }
+        }
+        // a scan of addresses requested only once while the hot addresses are still requested.
+        for (int i = 0; i < 100; i++) {
+            kept.add("cold" + i);
+            kept.removeAll(policy.add("cold" + i, 64));
+            policy.accessed("hot" + i % 10);
+            assertThat(policy.size(), is(equalTo(kept.size())));
+        }
+        int hot = 0;
+        for (final String address : kept) {
+            if (address.startsWith("hot")) {
+                hot++;
+            }
+        }
+        // the window is lighter than an address, so every cold address competes with the hot ones.
+        assertThat(hot, is(equalTo(10)));
+        assertThat(policy.size(), is(equalTo(10)));
+    }
+
+    /**
+     * Test that the capacity limits the total weight of the kept addresses.
+     */
+    @Test
+    public final void testWeights() {
+        for (final String name : Arrays.asList("fifo", "lru", "lfu", "rr")) {
+            final VslReplacementPolicy policy = ReplacementPolicies.createPolicy(name, 10);
+            assertThat(addAll(policy, "a", "b").isEmpty(), is(equalTo(true)));
+            assertThat(policy.add("c", 9).size(), is(equalTo(1)));
+            assertThat(policy.getWeight(), is(equalTo(10L)));
+            assertThat(policy.add("d", 10).size(), is(equalTo(2)));
+            assertThat(policy.getWeight(), is(equalTo(10L)));
+            assertThat(policy.add("e", 11), is(equalTo((Collection<String>) Collections
+                    .singletonList("e"))));
+            // replacing an address with a lighter one updates the weight.
+            assertThat(policy.add("d", 4).isEmpty(), is(equalTo(true)));
+            assertThat(policy.getWeight(), is(equalTo(4L)));
+            assertThat(policy.size(), is(equalTo(1)));
+        }
+    }
+
+    /**
+     * Test that the TinyLFU policy keeps the total weight within the capacity and prefers
+     * frequently requested addresses regardless of their weight.
+     */
+    @Test
+    public final void testTinyLFUWeights() {
+        final VslReplacementPolicy policy = ReplacementPolicies.createPolicy("tinylfu", 1000);
+        final Set<String> kept = new HashSet<String>();
+        for (int i = 0; i < 10; i++) {
+            kept.add("hot" + i);
+            kept.removeAll(policy.add("hot" + i, 90));
+            for (int round = 0; round < 5; round++) {
+                policy.accessed("hot" + i);
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            kept.add("cold" + i);
+            kept.removeAll(policy.add("cold" + i, 50));
+            assertThat(policy.getWeight() <= 1000, is(equalTo(true)));
+            assertThat(policy.size(), is(equalTo(kept.size())));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertThat(kept.contains("hot" + i), is(equalTo(true)));
+        }
+    }
+
+    /**
+     * Test that nothing is kept with a capacity of 0.
+     */
+    @Test
+    public final void testZeroCapacity() {
+        for (final String name : Arrays.asList("fifo", "lru", "lfu", "tinylfu", "rr")) {
+            final VslReplacementPolicy policy = ReplacementPolicies.createPolicy(name, 0);
+            assertThat(policy.add("a", 1), is(equalTo((Collection<String>) Collections
+                    .singletonList("a"))));
+            assertThat(policy.size(), is(equalTo(0)));
+        }
+    }
+}
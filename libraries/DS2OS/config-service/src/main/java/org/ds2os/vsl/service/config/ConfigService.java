@@ -134,6 +134,9 @@ public final class ConfigService extends AbstractVslModule implements VslConfigu
         configCache.subscribeToInteger(configRoot + "/cache/defaultTTL");
         configCache.subscribeToBoolean(configRoot + "/cache/enabled");
         configCache.subscribeToInteger(configRoot + "/cache/capacity");
+        configCache.subscribeToInteger(configRoot + "/cache/maxEntrySize");
+        configCache.subscribeToInteger(configRoot + "/cache/refreshAhead");
+        configCache.subscribeToBoolean(configRoot + "/cache/earlyRefresh");
         configCache.subscribeToString(configRoot + "/cache/replacementPolicy");
         configCache.subscribeToInteger(configRoot + "/statistics/limitDatapoints");
         configCache.subscribeToString(configRoot + "/modelRepository/localPath");
@@ -227,6 +230,17 @@ public final class ConfigService extends AbstractVslModule implements VslConfigu
         }
     }
 
+    @Override
+    public int getArchiveMaxAge() {
+        try {
+            return configCache.getIntegerConfigParameter(configRoot + "/kor/archive/maxAge");
+        } catch (final Exception e) {
+            LOGGER.trace("couldn't read archive maxAge parameter: {},"
+                    + " trying the originalConfig now.", e.getMessage());
+            return initialConfig.getIntProperty("kor.archive.maxAge", 0);
+        }
+    }
+
     @Override
     public String getDatabasePath() {
         // necessary only before startup, so not stored in the KOR.
@@ -239,6 +253,36 @@ public final class ConfigService extends AbstractVslModule implements VslConfigu
         return initialConfig.getProperty("kor.db.memoryMode", "CACHED").toUpperCase();
     }
 
+    @Override
+    public int getDatabaseConnectionPoolSize() {
+        // necessary only before startup, so not stored in the KOR.
+        return initialConfig.getIntProperty("kor.db.connectionPoolSize", 4);
+    }
+
+    @Override
+    public int getDatabaseMaintenanceBudget() {
+        // necessary only before startup, so not stored in the KOR.
+        return initialConfig.getIntProperty("kor.db.maintenanceBudget", 50);
+    }
+
+    @Override
+    public int getDatabaseCommitWindow() {
+        // necessary only before startup, so not stored in the KOR.
+        return initialConfig.getIntProperty("kor.db.commitWindow", 2);
+    }
+
+    @Override
+    public int getDatabaseCommitBatchSize() {
+        // necessary only before startup, so not stored in the KOR.
+        return initialConfig.getIntProperty("kor.db.commitBatchSize", 64);
+    }
+
+    @Override
+    public boolean isDatabaseSyncCommit() {
+        // necessary only before startup, so not stored in the KOR.
+        return initialConfig.getBooleanProperty("kor.db.syncCommit", false);
+    }
+
     @Override
     public String getDatabaseUsername() {
         // necessary only before startup, so not stored in the KOR.
@@ -415,6 +459,39 @@ public final class ConfigService extends AbstractVslModule implements VslConfigu
         }
     }
 
+    @Override
+    public int getCacheMaxEntrySize() {
+        try {
+            return configCache.getIntegerConfigParameter(configRoot + "/cache/maxEntrySize");
+        } catch (final Exception e) {
+            LOGGER.trace("couldn't read cache maxEntrySize parameter:"
+                    + " {}, trying the originalConfig now.", e.getMessage());
+            return initialConfig.getIntProperty("cache.maxEntrySize", 65536);
+        }
+    }
+
+    @Override
+    public int getRefreshAhead() {
+        try {
+            return configCache.getIntegerConfigParameter(configRoot + "/cache/refreshAhead");
+        } catch (final Exception e) {
+            LOGGER.trace("couldn't read cache refreshAhead parameter:"
+                    + " {}, trying the originalConfig now.", e.getMessage());
+            return initialConfig.getIntProperty("cache.refreshAhead", 10);
+        }
+    }
+
+    @Override
+    public boolean isEarlyRefreshEnabled() {
+        try {
+            return configCache.getBooleanConfigParameter(configRoot + "/cache/earlyRefresh");
+        } catch (final Exception e) {
+            LOGGER.trace("couldn't read cache earlyRefresh parameter:"
+                    + " {}, trying the originalConfig now.", e.getMessage());
+            return initialConfig.getBooleanProperty("cache.earlyRefresh", false);
+        }
+    }
+
     @Override
     public String getReplacementPolicy() {
         try {
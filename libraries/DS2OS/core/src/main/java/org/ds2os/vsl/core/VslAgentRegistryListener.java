@@ -0,0 +1,24 @@
+package org.ds2os.vsl.core;
+
+/**
+ * Listener for changes of the agents known to the {@link VslAgentRegistryService}.
+ */
+public interface VslAgentRegistryListener {
+
+    /**
+     * Called after the stored transports of an agent changed.
+     *
+     * @param agentID
+     *            The ID of the agent.
+     */
+    void agentTransportsChanged(String agentID);
+
+    /**
+     * Called after an agent was removed from the registry, e.g. because no AlivePing was received
+     * from it for too long.
+     *
+     * @param agentID
+     *            The ID of the agent.
+     */
+    void agentRemoved(String agentID);
+}
@@ -214,4 +214,12 @@ public interface VslAgentRegistryService {
      * unconnected if this is the case.
      */
     void cleanDoubleConnectedAgents();
+
+    /**
+     * Adds a listener that is informed about changed and removed agents.
+     *
+     * @param listener
+     *            The {@link VslAgentRegistryListener}.
+     */
+    void addAgentRegistryListener(VslAgentRegistryListener listener);
 }
@@ -0,0 +1,41 @@
+package org.ds2os.vsl.core;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.ds2os.vsl.core.node.VslNode;
+import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.ds2os.vsl.exception.VslException;
+
+/**
+ * Extends the VslParametrizedConnector with gets and sets of several addresses in one request.
+ */
+public interface VslBatchConnector extends VslParametrizedConnector {
+
+    /**
+     * Poll the knowledge at several addresses, like calling
+     * {@link #get(String, VslAddressParameters)} for each of them.
+     *
+     * @param addresses
+     *            the node addresses in the VSL.
+     * @param params
+     *            The parameters attached to the request of each address.
+     * @return Map of each requested address to the VslNode object with all data (including
+     *         children) of the node at this address, in the order of the given addresses.
+     * @throws VslException
+     *             If a VSL exception occurs for any of the addresses.
+     */
+    Map<String, VslNode> getBatch(Collection<String> addresses, VslAddressParameters params)
+            throws VslException;
+
+    /**
+     * Set the knowledge at several addresses, like calling {@link #set(String, VslNode)} for each
+     * of them.
+     *
+     * @param knowledge
+     *            Map of the node addresses in the VSL to the knowledge to set at them.
+     * @throws VslException
+     *             If a VSL exception occurs for any of the addresses.
+     */
+    void setBatch(Map<String, VslNode> knowledge) throws VslException;
+}
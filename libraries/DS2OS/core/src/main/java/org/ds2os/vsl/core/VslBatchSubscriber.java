@@ -0,0 +1,23 @@
+package org.ds2os.vsl.core;
+
+import java.util.Collection;
+
+import org.ds2os.vsl.exception.VslException;
+
+/**
+ * A {@link VslSubscriber} that can receive the notifications for several changed addresses in one
+ * callback.
+ */
+public interface VslBatchSubscriber extends VslSubscriber {
+
+    /**
+     * Triggers the callback for changes in all specified addresses, like calling
+     * {@link #notificationCallback(String)} for each of them in the given order.
+     *
+     * @param addresses
+     *            The addresses where changes took place.
+     * @throws VslException
+     *             If a VSL exception occurs.
+     */
+    void batchNotificationCallback(Collection<String> addresses) throws VslException;
+}
@@ -36,6 +36,16 @@ public interface VslNodeCache {
      */
     VslNode getCachedNode(String address, VslIdentity identity) throws VslException;
 
+    /**
+     * Returns whether the cached node at the given address expires soon and should be refreshed.
+     * It can still be served from the cache until the refreshed node is cached.
+     *
+     * @param address
+     *            Address in the Vsl to check.
+     * @return True if the node is cached and should be refreshed, false otherwise.
+     */
+    boolean isRefreshDue(String address);
+
     /**
      * Handles a set operation. Can e.g. invalidate affected nodes or cache the set, depending on
      * implementation.
@@ -31,18 +31,56 @@ public interface VslCacheConfig extends VslAgentName, VslCharset {
      *
      * @return Maximum capacity of the cache in Bytes.
      */
-    @ConfigDescription(description = "Specifies how many nodes can be cached simultaneously "
-            + "in bytes.", id = "cache.capacity", defaultValue = "1000000", restrictions = ">=0")
+    @ConfigDescription(description = "The maximum total size of the cached nodes (values and "
+            + "metadata) in bytes.", id = "cache.capacity", defaultValue = "1000000",
+            restrictions = ">=0")
     int getCacheCapacity();
 
+    /**
+     * Returns the maximum size of a single cached node in Bytes. Larger nodes are never cached, so
+     * they can't replace many small ones. Default is 64KB, 0 disables the limit.
+     *
+     * @return Maximum size of a cached node in Bytes.
+     */
+    @ConfigDescription(description = "The maximum size of a single cached node in bytes, larger "
+            + "nodes aren't cached (0 for no limit).", id = "cache.maxEntrySize",
+            defaultValue = "65536", restrictions = ">=0")
+    int getCacheMaxEntrySize();
+
+    /**
+     * Returns the share of the TTL before the expiry of a cached node in which it is refreshed in
+     * the background while the cached node is still served. Default is 10 percent, 0 disables the
+     * refresh.
+     *
+     * @return The refresh window in percent of the TTL.
+     */
+    @ConfigDescription(description = "The last part of the TTL of a cached node in percent, in "
+            + "which it is still served but refreshed in the background (0 to disable).",
+            id = "cache.refreshAhead", defaultValue = "10", restrictions = "0-100")
+    int getRefreshAhead();
+
+    /**
+     * Returns whether cached nodes in the refresh window are refreshed with a probability growing
+     * towards their expiry, instead of on the first access in the window. This spreads the
+     * refreshes of nodes that expire at the same time. Default is not.
+     *
+     * @return True if the probabilistic early refresh is enabled, false otherwise.
+     */
+    @ConfigDescription(description = "Flag that specifies whether cached nodes are refreshed "
+            + "probabilistically in the refresh window (1) or on the first access in it (0).",
+            id = "cache.earlyRefresh", defaultValue = "0", restrictions = "0 or 1 (boolean)")
+    boolean isEarlyRefreshEnabled();
+
     /**
      * Returns the Replacement strategy that should be used when the cache reaches its capacity.
-     * Default is Random Replacement (rr).
+     * Default is Random Replacement (rr). tinylfu is a segmented LRU that only admits new nodes
+     * requested more often than the ones they would replace.
      *
      * @return Abbreviation of the replacement strategy. (lowercase)
      */
     @ConfigDescription(description = "The replacement Policy used by the cache.", id = "cache."
-            + "replacementPolicy", defaultValue = "rr", restrictions = "rr, fifo, lru or lfu")
+            + "replacementPolicy", defaultValue = "rr",
+            restrictions = "rr, fifo, lru, lfu or tinylfu")
     String getReplacementPolicy();
 
 }
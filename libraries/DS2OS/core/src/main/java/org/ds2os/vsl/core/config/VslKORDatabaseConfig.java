@@ -41,6 +41,18 @@ public interface VslKORDatabaseConfig {
             + "", id = "kor.archive.limit", defaultValue = "10", restrictions = ">0")
     int getArchiveNodeVersionLimit();
 
+    /**
+     * Returns the maximum age in seconds of archived versions of a node. Older versions are removed
+     * by the database maintenance, except the newest one. The default value is 0, which means that
+     * versions are only limited by {@link #getArchiveNodeVersionLimit()}.
+     *
+     * @return maximum age of archived versions in seconds, 0 if unlimited.
+     */
+    @ConfigDescription(description = "Specifies after how many seconds archived versions of a "
+            + "node may be deleted, 0 to keep them until the version limit is reached."
+            + "", id = "kor.archive.maxAge", defaultValue = "0", restrictions = ">=0")
+    int getArchiveMaxAge();
+
     /**
      * Returns the path of the database.
      *
@@ -95,9 +107,64 @@ public interface VslKORDatabaseConfig {
                     + "", restrictions = "only used at startup on non persistent databases")
     String getDatabaseMemoryMode();
 
+    /**
+     * Returns the number of read only connections the database opens in addition to the
+     * connection used for writes. Default is 4.
+     *
+     * @return The number of read only database connections.
+     */
+    @ConfigDescription(description = "Number of read only connections to the database, used in "
+            + "addition to the single write connection.", id = "kor.db.connectionPoolSize"
+                    + "", defaultValue = "4", restrictions = ">0, only used at startup")
+    int getDatabaseConnectionPoolSize();
+
+    /**
+     * Returns the time in milliseconds a single run of the database maintenance may take. Larger
+     * cleanups are split over several runs. Default is 50.
+     *
+     * @return The time budget of a maintenance run in milliseconds.
+     */
+    @ConfigDescription(description = "Time in milliseconds a single run of the database "
+            + "maintenance may take.", id = "kor.db.maintenanceBudget", defaultValue = "50"
+                    + "", restrictions = ">0")
+    int getDatabaseMaintenanceBudget();
+
+    /**
+     * Returns the time in milliseconds concurrent writes are collected to be committed in a single
+     * transaction. 0 doesn't wait and only commits the writes that are already queued. Default
+     * is 2.
+     *
+     * @return The group commit window in milliseconds.
+     */
+    @ConfigDescription(description = "Time in milliseconds concurrent writes are collected to be "
+            + "committed together, 0 only commits writes already queued.", id = "kor.db.commitWindow"
+                    + "", defaultValue = "2", restrictions = ">=0, only used at startup")
+    int getDatabaseCommitWindow();
+
+    /**
+     * Returns the maximum number of writes committed in a single transaction. Default is 64.
+     *
+     * @return The maximum number of writes per group commit.
+     */
+    @ConfigDescription(description = "Maximum number of writes that are committed together."
+            + "", id = "kor.db.commitBatchSize", defaultValue = "64"
+                    + "", restrictions = ">0, only used at startup")
+    int getDatabaseCommitBatchSize();
+
+    /**
+     * Returns if the database log is synced to disk on every commit. If false, the log is flushed
+     * asynchronously, so the last writes before a crash can be lost. Default is false.
+     *
+     * @return True if commits are synced to disk.
+     */
+    @ConfigDescription(description = "Defines if the database log is synced to disk on every "
+            + "commit (true) or flushed asynchronously (false).", id = "kor.db.syncCommit"
+                    + "", defaultValue = "false", restrictions = "only used at startup")
+    boolean isDatabaseSyncCommit();
+
     /**
      * Returns the type of the database that should be used as backend.
-     * Examples: hsqldb, mongodb
+     * Examples: hsqldb, mongodb, memory
      * Default is hsqldb
      *
      * @return The desired database type as String.
@@ -1,8 +1,8 @@
 package org.ds2os.vsl.core.transport;
 
+import org.ds2os.vsl.core.VslBatchSubscriber;
 import org.ds2os.vsl.core.VslIdentity;
 import org.ds2os.vsl.core.VslLockHandler;
-import org.ds2os.vsl.core.VslSubscriber;
 import org.ds2os.vsl.core.VslVirtualNodeHandler;
 import org.ds2os.vsl.core.node.VslNode;
 import org.ds2os.vsl.core.utils.VslAddressParameters;
@@ -13,8 +13,11 @@ import org.ds2os.vsl.exception.VslException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -26,7 +29,8 @@ import java.util.concurrent.TimeUnit;
  * @author felix
  */
 public abstract class AbstractTransportCallback
-        implements CallbackResponseListener, VslSubscriber, VslLockHandler, VslVirtualNodeHandler {
+        implements CallbackResponseListener, VslBatchSubscriber, VslLockHandler,
+        VslVirtualNodeHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractTransportCallback.class);
     /**
@@ -39,6 +43,12 @@ public abstract class AbstractTransportCallback
      */
     private final Map<Long, CallbackResponseMessage> responseMap;
 
+    /**
+     * The serial numbers whose responses are still awaited, guarded by {@link #responseMap}.
+     * Responses to other serials, e.g. after a timeout, are dropped.
+     */
+    private final Set<Long> awaitedSerials;
+
     /**
      * The next serial number.
      */
@@ -60,6 +70,7 @@ public abstract class AbstractTransportCallback
     public AbstractTransportCallback(final UUID callbackId, final long callbackTimeout) {
         this.callbackId = callbackId;
         this.responseMap = new HashMap<Long, CallbackResponseMessage>();
+        this.awaitedSerials = new HashSet<Long>();
         this.nextSerial = 1L;
         this.callbackTimeout = callbackTimeout;
     }
@@ -79,6 +90,10 @@ public abstract class AbstractTransportCallback
             return;
         }
         synchronized (responseMap) {
+            if (!awaitedSerials.contains(message.getSerial())) {
+                LOG.debug("dropped response for {}", callbackId + "-" + message.getSerial());
+                return;
+            }
             responseMap.put(message.getSerial(), message);
             responseMap.notifyAll();
         }
@@ -100,33 +115,74 @@ public abstract class AbstractTransportCallback
      */
     protected final CallbackResponseMessage fetchResponse(final long serial, final long timeout)
             throws VslException, InterruptedException {
-        final long startTime = System.currentTimeMillis();
+        return fetchResponse(serial, System.currentTimeMillis() + timeout, timeout);
+    }
+
+    /**
+     * Fetch the response of an invocation with the specified serial number, waiting until the
+     * given deadline at most. The serial number isn't awaited anymore afterwards, even if the
+     * wait failed.
+     *
+     * @param serial
+     *            the serial number of the invocation.
+     * @param deadline
+     *            the time in milliseconds until which the response is awaited.
+     * @param timeout
+     *            the timeout in milliseconds the deadline was derived from, for error reporting.
+     * @return the {@link CallbackResponseMessage} of a successful callback.
+     * @throws VslException
+     *             If an exception occurs or the response message contains an exception.
+     * @throws InterruptedException
+     *             If the wait operation got interrupted.
+     */
+    private CallbackResponseMessage fetchResponse(final long serial, final long deadline,
+            final long timeout) throws VslException, InterruptedException {
         synchronized (responseMap) {
-            while (!responseMap.containsKey(serial)) {
-                final long currentTime = System.currentTimeMillis();
-                if (currentTime < startTime + timeout) {
-                    responseMap.wait(timeout + startTime - currentTime);
+            try {
+                while (!responseMap.containsKey(serial)) {
+                    final long currentTime = System.currentTimeMillis();
+                    if (currentTime < deadline) {
+                        responseMap.wait(deadline - currentTime);
+                    } else {
+                        throw new TimeoutException(timeout, TimeUnit.MILLISECONDS,
+                                "Callback timeout occurred");
+                    }
+                }
+                final CallbackResponseMessage response = responseMap.get(serial);
+                if (response.getError() == null) {
+                    return response;
                 } else {
-                    throw new TimeoutException(timeout, TimeUnit.MILLISECONDS,"Callback timeout occurred");
+                    throw response.getError().toException();
                 }
-            }
-            final CallbackResponseMessage response = responseMap.remove(serial);
-            if (response.getError() == null) {
-                return response;
-            } else {
-                throw response.getError().toException();
+            } finally {
+                discardResponse(serial);
             }
         }
     }
 
     /**
-     * Get the next serial number.
+     * Stops awaiting the response of an invocation and drops it if it was received already.
+     *
+     * @param serial
+     *            the serial number of the invocation.
+     */
+    private void discardResponse(final long serial) {
+        synchronized (responseMap) {
+            awaitedSerials.remove(serial);
+            responseMap.remove(serial);
+        }
+    }
+
+    /**
+     * Get the next serial number. The response to it is awaited until it is fetched.
      *
      * @return the next serial number.
      */
     protected final long getNextSerial() {
         synchronized (responseMap) {
-            return nextSerial++;
+            final long serial = nextSerial++;
+            awaitedSerials.add(serial);
+            return serial;
         }
     }
 
@@ -169,17 +225,19 @@ public abstract class AbstractTransportCallback
      */
     protected final VslNode invokeCallback(final CallbackMethod method, final String address, final long serial,
                                            final VslIdentity identity, final VslNode data) throws VslException {
-        final CallbackSender sender = getCallbackSender();
-        sender.setResponseListener(callbackId, this);
-        sender.invokeCallback(
-                new CallbackInvocationMessage(callbackId, serial, address, method, identity, data));
-        LOG.debug("request sent for {}", callbackId + "-" + serial);
         try {
+            final CallbackSender sender = getCallbackSender();
+            sender.setResponseListener(callbackId, this);
+            sender.invokeCallback(new CallbackInvocationMessage(callbackId, serial, address,
+                    method, identity, data));
+            LOG.debug("request sent for {}", callbackId + "-" + serial);
             return fetchResponse(serial, callbackTimeout).getData();
         } catch (final InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new InterruptedOperationException(e);
         } finally {
+            // a no-op if the response was fetched, otherwise a late response is dropped.
+            discardResponse(serial);
             LOG.debug("response received for {}", callbackId + "-" + serial);
         }
     }
@@ -189,6 +247,52 @@ public abstract class AbstractTransportCallback
         invokeCallback(CallbackMethod.NOTIFY, address, null, null);
     }
 
+    /**
+     * Sends the notifications for all addresses before waiting for the first response, so the
+     * batch costs one round trip instead of one per address. All responses have to arrive within
+     * one callback timeout. If the batch fails, the responses still outstanding are dropped.
+     */
+    @Override
+    public final void batchNotificationCallback(final Collection<String> addresses)
+            throws VslException {
+        final long[] serials = new long[addresses.size()];
+        int sent = 0;
+        VslException firstError = null;
+        try {
+            final CallbackSender sender = getCallbackSender();
+            sender.setResponseListener(callbackId, this);
+            for (final String address : addresses) {
+                serials[sent] = getNextSerial();
+                sent++;
+                sender.invokeCallback(new CallbackInvocationMessage(callbackId,
+                        serials[sent - 1], address, CallbackMethod.NOTIFY, null, null));
+            }
+            final long deadline = System.currentTimeMillis() + callbackTimeout;
+            for (final long serial : serials) {
+                try {
+                    fetchResponse(serial, deadline, callbackTimeout);
+                } catch (final TimeoutException e) {
+                    throw e;
+                } catch (final VslException e) {
+                    if (firstError == null) {
+                        firstError = e;
+                    }
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedOperationException(e);
+        } finally {
+            // no-ops for fetched responses, drops the others if the batch failed.
+            for (int i = 0; i < sent; i++) {
+                discardResponse(serials[i]);
+            }
+        }
+        if (firstError != null) {
+            throw firstError;
+        }
+    }
+
     @Override
     public final void lockAcquired(final String address) throws VslException {
         invokeCallback(CallbackMethod.LOCK_AQUIRED, address, null, null);
@@ -0,0 +1,65 @@
+package org.ds2os.vsl.core.transport;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.ds2os.vsl.core.node.VslNode;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Data object of a POST body or response carrying the addresses or nodes of a batch get or set.
+ */
+public class BatchOperation {
+
+    /**
+     * The requested addresses of a batch get.
+     */
+    private final List<String> addresses;
+
+    /**
+     * The nodes of a batch set or of the response to a batch get, by address.
+     */
+    private final Map<String, VslNode> nodes;
+
+    /**
+     * Constructor.
+     *
+     * @param addresses
+     *            the requested addresses of a batch get, may be null.
+     * @param nodes
+     *            the nodes of a batch set or of the response to a batch get, may be null.
+     */
+    @JsonCreator
+    public BatchOperation(@JsonProperty("addresses") final List<String> addresses,
+            @JsonProperty("nodes") final Map<String, VslNode> nodes) {
+        this.addresses = addresses;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Get the requested addresses of a batch get.
+     *
+     * @return the addresses, empty if there are none.
+     */
+    public final List<String> getAddresses() {
+        if (addresses == null) {
+            return Collections.emptyList();
+        }
+        return addresses;
+    }
+
+    /**
+     * Get the nodes of a batch set or of the response to a batch get.
+     *
+     * @return the nodes by address, empty if there are none.
+     */
+    public final Map<String, VslNode> getNodes() {
+        if (nodes == null) {
+            return Collections.emptyMap();
+        }
+        return nodes;
+    }
+}
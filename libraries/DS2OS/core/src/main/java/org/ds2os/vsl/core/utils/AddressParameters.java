@@ -74,6 +74,24 @@ public class AddressParameters implements VslAddressParameters {
         }
     }
 
+    @Override
+    public final long getFromTimestamp() {
+        try {
+            return Long.parseLong(parameters.get("from"));
+        } catch (final Exception e) {
+            return -1; // default.
+        }
+    }
+
+    @Override
+    public final long getToTimestamp() {
+        try {
+            return Long.parseLong(parameters.get("to"));
+        } catch (final Exception e) {
+            return -1; // default.
+        }
+    }
+
     @Override
     public final boolean areParamsGiven() {
         return !parameters.isEmpty();
@@ -111,6 +129,21 @@ public class AddressParameters implements VslAddressParameters {
         return this;
     }
 
+    @Override
+    public final VslAddressParameters withTimeRange(final long from, final long to) {
+        if (from < 0) {
+            parameters.remove("from");
+        } else {
+            parameters.put("from", Long.toString(from));
+        }
+        if (to < 0) {
+            parameters.remove("to");
+        } else {
+            parameters.put("to", Long.toString(to));
+        }
+        return this;
+    }
+
     @Override
     public final Map<String, String> getParametersAsMap() {
         return Collections.unmodifiableMap(parameters);
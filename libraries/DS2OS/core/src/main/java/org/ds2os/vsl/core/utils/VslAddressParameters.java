@@ -84,6 +84,34 @@ public interface VslAddressParameters {
      */
     VslAddressParameters withVersion(int version);
 
+    /**
+     * Start of the requested time range in Unix time (milliseconds), -1 if not set. Used by history
+     * requests, which return all values of a node/subtree written within the range.
+     *
+     * @return The inclusive start of the requested time range.
+     */
+    long getFromTimestamp();
+
+    /**
+     * End of the requested time range in Unix time (milliseconds), -1 if not set. Used by history
+     * requests, and by get operations, which return the node/subtree as it was at that time.
+     *
+     * @return The inclusive end of the requested time range.
+     */
+    long getToTimestamp();
+
+    /**
+     * Sets the requested time range in Unix time (milliseconds). Negative values mean the range is
+     * open on that side. Used by get and history operations.
+     *
+     * @param from
+     *            The inclusive start of the range.
+     * @param to
+     *            The inclusive end of the range.
+     * @return the updated {@link VslAddressParameters} object.
+     */
+    VslAddressParameters withTimeRange(long from, long to);
+
     /**
      * Set to false if no parameters were given, true otherwise.
      *
@@ -0,0 +1,133 @@
+package org.ds2os.vsl.core.transport;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.ds2os.vsl.core.VslIdentity;
+import org.ds2os.vsl.exception.TimeoutException;
+import org.ds2os.vsl.exception.VslException;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testclass for {@link AbstractTransportCallback}.
+ */
+public class AbstractTransportCallbackTest {
+
+    /**
+     * The callback timeout used for the tests in milliseconds.
+     */
+    private static final long TIMEOUT = 300;
+
+    /**
+     * The invocations sent by the callback.
+     */
+    private final List<CallbackInvocationMessage> invocations =
+            new ArrayList<CallbackInvocationMessage>();
+
+    /**
+     * Whether the sender answers every invocation immediately.
+     */
+    private boolean answering;
+
+    /**
+     * Unit under test.
+     */
+    private AbstractTransportCallback callback;
+
+    /**
+     * Creates the callback with a sender that records the invocations.
+     */
+    @Before
+    public final void setUp() {
+        callback = new AbstractTransportCallback(UUID.randomUUID(), TIMEOUT) {
+            @Override
+            public CallbackSender getCallbackSender() {
+                return new CallbackSender() {
+                    @Override
+                    public void setResponseListener(final UUID callbackId,
+                            final CallbackResponseListener responseListener) {
+                    }
+
+                    @Override
+                    public void invokeCallback(final CallbackInvocationMessage message) {
+                        invocations.add(message);
+                        if (answering) {
+                            answer(message);
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public InputStream getStream(final String address, final VslIdentity identity) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void setStream(final String address, final InputStream stream,
+                    final VslIdentity identity) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Answers an invocation successfully.
+     *
+     * @param message
+     *            The invocation.
+     */
+    private void answer(final CallbackInvocationMessage message) {
+        callback.receivedResponse(new CallbackResponseMessage(message.getCallbackId(),
+                message.getSerial(), null, null));
+    }
+
+    /**
+     * Test method for {@link AbstractTransportCallback#batchNotificationCallback}.
+     *
+     * @throws VslException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testBatchNotificationCallback() throws VslException {
+        answering = true;
+        callback.batchNotificationCallback(Arrays.asList("/a", "/b", "/c"));
+        assertThat(invocations.size(), is(equalTo(3)));
+    }
+
+    /**
+     * Test that a batch without responses fails after one callback timeout, not one per address,
+     * and that late responses don't disturb later invocations.
+     *
+     * @throws VslException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testBatchNotificationCallbackTimeout() throws VslException {
+        final long start = System.currentTimeMillis();
+        try {
+            callback.batchNotificationCallback(Arrays.asList("/a", "/b", "/c", "/d"));
+            fail("expected a TimeoutException");
+        } catch (final TimeoutException e) {
+            final long elapsed = System.currentTimeMillis() - start;
+            assertThat(elapsed >= TIMEOUT && elapsed < 3 * TIMEOUT, is(equalTo(true)));
+        }
+        for (final CallbackInvocationMessage late : new ArrayList<CallbackInvocationMessage>(
+                invocations)) {
+            answer(late);
+        }
+
+        answering = true;
+        callback.notificationCallback("/e");
+        assertThat(invocations.size(), is(equalTo(5)));
+    }
+}
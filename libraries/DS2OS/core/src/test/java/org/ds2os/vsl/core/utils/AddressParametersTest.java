@@ -38,6 +38,24 @@ public class AddressParametersTest {
         assertThat(params.areParamsGiven(), is(equalTo(false)));
         assertThat(params.getDepth(), is(equalTo(0)));
         assertThat(params.getNodeInformationScope(), is(equalTo(NodeInformationScope.VALUE)));
+        assertThat(params.getFromTimestamp(), is(equalTo(-1L)));
+        assertThat(params.getToTimestamp(), is(equalTo(-1L)));
+    }
+
+    /**
+     * Test method for {@link AddressParameters#withTimeRange(long, long)}.
+     */
+    @Test
+    public final void testTimeRange() {
+        final VslAddressParameters params = new AddressParameters().withTimeRange(1000L, 2000L);
+        assertThat(params.getFromTimestamp(), is(equalTo(1000L)));
+        assertThat(params.getToTimestamp(), is(equalTo(2000L)));
+        assertThat(params.getParametersAsMap().get("from"), is(equalTo("1000")));
+
+        params.withTimeRange(-1L, 3000L);
+        assertThat(params.getFromTimestamp(), is(equalTo(-1L)));
+        assertThat(params.getToTimestamp(), is(equalTo(3000L)));
+        assertThat(params.getParametersAsMap().containsKey("from"), is(equalTo(false)));
     }
 
     /**
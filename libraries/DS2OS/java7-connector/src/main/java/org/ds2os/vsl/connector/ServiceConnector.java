@@ -2,9 +2,9 @@ package org.ds2os.vsl.connector;
 
 
 import org.ds2os.vsl.core.AbstractVslModule;
+import org.ds2os.vsl.core.VslBatchConnector;
 import org.ds2os.vsl.core.VslLockHandler;
 import org.ds2os.vsl.core.VslMapperFactory;
-import org.ds2os.vsl.core.VslParametrizedConnector;
 import org.ds2os.vsl.core.VslServiceManifest;
 import org.ds2os.vsl.core.VslSubscriber;
 import org.ds2os.vsl.core.VslVirtualNodeHandler;
@@ -29,13 +29,15 @@ import java.io.InputStream;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * Standard service connector with default wiring for simple instantiation.
  *
  * @author felix
  */
-public class ServiceConnector extends AbstractVslModule implements VslParametrizedConnector {
+public class ServiceConnector extends AbstractVslModule implements VslBatchConnector {
 
     /**
      * The SLF4J logger.
@@ -65,7 +67,7 @@ public class ServiceConnector extends AbstractVslModule implements VslParametriz
     /**
      * The connector once the module is activated.
      */
-    private VslParametrizedConnector connector;
+    private VslBatchConnector connector;
 
     /**
      * Instantiate a new service connector with the required information.
@@ -124,7 +126,7 @@ public class ServiceConnector extends AbstractVslModule implements VslParametriz
      * @throws VslException
      *             If the module is not yet activated.
      */
-    protected final VslParametrizedConnector checkConnector() throws VslException {
+    protected final VslBatchConnector checkConnector() throws VslException {
         if (connector == null) {
             throw new InvalidOperationException("Service connector is not yet activated.");
         } else {
@@ -176,6 +178,17 @@ public class ServiceConnector extends AbstractVslModule implements VslParametriz
         checkConnector().set(address, knowledge);
     }
 
+    @Override
+    public final Map<String, VslNode> getBatch(final Collection<String> addresses,
+            final VslAddressParameters params) throws VslException {
+        return checkConnector().getBatch(addresses, params);
+    }
+
+    @Override
+    public final void setBatch(final Map<String, VslNode> knowledge) throws VslException {
+        checkConnector().setBatch(knowledge);
+    }
+
     @Override
     public InputStream getStream(String address) throws VslException {
         return checkConnector().getStream(address);
@@ -195,8 +195,8 @@ public class Java7KnowledgeAgent extends AbstractVslModule implements Runnable {
         final VslRequestHandler requestHandler = new RequestRouter(configService, kor,
                 transportManager, agentRegistryService, subscriptionManager, configService);
 
-        final VslConnector cacheConnector = new RequestHandlerToConnectorBridge(requestHandler,
-                new ServiceIdentity("system/cache", "system/cache"), nodeFactory);
+        final VslParametrizedConnector cacheConnector = new RequestHandlerToConnectorBridge(
+                requestHandler, new ServiceIdentity("system/cache", "system/cache"), nodeFactory);
         final Cache cache = new Cache(cacheConnector, kor, configService);
         final VslRequestHandler cachedRequestHandler = new CachingRequestRouterDecorator(
                 configService, requestHandler, cache);
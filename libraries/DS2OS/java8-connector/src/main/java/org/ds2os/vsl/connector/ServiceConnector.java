@@ -22,6 +22,8 @@ import java.io.InputStream;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * Standard service connector with default wiring for simple instantiation
@@ -29,7 +31,7 @@ import java.security.cert.CertificateException;
  *
  * @author felix
  */
-public class ServiceConnector extends AbstractVslModule implements VslParametrizedConnector {
+public class ServiceConnector extends AbstractVslModule implements VslBatchConnector {
 
 	/**
 	 * The SLF4J logger.
@@ -59,7 +61,7 @@ public class ServiceConnector extends AbstractVslModule implements VslParametriz
 	/**
 	 * The connector once the module is activated.
 	 */
-	private VslParametrizedConnector connector;
+	private VslBatchConnector connector;
 
 	/**
 	 * Instantiate a new service connector with the required information.
@@ -116,7 +118,7 @@ public class ServiceConnector extends AbstractVslModule implements VslParametriz
 	 * @throws VslException
 	 *             If the module is not yet activated.
 	 */
-	protected final VslParametrizedConnector checkConnector() throws VslException {
+	protected final VslBatchConnector checkConnector() throws VslException {
 		if (connector == null) {
 			throw new InvalidOperationException("Service connector is not yet activated.");
 		} else {
@@ -162,6 +164,17 @@ public class ServiceConnector extends AbstractVslModule implements VslParametriz
 		return checkConnector().get(address, params);
 	}
 
+	@Override
+	public final Map<String, VslNode> getBatch(final Collection<String> addresses,
+			final VslAddressParameters params) throws VslException {
+		return checkConnector().getBatch(addresses, params);
+	}
+
+	@Override
+	public final void setBatch(final Map<String, VslNode> knowledge) throws VslException {
+		checkConnector().setBatch(knowledge);
+	}
+
 	@Override
 	public InputStream getStream(String address) throws VslException {
 		return checkConnector().getStream(address);
@@ -0,0 +1,149 @@
+package org.ds2os.vsl.ka;
+
+/**
+ * Typed description of a single access observed by the {@link AccessObserver}. Instances are
+ * preallocated by the {@link AccessEventRing} and reused, so the request path only copies the
+ * references of the raw features into a slot. Everything that is derived from them (addresses and
+ * types of the involved services, locations) is resolved later by the analysis stage.
+ */
+final class AccessEvent {
+
+    /**
+     * The kinds of accesses that are observed.
+     */
+    enum Kind {
+        /**
+         * A get or set.
+         */
+        ACCESS,
+        /**
+         * A subscribe or unsubscribe.
+         */
+        SUBSCRIPTION,
+        /**
+         * Any other operation, e.g. locking or virtual node registration.
+         */
+        VARIOUS,
+        /**
+         * A notification callback sent to a subscriber.
+         */
+        CALLBACK
+    }
+
+    /**
+     * The kind of the access.
+     */
+    private Kind kind;
+
+    /**
+     * The ID of the accessing service.
+     */
+    private String accessingID;
+
+    /**
+     * The operation performed.
+     */
+    private String operation;
+
+    /**
+     * The accessed address.
+     */
+    private String address;
+
+    /**
+     * The value exchanged, null if there is none.
+     */
+    private String value;
+
+    /**
+     * The time of the access in milliseconds.
+     */
+    private long timestamp;
+
+    /**
+     * Fills this event with the given features.
+     *
+     * @param newKind
+     *            The kind of the access.
+     * @param newAccessingID
+     *            The ID of the accessing service.
+     * @param newOperation
+     *            The operation performed.
+     * @param newAddress
+     *            The accessed address.
+     * @param newValue
+     *            The value exchanged, null if there is none.
+     * @param newTimestamp
+     *            The time of the access in milliseconds.
+     */
+    void set(final Kind newKind, final String newAccessingID, final String newOperation,
+            final String newAddress, final String newValue, final long newTimestamp) {
+        kind = newKind;
+        accessingID = newAccessingID;
+        operation = newOperation;
+        address = newAddress;
+        value = newValue;
+        timestamp = newTimestamp;
+    }
+
+    /**
+     * Drops the references held by this event, so a consumed slot doesn't keep values alive.
+     */
+    void clear() {
+        set(null, null, null, null, null, 0L);
+    }
+
+    /**
+     * Returns the kind of the access.
+     *
+     * @return The kind.
+     */
+    Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the ID of the accessing service.
+     *
+     * @return The ID.
+     */
+    String getAccessingID() {
+        return accessingID;
+    }
+
+    /**
+     * Returns the operation performed.
+     *
+     * @return The operation.
+     */
+    String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Returns the accessed address.
+     *
+     * @return The address.
+     */
+    String getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns the value exchanged.
+     *
+     * @return The value, null if there is none.
+     */
+    String getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the time of the access.
+     *
+     * @return The time in milliseconds.
+     */
+    long getTimestamp() {
+        return timestamp;
+    }
+}
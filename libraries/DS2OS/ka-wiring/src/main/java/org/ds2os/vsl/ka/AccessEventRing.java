@@ -0,0 +1,154 @@
+package org.ds2os.vsl.ka;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Preallocated, bounded ring buffer of {@link AccessEvent}s with many producers and a single
+ * consumer. Producers claim a sequence number with a CAS and publish the filled slot by storing
+ * the sequence number for it, the consumer processes the slots in sequence order. No locks are
+ * taken and no objects are allocated on either side. If the buffer is full, events are dropped
+ * instead of blocking the producer.
+ */
+final class AccessEventRing {
+
+    /**
+     * Callback for consumed events.
+     */
+    interface Handler {
+
+        /**
+         * Called for every consumed event. The event is only valid during the call.
+         *
+         * @param event
+         *            The event.
+         */
+        void onEvent(AccessEvent event);
+    }
+
+    /**
+     * The preallocated slots.
+     */
+    private final AccessEvent[] events;
+
+    /**
+     * The sequence number published for each slot, -1 if none was published yet.
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * Mask to get the slot index of a sequence number.
+     */
+    private final int mask;
+
+    /**
+     * The next sequence number to claim by a producer.
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * The next sequence number to consume. Only written by the consumer.
+     */
+    private final AtomicLong consumed = new AtomicLong();
+
+    /**
+     * The number of events dropped because the buffer was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param minCapacity
+     *            The minimal number of events the buffer can hold, rounded up to a power of two.
+     */
+    AccessEventRing(final int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(minCapacity, 2) - 1) << 1;
+        events = new AccessEvent[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            events[i] = new AccessEvent();
+            published.set(i, -1L);
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * Adds an event to the buffer. Can be called by any thread.
+     *
+     * @param kind
+     *            The kind of the access.
+     * @param accessingID
+     *            The ID of the accessing service.
+     * @param operation
+     *            The operation performed.
+     * @param address
+     *            The accessed address.
+     * @param value
+     *            The value exchanged, null if there is none.
+     * @param timestamp
+     *            The time of the access in milliseconds.
+     * @return True if the event was added, false if it was dropped because the buffer is full.
+     */
+    boolean offer(final AccessEvent.Kind kind, final String accessingID, final String operation,
+            final String address, final String value, final long timestamp) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= events.length) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        final int index = (int) sequence & mask;
+        events[index].set(kind, accessingID, operation, address, value, timestamp);
+        // ordered store, makes the filled slot visible to the consumer.
+        published.lazySet(index, sequence);
+        return true;
+    }
+
+    /**
+     * Processes all events that are published in sequence order and frees their slots. Must only
+     * be called by the single consumer thread.
+     *
+     * @param handler
+     *            The handler called for each event.
+     * @return The number of processed events.
+     */
+    int drain(final Handler handler) {
+        long sequence = consumed.get();
+        int count = 0;
+        while (true) {
+            final int index = (int) sequence & mask;
+            if (published.get(index) != sequence) {
+                return count;
+            }
+            try {
+                handler.onEvent(events[index]);
+            } finally {
+                events[index].clear();
+                consumed.lazySet(++sequence);
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of events that were dropped because the buffer was full.
+     *
+     * @return The number of dropped events.
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of events the buffer can hold.
+     *
+     * @return The capacity.
+     */
+    int getCapacity() {
+        return events.length;
+    }
+}
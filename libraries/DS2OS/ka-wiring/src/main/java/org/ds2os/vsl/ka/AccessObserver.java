@@ -1,7 +1,14 @@
 package org.ds2os.vsl.ka;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import org.ds2os.vsl.core.AbstractRequestRouter;
 import org.ds2os.vsl.core.VslConnector;
@@ -17,18 +24,38 @@ import org.ds2os.vsl.exception.VslException;
 
 import org.ds2os.vsl.sphinx.main.Sphinx;
 import org.ds2os.vsl.sphinx.model.Access;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 /**
  * This class is used to send the access descriptions to the sphinx or to save them.
  *
- * There are various methods to log the different type of accesses.
- * These methods do the preprocessing, then they call the logging method called: logConnection.
+ * There are various methods to log the different type of accesses. They only record the raw
+ * features of the access in an {@link AccessEventRing} and answer with the last verdict of the
+ * sphinx for the accessed flow (accessing service and accessed address). A dedicated analyzer
+ * thread resolves the remaining features of the recorded accesses, passes them to the sphinx
+ * and updates the verdicts. An anomalous flow is therefore blocked starting with the access
+ * following the one the sphinx rejected.
  *
  * @author francois
  */
 public class AccessObserver {
 
+    /**
+     * The SLF4J logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccessObserver.class);
+
+    /** The number of accesses that can wait for the analyzer before new ones are dropped. */
+    private static final int ACCESS_BUFFER_SIZE = 4096;
+
+    /** The time the analyzer waits before looking for new accesses if there were none. */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    /** The feature value used if a feature is not available. */
+    private static final String NONE = "none";
+
     /** The connector instance used by this service.   */
    // private ServiceConnector connector;
 
@@ -54,10 +81,23 @@ public class AccessObserver {
     //String agentURL = "https://127.0.0.1:8081";
     //String connectorKeystore = ""+serviceName +".jks";
 
-    /** A hash table to save the type of the service. */
+    /** A hash table to save the type of the service. Only used by the analyzer thread. */
     private HashMap<String, String> serviceTypeHash;
     /** A hash table to save the subscriptions. */
-    private HashMap<String, String> subscribeHash;
+    private Map<String, String> subscribeHash;
+
+    /** The recorded accesses waiting for the analyzer. */
+    private final AccessEventRing accessEvents = new AccessEventRing(ACCESS_BUFFER_SIZE);
+
+    /** True once the analyzer thread was started. */
+    private final AtomicBoolean analyzerStarted = new AtomicBoolean(false);
+
+    /**
+     * The addresses the sphinx currently rejects, by accessing service. Only written by the
+     * analyzer thread.
+     */
+    private final Map<String, Set<String>> deniedFlows =
+            new ConcurrentHashMap<String, Set<String>>();
 
     /**
      * The constructor.
@@ -69,7 +109,7 @@ public class AccessObserver {
         this.connector = connector;
 
 		serviceTypeHash = new HashMap<String, String>();
-		subscribeHash = new HashMap<String, String>();
+		subscribeHash = new ConcurrentHashMap<String, String>();
 
 		this.agentID = agentID;
 		if (!simulationMode) {
@@ -98,31 +138,8 @@ public class AccessObserver {
         	return true;
         }
 
-		String value = node.getValue();
-		String valueTimestamp = "none";
-		try {
-			valueTimestamp = Double.toString(node.getTimestamp().getTime());
-		} catch (Exception e) {
-		}
-
-		String addressAccessing = getAddressFromID(identity.getClientId());
-		String accessedServiceAddress = splitAddresses(accessedAddress)[0];
-
-        //Finding out the type of the accessed node and the accessing node:
-		String accessingType = getTypeFromAddress(addressAccessing);
-		String accessedServiceType = getTypeFromAddress(accessedServiceAddress);
-		String accessedNodeType = getTypeFromAddress(accessedAddress);
-
-		if (operation.equals("read")) {
-			if (isHiddenVirtualNode(accessedAddress)) {
-		    	String[] parts = accessedAddress.split("/");
-				value = parts[parts.length - 1];
-			}
-		}
-
-		return logConnection(identity.getClientId(), addressAccessing, accessingType,
-				accessedServiceAddress, accessedServiceType,
-				accessedAddress, accessedNodeType, operation, value, valueTimestamp);
+        return observe(AccessEvent.Kind.ACCESS, identity.getClientId(), operation,
+                accessedAddress, node.getValue());
     	}
 
     /**
@@ -141,18 +158,9 @@ public class AccessObserver {
     	} else if (operation.equals("unsubscribe")) {
     		subscribeHash.remove(address);	//,identity.getClientId()
     	}
-		String addressAccessing = getAddressFromID(identity.getClientId());
-		String accessedServiceAddress = splitAddresses(address)[0];
-
-        //Finding out the type of the accessed node and the accessing node:
-		String accessingType = getTypeFromAddress(addressAccessing);
-		String accessedServiceType = getTypeFromAddress(accessedServiceAddress);
-		String accessedNodeType = getTypeFromAddress(address);
-
-		return logConnection(identity.getClientId(), addressAccessing, accessingType,
-				accessedServiceAddress, accessedServiceType,
-    			address, accessedNodeType, operation, value, "none");
 
+        return observe(AccessEvent.Kind.SUBSCRIPTION, identity.getClientId(), operation, address,
+                value);
     }
 
     /**
@@ -165,22 +173,8 @@ public class AccessObserver {
     public boolean logVariousStuff(final VslIdentity identity,
     		final String operation, final String address) {
 
-    	if (operation.equals("registerVirtualNode")) {
-    		serviceTypeHash.put(address, "VirtualNode");
-    	} else if (operation.equals("unregisterVirtualNode")) {
-    		serviceTypeHash.remove(address);
-    	}
-    	String addressAccessing = getAddressFromID(identity.getClientId());
-		String accessedServiceAddress = splitAddresses(address)[0];
-
-        //Finding out the type of the accessed node and the accessing node:
-		String accessingType = getTypeFromAddress(addressAccessing);
-		String accessedServiceType = getTypeFromAddress(accessedServiceAddress);
-		String accessedNodeType = getTypeFromAddress(address);
-
-		return logConnection(identity.getClientId(), addressAccessing, accessingType,
-				accessedServiceAddress, accessedServiceType,
-    			address, accessedNodeType, operation, "none", "none");
+        return observe(AccessEvent.Kind.VARIOUS, identity.getClientId(), operation, address,
+                null);
     }
 
 
@@ -195,97 +189,139 @@ public class AccessObserver {
     	//should be better?: -> log the real connections not the ones that should be
     	//	-> have it in the correct way: origin address the changed node (?)
 
-    	if (subscribeHash.containsKey(changedAddress)) {
-    		String notifyID = subscribeHash.get(changedAddress);
-    		String accessingAddress = getAddressFromID(notifyID);
-			String[] adrParts = splitAddresses(changedAddress);
-
-			return logConnection(notifyID, accessingAddress,
-			getTypeFromAddress(accessingAddress), adrParts[0],
-			getTypeFromAddress(adrParts[0]), changedAddress, getTypeFromAddress(changedAddress),
-			"notifyCallback", "none", "none");
+        final String notifyID = subscribeHash.get(changedAddress);
+        if (notifyID == null) {
+            return true;
+        }
+        return observe(AccessEvent.Kind.CALLBACK, notifyID, "notifyCallback", changedAddress,
+                null);
+    }
 
-    	} else {
-    		return true;
-    	}
+    /**
+     * Records an access for the analyzer and returns the current verdict for its flow. This is
+     * the only work done on the request path.
+     *
+     * @param kind the kind of the access
+     * @param accessingID the ID of the service accessing
+     * @param operation the operation performed
+     * @param address the accessed address
+     * @param value the value exchanged, null if there is none
+     * @return if the access is allowed
+     */
+    private boolean observe(final AccessEvent.Kind kind, final String accessingID,
+            final String operation, final String address, final String value) {
+        if (sphinx == null) {
+            return true;
+        }
+        if (!analyzerStarted.get() && analyzerStarted.compareAndSet(false, true)) {
+            final Thread analyzerThread = new Thread(new Analyzer(), "access analyzer");
+            analyzerThread.setDaemon(true);
+            analyzerThread.start();
+        }
+        accessEvents.offer(kind, accessingID, operation, address, value,
+                System.currentTimeMillis());
 
+        final Set<String> denied = deniedFlows.get(accessingID);
+        return denied == null || !denied.contains(address);
     }
 
-
     /**
-     * This is the function that logs a connection. Be it saving in the file
-	 *	or giving it to the online running sphinx.
+     * Resolves the remaining features of a recorded access and gives it to the sphinx. Only
+     * called by the analyzer thread.
      *
-     * It recieves one string for every feature that is to be saved.
+     * It uses one string for every feature of the access:
      * 	"none" in case this feature is not available for this connection.
      * 	"nk" in case it is not known.
      *
-     * One connection log is of the form:		(R) stands for required
-     * @param accessingID			(R) The ID of the service accessing
-     * @param accessingAddress		The extracted address of the accessing node
-     * @param accessingType			The type of this node
-     * @param accessedServiceAddress the address of the service containing the accessed node
-     * @param accessedServiceType	the type of this service
-     * @param accessedNodeAddress	(R) the address that is accessed
-     * @param accessedNodeType		the type of this address
-     * @param operation				(R) the operation performed
-     * @param value					the value exchanged
-     * 		@param valueTimestamp //seems always to be "none" so not logged
+     * @param event the recorded access
+     * @return if the sphinx allows the access
      */
-    private boolean logConnection(final String accessingID, final String accessingAddress, String accessingType,
-    		final String accessedServiceAddress, final String accessedServiceType,
-    		final String accessedNodeAddress, final String accessedNodeType,
-    		final String operation, final String value, final String valueTimestamp) {
-
-		String fileName = "./loggedAccesses.csv";		//the file to save access descriptions
-
-		String replaceComma = ";";
-		String replaceLineBreak = "";
-		String connectionLog = "";
-
-		String sourceLocation = getLocationFromAddress(accessingAddress);
-		String destinationLocation = getLocationFromAddress(accessedServiceAddress);
+    private boolean analyze(final AccessEvent event) {
+        final String operation = event.getOperation();
+        final String address = event.getAddress();
+        String value = event.getValue() == null ? NONE : event.getValue();
+
+        if (event.getKind() == AccessEvent.Kind.VARIOUS) {
+            if (operation.equals("registerVirtualNode")) {
+                serviceTypeHash.put(address, "VirtualNode");
+            } else if (operation.equals("unregisterVirtualNode")) {
+                serviceTypeHash.remove(address);
+            }
+        } else if (event.getKind() == AccessEvent.Kind.ACCESS && operation.equals("read")
+                && isHiddenVirtualNode(address)) {
+            final String[] parts = address.split("/");
+            value = parts[parts.length - 1];
+        }
 
-		String[] featureArray = {accessingID, accessingAddress, accessingType, sourceLocation,
-		accessedServiceAddress, accessedServiceType, destinationLocation, accessedNodeAddress,
-		accessedNodeType, operation, value, Long.toString(System.currentTimeMillis()), "none"};
+        final String accessingAddress = getAddressFromID(event.getAccessingID());
+        final String accessedServiceAddress = splitAddresses(address)[0];
 
-		//remove last comma:
-		for (String feature : featureArray) {
-			if (feature == null) {
-				feature = "none";
-			}
-			connectionLog += feature.replace("\n", replaceLineBreak).replace("\r", replaceLineBreak)
-					.replace(",", replaceComma) + ",";
-		}
-		connectionLog = connectionLog.substring(0, connectionLog.length() - 1);
-		connectionLog += "\n";
-
-
-		// If we want to save the accesses instead of sending them to the Sphinx:
-		/*
-		try {
-			// right now we dont really want to log everything,
-			 * just the service behavior, not the system one
-			boolean dontLog = connectionLog.contains("sphinx") ||
-			connectionLog.contains("system") || connectionLog.contains("search")
-					|| connectionLog.contains("/agent1/typeSearch")
-					|| connectionLog.contains("/agent1/slmr");
-
-			if(!dontLog){
-				Files.write(Paths.get(fileName), connectionLog.getBytes(),
-				 StandardOpenOption.APPEND);
-			}
-        }catch (IOException e) {
-        	System.out.println("error");
-        } */
+        //Finding out the type of the accessed node and the accessing node:
+        return sphinx.accessAnalyser(new Access(event.getAccessingID(), accessingAddress,
+                getTypeFromAddress(accessingAddress), getLocationFromAddress(accessingAddress),
+                accessedServiceAddress, getTypeFromAddress(accessedServiceAddress),
+                getLocationFromAddress(accessedServiceAddress), address,
+                getTypeFromAddress(address), operation, value, event.getTimestamp()));
+    }
 
-		//long measureStartTime = System.nanoTime(); //System.currentTimeMillis();
-		boolean toreturn = sphinx.accessAnalyser(new Access(connectionLog));
-		//long duration = System.nanoTime() - measureStartTime;
+    /**
+     * Stores the verdict of the sphinx for a flow. Only called by the analyzer thread.
+     *
+     * @param accessingID the ID of the service accessing
+     * @param address the accessed address
+     * @param allowed if the sphinx allowed the last access of the flow
+     */
+    private void updateVerdict(final String accessingID, final String address,
+            final boolean allowed) {
+        Set<String> denied = deniedFlows.get(accessingID);
+        if (allowed) {
+            if (denied != null) {
+                denied.remove(address);
+            }
+            return;
+        }
+        if (denied == null) {
+            denied = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            deniedFlows.put(accessingID, denied);
+        }
+        denied.add(address);
+    }
 
-		return toreturn;
+    /**
+     * The analysis stage, consumes the recorded accesses.
+     */
+    private final class Analyzer implements Runnable, AccessEventRing.Handler {
+
+        /**
+         * The number of dropped accesses that was reported last.
+         */
+        private long reportedDrops = 0L;
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (accessEvents.drain(this) == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                final long drops = accessEvents.getDropped();
+                if (drops != reportedDrops) {
+                    LOGGER.warn("{} accesses were not analyzed, the access buffer was full.",
+                            drops - reportedDrops);
+                    reportedDrops = drops;
+                }
+            }
+            LOGGER.warn("Access analyzer interrupted, no more accesses will be analyzed.");
+        }
 
+        @Override
+        public void onEvent(final AccessEvent event) {
+            try {
+                updateVerdict(event.getAccessingID(), event.getAddress(), analyze(event));
+            } catch (final RuntimeException e) {
+                LOGGER.error("Error analyzing access of {} to {}:", event.getAccessingID(),
+                        event.getAddress(), e);
+            }
+        }
     }
 
     //....................................     Helper methods     .................................
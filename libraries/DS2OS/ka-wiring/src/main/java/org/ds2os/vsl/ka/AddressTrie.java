@@ -0,0 +1,470 @@
+package org.ds2os.vsl.ka;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Trie of VSL addresses with one level per address segment, mapping addresses to values. Lookups
+ * don't lock, don't allocate and can run concurrently with each other and with a modification.
+ * Modifications must not run concurrently with each other, the owner of the trie has to serialize
+ * them.
+ *
+ * @param <V>
+ *            The type of the stored values.
+ */
+final class AddressTrie<V> {
+
+    /**
+     * The root node, belongs to the address "/".
+     */
+    private final Node<V> root = new Node<V>(null, null, "/", 0);
+
+    /**
+     * Returns the value stored for the given address.
+     *
+     * @param address
+     *            The address.
+     * @return The value, null if there is none.
+     */
+    V get(final String address) {
+        final Node<V> node = find(address);
+        if (node == null) {
+            return null;
+        }
+        return node.value;
+    }
+
+    /**
+     * Stores a value for the given address.
+     *
+     * @param address
+     *            The address.
+     * @param value
+     *            The value, not null.
+     * @return The value stored before, null if there was none.
+     */
+    V put(final String address, final V value) {
+        Node<V> node = root;
+        int start = skipSlashes(address, 0);
+        while (start < address.length()) {
+            final int end = segmentEnd(address, start);
+            Node<V> child = node.getChild(address, start, end);
+            if (child == null) {
+                child = node.addChild(address.substring(start, end));
+            }
+            node = child;
+            start = skipSlashes(address, end);
+        }
+        final V old = node.value;
+        node.value = value;
+        return old;
+    }
+
+    /**
+     * Removes the value stored for the given address.
+     *
+     * @param address
+     *            The address.
+     * @return The removed value, null if there was none.
+     */
+    V remove(final String address) {
+        final Node<V> node = find(address);
+        if (node == null) {
+            return null;
+        }
+        final V old = node.value;
+        node.value = null;
+        if (node.childCount == 0) {
+            detach(node);
+        }
+        return old;
+    }
+
+    /**
+     * Removes the values stored for the given address and all addresses below it. Takes time
+     * proportional to the size of the removed subtree.
+     *
+     * @param address
+     *            The root address of the subtree.
+     */
+    void removeSubtree(final String address) {
+        final Node<V> node = find(address);
+        if (node == null) {
+            return;
+        }
+        // readers that are already inside the subtree must not find the removed values anymore.
+        clear(node);
+        if (node.parent == null) {
+            node.children = null;
+            node.childCount = 0;
+        } else {
+            detach(node);
+        }
+    }
+
+    /**
+     * Returns the address of the nearest proper ancestor of the given address that has a value.
+     *
+     * @param address
+     *            The address.
+     * @param minLevel
+     *            The minimum number of segments of the returned ancestor.
+     * @return The address of the ancestor, null if there is none.
+     */
+    String getNearestAncestor(final String address, final int minLevel) {
+        String result = null;
+        Node<V> node = root;
+        int start = skipSlashes(address, 0);
+        while (start < address.length()) {
+            // there is a segment left, so the current node is a proper ancestor.
+            if (node.value != null && node.level >= minLevel) {
+                result = node.address;
+            }
+            final int end = segmentEnd(address, start);
+            node = node.getChild(address, start, end);
+            if (node == null) {
+                return result;
+            }
+            start = skipSlashes(address, end);
+        }
+        return result;
+    }
+
+    /**
+     * Returns all addresses with a value in the subtree of the given address, including the
+     * address itself.
+     *
+     * @param rootAddress
+     *            The root address of the subtree.
+     * @param depth
+     *            The maximum number of levels below the root address, negative for all levels.
+     * @return The addresses with a value.
+     */
+    List<String> getAddresses(final String rootAddress, final int depth) {
+        final List<String> result = new ArrayList<String>();
+        final Node<V> node = find(rootAddress);
+        if (node != null) {
+            collect(node, depth, result);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the addresses with a value in the subtree of the given node to the result.
+     *
+     * @param node
+     *            The root node of the subtree.
+     * @param depth
+     *            The maximum number of levels below the node, negative for all levels.
+     * @param result
+     *            The list the addresses are added to.
+     */
+    private static <V> void collect(final Node<V> node, final int depth,
+            final List<String> result) {
+        if (node.value != null) {
+            result.add(node.address);
+        }
+        final Node<V>[] children = node.children;
+        if (depth == 0 || children == null) {
+            return;
+        }
+        for (final Node<V> child : children) {
+            if (child != null) {
+                collect(child, depth - 1, result);
+            }
+        }
+    }
+
+    /**
+     * Drops the values of all nodes in the subtree of the given node.
+     *
+     * @param node
+     *            The root node of the subtree.
+     */
+    private static <V> void clear(final Node<V> node) {
+        node.value = null;
+        final Node<V>[] children = node.children;
+        if (children == null) {
+            return;
+        }
+        for (final Node<V> child : children) {
+            if (child != null) {
+                clear(child);
+            }
+        }
+    }
+
+    /**
+     * Detaches the given node, and with it its subtree, from the trie. Ancestors that are left
+     * without value and children are detached as well.
+     *
+     * @param start
+     *            The node to detach, not the root.
+     */
+    private static <V> void detach(final Node<V> start) {
+        Node<V> node = start;
+        while (node.parent != null) {
+            node.parent.removeChild(node);
+            node = node.parent;
+            if (node.value != null || node.childCount > 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the node of the given address.
+     *
+     * @param address
+     *            The address.
+     * @return The node, null if there is none.
+     */
+    private Node<V> find(final String address) {
+        Node<V> node = root;
+        int start = skipSlashes(address, 0);
+        while (start < address.length()) {
+            final int end = segmentEnd(address, start);
+            node = node.getChild(address, start, end);
+            if (node == null) {
+                return null;
+            }
+            start = skipSlashes(address, end);
+        }
+        return node;
+    }
+
+    /**
+     * Returns the index of the first character at or after the given index that is not a '/'.
+     *
+     * @param address
+     *            The address.
+     * @param index
+     *            The index to start at.
+     * @return The index of the next segment, the length of the address if there is none.
+     */
+    private static int skipSlashes(final String address, final int index) {
+        int i = index;
+        while (i < address.length() && address.charAt(i) == '/') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the end of the segment starting at the given index.
+     *
+     * @param address
+     *            The address.
+     * @param start
+     *            The start index of the segment.
+     * @return The index after the last character of the segment.
+     */
+    private static int segmentEnd(final String address, final int start) {
+        final int end = address.indexOf('/', start);
+        return end < 0 ? address.length() : end;
+    }
+
+    /**
+     * Returns the hash of a segment, equal to the hash code of the segment as String.
+     *
+     * @param address
+     *            The address containing the segment.
+     * @param start
+     *            The start index of the segment.
+     * @param end
+     *            The index after the last character of the segment.
+     * @return The spread hash of the segment.
+     */
+    private static int hash(final String address, final int start, final int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + address.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * A node of the trie. Nodes also exist for addresses without a value if there are values below
+     * them. The children are kept in an open addressing hash table that is replaced on every
+     * change, so readers always see a consistent table.
+     *
+     * @param <V>
+     *            The type of the stored value.
+     */
+    private static final class Node<V> {
+
+        /**
+         * The parent node, null for the root.
+         */
+        private final Node<V> parent;
+
+        /**
+         * The last segment of the address of this node, null for the root.
+         */
+        private final String segment;
+
+        /**
+         * The address of this node.
+         */
+        private final String address;
+
+        /**
+         * The number of segments of the address.
+         */
+        private final int level;
+
+        /**
+         * The hash table of the children, at most half full. Null if there are no children.
+         */
+        private volatile Node<V>[] children;
+
+        /**
+         * The number of children. Only used by the writer.
+         */
+        private int childCount;
+
+        /**
+         * The value stored for the address of this node, null if there is none.
+         */
+        private volatile V value;
+
+        /**
+         * Constructor.
+         *
+         * @param parent
+         *            The parent node, null for the root.
+         * @param segment
+         *            The last segment of the address, null for the root.
+         * @param address
+         *            The address of the node.
+         * @param level
+         *            The number of segments of the address.
+         */
+        Node(final Node<V> parent, final String segment, final String address,
+                final int level) {
+            this.parent = parent;
+            this.segment = segment;
+            this.address = address;
+            this.level = level;
+        }
+
+        /**
+         * Returns the child with the given segment.
+         *
+         * @param addr
+         *            The address containing the segment.
+         * @param start
+         *            The start index of the segment.
+         * @param end
+         *            The index after the last character of the segment.
+         * @return The child, null if there is none.
+         */
+        Node<V> getChild(final String addr, final int start, final int end) {
+            final Node<V>[] table = children;
+            if (table == null) {
+                return null;
+            }
+            final int length = end - start;
+            final int mask = table.length - 1;
+            for (int i = hash(addr, start, end) & mask;; i = (i + 1) & mask) {
+                final Node<V> child = table[i];
+                if (child == null) {
+                    return null;
+                }
+                if (child.segment.length() == length
+                        && child.segment.regionMatches(0, addr, start, length)) {
+                    return child;
+                }
+            }
+        }
+
+        /**
+         * Adds a new child. The caller has to make sure there is no child with this segment.
+         *
+         * @param childSegment
+         *            The segment of the child.
+         * @return The new child.
+         */
+        Node<V> addChild(final String childSegment) {
+            final Node<V> child = new Node<V>(this, childSegment,
+                    (parent == null ? "" : address) + "/" + childSegment, level + 1);
+            final Node<V>[] table = newTable(childCount + 1);
+            copyInto(table, null);
+            insert(table, child);
+            childCount++;
+            children = table;
+            return child;
+        }
+
+        /**
+         * Removes a child.
+         *
+         * @param child
+         *            The child to remove.
+         */
+        void removeChild(final Node<V> child) {
+            if (childCount <= 1) {
+                childCount = 0;
+                children = null;
+                return;
+            }
+            final Node<V>[] table = newTable(childCount - 1);
+            copyInto(table, child);
+            childCount--;
+            children = table;
+        }
+
+        /**
+         * Copies all children into a new table.
+         *
+         * @param table
+         *            The new table.
+         * @param skip
+         *            A child that is not copied, may be null.
+         */
+        private void copyInto(final Node<V>[] table, final Node<V> skip) {
+            final Node<V>[] old = children;
+            if (old == null) {
+                return;
+            }
+            for (final Node<V> child : old) {
+                if (child != null && child != skip) {
+                    insert(table, child);
+                }
+            }
+        }
+
+        /**
+         * Creates an empty table that is at most half full with the given number of children.
+         *
+         * @param count
+         *            The number of children.
+         * @return The table.
+         */
+        @SuppressWarnings("unchecked")
+        private static <V> Node<V>[] newTable(final int count) {
+            int length = 2;
+            while (length < count * 2) {
+                length <<= 1;
+            }
+            return new Node[length];
+        }
+
+        /**
+         * Inserts a child into a table.
+         *
+         * @param table
+         *            The table.
+         * @param child
+         *            The child.
+         */
+        private static <V> void insert(final Node<V>[] table, final Node<V> child) {
+            final int mask = table.length - 1;
+            int i = hash(child.segment, 0, child.segment.length()) & mask;
+            while (table[i] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i] = child;
+        }
+    }
+}
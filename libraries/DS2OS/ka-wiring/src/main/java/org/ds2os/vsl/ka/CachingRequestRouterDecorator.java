@@ -7,15 +7,42 @@ import org.ds2os.vsl.core.utils.VslAddressParameters;
 import org.ds2os.vsl.exception.VslException;
 
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Decorator for the {@link RequestRouter} which utilizes caching.
+ * Decorator for the {@link RequestRouter} which utilizes caching. Concurrent gets of the same
+ * uncached node are coalesced into one request. Cached nodes that expire soon are still served
+ * while they are refreshed in the background.
  *
  * @author borchers
  * @author liebald
  */
-public class CachingRequestRouterDecorator extends AbstractRequestRouter {
+public class CachingRequestRouterDecorator extends AbstractRequestRouter
+        implements VslBatchRequestHandler {
+
+    /**
+     * The number of threads refreshing cached nodes in the background.
+     */
+    private static final int REFRESH_THREADS = 2;
+
+    /**
+     * The maximum number of refreshes waiting for a thread, further refreshes are dropped.
+     */
+    private static final int REFRESH_QUEUE_SIZE = 64;
 
     /**
      * The decorated {@link VslRequestHandler} that is extended with caching.
@@ -27,6 +54,16 @@ public class CachingRequestRouterDecorator extends AbstractRequestRouter {
      */
     private final VslNodeCache cache;
 
+    /**
+     * Coalesces concurrent gets of the same node.
+     */
+    private final RequestCoalescer<VslNode> inFlightGets;
+
+    /**
+     * The executor refreshing cached nodes in the background.
+     */
+    private final ExecutorService refreshExecutor;
+
     /**
      * Constructor for a RequestRouter ({@link VslRequestHandler}) decorated with caching.
      *
@@ -42,6 +79,22 @@ public class CachingRequestRouterDecorator extends AbstractRequestRouter {
         super(agentName);
         this.requestHandler = requestHandler;
         this.cache = cache;
+        inFlightGets = new RequestCoalescer<VslNode>();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(REFRESH_THREADS,
+                REFRESH_THREADS, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(REFRESH_QUEUE_SIZE), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r,
+                                "cache refresh " + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        refreshExecutor = executor;
     }
 
     @Override
@@ -57,31 +110,111 @@ public class CachingRequestRouterDecorator extends AbstractRequestRouter {
 
     @Override
     public final VslNode get(final String address, final VslIdentity identity) throws VslException {
-        final String resolvedAddress = resolveAddress(address, identity);
-        VslNode result = cache.getCachedNode(resolvedAddress, identity);
-        if (result != null) {
-            return result;
-        }
-        // the normal request router resolves again, better use the orignal address when delegating
-        // to him in order to avoid confusion.
-        result = requestHandler.get(address, identity);
-        cache.cacheNode(resolvedAddress, result);
-        return result;
+        return get(address, null, identity);
     }
 
     @Override
     public final VslNode get(final String address, final VslAddressParameters params,
             final VslIdentity identity) throws VslException {
+        if (isHistorical(params)) {
+            return requestHandler.get(address, params, identity);
+        }
         final String resolvedAddress = resolveAddress(address, identity);
-        VslNode result = cache.getCachedNode(resolvedAddress, identity);
-        if (result != null) {
-            return result;
+        final VslNode cachedNode = cache.getCachedNode(resolvedAddress, identity);
+        if (cachedNode == null) {
+            return inFlightGets.execute(getRequestKey(resolvedAddress, params, identity),
+                    createGetRequest(address, resolvedAddress, params, identity));
         }
-        // the normal request router resolves again, better use the orignal address when delegating
-        // to him in order to avoid confusion.
-        result = requestHandler.get(address, params, identity);
-        cache.cacheNode(resolvedAddress, result);
-        return result;
+        refreshIfDue(address, resolvedAddress, params, identity);
+        return cachedNode;
+    }
+
+    /**
+     * Checks whether a request asks for an older version of the knowledge. The cache only holds
+     * the current version of each node, so such requests neither get their result from the cache
+     * nor store it there.
+     *
+     * @param params
+     *            the parameters of the request, null if none.
+     * @return true if a version or a time range is requested.
+     */
+    private static boolean isHistorical(final VslAddressParameters params) {
+        return params != null && (params.getRequestedVersion() >= 0
+                || params.getFromTimestamp() >= 0 || params.getToTimestamp() >= 0);
+    }
+
+    /**
+     * Refreshes a cached node in the background if it expires soon. Nothing is done if the node is
+     * already requested, or if the request is historical since its result must not be cached.
+     *
+     * @param address
+     *            the requested address.
+     * @param resolvedAddress
+     *            the resolved address.
+     * @param params
+     *            the parameters of the request, null if none.
+     * @param identity
+     *            the identity of the issuer of the request.
+     */
+    private void refreshIfDue(final String address, final String resolvedAddress,
+            final VslAddressParameters params, final VslIdentity identity) {
+        if (!isHistorical(params) && cache.isRefreshDue(resolvedAddress)) {
+            inFlightGets.executeAsync(getRequestKey(resolvedAddress, params, identity),
+                    createGetRequest(address, resolvedAddress, params, identity), refreshExecutor);
+        }
+    }
+
+    /**
+     * Creates a get request to the decorated {@link VslRequestHandler} which caches the result.
+     *
+     * @param address
+     *            the requested address.
+     * @param resolvedAddress
+     *            the resolved address.
+     * @param params
+     *            the parameters of the request, null if none.
+     * @param identity
+     *            the identity of the issuer of the request.
+     * @return the request.
+     */
+    private Callable<VslNode> createGetRequest(final String address, final String resolvedAddress,
+            final VslAddressParameters params, final VslIdentity identity) {
+        return new Callable<VslNode>() {
+            @Override
+            public VslNode call() throws VslException {
+                // the normal request router resolves again, better use the orignal address when
+                // delegating to him in order to avoid confusion.
+                final VslNode result;
+                if (params == null) {
+                    result = requestHandler.get(address, identity);
+                } else {
+                    result = requestHandler.get(address, params, identity);
+                }
+                cache.cacheNode(resolvedAddress, result);
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Returns the key of a get request for coalescing. Requests with the same address, parameters
+     * and access IDs get the same result.
+     *
+     * @param resolvedAddress
+     *            the resolved address of the request.
+     * @param params
+     *            the parameters of the request, null if none.
+     * @param identity
+     *            the identity of the issuer of the request.
+     * @return the key.
+     */
+    private static String getRequestKey(final String resolvedAddress,
+            final VslAddressParameters params, final VslIdentity identity) {
+        final StringBuilder key = new StringBuilder(resolvedAddress);
+        if (params != null) {
+            key.append(new TreeMap<String, String>(params.getParametersAsMap()));
+        }
+        return key.append(new TreeSet<String>(identity.getAccessIDs())).toString();
     }
 
     @Override
@@ -92,6 +225,86 @@ public class CachingRequestRouterDecorator extends AbstractRequestRouter {
         requestHandler.set(address, knowledge, identity);
     }
 
+    @Override
+    public final Map<String, VslNode> getBatch(final Collection<String> addresses,
+            final VslAddressParameters params, final VslIdentity identity) throws VslException {
+        final Map<String, VslNode> result = new LinkedHashMap<String, VslNode>();
+        final List<String> uncachedAddresses = new ArrayList<String>();
+        if (isHistorical(params)) {
+            uncachedAddresses.addAll(addresses);
+            return getUncached(uncachedAddresses, params, identity, result);
+        }
+        for (final String address : addresses) {
+            final String resolvedAddress = resolveAddress(address, identity);
+            final VslNode cachedNode = cache.getCachedNode(resolvedAddress, identity);
+            // keeps the order of the requested addresses, the uncached ones are filled in below.
+            result.put(address, cachedNode);
+            if (cachedNode == null) {
+                uncachedAddresses.add(address);
+            } else {
+                refreshIfDue(address, resolvedAddress, params, identity);
+            }
+        }
+        if (uncachedAddresses.isEmpty()) {
+            return result;
+        }
+        getUncached(uncachedAddresses, params, identity, result);
+        for (final String address : uncachedAddresses) {
+            cache.cacheNode(resolveAddress(address, identity), result.get(address));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the given addresses from the decorated {@link VslRequestHandler}, in one batch if it
+     * supports batches.
+     *
+     * @param addresses
+     *            the addresses to get.
+     * @param params
+     *            the parameters of the request, null if none.
+     * @param identity
+     *            the identity of the issuer of the request.
+     * @param result
+     *            the map the nodes are put in, by their requested address.
+     * @return the result map.
+     * @throws VslException
+     *             if a VSL exception occurs for any of the addresses.
+     */
+    private Map<String, VslNode> getUncached(final List<String> addresses,
+            final VslAddressParameters params, final VslIdentity identity,
+            final Map<String, VslNode> result) throws VslException {
+        // the normal request router resolves again, better use the orignal addresses when
+        // delegating to him in order to avoid confusion.
+        if (requestHandler instanceof VslBatchRequestHandler) {
+            final Map<String, VslNode> nodes = ((VslBatchRequestHandler) requestHandler)
+                    .getBatch(addresses, params, identity);
+            for (final String address : addresses) {
+                result.put(address, nodes.get(address));
+            }
+        } else {
+            for (final String address : addresses) {
+                result.put(address, requestHandler.get(address, params, identity));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public final void setBatch(final Map<String, VslNode> knowledge, final VslIdentity identity)
+            throws VslException {
+        for (final Entry<String, VslNode> entry : knowledge.entrySet()) {
+            cache.handleSet(resolveAddress(entry.getKey(), identity), entry.getValue());
+        }
+        if (requestHandler instanceof VslBatchRequestHandler) {
+            ((VslBatchRequestHandler) requestHandler).setBatch(knowledge, identity);
+        } else {
+            for (final Entry<String, VslNode> entry : knowledge.entrySet()) {
+                requestHandler.set(entry.getKey(), entry.getValue(), identity);
+            }
+        }
+    }
+
     @Override
     public InputStream getStream(String address, VslIdentity identity) throws VslException {
         return requestHandler.getStream(address, identity);
@@ -0,0 +1,214 @@
+package org.ds2os.vsl.ka;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ds2os.vsl.core.VslAgentRegistryListener;
+import org.ds2os.vsl.core.VslAgentRegistryService;
+import org.ds2os.vsl.core.VslRequestHandler;
+import org.ds2os.vsl.core.VslTransportConnector;
+import org.ds2os.vsl.core.VslTransportManager;
+import org.ds2os.vsl.exception.VslException;
+
+/**
+ * Cache of the connections to remote KAs. For each remote agent it keeps a
+ * {@link RemoteKAEndpoint} per transport URL, and requests go to the available URL with the best
+ * latency and error rate. The transports of an agent are read again from the
+ * {@link VslAgentRegistryService} when it reports changed transports or the loss of the agent, and
+ * after {@link #REFRESH_INTERVAL} at the latest.
+ */
+final class RemoteConnectionCache implements VslAgentRegistryListener {
+
+    /**
+     * The time in milliseconds after which the transports of an agent are read again.
+     */
+    private static final long REFRESH_INTERVAL = 60000L;
+
+    /**
+     * The {@link VslTransportManager} for creating the transports to remote KAs.
+     */
+    private final VslTransportManager transportManager;
+
+    /**
+     * The {@link VslAgentRegistryService} for the transports of the remote KAs.
+     */
+    private final VslAgentRegistryService agentRegistry;
+
+    /**
+     * The cached connections by agent id.
+     */
+    private final ConcurrentMap<String, AgentConnections> agents;
+
+    /**
+     * Constructor.
+     *
+     * @param transportManager
+     *            the {@link VslTransportManager} for creating the transports to remote KAs.
+     * @param agentRegistry
+     *            the {@link VslAgentRegistryService} for the transports of the remote KAs.
+     */
+    RemoteConnectionCache(final VslTransportManager transportManager,
+            final VslAgentRegistryService agentRegistry) {
+        this.transportManager = transportManager;
+        this.agentRegistry = agentRegistry;
+        agents = new ConcurrentHashMap<String, AgentConnections>();
+    }
+
+    /**
+     * Get a {@link VslRequestHandler} to a remote agent over its best available transport.
+     *
+     * @param agentId
+     *            the agent id of the remote agent.
+     * @return the {@link VslRequestHandler} to this remote agent.
+     * @throws VslException
+     *             If the remote agent id is unknown or all its transports failed recently.
+     */
+    VslRequestHandler getRequestHandler(final String agentId) throws VslException {
+        final long now = System.currentTimeMillis();
+        AgentConnections connections = agents.get(agentId);
+        if (connections == null || now >= connections.refreshAt) {
+            connections = connect(agentId, connections, now);
+        }
+
+        RemoteKAEndpoint best = null;
+        for (final RemoteKAEndpoint endpoint : connections.endpoints) {
+            if (endpoint.isAvailable(now)
+                    && (best == null || endpoint.getScore() < best.getScore())) {
+                best = endpoint;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        final String reason;
+        if (connections.endpoints.isEmpty()) {
+            reason = "Could not get remote KA " + agentId + " for urls: " + connections.urls;
+        } else {
+            reason = "All transports of remote KA " + agentId + " failed recently: "
+                    + connections.urls;
+        }
+        // TODO: real exception
+        throw new VslException(reason) {
+            private static final long serialVersionUID = -5818882271673327778L;
+
+            @Override
+            public byte getErrorCodeMajor() {
+                return 5;
+            }
+
+            @Override
+            public byte getErrorCodeMinor() {
+                return 3;
+            }
+        };
+    }
+
+    /**
+     * Reads the transports of an agent from the registry and caches the connections to them. The
+     * endpoints of URLs that were already known are kept with their health records.
+     *
+     * @param agentId
+     *            the agent id of the remote agent.
+     * @param old
+     *            the connections cached so far, may be null.
+     * @param now
+     *            the current time in milliseconds.
+     * @return the new connections.
+     */
+    private AgentConnections connect(final String agentId, final AgentConnections old,
+            final long now) {
+        final Collection<VslTransportConnector> transports = agentRegistry.getTransports(agentId);
+        final List<String> urls = new ArrayList<String>(transports.size());
+        final List<RemoteKAEndpoint> endpoints = new ArrayList<RemoteKAEndpoint>(transports.size());
+        for (final VslTransportConnector connector : transports) {
+            final String url = connector.getURL();
+            urls.add(url);
+            RemoteKAEndpoint endpoint = old == null ? null : old.getEndpoint(url);
+            if (endpoint == null) {
+                final VslRequestHandler handler = transportManager.getTransportToKA(url);
+                if (handler == null) {
+                    continue;
+                }
+                endpoint = new RemoteKAEndpoint(url, handler);
+            }
+            endpoints.add(endpoint);
+        }
+
+        final AgentConnections connections = new AgentConnections(urls, endpoints,
+                now + REFRESH_INTERVAL);
+        if (endpoints.isEmpty()) {
+            // don't cache unknown agents, the registry might learn about them any time.
+            agents.remove(agentId);
+        } else {
+            agents.put(agentId, connections);
+        }
+        return connections;
+    }
+
+    @Override
+    public void agentTransportsChanged(final String agentID) {
+        agents.remove(agentID);
+    }
+
+    @Override
+    public void agentRemoved(final String agentID) {
+        agents.remove(agentID);
+    }
+
+    /**
+     * The cached connections to the transports of one agent.
+     */
+    private static final class AgentConnections {
+
+        /**
+         * All transport URLs of the agent.
+         */
+        private final List<String> urls;
+
+        /**
+         * The endpoints of the URLs for which a transport exists.
+         */
+        private final List<RemoteKAEndpoint> endpoints;
+
+        /**
+         * The time in milliseconds after which the transports are read again.
+         */
+        private final long refreshAt;
+
+        /**
+         * Constructor.
+         *
+         * @param urls
+         *            all transport URLs of the agent.
+         * @param endpoints
+         *            the endpoints of the URLs for which a transport exists.
+         * @param refreshAt
+         *            the time in milliseconds after which the transports are read again.
+         */
+        AgentConnections(final List<String> urls, final List<RemoteKAEndpoint> endpoints,
+                final long refreshAt) {
+            this.urls = urls;
+            this.endpoints = endpoints;
+            this.refreshAt = refreshAt;
+        }
+
+        /**
+         * Returns the endpoint of the given URL.
+         *
+         * @param url
+         *            the URL.
+         * @return the endpoint, null if there is none.
+         */
+        RemoteKAEndpoint getEndpoint(final String url) {
+            for (final RemoteKAEndpoint endpoint : endpoints) {
+                if (endpoint.getURL().equals(url)) {
+                    return endpoint;
+                }
+            }
+            return null;
+        }
+    }
+}
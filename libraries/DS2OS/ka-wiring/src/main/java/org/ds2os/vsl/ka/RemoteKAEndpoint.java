@@ -0,0 +1,454 @@
+package org.ds2os.vsl.ka;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.ds2os.vsl.core.VslBatchRequestHandler;
+import org.ds2os.vsl.core.VslIdentity;
+import org.ds2os.vsl.core.VslLockHandler;
+import org.ds2os.vsl.core.VslRequestHandler;
+import org.ds2os.vsl.core.VslServiceManifest;
+import org.ds2os.vsl.core.VslSubscriber;
+import org.ds2os.vsl.core.VslVirtualNodeHandler;
+import org.ds2os.vsl.core.node.VslNode;
+import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.ds2os.vsl.exception.VslException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link VslRequestHandler} to a remote KA over one transport URL which keeps track of the health
+ * of that URL. It records the latency and the error rate of all requests, and after failures the
+ * URL is skipped for a backoff time that doubles with every further failure. Only transport
+ * failures count as errors: runtime exceptions and {@link VslException}s with major error code 5
+ * or above. Other exceptions are answers of the remote KA.
+ */
+final class RemoteKAEndpoint implements VslBatchRequestHandler {
+
+    /**
+     * SLF4J logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RemoteKAEndpoint.class);
+
+    /**
+     * The time in milliseconds the URL is skipped after the first failure.
+     */
+    private static final long MIN_BACKOFF = 500L;
+
+    /**
+     * The maximum time in milliseconds the URL is skipped after failures.
+     */
+    private static final long MAX_BACKOFF = 30000L;
+
+    /**
+     * The weight of a new sample in the moving averages of latency and error rate.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * How much the error rate worsens the score. A URL that failed all recent requests scores like
+     * one that is this many times slower, plus one.
+     */
+    private static final double ERROR_PENALTY = 10.0;
+
+    /**
+     * The transport URL of the remote KA.
+     */
+    private final String url;
+
+    /**
+     * The {@link VslRequestHandler} of the transport to the URL.
+     */
+    private final VslRequestHandler delegate;
+
+    /**
+     * Moving average of the request latency in nanoseconds including failed requests, negative
+     * until the first request finished.
+     */
+    private double latency = -1;
+
+    /**
+     * Moving average of the fraction of failed requests.
+     */
+    private double errorRate;
+
+    /**
+     * The number of failed requests since the last successful one.
+     */
+    private int consecutiveFailures;
+
+    /**
+     * The time in milliseconds until which the URL is skipped.
+     */
+    private long skipUntil;
+
+    /**
+     * Constructor.
+     *
+     * @param url
+     *            the transport URL of the remote KA.
+     * @param delegate
+     *            the {@link VslRequestHandler} of the transport to the URL.
+     */
+    RemoteKAEndpoint(final String url, final VslRequestHandler delegate) {
+        this.url = url;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Get the transport URL of the remote KA.
+     *
+     * @return the URL.
+     */
+    String getURL() {
+        return url;
+    }
+
+    /**
+     * Checks whether requests should be sent to this URL, which is not the case during the backoff
+     * time after failures.
+     *
+     * @param now
+     *            the current time in milliseconds.
+     * @return true iff the URL is not skipped.
+     */
+    synchronized boolean isAvailable(final long now) {
+        return now >= skipUntil;
+    }
+
+    /**
+     * Get the score of the URL based on latency and error rate, lower is better. URLs without
+     * finished requests have the best score, so each URL is tried at least once.
+     *
+     * @return the score.
+     */
+    synchronized double getScore() {
+        if (latency < 0) {
+            return 0;
+        }
+        return latency * (1 + ERROR_PENALTY * errorRate);
+    }
+
+    /**
+     * Records a successful request.
+     *
+     * @param start
+     *            the start time of the request as returned by {@link System#nanoTime()}.
+     */
+    private void succeeded(final long start) {
+        final long duration = System.nanoTime() - start;
+        synchronized (this) {
+            addLatency(duration);
+            errorRate -= SMOOTHING * errorRate;
+            consecutiveFailures = 0;
+            skipUntil = 0;
+        }
+    }
+
+    /**
+     * Records a failed request.
+     *
+     * @param start
+     *            the start time of the request as returned by {@link System#nanoTime()}.
+     * @param e
+     *            the exception thrown by the request.
+     */
+    private void failed(final long start, final Exception e) {
+        if (e instanceof VslException && ((VslException) e).getErrorCodeMajor() < 5) {
+            // the remote KA answered.
+            succeeded(start);
+            return;
+        }
+        final long duration = System.nanoTime() - start;
+        final long backoff;
+        synchronized (this) {
+            addLatency(duration);
+            errorRate += SMOOTHING * (1 - errorRate);
+            consecutiveFailures++;
+            backoff = Math.min(MIN_BACKOFF << Math.min(consecutiveFailures - 1, 16), MAX_BACKOFF);
+            skipUntil = System.currentTimeMillis() + backoff;
+        }
+        LOGGER.debug("Request over {} failed, skipping it for {} ms: {}", url, backoff,
+                e.getMessage());
+    }
+
+    /**
+     * Adds a sample to the moving average of the latency. Must be called with the lock held.
+     *
+     * @param duration
+     *            the duration of a request in nanoseconds.
+     */
+    private void addLatency(final long duration) {
+        if (latency < 0) {
+            latency = duration;
+        } else {
+            latency += SMOOTHING * (duration - latency);
+        }
+    }
+
+    @Override
+    public String registerService(final VslServiceManifest manifest, final VslIdentity identity)
+            throws VslException {
+        final long start = System.nanoTime();
+        try {
+            final String result = delegate.registerService(manifest, identity);
+            succeeded(start);
+            return result;
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void unregisterService(final VslIdentity identity) throws VslException {
+        final long start = System.nanoTime();
+        try {
+            delegate.unregisterService(identity);
+            succeeded(start);
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public VslNode get(final String address, final VslIdentity identity) throws VslException {
+        final long start = System.nanoTime();
+        try {
+            final VslNode result = delegate.get(address, identity);
+            succeeded(start);
+            return result;
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public VslNode get(final String address, final VslAddressParameters params,
+            final VslIdentity identity) throws VslException {
+        final long start = System.nanoTime();
+        try {
+            final VslNode result = delegate.get(address, params, identity);
+            succeeded(start);
+            return result;
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void set(final String address, final VslNode knowledge, final VslIdentity identity)
+            throws VslException {
+        final long start = System.nanoTime();
+        try {
+            delegate.set(address, knowledge, identity);
+            succeeded(start);
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream getStream(final String address, final VslIdentity identity)
+            throws VslException {
+        final long start = System.nanoTime();
+        try {
+            final InputStream result = delegate.getStream(address, identity);
+            succeeded(start);
+            return result;
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setStream(final String address, final InputStream stream,
+            final VslIdentity identity) throws VslException {
+        final long start = System.nanoTime();
+        try {
+            delegate.setStream(address, stream, identity);
+            succeeded(start);
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void notify(final String address, final VslIdentity identity) throws VslException {
+        final long start = System.nanoTime();
+        try {
+            delegate.notify(address, identity);
+            succeeded(start);
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void subscribe(final String address, final VslSubscriber subscriber,
+            final VslIdentity identity) throws VslException {
+        final long start = System.nanoTime();
+        try {
+            delegate.subscribe(address, subscriber, identity);
+            succeeded(start);
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void unsubscribe(final String address, final VslIdentity identity) throws VslException {
+        final long start = System.nanoTime();
+        try {
+            delegate.unsubscribe(address, identity);
+            succeeded(start);
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void subscribe(final String address, final VslSubscriber subscriber,
+            final VslAddressParameters params, final VslIdentity identity) throws VslException {
+        final long start = System.nanoTime();
+        try {
+            delegate.subscribe(address, subscriber, params, identity);
+            succeeded(start);
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void unsubscribe(final String address, final VslAddressParameters params,
+            final VslIdentity identity) throws VslException {
+        final long start = System.nanoTime();
+        try {
+            delegate.unsubscribe(address, params, identity);
+            succeeded(start);
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void lockSubtree(final String address, final VslLockHandler lockHandler,
+            final VslIdentity identity) throws VslException {
+        final long start = System.nanoTime();
+        try {
+            delegate.lockSubtree(address, lockHandler, identity);
+            succeeded(start);
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void commitSubtree(final String address, final VslIdentity identity)
+            throws VslException {
+        final long start = System.nanoTime();
+        try {
+            delegate.commitSubtree(address, identity);
+            succeeded(start);
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void rollbackSubtree(final String address, final VslIdentity identity)
+            throws VslException {
+        final long start = System.nanoTime();
+        try {
+            delegate.rollbackSubtree(address, identity);
+            succeeded(start);
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void registerVirtualNode(final String address,
+            final VslVirtualNodeHandler virtualNodeHandler, final VslIdentity identity)
+            throws VslException {
+        final long start = System.nanoTime();
+        try {
+            delegate.registerVirtualNode(address, virtualNodeHandler, identity);
+            succeeded(start);
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void unregisterVirtualNode(final String address, final VslIdentity identity)
+            throws VslException {
+        final long start = System.nanoTime();
+        try {
+            delegate.unregisterVirtualNode(address, identity);
+            succeeded(start);
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<String, VslNode> getBatch(final Collection<String> addresses,
+            final VslAddressParameters params, final VslIdentity identity) throws VslException {
+        final long start = System.nanoTime();
+        try {
+            final Map<String, VslNode> result;
+            if (delegate instanceof VslBatchRequestHandler) {
+                result = ((VslBatchRequestHandler) delegate).getBatch(addresses, params, identity);
+            } else {
+                result = new LinkedHashMap<String, VslNode>();
+                for (final String address : addresses) {
+                    result.put(address, delegate.get(address, params, identity));
+                }
+            }
+            succeeded(start);
+            return result;
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setBatch(final Map<String, VslNode> knowledge, final VslIdentity identity)
+            throws VslException {
+        final long start = System.nanoTime();
+        try {
+            if (delegate instanceof VslBatchRequestHandler) {
+                ((VslBatchRequestHandler) delegate).setBatch(knowledge, identity);
+            } else {
+                for (final Entry<String, VslNode> entry : knowledge.entrySet()) {
+                    delegate.set(entry.getKey(), entry.getValue(), identity);
+                }
+            }
+            succeeded(start);
+        } catch (final VslException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+}
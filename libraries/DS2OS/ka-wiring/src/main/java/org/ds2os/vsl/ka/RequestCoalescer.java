@@ -0,0 +1,161 @@
+package org.ds2os.vsl.ka;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.ds2os.vsl.exception.InterruptedOperationException;
+import org.ds2os.vsl.exception.UnexpectedErrorException;
+import org.ds2os.vsl.exception.VslException;
+
+/**
+ * Coalesces concurrent requests with the same key. The first caller runs the request, all callers
+ * that arrive while it is in flight wait for its result instead of sending the request again. A
+ * request is forgotten as soon as it completed, so later callers send it again.
+ *
+ * @param <V>
+ *            the result type of the requests.
+ */
+final class RequestCoalescer<V> {
+
+    /**
+     * The requests that are currently in flight by their key.
+     */
+    private final ConcurrentMap<String, InFlightRequest> inFlight;
+
+    /**
+     * Constructor.
+     */
+    RequestCoalescer() {
+        inFlight = new ConcurrentHashMap<String, InFlightRequest>();
+    }
+
+    /**
+     * Runs the request in the calling thread, or waits for the result if a request with the same
+     * key is already in flight.
+     *
+     * @param key
+     *            the key identifying equal requests.
+     * @param request
+     *            the request.
+     * @return the result of the request.
+     * @throws VslException
+     *             the exception thrown by the request.
+     */
+    V execute(final String key, final Callable<V> request) throws VslException {
+        final InFlightRequest created = new InFlightRequest(key, request);
+        final InFlightRequest running = inFlight.putIfAbsent(key, created);
+        if (running != null) {
+            try {
+                return await(running);
+            } catch (final CancellationException e) {
+                // the executor rejected the running request, run it here without coalescing.
+            }
+        }
+        created.run();
+        return await(created);
+    }
+
+    /**
+     * Runs the request with the given executor unless a request with the same key is already in
+     * flight. Callers of {@link #execute(String, Callable)} with this key wait for the result while
+     * it runs. If the executor rejects the request, it is dropped.
+     *
+     * @param key
+     *            the key identifying equal requests.
+     * @param request
+     *            the request.
+     * @param executor
+     *            the executor running the request.
+     * @return true if the request was started, false if one was already in flight or the executor
+     *         rejected it.
+     */
+    boolean executeAsync(final String key, final Callable<V> request, final Executor executor) {
+        final InFlightRequest created = new InFlightRequest(key, request);
+        if (inFlight.putIfAbsent(key, created) != null) {
+            return false;
+        }
+        try {
+            executor.execute(created);
+            return true;
+        } catch (final RejectedExecutionException e) {
+            // completes the request, which removes it again.
+            created.cancel(false);
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether a request with the given key is in flight.
+     *
+     * @param key
+     *            the key identifying equal requests.
+     * @return true if the request is in flight.
+     */
+    boolean isInFlight(final String key) {
+        return inFlight.containsKey(key);
+    }
+
+    /**
+     * Waits for the result of a request.
+     *
+     * @param request
+     *            the request.
+     * @return the result.
+     * @throws VslException
+     *             the exception thrown by the request.
+     */
+    private V await(final InFlightRequest request) throws VslException {
+        try {
+            return request.get();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof VslException) {
+                throw (VslException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new UnexpectedErrorException(cause.getMessage(), cause);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedOperationException(e);
+        }
+    }
+
+    /**
+     * A request in flight, removes itself from {@link #inFlight} when it completes.
+     */
+    private final class InFlightRequest extends FutureTask<V> {
+
+        /**
+         * The key of the request.
+         */
+        private final String key;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            the key of the request.
+         * @param request
+         *            the request.
+         */
+        InFlightRequest(final String key, final Callable<V> request) {
+            super(request);
+            this.key = key;
+        }
+
+        @Override
+        protected void done() {
+            inFlight.remove(key, this);
+        }
+    }
+}
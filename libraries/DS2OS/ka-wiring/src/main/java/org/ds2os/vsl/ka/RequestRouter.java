@@ -6,16 +6,32 @@ import org.ds2os.vsl.core.config.VslAnomalyDetectionConfig;
 import org.ds2os.vsl.core.node.VslNode;
 import org.ds2os.vsl.core.utils.AddressParameters;
 import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.ds2os.vsl.exception.InterruptedOperationException;
 import org.ds2os.vsl.exception.InvalidOperationException;
 import org.ds2os.vsl.exception.NoPermissionException;
 import org.ds2os.vsl.exception.NodeNotLockedException;
+import org.ds2os.vsl.exception.UnexpectedErrorException;
 import org.ds2os.vsl.exception.VslException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.InputStream;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * {@link VslRequestHandler} which routes requests to remote KAs or the local KA depending on the
@@ -24,24 +40,31 @@ import java.util.Collection;
  * @author borchers
  * @author felix
  */
-public final class RequestRouter extends AbstractRequestRouter {
+public final class RequestRouter extends AbstractRequestRouter
+        implements VslBatchRequestHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(RequestRouter.class);
 
     /**
-     * The {@link VslRequestHandler} of the local KOR for local requests.
+     * The maximum number of threads sending the parts of batch requests to remote KAs in parallel.
      */
-    private final VslRequestHandler localKOR;
+    private static final int BATCH_THREADS = 4;
 
     /**
-     * The {@link VslTransportManager} for retrieving transports to remote KAs.
+     * The maximum number of batch parts waiting for a thread. If more are waiting, the requesting
+     * thread sends the part itself.
      */
-    private final VslTransportManager transportManager;
+    private static final int BATCH_QUEUE_SIZE = 256;
+
+    /**
+     * The {@link VslRequestHandler} of the local KOR for local requests.
+     */
+    private final VslRequestHandler localKOR;
 
     /**
-     * The {@link VslAgentRegistryService} for information about other connected agents.
+     * The cached connections to remote KAs.
      */
-    private final VslAgentRegistryService agentRegistry;
+    private final RemoteConnectionCache remoteConnections;
 
     /**
      * The {@link VslSubscriptionManager} for subscriptions.
@@ -63,6 +86,11 @@ public final class RequestRouter extends AbstractRequestRouter {
      */
     private final VslAnomalyDetectionConfig anomalyDetectionConfig;
 
+    /**
+     * The executor sending the parts of batch requests to the different remote KAs in parallel.
+     */
+    private final ExecutorService batchExecutor;
+
     /**
      * Create a new {@link RequestRouter} instance.
      *
@@ -86,50 +114,39 @@ public final class RequestRouter extends AbstractRequestRouter {
             final VslAnomalyDetectionConfig anomalyDetectionConfig) {
         super(agentName);
         this.localKOR = localKOR;
-        this.transportManager = transportManager;
-        this.agentRegistry = agentRegistryService;
+        remoteConnections = new RemoteConnectionCache(transportManager, agentRegistryService);
+        agentRegistryService.addAgentRegistryListener(remoteConnections);
         this.subscriptionManager = subscriptionManager;
         this.anomalyDetectionConfig = anomalyDetectionConfig;
         anomalyDetectionService = new AccessObserver(getAgentId(), this);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(BATCH_THREADS, BATCH_THREADS,
+                60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(BATCH_QUEUE_SIZE),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r,
+                                "batch request " + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        batchExecutor = executor;
     }
 
     /**
-     * Get a {@link VslRequestHandler} to a remote agent from the transport manager.
+     * Get a {@link VslRequestHandler} to a remote agent from the cached connections.
      *
      * @param agentId
      *            the agent id of the remote agent.
-     * @return the {@link VslRequestHandler} to this remote agent.F
+     * @return the {@link VslRequestHandler} to this remote agent.
      * @throws VslException
      *             If the remote agent id is unknown or unreachable.
      */
     private VslRequestHandler getRemoteRequestHandler(final String agentId) throws VslException {
-        final Collection<VslTransportConnector> transports = agentRegistry.getTransports(agentId);
-        final String[] urls = new String[transports.size()];
-        int i = 0;
-        for (final VslTransportConnector connector : transports) {
-            urls[i] = connector.getURL();
-            i++;
-        }
-        final VslRequestHandler requestHandler = transportManager.getTransportToKA(urls);
-        if (requestHandler == null) {
-            // TODO: real exception
-            throw new VslException(
-                    "Could not get remote KA " + agentId + " for urls: " + Arrays.toString(urls)) {
-                private static final long serialVersionUID = -5818882271673327778L;
-
-                @Override
-                public byte getErrorCodeMajor() {
-                    return 5;
-                }
-
-                @Override
-                public byte getErrorCodeMinor() {
-                    return 3;
-                }
-            };
-        } else {
-            return requestHandler;
-        }
+        return remoteConnections.getRequestHandler(agentId);
     }
 
     @Override
@@ -205,6 +222,229 @@ public final class RequestRouter extends AbstractRequestRouter {
         }
     }
 
+    @Override
+    public Map<String, VslNode> getBatch(final Collection<String> addresses,
+            final VslAddressParameters params, final VslIdentity identity) throws VslException {
+        final Map<String, String> resolvedAddresses = new LinkedHashMap<String, String>();
+        final Map<String, List<String>> addressesByAgent =
+                new LinkedHashMap<String, List<String>>();
+        for (final String address : addresses) {
+            final String resolvedAddress = resolveAddress(address, identity);
+            final String agentId = address.equals("/") ? getAgentId()
+                    : extractAgentId(resolvedAddress);
+            if (agentId.isEmpty()) {
+                throw new NoPermissionException("Cannot get /.");
+            }
+            resolvedAddresses.put(address, resolvedAddress);
+            List<String> agentAddresses = addressesByAgent.get(agentId);
+            if (agentAddresses == null) {
+                agentAddresses = new ArrayList<String>();
+                addressesByAgent.put(agentId, agentAddresses);
+            }
+            agentAddresses.add(resolvedAddress);
+        }
+
+        // one request per agent, the requests to different agents run in parallel.
+        final List<Callable<Map<String, VslNode>>> parts =
+                new ArrayList<Callable<Map<String, VslNode>>>(addressesByAgent.size());
+        for (final Entry<String, List<String>> entry : addressesByAgent.entrySet()) {
+            parts.add(new Callable<Map<String, VslNode>>() {
+                @Override
+                public Map<String, VslNode> call() throws VslException {
+                    // TODO: Access check for remote KAs!
+                    return getBatch(getRequestHandler(entry.getKey()), entry.getValue(), params,
+                            identity);
+                }
+            });
+        }
+        final Map<String, VslNode> nodes = new HashMap<String, VslNode>();
+        for (final Map<String, VslNode> partNodes : invokeParts(parts)) {
+            nodes.putAll(partNodes);
+        }
+
+        final Map<String, VslNode> result = new LinkedHashMap<String, VslNode>();
+        for (final Entry<String, String> entry : resolvedAddresses.entrySet()) {
+            final VslNode node = nodes.get(entry.getValue());
+            // calling the logger of the Sphinx
+            logAccess(identity, "read", entry.getValue(), node);
+            result.put(entry.getKey(), node);
+        }
+        return result;
+    }
+
+    @Override
+    public void setBatch(final Map<String, VslNode> knowledge, final VslIdentity identity)
+            throws VslException {
+        final Map<String, Map<String, VslNode>> knowledgeByAgent =
+                new LinkedHashMap<String, Map<String, VslNode>>();
+        for (final Entry<String, VslNode> entry : knowledge.entrySet()) {
+            final String resolvedAddress = resolveAddress(entry.getKey(), identity);
+            final String agentId = extractAgentId(resolvedAddress);
+            if (agentId.isEmpty()) {
+                throw new NoPermissionException("Cannot set /.");
+            }
+
+            // calling the logger of the Sphinx
+            logAccess(identity, "write", resolvedAddress, entry.getValue());
+
+            Map<String, VslNode> agentKnowledge = knowledgeByAgent.get(agentId);
+            if (agentKnowledge == null) {
+                agentKnowledge = new LinkedHashMap<String, VslNode>();
+                knowledgeByAgent.put(agentId, agentKnowledge);
+            }
+            agentKnowledge.put(resolvedAddress, entry.getValue());
+        }
+
+        final List<Callable<Void>> parts = new ArrayList<Callable<Void>>(knowledgeByAgent.size());
+        for (final Entry<String, Map<String, VslNode>> entry : knowledgeByAgent.entrySet()) {
+            parts.add(new Callable<Void>() {
+                @Override
+                public Void call() throws VslException {
+                    // TODO: Access check for remote KAs!
+                    setBatch(getRequestHandler(entry.getKey()), entry.getValue(), identity);
+                    return null;
+                }
+            });
+        }
+        invokeParts(parts);
+    }
+
+    /**
+     * Get the {@link VslRequestHandler} responsible for the addresses of the given agent.
+     *
+     * @param agentId
+     *            the agent id.
+     * @return the local KOR for the local agent, else the {@link VslRequestHandler} to the remote
+     *         agent.
+     * @throws VslException
+     *             If the remote agent id is unknown or unreachable.
+     */
+    private VslRequestHandler getRequestHandler(final String agentId) throws VslException {
+        if (getAgentId().equals(agentId)) {
+            return localKOR;
+        } else {
+            return getRemoteRequestHandler(agentId);
+        }
+    }
+
+    /**
+     * Gets the given addresses from the given {@link VslRequestHandler}, in one request if it
+     * supports batches.
+     *
+     * @param handler
+     *            the {@link VslRequestHandler}.
+     * @param addresses
+     *            the resolved addresses.
+     * @param params
+     *            The parameters attached to the request of each address.
+     * @param identity
+     *            the identity of the issuer of this operation.
+     * @return Map of the addresses to their nodes.
+     * @throws VslException
+     *             If a VSL exception occurs for any of the addresses.
+     */
+    private static Map<String, VslNode> getBatch(final VslRequestHandler handler,
+            final List<String> addresses, final VslAddressParameters params,
+            final VslIdentity identity) throws VslException {
+        if (handler instanceof VslBatchRequestHandler) {
+            return ((VslBatchRequestHandler) handler).getBatch(addresses, params, identity);
+        }
+        final Map<String, VslNode> nodes = new HashMap<String, VslNode>();
+        for (final String address : addresses) {
+            nodes.put(address, handler.get(address, params, identity));
+        }
+        return nodes;
+    }
+
+    /**
+     * Sets the given knowledge at the given {@link VslRequestHandler}, in one request if it
+     * supports batches.
+     *
+     * @param handler
+     *            the {@link VslRequestHandler}.
+     * @param knowledge
+     *            Map of the resolved addresses to the knowledge to set at them.
+     * @param identity
+     *            the identity of the issuer of this operation.
+     * @throws VslException
+     *             If a VSL exception occurs for any of the addresses.
+     */
+    private static void setBatch(final VslRequestHandler handler,
+            final Map<String, VslNode> knowledge, final VslIdentity identity)
+            throws VslException {
+        if (handler instanceof VslBatchRequestHandler) {
+            ((VslBatchRequestHandler) handler).setBatch(knowledge, identity);
+            return;
+        }
+        for (final Entry<String, VslNode> entry : knowledge.entrySet()) {
+            handler.set(entry.getKey(), entry.getValue(), identity);
+        }
+    }
+
+    /**
+     * Runs the parts of a batch request in parallel and waits for all of them. The first part runs
+     * in the calling thread.
+     *
+     * @param parts
+     *            the parts of the batch request.
+     * @param <T>
+     *            the result type of the parts.
+     * @return the results of the parts, in the given order.
+     * @throws VslException
+     *             The first exception thrown by a part.
+     */
+    private <T> List<T> invokeParts(final List<Callable<T>> parts) throws VslException {
+        final List<Future<T>> futures = new ArrayList<Future<T>>(parts.size());
+        for (int i = 1; i < parts.size(); i++) {
+            futures.add(batchExecutor.submit(parts.get(i)));
+        }
+        final List<T> results = new ArrayList<T>(parts.size());
+        VslException failure = null;
+        if (!parts.isEmpty()) {
+            try {
+                results.add(parts.get(0).call());
+            } catch (final Exception e) {
+                failure = toVslException(e);
+            }
+        }
+        // the other parts may still be changing the knowledge, wait for them before failing.
+        for (final Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (final ExecutionException e) {
+                if (failure == null) {
+                    failure = toVslException(e.getCause());
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedOperationException(e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * Converts the cause of a failed batch part to a {@link VslException}.
+     *
+     * @param cause
+     *            the cause.
+     * @return the {@link VslException}.
+     */
+    private static VslException toVslException(final Throwable cause) {
+        if (cause instanceof VslException) {
+            return (VslException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        } else {
+            return new UnexpectedErrorException(cause.getMessage(), cause);
+        }
+    }
+
     @Override
     public InputStream getStream(String address, VslIdentity identity) throws VslException {
         final String resolvedAddress = resolveAddress(address, identity);
@@ -1,19 +1,27 @@
 package org.ds2os.vsl.ka;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ds2os.vsl.core.VslAgentRegistryService;
+import org.ds2os.vsl.core.VslBatchSubscriber;
 import org.ds2os.vsl.core.VslIdentity;
 import org.ds2os.vsl.core.VslRequestHandler;
 import org.ds2os.vsl.core.VslSubscriber;
@@ -30,7 +38,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * SubscriptionManager Implementation.
+ * SubscriptionManager Implementation. The subscribed addresses are kept in {@link AddressTrie}s,
+ * so notifications can look up their subscribers without locking. Notifications that arrive
+ * within a short delivery window are coalesced per subscriber and delivered in parallel, one
+ * batch per subscriber. The notification thread doesn't wait for the deliveries, notifications for
+ * a subscriber that is still busy are coalesced until its current delivery returned.
  *
  * @author liebald
  */
@@ -41,6 +53,23 @@ public class SubscriptionManager implements VslSubscriptionManager, VslSubscribe
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionManager.class);
 
+    /**
+     * The time in milliseconds the notification thread waits for further notifications before it
+     * delivers the ones it has.
+     */
+    private static final long DELIVERY_WINDOW = 5L;
+
+    /**
+     * The maximum number of threads delivering notifications in parallel.
+     */
+    private static final int DELIVERY_THREADS = 4;
+
+    /**
+     * The maximum number of deliveries waiting for a delivery thread. If more are waiting, the
+     * notification thread delivers them itself.
+     */
+    private static final int DELIVERY_QUEUE_SIZE = 256;
+
     /**
      * Flag that indicates whether remote subscription handling is enabled.
      */
@@ -62,29 +91,56 @@ public class SubscriptionManager implements VslSubscriptionManager, VslSubscribe
     private VslAgentName agentName = null;
 
     /**
-     * Map of subscribers from the localKA. External map is subscribedAddress: "Map of subscribers
-     * to that address". "Map of subscribers to that address" is ID of subscriber:callback.
+     * Subscribers from the localKA. The trie maps subscribedAddress: "Map of subscribers to that
+     * address". "Map of subscribers to that address" is ID of subscriber:callback.
      */
-    private final Map<String, Map<String, VslSubscriber>> localSubscribers;
+    private final AddressTrie<Map<String, VslSubscriber>> localSubscribers;
 
     /**
-     * Map of remote KA subscribers. External map is subscribedAddress: "Map of subscribers to that
+     * Remote KA subscribers. The trie maps subscribedAddress: "Map of subscribers to that
      * address". "Map of subscribers to that address" is ID of subscriber:callback.
      */
-    private final Map<String, Map<String, VslSubscriber>> remoteSubscribers;
+    private final AddressTrie<Map<String, VslSubscriber>> remoteSubscribers;
 
     /**
      * Queue of notifications which need to be processed (sent out).
      */
-    private final Queue<String> notificationQueue;
+    private final BlockingQueue<String> notificationQueue;
+
+    /**
+     * The executor delivering the notifications to the subscribers.
+     */
+    private final ExecutorService deliveryExecutor;
+
+    /**
+     * The addresses waiting for each subscriber with a scheduled or running delivery. Guarded by
+     * itself.
+     */
+    private final Map<VslSubscriber, Set<String>> pendingDeliveries;
 
     /**
      * Constructor of the SubscriptionManager.
      */
     public SubscriptionManager() {
-        localSubscribers = new HashMap<String, Map<String, VslSubscriber>>();
-        remoteSubscribers = new HashMap<String, Map<String, VslSubscriber>>();
-        notificationQueue = new ConcurrentLinkedQueue<String>();
+        localSubscribers = new AddressTrie<Map<String, VslSubscriber>>();
+        remoteSubscribers = new AddressTrie<Map<String, VslSubscriber>>();
+        notificationQueue = new LinkedBlockingQueue<String>();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(DELIVERY_THREADS,
+                DELIVERY_THREADS, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(DELIVERY_QUEUE_SIZE), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r,
+                                "notification delivery " + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        deliveryExecutor = executor;
+        pendingDeliveries = new HashMap<VslSubscriber, Set<String>>();
     }
 
     @Override
@@ -93,67 +149,129 @@ public class SubscriptionManager implements VslSubscriptionManager, VslSubscribe
     }
 
     /**
-     * Real notification process.
+     * Real notification process. Collects the subscribers of all changed addresses and schedules
+     * the delivery of one batch of addresses per subscriber. If a delivery to a subscriber is
+     * still running, its addresses are added to the next batch of that subscriber instead, so the
+     * notifications of one subscriber stay in order without waiting for any delivery here.
      *
      * @param addresses
      *            all addresses that changed.
      */
-    private synchronized void realNotify(final Collection<String> addresses) {
-        // LOGGER.debug("Check for existing subscriptions for {}", addresses);
-        // only check parents up to service level.
+    private void realNotify(final Collection<String> addresses) {
         // LOGGER.debug("notify: {}", addresses.toString());
-        final Map<String, List<VslSubscriber>> subs = new HashMap<String, List<VslSubscriber>>();
+        final Map<VslSubscriber, Set<String>> batches =
+                new LinkedHashMap<VslSubscriber, Set<String>>();
 
-        // collect all affected local subscribers
+        // collect all affected local and remote subscribers
         for (final String changedAddress : addresses) {
             final String address = AddressParser.makeWellFormedAddress(changedAddress);
-
-            final Map<String, VslSubscriber> map = localSubscribers.get(address);
-            if (map != null && map.size() > 0) {
-                LOGGER.trace("sending notification for address: {} to local subscriber", address);
-                subs.put(address, new LinkedList<VslSubscriber>(map.values()));
+            addToBatches(batches, address, localSubscribers.get(address));
+            addToBatches(batches, address, remoteSubscribers.get(address));
+        }
+        // LOGGER.debug("notify {} subscribers", batches.size());
+        // notify all affected subscribers.
+        for (final Entry<VslSubscriber, Set<String>> entry : batches.entrySet()) {
+            final VslSubscriber subscriber = entry.getKey();
+            synchronized (pendingDeliveries) {
+                final Set<String> pending = pendingDeliveries.get(subscriber);
+                if (pending != null) {
+                    pending.addAll(entry.getValue());
+                    continue;
+                }
+                pendingDeliveries.put(subscriber, entry.getValue());
             }
-
+            deliveryExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliverPending(subscriber);
+                }
+            });
         }
-        // collect remote subscribers
-        for (final String changedAddress : addresses) {
-            final String address = AddressParser.makeWellFormedAddress(changedAddress);
-
-            final Map<String, VslSubscriber> map = remoteSubscribers.get(address);
-            if (map != null && map.size() > 0) {
-                LOGGER.trace("sending notification for address: {} to remote subscriber", address);
+    }
 
-                if (subs.containsKey(changedAddress)) {
-                    // don't overwrite local subscribers
-                    subs.get(changedAddress).addAll(new LinkedList<VslSubscriber>(map.values()));
-                } else {
-                    subs.put(changedAddress, new LinkedList<VslSubscriber>(map.values()));
+    /**
+     * Delivers the pending addresses of a subscriber until none are left.
+     *
+     * @param subscriber
+     *            The subscriber.
+     */
+    private void deliverPending(final VslSubscriber subscriber) {
+        while (true) {
+            final Set<String> batch;
+            synchronized (pendingDeliveries) {
+                batch = pendingDeliveries.get(subscriber);
+                if (batch.isEmpty()) {
+                    pendingDeliveries.remove(subscriber);
+                    return;
                 }
+                pendingDeliveries.put(subscriber, new LinkedHashSet<String>());
+            }
+            try {
+                deliver(subscriber, batch);
+            } catch (final RuntimeException e) {
+                LOGGER.error("notification delivery failed", e);
             }
+        }
+    }
 
+    /**
+     * Adds the given address to the batches of the given subscribers.
+     *
+     * @param batches
+     *            The changed addresses per subscriber.
+     * @param address
+     *            The changed address.
+     * @param subscribers
+     *            The subscribers of the address, may be null.
+     */
+    private static void addToBatches(final Map<VslSubscriber, Set<String>> batches,
+            final String address, final Map<String, VslSubscriber> subscribers) {
+        if (subscribers == null) {
+            return;
         }
-        // LOGGER.debug("notify {} subscribers", subs.size());
-        // notify all affected subscribers.
-        for (final Entry<String, List<VslSubscriber>> entry : subs.entrySet()) {
-            for (final VslSubscriber vslSubscriber : entry.getValue()) {
-                try {
-                    vslSubscriber.notificationCallback(entry.getKey());
-                } catch (final VslException e) {
-                    // TODO: make exception for unusable callback and remove node from subscribers?
-                    LOGGER.error("notification callback failed for address {}", entry.getKey(), e);
-                }
+        for (final VslSubscriber subscriber : subscribers.values()) {
+            Set<String> batch = batches.get(subscriber);
+            if (batch == null) {
+                batch = new LinkedHashSet<String>();
+                batches.put(subscriber, batch);
             }
+            batch.add(address);
         }
     }
 
-    @Override
-    public final void notifySubscribers(final Collection<String> addresses) {
-        synchronized (notificationQueue) {
-            for (final String address : addresses) {
-                notificationQueue.offer(address);
+    /**
+     * Delivers the notifications for the given addresses to a subscriber. Uses a single callback
+     * if the subscriber supports it.
+     *
+     * @param subscriber
+     *            The subscriber.
+     * @param addresses
+     *            The changed addresses.
+     */
+    private static void deliver(final VslSubscriber subscriber,
+            final Collection<String> addresses) {
+        LOGGER.trace("sending notification for addresses: {} to subscriber", addresses);
+        if (addresses.size() > 1 && subscriber instanceof VslBatchSubscriber) {
+            try {
+                ((VslBatchSubscriber) subscriber).batchNotificationCallback(addresses);
+            } catch (final VslException e) {
+                LOGGER.error("notification callback failed for addresses {}", addresses, e);
             }
-            notificationQueue.notifyAll();
+            return;
         }
+        for (final String address : addresses) {
+            try {
+                subscriber.notificationCallback(address);
+            } catch (final VslException e) {
+                // TODO: make exception for unusable callback and remove node from subscribers?
+                LOGGER.error("notification callback failed for address {}", address, e);
+            }
+        }
+    }
+
+    @Override
+    public final void notifySubscribers(final Collection<String> addresses) {
+        notificationQueue.addAll(addresses);
     }
 
     @Override
@@ -184,16 +302,16 @@ public class SubscriptionManager implements VslSubscriptionManager, VslSubscribe
             if (identity.isKA()) {
                 Map<String, VslSubscriber> map = remoteSubscribers.get(affectedAddress);
                 if (map == null) {
-                    map = new HashMap<String, VslSubscriber>();
+                    map = new ConcurrentHashMap<String, VslSubscriber>();
                     remoteSubscribers.put(affectedAddress, map);
                 }
                 map.put(identity.getClientId(), subscriber);
             } else {
                 // if a local service subscribes, add him to local subscribers and check if a remote
                 // subscription is necessary.
-                Map<String, VslSubscriber> map = localSubscribers.get(address);
+                Map<String, VslSubscriber> map = localSubscribers.get(affectedAddress);
                 if (map == null) {
-                    map = new HashMap<String, VslSubscriber>();
+                    map = new ConcurrentHashMap<String, VslSubscriber>();
                     localSubscribers.put(affectedAddress, map);
                 }
                 map.put(identity.getClientId(), subscriber);
@@ -201,8 +319,7 @@ public class SubscriptionManager implements VslSubscriptionManager, VslSubscribe
                 if (remoteSubcriptionsEnabled
                         && !affectedAddress.equals("/" + agentName.getAgentName())
                         && !affectedAddress.startsWith("/" + agentName.getAgentName() + "/")
-                        && localSubscribers.containsKey(affectedAddress)
-                        && localSubscribers.get(affectedAddress).size() == 1) {
+                        && map.size() == 1) {
                     // size==1 ensures that this part is only executed when a subscription to a
                     // remote address is the first one and there are not already some existing.
                     LOGGER.debug("Add service subscription for remote KA {}", address);
@@ -212,7 +329,10 @@ public class SubscriptionManager implements VslSubscriptionManager, VslSubscribe
                         // remove the subscription from the local KA if an error occurred when
                         // registering it and throw an exception.
                         // remotely:
-                        localSubscribers.get(affectedAddress).remove(identity.getClientId());
+                        map.remove(identity.getClientId());
+                        if (map.isEmpty()) {
+                            localSubscribers.remove(affectedAddress);
+                        }
                         throw e;
                     }
                 }
@@ -286,7 +406,7 @@ public class SubscriptionManager implements VslSubscriptionManager, VslSubscribe
         // service unsubscribed the given address.
 
         if (identity.isKA()) {
-            for (String affectedAddress : getAffectedAddresses(address, remoteSubscribers.keySet(),
+            for (String affectedAddress : getAffectedAddresses(address, remoteSubscribers,
                     params)) {
 
                 final Map<String, VslSubscriber> map = remoteSubscribers.get(affectedAddress);
@@ -298,7 +418,7 @@ public class SubscriptionManager implements VslSubscriptionManager, VslSubscribe
                 }
             }
         } else {
-            for (String affectedAddress : getAffectedAddresses(address, localSubscribers.keySet(),
+            for (String affectedAddress : getAffectedAddresses(address, localSubscribers,
                     params)) {
 
                 final Map<String, VslSubscriber> map = localSubscribers.get(affectedAddress);
@@ -312,7 +432,7 @@ public class SubscriptionManager implements VslSubscriptionManager, VslSubscribe
                     if (remoteSubcriptionsEnabled
                             && !affectedAddress.equals("/" + agentName.getAgentName())
                             && !affectedAddress.startsWith("/" + agentName.getAgentName() + "/")
-                            && !localSubscribers.containsKey(affectedAddress)) {
+                            && map.isEmpty()) {
                         try {
                             unSubscribeFromRemoteKA(affectedAddress, params);
                         } catch (final VslException e) {
@@ -332,29 +452,16 @@ public class SubscriptionManager implements VslSubscriptionManager, VslSubscribe
      *
      * @param rootAddress
      *            The affected rootaddress (on which the operation was done).
-     * @param currentlySubscribedAddresses
-     *            The Set of currently subscribed addresses (of anyone).
+     * @param subscribers
+     *            The subscribers of all currently subscribed addresses (of anyone).
      * @param params
      *            The parameters of the list.
-     * @return Set of all affected addresses.
+     * @return List of all affected addresses.
      */
-    private synchronized Set<String> getAffectedAddresses(final String rootAddress,
-            final Set<String> currentlySubscribedAddresses, final VslAddressParameters params) {
-        Set<String> affected = new HashSet<String>();
-        final String regex;
-        if (params.getDepth() < 0) {
-            regex = "^" + rootAddress.replace("/", "\\/") + "(\\/[A-Za-z0-9]*)*$";
-        } else {
-            regex = "^" + rootAddress.replace("/", "\\/") + "(\\/[A-Za-z0-9]*){0,"
-                    + params.getDepth() + "}$";
-        }
-
-        for (String address : currentlySubscribedAddresses) {
-            if (address.matches(regex)) {
-                affected.add(address);
-            }
-        }
-        return affected;
+    private static List<String> getAffectedAddresses(final String rootAddress,
+            final AddressTrie<Map<String, VslSubscriber>> subscribers,
+            final VslAddressParameters params) {
+        return subscribers.getAddresses(rootAddress, params.getDepth());
     }
 
     /**
@@ -401,15 +508,11 @@ public class SubscriptionManager implements VslSubscriptionManager, VslSubscribe
         try {
             while (true) {
                 try {
-                    final List<String> notifications = new ArrayList<String>();
-                    synchronized (notificationQueue) {
-                        while (notificationQueue.peek() == null) {
-                            notificationQueue.wait();
-                        }
-                        while (notificationQueue.peek() != null) {
-                            notifications.add(notificationQueue.poll());
-                        }
-                    }
+                    final Set<String> notifications = new LinkedHashSet<String>();
+                    notifications.add(notificationQueue.take());
+                    // coalesce the notifications of the delivery window.
+                    Thread.sleep(DELIVERY_WINDOW);
+                    notificationQueue.drainTo(notifications);
                     realNotify(notifications);
                 } catch (final RuntimeException e) {
                     LOGGER.error("RuntimeException in notification thread:", e);
@@ -1,10 +1,5 @@
 package org.ds2os.vsl.ka;
 
-import java.util.Iterator;
-import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-
 import org.apache.commons.lang3.StringUtils;
 import org.ds2os.vsl.core.VslVirtualNodeHandler;
 import org.ds2os.vsl.core.VslVirtualNodeManager;
@@ -14,7 +9,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * VirtualNodeManager Implementation. FIXME: get rid of apache commons usage.
+ * VirtualNodeManager Implementation. The registered VirtualNodes are kept in an
+ * {@link AddressTrie}, lookups don't lock while registrations are serialized. FIXME: get rid of
+ * apache commons usage.
  *
  * @author liebald
  */
@@ -25,19 +22,19 @@ public class VirtualNodeManager implements VslVirtualNodeManager {
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(VirtualNodeManager.class);
     /**
-     * Map of registered VirtualNodes by their addresses.
+     * Trie of registered VirtualNodes by their addresses.
      */
-    private final ConcurrentMap<String, VslVirtualNodeHandler> virtualNodeHandlers;
+    private final AddressTrie<VslVirtualNodeHandler> virtualNodeHandlers;
 
     /**
      * Constructor of the VirtualNodeManager.
      */
     public VirtualNodeManager() {
-        virtualNodeHandlers = new ConcurrentHashMap<String, VslVirtualNodeHandler>();
+        virtualNodeHandlers = new AddressTrie<VslVirtualNodeHandler>();
     }
 
     @Override
-    public final void registerVirtualNode(final String address,
+    public final synchronized void registerVirtualNode(final String address,
             final VslVirtualNodeHandler virtualNodeHandler) throws NodeAlreadyVirtualException {
         if (address != null && !address.isEmpty() && virtualNodeHandler != null
                 && StringUtils.countMatches(address, "/") > 1) {
@@ -58,11 +55,10 @@ public class VirtualNodeManager implements VslVirtualNodeManager {
     }
 
     @Override
-    public final void unregisterVirtualNode(final String address) throws NoVirtualNodeException {
+    public final synchronized void unregisterVirtualNode(final String address)
+            throws NoVirtualNodeException {
         if (address != null && !address.isEmpty()) {
-            if (virtualNodeHandlers.containsKey(address)) {
-                virtualNodeHandlers.remove(address);
-            } else {
+            if (virtualNodeHandlers.remove(address) == null) {
                 throw new NoVirtualNodeException(
                         "Couldn't unregister a virtualnode at address " + address);
             }
@@ -76,8 +72,9 @@ public class VirtualNodeManager implements VslVirtualNodeManager {
     public final VslVirtualNodeHandler getVirtualNodeHandler(final String address)
             throws NoVirtualNodeException {
         if (address != null && !address.isEmpty()) {
-            if (virtualNodeHandlers.containsKey(address)) {
-                return virtualNodeHandlers.get(address);
+            final VslVirtualNodeHandler handler = virtualNodeHandlers.get(address);
+            if (handler != null) {
+                return handler;
             } else {
                 LOGGER.error("No virtualnode at address {}", address);
                 throw new NoVirtualNodeException("No virtualnode at address " + address);
@@ -89,38 +86,27 @@ public class VirtualNodeManager implements VslVirtualNodeManager {
 
     @Override
     public final boolean isVirtualNode(final String address) {
-        // LOGGER.debug("isVirtualNode: {} {}", address, virtualNodeHandlers.containsKey(address));
+        // LOGGER.debug("isVirtualNode: {} {}", address, virtualNodeHandlers.get(address));
         if (address == null || address.isEmpty()) {
             return false;
         } else {
-            return virtualNodeHandlers.containsKey(address);
+            return virtualNodeHandlers.get(address) != null;
         }
     }
 
     @Override
     public final String getFirstVirtualParent(final String address) {
-        if (address == null || address.isEmpty() || StringUtils.countMatches(address, "/") <= 2) {
+        if (address == null || address.isEmpty()) {
             return null;
         }
-        String currentNode = address.substring(0, address.lastIndexOf("/"));
-
-        while (StringUtils.countMatches(currentNode, "/") > 1) {
-            if (isVirtualNode(currentNode)) {
-                return currentNode;
-            }
-            currentNode = currentNode.substring(0, currentNode.lastIndexOf("/"));
-        }
-        return null;
+        // VirtualNodes are at least on service level (/agent/service).
+        return virtualNodeHandlers.getNearestAncestor(address, 2);
     }
 
     @Override
-    public final void unregisterAllVirtualNodes(final String address) {
-        for (final Iterator<Entry<String, VslVirtualNodeHandler>> iterator = virtualNodeHandlers
-                .entrySet().iterator(); iterator.hasNext();) {
-            final Entry<String, VslVirtualNodeHandler> node = iterator.next();
-            if (node.getKey().startsWith(address + "/") || node.getKey().equals(address)) {
-                iterator.remove();
-            }
+    public final synchronized void unregisterAllVirtualNodes(final String address) {
+        if (address != null && !address.isEmpty()) {
+            virtualNodeHandlers.removeSubtree(address);
         }
     }
 }
@@ -0,0 +1,156 @@
+package org.ds2os.vsl.ka;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testclass for {@link AccessEventRing}.
+ */
+public class AccessEventRingTest {
+
+    /**
+     * Unit under test.
+     */
+    private AccessEventRing ring;
+
+    /**
+     * The addresses of the consumed events, in consumption order.
+     */
+    private List<String> consumed;
+
+    /**
+     * Handler that records the consumed addresses.
+     */
+    private AccessEventRing.Handler handler;
+
+    /**
+     * Setup function.
+     */
+    @Before
+    public final void setUp() {
+        ring = new AccessEventRing(3);
+        consumed = new ArrayList<String>();
+        handler = new AccessEventRing.Handler() {
+            @Override
+            public void onEvent(final AccessEvent event) {
+                consumed.add(event.getAddress());
+            }
+        };
+    }
+
+    /**
+     * Test method for {@link AccessEventRing#offer} and {@link AccessEventRing#drain}.
+     */
+    @Test
+    public final void testOfferAndDrain() {
+        assertThat(ring.getCapacity(), is(equalTo(4)));
+        assertThat(ring.drain(handler), is(equalTo(0)));
+        for (int i = 0; i < 3; i++) {
+            assertThat(ring.offer(AccessEvent.Kind.ACCESS, "service1", "read", "/a" + i, null,
+                    i), is(true));
+        }
+        assertThat(ring.drain(handler), is(equalTo(3)));
+        assertThat(consumed.toString(), is(equalTo("[/a0, /a1, /a2]")));
+
+        // the slots are reused after wrapping around.
+        for (int i = 3; i < 7; i++) {
+            ring.offer(AccessEvent.Kind.ACCESS, "service1", "read", "/a" + i, null, i);
+        }
+        assertThat(ring.drain(handler), is(equalTo(4)));
+        assertThat(consumed.size(), is(equalTo(7)));
+        assertThat(consumed.get(6), is(equalTo("/a6")));
+    }
+
+    /**
+     * Test that events are dropped instead of overwritten if the ring is full.
+     */
+    @Test
+    public final void testFull() {
+        for (int i = 0; i < 4; i++) {
+            ring.offer(AccessEvent.Kind.CALLBACK, "service1", "notifyCallback", "/a" + i, null, i);
+        }
+        assertThat(ring.offer(AccessEvent.Kind.CALLBACK, "service1", "notifyCallback", "/a4",
+                null, 4), is(false));
+        assertThat(ring.getDropped(), is(equalTo(1L)));
+        assertThat(ring.drain(handler), is(equalTo(4)));
+        assertThat(consumed.get(3), is(equalTo("/a3")));
+        assertThat(ring.offer(AccessEvent.Kind.CALLBACK, "service1", "notifyCallback", "/a5",
+                null, 5), is(true));
+    }
+
+    /**
+     * Test that the consumed slots don't keep their values.
+     */
+    @Test
+    public final void testClearedAfterDrain() {
+        final AccessEvent[] seen = new AccessEvent[1];
+        ring.offer(AccessEvent.Kind.SUBSCRIPTION, "service1", "subscribe", "/a", "value", 1L);
+        ring.drain(new AccessEventRing.Handler() {
+            @Override
+            public void onEvent(final AccessEvent event) {
+                assertThat(event.getValue(), is(equalTo("value")));
+                seen[0] = event;
+            }
+        });
+        assertThat(seen[0].getValue(), is(nullValue()));
+        assertThat(seen[0].getAddress(), is(nullValue()));
+    }
+
+    /**
+     * Test that events of concurrent producers are all consumed once.
+     *
+     * @throws InterruptedException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testConcurrentProducers() throws InterruptedException {
+        final AccessEventRing bigRing = new AccessEventRing(1 << 16);
+        final int producers = 4;
+        final int perProducer = 10000;
+        final Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final String id = "service" + p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perProducer; i++) {
+                        bigRing.offer(AccessEvent.Kind.ACCESS, id, "write", "/a", null, i);
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        final int[] counts = new int[producers];
+        final long[] lastTimestamps = new long[producers];
+        final AccessEventRing.Handler counter = new AccessEventRing.Handler() {
+            @Override
+            public void onEvent(final AccessEvent event) {
+                final int p = event.getAccessingID().charAt(7) - '0';
+                // events of one producer arrive in the order they were offered.
+                assertThat(event.getTimestamp(), is(equalTo((long) counts[p])));
+                lastTimestamps[p] = event.getTimestamp();
+                counts[p]++;
+            }
+        };
+        int total = 0;
+        while (total < producers * perProducer) {
+            total += bigRing.drain(counter);
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(bigRing.drain(counter), is(equalTo(0)));
+        for (int p = 0; p < producers; p++) {
+            assertThat(counts[p], is(equalTo(perProducer)));
+            assertThat(lastTimestamps[p], is(equalTo((long) perProducer - 1)));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.ds2os.vsl.ka;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testclass for {@link AddressTrie}.
+ */
+public class AddressTrieTest {
+
+    /**
+     * Unit under test.
+     */
+    private AddressTrie<String> trie;
+
+    /**
+     * Setup function.
+     */
+    @Before
+    public final void setUp() {
+        trie = new AddressTrie<String>();
+        trie.put("/agent1/service", "service");
+        trie.put("/agent1/service/a", "a");
+        trie.put("/agent1/service/a/b/c", "c");
+        trie.put("/agent1/other", "other");
+    }
+
+    /**
+     * Test method for {@link AddressTrie#get(String)} and {@link AddressTrie#put(String, Object)}.
+     */
+    @Test
+    public final void testGetAndPut() {
+        assertThat(trie.get("/agent1/service/a"), is(equalTo("a")));
+        assertThat(trie.get("/agent1/service/a/"), is(equalTo("a")));
+        assertThat(trie.get("/agent1/service/a/b"), is(nullValue()));
+        assertThat(trie.get("/agent1/service/x"), is(nullValue()));
+        assertThat(trie.put("/agent1/service/a", "newA"), is(equalTo("a")));
+        assertThat(trie.get("/agent1/service/a"), is(equalTo("newA")));
+    }
+
+    /**
+     * Test method for {@link AddressTrie#getAddresses(String, int)}.
+     */
+    @Test
+    public final void testGetAddresses() {
+        assertThat(sorted(trie.getAddresses("/agent1/service", -1)).toString(),
+                is(equalTo("[/agent1/service, /agent1/service/a, /agent1/service/a/b/c]")));
+        assertThat(sorted(trie.getAddresses("/agent1/service", 2)).toString(),
+                is(equalTo("[/agent1/service, /agent1/service/a]")));
+        assertThat(trie.getAddresses("/agent1/service", 0).toString(),
+                is(equalTo("[/agent1/service]")));
+        assertThat(trie.getAddresses("/agent1/service/a/b", 0).isEmpty(), is(true));
+        assertThat(trie.getAddresses("/agent2", -1).isEmpty(), is(true));
+        assertThat(trie.getAddresses("/", -1).size(), is(equalTo(4)));
+    }
+
+    /**
+     * Test method for {@link AddressTrie#remove(String)}.
+     */
+    @Test
+    public final void testRemove() {
+        assertThat(trie.remove("/agent1/service/a/b"), is(nullValue()));
+        assertThat(trie.remove("/agent1/service/a/b/c"), is(equalTo("c")));
+        assertThat(trie.getAddresses("/agent1/service/a", -1).toString(),
+                is(equalTo("[/agent1/service/a]")));
+        assertThat(trie.remove("/agent1/service"), is(equalTo("service")));
+        assertThat(trie.get("/agent1/service/a"), is(equalTo("a")));
+        assertThat(trie.remove("/agent1/service/a"), is(equalTo("a")));
+        assertThat(trie.getAddresses("/", -1).toString(), is(equalTo("[/agent1/other]")));
+    }
+
+    /**
+     * Test method for {@link AddressTrie#getNearestAncestor(String, int)}.
+     */
+    @Test
+    public final void testGetNearestAncestor() {
+        assertThat(trie.getNearestAncestor("/agent1/service/a/b/c/d", 0),
+                is(equalTo("/agent1/service/a/b/c")));
+        assertThat(trie.getNearestAncestor("/agent1/service/a/b/c", 0),
+                is(equalTo("/agent1/service/a")));
+        assertThat(trie.getNearestAncestor("/agent1/service/x/y", 0),
+                is(equalTo("/agent1/service")));
+        assertThat(trie.getNearestAncestor("/agent1/service", 0), is(nullValue()));
+        assertThat(trie.getNearestAncestor("/agent1/service/a", 3), is(nullValue()));
+        assertThat(trie.getNearestAncestor("/agent2/service/a", 0), is(nullValue()));
+        trie.put("/", "root");
+        assertThat(trie.getNearestAncestor("/agent2/service/a", 0), is(equalTo("/")));
+    }
+
+    /**
+     * Test method for {@link AddressTrie#removeSubtree(String)}.
+     */
+    @Test
+    public final void testRemoveSubtree() {
+        trie.removeSubtree("/agent1/service/a");
+        assertThat(trie.get("/agent1/service/a/b/c"), is(nullValue()));
+        assertThat(trie.getAddresses("/", -1).size(), is(equalTo(2)));
+        trie.removeSubtree("/agent1/service");
+        assertThat(trie.getAddresses("/", -1).toString(), is(equalTo("[/agent1/other]")));
+        trie.removeSubtree("/");
+        assertThat(trie.getAddresses("/", -1).isEmpty(), is(true));
+        trie.put("/agent1/service", "service");
+        assertThat(trie.get("/agent1/service"), is(equalTo("service")));
+    }
+
+    /**
+     * Test that many children of one node are all found.
+     */
+    @Test
+    public final void testManyChildren() {
+        for (int i = 0; i < 1000; i++) {
+            trie.put("/agent1/many/child" + i, "child" + i);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            trie.remove("/agent1/many/child" + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertThat(trie.get("/agent1/many/child" + i), is(equalTo(i % 2 == 0 ? null
+                    : "child" + i)));
+        }
+        assertThat(trie.getAddresses("/agent1/many", 1).size(), is(equalTo(500)));
+    }
+
+    /**
+     * Sorts the given addresses.
+     *
+     * @param addresses
+     *            The addresses.
+     * @return The sorted addresses.
+     */
+    private static List<String> sorted(final List<String> addresses) {
+        Collections.sort(addresses);
+        return addresses;
+    }
+}
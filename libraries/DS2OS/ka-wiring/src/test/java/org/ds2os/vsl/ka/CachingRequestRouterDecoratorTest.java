@@ -0,0 +1,163 @@
+package org.ds2os.vsl.ka;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.ds2os.vsl.core.VslIdentity;
+import org.ds2os.vsl.core.VslNodeCache;
+import org.ds2os.vsl.core.VslRequestHandler;
+import org.ds2os.vsl.core.config.VslAgentName;
+import org.ds2os.vsl.core.impl.ServiceIdentity;
+import org.ds2os.vsl.core.node.VslNode;
+import org.ds2os.vsl.core.node.VslNodeFactory;
+import org.ds2os.vsl.core.node.VslNodeFactoryImpl;
+import org.ds2os.vsl.core.utils.AddressParameters;
+import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testclass for {@link CachingRequestRouterDecorator}.
+ */
+public class CachingRequestRouterDecoratorTest {
+
+    /**
+     * Unit under test.
+     */
+    private CachingRequestRouterDecorator router;
+
+    /**
+     * Mock of the decorated request handler.
+     */
+    private VslRequestHandler requestHandler;
+
+    /**
+     * Mock of the cache.
+     */
+    private VslNodeCache cache;
+
+    /**
+     * The identity used for the requests.
+     */
+    private VslIdentity identity;
+
+    /**
+     * The current node in the cache.
+     */
+    private VslNode cachedNode;
+
+    /**
+     * The node returned by the request handler.
+     */
+    private VslNode requestedNode;
+
+    /**
+     * Setup function.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Before
+    public final void setUp() throws Exception {
+        final VslAgentName agentName = mock(VslAgentName.class);
+        when(agentName.getAgentName()).thenReturn("agent1");
+        requestHandler = mock(VslRequestHandler.class);
+        cache = mock(VslNodeCache.class);
+        router = new CachingRequestRouterDecorator(agentName, requestHandler, cache);
+        identity = new ServiceIdentity("service1", "service1");
+
+        final VslNodeFactory nodeFactory = new VslNodeFactoryImpl();
+        cachedNode = nodeFactory.createImmutableLeaf("current");
+        requestedNode = nodeFactory.createImmutableLeaf("requested");
+        when(cache.getCachedNode(anyString(), any(VslIdentity.class))).thenReturn(cachedNode);
+        when(requestHandler.get(anyString(), any(VslAddressParameters.class),
+                any(VslIdentity.class))).thenReturn(requestedNode);
+    }
+
+    /**
+     * Test that current gets are served by the cache.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testGetCached() throws Exception {
+        assertThat(router.get("/agent1/a", new AddressParameters(), identity),
+                is(equalTo(cachedNode)));
+        verify(requestHandler, never()).get(anyString(), any(VslAddressParameters.class),
+                any(VslIdentity.class));
+    }
+
+    /**
+     * Test that gets of a version bypass the cache.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testGetVersion() throws Exception {
+        final VslAddressParameters params = new AddressParameters().withVersion(2);
+        assertThat(router.get("/agent1/a", params, identity), is(equalTo(requestedNode)));
+        verify(requestHandler).get("/agent1/a", params, identity);
+        verify(cache, never()).getCachedNode(anyString(), any(VslIdentity.class));
+        verify(cache, never()).cacheNode(anyString(), any(VslNode.class));
+    }
+
+    /**
+     * Test that batch gets of a time range bypass the cache.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testGetBatchTimeRange() throws Exception {
+        final VslAddressParameters params = new AddressParameters().withTimeRange(10L, 20L);
+        final Map<String, VslNode> result =
+                router.getBatch(Arrays.asList("/agent1/a", "/agent1/b"), params, identity);
+        assertThat(result.get("/agent1/a"), is(equalTo(requestedNode)));
+        assertThat(result.get("/agent1/b"), is(equalTo(requestedNode)));
+        verify(cache, never()).getCachedNode(anyString(), any(VslIdentity.class));
+        verify(cache, never()).cacheNode(anyString(), any(VslNode.class));
+    }
+
+    /**
+     * Test that a due cached node is refreshed in the background by current gets.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testRefreshDue() throws Exception {
+        when(cache.isRefreshDue("/agent1/a")).thenReturn(true);
+        assertThat(router.get("/agent1/a", new AddressParameters(), identity),
+                is(equalTo(cachedNode)));
+        verify(cache, timeout(1000)).cacheNode("/agent1/a", requestedNode);
+    }
+
+    /**
+     * Test that historical gets don't refresh a due cached node.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testNoRefreshOnHistoricalGet() throws Exception {
+        when(cache.isRefreshDue("/agent1/a")).thenReturn(true);
+        router.get("/agent1/a", new AddressParameters().withVersion(2), identity);
+        router.getBatch(Arrays.asList("/agent1/a"),
+                new AddressParameters().withTimeRange(10L, 20L), identity);
+        verify(cache, never()).isRefreshDue(anyString());
+        verify(cache, never()).cacheNode(anyString(), any(VslNode.class));
+    }
+}
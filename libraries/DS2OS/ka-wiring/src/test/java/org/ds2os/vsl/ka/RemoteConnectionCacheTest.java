@@ -0,0 +1,183 @@
+package org.ds2os.vsl.ka;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+
+import org.ds2os.vsl.core.VslAgentRegistryService;
+import org.ds2os.vsl.core.VslIdentity;
+import org.ds2os.vsl.core.VslRequestHandler;
+import org.ds2os.vsl.core.VslTransportConnector;
+import org.ds2os.vsl.core.VslTransportManager;
+import org.ds2os.vsl.core.impl.ServiceIdentity;
+import org.ds2os.vsl.core.impl.TransportConnector;
+import org.ds2os.vsl.core.node.VslNodeFactoryImpl;
+import org.ds2os.vsl.exception.NodeNotExistingException;
+import org.ds2os.vsl.exception.UnexpectedErrorException;
+import org.ds2os.vsl.exception.VslException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Testclass for {@link RemoteConnectionCache}.
+ */
+public class RemoteConnectionCacheTest {
+
+    /**
+     * The first transport URL of agent2.
+     */
+    private static final String URL1 = "https://agent2:8081";
+
+    /**
+     * The second transport URL of agent2.
+     */
+    private static final String URL2 = "https://agent2:8082";
+
+    /**
+     * Rule for Exception testing. By default no Exception is expected.
+     */
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    /**
+     * Mock of the agent registry.
+     */
+    private VslAgentRegistryService agentRegistry;
+
+    /**
+     * Mock of the transport to {@link #URL1}.
+     */
+    private VslRequestHandler handler1;
+
+    /**
+     * Mock of the transport to {@link #URL2}.
+     */
+    private VslRequestHandler handler2;
+
+    /**
+     * The identity of the requesting service.
+     */
+    private VslIdentity identity;
+
+    /**
+     * Unit under test.
+     */
+    private RemoteConnectionCache cache;
+
+    /**
+     * Setup function.
+     */
+    @Before
+    public final void setUp() {
+        final HashSet<VslTransportConnector> transports =
+                new LinkedHashSet<VslTransportConnector>();
+        transports.add(new TransportConnector(URL1));
+        transports.add(new TransportConnector(URL2));
+        agentRegistry = mock(VslAgentRegistryService.class);
+        when(agentRegistry.getTransports("agent2")).thenReturn(transports);
+        when(agentRegistry.getTransports("agent3"))
+                .thenReturn(new HashSet<VslTransportConnector>());
+
+        handler1 = mock(VslRequestHandler.class);
+        handler2 = mock(VslRequestHandler.class);
+        final VslTransportManager transportManager = mock(VslTransportManager.class);
+        when(transportManager.getTransportToKA(URL1)).thenReturn(handler1);
+        when(transportManager.getTransportToKA(URL2)).thenReturn(handler2);
+
+        cache = new RemoteConnectionCache(transportManager, agentRegistry);
+        identity = new ServiceIdentity("service1", "service1");
+    }
+
+    /**
+     * Test that requests switch to another URL after a transport failure.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testFailover() throws Exception {
+        when(handler1.get("/agent2/a", identity))
+                .thenThrow(new UnexpectedErrorException("connection refused"));
+        when(handler2.get("/agent2/a", identity))
+                .thenReturn(new VslNodeFactoryImpl().createImmutableLeaf("a"));
+
+        try {
+            cache.getRequestHandler("agent2").get("/agent2/a", identity);
+        } catch (final UnexpectedErrorException e) {
+            // the first URL fails.
+        }
+        for (int i = 0; i < 3; i++) {
+            assertThat(cache.getRequestHandler("agent2").get("/agent2/a", identity).getValue(),
+                    is(equalTo("a")));
+        }
+        verify(handler1, times(1)).get("/agent2/a", identity);
+        verify(handler2, times(3)).get("/agent2/a", identity);
+        // the transports are only read once.
+        verify(agentRegistry, times(1)).getTransports("agent2");
+    }
+
+    /**
+     * Test that errors answered by the remote KA don't mark the URL as failed.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testRemoteErrorIsNoFailure() throws Exception {
+        final RemoteKAEndpoint endpoint = new RemoteKAEndpoint(URL1, handler1);
+        when(handler1.get("/agent2/x", identity))
+                .thenThrow(new NodeNotExistingException("/agent2/x"));
+        try {
+            endpoint.get("/agent2/x", identity);
+        } catch (final NodeNotExistingException e) {
+            // expected.
+        }
+        assertThat(endpoint.isAvailable(System.currentTimeMillis()), is(true));
+
+        when(handler1.get("/agent2/a", identity))
+                .thenThrow(new UnexpectedErrorException("connection refused"));
+        try {
+            endpoint.get("/agent2/a", identity);
+        } catch (final UnexpectedErrorException e) {
+            // expected.
+        }
+        assertThat(endpoint.isAvailable(System.currentTimeMillis()), is(false));
+    }
+
+    /**
+     * Test that the transports are read again after the agent was removed from the registry.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testAgentRemoved() throws Exception {
+        cache.getRequestHandler("agent2");
+        cache.getRequestHandler("agent2");
+        verify(agentRegistry, times(1)).getTransports("agent2");
+        cache.agentRemoved("agent2");
+        cache.getRequestHandler("agent2");
+        verify(agentRegistry, times(2)).getTransports("agent2");
+    }
+
+    /**
+     * Test that an agent without transports can't be reached.
+     *
+     * @throws Exception
+     *             expected.
+     */
+    @Test
+    public final void testUnknownAgent() throws Exception {
+        expectedException.expect(VslException.class);
+        cache.getRequestHandler("agent3");
+    }
+}
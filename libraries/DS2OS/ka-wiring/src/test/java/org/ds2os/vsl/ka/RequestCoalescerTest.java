@@ -0,0 +1,218 @@
+package org.ds2os.vsl.ka;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ds2os.vsl.exception.NodeNotExistingException;
+import org.ds2os.vsl.exception.VslException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Testclass for {@link RequestCoalescer}.
+ */
+public class RequestCoalescerTest {
+
+    /**
+     * Rule for Exception testing. By default no Exception is expected.
+     */
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    /**
+     * Unit under test.
+     */
+    private RequestCoalescer<String> coalescer;
+
+    /**
+     * The number of times the request was run.
+     */
+    private AtomicInteger calls;
+
+    /**
+     * Released to let the request complete.
+     */
+    private CountDownLatch release;
+
+    /**
+     * A request that blocks until {@link #release} is counted down.
+     */
+    private Callable<String> blockingRequest;
+
+    /**
+     * Setup function.
+     */
+    @Before
+    public final void setUp() {
+        coalescer = new RequestCoalescer<String>();
+        calls = new AtomicInteger();
+        release = new CountDownLatch(1);
+        blockingRequest = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                calls.incrementAndGet();
+                release.await();
+                return "value";
+            }
+        };
+    }
+
+    /**
+     * Starts a thread that executes the {@link #blockingRequest} and stores the result.
+     *
+     * @param results
+     *            the list the result is added to.
+     * @return the started thread.
+     */
+    private Thread startRequest(final List<String> results) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final String result = coalescer.execute("/agent2/a", blockingRequest);
+                    synchronized (results) {
+                        results.add(result);
+                    }
+                } catch (final VslException e) {
+                    synchronized (results) {
+                        results.add(e.getMessage());
+                    }
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Waits until the given thread is blocked.
+     *
+     * @param thread
+     *            the thread.
+     * @throws InterruptedException
+     *             shouldn't happen.
+     */
+    private void awaitBlocked(final Thread thread) throws InterruptedException {
+        for (int i = 0; i < 500 && thread.getState() != Thread.State.WAITING; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(thread.getState(), is(equalTo(Thread.State.WAITING)));
+    }
+
+    /**
+     * Test that concurrent requests with the same key are run once.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testCoalescing() throws Exception {
+        final List<String> results = new ArrayList<String>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 5; i++) {
+            threads.add(startRequest(results));
+        }
+        for (final Thread thread : threads) {
+            awaitBlocked(thread);
+        }
+        assertThat(coalescer.isInFlight("/agent2/a"), is(true));
+        release.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(calls.get(), is(equalTo(1)));
+        assertThat(results.size(), is(equalTo(5)));
+        for (final String result : results) {
+            assertThat(result, is(equalTo("value")));
+        }
+
+        // completed requests are run again.
+        assertThat(coalescer.isInFlight("/agent2/a"), is(false));
+        assertThat(coalescer.execute("/agent2/a", blockingRequest), is(equalTo("value")));
+        assertThat(calls.get(), is(equalTo(2)));
+    }
+
+    /**
+     * Test that the exception of a request is thrown to the caller.
+     *
+     * @throws Exception
+     *             the tested exception.
+     */
+    @Test
+    public final void testException() throws Exception {
+        expectedException.expect(NodeNotExistingException.class);
+        try {
+            coalescer.execute("/agent2/a", new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    throw new NodeNotExistingException("node does not exist");
+                }
+            });
+        } finally {
+            assertThat(coalescer.isInFlight("/agent2/a"), is(false));
+        }
+    }
+
+    /**
+     * Test that asynchronous requests are run once and waited for by synchronous requests.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testExecuteAsync() throws Exception {
+        final List<Thread> started = new ArrayList<Thread>();
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                final Thread thread = new Thread(command);
+                started.add(thread);
+                thread.start();
+            }
+        };
+        assertThat(coalescer.executeAsync("/agent2/a", blockingRequest, executor), is(true));
+        assertThat(coalescer.executeAsync("/agent2/a", blockingRequest, executor), is(false));
+        assertThat(started.size(), is(equalTo(1)));
+
+        final List<String> results = new ArrayList<String>();
+        final Thread waiting = startRequest(results);
+        awaitBlocked(waiting);
+        release.countDown();
+        waiting.join();
+        started.get(0).join();
+        assertThat(results.get(0), is(equalTo("value")));
+        assertThat(calls.get(), is(equalTo(1)));
+    }
+
+    /**
+     * Test that requests rejected by the executor are dropped.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testRejected() throws Exception {
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                throw new RejectedExecutionException("full");
+            }
+        };
+        assertThat(coalescer.executeAsync("/agent2/a", blockingRequest, executor), is(false));
+        assertThat(coalescer.isInFlight("/agent2/a"), is(false));
+        release.countDown();
+        assertThat(coalescer.execute("/agent2/a", blockingRequest), is(equalTo("value")));
+        assertThat(calls.get(), is(equalTo(1)));
+    }
+}
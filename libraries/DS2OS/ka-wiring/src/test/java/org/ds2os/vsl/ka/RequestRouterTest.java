@@ -0,0 +1,174 @@
+package org.ds2os.vsl.ka;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.ds2os.vsl.core.VslAgentRegistryService;
+import org.ds2os.vsl.core.VslBatchRequestHandler;
+import org.ds2os.vsl.core.VslIdentity;
+import org.ds2os.vsl.core.VslRequestHandler;
+import org.ds2os.vsl.core.VslSubscriptionManager;
+import org.ds2os.vsl.core.VslTransportConnector;
+import org.ds2os.vsl.core.VslTransportManager;
+import org.ds2os.vsl.core.config.VslAgentName;
+import org.ds2os.vsl.core.config.VslAnomalyDetectionConfig;
+import org.ds2os.vsl.core.impl.ServiceIdentity;
+import org.ds2os.vsl.core.node.VslNode;
+import org.ds2os.vsl.core.node.VslNodeFactory;
+import org.ds2os.vsl.core.node.VslNodeFactoryImpl;
+import org.ds2os.vsl.core.utils.AddressParameters;
+import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.ds2os.vsl.exception.NodeNotExistingException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Testclass for the batch requests of the {@link RequestRouter}.
+ */
+public class RequestRouterTest {
+
+    /**
+     * Vsl node factory.
+     */
+    private static final VslNodeFactory NODE_FACTORY = new VslNodeFactoryImpl();
+
+    /**
+     * Rule for Exception testing. By default no Exception is expected.
+     */
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    /**
+     * Mock of the local KOR.
+     */
+    private VslRequestHandler localKOR;
+
+    /**
+     * Mock of the connection to the remote KA agent2.
+     */
+    private VslBatchRequestHandler remoteKA;
+
+    /**
+     * The identity of the requesting service.
+     */
+    private VslIdentity identity;
+
+    /**
+     * The parameters of the requests.
+     */
+    private VslAddressParameters params;
+
+    /**
+     * Unit under test, router of the KA agent1.
+     */
+    private RequestRouter router;
+
+    /**
+     * Setup function.
+     */
+    @Before
+    public final void setUp() {
+        final VslAgentName agentName = mock(VslAgentName.class);
+        when(agentName.getAgentName()).thenReturn("agent1");
+        localKOR = mock(VslRequestHandler.class);
+        remoteKA = mock(VslBatchRequestHandler.class);
+
+        final VslTransportConnector connector = mock(VslTransportConnector.class);
+        when(connector.getURL()).thenReturn("https://agent2:8081");
+        final VslAgentRegistryService agentRegistry = mock(VslAgentRegistryService.class);
+        when(agentRegistry.getTransports("agent2"))
+                .thenReturn(new HashSet<VslTransportConnector>(Collections.singleton(connector)));
+        final VslTransportManager transportManager = mock(VslTransportManager.class);
+        when(transportManager.getTransportToKA("https://agent2:8081")).thenReturn(remoteKA);
+
+        router = new RequestRouter(agentName, localKOR, transportManager, agentRegistry,
+                mock(VslSubscriptionManager.class), mock(VslAnomalyDetectionConfig.class));
+        identity = new ServiceIdentity("service1", "service1");
+        params = new AddressParameters();
+    }
+
+    /**
+     * Test method for {@link RequestRouter#getBatch(java.util.Collection, VslAddressParameters,
+     * VslIdentity)}.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testGetBatch() throws Exception {
+        final VslNode nodeA = NODE_FACTORY.createImmutableLeaf("a");
+        final VslNode nodeB = NODE_FACTORY.createImmutableLeaf("b");
+        final VslNode nodeC = NODE_FACTORY.createImmutableLeaf("c");
+        when(localKOR.get("/agent1/service1/a", params, identity)).thenReturn(nodeA);
+        final Map<String, VslNode> remoteNodes = new HashMap<String, VslNode>();
+        remoteNodes.put("/agent2/service2/b", nodeB);
+        remoteNodes.put("/agent2/service2/c", nodeC);
+        when(remoteKA.getBatch(Arrays.asList("/agent2/service2/b", "/agent2/service2/c"), params,
+                identity)).thenReturn(remoteNodes);
+
+        final Map<String, VslNode> result = router.getBatch(
+                Arrays.asList("/agent2/service2/b", "~/a", "/agent2/service2/c"), params,
+                identity);
+        assertThat(result.keySet().toString(),
+                is(equalTo("[/agent2/service2/b, ~/a, /agent2/service2/c]")));
+        assertThat(result.get("~/a"), is(equalTo(nodeA)));
+        assertThat(result.get("/agent2/service2/b"), is(equalTo(nodeB)));
+        assertThat(result.get("/agent2/service2/c"), is(equalTo(nodeC)));
+
+        // the remote addresses are requested in one batch.
+        verify(remoteKA, never()).get(any(String.class), any(VslAddressParameters.class),
+                any(VslIdentity.class));
+    }
+
+    /**
+     * Test that a failure of one part fails the whole batch get.
+     *
+     * @throws Exception
+     *             expected.
+     */
+    @Test
+    public final void testGetBatchFailure() throws Exception {
+        when(localKOR.get("/agent1/service1/a", params, identity))
+                .thenReturn(NODE_FACTORY.createImmutableLeaf("a"));
+        when(remoteKA.getBatch(Arrays.asList("/agent2/service2/x"), params, identity))
+                .thenThrow(new NodeNotExistingException("/agent2/service2/x doesn't exist"));
+
+        expectedException.expect(NodeNotExistingException.class);
+        router.getBatch(Arrays.asList("~/a", "/agent2/service2/x"), params, identity);
+    }
+
+    /**
+     * Test method for {@link RequestRouter#setBatch(Map, VslIdentity)}.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testSetBatch() throws Exception {
+        final VslNode nodeA = NODE_FACTORY.createImmutableLeaf("a");
+        final VslNode nodeB = NODE_FACTORY.createImmutableLeaf("b");
+        final Map<String, VslNode> knowledge = new LinkedHashMap<String, VslNode>();
+        knowledge.put("~/a", nodeA);
+        knowledge.put("/agent2/service2/b", nodeB);
+
+        router.setBatch(knowledge, identity);
+        verify(localKOR).set("/agent1/service1/a", nodeA, identity);
+        verify(remoteKA).setBatch(Collections.singletonMap("/agent2/service2/b", nodeB),
+                identity);
+    }
+}
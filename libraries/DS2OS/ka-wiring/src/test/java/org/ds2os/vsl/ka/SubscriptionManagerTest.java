@@ -1,18 +1,18 @@
 package org.ds2os.vsl.ka;
 
-//import static org.hamcrest.CoreMatchers.equalTo;
-//import static org.hamcrest.CoreMatchers.is;
-//import static org.hamcrest.CoreMatchers.nullValue;
-//import static org.hamcrest.MatcherAssert.assertThat;
-//import static org.mockito.Matchers.any;
-//import static org.mockito.Mockito.mock;
-//import static org.mockito.Mockito.never;
-//import static org.mockito.Mockito.verify;
-
-//import org.junit.Before;
-//import org.junit.Rule;
-//import org.junit.Test;
-//import org.junit.rules.ExpectedException;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.ds2os.vsl.core.VslSubscriber;
+import org.ds2os.vsl.core.impl.ServiceIdentity;
+import org.ds2os.vsl.core.node.VslNode;
+import org.ds2os.vsl.core.node.VslNodeFactoryImpl;
+import org.ds2os.vsl.exception.VslException;
+import org.junit.Before;
+import org.junit.Test;
 
 /**
  * @author liebald
@@ -22,32 +22,69 @@ package org.ds2os.vsl.ka;
  */
 public class SubscriptionManagerTest {
 
-    // /**
-    // * The {@link VirtualNodeManager} used for the tests.
-    // */
-    // private SubscriptionManager unitUnderTest;
-    //
-    // /**
-    // * The address of the service which registered the virtualNode.
-    // */
-    // private String service;
-    //
-    // /**
-    // * Rule for Exception testing. By default no Exception is expected.
-    // */
-    // @Rule
-    // public ExpectedException expectedException = ExpectedException.none();
-    //
-    // /**
-    // * @throws Exception
-    // * shouldn't happen.
-    // */
-    // @Before
-    // public final void setUp() throws Exception {
-    // unitUnderTest = new SubscriptionManager();
-    // service = "/agentID/service";
-    //
-    // // TODO add test cases
-    // }
+    /**
+     * Timeout for the background deliveries in milliseconds.
+     */
+    private static final long TIMEOUT = 1000L;
+
+    /**
+     * The {@link SubscriptionManager} used for the tests.
+     */
+    private SubscriptionManager unitUnderTest;
+
+    /**
+     * The node affected by the subscriptions.
+     */
+    private VslNode affectedNode;
+
+    /**
+     * Setup function.
+     */
+    @Before
+    public final void setUp() {
+        unitUnderTest = new SubscriptionManager();
+        unitUnderTest.activate(null, null, null);
+        affectedNode = new VslNodeFactoryImpl().createImmutableLeaf("value");
+    }
+
+    /**
+     * Test that a subscriber whose callback blocks doesn't hold back the notifications of other
+     * subscribers.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testSlowSubscriber() throws Exception {
+        final CountDownLatch slowCalled = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        unitUnderTest.addSubscription("/agent1/a", new VslSubscriber() {
+            @Override
+            public void notificationCallback(final String address) throws VslException {
+                slowCalled.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, null, new ServiceIdentity("slow", "slow"), affectedNode);
+
+        final CountDownLatch fastCalled = new CountDownLatch(2);
+        unitUnderTest.addSubscription("/agent1/a", new VslSubscriber() {
+            @Override
+            public void notificationCallback(final String address) throws VslException {
+                fastCalled.countDown();
+            }
+        }, null, new ServiceIdentity("fast", "fast"), affectedNode);
 
+        try {
+            unitUnderTest.notifySubscribers("/agent1/a");
+            assertThat(slowCalled.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+            unitUnderTest.notifySubscribers("/agent1/a");
+            assertThat(fastCalled.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+        } finally {
+            release.countDown();
+        }
+    }
 }
@@ -0,0 +1,228 @@
+package org.ds2os.vsl.kor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ds2os.vsl.core.VslIdentity;
+import org.ds2os.vsl.kor.dataStructures.MetaNode;
+
+/**
+ * Caches the access rights identities have on nodes, so the reader and writer IDs of a node are
+ * only matched against the IDs of an identity once. The rights of each identity are kept ordered
+ * by address, which allows to drop the cached rights of a whole subtree when its structure changes
+ * (the reader and writer IDs of a node only change if it is removed and added again).
+ */
+public final class AccessMasks {
+
+    /**
+     * Flag for read access.
+     */
+    public static final int READ = 1;
+
+    /**
+     * Flag for write access.
+     */
+    public static final int WRITE = 2;
+
+    /**
+     * The maximum number of identities whose access rights are cached. If more identities access
+     * the KOR, the cache is cleared.
+     */
+    private static final int MAX_CACHED_IDENTITIES = 256;
+
+    /**
+     * The maximum number of nodes whose access rights are cached per identity. If more nodes are
+     * accessed, the rights of the identity are cleared.
+     */
+    private static final int MAX_CACHED_NODES = 16384;
+
+    /**
+     * The cached access rights, keyed by identity.
+     */
+    private final ConcurrentMap<String, CachedMasks> masks =
+            new ConcurrentHashMap<String, CachedMasks>();
+
+    /**
+     * Incremented on every invalidation. Rights computed from node data that was read before an
+     * invalidation are not cached, as the data might be outdated already.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Returns the access rights of the given identity. Must be retrieved before the node data the
+     * rights are computed from is read.
+     *
+     * @param identity
+     *            The identity.
+     * @return The access rights of the identity.
+     */
+    public IdentityMask forIdentity(final VslIdentity identity) {
+        final String key = getKey(identity);
+        CachedMasks cached = masks.get(key);
+        if (cached == null) {
+            if (masks.size() >= MAX_CACHED_IDENTITIES) {
+                masks.clear();
+            }
+            final CachedMasks created = new CachedMasks();
+            cached = masks.putIfAbsent(key, created);
+            if (cached == null) {
+                cached = created;
+            }
+        }
+        return new IdentityMask(identity, cached, generation.get());
+    }
+
+    /**
+     * Drops the cached access rights for the given node and its subtree.
+     *
+     * @param address
+     *            The address of the root of the changed subtree.
+     */
+    public void invalidate(final String address) {
+        generation.incrementAndGet();
+        if (address.equals("/")) {
+            masks.clear();
+            return;
+        }
+        for (final CachedMasks cached : masks.values()) {
+            cached.byAddress.remove(address);
+            // '0' follows '/', so this covers all addresses below the given one.
+            cached.byAddress.subMap(address + "/", address + "0").clear();
+        }
+    }
+
+    /**
+     * Returns the key the rights of the given identity are cached with. Identities with the same
+     * client ID and access IDs have the same rights.
+     *
+     * @param identity
+     *            The identity.
+     * @return The key.
+     */
+    private static String getKey(final VslIdentity identity) {
+        final List<String> accessIDs = new ArrayList<String>(identity.getAccessIDs());
+        Collections.sort(accessIDs);
+        return identity.getClientId() + "|" + accessIDs;
+    }
+
+    /**
+     * The cached access rights of a single identity.
+     */
+    private static final class CachedMasks {
+
+        /**
+         * The access rights, ordered by address.
+         */
+        private final ConcurrentNavigableMap<String, Integer> byAddress =
+                new ConcurrentSkipListMap<String, Integer>();
+
+        /**
+         * The number of rights added since the cache was cleared the last time. Invalidated
+         * entries aren't subtracted, so this is an upper bound of the cached rights.
+         */
+        private final AtomicInteger added = new AtomicInteger();
+    }
+
+    /**
+     * The access rights of a single identity.
+     */
+    public final class IdentityMask {
+
+        /**
+         * The identity.
+         */
+        private final VslIdentity identity;
+
+        /**
+         * The cached rights of the identity.
+         */
+        private final CachedMasks cached;
+
+        /**
+         * The invalidation generation when this mask was retrieved.
+         */
+        private final long retrievedGeneration;
+
+        /**
+         * Constructor.
+         *
+         * @param identity
+         *            The identity.
+         * @param cached
+         *            The cached rights of the identity.
+         * @param retrievedGeneration
+         *            The invalidation generation when this mask was retrieved.
+         */
+        private IdentityMask(final VslIdentity identity, final CachedMasks cached,
+                final long retrievedGeneration) {
+            this.identity = identity;
+            this.cached = cached;
+            this.retrievedGeneration = retrievedGeneration;
+        }
+
+        /**
+         * Returns the access rights on the given node.
+         *
+         * @param address
+         *            The address of the node.
+         * @param node
+         *            The node data, used if the rights aren't cached yet.
+         * @return The rights as combination of {@link AccessMasks#READ} and
+         *         {@link AccessMasks#WRITE}.
+         */
+        public int get(final String address, final MetaNode node) {
+            final Integer known = cached.byAddress.get(address);
+            if (known != null) {
+                return known;
+            }
+            final int mask = (node.isReadableBy(identity) ? READ : 0)
+                    | (node.isWritableBy(identity) ? WRITE : 0);
+            if (generation.get() != retrievedGeneration) {
+                return mask;
+            }
+            if (cached.added.incrementAndGet() > MAX_CACHED_NODES) {
+                cached.byAddress.clear();
+                cached.added.set(0);
+            }
+            cached.byAddress.put(address, mask);
+            // an invalidation might have happened since the check above, don't keep the rights then
+            if (generation.get() != retrievedGeneration) {
+                cached.byAddress.remove(address);
+            }
+            return mask;
+        }
+
+        /**
+         * Checks if the identity can read the given node.
+         *
+         * @param address
+         *            The address of the node.
+         * @param node
+         *            The node data, used if the rights aren't cached yet.
+         * @return True if the node is readable.
+         */
+        public boolean canRead(final String address, final MetaNode node) {
+            return (get(address, node) & READ) != 0;
+        }
+
+        /**
+         * Checks if the identity can write the given node.
+         *
+         * @param address
+         *            The address of the node.
+         * @param node
+         *            The node data, used if the rights aren't cached yet.
+         * @return True if the node is writable.
+         */
+        public boolean canWrite(final String address, final MetaNode node) {
+            return (get(address, node) & WRITE) != 0;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package org.ds2os.vsl.kor;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.ds2os.vsl.core.statistics.VslStatistics;
+import org.ds2os.vsl.core.statistics.VslStatisticsDatapoint;
+import org.ds2os.vsl.core.statistics.VslStatisticsProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small pool of connections to the hsqldb used by {@link HSQLDatabase}. All writes share a
+ * single connection which is handed out to one thread at a time, while readers get one of several
+ * read only connections, so reads are not serialized behind writes. Every connection caches its
+ * prepared statements, keyed by their sql text.
+ */
+public class HSQLDBConnectionPool {
+
+    /**
+     * Get the logger instance for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(HSQLDBConnectionPool.class);
+
+    /**
+     * The maximum number of prepared statements cached per connection.
+     */
+    private static final int STATEMENT_CACHE_SIZE = 64;
+
+    /**
+     * The connection used for all writes.
+     */
+    private final PooledConnection writer;
+
+    /**
+     * Lock held by the thread currently using the {@link #writer}.
+     */
+    private final ReentrantLock writeLock;
+
+    /**
+     * All read only connections of the pool.
+     */
+    private final List<PooledConnection> allReaders;
+
+    /**
+     * The read only connections that are currently not in use.
+     */
+    private final BlockingQueue<PooledConnection> idleReaders;
+
+    /**
+     * Statistics about the time spent waiting for the {@link #writer}.
+     */
+    private final VslStatistics acquireWriterStatistics;
+
+    /**
+     * Statistics about the time spent waiting for a read only connection.
+     */
+    private final VslStatistics acquireReaderStatistics;
+
+    /**
+     * Opens the connections of the pool.
+     *
+     * @param url
+     *            The jdbc url of the database.
+     * @param username
+     *            The username to access the database.
+     * @param password
+     *            The password to access the database.
+     * @param readers
+     *            The number of read only connections to open.
+     * @param statisticsProvider
+     *            The {@link VslStatisticsProvider} for accessing the KA internal statistics
+     *            mechanism.
+     * @throws SQLException
+     *             If a connection can't be opened.
+     */
+    public HSQLDBConnectionPool(final String url, final String username, final String password,
+            final int readers, final VslStatisticsProvider statisticsProvider)
+            throws SQLException {
+        final VslStatistics prepareStatistics = statisticsProvider
+                .getStatistics(this.getClass(), "prepareStatement");
+        acquireWriterStatistics = statisticsProvider.getStatistics(this.getClass(),
+                "acquireWriteConnection");
+        acquireReaderStatistics = statisticsProvider.getStatistics(this.getClass(),
+                "acquireReadConnection");
+
+        writer = new PooledConnection(DriverManager.getConnection(url, username, password),
+                prepareStatistics);
+        writeLock = new ReentrantLock();
+
+        allReaders = new ArrayList<PooledConnection>(readers);
+        idleReaders = new ArrayBlockingQueue<PooledConnection>(readers);
+        try {
+            for (int i = 0; i < readers; i++) {
+                final Connection con = DriverManager.getConnection(url, username, password);
+                con.setReadOnly(true);
+                con.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+                final PooledConnection reader = new PooledConnection(con, prepareStatistics);
+                allReaders.add(reader);
+                idleReaders.add(reader);
+            }
+        } catch (final SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the connection used for writes. It must be given back with
+     * {@link #release(PooledConnection)}, until then other writers wait.
+     *
+     * @return The write connection.
+     */
+    public final PooledConnection acquireWriter() {
+        final VslStatisticsDatapoint dp = acquireWriterStatistics.begin();
+        writeLock.lock();
+        dp.end();
+        return writer;
+    }
+
+    /**
+     * Returns an idle read only connection, waiting for one to become available if necessary. It
+     * must be given back with {@link #release(PooledConnection)}.
+     *
+     * @return A read only connection.
+     */
+    public final PooledConnection acquireReader() {
+        final VslStatisticsDatapoint dp = acquireReaderStatistics.begin();
+        try {
+            return idleReaders.take();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a connection", e);
+        } finally {
+            dp.end();
+        }
+    }
+
+    /**
+     * Gives a connection obtained from {@link #acquireWriter()} or {@link #acquireReader()} back
+     * to the pool.
+     *
+     * @param connection
+     *            The connection to give back.
+     */
+    public final void release(final PooledConnection connection) {
+        if (connection == writer) {
+            writeLock.unlock();
+        } else {
+            idleReaders.offer(connection);
+        }
+    }
+
+    /**
+     * Closes all connections of the pool.
+     */
+    public final void close() {
+        if (writer != null) {
+            writer.close();
+        }
+        for (final PooledConnection reader : allReaders) {
+            reader.close();
+        }
+    }
+
+    /**
+     * A connection of the pool together with its cache of prepared statements. It is only used by
+     * the thread that acquired it, so the cache needs no synchronization.
+     */
+    public static final class PooledConnection {
+
+        /**
+         * The underlying jdbc connection.
+         */
+        private final Connection connection;
+
+        /**
+         * The cached statements, keyed by their sql text. The least recently used statement is
+         * closed once more than {@link HSQLDBConnectionPool#STATEMENT_CACHE_SIZE} are cached.
+         */
+        private final Map<String, PreparedStatement> statements;
+
+        /**
+         * Statistics about the time spent preparing statements that were not cached yet.
+         */
+        private final VslStatistics prepareStatistics;
+
+        /**
+         * Constructor.
+         *
+         * @param connection
+         *            The underlying jdbc connection.
+         * @param prepareStatistics
+         *            Statistics about the time spent preparing statements.
+         */
+        PooledConnection(final Connection connection, final VslStatistics prepareStatistics) {
+            this.connection = connection;
+            this.prepareStatistics = prepareStatistics;
+            statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > STATEMENT_CACHE_SIZE) {
+                        closeStatement(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        /**
+         * Returns the underlying jdbc connection, e.g. for transaction handling. Statements should
+         * be created with {@link #prepare(String)} instead.
+         *
+         * @return The jdbc connection.
+         */
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Returns a prepared statement for the given sql, reusing the cached one if this sql was
+         * prepared on this connection before. The returned statement has no parameters or batched
+         * commands set and must not be closed by the caller.
+         *
+         * @param sql
+         *            The sql text of the statement.
+         * @return The prepared statement.
+         * @throws SQLException
+         *             If the statement can't be prepared.
+         */
+        public PreparedStatement prepare(final String sql) throws SQLException {
+            PreparedStatement pst = statements.get(sql);
+            if (pst == null) {
+                final VslStatisticsDatapoint dp = prepareStatistics.begin();
+                try {
+                    pst = connection.prepareStatement(sql);
+                } finally {
+                    dp.end();
+                }
+                statements.put(sql, pst);
+            } else {
+                pst.clearParameters();
+                pst.clearBatch();
+            }
+            return pst;
+        }
+
+        /**
+         * Closes all cached statements and the connection.
+         */
+        void close() {
+            for (final PreparedStatement pst : statements.values()) {
+                closeStatement(pst);
+            }
+            statements.clear();
+            try {
+                connection.close();
+            } catch (final SQLException e) {
+                LOGGER.debug("Couldn't close a connection: {}", e.getMessage());
+            }
+        }
+
+        /**
+         * Tries to gracefully close a cached statement.
+         *
+         * @param pst
+         *            The statement to close.
+         */
+        private static void closeStatement(final PreparedStatement pst) {
+            try {
+                pst.close();
+            } catch (final SQLException e) {
+                LOGGER.warn("Couldn't clean up a prepared statement: {}", e.getMessage());
+            }
+        }
+    }
+}
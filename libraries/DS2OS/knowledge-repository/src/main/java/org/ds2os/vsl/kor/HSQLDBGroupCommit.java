@@ -0,0 +1,293 @@
+package org.ds2os.vsl.kor;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.ds2os.vsl.kor.HSQLDBConnectionPool.PooledConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Commits concurrent writes of the {@link HSQLDatabase} together. The first writer that finds no
+ * commit in progress becomes the leader: it waits up to the configured window for further writes,
+ * applies all collected writes in a single transaction on the write connection and wakes up their
+ * callers. If writes were queued meanwhile, the leadership is handed to the oldest of them.
+ * Callers only return after their write is committed, so a following read sees it.
+ */
+public class HSQLDBGroupCommit {
+
+    /**
+     * Get the logger instance for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(HSQLDBGroupCommit.class);
+
+    /**
+     * Applies a single write inside the transaction of a group commit.
+     */
+    public interface WriteOperation {
+
+        /**
+         * Writes the given values. Must not commit.
+         *
+         * @param con
+         *            The write connection, a transaction is already started.
+         * @param values
+         *            Addresses and new values of the nodes to write.
+         * @throws SQLException
+         *             If the write failed.
+         */
+        void write(PooledConnection con, Map<String, String> values) throws SQLException;
+    }
+
+    /**
+     * A write waiting to be committed.
+     */
+    private static final class Request {
+
+        /**
+         * Addresses and new values of the nodes to write.
+         */
+        private final Map<String, String> values;
+
+        /**
+         * True once the write is committed or failed.
+         */
+        private boolean done;
+
+        /**
+         * True if the caller of this write has to lead the next group commit.
+         */
+        private boolean leader;
+
+        /**
+         * The reason the write failed, null if it succeeded.
+         */
+        private RuntimeException error;
+
+        /**
+         * Constructor.
+         *
+         * @param values
+         *            Addresses and new values of the nodes to write.
+         */
+        Request(final Map<String, String> values) {
+            this.values = values;
+        }
+    }
+
+    /**
+     * The connection pool providing the write connection.
+     */
+    private final HSQLDBConnectionPool pool;
+
+    /**
+     * The operation applying a single write.
+     */
+    private final WriteOperation operation;
+
+    /**
+     * The time in milliseconds the leader waits for further writes.
+     */
+    private final long windowMillis;
+
+    /**
+     * The maximum number of writes committed together.
+     */
+    private final int batchSize;
+
+    /**
+     * Guards {@link #pending} and {@link #leaderActive}, and is used to wait for commits.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The writes waiting for the next group commit.
+     */
+    private final LinkedList<Request> pending = new LinkedList<Request>();
+
+    /**
+     * True while a leader collects or commits writes.
+     */
+    private boolean leaderActive;
+
+    /**
+     * Constructor.
+     *
+     * @param pool
+     *            The connection pool providing the write connection.
+     * @param operation
+     *            The operation applying a single write.
+     * @param windowMillis
+     *            The time in milliseconds the leader waits for further writes. 0 only commits the
+     *            writes that are already waiting.
+     * @param batchSize
+     *            The maximum number of writes committed together.
+     */
+    public HSQLDBGroupCommit(final HSQLDBConnectionPool pool, final WriteOperation operation,
+            final int windowMillis, final int batchSize) {
+        this.pool = pool;
+        this.operation = operation;
+        this.windowMillis = Math.max(0, windowMillis);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Writes the given values and returns after they are committed.
+     *
+     * @param values
+     *            Addresses and new values of the nodes to write.
+     */
+    public final void write(final Map<String, String> values) {
+        final Request request = new Request(values);
+        boolean lead;
+        synchronized (lock) {
+            pending.add(request);
+            lead = !leaderActive;
+            if (lead) {
+                leaderActive = true;
+            } else if (pending.size() >= batchSize) {
+                // wake up the leader, the batch is full.
+                lock.notifyAll();
+            }
+        }
+        boolean interrupted = false;
+        while (true) {
+            if (lead) {
+                commitPending();
+            }
+            synchronized (lock) {
+                while (!request.done && !request.leader) {
+                    try {
+                        lock.wait();
+                    } catch (final InterruptedException e) {
+                        // the write is queued already, so wait for it anyway.
+                        interrupted = true;
+                    }
+                }
+                if (request.done) {
+                    break;
+                }
+                request.leader = false;
+                lead = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (request.error != null) {
+            throw request.error;
+        }
+    }
+
+    /**
+     * Collects the pending writes for up to the configured window, commits them and hands the
+     * leadership to the oldest write queued meanwhile.
+     */
+    private void commitPending() {
+        final List<Request> batch = new ArrayList<Request>();
+        synchronized (lock) {
+            final long deadline = System.currentTimeMillis() + windowMillis;
+            long remaining = windowMillis;
+            while (pending.size() < batchSize && remaining > 0) {
+                try {
+                    lock.wait(remaining);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+            while (!pending.isEmpty() && batch.size() < batchSize) {
+                batch.add(pending.removeFirst());
+            }
+        }
+
+        try {
+            commit(batch);
+        } catch (final RuntimeException e) {
+            for (final Request request : batch) {
+                request.error = e;
+            }
+        } finally {
+            synchronized (lock) {
+                for (final Request request : batch) {
+                    request.done = true;
+                }
+                if (pending.isEmpty()) {
+                    leaderActive = false;
+                } else {
+                    pending.getFirst().leader = true;
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Applies the given writes in one transaction. If the transaction fails, the writes are
+     * retried one by one, so only the failing writes report an error.
+     *
+     * @param batch
+     *            The writes to commit.
+     */
+    private void commit(final List<Request> batch) {
+        final PooledConnection con = pool.acquireWriter();
+        try {
+            final RuntimeException error = apply(con, batch);
+            if (error == null) {
+                return;
+            }
+            if (batch.size() == 1) {
+                batch.get(0).error = error;
+                return;
+            }
+            LOGGER.debug("Group commit of {} writes failed, retrying them one by one: {}",
+                    batch.size(), error.getMessage());
+            for (final Request request : batch) {
+                request.error = apply(con, Collections.singletonList(request));
+            }
+        } finally {
+            pool.release(con);
+        }
+    }
+
+    /**
+     * Applies the given writes in one transaction and commits it.
+     *
+     * @param con
+     *            The write connection.
+     * @param batch
+     *            The writes to apply.
+     * @return null if the writes were committed, otherwise the reason they failed. The
+     *         transaction is rolled back then.
+     */
+    private RuntimeException apply(final PooledConnection con, final List<Request> batch) {
+        final Connection connection = con.getConnection();
+        RuntimeException error = null;
+        try {
+            connection.setAutoCommit(false);
+            for (final Request request : batch) {
+                operation.write(con, request.values);
+            }
+            connection.commit();
+        } catch (final SQLException e) {
+            error = new RuntimeException(e);
+        } catch (final RuntimeException e) {
+            error = e;
+        }
+        try {
+            if (error != null) {
+                connection.rollback();
+            }
+            connection.setAutoCommit(true);
+        } catch (final SQLException e) {
+            LOGGER.error("An error occured on finishing a group commit", e);
+        }
+        return error;
+    }
+}
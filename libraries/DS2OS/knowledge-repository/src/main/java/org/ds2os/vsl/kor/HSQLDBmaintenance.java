@@ -1,25 +1,61 @@
 package org.ds2os.vsl.kor;
 
-import java.sql.Connection;
+import java.math.BigDecimal;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.TimerTask;
 
 import org.ds2os.vsl.core.config.VslKORDatabaseConfig;
+import org.ds2os.vsl.kor.HSQLDBConnectionPool.PooledConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Class for regular cleanup operations on the database.
+ * Class for regular cleanup operations on the database. The archive is compacted incrementally:
+ * every run only looks at the addresses written since the last run (tracked by a timestamp
+ * watermark) and trims their history to the configured retention, then removes rows that exceeded
+ * the configured maximum age. Nodes cached from other KAs keep their original timestamps, so their
+ * addresses are reported by {@link #addCachedAddresses(Collection)} instead. Work is done in small
+ * batches, each in its own short transaction, and a run stops once its time budget is used up,
+ * continuing where it left off on the next run.
  *
  * @author liebald
  */
 public class HSQLDBmaintenance extends TimerTask {
 
     /**
-     * The {@link Connection} to the database.
+     * Default time in milliseconds a single run may spend on maintenance.
      */
-    private final Connection con;
+    private static final int DEFAULT_BUDGET = 50;
+
+    /**
+     * The number of addresses or rows handled in one transaction.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * The smallest difference between two timestamps, which are stored with a scale of 5.
+     */
+    private static final BigDecimal TIMESTAMP_STEP = BigDecimal.ONE.movePointLeft(5);
+
+    /**
+     * The pool of connections to the database. Maintenance uses the write connection, so it never
+     * runs concurrently to other writes.
+     */
+    private final HSQLDBConnectionPool pool;
+
+    /**
+     * The {@link VslKORDatabaseConfig} for the database, read on every run.
+     */
+    private final VslKORDatabaseConfig configService;
 
     /**
      * The name of the table containing version information in the database.
@@ -31,87 +67,388 @@ public class HSQLDBmaintenance extends TimerTask {
      */
     private final String tableData;
 
+    /**
+     * The name of the table containing the newest value and version of each node.
+     */
+    private final String tableCurrent;
+
+    /**
+     * All rows with a timestamp up to the watermark were already compacted by their address.
+     */
+    private BigDecimal watermark;
+
+    /**
+     * The newest timestamp of the rows whose addresses are in {@link #pending}. The watermark is
+     * moved here once all pending addresses are compacted.
+     */
+    private BigDecimal pendingUpTo;
+
+    /**
+     * Addresses written since the watermark that still have to be compacted.
+     */
+    private final Deque<String> pending;
+
+    /**
+     * Addresses of cached nodes written since the last collection. Their timestamps come from
+     * another KA and can lie behind the watermark, so the watermark doesn't find them.
+     */
+    private final Set<String> cachedAddresses;
+
+    /**
+     * All rows older than this timestamp were already checked for exceeding the maximum age.
+     */
+    private BigDecimal ageWatermark;
+
     /**
      * Get the logger instance for this class.
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(HSQLDBmaintenance.class);
 
     /**
-     * Constructor, taking a {@link Connection} to the database this class should maintain.
+     * Constructor, taking the {@link HSQLDBConnectionPool} of the database this class should
+     * maintain.
      *
-     * @param con
-     *            The {@link Connection} to the database.
+     * @param pool
+     *            The {@link HSQLDBConnectionPool} of the database.
      * @param configService
      *            The {@link VslKORDatabaseConfig} for the database.
-     * @param tableVersion
-     *            The name of the table containing version information in the database.
      * @param tableData
      *            The name of the table containing data/value information in the database.
+     * @param tableVersion
+     *            The name of the table containing version information in the database.
+     * @param tableCurrent
+     *            The name of the table containing the newest value and version of each node.
      */
-    public HSQLDBmaintenance(final Connection con, final VslKORDatabaseConfig configService,
-            final String tableData, final String tableVersion) {
-        this.con = con;
+    public HSQLDBmaintenance(final HSQLDBConnectionPool pool,
+            final VslKORDatabaseConfig configService, final String tableData,
+            final String tableVersion, final String tableCurrent) {
+        this.pool = pool;
+        this.configService = configService;
         this.tableData = tableData;
         this.tableVersion = tableVersion;
+        this.tableCurrent = tableCurrent;
+        watermark = BigDecimal.ZERO;
+        ageWatermark = BigDecimal.ZERO;
+        pending = new ArrayDeque<String>();
+        cachedAddresses = new LinkedHashSet<String>();
+    }
+
+    /**
+     * Marks the addresses of cached nodes for compaction on the next collection.
+     *
+     * @param addresses
+     *            The addresses written with the timestamps of another KA.
+     */
+    public final void addCachedAddresses(final Collection<String> addresses) {
+        synchronized (cachedAddresses) {
+            cachedAddresses.addAll(addresses);
+        }
     }
 
     @Override
     public final void run() {
+        int budget = configService.getDatabaseMaintenanceBudget();
+        if (budget <= 0) {
+            budget = DEFAULT_BUDGET;
+        }
+        final long deadline = System.currentTimeMillis() + budget;
         try {
-            con.setAutoCommit(false);
-            maintainTables();
-            con.commit();
-            con.setAutoCommit(true);
+            if (pending.isEmpty()) {
+                collectChangedAddresses();
+            }
+            while (!pending.isEmpty() && System.currentTimeMillis() < deadline) {
+                compactAddresses();
+            }
+            if (pending.isEmpty() && pendingUpTo != null) {
+                watermark = pendingUpTo;
+                pendingUpTo = null;
+            }
+            boolean aged = true;
+            while (aged && System.currentTimeMillis() < deadline) {
+                aged = removeAgedRows();
+            }
         } catch (final SQLException e) {
             LOGGER.error("Error on running database maintainance", e);
         }
     }
 
     /**
-     * Method to maintain all relevant tables of the database (delete entries that are to old,
-     * etc.).
+     * Returns the number of values and versions kept for every address.
+     *
+     * @return The retention count.
      */
-    private void maintainTables() {
+    private int getRetentionCount() {
+        if (!configService.isArchiveEnabled()) {
+            return 1;
+        }
+        return Math.max(1, configService.getArchiveNodeVersionLimit());
+    }
+
+    /**
+     * Returns the timestamp before which values and versions are removed, unless they are the
+     * newest of their address.
+     *
+     * @return The timestamp, or null if the age of values is not limited.
+     */
+    private BigDecimal getAgeCutoff() {
+        final int maxAge = configService.getArchiveMaxAge();
+        if (maxAge <= 0) {
+            return null;
+        }
+        return new BigDecimal(System.currentTimeMillis() - maxAge * 1000L).setScale(5);
+    }
 
-        PreparedStatement pst = null;
-        StringBuilder sql;
+    /**
+     * Adds all addresses written since the watermark and all reported cached addresses to
+     * {@link #pending}.
+     *
+     * @throws SQLException
+     *             If the database can't be read.
+     */
+    private void collectChangedAddresses() throws SQLException {
+        final Set<String> changed = new LinkedHashSet<String>();
+        synchronized (cachedAddresses) {
+            changed.addAll(cachedAddresses);
+            cachedAddresses.clear();
+        }
+        final PooledConnection con = pool.acquireReader();
+        ResultSet rs = null;
         try {
-            sql = new StringBuilder();
-            sql.append("DELETE FROM ").append(tableData)
-                    .append(" WHERE (address, timestamp) NOT IN ")
-                    .append("(SELECT address, max(timestamp) FROM ").append(tableData)
-                    .append(" group by address)");
-
-            pst = con.prepareStatement(sql.toString());
-            pst.execute();
-            closeResource(pst);
-            sql = new StringBuilder();
-            sql.append("DELETE FROM ").append(tableVersion).append(" WHERE timestamp not in ")
-                    .append("(SELECT timestamp FROM ").append(tableData).append(")");
-            pst = con.prepareStatement(sql.toString());
-            pst.execute();
+            // the single writer commits its timestamps in order, so nothing older than the newest
+            // committed timestamp can show up later, except for cached nodes.
+            BigDecimal upTo = null;
+            for (final String table : new String[] {tableData, tableVersion }) {
+                final PreparedStatement pst = con
+                        .prepare("SELECT max(timestamp) FROM " + table);
+                rs = pst.executeQuery();
+                if (rs.next() && rs.getBigDecimal(1) != null
+                        && (upTo == null || rs.getBigDecimal(1).compareTo(upTo) > 0)) {
+                    upTo = rs.getBigDecimal(1);
+                }
+                closeResource(rs);
+            }
+            // cached nodes from a KA whose clock is ahead must not move the watermark past local
+            // writes that are still to come.
+            final BigDecimal now = new BigDecimal(System.currentTimeMillis()).setScale(5);
+            if (upTo != null && upTo.compareTo(now) > 0) {
+                upTo = now;
+            }
+            if (upTo == null || upTo.compareTo(watermark) <= 0) {
+                return;
+            }
+
+            final StringBuilder sql = new StringBuilder();
+            sql.append("SELECT address FROM ").append(tableData)
+                    .append(" WHERE timestamp > ? AND timestamp <= ?");
+            sql.append(" UNION SELECT address FROM ").append(tableVersion)
+                    .append(" WHERE timestamp > ? AND timestamp <= ?");
+            final PreparedStatement pst = con.prepare(sql.toString());
+            pst.setBigDecimal(1, watermark);
+            pst.setBigDecimal(2, upTo);
+            pst.setBigDecimal(3, watermark);
+            pst.setBigDecimal(4, upTo);
+            rs = pst.executeQuery();
+            while (rs.next()) {
+                changed.add(rs.getString(1));
+            }
+            pendingUpTo = upTo;
+        } finally {
+            closeResource(rs);
+            pool.release(con);
+            pending.addAll(changed);
+        }
+    }
+
+    /**
+     * Trims the history of the next batch of pending addresses to the retention count and the
+     * maximum age, always keeping the newest value and version.
+     *
+     * @throws SQLException
+     *             If the database can't be changed.
+     */
+    private void compactAddresses() throws SQLException {
+        final List<String> batch = new ArrayList<String>(BATCH_SIZE);
+        while (batch.size() < BATCH_SIZE && !pending.isEmpty()) {
+            batch.add(pending.poll());
+        }
+        final int retention = getRetentionCount();
+        final BigDecimal ageCutoff = getAgeCutoff();
+
+        final PooledConnection con = pool.acquireWriter();
+        try {
+            con.getConnection().setAutoCommit(false);
+            for (final String table : new String[] {tableData, tableVersion }) {
+                final StringBuilder select = new StringBuilder();
+                select.append("SELECT timestamp FROM ").append(table)
+                        .append(" WHERE address=? ORDER BY timestamp DESC")
+                        .append(" FETCH FIRST ? ROWS ONLY");
+                final PreparedStatement pstSelect = con.prepare(select.toString());
+                final PreparedStatement pstDelete = con.prepare(
+                        "DELETE FROM " + table + " WHERE address=? AND timestamp < ?");
+                boolean deletes = false;
+                for (final String address : batch) {
+                    final BigDecimal threshold = getThreshold(pstSelect, address, retention,
+                            ageCutoff);
+                    if (threshold != null) {
+                        pstDelete.setString(1, address);
+                        pstDelete.setBigDecimal(2, threshold);
+                        pstDelete.addBatch();
+                        deletes = true;
+                    }
+                }
+                if (deletes) {
+                    pstDelete.executeBatch();
+                }
+            }
+            con.getConnection().commit();
         } catch (final SQLException e) {
-            LOGGER.error("Error removing archived Nodes: {}", e.getMessage());
+            con.getConnection().rollback();
+            throw e;
         } finally {
-            closeResource(pst);
+            con.getConnection().setAutoCommit(true);
+            pool.release(con);
         }
+    }
 
+    /**
+     * Returns the timestamp below which the rows of an address can be removed.
+     *
+     * @param pstSelect
+     *            Statement selecting the newest timestamps of an address, newest first.
+     * @param address
+     *            The address.
+     * @param retention
+     *            The number of rows to keep.
+     * @param ageCutoff
+     *            The timestamp before which rows are removed, or null.
+     * @return The threshold, or null if no row has to be removed.
+     * @throws SQLException
+     *             If the database can't be read.
+     */
+    private BigDecimal getThreshold(final PreparedStatement pstSelect, final String address,
+            final int retention, final BigDecimal ageCutoff) throws SQLException {
+        pstSelect.setString(1, address);
+        pstSelect.setInt(2, retention);
+        final ResultSet rs = pstSelect.executeQuery();
+        BigDecimal newest = null;
+        BigDecimal oldestKept = null;
+        int rows = 0;
+        try {
+            while (rs.next()) {
+                oldestKept = rs.getBigDecimal(1);
+                if (newest == null) {
+                    newest = oldestKept;
+                }
+                rows++;
+            }
+        } finally {
+            closeResource(rs);
+        }
+        if (newest == null) {
+            return null;
+        }
+
+        BigDecimal threshold = null;
+        if (rows >= retention) {
+            threshold = oldestKept;
+        }
+        if (ageCutoff != null) {
+            final BigDecimal ageThreshold = ageCutoff.min(newest);
+            if (threshold == null || ageThreshold.compareTo(threshold) > 0) {
+                threshold = ageThreshold;
+            }
+        }
+        return threshold;
+    }
+
+    /**
+     * Removes the next batch of rows that exceeded the maximum age, except the newest value and
+     * version of every address.
+     *
+     * @return True if more rows may have to be removed.
+     * @throws SQLException
+     *             If the database can't be changed.
+     */
+    private boolean removeAgedRows() throws SQLException {
+        final BigDecimal cutoff = getAgeCutoff();
+        if (cutoff == null || ageWatermark.compareTo(cutoff) >= 0) {
+            return false;
+        }
+
+        // limit the batch to the timestamp range of the next BATCH_SIZE rows of both tables.
+        BigDecimal upTo = cutoff;
+        final PooledConnection reader = pool.acquireReader();
+        ResultSet rs = null;
+        try {
+            for (final String table : new String[] {tableData, tableVersion }) {
+                final StringBuilder sql = new StringBuilder();
+                sql.append("SELECT timestamp FROM ").append(table)
+                        .append(" WHERE timestamp >= ? AND timestamp < ? ORDER BY timestamp")
+                        .append(" OFFSET ? ROWS FETCH NEXT 1 ROWS ONLY");
+                final PreparedStatement pst = reader.prepare(sql.toString());
+                pst.setBigDecimal(1, ageWatermark);
+                pst.setBigDecimal(2, upTo);
+                pst.setInt(3, BATCH_SIZE);
+                rs = pst.executeQuery();
+                if (rs.next()) {
+                    upTo = rs.getBigDecimal(1);
+                }
+                closeResource(rs);
+            }
+        } finally {
+            closeResource(rs);
+            pool.release(reader);
+        }
+        if (upTo.compareTo(ageWatermark) <= 0) {
+            // more than a batch of rows share the oldest timestamp, remove them all at once.
+            upTo = ageWatermark.add(TIMESTAMP_STEP).min(cutoff);
+        }
+
+        final StringBuilder sqlData = new StringBuilder();
+        sqlData.append("DELETE FROM ").append(tableData)
+                .append(" td WHERE timestamp >= ? AND timestamp < ?")
+                .append(" AND NOT EXISTS (SELECT 1 FROM ").append(tableCurrent)
+                .append(" tc WHERE tc.address=td.address AND tc.timestamp=td.timestamp)");
+        final StringBuilder sqlVersion = new StringBuilder();
+        sqlVersion.append("DELETE FROM ").append(tableVersion)
+                .append(" tv WHERE timestamp >= ? AND timestamp < ?")
+                .append(" AND NOT EXISTS (SELECT 1 FROM ").append(tableCurrent)
+                .append(" tc WHERE tc.address=tv.address AND tc.version=tv.version)");
+
+        final PooledConnection con = pool.acquireWriter();
+        try {
+            con.getConnection().setAutoCommit(false);
+            for (final String sql : new String[] {sqlData.toString(), sqlVersion.toString() }) {
+                final PreparedStatement pst = con.prepare(sql);
+                pst.setBigDecimal(1, ageWatermark);
+                pst.setBigDecimal(2, upTo);
+                pst.executeUpdate();
+            }
+            con.getConnection().commit();
+        } catch (final SQLException e) {
+            con.getConnection().rollback();
+            throw e;
+        } finally {
+            con.getConnection().setAutoCommit(true);
+            pool.release(con);
+        }
+        ageWatermark = upTo;
+        return upTo.compareTo(cutoff) < 0;
     }
 
     /**
-     * Tries to gracefully close the prepared statement.
+     * Tries to gracefully close the result set.
      *
-     * @param pst
-     *            The prepared statement object to close.
+     * @param rs
+     *            The result set object to close.
      */
-    private void closeResource(final PreparedStatement pst) {
-        if (pst != null) {
+    private void closeResource(final ResultSet rs) {
+        if (rs != null) {
             try {
-                pst.close();
+                rs.close();
             } catch (final SQLException e) {
-                LOGGER.warn("Couldn't clean up a prepared statement: {}", e.getMessage());
+                LOGGER.warn("Couldn't clean up a result set object: {}", e.getLocalizedMessage());
             }
         }
     }
-
 }
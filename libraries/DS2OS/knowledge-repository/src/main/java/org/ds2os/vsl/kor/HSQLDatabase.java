@@ -3,7 +3,6 @@ package org.ds2os.vsl.kor;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -13,7 +12,10 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -28,9 +30,12 @@ import org.ds2os.vsl.core.statistics.VslStatisticsDatapoint;
 import org.ds2os.vsl.core.statistics.VslStatisticsProvider;
 import org.ds2os.vsl.core.utils.AddressParser;
 import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.ds2os.vsl.core.utils.VslAddressParameters.NodeInformationScope;
 import org.ds2os.vsl.exception.NodeNotExistingException;
+import org.ds2os.vsl.kor.HSQLDBConnectionPool.PooledConnection;
 import org.ds2os.vsl.kor.dataStructures.InternalNode;
 import org.ds2os.vsl.kor.dataStructures.MetaNode;
+import org.ds2os.vsl.kor.dataStructures.StructureHashTree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,9 +58,25 @@ public class HSQLDatabase implements VslNodeDatabase {
     private static final Logger LOGGER = LoggerFactory.getLogger(HSQLDatabase.class);
 
     /**
-     * JDBC connection.
+     * The default number of read only connections to the database.
      */
-    private Connection con = null;
+    private static final int DEFAULT_READ_CONNECTIONS = 4;
+
+    /**
+     * Pool of the JDBC connections, caching their prepared statements.
+     */
+    private HSQLDBConnectionPool pool = null;
+
+    /**
+     * Commits concurrent writes of {@link #setValueTree(Map)} together.
+     */
+    private HSQLDBGroupCommit groupCommit = null;
+
+    /**
+     * Hash tree over the structure table, maintained on every structural change so the hash of a
+     * subtree can be returned without querying it.
+     */
+    private final StructureHashTree structureHashes = new StructureHashTree();
 
     /**
      * JDBC driver for the hsqldb.
@@ -88,6 +109,19 @@ public class HSQLDatabase implements VslNodeDatabase {
      */
     private final String tableVersion;
 
+    /**
+     * Name of the table inside the database that holds the newest value, timestamp and version of
+     * every node. It is maintained on every write, so reads never have to aggregate the history
+     * stored in {@link #tableData} and {@link #tableVersion}.
+     */
+    private final String tableCurrent;
+
+    /**
+     * Name of the table inside the database that holds the elements of list nodes, ordered by a
+     * sort key per element.
+     */
+    private final String tableList;
+
     /**
      * The {@link VslStatisticsProvider} for accessing the KA internal statistics mechanism.
      */
@@ -98,6 +132,12 @@ public class HSQLDatabase implements VslNodeDatabase {
      */
     Timer maintentanceTimer;
 
+    /**
+     * The {@link HSQLDBmaintenance} task run by the {@link #maintentanceTimer}, null until the
+     * database is activated.
+     */
+    private HSQLDBmaintenance maintenance;
+
     /**
      * Instantiate a new database. This creates/connects the underlying database and table.
      *
@@ -112,6 +152,8 @@ public class HSQLDatabase implements VslNodeDatabase {
         tableStructure = "kor_structure";
         tableVersion = "kor_version";
         tableData = "kor_data";
+        tableCurrent = "kor_current";
+        tableList = "kor_list";
         this.configService = configService;
         lastTimestampSet = new BigDecimal(System.currentTimeMillis());
         lastTimestampSet = lastTimestampSet.setScale(5);
@@ -126,20 +168,41 @@ public class HSQLDatabase implements VslNodeDatabase {
         try {
             Class.forName(dbDriver);
             synchronized (LOGGER) {
-                if (con == null) {
-                    con = DriverManager.getConnection(
+                if (pool == null) {
+                    int readConnections = configService.getDatabaseConnectionPoolSize();
+                    if (readConnections <= 0) {
+                        readConnections = DEFAULT_READ_CONNECTIONS;
+                    }
+                    pool = new HSQLDBConnectionPool(
                             HSQLDB_PROTOCOL + this.configService.getDatabasePath(),
                             this.configService.getDatabaseUsername(),
-                            this.configService.getDatabasePassword());
-                    con.setAutoCommit(true);
-                    con.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
-                    setDatabaseFlags();
-                    initKnowledgeTables();
+                            this.configService.getDatabasePassword(), readConnections,
+                            statisticsProvider);
+                    final PooledConnection con = pool.acquireWriter();
+                    try {
+                        con.getConnection().setAutoCommit(true);
+                        con.getConnection()
+                                .setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+                        setDatabaseFlags(con.getConnection());
+                        initKnowledgeTables(con.getConnection());
+                        loadStructureHashes(con);
+                    } finally {
+                        pool.release(con);
+                    }
+                    groupCommit = new HSQLDBGroupCommit(pool,
+                            new HSQLDBGroupCommit.WriteOperation() {
+                                @Override
+                                public void write(final PooledConnection con,
+                                        final Map<String, String> values) throws SQLException {
+                                    writeValues(con, values);
+                                }
+                            }, configService.getDatabaseCommitWindow(),
+                            configService.getDatabaseCommitBatchSize());
                 }
             }
-            final HSQLDBmaintenance maintentanceThread = new HSQLDBmaintenance(con, configService,
-                    tableData, tableVersion);
-            maintentanceTimer.schedule(maintentanceThread, 5000, 3000);
+            maintenance = new HSQLDBmaintenance(pool, configService, tableData, tableVersion,
+                    tableCurrent);
+            maintentanceTimer.schedule(maintenance, 5000, 3000);
         } catch (final SQLException e) {
             LOGGER.error("Cannot connect to database at {}: {}",
                     HSQLDB_PROTOCOL + configService.getDatabasePath(), e.getMessage());
@@ -164,7 +227,7 @@ public class HSQLDatabase implements VslNodeDatabase {
             }
         }
         // LOGGER.debug("Inserting new node at {}", address);
-        PreparedStatement pst = null;
+        final PooledConnection con = pool.acquireWriter();
         try {
             final StringBuilder sql = new StringBuilder();
             LOGGER.trace("Inserting new node at {}", address);
@@ -173,7 +236,7 @@ public class HSQLDatabase implements VslNodeDatabase {
             sql.append(" (address, type, reader, writer, restriction, cacheParameters) VALUES ");
             sql.append("(?,?,?,?,?,?)");
 
-            pst = con.prepareStatement(sql.toString());
+            final PreparedStatement pst = con.prepare(sql.toString());
             pst.setString(1, address);
             pst.setString(2, StringUtils.join(wellEscapedTypes, LIST_SEPARATOR));
             pst.setString(3, StringUtils.join(readerIds, LIST_SEPARATOR));
@@ -181,25 +244,31 @@ public class HSQLDatabase implements VslNodeDatabase {
             pst.setString(5, restriction);
             pst.setString(6, cacheParameters);
             pst.execute();
+            structureHashes.addNode(address, StringUtils.join(wellEscapedTypes, LIST_SEPARATOR));
             LOGGER.trace("Created a new node at {}", address);
         } catch (final SQLException e) {
             LOGGER.error("Error adding a new node at address {}: ", address, e);
         } finally {
-            closeResource(pst);
+            pool.release(con);
         }
     }
 
     /**
      * Adds a table to the database.
      *
+     * @param con
+     *            The connection to use.
      * @param tableName
      *            the name of the table.
      * @param sqlCreateStmt
      *            the sql statement to create the table.
+     * @return True if the table was created, false if it already existed or couldn't be created.
      */
-    private void addTable(final String tableName, final String sqlCreateStmt) {
+    private boolean addTable(final Connection con, final String tableName,
+            final String sqlCreateStmt) {
         Statement st = null;
         ResultSet rs = null;
+        boolean created = false;
 
         try {
             final DatabaseMetaData meta = con.getMetaData();
@@ -210,6 +279,7 @@ public class HSQLDatabase implements VslNodeDatabase {
                     st = con.createStatement();
                     st.execute(sqlCreateStmt);
                     con.commit();
+                    created = true;
                 }
             } else {
                 LOGGER.debug("Table {} already exists.", tableName);
@@ -221,21 +291,44 @@ public class HSQLDatabase implements VslNodeDatabase {
             closeResource(st);
             closeResource(rs);
         }
+        return created;
     }
 
     /**
-     * Tries to gracefully close the prepared statement.
+     * Adds an index to a table of the database, if it doesn't exist already.
      *
-     * @param pst
-     *            The prepared statement object to close.
+     * @param con
+     *            The connection to use.
+     * @param tableName
+     *            the name of the indexed table.
+     * @param indexName
+     *            the name of the index.
+     * @param columns
+     *            the indexed columns, separated by commas.
      */
-    private void closeResource(final PreparedStatement pst) {
-        if (pst != null) {
-            try {
-                pst.close();
-            } catch (final SQLException e) {
-                LOGGER.warn("Couldn't clean up a prepared statement: {}", e.getLocalizedMessage());
+    private void addIndex(final Connection con, final String tableName, final String indexName,
+            final String columns) {
+        Statement st = null;
+        ResultSet rs = null;
+
+        try {
+            final DatabaseMetaData meta = con.getMetaData();
+            rs = meta.getIndexInfo(null, null, tableName.toUpperCase(), false, false);
+            while (rs.next()) {
+                if (indexName.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    LOGGER.debug("Index {} already exists.", indexName);
+                    return;
+                }
             }
+            st = con.createStatement();
+            st.execute("CREATE INDEX " + indexName + " ON " + tableName + " (" + columns + ")");
+            con.commit();
+        } catch (final SQLException e) {
+            LOGGER.info("Could not create index {} on table {}, Error: {}", indexName, tableName,
+                    e.getMessage());
+        } finally {
+            closeResource(st);
+            closeResource(rs);
         }
     }
 
@@ -279,10 +372,10 @@ public class HSQLDatabase implements VslNodeDatabase {
         sql.append("WHERE address = ? OR address LIKE ? ");
         sql.append("AND type LIKE ?");
 
-        PreparedStatement pst = null;
+        final PooledConnection con = pool.acquireReader();
         ResultSet rs = null;
         try {
-            pst = con.prepareStatement(sql.toString());
+            final PreparedStatement pst = con.prepare(sql.toString());
             pst.setString(1, rootAddress);
             if (rootAddress.endsWith("/")) {
                 pst.setString(2, rootAddress + "%");
@@ -308,7 +401,7 @@ public class HSQLDatabase implements VslNodeDatabase {
             throw new RuntimeException(e);
         } finally {
             closeResource(rs);
-            closeResource(pst);
+            pool.release(con);
         }
     }
 
@@ -440,67 +533,40 @@ public class HSQLDatabase implements VslNodeDatabase {
         if (treeRoot == null || treeRoot.isEmpty()) {
             treeRoot = "/";
         }
-        long result = 17;
-        final String[] hashComponents = { "address", "type" };
-        // , "reader", "writer", "restriction" };
         // reader, writer and restrictions are based/fixed on/per the model, which is stored in the
         // type. Therefore its's not necessary to include them in the hash.
-        PreparedStatement pst = null;
+        return structureHashes.getHash(treeRoot, exludeSubtrees);
+    }
+
+    /**
+     * Fills the {@link #structureHashes} with all nodes of the structure table.
+     *
+     * @param con
+     *            The connection to use.
+     * @throws SQLException
+     *             If the structure table can't be read.
+     */
+    private void loadStructureHashes(final PooledConnection con) throws SQLException {
+        structureHashes.clear();
         ResultSet rs = null;
         try {
-            String like;
-            if (treeRoot.equals("/") || treeRoot.endsWith("/")) {
-                like = treeRoot + "%";
-            } else {
-                like = treeRoot + "/%";
-            }
-            final StringBuilder sql = new StringBuilder();
-            sql.append("SELECT address, reader, writer, restriction, type, cacheParameters FROM ")
-                    .append(tableStructure);
-            sql.append(" WHERE (address = ? OR address LIKE ?) ");
-
-            for (int i = 0; i < exludeSubtrees.size(); i++) {
-                sql.append(" AND address <> ? AND address NOT LIKE ? ");
-            }
-            sql.append(" ORDER BY address");
-            pst = con.prepareStatement(sql.toString());
-            pst.setString(1, treeRoot);
-            pst.setString(2, like);
-
-            for (int i = 0; i < exludeSubtrees.size(); i++) {
-                if (treeRoot.endsWith("/")) {
-                    pst.setString(2 * i + 3, treeRoot + exludeSubtrees.get(i));
-                    pst.setString(2 * i + 4, treeRoot + exludeSubtrees.get(i) + "/%");
-                } else {
-                    pst.setString(2 * i + 3, treeRoot + "/" + exludeSubtrees.get(i));
-                    pst.setString(2 * i + 4, treeRoot + "/" + exludeSubtrees.get(i) + "/%");
-                }
-            }
-
-            rs = pst.executeQuery();
-
+            rs = con.prepare("SELECT address, type FROM " + tableStructure).executeQuery();
             while (rs.next()) {
-                for (final String component : hashComponents) {
-                    result = 37 * result + rs.getString(component).hashCode();
-                }
+                structureHashes.addNode(rs.getString("address"), rs.getString("type"));
             }
-        } catch (final SQLException e) {
-            throw new RuntimeException(e);
         } finally {
-            closeResource(pst);
             closeResource(rs);
         }
-        return Long.toHexString(result);
     }
 
     @Override
     public final TreeMap<String, MetaNode> getNodeMetaData(final String address,
             final boolean includeSubtree) throws NodeNotExistingException {
-        PreparedStatement pst = null;
         ResultSet rs = null;
         StringBuilder sql;
         final TreeMap<String, MetaNode> results = new TreeMap<String, MetaNode>();
         if (address != null) {
+            final PooledConnection con = pool.acquireReader();
             try {
                 sql = new StringBuilder();
                 sql.append(
@@ -510,7 +576,7 @@ public class HSQLDatabase implements VslNodeDatabase {
                     sql.append(" OR address LIKE ?");
                 }
                 sql.append(" ORDER BY address asc");
-                pst = con.prepareStatement(sql.toString());
+                final PreparedStatement pst = con.prepare(sql.toString());
                 pst.setString(1, address);
                 if (includeSubtree) {
                     if (address.equals("/")) {
@@ -555,8 +621,8 @@ public class HSQLDatabase implements VslNodeDatabase {
                 throw new NodeNotExistingException(
                         "Sql Exception for node :" + address + ", " + e.getMessage());
             } finally {
-                closeResource(pst);
                 closeResource(rs);
+                pool.release(con);
             }
 
         } else {
@@ -568,7 +634,7 @@ public class HSQLDatabase implements VslNodeDatabase {
     /**
      * General purpose getNodeRecord method that is used for the different kinds of public
      * getNodeRecordFunctions. They build a prepared Statement, this function executes it and
-     * returns the result.
+     * returns the result. The statement is cached by its connection and therefore not closed.
      *
      * @param pst
      *            The prepared Statement to execute.
@@ -581,44 +647,7 @@ public class HSQLDatabase implements VslNodeDatabase {
 
             rs = pst.executeQuery();
             while (rs.next()) {
-                Date ts = null;
-                if (hasColumn(rs, "timestamp")) {
-                    ts = parseExtendedTimestamp(rs.getBigDecimal("timestamp"));
-                }
-
-                List<String> type = null;
-                if (hasColumn(rs, "type")) {
-                    type = new ArrayList<String>(
-                            Arrays.asList(StringUtils.split(rs.getString("type"), LIST_SEPARATOR)));
-                }
-                List<String> readers = null;
-                if (hasColumn(rs, "reader")) {
-                    readers = new ArrayList<String>(Arrays
-                            .asList(StringUtils.split(rs.getString("reader"), LIST_SEPARATOR)));
-                }
-                List<String> writers = null;
-                if (hasColumn(rs, "writer")) {
-                    writers = new ArrayList<String>(Arrays
-                            .asList(StringUtils.split(rs.getString("writer"), LIST_SEPARATOR)));
-                }
-                String value = null;
-                if (hasColumn(rs, "value")) {
-                    value = rs.getString("value");
-                }
-                int version = -1;
-                if (hasColumn(rs, "version")) {
-                    version = rs.getInt("version");
-                }
-                String restrictions = null;
-                if (hasColumn(rs, "restriction")) {
-                    restrictions = rs.getString("restriction");
-                }
-                String cacheParameters = null;
-                if (hasColumn(rs, "cacheParameters")) {
-                    cacheParameters = rs.getString("cacheParameters");
-                }
-                results.put(rs.getString("address"), new InternalNode(type, value, readers, writers,
-                        version, ts, restrictions, cacheParameters));
+                results.put(rs.getString("address"), toInternalNode(rs));
             }
         } catch (final SQLException e) {
             // exception happens after we went through all entries, means no more
@@ -626,12 +655,62 @@ public class HSQLDatabase implements VslNodeDatabase {
             LOGGER.debug(e.getMessage());
             return results;
         } finally {
-            closeResource(pst);
             closeResource(rs);
         }
         return results;
     }
 
+    /**
+     * Creates an {@link InternalNode} from the current row of a result set. Columns that are not
+     * part of the result set are left empty.
+     *
+     * @param rs
+     *            The result set, positioned on the row to convert.
+     * @return The node of the current row.
+     * @throws SQLException
+     *             If the row can't be read.
+     */
+    private InternalNode toInternalNode(final ResultSet rs) throws SQLException {
+        Date ts = null;
+        if (hasColumn(rs, "timestamp")) {
+            ts = parseExtendedTimestamp(rs.getBigDecimal("timestamp"));
+        }
+
+        List<String> type = null;
+        if (hasColumn(rs, "type")) {
+            type = new ArrayList<String>(
+                    Arrays.asList(StringUtils.split(rs.getString("type"), LIST_SEPARATOR)));
+        }
+        List<String> readers = null;
+        if (hasColumn(rs, "reader")) {
+            readers = new ArrayList<String>(Arrays
+                    .asList(StringUtils.split(rs.getString("reader"), LIST_SEPARATOR)));
+        }
+        List<String> writers = null;
+        if (hasColumn(rs, "writer")) {
+            writers = new ArrayList<String>(Arrays
+                    .asList(StringUtils.split(rs.getString("writer"), LIST_SEPARATOR)));
+        }
+        String value = null;
+        if (hasColumn(rs, "value")) {
+            value = rs.getString("value");
+        }
+        int version = -1;
+        if (hasColumn(rs, "version")) {
+            version = rs.getInt("version");
+        }
+        String restrictions = null;
+        if (hasColumn(rs, "restriction")) {
+            restrictions = rs.getString("restriction");
+        }
+        String cacheParameters = null;
+        if (hasColumn(rs, "cacheParameters")) {
+            cacheParameters = rs.getString("cacheParameters");
+        }
+        return new InternalNode(type, value, readers, writers, version, ts, restrictions,
+                cacheParameters);
+    }
+
     /**
      * Helperclass to test if a resultset contains a columnname.
      *
@@ -663,29 +742,212 @@ public class HSQLDatabase implements VslNodeDatabase {
             throw new NodeNotExistingException("address was null");
         }
 
-        switch (params.getNodeInformationScope()) {
-        case VALUE:
-            pst = getPreparedStatementValue(address, params.getDepth());
-            break;
-        case METADATA:
-            pst = getPreparedStatementComplete(address, params.getDepth(), false);
-            break;
-        default: // == case COMPLETE
-            pst = getPreparedStatementComplete(address, params.getDepth(), true);
-            break;
+        final TreeMap<String, InternalNode> results;
+        final PooledConnection con = pool.acquireReader();
+        try {
+            final BigDecimal before = getRequestedTimestampBound(con, address, params);
+            if (before != null) {
+                pst = getPreparedStatementArchived(con, address, params, before);
+            } else {
+                switch (params.getNodeInformationScope()) {
+                case VALUE:
+                    pst = getPreparedStatementValue(con, address, params.getDepth());
+                    break;
+                case METADATA:
+                    pst = getPreparedStatementComplete(con, address, params.getDepth(), false);
+                    break;
+                default: // == case COMPLETE
+                    pst = getPreparedStatementComplete(con, address, params.getDepth(), true);
+                    break;
+                }
+            }
+            results = getNodeRecord(pst);
+        } finally {
+            pool.release(con);
         }
-        final TreeMap<String, InternalNode> results = getNodeRecord(pst);
+        removeDeeperChildren(results, address, params.getDepth());
         if (results.isEmpty()) {
             throw new NodeNotExistingException("Node not found: " + address);
         }
-        closeResource(pst);
         return results;
     }
 
+    @Override
+    public final TreeMap<String, List<InternalNode>> getNodeHistory(final String address,
+            final VslAddressParameters params) throws NodeNotExistingException {
+        if (address == null) {
+            throw new NodeNotExistingException("address was null");
+        }
+        final VslStatisticsDatapoint dp = statisticsProvider
+                .getStatistics(this.getClass(), "historyGetRequest").begin();
+
+        // the time range is scanned first (using the timestamp index of the data table), so the
+        // cost depends on the number of values written within the range.
+        final StringBuilder sql = new StringBuilder();
+        sql.append("SELECT td.address, td.value, td.timestamp");
+        if (!params.getNodeInformationScope().equals(NodeInformationScope.VALUE)) {
+            sql.append(", tv.version, ts.type, ts.restriction, ts.cacheParameters");
+        }
+        sql.append(", ts.reader, ts.writer FROM ").append(tableData).append(" td JOIN ")
+                .append(tableStructure).append(" ts ON (ts.address=td.address)");
+        if (!params.getNodeInformationScope().equals(NodeInformationScope.VALUE)) {
+            sql.append(" LEFT JOIN ").append(tableVersion)
+                    .append(" tv ON (tv.address=td.address AND tv.timestamp=td.timestamp)");
+        }
+        sql.append(" WHERE td.timestamp >= ? AND td.timestamp < ? AND (td.address=?");
+        if (params.getDepth() != 0) {
+            sql.append(" OR (td.address >= ? AND td.address < ?)");
+        }
+        sql.append(") ORDER BY td.timestamp asc");
+
+        final TreeMap<String, List<InternalNode>> results =
+                new TreeMap<String, List<InternalNode>>();
+        final PooledConnection con = pool.acquireReader();
+        ResultSet rs = null;
+        try {
+            final PreparedStatement pst = con.prepare(sql.toString());
+            pst.setBigDecimal(1, new BigDecimal(Math.max(0, params.getFromTimestamp())));
+            if (params.getToTimestamp() < 0) {
+                pst.setBigDecimal(2, new BigDecimal(Long.MAX_VALUE));
+            } else {
+                pst.setBigDecimal(2, new BigDecimal(params.getToTimestamp()).add(BigDecimal.ONE));
+            }
+            setSubtreeParameters(pst, 2, address, params.getDepth());
+
+            rs = pst.executeQuery();
+            while (rs.next()) {
+                final String nodeAddress = rs.getString("address");
+                List<InternalNode> values = results.get(nodeAddress);
+                if (values == null) {
+                    values = new ArrayList<InternalNode>();
+                    results.put(nodeAddress, values);
+                }
+                values.add(toInternalNode(rs));
+            }
+        } catch (final SQLException e) {
+            LOGGER.debug("Error: {}", e.getMessage());
+            throw new NodeNotExistingException(
+                    "SQL Exception for node " + address + ", " + e.getMessage());
+        } finally {
+            closeResource(rs);
+            pool.release(con);
+            dp.end();
+        }
+        removeDeeperChildren(results, address, params.getDepth());
+        if (results.isEmpty() && !nodeExists(address)) {
+            throw new NodeNotExistingException("Node not found: " + address);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the exclusive upper bound of the timestamps of archived values that are requested by
+     * the given parameters, either by the version of the requested node or by the end of a time
+     * range.
+     *
+     * @param con
+     *            The connection to use.
+     * @param address
+     *            The requested address.
+     * @param params
+     *            The parameters of the request.
+     * @return The bound, or null if the newest values are requested.
+     * @throws NodeNotExistingException
+     *             If the requested version of the node isn't archived.
+     */
+    private BigDecimal getRequestedTimestampBound(final PooledConnection con,
+            final String address, final VslAddressParameters params)
+            throws NodeNotExistingException {
+        if (params.getRequestedVersion() >= 0) {
+            ResultSet rs = null;
+            try {
+                final PreparedStatement pst = con.prepare("SELECT max(timestamp) FROM "
+                        + tableVersion + " WHERE address=? AND version=?");
+                pst.setString(1, address);
+                pst.setLong(2, params.getRequestedVersion());
+                rs = pst.executeQuery();
+                if (rs.next() && rs.getBigDecimal(1) != null) {
+                    return rs.getBigDecimal(1).add(BigDecimal.ONE.movePointLeft(5));
+                }
+            } catch (final SQLException e) {
+                LOGGER.debug("Error: {}", e.getMessage());
+            } finally {
+                closeResource(rs);
+            }
+            throw new NodeNotExistingException("Version " + params.getRequestedVersion() + " of "
+                    + address + " is not archived");
+        }
+        if (params.getToTimestamp() >= 0) {
+            return new BigDecimal(params.getToTimestamp()).add(BigDecimal.ONE);
+        }
+        return null;
+    }
+
+    /**
+     * Internal method to create a prepared statement for retrieving a node and its subtree as they
+     * were before the given timestamp. Every node gets the newest archived value and version
+     * written before that time, looked up with the (address, timestamp) indexes of the archive.
+     *
+     * @param con
+     *            The connection to prepare the statement on.
+     * @param address
+     *            The address to retrieve
+     * @param params
+     *            The parameters of the request, defining depth and scope.
+     * @param before
+     *            The exclusive upper bound of the timestamps of the returned values.
+     * @return A prepared Statement to be used with the database.
+     * @throws NodeNotExistingException
+     *             Thrown if the query can't be created or fails
+     */
+    private PreparedStatement getPreparedStatementArchived(final PooledConnection con,
+            final String address, final VslAddressParameters params, final BigDecimal before)
+            throws NodeNotExistingException {
+        final VslStatisticsDatapoint dp = statisticsProvider
+                .getStatistics(this.getClass(), "archivedGetRequest").begin();
+        final NodeInformationScope scope = params.getNodeInformationScope();
+        try {
+            final StringBuilder sql = new StringBuilder();
+            sql.append("SELECT ts.address, ts.reader, ts.writer");
+            if (!scope.equals(NodeInformationScope.VALUE)) {
+                sql.append(", ts.type, ts.restriction, ts.cacheParameters, tv.version");
+                sql.append(", td.timestamp");
+            }
+            if (!scope.equals(NodeInformationScope.METADATA)) {
+                sql.append(", td.value");
+            }
+            sql.append(" FROM ").append(tableStructure).append(" ts LEFT JOIN ")
+                    .append(tableData).append(" td ON (td.address=ts.address")
+                    .append(" AND td.timestamp=(SELECT max(d2.timestamp) FROM ").append(tableData)
+                    .append(" d2 WHERE d2.address=ts.address AND d2.timestamp < ?))");
+            sql.append(" LEFT JOIN ").append(tableVersion)
+                    .append(" tv ON (tv.address=ts.address")
+                    .append(" AND tv.timestamp=(SELECT max(v2.timestamp) FROM ")
+                    .append(tableVersion)
+                    .append(" v2 WHERE v2.address=ts.address AND v2.timestamp < ?))");
+            appendSubtreeCondition(sql, params.getDepth());
+            sql.append(" ORDER BY ts.address asc");
+
+            final PreparedStatement pst = con.prepare(sql.toString());
+            pst.setBigDecimal(1, before);
+            pst.setBigDecimal(2, before);
+            setSubtreeParameters(pst, 2, address, params.getDepth());
+            return pst;
+        } catch (final SQLException e) {
+            LOGGER.debug("Error: {}", e.getMessage());
+            throw new NodeNotExistingException(
+                    "SQL Exception for node " + address + ", " + e.getMessage());
+        } finally {
+            dp.end();
+        }
+    }
+
     /**
      * Internal method to create a prepared statement for retrieving a value from the database with
      * complete Information.
      *
+     * @param con
+     *            The connection to prepare the statement on.
      * @param address
      *            The address to retrieve
      * @param depth
@@ -698,8 +960,9 @@ public class HSQLDatabase implements VslNodeDatabase {
      * @throws NodeNotExistingException
      *             Thrown if the query can't be created or fails
      */
-    private PreparedStatement getPreparedStatementComplete(final String address, final int depth,
-            final boolean includeValue) throws NodeNotExistingException {
+    private PreparedStatement getPreparedStatementComplete(final PooledConnection con,
+            final String address, final int depth, final boolean includeValue)
+            throws NodeNotExistingException {
         PreparedStatement pst = null;
         StringBuilder sql;
 
@@ -713,62 +976,22 @@ public class HSQLDatabase implements VslNodeDatabase {
                     .begin();
         }
         try {
-            // create query
-            final StringBuilder data = new StringBuilder();
-
-            // select the newest value/timestamp
-            if (includeValue) {
-                data.append("SELECT * FROM ");
-            } else {
-                data.append("SELECT address, timestamp FROM ");
-            }
-            data.append(tableData).append(" WHERE (address,timestamp) IN ")
-                    .append("(SELECT address, max(timestamp) FROM ").append(tableData)
-                    .append(" GROUP by address)");
-
-            // select the version of the newest value
-            final StringBuilder version = new StringBuilder();
-            version.append("SELECT address, max(version) as version").append(" FROM ")
-                    .append(tableVersion).append(" GROUP BY address");
-
+            // the newest value, timestamp and version are looked up in the current table, so the
+            // cost of the query only depends on the size of the requested subtree.
             sql = new StringBuilder();
-            sql.append("SELECT ts.address, ts.type, ts.reader, ts.writer, tv.version,");
-            sql.append(" ts.restriction, ts.cacheParameters, td.timestamp");
+            sql.append("SELECT ts.address, ts.type, ts.reader, ts.writer, tc.version,");
+            sql.append(" ts.restriction, ts.cacheParameters, tc.timestamp");
             if (includeValue) {
-                sql.append(", td.value ");
-            }
-            sql.append(" FROM ").append(tableStructure);
-            sql.append(" ts ").append("FULL JOIN (").append(data.toString()).append(")");
-            sql.append(" td ON (td.address=ts.address)").append("FULL JOIN (")
-                    .append(version.toString()).append(")");
-            sql.append(" tv ON (tv.address=ts.address)");
-
-            if (depth < 0) {
-                sql.append(" WHERE ts.address=? OR ts.address LIKE ? ");
-            } else if (depth == 0) {
-                sql.append(" WHERE ts.address=? ");
-            } else {
-                sql.append(" WHERE ts.address=? ");
-                sql.append(" OR REGEXP_MATCHES(ts.address, ?) ");
+                sql.append(", tc.value ");
             }
-
-            sql.append(" ORDER BY address asc");
+            sql.append(" FROM ").append(tableStructure).append(" ts LEFT JOIN ")
+                    .append(tableCurrent).append(" tc ON (tc.address=ts.address)");
+            appendSubtreeCondition(sql, depth);
+            sql.append(" ORDER BY ts.address asc");
 
             // prepare statement, add address
-            pst = con.prepareStatement(sql.toString());
-            pst.setString(1, address);
-            String wellformedAddress = address;
-            if (!address.equals("/")) {
-                wellformedAddress = address;
-            } else {
-                wellformedAddress = "";
-            }
-            if (depth < 0) {
-                pst.setString(2, wellformedAddress + "/%");
-            } else if (depth > 0) {
-                // use a regex to match all child addresses of a specific depth.
-                pst.setString(2, getRegexForTreeDepth(wellformedAddress, depth));
-            }
+            pst = con.prepare(sql.toString());
+            setSubtreeParameters(pst, address, depth);
             return pst;
 
         } catch (final SQLException e) {
@@ -781,31 +1004,127 @@ public class HSQLDatabase implements VslNodeDatabase {
     }
 
     /**
-     * Helper function to create the regex for requests of a certain tree depth.
+     * Appends the WHERE clause selecting a node and, if depth is not 0, its subtree. The subtree is
+     * selected as a range on the ordered address column, which the primary key index of the
+     * structure table can answer directly. Children deeper than a positive depth are removed
+     * afterwards, see {@link #removeDeeperChildren(TreeMap, String, int)}.
      *
+     * @param sql
+     *            The query to extend.
+     * @param depth
+     *            The depth of the requested tree.
+     */
+    private void appendSubtreeCondition(final StringBuilder sql, final int depth) {
+        sql.append(" WHERE ts.address=? ");
+        if (depth != 0) {
+            sql.append(" OR (ts.address >= ? AND ts.address < ?) ");
+        }
+    }
+
+    /**
+     * Sets the parameters of a condition created by {@link #appendSubtreeCondition}.
+     *
+     * @param pst
+     *            The prepared statement, whose first parameters belong to the condition.
      * @param address
      *            The address that is queried.
      * @param depth
      *            The depth of the requested tree.
-     * @return The regex that can be used to filter whether a address is matched by the request
-     *         depth.
+     * @throws SQLException
+     *             If a parameter can't be set.
      */
-    private String getRegexForTreeDepth(final String address, final int depth) {
-        String regex;
-        if (depth < 0) {
-            regex = "^" + address.replace("/", "\\/") + "(\\/[A-Za-z0-9]*)*$";
-        } else if (depth == 0) {
-            regex = "^" + address.replace("/", "\\/") + "\\/[A-Za-z0-9]*$";
-        } else {
-            regex = "^" + address.replace("/", "\\/") + "(\\/[A-Za-z0-9]*){0," + depth + "}$";
+    private void setSubtreeParameters(final PreparedStatement pst, final String address,
+            final int depth) throws SQLException {
+        setSubtreeParameters(pst, 0, address, depth);
+    }
+
+    /**
+     * Sets the parameters of a condition created by {@link #appendSubtreeCondition}, which follow
+     * the given number of other parameters.
+     *
+     * @param pst
+     *            The prepared statement.
+     * @param offset
+     *            The number of parameters preceding the condition.
+     * @param address
+     *            The address that is queried.
+     * @param depth
+     *            The depth of the requested tree.
+     * @throws SQLException
+     *             If a parameter can't be set.
+     */
+    private void setSubtreeParameters(final PreparedStatement pst, final int offset,
+            final String address, final int depth) throws SQLException {
+        pst.setString(offset + 1, address);
+        if (depth != 0) {
+            final String prefix = getSubtreePrefix(address);
+            pst.setString(offset + 2, prefix);
+            pst.setString(offset + 3, getSubtreeUpperBound(prefix));
+        }
+    }
+
+    /**
+     * Returns the prefix shared by all addresses in the subtree below the given address.
+     *
+     * @param address
+     *            The root address of the subtree.
+     * @return The address with a trailing slash.
+     */
+    private String getSubtreePrefix(final String address) {
+        if (address.endsWith("/")) {
+            return address;
+        }
+        return address + "/";
+    }
+
+    /**
+     * Returns the smallest string that is larger than every address starting with the given
+     * prefix. Since the prefix ends with '/', this is the prefix with its last character replaced
+     * by the next one ('0').
+     *
+     * @param prefix
+     *            The prefix of the subtree, see {@link #getSubtreePrefix(String)}.
+     * @return The exclusive upper bound of the address range of the subtree.
+     */
+    private String getSubtreeUpperBound(final String prefix) {
+        return prefix.substring(0, prefix.length() - 1) + (char) ('/' + 1);
+    }
+
+    /**
+     * Removes all nodes that are more than depth levels below the given address from the result
+     * of a subtree query.
+     *
+     * @param results
+     *            The result of the subtree query.
+     * @param address
+     *            The address that was queried.
+     * @param depth
+     *            The depth of the requested tree. Nothing is removed if it isn't positive.
+     */
+    private void removeDeeperChildren(final TreeMap<String, ?> results, final String address,
+            final int depth) {
+        if (depth <= 0) {
+            return;
+        }
+        final String prefix = getSubtreePrefix(address);
+        final Iterator<String> it = results.keySet().iterator();
+        while (it.hasNext()) {
+            final String child = it.next();
+            if (child.equals(address)) {
+                continue;
+            }
+            if (StringUtils.countMatches(child.substring(prefix.length()), "/") >= depth) {
+                it.remove();
+            }
         }
-        return regex;
     }
 
     /**
      * Internal method to create a prepared statement for retrieving a value from the database
      * without metainformations.
      *
+     * @param con
+     *            The connection to prepare the statement on.
      * @param address
      *            The address to retrieve
      * @param depth
@@ -815,8 +1134,8 @@ public class HSQLDatabase implements VslNodeDatabase {
      * @throws NodeNotExistingException
      *             Thrown if the query can't be created or fails
      */
-    private PreparedStatement getPreparedStatementValue(final String address, final int depth)
-            throws NodeNotExistingException {
+    private PreparedStatement getPreparedStatementValue(final PooledConnection con,
+            final String address, final int depth) throws NodeNotExistingException {
 
         PreparedStatement pst = null;
         StringBuilder sql;
@@ -824,50 +1143,16 @@ public class HSQLDatabase implements VslNodeDatabase {
         final VslStatisticsDatapoint dp = statisticsProvider
                 .getStatistics(this.getClass(), "normalGetRequestValueOnly").begin();
         try {
-            // create query
-            final StringBuilder data = new StringBuilder();
-
-            // select the newest value/timestamp
-            data.append("SELECT address, value FROM ");
-
-            data.append(tableData).append(" WHERE (address,timestamp) IN ")
-                    .append("(SELECT address, max(timestamp) FROM ").append(tableData)
-                    .append(" GROUP by address)");
-
             sql = new StringBuilder();
-            sql.append("SELECT ts.address, ts.reader, ts.writer, td.value");
-
-            sql.append(" FROM ").append(tableStructure);
-            sql.append(" ts ").append("FULL JOIN (").append(data.toString()).append(")");
-            sql.append(" td ON (td.address=ts.address)");
-
-            if (depth < 0) {
-                sql.append(" WHERE ts.address=? OR ts.address LIKE ? ");
-            } else if (depth == 0) {
-                sql.append(" WHERE ts.address=? ");
-            } else {
-                sql.append(" WHERE ts.address=? ");
-                sql.append(" OR REGEXP_MATCHES(ts.address, ?) ");
-            }
-
-            sql.append(" ORDER BY address asc");
+            sql.append("SELECT ts.address, ts.reader, ts.writer, tc.value");
+            sql.append(" FROM ").append(tableStructure).append(" ts LEFT JOIN ")
+                    .append(tableCurrent).append(" tc ON (tc.address=ts.address)");
+            appendSubtreeCondition(sql, depth);
+            sql.append(" ORDER BY ts.address asc");
 
             // prepare statement, add address
-            pst = con.prepareStatement(sql.toString());
-            pst.setString(1, address);
-            String wellformedAddress;
-            if (!address.equals("/")) {
-                wellformedAddress = address;
-            } else {
-                wellformedAddress = "";
-            }
-            if (depth < 0) {
-                pst.setString(2, wellformedAddress + "/%");
-            } else if (depth > 0) {
-                // use a regex to match all child addresses of a specific depth.
-                pst.setString(2, getRegexForTreeDepth(wellformedAddress, depth));
-            }
-
+            pst = con.prepare(sql.toString());
+            setSubtreeParameters(pst, address, depth);
             return pst;
 
         } catch (final SQLException e) {
@@ -1167,13 +1452,15 @@ public class HSQLDatabase implements VslNodeDatabase {
     /**
      * Initializes the knowledge Table: create Tables if they don't exist.
      *
+     * @param con
+     *            The connection to use.
      */
-    private void initKnowledgeTables() {
+    private void initKnowledgeTables(final Connection con) {
         StringBuilder sql = new StringBuilder();
 
         // wipe and (re-)create database tables.
         if (!configService.isDatabasePersistent()) {
-            wipe();
+            wipe(con);
         }
         final String memoryMode = configService.getDatabaseMemoryMode();
         // tables are only added when they don't already exist, checked at addTable()
@@ -1188,7 +1475,7 @@ public class HSQLDatabase implements VslNodeDatabase {
         sql.append("cacheParameters LONGVARCHAR,");
         sql.append("PRIMARY KEY (address))");
 
-        addTable(tableStructure, sql.toString());
+        addTable(con, tableStructure, sql.toString());
 
         sql = new StringBuilder();
         sql.append("CREATE ").append(memoryMode).append(" TABLE ").append(tableVersion)
@@ -1198,7 +1485,7 @@ public class HSQLDatabase implements VslNodeDatabase {
         sql.append("timestamp DECIMAL(64,5))");
         // sql.append("PRIMARY KEY (address, version))");
 
-        addTable(tableVersion, sql.toString());
+        addTable(con, tableVersion, sql.toString());
 
         // create the table that will hold the actual values stored at certain nodes.
         sql = new StringBuilder();
@@ -1209,7 +1496,39 @@ public class HSQLDatabase implements VslNodeDatabase {
         // sql.append("FOREIGN KEY (address) REFERENCES ");
         // sql.append(tableStructure).append("(address))");
 
-        addTable(tableData, sql.toString());
+        addTable(con, tableData, sql.toString());
+
+        // create the table that holds the newest value and version of each node.
+        sql = new StringBuilder();
+        sql.append("CREATE ").append(memoryMode).append(" TABLE ").append(tableCurrent)
+                .append(" (");
+        sql.append("address LONGVARCHAR,");
+        sql.append("value VARCHAR(" + configService.getDatabaseMaxValueLength() + "),");
+        sql.append("timestamp DECIMAL(64,5),");
+        sql.append("version BIGINT,");
+        sql.append("PRIMARY KEY (address))");
+
+        if (addTable(con, tableCurrent, sql.toString())) {
+            initCurrentTable(con);
+        }
+
+        // create the table that holds the elements of list nodes.
+        sql = new StringBuilder();
+        sql.append("CREATE ").append(memoryMode).append(" TABLE ").append(tableList)
+                .append(" (");
+        sql.append("address LONGVARCHAR,");
+        sql.append("element LONGVARCHAR,");
+        sql.append("sortkey BIGINT,");
+        sql.append("PRIMARY KEY (address, element))");
+
+        addTable(con, tableList, sql.toString());
+        addIndex(con, tableList, tableList + "_sortkey_idx", "address, sortkey");
+
+        // indexes used by the incremental compaction of the archive in HSQLDBmaintenance.
+        addIndex(con, tableData, tableData + "_address_idx", "address, timestamp");
+        addIndex(con, tableData, tableData + "_timestamp_idx", "timestamp");
+        addIndex(con, tableVersion, tableVersion + "_address_idx", "address, timestamp");
+        addIndex(con, tableVersion, tableVersion + "_timestamp_idx", "timestamp");
 
         // add rootnode if he doesn't exist already
         // try {
@@ -1239,6 +1558,51 @@ public class HSQLDatabase implements VslNodeDatabase {
         // }
     }
 
+    /**
+     * Fills the current table from the history stored in the data and version tables. This is
+     * only necessary once, when a persistent database created without the current table is opened.
+     *
+     * @param con
+     *            The connection to use.
+     */
+    private void initCurrentTable(final Connection con) {
+        // select the newest value/timestamp
+        final StringBuilder data = new StringBuilder();
+        data.append("SELECT address, value, timestamp FROM ").append(tableData)
+                .append(" WHERE (address,timestamp) IN ")
+                .append("(SELECT address, max(timestamp) FROM ").append(tableData)
+                .append(" GROUP by address)");
+
+        // select the version of the newest value
+        final StringBuilder version = new StringBuilder();
+        version.append("SELECT address, max(version) as version").append(" FROM ")
+                .append(tableVersion).append(" GROUP BY address");
+
+        final StringBuilder sql = new StringBuilder();
+        sql.append("INSERT INTO ").append(tableCurrent)
+                .append(" (address, value, timestamp, version)");
+        sql.append(" SELECT ts.address, td.value, td.timestamp, tv.version FROM ")
+                .append(tableStructure);
+        sql.append(" ts LEFT JOIN (").append(data.toString()).append(")");
+        sql.append(" td ON (td.address=ts.address) LEFT JOIN (").append(version.toString())
+                .append(")");
+        sql.append(" tv ON (tv.address=ts.address)");
+        sql.append(" WHERE td.address IS NOT NULL OR tv.address IS NOT NULL");
+
+        Statement st = null;
+        try {
+            startTransaction(con);
+            st = con.createStatement();
+            st.execute(sql.toString());
+            commitTransaction(con);
+        } catch (final SQLException e) {
+            LOGGER.error("Error initializing the current table: {}", e.getMessage());
+            rollbackTransaction(con);
+        } finally {
+            closeResource(st);
+        }
+    }
+
     /**
      * helper function to check the size of different database tables.
      *
@@ -1247,13 +1611,13 @@ public class HSQLDatabase implements VslNodeDatabase {
      */
     @SuppressWarnings("unused")
     private void logTableSize(final String table) {
-        PreparedStatement pst = null;
+        final PooledConnection con = pool.acquireReader();
         ResultSet rs = null;
 
         try {
             final StringBuilder sql = new StringBuilder();
             sql.append("SELECT COUNT(*) as total FROM ").append(table);
-            pst = con.prepareStatement(sql.toString());
+            final PreparedStatement pst = con.prepare(sql.toString());
             rs = pst.executeQuery();
 
             if (rs.next()) {
@@ -1264,8 +1628,8 @@ public class HSQLDatabase implements VslNodeDatabase {
         } catch (final SQLException e) {
             throw new RuntimeException(e);
         } finally {
-            closeResource(pst);
             closeResource(rs);
+            pool.release(con);
         }
     }
 
@@ -1334,44 +1698,62 @@ public class HSQLDatabase implements VslNodeDatabase {
 
     @Override
     public final void removeNode(final String address) {
+        final PooledConnection con = pool.acquireWriter();
         PreparedStatement pst = null;
 
         try {
-            startTransaction();
+            startTransaction(con.getConnection());
             StringBuilder sql = new StringBuilder();
             sql.append("DELETE FROM ").append(tableData).append(" ");
             sql.append("WHERE address=? ");
             sql.append("OR address LIKE ?");
-            pst = con.prepareStatement(sql.toString());
+            pst = con.prepare(sql.toString());
             pst.setString(1, address);
             pst.setString(2, address + "/%");
             pst.executeUpdate();
-            closeResource(pst);
 
             sql = new StringBuilder();
             sql.append("DELETE FROM ").append(tableVersion).append(" ");
             sql.append("WHERE address=? ");
             sql.append("OR address LIKE ?");
-            pst = con.prepareStatement(sql.toString());
+            pst = con.prepare(sql.toString());
+            pst.setString(1, address);
+            pst.setString(2, address + "/%");
+            pst.executeUpdate();
+
+            sql = new StringBuilder();
+            sql.append("DELETE FROM ").append(tableCurrent).append(" ");
+            sql.append("WHERE address=? ");
+            sql.append("OR address LIKE ?");
+            pst = con.prepare(sql.toString());
+            pst.setString(1, address);
+            pst.setString(2, address + "/%");
+            pst.executeUpdate();
+
+            sql = new StringBuilder();
+            sql.append("DELETE FROM ").append(tableList).append(" ");
+            sql.append("WHERE address=? ");
+            sql.append("OR address LIKE ?");
+            pst = con.prepare(sql.toString());
             pst.setString(1, address);
             pst.setString(2, address + "/%");
             pst.executeUpdate();
-            closeResource(pst);
 
             sql = new StringBuilder();
             sql.append("DELETE FROM ").append(tableStructure).append(" ");
             sql.append("WHERE address=? ");
             sql.append("OR address LIKE ?");
-            pst = con.prepareStatement(sql.toString());
+            pst = con.prepare(sql.toString());
             pst.setString(1, address);
             pst.setString(2, address + "/%");
             pst.executeUpdate();
+            structureHashes.removeNode(address);
 
         } catch (final SQLException e) {
             LOGGER.error("Error Deleting a node: {}", e.getMessage());
         } finally {
-            commitTransaction();
-            closeResource(pst);
+            commitTransaction(con.getConnection());
+            pool.release(con);
         }
 
     }
@@ -1394,42 +1776,47 @@ public class HSQLDatabase implements VslNodeDatabase {
         final VslStatisticsDatapoint dp = statisticsProvider
                 .getStatistics(this.getClass(), "Set" + Integer.toString(values.size()) + "Nodes")
                 .begin();
-        PreparedStatement pst = null;
+        try {
+            // returns after the values are committed, possibly together with concurrent writes.
+            groupCommit.write(values);
+        } finally {
+            dp.end();
+        }
+    }
 
+    /**
+     * Writes new values inside the transaction of a group commit. All writes share one
+     * connection, so timestamps are taken in the order of the commits.
+     *
+     * @param con
+     *            The write connection.
+     * @param values
+     *            Addresses and new values of the nodes to write.
+     * @throws SQLException
+     *             If the values couldn't be written.
+     */
+    private void writeValues(final PooledConnection con, final Map<String, String> values)
+            throws SQLException {
         final BigDecimal timeStamp = getExtendedTimestamp();
-        // LOGGER.debug("{},{}", address, parseExtendedTimestamp(timeStamp));
-        // LOGGER.debug("{},{}", address, timeStamp);
 
         final StringBuilder sql = new StringBuilder();
         sql.append("INSERT INTO ").append(tableData);
         sql.append(" (address, value, timestamp) VALUES ");
         sql.append("(?,?,?)");
 
-        try {
-            startTransaction();
-            pst = con.prepareStatement(sql.toString());
-
-            for (final Entry<String, String> entry : values.entrySet()) {
-                pst.setString(1, entry.getKey());
-                pst.setString(2, entry.getValue());
-                pst.setBigDecimal(3, timeStamp);
-                pst.addBatch();
-            }
-            pst.executeBatch();
-            // update version number and timestamp of this node and his parents (up to service
-            // level)
-            updateVersion(values.keySet(), timeStamp);
-            commitTransaction();
-            // updateArchiveSize(values.keySet());
-
-        } catch (final SQLException e) {
-            throw new RuntimeException(e);
-        } finally {
-            commitTransaction();
-            closeResource(pst);
-            lastTimestampSet = timeStamp;
-            dp.end();
+        final PreparedStatement pst = con.prepare(sql.toString());
+        for (final Entry<String, String> entry : values.entrySet()) {
+            pst.setString(1, entry.getKey());
+            pst.setString(2, entry.getValue());
+            pst.setBigDecimal(3, timeStamp);
+            pst.addBatch();
         }
+        pst.executeBatch();
+        updateCurrentValues(con, values, timeStamp);
+        // update version number and timestamp of this node and his parents (up to service
+        // level)
+        updateVersion(con, values.keySet(), timeStamp);
+        lastTimestampSet = timeStamp;
     }
 
     // /**
@@ -1456,18 +1843,52 @@ public class HSQLDatabase implements VslNodeDatabase {
     // }
 
     /**
-     * Adds new entries to the version table of the database with the new versionnumbers of the
-     * changed nodes and all their parents. If a node is a parent to more then one changed node,
-     * it's versionnumber will still only be incremented by 1. Timestamp of the new entries is set
-     * to the given Timestamp.
+     * Stores the new values of the changed nodes in the current table.
+     *
+     * @param con
+     *            The write connection.
+     * @param values
+     *            Addresses and new values of all nodes that changed.
+     * @param timeStamp
+     *            Timestamp to set.
+     * @throws SQLException
+     *             If the current table couldn't be updated.
+     */
+    private void updateCurrentValues(final PooledConnection con,
+            final Map<String, String> values, final BigDecimal timeStamp) throws SQLException {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("MERGE INTO ").append(tableCurrent).append(" tc USING (VALUES(?,?,?))")
+                .append(" AS vals(address, value, timestamp)").append(" ON tc.address=vals.address")
+                .append(" WHEN MATCHED THEN UPDATE SET ")
+                .append(" tc.value=vals.value, tc.timestamp=vals.timestamp")
+                .append(" WHEN NOT MATCHED THEN INSERT (address, value, timestamp) VALUES ")
+                .append(" vals.address, vals.value, vals.timestamp");
+
+        final PreparedStatement pst = con.prepare(sql.toString());
+        for (final Entry<String, String> entry : values.entrySet()) {
+            pst.setString(1, entry.getKey());
+            pst.setString(2, entry.getValue());
+            pst.setBigDecimal(3, timeStamp);
+            pst.addBatch();
+        }
+        pst.executeBatch();
+    }
+
+    /**
+     * Increments the versionnumbers of the changed nodes and all their parents in the current table
+     * and adds new entries with them to the version table of the database. If a node is a parent
+     * to more then one changed node, it's versionnumber will still only be incremented by 1.
+     * Timestamp of the new entries is set to the given Timestamp.
      *
+     * @param con
+     *            The write connection.
      * @param changedAddresses
      *            Addresses of all nodes that changed.
      * @param timeStamp
      *            Timestamp to set.
      */
-    private void updateVersion(final Collection<String> changedAddresses,
-            final BigDecimal timeStamp) {
+    private void updateVersion(final PooledConnection con,
+            final Collection<String> changedAddresses, final BigDecimal timeStamp) {
         final List<String> affectedNodes = new LinkedList<String>();
 
         // gather all affected nodes. Every node will be only counted once, even if he is the parent
@@ -1483,33 +1904,39 @@ public class HSQLDatabase implements VslNodeDatabase {
             }
         }
 
-        PreparedStatement pst = null;
-        final StringBuilder sql = new StringBuilder();
-        // BEWARE: "FROM ").append(tableStructure);" is only used since a non empty table must be
-        // specified in order for generic selects to work (can't use SELECT without FROM in hsqldb).
-        // Since the structure Table is never empty, this is used here.
-        // however, it is not really involved in the query.
-        sql.append("INSERT INTO ").append(tableVersion).append(" (address, version, timestamp) ")
-                .append(" SELECT ?, (SELECT IFNULL(max(version)+1,0) FROM ").append(tableVersion)
-                .append(" WHERE address=?), ? FROM ").append(tableStructure)
-                .append(" WHERE address=?");
+        // increment the version of every affected node in the current table. Only nodes that
+        // exist in the structure table get a version.
+        final StringBuilder sqlCurrent = new StringBuilder();
+        sqlCurrent.append("MERGE INTO ").append(tableCurrent)
+                .append(" tc USING (SELECT address FROM ").append(tableStructure)
+                .append(" WHERE address=?) AS ts").append(" ON tc.address=ts.address")
+                .append(" WHEN MATCHED THEN UPDATE SET tc.version=IFNULL(tc.version+1,0)")
+                .append(" WHEN NOT MATCHED THEN INSERT (address, version) VALUES ")
+                .append(" ts.address, 0");
+
+        // archive the new versions.
+        final StringBuilder sqlVersion = new StringBuilder();
+        sqlVersion.append("INSERT INTO ").append(tableVersion)
+                .append(" (address, version, timestamp) SELECT address, version, ? FROM ")
+                .append(tableCurrent).append(" WHERE address=? AND version IS NOT NULL");
 
         try {
-            pst = con.prepareStatement(sql.toString());
+            final PreparedStatement pstCurrent = con.prepare(sqlCurrent.toString());
+            final PreparedStatement pstVersion = con.prepare(sqlVersion.toString());
             for (final String address : affectedNodes) {
-                pst.setString(1, address);
-                pst.setString(2, address);
-                pst.setBigDecimal(3, timeStamp);
-                pst.setString(4, address);
-                pst.addBatch();
+                pstCurrent.setString(1, address);
+                pstCurrent.addBatch();
+
+                pstVersion.setBigDecimal(1, timeStamp);
+                pstVersion.setString(2, address);
+                pstVersion.addBatch();
             }
-            pst.executeBatch();
+            pstCurrent.executeBatch();
+            pstVersion.executeBatch();
 
         } catch (final SQLException e) {
             LOGGER.error("Error updating the Versiontable: {}", e.getMessage());
             throw new RuntimeException(e.getMessage());
-        } finally {
-            closeResource(pst);
         }
     }
 
@@ -1593,24 +2020,33 @@ public class HSQLDatabase implements VslNodeDatabase {
 
     /**
      * Drops all the tables from the database.
+     *
+     * @param con
+     *            The connection to use.
      */
-    private void wipe() {
+    private void wipe(final Connection con) {
         final StringBuilder sqlStructure = new StringBuilder();
         final StringBuilder sqlVersion = new StringBuilder();
         final StringBuilder sqlData = new StringBuilder();
+        final StringBuilder sqlCurrent = new StringBuilder();
+        final StringBuilder sqlList = new StringBuilder();
 
         sqlStructure.append("DROP TABLE IF EXISTS ").append(tableStructure);
         sqlVersion.append("DROP TABLE IF EXISTS ").append(tableVersion);
         sqlData.append("DROP TABLE IF EXISTS ").append(tableData);
+        sqlCurrent.append("DROP TABLE IF EXISTS ").append(tableCurrent);
+        sqlList.append("DROP TABLE IF EXISTS ").append(tableList);
 
         Statement st = null;
         try {
-            startTransaction();
+            startTransaction(con);
             st = con.createStatement();
+            st.execute(sqlList.toString());
+            st.execute(sqlCurrent.toString());
             st.execute(sqlData.toString());
             st.execute(sqlVersion.toString());
             st.execute(sqlStructure.toString());
-            commitTransaction();
+            commitTransaction(con);
         } catch (final SQLException e) {
             LOGGER.error("Error wiping the Database: {}", e.getMessage());
         } finally {
@@ -1621,25 +2057,38 @@ public class HSQLDatabase implements VslNodeDatabase {
     @Override
     public final void shutdown() {
         maintentanceTimer.cancel();
+        final PooledConnection con = pool.acquireWriter();
         Statement pst = null;
         try {
-            pst = con.createStatement();
+            pst = con.getConnection().createStatement();
             pst.execute("SHUTDOWN COMPACT");
-            con.commit();
+            con.getConnection().commit();
             pst.close();
-            con.close();
         } catch (final SQLException e) {
             closeResource(pst);
             LOGGER.debug(e.getMessage());
+        } finally {
+            pool.release(con);
+            pool.close();
         }
     }
 
     /**
      * Disables logging.
+     *
+     * @param con
+     *            The connection to use.
      */
-    private void setDatabaseFlags() {
+    private void setDatabaseFlags(final Connection con) {
         Statement st = null;
         try {
+            st = con.createStatement();
+            // let readers see the last committed state instead of waiting for locks held by the
+            // write connection.
+            st.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+            con.commit();
+            closeResource(st);
+
             st = con.createStatement();
             // if the size of the LOG file gets >10 MB, execute a checkpoint and delete the log
             // file.
@@ -1647,6 +2096,17 @@ public class HSQLDatabase implements VslNodeDatabase {
             con.commit();
             closeResource(st);
 
+            st = con.createStatement();
+            // either sync the log to disk on every commit, or flush it every 500 ms (the hsqldb
+            // default), which can lose the last writes on a crash.
+            if (configService.isDatabaseSyncCommit()) {
+                st.execute("SET FILES WRITE DELAY FALSE");
+            } else {
+                st.execute("SET FILES WRITE DELAY 500 MILLIS");
+            }
+            con.commit();
+            closeResource(st);
+
             st = con.createStatement();
             // if the amount of empty space in the .data file is >20% of total filesize when a
             // checkpoint happens, defrag and shrink it.
@@ -1661,8 +2121,11 @@ public class HSQLDatabase implements VslNodeDatabase {
 
     /**
      * Starts a transaction by disabling autocommit.
+     *
+     * @param con
+     *            The connection to start the transaction on.
      */
-    private void startTransaction() {
+    private void startTransaction(final Connection con) {
         try {
             con.setAutoCommit(false);
         } catch (final SQLException e) {
@@ -1672,21 +2135,27 @@ public class HSQLDatabase implements VslNodeDatabase {
 
     /**
      * Commits the current transaction and sets back to autocommit.
+     *
+     * @param con
+     *            The connection of the transaction.
      */
-    private void commitTransaction() {
+    private void commitTransaction(final Connection con) {
         try {
             con.commit();
             con.setAutoCommit(true);
         } catch (final SQLException e) {
             LOGGER.error("An error occured on commiting an transaction, rollback initiated", e);
-            rollbackTransaction();
+            rollbackTransaction(con);
         }
     }
 
     /**
      * Rollback to the last commit.
+     *
+     * @param con
+     *            The connection of the transaction.
      */
-    private void rollbackTransaction() {
+    private void rollbackTransaction(final Connection con) {
         try {
             con.rollback();
         } catch (final SQLException e) {
@@ -1702,8 +2171,7 @@ public class HSQLDatabase implements VslNodeDatabase {
 
     @Override
     public final void cacheVslNode(final String address, final VslNode node) {
-        PreparedStatement pstData = null;
-        PreparedStatement pstVersion = null;
+        final PooledConnection con = pool.acquireWriter();
 
         final StringBuilder sqlData = new StringBuilder();
         sqlData.append(" MERGE INTO ").append(tableData).append(" dt USING (VALUES(?,?,?))")
@@ -1721,9 +2189,21 @@ public class HSQLDatabase implements VslNodeDatabase {
                 .append(" WHEN NOT MATCHED THEN INSERT (address, version, timestamp) VALUES")
                 .append(" vals.address, vals.version, vals.timestamp");
 
+        final StringBuilder sqlCurrent = new StringBuilder();
+        sqlCurrent.append(" MERGE INTO ").append(tableCurrent)
+                .append(" tc USING (VALUES(?,?,?,?))")
+                .append(" AS vals(address, value, timestamp, version)")
+                .append(" ON tc.address=vals.address").append(" WHEN MATCHED THEN UPDATE SET ")
+                .append(" tc.value=vals.value, tc.timestamp=vals.timestamp,")
+                .append(" tc.version=vals.version")
+                .append(" WHEN NOT MATCHED THEN INSERT (address, value, timestamp, version)")
+                .append(" VALUES vals.address, vals.value, vals.timestamp, vals.version");
+
+        final List<String> written = new ArrayList<String>();
         try {
-            pstData = con.prepareStatement(sqlData.toString());
-            pstVersion = con.prepareStatement(sqlVersion.toString());
+            final PreparedStatement pstData = con.prepare(sqlData.toString());
+            final PreparedStatement pstVersion = con.prepare(sqlVersion.toString());
+            final PreparedStatement pstCurrent = con.prepare(sqlCurrent.toString());
 
             // rootNode
             if (!(node.getValue() == null || node.getVersion() == -1 || node.getTimestamp() == null
@@ -1738,6 +2218,13 @@ public class HSQLDatabase implements VslNodeDatabase {
                 pstVersion.setLong(2, node.getVersion());
                 pstVersion.setBigDecimal(3, time);
                 pstVersion.addBatch();
+
+                pstCurrent.setString(1, address);
+                pstCurrent.setString(2, node.getValue());
+                pstCurrent.setBigDecimal(3, time);
+                pstCurrent.setLong(4, node.getVersion());
+                pstCurrent.addBatch();
+                written.add(address);
             }
             // children
             for (final Entry<String, VslNode> entry : node.getAllChildren()) {
@@ -1758,52 +2245,174 @@ public class HSQLDatabase implements VslNodeDatabase {
                 pstVersion.setLong(2, entry.getValue().getVersion());
                 pstVersion.setBigDecimal(3, time);
                 pstVersion.addBatch();
+
+                pstCurrent.setString(1, address + "/" + entry.getKey());
+                pstCurrent.setString(2, entry.getValue().getValue());
+                pstCurrent.setBigDecimal(3, time);
+                pstCurrent.setLong(4, entry.getValue().getVersion());
+                pstCurrent.addBatch();
+                written.add(address + "/" + entry.getKey());
             }
-            startTransaction();
+            startTransaction(con.getConnection());
             pstData.executeBatch();
             pstVersion.executeBatch();
-            commitTransaction();
+            pstCurrent.executeBatch();
+            commitTransaction(con.getConnection());
+            if (maintenance != null) {
+                maintenance.addCachedAddresses(written);
+            }
 
         } catch (final SQLException e) {
             LOGGER.debug(e.getMessage());
             e.printStackTrace();
             throw new RuntimeException(e);
         } finally {
-            commitTransaction();
-            closeResource(pstData);
-            closeResource(pstVersion);
-
+            commitTransaction(con.getConnection());
+            pool.release(con);
         }
 
     }
 
     @Override
     public final void removeCachedNode(final String address) {
+        final PooledConnection con = pool.acquireWriter();
         PreparedStatement pst = null;
         try {
-            startTransaction();
+            startTransaction(con.getConnection());
             StringBuilder sql = new StringBuilder();
             sql.append("DELETE FROM ").append(tableData).append(" ");
             sql.append("WHERE address=?");
-            pst = con.prepareStatement(sql.toString());
+            pst = con.prepare(sql.toString());
             pst.setString(1, address);
             pst.executeUpdate();
-            closeResource(pst);
 
             sql = new StringBuilder();
             sql.append("DELETE FROM ").append(tableVersion).append(" ");
             sql.append("WHERE address=?");
-            pst = con.prepareStatement(sql.toString());
+            pst = con.prepare(sql.toString());
+            pst.setString(1, address);
+            pst.executeUpdate();
+
+            sql = new StringBuilder();
+            sql.append("DELETE FROM ").append(tableCurrent).append(" ");
+            sql.append("WHERE address=?");
+            pst = con.prepare(sql.toString());
             pst.setString(1, address);
             pst.executeUpdate();
-            closeResource(pst);
 
         } catch (final SQLException e) {
             LOGGER.error("Error Deleting a cached node: {}", e.getMessage());
         } finally {
-            commitTransaction();
-            closeResource(pst);
+            commitTransaction(con.getConnection());
+            pool.release(con);
+        }
+    }
+
+
+    @Override
+    public final LinkedHashMap<String, Long> getListElements(final String listAddress) {
+        final LinkedHashMap<String, Long> elements = new LinkedHashMap<String, Long>();
+        final StringBuilder sql = new StringBuilder();
+        sql.append("SELECT element, sortkey FROM ").append(tableList);
+        sql.append(" WHERE address=? ORDER BY sortkey asc");
+
+        final PooledConnection con = pool.acquireReader();
+        ResultSet rs = null;
+        try {
+            final PreparedStatement pst = con.prepare(sql.toString());
+            pst.setString(1, listAddress);
+            rs = pst.executeQuery();
+            while (rs.next()) {
+                elements.put(rs.getString("element"), rs.getLong("sortkey"));
+            }
+        } catch (final SQLException e) {
+            LOGGER.error("Error retrieving the elements of list {}: {}", listAddress,
+                    e.getMessage());
+        } finally {
+            closeResource(rs);
+            pool.release(con);
         }
+        return elements;
     }
 
+    @Override
+    public final void putListElements(final String listAddress, final Map<String, Long> elements) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("MERGE INTO ").append(tableList).append(" tl USING (VALUES(?,?,?))");
+        sql.append(" AS vals(address, element, sortkey)");
+        sql.append(" ON tl.address=vals.address AND tl.element=vals.element");
+        sql.append(" WHEN MATCHED THEN UPDATE SET tl.sortkey=vals.sortkey");
+        sql.append(" WHEN NOT MATCHED THEN INSERT (address, element, sortkey) VALUES");
+        sql.append(" vals.address, vals.element, vals.sortkey");
+
+        final PooledConnection con = pool.acquireWriter();
+        try {
+            startTransaction(con.getConnection());
+            final PreparedStatement pst = con.prepare(sql.toString());
+            for (final Entry<String, Long> element : elements.entrySet()) {
+                pst.setString(1, listAddress);
+                pst.setString(2, element.getKey());
+                pst.setLong(3, element.getValue());
+                pst.addBatch();
+            }
+            pst.executeBatch();
+            commitListChange(con, listAddress);
+        } catch (final SQLException e) {
+            rollbackTransaction(con.getConnection());
+            LOGGER.error("Error storing elements of list {}: {}", listAddress, e.getMessage());
+            throw new RuntimeException(e);
+        } catch (final RuntimeException e) {
+            rollbackTransaction(con.getConnection());
+            throw e;
+        } finally {
+            pool.release(con);
+        }
+    }
+
+    @Override
+    public final void removeListElement(final String listAddress, final String element) {
+        final StringBuilder sql = new StringBuilder();
+        sql.append("DELETE FROM ").append(tableList).append(" WHERE address=? AND element=?");
+
+        final PooledConnection con = pool.acquireWriter();
+        try {
+            startTransaction(con.getConnection());
+            final PreparedStatement pst = con.prepare(sql.toString());
+            pst.setString(1, listAddress);
+            pst.setString(2, element);
+            pst.executeUpdate();
+            commitListChange(con, listAddress);
+        } catch (final SQLException e) {
+            rollbackTransaction(con.getConnection());
+            LOGGER.error("Error removing element {} of list {}: {}", element, listAddress,
+                    e.getMessage());
+            throw new RuntimeException(e);
+        } catch (final RuntimeException e) {
+            rollbackTransaction(con.getConnection());
+            throw e;
+        } finally {
+            pool.release(con);
+        }
+    }
+
+    /**
+     * Increments the version of the elements node of a changed list and its parents and commits
+     * the transaction the elements were changed in. Unlike {@link #commitTransaction(Connection)}
+     * a failed commit is thrown, so the caller can roll back and report it.
+     *
+     * @param con
+     *            The write connection, the transaction is already started.
+     * @param listAddress
+     *            The address of the list node.
+     * @throws SQLException
+     *             If the transaction couldn't be committed.
+     */
+    private void commitListChange(final PooledConnection con, final String listAddress)
+            throws SQLException {
+        final BigDecimal timeStamp = getExtendedTimestamp();
+        updateVersion(con, Collections.singletonList(listAddress + "/elements"), timeStamp);
+        con.getConnection().commit();
+        con.getConnection().setAutoCommit(true);
+        lastTimestampSet = timeStamp;
+    }
 }
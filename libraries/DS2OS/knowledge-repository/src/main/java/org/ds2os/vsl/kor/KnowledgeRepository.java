@@ -10,12 +10,16 @@ import org.ds2os.vsl.core.statistics.VslStatisticsProvider;
 import org.ds2os.vsl.core.utils.AddressParameters;
 import org.ds2os.vsl.core.utils.AddressParser;
 import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.ds2os.vsl.core.utils.VslAddressParameters.NodeInformationScope;
 import org.ds2os.vsl.exception.*;
 import org.ds2os.vsl.kor.config.InterMediateConfig;
 import org.ds2os.vsl.kor.dataStructures.InternalNode;
 import org.ds2os.vsl.kor.dataStructures.MetaNode;
+import org.ds2os.vsl.kor.dataStructures.StructureHashTree;
 import org.ds2os.vsl.kor.lists.ListAddHandler;
 import org.ds2os.vsl.kor.lists.ListDelHandler;
+import org.ds2os.vsl.kor.lists.ListElements;
+import org.ds2os.vsl.kor.lists.ListElementsHandler;
 import org.ds2os.vsl.kor.lists.ListRootHandler;
 import org.ds2os.vsl.kor.locking.Locker;
 import org.ds2os.vsl.kor.locking.VslLocker;
@@ -179,6 +183,8 @@ public class KnowledgeRepository extends AbstractVslModule implements VslKnowled
         if (newNodeDatabase == null) {
             if ("mongodb".equals(configService.getDatabaseType())) {
                 myNodeDatabase = new MongodbDatabase(configService);
+            } else if ("memory".equals(configService.getDatabaseType())) {
+                myNodeDatabase = new MemoryDatabase(configService);
             } else {
                 myNodeDatabase = new HSQLDatabase(configService, statisticsProvider);
             }
@@ -371,39 +377,12 @@ public class KnowledgeRepository extends AbstractVslModule implements VslKnowled
     public final void applyKORUpdate(final VslKORUpdate update) {
         LOGGER.debug("applying update for {}, I am {}", update.getAgentName(), localID);
 
-        // add the new nodes
+        // add the new nodes, only descending into the branches whose structure differs.
         for (final Entry<String, VslStructureNode> node : update.getAddedNodes().entrySet()) {
             if (node.getKey().startsWith("/" + localID + "/")) {
                 continue;
             }
-            // first we need to make sure they don't exist already, and if so delete them (childs
-            // may
-            // have changed, e.g. a list element with the same address but another type.)
-            removeNodeWithoutException(node.getKey());
-
-            try {
-                myNodeTree.addNode(node.getKey(), node.getValue().getTypes(),
-                        node.getValue().getReaderIds(), node.getValue().getWriterIds(),
-                        node.getValue().getRestrictions(), node.getValue().getCacheParameters(),
-                        node.getValue().getWriterIds().get(0));
-                LOGGER.debug("added node: {}", node.getKey());
-                for (final Entry<String, VslStructureNode> entry : node.getValue()
-                        .getAllChildren()) {
-                    myNodeTree.addNode(node.getKey() + "/" + entry.getKey(),
-                            entry.getValue().getTypes(), entry.getValue().getReaderIds(),
-                            entry.getValue().getWriterIds(), entry.getValue().getRestrictions(),
-                            node.getValue().getCacheParameters(),
-                            entry.getValue().getWriterIds().get(0));
-                    LOGGER.debug("added node: {}", node.getKey() + "/" + entry.getKey());
-
-                }
-                // update the VslTypeSearchProvider
-                updateTypeSearchProvider(node.getKey(), false);
-            } catch (final Exception e) {
-                LOGGER.debug("update failed to add a node: {}, error: {}", node.getKey(),
-                        e.getMessage());
-                removeNodeWithoutException(node.getKey());
-            }
+            reconcileSubtree(node.getKey(), node.getValue());
         }
 
         // remove all nodes that were flagged for removal
@@ -418,6 +397,264 @@ public class KnowledgeRepository extends AbstractVslModule implements VslKnowled
                 update.getAgentName(), getCurrentKORHashOf("/" + update.getAgentName()));
     }
 
+    /**
+     * Brings the local structure of the given subtree in line with the given structure received
+     * from a remote KA. Branches whose structure hash already matches the local one are only
+     * checked for changed access rights and restrictions, so only the differing branches are
+     * replaced.
+     *
+     * @param address
+     *            The root address of the subtree.
+     * @param node
+     *            The received structure of the subtree.
+     */
+    private void reconcileSubtree(final String address, final VslStructureNode node) {
+        if (getHashOfStructure(address, node).equals(
+                myNodeDatabase.getHashOfSubtree(address, Collections.<String>emptyList()))) {
+            replaceChangedNodes(address, node);
+            return;
+        }
+        if (node.isLeaf() || hasChanged(getLocalMetaData(address), node, true)) {
+            replaceSubtree(address, node);
+            return;
+        }
+        // the node itself is unchanged, so only the children differ.
+        final Set<String> children = new HashSet<String>();
+        for (final Entry<String, VslStructureNode> child : node.getDirectChildren()) {
+            children.add(child.getKey());
+            reconcileSubtree(address + "/" + child.getKey(), child.getValue());
+        }
+        for (final String child : getDirectChildNames(address)) {
+            if (!children.contains(child)) {
+                removeNodeWithoutException(address + "/" + child);
+            }
+        }
+    }
+
+    /**
+     * Replaces the nodes of a subtree whose structure hash matches the received one, but whose
+     * readers, writers, restrictions or cache parameters differ, since the hash only covers
+     * addresses and types. Changed nodes are replaced together with their subtree.
+     *
+     * @param address
+     *            The root address of the subtree.
+     * @param node
+     *            The received structure of the subtree.
+     */
+    private void replaceChangedNodes(final String address, final VslStructureNode node) {
+        final TreeMap<String, MetaNode> local;
+        try {
+            local = myNodeDatabase.getNodeMetaData(address, true);
+        } catch (final NodeNotExistingException e) {
+            replaceSubtree(address, node);
+            return;
+        }
+        if (hasChanged(local.get(address), node, false)) {
+            replaceSubtree(address, node);
+            return;
+        }
+        final List<String> replaced = new ArrayList<String>();
+        for (final Entry<String, VslStructureNode> child : node.getAllChildren()) {
+            final String childAddress = address + "/" + child.getKey();
+            if (!isBelowAny(childAddress, replaced)
+                    && hasChanged(local.get(childAddress), child.getValue(), false)) {
+                replaceSubtree(childAddress, child.getValue());
+                replaced.add(childAddress);
+            }
+        }
+        if (replaced.isEmpty()) {
+            LOGGER.debug("structure of {} is already up to date", address);
+        }
+    }
+
+    /**
+     * Checks if an address is below one of the given addresses.
+     *
+     * @param address
+     *            The address to check.
+     * @param parents
+     *            The possible parent addresses.
+     * @return True if the address is below one of the parents.
+     */
+    private boolean isBelowAny(final String address, final List<String> parents) {
+        for (final String parent : parents) {
+            if (address.startsWith(parent + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the local subtree at the given address with the given structure.
+     *
+     * @param address
+     *            The root address of the subtree.
+     * @param node
+     *            The received structure of the subtree.
+     */
+    private void replaceSubtree(final String address, final VslStructureNode node) {
+        // first we need to make sure they don't exist already, and if so delete them (childs may
+        // have changed, e.g. a list element with the same address but another type.)
+        removeNodeWithoutException(address);
+
+        try {
+            myNodeTree.addNode(address, node.getTypes(), node.getReaderIds(), node.getWriterIds(),
+                    node.getRestrictions(), node.getCacheParameters(), node.getWriterIds().get(0));
+            LOGGER.debug("added node: {}", address);
+            for (final Entry<String, VslStructureNode> entry : node.getAllChildren()) {
+                myNodeTree.addNode(address + "/" + entry.getKey(), entry.getValue().getTypes(),
+                        entry.getValue().getReaderIds(), entry.getValue().getWriterIds(),
+                        entry.getValue().getRestrictions(), entry.getValue().getCacheParameters(),
+                        entry.getValue().getWriterIds().get(0));
+                LOGGER.debug("added node: {}", address + "/" + entry.getKey());
+
+            }
+            // update the VslTypeSearchProvider
+            updateTypeSearchProvider(address, false);
+        } catch (final Exception e) {
+            LOGGER.debug("update failed to add a node: {}, error: {}", address, e.getMessage());
+            removeNodeWithoutException(address);
+        }
+    }
+
+    /**
+     * Calculates the structure hash of the given subtree like
+     * {@link VslNodeDatabase#getHashOfSubtree(String, List)} does for the local nodes.
+     *
+     * @param address
+     *            The root address of the subtree.
+     * @param node
+     *            The structure of the subtree.
+     * @return The hash.
+     */
+    private String getHashOfStructure(final String address, final VslStructureNode node) {
+        long hash = StructureHashTree.hashOfNode(address, getTypeString(node.getTypes()));
+        for (final Entry<String, VslStructureNode> entry : node.getAllChildren()) {
+            hash += StructureHashTree.hashOfNode(address + "/" + entry.getKey(),
+                    getTypeString(entry.getValue().getTypes()));
+        }
+        return StructureHashTree.hashToString(hash);
+    }
+
+    /**
+     * Returns the given types like they are stored in the {@link VslNodeDatabase}.
+     *
+     * @param types
+     *            The types, may be null.
+     * @return The well formed types, separated by {@link VslNodeDatabase#LIST_SEPARATOR}.
+     */
+    private String getTypeString(final List<String> types) {
+        if (types == null) {
+            return "";
+        }
+        final StringBuilder typeString = new StringBuilder();
+        for (final String type : types) {
+            if (typeString.length() > 0) {
+                typeString.append(VslNodeDatabase.LIST_SEPARATOR);
+            }
+            typeString.append(AddressParser.makeWellFormedAddress(type));
+        }
+        return typeString.toString();
+    }
+
+    /**
+     * Returns the meta data of the local node at the given address.
+     *
+     * @param address
+     *            The address of the node.
+     * @return The meta data, null if the node doesn't exist.
+     */
+    private MetaNode getLocalMetaData(final String address) {
+        try {
+            return myNodeDatabase.getNodeMetaData(address, false).get(address);
+        } catch (final NodeNotExistingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks if a local node differs from the received structure of the node. The order of the
+     * reader and writer IDs is ignored, as the creator and system IDs are added to them when a
+     * node is stored.
+     *
+     * @param local
+     *            The meta data of the local node, may be null.
+     * @param received
+     *            The received structure of the node.
+     * @param compareTypes
+     *            True if the types should be compared as well.
+     * @return True if the local node doesn't exist or differs.
+     */
+    private boolean hasChanged(final MetaNode local, final VslStructureNode received,
+            final boolean compareTypes) {
+        if (local == null) {
+            return true;
+        }
+        if (compareTypes
+                && !getTypeString(local.getType()).equals(getTypeString(received.getTypes()))) {
+            return true;
+        }
+        return !sameIds(local.getReaderIDs(), received.getReaderIds())
+                || !sameIds(local.getWriterIDs(), received.getWriterIds())
+                || !nullToEmpty(local.getRestriction())
+                        .equals(nullToEmpty(received.getRestrictions()))
+                || !nullToEmpty(local.getCacheParameters())
+                        .equals(nullToEmpty(received.getCacheParameters()));
+    }
+
+    /**
+     * Compares two lists of access IDs, ignoring their order.
+     *
+     * @param first
+     *            The first IDs, may be null.
+     * @param second
+     *            The second IDs, may be null.
+     * @return True if both contain the same IDs.
+     */
+    private boolean sameIds(final List<String> first, final List<String> second) {
+        final Set<String> firstIds = first == null ? Collections.<String>emptySet()
+                : new HashSet<String>(first);
+        final Set<String> secondIds = second == null ? Collections.<String>emptySet()
+                : new HashSet<String>(second);
+        return firstIds.equals(secondIds);
+    }
+
+    /**
+     * Returns the given String, or an empty String if it is null.
+     *
+     * @param string
+     *            The String, may be null.
+     * @return The String, never null.
+     */
+    private String nullToEmpty(final String string) {
+        return string == null ? "" : string;
+    }
+
+    /**
+     * Returns the names of the local direct children of the given node.
+     *
+     * @param address
+     *            The address of the node.
+     * @return The names of the children, empty if the node doesn't exist.
+     */
+    private Set<String> getDirectChildNames(final String address) {
+        final Set<String> children = new HashSet<String>();
+        try {
+            for (final String child : myNodeDatabase.getNodeRecord(address,
+                    new AddressParameters().withDepth(1)
+                            .withNodeInformationScope(NodeInformationScope.VALUE))
+                    .keySet()) {
+                if (!child.equals(address)) {
+                    children.add(child.substring(address.length() + 1));
+                }
+            }
+        } catch (final NodeNotExistingException e) {
+            LOGGER.debug("No children of {} found: {}", address, e.getMessage());
+        }
+        return children;
+    }
+
     @Override
     public final void commitSubtree(final String address, final VslIdentity identity)
             throws VslException {
@@ -502,6 +739,13 @@ public class KnowledgeRepository extends AbstractVslModule implements VslKnowled
         return originalQuery;
     }
 
+    @Override
+    public final Map<String, List<VslNode>> getHistory(final String address,
+            final VslAddressParameters params, final VslIdentity identity) throws VslException {
+        return myNodeTree.getHistory(AddressParser.makeWellFormedAddress(address), params,
+                identity);
+    }
+
     @Override
     public final String getCurrentKORHash() {
         return structureLog.getCurrentLogHash();
@@ -647,8 +891,11 @@ public class KnowledgeRepository extends AbstractVslModule implements VslKnowled
                 return accessIDs;
             }
         };
+        // all handlers of the list share the same elements.
+        final ListElements elements = new ListElements(address, myNodeDatabase);
         try {
-            registerVirtualNode(address, new ListRootHandler(address, this, nodeFactory), id);
+            registerVirtualNode(address, new ListRootHandler(address, this, elements, nodeFactory),
+                    id);
         } catch (final NodeAlreadyVirtualException e) {
             LOGGER.error("Tried to register a Listnode as virtual that was already registered: {}",
                     address);
@@ -656,8 +903,8 @@ public class KnowledgeRepository extends AbstractVslModule implements VslKnowled
             LOGGER.error("Exception on registring ListRootHandler:", e);
         }
         try {
-            registerVirtualNode(address + "/add", new ListAddHandler(address, this, creatorID,
-                    restrictions, accessIDs, nodeFactory), id);
+            registerVirtualNode(address + "/add", new ListAddHandler(address, this, elements,
+                    creatorID, restrictions, accessIDs, nodeFactory), id);
         } catch (final NodeAlreadyVirtualException e) {
             LOGGER.error("Tried to register a Listnode as virtual that was already registered: {}",
                     address);
@@ -665,14 +912,23 @@ public class KnowledgeRepository extends AbstractVslModule implements VslKnowled
             LOGGER.error("Exception on registring ListAddHandler:", e);
         }
         try {
-            registerVirtualNode(address + "/del",
-                    new ListDelHandler(address, this, creatorID, restrictions, nodeFactory), id);
+            registerVirtualNode(address + "/del", new ListDelHandler(address, this, elements,
+                    creatorID, restrictions, nodeFactory), id);
         } catch (final NodeAlreadyVirtualException e) {
             LOGGER.error("Tried to register a Listnode as virtual that was already registered: {}",
                     address);
         } catch (final VslException e) {
             LOGGER.error("Exception on registring ListDelHandler:", e);
         }
+        try {
+            registerVirtualNode(address + "/elements",
+                    new ListElementsHandler(address, this, elements, nodeFactory), id);
+        } catch (final NodeAlreadyVirtualException e) {
+            LOGGER.error("Tried to register a Listnode as virtual that was already registered: {}",
+                    address);
+        } catch (final VslException e) {
+            LOGGER.error("Exception on registring ListElementsHandler:", e);
+        }
 
     }
 
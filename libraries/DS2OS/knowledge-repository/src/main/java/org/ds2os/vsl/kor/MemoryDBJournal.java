@@ -0,0 +1,817 @@
+package org.ds2os.vsl.kor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.ds2os.vsl.kor.dataStructures.NodeRevision;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the {@link MemoryDatabase} in local files. Every modification is appended to a
+ * journal. On startup the last snapshot is loaded and the journal is replayed, afterwards a new
+ * snapshot of the whole database is written and the journal starts empty again. The same happens
+ * whenever the journal grew larger than the snapshot, see {@link #needsCompaction()}. Snapshots
+ * are written to a temporary file and renamed, and every snapshot names the journal that belongs
+ * to it, so a crash at any time leaves a consistent snapshot/journal pair behind.
+ */
+public class MemoryDBJournal {
+
+    /**
+     * Get the logger instance for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryDBJournal.class);
+
+    /**
+     * The modifications of the database that are persisted.
+     */
+    public interface Operations {
+
+        /**
+         * Adds a node.
+         *
+         * @param address
+         *            The address of the node.
+         * @param types
+         *            The types of the node.
+         * @param readerIds
+         *            The allowed readers of the node.
+         * @param writerIds
+         *            The allowed writers of the node.
+         * @param restriction
+         *            The restriction of the value of the node.
+         * @param cacheParameters
+         *            The cache parameters of the node.
+         * @throws IOException
+         *             If the operation couldn't be persisted.
+         */
+        void addNode(String address, List<String> types, List<String> readerIds,
+                List<String> writerIds, String restriction, String cacheParameters)
+                throws IOException;
+
+        /**
+         * Removes a node with its subtree and list elements.
+         *
+         * @param address
+         *            The address of the node.
+         * @throws IOException
+         *             If the operation couldn't be persisted.
+         */
+        void removeNode(String address) throws IOException;
+
+        /**
+         * Sets values of nodes in a single write.
+         *
+         * @param tick
+         *            The tick of the write.
+         * @param values
+         *            Addresses and new values of the nodes.
+         * @throws IOException
+         *             If the operation couldn't be persisted.
+         */
+        void setValues(long tick, Map<String, String> values) throws IOException;
+
+        /**
+         * Replaces the stored values and versions of a node.
+         *
+         * @param address
+         *            The address of the node.
+         * @param values
+         *            The newest value revision of the node, null if it has no value.
+         * @param versions
+         *            The newest version revision of the node, null if it has no version.
+         * @throws IOException
+         *             If the operation couldn't be persisted.
+         */
+        void restoreNode(String address, NodeRevision values, NodeRevision versions)
+                throws IOException;
+
+        /**
+         * Stores elements of a list node.
+         *
+         * @param listAddress
+         *            The address of the list node.
+         * @param elements
+         *            The names of the elements mapped to their sort keys.
+         * @throws IOException
+         *             If the operation couldn't be persisted.
+         */
+        void putListElements(String listAddress, Map<String, Long> elements) throws IOException;
+
+        /**
+         * Removes an element of a list node.
+         *
+         * @param listAddress
+         *            The address of the list node.
+         * @param element
+         *            The name of the element.
+         * @throws IOException
+         *             If the operation couldn't be persisted.
+         */
+        void removeListElement(String listAddress, String element) throws IOException;
+
+        /**
+         * Increments the version of a node and its parents without changing its value.
+         *
+         * @param tick
+         *            The tick of the write.
+         * @param address
+         *            The address of the node.
+         * @throws IOException
+         *             If the operation couldn't be persisted.
+         */
+        void incrementVersions(long tick, String address) throws IOException;
+    }
+
+    /**
+     * Writes the content of the database as snapshot.
+     */
+    public interface SnapshotSource {
+
+        /**
+         * Writes the content of the database to the given operations.
+         *
+         * @param out
+         *            The operations recreating the content.
+         * @throws IOException
+         *             If the content couldn't be written.
+         */
+        void writeTo(Operations out) throws IOException;
+    }
+
+    /**
+     * Identifies the files of the journal.
+     */
+    private static final int MAGIC = 0x4b4f524a;
+
+    /**
+     * Record type of {@link Operations#addNode}.
+     */
+    private static final int ADD_NODE = 1;
+
+    /**
+     * Record type of {@link Operations#removeNode}.
+     */
+    private static final int REMOVE_NODE = 2;
+
+    /**
+     * Record type of {@link Operations#setValues}.
+     */
+    private static final int SET_VALUES = 3;
+
+    /**
+     * Record type of {@link Operations#restoreNode}.
+     */
+    private static final int RESTORE_NODE = 4;
+
+    /**
+     * Record type of {@link Operations#putListElements}.
+     */
+    private static final int PUT_LIST_ELEMENTS = 5;
+
+    /**
+     * Record type of {@link Operations#removeListElement}.
+     */
+    private static final int REMOVE_LIST_ELEMENT = 6;
+
+    /**
+     * Record type of {@link Operations#incrementVersions}.
+     */
+    private static final int INCREMENT_VERSIONS = 7;
+
+    /**
+     * Marks the end of a complete snapshot.
+     */
+    private static final int END = 0x7f;
+
+    /**
+     * Charset of the stored strings.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The journal size in bytes up to which it is never compacted, so small databases aren't
+     * rewritten on every few modifications.
+     */
+    private static final long MIN_COMPACTION_SIZE = 4L * 1024 * 1024;
+
+    /**
+     * The path all files of the journal start with.
+     */
+    private final String path;
+
+    /**
+     * True if every record is synced to disk before the modification returns.
+     */
+    private final boolean sync;
+
+    /**
+     * The generation of the current snapshot, which is part of the name of its journal.
+     */
+    private long generation;
+
+    /**
+     * The size of the current snapshot in bytes.
+     */
+    private long snapshotSize;
+
+    /**
+     * The stream of the open journal file, null if the journal isn't open.
+     */
+    private FileOutputStream journalFile;
+
+    /**
+     * Writes records to {@link #journalFile}.
+     */
+    private RecordWriter journal;
+
+    /**
+     * Constructor.
+     *
+     * @param path
+     *            The path all files of the journal start with.
+     * @param sync
+     *            True if every record should be synced to disk before the modification returns,
+     *            otherwise records are only handed to the operating system.
+     */
+    public MemoryDBJournal(final String path, final boolean sync) {
+        this.path = path;
+        this.sync = sync;
+    }
+
+    /**
+     * Returns the snapshot file.
+     *
+     * @return The snapshot file.
+     */
+    private File getSnapshotFile() {
+        return new File(path + ".snapshot");
+    }
+
+    /**
+     * Returns the journal file of the given generation.
+     *
+     * @param journalGeneration
+     *            The generation.
+     * @return The journal file.
+     */
+    private File getJournalFile(final long journalGeneration) {
+        return new File(path + ".journal." + journalGeneration);
+    }
+
+    /**
+     * Loads the last snapshot and replays the journal written since.
+     *
+     * @param target
+     *            The operations recreating the persisted content.
+     * @throws IOException
+     *             If the snapshot can't be read.
+     */
+    public final void load(final Operations target) throws IOException {
+        generation = 0;
+        final File snapshot = getSnapshotFile();
+        snapshotSize = snapshot.length();
+        if (snapshot.exists()) {
+            final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(snapshot)));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(snapshot + " is no snapshot of the KOR");
+                }
+                generation = in.readLong();
+                while (readRecord(in, target)) {
+                    continue;
+                }
+            } finally {
+                in.close();
+            }
+        }
+        final File journalOfSnapshot = getJournalFile(generation);
+        if (!journalOfSnapshot.exists()) {
+            return;
+        }
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(journalOfSnapshot)));
+        int records = 0;
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(journalOfSnapshot + " is no journal of the KOR");
+            }
+            while (readRecord(in, target)) {
+                records++;
+            }
+        } catch (final EOFException e) {
+            // the last record was only partially written before the agent stopped.
+            LOGGER.warn("Ignoring the incomplete last record of {}", journalOfSnapshot);
+        } finally {
+            in.close();
+        }
+        LOGGER.debug("Replayed {} records of {}", records, journalOfSnapshot);
+    }
+
+    /**
+     * Writes a new snapshot and starts a new, empty journal. The journal of the previous snapshot
+     * is deleted.
+     *
+     * @param source
+     *            Writes the content of the database.
+     * @throws IOException
+     *             If the snapshot couldn't be written. The previous snapshot and journal are kept
+     *             then.
+     */
+    public final void compact(final SnapshotSource source) throws IOException {
+        close();
+        final File snapshot = getSnapshotFile();
+        final File parent = snapshot.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Couldn't create the directory " + parent);
+        }
+        final File tmp = new File(snapshot.getPath() + ".tmp");
+        final FileOutputStream file = new FileOutputStream(tmp);
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            out.writeInt(MAGIC);
+            out.writeLong(generation + 1);
+            source.writeTo(new RecordWriter(out));
+            out.writeByte(END);
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+        snapshotSize = tmp.length();
+        Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        final File oldJournal = getJournalFile(generation);
+        if (oldJournal.exists() && !oldJournal.delete()) {
+            LOGGER.warn("Couldn't delete the old journal {}", oldJournal);
+        }
+        generation++;
+
+        journalFile = new FileOutputStream(getJournalFile(generation));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(journalFile));
+        out.writeInt(MAGIC);
+        journal = new RecordWriter(out);
+        finishRecord();
+    }
+
+    /**
+     * Checks if the journal is open, which it is after the first successful
+     * {@link #compact(SnapshotSource)} until it is closed.
+     *
+     * @return True if modifications can be appended.
+     */
+    public final boolean isOpen() {
+        return journal != null;
+    }
+
+    /**
+     * Checks if the journal should be compacted. That is the case once it is larger than the
+     * snapshot (and larger than {@link #MIN_COMPACTION_SIZE}), so writing snapshots takes at most
+     * as long as writing the journal did and loading the database reads at most twice its size.
+     *
+     * @return True if the journal should be compacted.
+     */
+    public final boolean needsCompaction() {
+        if (journal == null) {
+            return false;
+        }
+        // size() saturates at Integer.MAX_VALUE, which is larger than the minimum anyway.
+        final long journalSize = journal.out.size();
+        return journalSize > MIN_COMPACTION_SIZE && journalSize > snapshotSize;
+    }
+
+    /**
+     * Closes the journal. Modifications can't be persisted until the next
+     * {@link #compact(SnapshotSource)}.
+     *
+     * @throws IOException
+     *             If the journal couldn't be closed.
+     */
+    public final void close() throws IOException {
+        if (journalFile != null) {
+            try {
+                journal.out.flush();
+            } finally {
+                journalFile.close();
+                journalFile = null;
+                journal = null;
+            }
+        }
+    }
+
+    /**
+     * Makes the last record durable as configured.
+     *
+     * @throws IOException
+     *             If the record couldn't be written.
+     */
+    private void finishRecord() throws IOException {
+        journal.out.flush();
+        if (sync) {
+            journalFile.getFD().sync();
+        }
+    }
+
+    /**
+     * Returns the open journal.
+     *
+     * @return The writer of the journal.
+     * @throws IOException
+     *             If the journal isn't open.
+     */
+    private RecordWriter getJournal() throws IOException {
+        if (journal == null) {
+            throw new IOException("The journal of " + path + " is not open");
+        }
+        return journal;
+    }
+
+    /**
+     * Appends an added node to the journal.
+     *
+     * @param address
+     *            The address of the node.
+     * @param types
+     *            The types of the node.
+     * @param readerIds
+     *            The allowed readers of the node.
+     * @param writerIds
+     *            The allowed writers of the node.
+     * @param restriction
+     *            The restriction of the value of the node.
+     * @param cacheParameters
+     *            The cache parameters of the node.
+     * @throws IOException
+     *             If the record couldn't be written.
+     */
+    public final void addNode(final String address, final List<String> types,
+            final List<String> readerIds, final List<String> writerIds, final String restriction,
+            final String cacheParameters) throws IOException {
+        getJournal().addNode(address, types, readerIds, writerIds, restriction, cacheParameters);
+        finishRecord();
+    }
+
+    /**
+     * Appends a removed node to the journal.
+     *
+     * @param address
+     *            The address of the node.
+     * @throws IOException
+     *             If the record couldn't be written.
+     */
+    public final void removeNode(final String address) throws IOException {
+        getJournal().removeNode(address);
+        finishRecord();
+    }
+
+    /**
+     * Appends a write of values to the journal.
+     *
+     * @param tick
+     *            The tick of the write.
+     * @param values
+     *            Addresses and new values of the nodes.
+     * @throws IOException
+     *             If the record couldn't be written.
+     */
+    public final void setValues(final long tick, final Map<String, String> values)
+            throws IOException {
+        getJournal().setValues(tick, values);
+        finishRecord();
+    }
+
+    /**
+     * Appends replaced values and versions of a node to the journal.
+     *
+     * @param address
+     *            The address of the node.
+     * @param values
+     *            The newest value revision of the node, null if it has no value.
+     * @param versions
+     *            The newest version revision of the node, null if it has no version.
+     * @throws IOException
+     *             If the record couldn't be written.
+     */
+    public final void restoreNode(final String address, final NodeRevision values,
+            final NodeRevision versions) throws IOException {
+        getJournal().restoreNode(address, values, versions);
+        finishRecord();
+    }
+
+    /**
+     * Appends stored list elements to the journal, together with the new version of the elements
+     * node of the list.
+     *
+     * @param tick
+     *            The tick of the write.
+     * @param listAddress
+     *            The address of the list node.
+     * @param elements
+     *            The names of the elements mapped to their sort keys.
+     * @throws IOException
+     *             If the records couldn't be written.
+     */
+    public final void putListElements(final long tick, final String listAddress,
+            final Map<String, Long> elements) throws IOException {
+        getJournal().putListElements(listAddress, elements);
+        getJournal().incrementVersions(tick, listAddress + "/elements");
+        finishRecord();
+    }
+
+    /**
+     * Appends a removed list element to the journal, together with the new version of the
+     * elements node of the list.
+     *
+     * @param tick
+     *            The tick of the write.
+     * @param listAddress
+     *            The address of the list node.
+     * @param element
+     *            The name of the element.
+     * @throws IOException
+     *             If the records couldn't be written.
+     */
+    public final void removeListElement(final long tick, final String listAddress,
+            final String element) throws IOException {
+        getJournal().removeListElement(listAddress, element);
+        getJournal().incrementVersions(tick, listAddress + "/elements");
+        finishRecord();
+    }
+
+    /**
+     * Reads a single record and applies it.
+     *
+     * @param in
+     *            The stream to read from.
+     * @param target
+     *            The operations the record is applied to.
+     * @return False if the end of the stream or snapshot was reached.
+     * @throws IOException
+     *             If the record couldn't be read.
+     */
+    private static boolean readRecord(final DataInputStream in, final Operations target)
+            throws IOException {
+        final int type = in.read();
+        switch (type) {
+        case -1:
+        case END:
+            return false;
+        case ADD_NODE:
+            target.addNode(readString(in), readStrings(in), readStrings(in), readStrings(in),
+                    readString(in), readString(in));
+            return true;
+        case REMOVE_NODE:
+            target.removeNode(readString(in));
+            return true;
+        case SET_VALUES:
+            final long tick = in.readLong();
+            final int count = in.readInt();
+            final Map<String, String> values = new LinkedHashMap<String, String>();
+            for (int i = 0; i < count; i++) {
+                values.put(readString(in), readString(in));
+            }
+            target.setValues(tick, values);
+            return true;
+        case RESTORE_NODE:
+            target.restoreNode(readString(in), readRevisions(in), readRevisions(in));
+            return true;
+        case PUT_LIST_ELEMENTS:
+            final String listAddress = readString(in);
+            final int size = in.readInt();
+            final Map<String, Long> elements = new LinkedHashMap<String, Long>();
+            for (int i = 0; i < size; i++) {
+                elements.put(readString(in), in.readLong());
+            }
+            target.putListElements(listAddress, elements);
+            return true;
+        case REMOVE_LIST_ELEMENT:
+            target.removeListElement(readString(in), readString(in));
+            return true;
+        case INCREMENT_VERSIONS:
+            target.incrementVersions(in.readLong(), readString(in));
+            return true;
+        default:
+            throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    /**
+     * Reads a string written by {@link RecordWriter#writeString(String)}.
+     *
+     * @param in
+     *            The stream to read from.
+     * @return The string.
+     * @throws IOException
+     *             If the string couldn't be read.
+     */
+    private static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Reads a list of strings written by {@link RecordWriter#writeStrings(List)}.
+     *
+     * @param in
+     *            The stream to read from.
+     * @return The strings.
+     * @throws IOException
+     *             If the strings couldn't be read.
+     */
+    private static List<String> readStrings(final DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final List<String> strings = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    /**
+     * Reads a revision chain written by {@link RecordWriter#writeRevisions(NodeRevision)}.
+     *
+     * @param in
+     *            The stream to read from.
+     * @return The newest revision of the chain, null if it is empty.
+     * @throws IOException
+     *             If the revisions couldn't be read.
+     */
+    private static NodeRevision readRevisions(final DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        NodeRevision revision = null;
+        for (int i = 0; i < size; i++) {
+            final String value = readString(in);
+            final long version = in.readLong();
+            revision = new NodeRevision(value, version, in.readLong(), revision);
+        }
+        return revision;
+    }
+
+    /**
+     * Writes the records of the operations to a stream.
+     */
+    private static final class RecordWriter implements Operations {
+
+        /**
+         * The stream to write to.
+         */
+        private final DataOutputStream out;
+
+        /**
+         * Constructor.
+         *
+         * @param out
+         *            The stream to write to.
+         */
+        RecordWriter(final DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void addNode(final String address, final List<String> types,
+                final List<String> readerIds, final List<String> writerIds,
+                final String restriction, final String cacheParameters) throws IOException {
+            out.writeByte(ADD_NODE);
+            writeString(address);
+            writeStrings(types);
+            writeStrings(readerIds);
+            writeStrings(writerIds);
+            writeString(restriction);
+            writeString(cacheParameters);
+        }
+
+        @Override
+        public void removeNode(final String address) throws IOException {
+            out.writeByte(REMOVE_NODE);
+            writeString(address);
+        }
+
+        @Override
+        public void setValues(final long tick, final Map<String, String> values)
+                throws IOException {
+            out.writeByte(SET_VALUES);
+            out.writeLong(tick);
+            out.writeInt(values.size());
+            for (final Entry<String, String> value : values.entrySet()) {
+                writeString(value.getKey());
+                writeString(value.getValue());
+            }
+        }
+
+        @Override
+        public void restoreNode(final String address, final NodeRevision values,
+                final NodeRevision versions) throws IOException {
+            out.writeByte(RESTORE_NODE);
+            writeString(address);
+            writeRevisions(values);
+            writeRevisions(versions);
+        }
+
+        @Override
+        public void putListElements(final String listAddress, final Map<String, Long> elements)
+                throws IOException {
+            out.writeByte(PUT_LIST_ELEMENTS);
+            writeString(listAddress);
+            out.writeInt(elements.size());
+            for (final Entry<String, Long> element : elements.entrySet()) {
+                writeString(element.getKey());
+                out.writeLong(element.getValue());
+            }
+        }
+
+        @Override
+        public void removeListElement(final String listAddress, final String element)
+                throws IOException {
+            out.writeByte(REMOVE_LIST_ELEMENT);
+            writeString(listAddress);
+            writeString(element);
+        }
+
+        @Override
+        public void incrementVersions(final long tick, final String address)
+                throws IOException {
+            out.writeByte(INCREMENT_VERSIONS);
+            out.writeLong(tick);
+            writeString(address);
+        }
+
+        /**
+         * Writes a string that may be null.
+         *
+         * @param string
+         *            The string.
+         * @throws IOException
+         *             If the string couldn't be written.
+         */
+        private void writeString(final String string) throws IOException {
+            if (string == null) {
+                out.writeInt(-1);
+                return;
+            }
+            final byte[] bytes = string.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        /**
+         * Writes a list of strings, null is written as empty list.
+         *
+         * @param strings
+         *            The strings.
+         * @throws IOException
+         *             If the strings couldn't be written.
+         */
+        private void writeStrings(final List<String> strings) throws IOException {
+            if (strings == null) {
+                out.writeInt(0);
+                return;
+            }
+            out.writeInt(strings.size());
+            for (final String string : strings) {
+                writeString(string);
+            }
+        }
+
+        /**
+         * Writes a revision chain, oldest revision first.
+         *
+         * @param newest
+         *            The newest revision of the chain, null if it is empty.
+         * @throws IOException
+         *             If the revisions couldn't be written.
+         */
+        private void writeRevisions(final NodeRevision newest) throws IOException {
+            if (newest == null) {
+                out.writeInt(0);
+                return;
+            }
+            out.writeInt(newest.getLength());
+            for (final NodeRevision revision : newest.toList()) {
+                writeString(revision.getValue());
+                out.writeLong(revision.getVersion());
+                out.writeLong(revision.getTick());
+            }
+        }
+    }
+}
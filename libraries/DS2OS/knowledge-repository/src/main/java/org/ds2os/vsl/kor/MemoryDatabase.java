@@ -0,0 +1,1012 @@
+package org.ds2os.vsl.kor;
+
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ds2os.vsl.core.config.VslKORDatabaseConfig;
+import org.ds2os.vsl.core.node.VslNode;
+import org.ds2os.vsl.core.utils.AddressParser;
+import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.ds2os.vsl.core.utils.VslAddressParameters.NodeInformationScope;
+import org.ds2os.vsl.exception.NodeNotExistingException;
+import org.ds2os.vsl.kor.dataStructures.InternalNode;
+import org.ds2os.vsl.kor.dataStructures.MetaNode;
+import org.ds2os.vsl.kor.dataStructures.NodeRevision;
+import org.ds2os.vsl.kor.dataStructures.PersistentTreeMap;
+import org.ds2os.vsl.kor.dataStructures.StructureHashTree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link VslNodeDatabase} keeping all nodes in memory, meant for small and medium sized
+ * deployments that don't need an external database. The nodes are stored in a
+ * {@link PersistentTreeMap} ordered by address, together with the chains of their archived
+ * values and versions. Every write creates a new immutable state of the database that shares all
+ * unchanged parts with the previous state, so readers work on a consistent state without any
+ * locking while writes are serialized. If the database is configured to be persistent, every
+ * write is appended to a {@link MemoryDBJournal} before it is applied, writes that can't be
+ * appended fail without being applied.
+ */
+public class MemoryDatabase implements VslNodeDatabase {
+
+    /**
+     * Get the logger instance for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryDatabase.class);
+
+    /**
+     * The number of ticks per millisecond. Writes within the same millisecond get consecutive
+     * ticks, so every write can be identified by its tick.
+     */
+    private static final long TICKS_PER_MILLI = 100000;
+
+    /**
+     * The configuration service.
+     */
+    private final VslKORDatabaseConfig configService;
+
+    /**
+     * The current state of the database. Replaced on every write.
+     */
+    private volatile State state = new State(PersistentTreeMap.<StoredNode>empty(),
+            PersistentTreeMap.<PersistentTreeMap<Long>>empty());
+
+    /**
+     * Serializes all writes.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * Applies the modifications to the state. Only used while holding {@link #writeLock}.
+     */
+    private final StateUpdater updater = new StateUpdater();
+
+    /**
+     * Hash tree over the structure of the nodes, see {@link #getHashOfSubtree(String, List)}.
+     */
+    private final StructureHashTree structureHashes = new StructureHashTree();
+
+    /**
+     * The tick of the last write. Guarded by {@link #writeLock}.
+     */
+    private long lastTick;
+
+    /**
+     * The number of archived revisions kept per node, read on activation.
+     */
+    private int archiveLimit = 1;
+
+    /**
+     * The maximum age of archived revisions in seconds, 0 for no limit. Read on activation.
+     */
+    private int archiveMaxAge;
+
+    /**
+     * The journal persisting all modifications, null if the database isn't persistent.
+     */
+    private MemoryDBJournal journal;
+
+    /**
+     * Constructor.
+     *
+     * @param configService
+     *            The configuration service.
+     */
+    public MemoryDatabase(final VslKORDatabaseConfig configService) {
+        this.configService = configService;
+    }
+
+    @Override
+    public final void activate() {
+        if (configService.isArchiveEnabled()) {
+            archiveLimit = Math.max(1, configService.getArchiveNodeVersionLimit());
+        }
+        archiveMaxAge = Math.max(0, configService.getArchiveMaxAge());
+        if (!Boolean.TRUE.equals(configService.isDatabasePersistent())) {
+            return;
+        }
+        synchronized (writeLock) {
+            journal = new MemoryDBJournal(configService.getDatabasePath(),
+                    configService.isDatabaseSyncCommit());
+            try {
+                updater.begin();
+                journal.load(updater);
+                updater.commit();
+                compactJournal();
+                LOGGER.debug("Loaded {} nodes from {}", state.nodes.size(),
+                        configService.getDatabasePath());
+            } catch (final IOException e) {
+                LOGGER.error("Cannot load the database at {}: {}",
+                        configService.getDatabasePath(), e.getMessage());
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the current state as new snapshot of the journal. Must hold {@link #writeLock}.
+     *
+     * @throws IOException
+     *             If the snapshot couldn't be written.
+     */
+    private void compactJournal() throws IOException {
+        final State current = state;
+        journal.compact(new MemoryDBJournal.SnapshotSource() {
+            @Override
+            public void writeTo(final MemoryDBJournal.Operations out) throws IOException {
+                for (final Entry<String, StoredNode> entry : current.nodes.entries(null, null)) {
+                    final StoredNode node = entry.getValue();
+                    out.addNode(entry.getKey(), node.types, node.readers, node.writers,
+                            node.restriction, node.cacheParameters);
+                    if (node.values != null || node.versions != null) {
+                        out.restoreNode(entry.getKey(), node.values, node.versions);
+                    }
+                }
+                for (final Entry<String, PersistentTreeMap<Long>> list : current.lists
+                        .entries(null, null)) {
+                    final Map<String, Long> elements = new LinkedHashMap<String, Long>();
+                    for (final Entry<String, Long> element : list.getValue().entries(null,
+                            null)) {
+                        elements.put(element.getKey(), element.getValue());
+                    }
+                    out.putListElements(list.getKey(), elements);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the journal modifications are appended to before they are applied. If appending
+     * failed before, the journal is restarted from a snapshot of the current state first. Must
+     * hold {@link #writeLock}.
+     *
+     * @return The journal, null if the database isn't persistent.
+     */
+    private MemoryDBJournal getJournal() {
+        if (journal != null && !journal.isOpen()) {
+            try {
+                compactJournal();
+            } catch (final IOException e) {
+                throw journalFailed(e);
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Reports a modification that couldn't be appended to the journal. The modification isn't
+     * applied then. The journal is closed, as it might end with a partially written record, and
+     * restarted by the next modification.
+     *
+     * @param e
+     *            The reason.
+     * @return The exception to throw to the writer.
+     */
+    private RuntimeException journalFailed(final IOException e) {
+        LOGGER.error("Error appending to the journal at {}: {}", configService.getDatabasePath(),
+                e.getMessage());
+        try {
+            journal.close();
+        } catch (final IOException closeError) {
+            LOGGER.debug("Error closing the journal: {}", closeError.getMessage());
+        }
+        return new RuntimeException(
+                "Cannot persist the modification to " + configService.getDatabasePath(), e);
+    }
+
+    /**
+     * Compacts the journal after a modification was appended, if it grew too large. Must hold
+     * {@link #writeLock}.
+     */
+    private void journalAppended() {
+        if (!journal.needsCompaction()) {
+            return;
+        }
+        try {
+            compactJournal();
+        } catch (final IOException e) {
+            // the modification is in the previous journal, the next modification retries.
+            LOGGER.error("Error writing the snapshot to {}: {}", configService.getDatabasePath(),
+                    e.getMessage());
+        }
+    }
+
+    @Override
+    public final void addNode(final String address, final List<String> types,
+            final List<String> readerIds, final List<String> writerIds, final String restriction,
+            final String cacheParameters) {
+        final List<String> wellEscapedTypes = new ArrayList<String>();
+        if (types != null) {
+            for (final String type : types) {
+                wellEscapedTypes.add(AddressParser.makeWellFormedAddress(type));
+            }
+        }
+        synchronized (writeLock) {
+            if (state.nodes.containsKey(address)) {
+                LOGGER.error("Error adding a new node at address {}: node already exists",
+                        address);
+                return;
+            }
+            final MemoryDBJournal out = getJournal();
+            if (out != null) {
+                try {
+                    out.addNode(address, wellEscapedTypes, readerIds, writerIds, restriction,
+                            cacheParameters);
+                } catch (final IOException e) {
+                    throw journalFailed(e);
+                }
+            }
+            updater.begin();
+            updater.addNode(address, wellEscapedTypes, readerIds, writerIds, restriction,
+                    cacheParameters);
+            updater.commit();
+            if (out != null) {
+                journalAppended();
+            }
+        }
+    }
+
+    @Override
+    public final void removeNode(final String address) {
+        synchronized (writeLock) {
+            final MemoryDBJournal out = getJournal();
+            if (out != null) {
+                try {
+                    out.removeNode(address);
+                } catch (final IOException e) {
+                    throw journalFailed(e);
+                }
+            }
+            updater.begin();
+            updater.removeNode(address);
+            updater.commit();
+            if (out != null) {
+                journalAppended();
+            }
+        }
+    }
+
+    @Override
+    public final void setValueTree(final Map<String, String> values)
+            throws NodeNotExistingException {
+        if (values.size() == 0) {
+            return;
+        }
+        synchronized (writeLock) {
+            final long tick = Math.max(System.currentTimeMillis() * TICKS_PER_MILLI,
+                    lastTick + 1);
+            final MemoryDBJournal out = getJournal();
+            if (out != null) {
+                try {
+                    out.setValues(tick, values);
+                } catch (final IOException e) {
+                    throw journalFailed(e);
+                }
+            }
+            updater.begin();
+            updater.setValues(tick, values);
+            updater.commit();
+            if (out != null) {
+                journalAppended();
+            }
+        }
+    }
+
+    @Override
+    public final void cacheVslNode(final String address, final VslNode node) {
+        final Map<String, VslNode> nodes = new LinkedHashMap<String, VslNode>();
+        nodes.put(address, node);
+        for (final Entry<String, VslNode> child : node.getAllChildren()) {
+            nodes.put(address + "/" + child.getKey(), child.getValue());
+        }
+        synchronized (writeLock) {
+            final Map<String, NodeRevision[]> restored =
+                    new LinkedHashMap<String, NodeRevision[]>();
+            for (final Entry<String, VslNode> entry : nodes.entrySet()) {
+                final VslNode cached = entry.getValue();
+                // omit empty nodes
+                if (cached.getValue() == null || cached.getVersion() == -1
+                        || cached.getTimestamp() == null || cached.getTypes().isEmpty()
+                        || !state.nodes.containsKey(entry.getKey())) {
+                    continue;
+                }
+                final long tick = cached.getTimestamp().getTime() * TICKS_PER_MILLI;
+                restored.put(entry.getKey(), new NodeRevision[] {
+                        new NodeRevision(cached.getValue(), cached.getVersion(), tick, null),
+                        new NodeRevision(null, cached.getVersion(), tick, null) });
+            }
+            final MemoryDBJournal out = getJournal();
+            if (out != null) {
+                try {
+                    for (final Entry<String, NodeRevision[]> entry : restored.entrySet()) {
+                        out.restoreNode(entry.getKey(), entry.getValue()[0],
+                                entry.getValue()[1]);
+                    }
+                } catch (final IOException e) {
+                    throw journalFailed(e);
+                }
+            }
+            updater.begin();
+            for (final Entry<String, NodeRevision[]> entry : restored.entrySet()) {
+                updater.restoreNode(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+            }
+            updater.commit();
+            if (out != null) {
+                journalAppended();
+            }
+        }
+    }
+
+    @Override
+    public final void removeCachedNode(final String address) {
+        synchronized (writeLock) {
+            if (!state.nodes.containsKey(address)) {
+                return;
+            }
+            final MemoryDBJournal out = getJournal();
+            if (out != null) {
+                try {
+                    out.restoreNode(address, null, null);
+                } catch (final IOException e) {
+                    throw journalFailed(e);
+                }
+            }
+            updater.begin();
+            updater.restoreNode(address, null, null);
+            updater.commit();
+            if (out != null) {
+                journalAppended();
+            }
+        }
+    }
+
+    @Override
+    public final void putListElements(final String listAddress, final Map<String, Long> elements) {
+        synchronized (writeLock) {
+            final long tick = Math.max(System.currentTimeMillis() * TICKS_PER_MILLI,
+                    lastTick + 1);
+            final MemoryDBJournal out = getJournal();
+            if (out != null) {
+                try {
+                    out.putListElements(tick, listAddress, elements);
+                } catch (final IOException e) {
+                    throw journalFailed(e);
+                }
+            }
+            updater.begin();
+            updater.putListElements(listAddress, elements);
+            updater.incrementVersions(tick, listAddress + "/elements");
+            updater.commit();
+            if (out != null) {
+                journalAppended();
+            }
+        }
+    }
+
+    @Override
+    public final void removeListElement(final String listAddress, final String element) {
+        synchronized (writeLock) {
+            final long tick = Math.max(System.currentTimeMillis() * TICKS_PER_MILLI,
+                    lastTick + 1);
+            final MemoryDBJournal out = getJournal();
+            if (out != null) {
+                try {
+                    out.removeListElement(tick, listAddress, element);
+                } catch (final IOException e) {
+                    throw journalFailed(e);
+                }
+            }
+            updater.begin();
+            updater.removeListElement(listAddress, element);
+            updater.incrementVersions(tick, listAddress + "/elements");
+            updater.commit();
+            if (out != null) {
+                journalAppended();
+            }
+        }
+    }
+
+    @Override
+    public final LinkedHashMap<String, Long> getListElements(final String listAddress) {
+        final PersistentTreeMap<Long> list = state.lists.get(listAddress);
+        final LinkedHashMap<String, Long> elements = new LinkedHashMap<String, Long>();
+        if (list == null) {
+            return elements;
+        }
+        final List<Entry<String, Long>> sorted = list.entries(null, null);
+        Collections.sort(sorted, new Comparator<Entry<String, Long>>() {
+            @Override
+            public int compare(final Entry<String, Long> o1, final Entry<String, Long> o2) {
+                return o1.getValue().compareTo(o2.getValue());
+            }
+        });
+        for (final Entry<String, Long> element : sorted) {
+            elements.put(element.getKey(), element.getValue());
+        }
+        return elements;
+    }
+
+    @Override
+    public final List<String> getAddressesOfType(final String rootAddress, final String type) {
+        final List<String> resultingAddresses = new LinkedList<String>();
+        for (final Entry<String, StoredNode> entry : getSubtree(state, rootAddress, -1)) {
+            if (entry.getValue().types.contains(type)) {
+                resultingAddresses.add(entry.getKey());
+            }
+        }
+        return resultingAddresses;
+    }
+
+    @Override
+    public final String getHashOfSubtree(final String rootAddr, final List<String> exludeSubtrees) {
+        String treeRoot = rootAddr;
+        if (treeRoot == null || treeRoot.isEmpty()) {
+            treeRoot = "/";
+        }
+        // reader, writer and restrictions are based/fixed on/per the model, which is stored in the
+        // type. Therefore its's not necessary to include them in the hash.
+        return structureHashes.getHash(treeRoot, exludeSubtrees);
+    }
+
+    @Override
+    public final TreeMap<String, MetaNode> getNodeMetaData(final String address,
+            final boolean includeSubtree) throws NodeNotExistingException {
+        if (address == null) {
+            throw new NodeNotExistingException("address was null");
+        }
+        final TreeMap<String, MetaNode> results = new TreeMap<String, MetaNode>();
+        for (final Entry<String, StoredNode> entry : getSubtree(state, address,
+                includeSubtree ? -1 : 0)) {
+            final StoredNode node = entry.getValue();
+            results.put(entry.getKey(),
+                    new MetaNode(new ArrayList<String>(node.types),
+                            new ArrayList<String>(node.readers),
+                            new ArrayList<String>(node.writers), node.restriction,
+                            node.cacheParameters));
+        }
+        if (results.isEmpty()) {
+            throw new NodeNotExistingException("Node not found: " + address);
+        }
+        return results;
+    }
+
+    @Override
+    public final boolean nodeExists(final String address) {
+        return address != null && state.nodes.containsKey(address);
+    }
+
+    @Override
+    public final TreeMap<String, InternalNode> getNodeRecord(final String address,
+            final VslAddressParameters params) throws NodeNotExistingException {
+        if (address == null) {
+            throw new NodeNotExistingException("address was null");
+        }
+        final State current = state;
+        final long before = getRequestedTickBound(current, address, params);
+        final TreeMap<String, InternalNode> results = new TreeMap<String, InternalNode>();
+        for (final Entry<String, StoredNode> entry : getSubtree(current, address,
+                params.getDepth())) {
+            final StoredNode node = entry.getValue();
+            final NodeRevision value = node.values == null ? null : node.values.findBefore(before);
+            final NodeRevision version = node.versions == null ? null
+                    : node.versions.findBefore(before);
+            results.put(entry.getKey(), toInternalNode(node, value,
+                    version == null ? 0 : version.getVersion(), params.getNodeInformationScope()));
+        }
+        if (results.isEmpty()) {
+            throw new NodeNotExistingException("Node not found: " + address);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the exclusive upper bound of the ticks of the revisions that are requested by the
+     * given parameters, either by the version of the requested node or by the end of a time range.
+     *
+     * @param current
+     *            The state to read from.
+     * @param address
+     *            The requested address.
+     * @param params
+     *            The parameters of the request.
+     * @return The bound, {@link Long#MAX_VALUE} if the newest revisions are requested.
+     * @throws NodeNotExistingException
+     *             If the requested version of the node isn't archived.
+     */
+    private long getRequestedTickBound(final State current, final String address,
+            final VslAddressParameters params) throws NodeNotExistingException {
+        if (params.getRequestedVersion() >= 0) {
+            final StoredNode node = current.nodes.get(address);
+            NodeRevision version = node == null ? null : node.versions;
+            while (version != null && version.getVersion() != params.getRequestedVersion()) {
+                version = version.getPrevious();
+            }
+            if (version == null) {
+                throw new NodeNotExistingException("Version " + params.getRequestedVersion()
+                        + " of " + address + " is not archived");
+            }
+            return version.getTick() + 1;
+        }
+        if (params.getToTimestamp() >= 0) {
+            return (params.getToTimestamp() + 1) * TICKS_PER_MILLI;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public final TreeMap<String, List<InternalNode>> getNodeHistory(final String address,
+            final VslAddressParameters params) throws NodeNotExistingException {
+        if (address == null) {
+            throw new NodeNotExistingException("address was null");
+        }
+        final State current = state;
+        final long from = Math.max(0, params.getFromTimestamp()) * TICKS_PER_MILLI;
+        long to = Long.MAX_VALUE;
+        if (params.getToTimestamp() >= 0) {
+            to = (params.getToTimestamp() + 1) * TICKS_PER_MILLI;
+        }
+        final TreeMap<String, List<InternalNode>> results =
+                new TreeMap<String, List<InternalNode>>();
+        for (final Entry<String, StoredNode> entry : getSubtree(current, address,
+                params.getDepth())) {
+            final StoredNode node = entry.getValue();
+            final LinkedList<InternalNode> values = new LinkedList<InternalNode>();
+            NodeRevision value = node.values == null ? null : node.values.findBefore(to);
+            while (value != null && value.getTick() >= from) {
+                values.addFirst(toInternalNode(node, value, value.getVersion(),
+                        params.getNodeInformationScope()));
+                value = value.getPrevious();
+            }
+            if (!values.isEmpty()) {
+                results.put(entry.getKey(), new ArrayList<InternalNode>(values));
+            }
+        }
+        if (results.isEmpty() && !current.nodes.containsKey(address)) {
+            throw new NodeNotExistingException("Node not found: " + address);
+        }
+        return results;
+    }
+
+    /**
+     * Creates an {@link InternalNode} with the information requested by the given scope.
+     *
+     * @param node
+     *            The stored node.
+     * @param value
+     *            The value revision to return, null if the node has no value.
+     * @param version
+     *            The version to return.
+     * @param scope
+     *            The requested information.
+     * @return The node.
+     */
+    private InternalNode toInternalNode(final StoredNode node, final NodeRevision value,
+            final long version, final NodeInformationScope scope) {
+        final Date timestamp = value == null ? null : new Date(value.getTick() / TICKS_PER_MILLI);
+        final String nodeValue = value == null ? null : value.getValue();
+        switch (scope) {
+        case VALUE:
+            return new InternalNode(null, nodeValue, new ArrayList<String>(node.readers),
+                    new ArrayList<String>(node.writers), -1, timestamp, null, null);
+        case METADATA:
+            return new InternalNode(new ArrayList<String>(node.types), null,
+                    new ArrayList<String>(node.readers), new ArrayList<String>(node.writers),
+                    version, timestamp, node.restriction, node.cacheParameters);
+        default: // == case COMPLETE
+            return new InternalNode(new ArrayList<String>(node.types), nodeValue,
+                    new ArrayList<String>(node.readers), new ArrayList<String>(node.writers),
+                    version, timestamp, node.restriction, node.cacheParameters);
+        }
+    }
+
+    /**
+     * Returns the node at the given address and, depending on the depth, its subtree.
+     *
+     * @param current
+     *            The state to read from.
+     * @param address
+     *            The root address of the subtree.
+     * @param depth
+     *            The depth of the requested tree (0 = only the node, 1 = include direct children,
+     *            -1 = all children,...).
+     * @return The nodes ordered by address.
+     */
+    private static List<Entry<String, StoredNode>> getSubtree(final State current,
+            final String address, final int depth) {
+        final String prefix = address.endsWith("/") ? address : address + "/";
+        final List<Entry<String, StoredNode>> result = new ArrayList<Entry<String, StoredNode>>();
+        if (!prefix.equals(address) || depth == 0) {
+            final StoredNode node = current.nodes.get(address);
+            if (node != null) {
+                result.add(new SimpleImmutableEntry<String, StoredNode>(address, node));
+            }
+        }
+        if (depth == 0) {
+            return result;
+        }
+        // '0' follows '/', so this covers all addresses below the given one.
+        final String upperBound = prefix.substring(0, prefix.length() - 1) + "0";
+        for (final Entry<String, StoredNode> entry : current.nodes.entries(prefix, upperBound)) {
+            if (depth < 0 || StringUtils
+                    .countMatches(entry.getKey().substring(prefix.length()), "/") < depth) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public final void shutdown() {
+        synchronized (writeLock) {
+            if (journal != null) {
+                try {
+                    compactJournal();
+                    journal.close();
+                } catch (final IOException e) {
+                    LOGGER.error("Error writing the snapshot to {}: {}",
+                            configService.getDatabasePath(), e.getMessage());
+                }
+                journal = null;
+            }
+            updater.begin();
+            updater.clear();
+            updater.commit();
+        }
+    }
+
+    /**
+     * Returns the smallest tick of archived revisions that are kept.
+     *
+     * @return The tick, {@link Long#MIN_VALUE} if the age of archived revisions isn't limited.
+     */
+    private long getArchiveCutoff() {
+        if (archiveMaxAge <= 0) {
+            return Long.MIN_VALUE;
+        }
+        return (System.currentTimeMillis() - archiveMaxAge * 1000L) * TICKS_PER_MILLI;
+    }
+
+    /**
+     * Drops the oldest revisions of the given chain if it grew to twice the configured archive
+     * limit, so trimming only costs amortized constant time per write.
+     *
+     * @param revision
+     *            The newest revision of the chain.
+     * @return The possibly shortened chain.
+     */
+    private NodeRevision trimArchive(final NodeRevision revision) {
+        if (revision.getLength() <= 2 * archiveLimit) {
+            return revision;
+        }
+        return revision.trim(archiveLimit, getArchiveCutoff());
+    }
+
+    /**
+     * An immutable state of the database.
+     */
+    private static final class State {
+
+        /**
+         * The nodes, ordered by address.
+         */
+        private final PersistentTreeMap<StoredNode> nodes;
+
+        /**
+         * The elements of the list nodes mapped to their sort keys, by address of the list.
+         */
+        private final PersistentTreeMap<PersistentTreeMap<Long>> lists;
+
+        /**
+         * Constructor.
+         *
+         * @param nodes
+         *            The nodes, ordered by address.
+         * @param lists
+         *            The elements of the list nodes.
+         */
+        State(final PersistentTreeMap<StoredNode> nodes,
+                final PersistentTreeMap<PersistentTreeMap<Long>> lists) {
+            this.nodes = nodes;
+            this.lists = lists;
+        }
+    }
+
+    /**
+     * An immutable node with its archived values and versions.
+     */
+    private static final class StoredNode {
+
+        /**
+         * The types of the node.
+         */
+        private final List<String> types;
+
+        /**
+         * The types joined like they are used for hashing.
+         */
+        private final String typeString;
+
+        /**
+         * The allowed readers of the node.
+         */
+        private final List<String> readers;
+
+        /**
+         * The allowed writers of the node.
+         */
+        private final List<String> writers;
+
+        /**
+         * The restriction of the value.
+         */
+        private final String restriction;
+
+        /**
+         * The cache parameters.
+         */
+        private final String cacheParameters;
+
+        /**
+         * The newest value revision, null if the node has no value.
+         */
+        private final NodeRevision values;
+
+        /**
+         * The newest version revision, null if the node has no version yet.
+         */
+        private final NodeRevision versions;
+
+        /**
+         * Constructor.
+         *
+         * @param types
+         *            The types of the node.
+         * @param readers
+         *            The allowed readers of the node.
+         * @param writers
+         *            The allowed writers of the node.
+         * @param restriction
+         *            The restriction of the value.
+         * @param cacheParameters
+         *            The cache parameters.
+         * @param values
+         *            The newest value revision, null if the node has no value.
+         * @param versions
+         *            The newest version revision, null if the node has no version yet.
+         */
+        StoredNode(final List<String> types, final List<String> readers,
+                final List<String> writers, final String restriction,
+                final String cacheParameters, final NodeRevision values,
+                final NodeRevision versions) {
+            this.types = types;
+            this.typeString = StringUtils.join(types, LIST_SEPARATOR);
+            this.readers = readers;
+            this.writers = writers;
+            this.restriction = restriction;
+            this.cacheParameters = cacheParameters;
+            this.values = values;
+            this.versions = versions;
+        }
+
+        /**
+         * Returns this node with other revisions.
+         *
+         * @param newValues
+         *            The newest value revision.
+         * @param newVersions
+         *            The newest version revision.
+         * @return The new node.
+         */
+        StoredNode withRevisions(final NodeRevision newValues, final NodeRevision newVersions) {
+            return new StoredNode(types, readers, writers, restriction, cacheParameters,
+                    newValues, newVersions);
+        }
+
+        /**
+         * Returns the version the next write of this node gets.
+         *
+         * @return The next version.
+         */
+        long nextVersion() {
+            return versions == null ? 0 : versions.getVersion() + 1;
+        }
+    }
+
+    /**
+     * Applies modifications to a copy of the current state, which is published by
+     * {@link #commit()}. Also used to replay the journal.
+     */
+    private final class StateUpdater implements MemoryDBJournal.Operations {
+
+        /**
+         * The state the modifications are applied to.
+         */
+        private State pending;
+
+        /**
+         * Starts modifying the current state.
+         */
+        void begin() {
+            pending = state;
+        }
+
+        /**
+         * Publishes the modified state to the readers.
+         */
+        void commit() {
+            state = pending;
+            pending = null;
+        }
+
+        /**
+         * Removes all nodes and lists.
+         */
+        void clear() {
+            pending = new State(PersistentTreeMap.<StoredNode>empty(),
+                    PersistentTreeMap.<PersistentTreeMap<Long>>empty());
+            structureHashes.clear();
+        }
+
+        /**
+         * Returns an unmodifiable copy of the given list.
+         *
+         * @param list
+         *            The list, may be null.
+         * @return The copy, empty if the list was null.
+         */
+        private List<String> copy(final List<String> list) {
+            if (list == null) {
+                return Collections.emptyList();
+            }
+            return Collections.unmodifiableList(new ArrayList<String>(list));
+        }
+
+        @Override
+        public void addNode(final String address, final List<String> types,
+                final List<String> readerIds, final List<String> writerIds,
+                final String restriction, final String cacheParameters) {
+            if (pending.nodes.containsKey(address)) {
+                return;
+            }
+            final StoredNode node = new StoredNode(copy(types), copy(readerIds), copy(writerIds),
+                    restriction, cacheParameters, null, null);
+            pending = new State(pending.nodes.put(address, node), pending.lists);
+            structureHashes.addNode(address, node.typeString);
+        }
+
+        @Override
+        public void removeNode(final String address) {
+            PersistentTreeMap<StoredNode> nodes = pending.nodes;
+            for (final Entry<String, StoredNode> entry : getSubtree(pending, address, -1)) {
+                nodes = nodes.remove(entry.getKey());
+            }
+            PersistentTreeMap<PersistentTreeMap<Long>> lists = pending.lists.remove(address);
+            final String prefix = address.endsWith("/") ? address : address + "/";
+            for (final Entry<String, PersistentTreeMap<Long>> list : lists.entries(prefix,
+                    prefix.substring(0, prefix.length() - 1) + "0")) {
+                lists = lists.remove(list.getKey());
+            }
+            pending = new State(nodes, lists);
+            structureHashes.removeNode(address);
+        }
+
+        @Override
+        public void setValues(final long tick, final Map<String, String> values) {
+            PersistentTreeMap<StoredNode> nodes = pending.nodes;
+            // every node gets a new version only once, even if he is the parent of more then one
+            // changed node.
+            final Set<String> changed = new HashSet<String>();
+            for (final Entry<String, String> entry : values.entrySet()) {
+                final StoredNode node = nodes.get(entry.getKey());
+                if (node == null || !changed.add(entry.getKey())) {
+                    continue;
+                }
+                final long version = node.nextVersion();
+                nodes = nodes.put(entry.getKey(), node.withRevisions(
+                        trimArchive(new NodeRevision(entry.getValue(), version, tick,
+                                node.values)),
+                        trimArchive(new NodeRevision(null, version, tick, node.versions))));
+            }
+            // increment the versions of the parents up to service level.
+            for (final String address : values.keySet()) {
+                nodes = incrementVersions(nodes, tick,
+                        AddressParser.getAllParentsOfAddress(address, 2), changed);
+            }
+            pending = new State(nodes, pending.lists);
+            lastTick = Math.max(lastTick, tick);
+        }
+
+        @Override
+        public void incrementVersions(final long tick, final String address) {
+            final List<String> addresses = new ArrayList<String>();
+            addresses.add(address);
+            addresses.addAll(AddressParser.getAllParentsOfAddress(address, 2));
+            pending = new State(
+                    incrementVersions(pending.nodes, tick, addresses, new HashSet<String>()),
+                    pending.lists);
+            lastTick = Math.max(lastTick, tick);
+        }
+
+        /**
+         * Adds a new version to each of the given nodes that didn't get one in this write yet,
+         * keeping their values.
+         *
+         * @param nodes
+         *            The nodes to modify.
+         * @param tick
+         *            The tick of the write.
+         * @param addresses
+         *            The addresses of the nodes, missing nodes are skipped.
+         * @param changed
+         *            The addresses of the nodes that got a new version in this write already,
+         *            extended by the given addresses.
+         * @return The modified nodes.
+         */
+        private PersistentTreeMap<StoredNode> incrementVersions(
+                final PersistentTreeMap<StoredNode> nodes, final long tick,
+                final List<String> addresses, final Set<String> changed) {
+            PersistentTreeMap<StoredNode> result = nodes;
+            for (final String address : addresses) {
+                final StoredNode node = result.get(address);
+                if (node == null || !changed.add(address)) {
+                    continue;
+                }
+                result = result.put(address, node.withRevisions(node.values, trimArchive(
+                        new NodeRevision(null, node.nextVersion(), tick, node.versions))));
+            }
+            return result;
+        }
+
+        @Override
+        public void restoreNode(final String address, final NodeRevision values,
+                final NodeRevision versions) {
+            final StoredNode node = pending.nodes.get(address);
+            if (node == null) {
+                return;
+            }
+            pending = new State(
+                    pending.nodes.put(address, node.withRevisions(values, versions)),
+                    pending.lists);
+        }
+
+        @Override
+        public void putListElements(final String listAddress,
+                final Map<String, Long> elements) {
+            PersistentTreeMap<Long> list = pending.lists.get(listAddress);
+            if (list == null) {
+                list = PersistentTreeMap.empty();
+            }
+            for (final Entry<String, Long> element : elements.entrySet()) {
+                list = list.put(element.getKey(), element.getValue());
+            }
+            pending = new State(pending.nodes, pending.lists.put(listAddress, list));
+        }
+
+        @Override
+        public void removeListElement(final String listAddress, final String element) {
+            final PersistentTreeMap<Long> list = pending.lists.get(listAddress);
+            if (list == null) {
+                return;
+            }
+            final PersistentTreeMap<Long> remaining = list.remove(element);
+            if (remaining.isEmpty()) {
+                pending = new State(pending.nodes, pending.lists.remove(listAddress));
+            } else {
+                pending = new State(pending.nodes, pending.lists.put(listAddress, remaining));
+            }
+        }
+    }
+}
@@ -2,10 +2,12 @@ package org.ds2os.vsl.kor;
 
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gte;
 import static com.mongodb.client.model.Filters.in;
 import static com.mongodb.client.model.Filters.lte;
 import static com.mongodb.client.model.Filters.nin;
 import static com.mongodb.client.model.Filters.or;
+import static com.mongodb.client.model.Filters.regex;
 import static com.mongodb.client.model.Projections.computed;
 import static com.mongodb.client.model.Projections.exclude;
 import static com.mongodb.client.model.Projections.fields;
@@ -16,11 +18,13 @@ import static com.mongodb.client.model.Updates.set;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
 import org.bson.Document;
@@ -32,6 +36,7 @@ import org.ds2os.vsl.core.utils.VslAddressParameters;
 import org.ds2os.vsl.exception.NodeNotExistingException;
 import org.ds2os.vsl.kor.dataStructures.InternalNode;
 import org.ds2os.vsl.kor.dataStructures.MetaNode;
+import org.ds2os.vsl.kor.dataStructures.StructureHashTree;
 
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
@@ -46,6 +51,7 @@ import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
 import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
 
 public class MongodbDatabase implements VslNodeDatabase {
 
@@ -75,6 +81,11 @@ public class MongodbDatabase implements VslNodeDatabase {
     private MongoCollection<Document> currentCollection;
     private MongoCollection<Document> archiveCollection;
 
+    /**
+     * The elements of list nodes with their sort keys.
+     */
+    private MongoCollection<Document> listCollection;
+
     public MongodbDatabase(final VslKORDatabaseConfig configService) {
         this.configService = configService;
     }
@@ -98,6 +109,10 @@ public class MongodbDatabase implements VslNodeDatabase {
         this.archiveCollection = vslDatabase.getCollection("archive");
         archiveCollection.createIndex(Indexes.ascending("address", "version"),
                 new IndexOptions().unique(true));
+        this.listCollection = vslDatabase.getCollection("lists");
+        listCollection.createIndex(Indexes.ascending("address", "element"),
+                new IndexOptions().unique(true));
+        listCollection.createIndex(Indexes.ascending("address", "sortkey"));
     }
 
     /**
@@ -150,7 +165,7 @@ public class MongodbDatabase implements VslNodeDatabase {
     @Override
     public String getHashOfSubtree(final String rootAddress, final List<String> exludeSubtrees) {
 
-        long result = 17;
+        long result = 0;
 
         final Bson sortParameter = Sorts.ascending("address");
 
@@ -171,10 +186,9 @@ public class MongodbDatabase implements VslNodeDatabase {
             final List<String> currentTypes = (List<String>) currentDocument.get("types");
             final String currentTypesFormated = StringUtils.join(currentTypes, LIST_SEPARATOR);
 
-            result = 37 * result + currentAddress.hashCode();
-            result = 37 * result + currentTypesFormated.hashCode();
+            result += StructureHashTree.hashOfNode(currentAddress, currentTypesFormated);
         }
-        return Long.toHexString(result);
+        return StructureHashTree.hashToString(result);
     }
 
     private List<String> makeSubtreeAddressAbsolute(final String rootAddress,
@@ -232,7 +246,52 @@ public class MongodbDatabase implements VslNodeDatabase {
         currentCollection.deleteOne(eq("adress", address));
         archiveCollection.deleteMany(in("ancestors", address));
         archiveCollection.deleteOne(eq("adress", address));
+        listCollection.deleteMany(or(eq("address", address),
+                regex("address", "^" + Pattern.quote(address + "/"))));
+    }
 
+    @Override
+    public LinkedHashMap<String, Long> getListElements(final String listAddress) {
+        final LinkedHashMap<String, Long> elements = new LinkedHashMap<String, Long>();
+        final MongoCursor<Document> cursor = listCollection.find(eq("address", listAddress))
+                .sort(Sorts.ascending("sortkey")).iterator();
+        while (cursor.hasNext()) {
+            final Document element = cursor.next();
+            elements.put(element.getString("element"), element.getLong("sortkey"));
+        }
+        return elements;
+    }
+
+    @Override
+    public void putListElements(final String listAddress, final Map<String, Long> elements) {
+        for (final Entry<String, Long> element : elements.entrySet()) {
+            listCollection.updateOne(
+                    and(eq("address", listAddress), eq("element", element.getKey())),
+                    set("sortkey", element.getValue()), new UpdateOptions().upsert(true));
+        }
+        incrementVersions(listAddress + "/elements");
+    }
+
+    @Override
+    public void removeListElement(final String listAddress, final String element) {
+        listCollection.deleteOne(and(eq("address", listAddress), eq("element", element)));
+        incrementVersions(listAddress + "/elements");
+    }
+
+    // Archives the node at address and its parents and increments their versions, keeping their
+    // values. Missing nodes are skipped.
+    private void incrementVersions(final String address) {
+        final List<String> affectedNodes = new LinkedList<String>();
+        affectedNodes.add(address);
+        affectedNodes.addAll(AddressParser.getAllParentsOfAddress(address, 2));
+        for (final String entry : affectedNodes) {
+            final Document currentDocument = currentCollection.find(eq("address", entry)).first();
+            if (currentDocument == null) {
+                continue;
+            }
+            archiveCollection.insertOne(currentDocument);
+            currentCollection.updateOne(eq("address", entry), inc("version", 1));
+        }
     }
 
     @Override
@@ -335,6 +394,42 @@ public class MongodbDatabase implements VslNodeDatabase {
         return results;
     }
 
+    @Override
+    public TreeMap<String, List<InternalNode>> getNodeHistory(final String address,
+            final VslAddressParameters params) throws NodeNotExistingException {
+        if (address == null) {
+            throw new NodeNotExistingException("address was null");
+        }
+        if (currentCollection.find(eq("address", address)).first() == null) {
+            throw new NodeNotExistingException("node does not exist");
+        }
+
+        final List<Bson> appliedFilters = new ArrayList<Bson>();
+        Bson range = gte("timestamp", new Date(Math.max(0, params.getFromTimestamp())));
+        if (params.getToTimestamp() >= 0) {
+            range = and(range, lte("timestamp", new Date(params.getToTimestamp())));
+        }
+        appliedFilters.add(Aggregates.match(range));
+        filterRequestedDepth(appliedFilters, params.getDepth(), address);
+        appliedFilters.add(Aggregates.sort(Sorts.ascending("timestamp")));
+
+        final TreeMap<String, List<InternalNode>> results =
+                new TreeMap<String, List<InternalNode>>();
+        final MongoCursor<Document> cursor = archiveCollection.aggregate(appliedFilters)
+                .iterator();
+        while (cursor.hasNext()) {
+            final Document currentDocument = cursor.next();
+            final String nodeAddress = currentDocument.getString("address");
+            List<InternalNode> values = results.get(nodeAddress);
+            if (values == null) {
+                values = new ArrayList<InternalNode>();
+                results.put(nodeAddress, values);
+            }
+            values.add(constructInternalNode(currentDocument, params));
+        }
+        return results;
+    }
+
     /**
      * Adds filters to aggregation pipeline, which are needed to retrieve requested version of a
      * node from "archive" collection
@@ -11,10 +11,12 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 
+import org.apache.commons.lang3.StringUtils;
 import org.ds2os.vsl.core.VslIdentity;
 import org.ds2os.vsl.core.node.VslMutableNode;
 import org.ds2os.vsl.core.node.VslNode;
 import org.ds2os.vsl.core.node.VslNodeFactory;
+import org.ds2os.vsl.core.utils.AddressParameters;
 import org.ds2os.vsl.core.utils.AddressParser;
 import org.ds2os.vsl.core.utils.VslAddressParameters;
 import org.ds2os.vsl.exception.InvalidValueException;
@@ -60,6 +62,11 @@ public class NodeTree implements VslNodeTree {
      */
     private final VslNodeFactory nodeFactory;
 
+    /**
+     * The cached access rights of identities on nodes.
+     */
+    private final AccessMasks accessMasks;
+
     /**
      * Constructor. Creates a new NodeTree Objects that treats localID as the id of the local KA.
      * This constructor can be used to specify a specific implementation of NodeDatabase that should
@@ -81,6 +88,7 @@ public class NodeTree implements VslNodeTree {
         this.localKA = localID;
         this.lockControl = lockControl;
         this.nodeFactory = nodeFactory;
+        this.accessMasks = new AccessMasks();
     }
 
     @Override
@@ -165,6 +173,7 @@ public class NodeTree implements VslNodeTree {
         }
         myNodeDatabase.addNode(address, types, extendedReaders, extendedWriters, restriction,
                 cacheParameters);
+        accessMasks.invalidate(address);
 
         // LOGGER.debug("added new node at address {} ",address);
     }
@@ -174,40 +183,74 @@ public class NodeTree implements VslNodeTree {
             final VslIdentity identity)
             throws NoPermissionException, NodeNotExistingException, InvalidValueException {
         TreeMap<String, InternalNode> nodes = null;
-        // TODO: re-enable version/timestamp based requests
-        // if (parameters != null && !parameters.isEmpty()) {
-        // switch (getParameterType(parameters)) {
-        // case 1:
-        // // version
-        // nodes = myNodeDatabase.getNodeRecord(address, true, Integer.parseInt(parameters));
-        // break;
-        // case 2:
-        // nodes = myNodeDatabase.getNodeRecord(address, true,
-        // getTimestampFromParameter(parameters, 1),
-        // getTimestampFromParameter(parameters, 2));
-        // break;
-        // default:
-        // throw new InvalidValueException(
-        // "InvalidParameter, must be an integer (version) or timestamp range: "
-        // + parameters);
-        // }
-        // } else {
-        // nodes = myNodeDatabase.getNodeRecord(address, true);
-        // for (Entry<String, InternalNode> node : nodes.entrySet()) {
-        // LOGGER.debug("address: {}, value: {}, type: {}, reader: {}", node.getKey(),
-        // node.getValue().getValue(), node.getValue().getType(),
-        // node.getValue().getReaderIDs());
-        // }
-        // }
+        final AccessMasks.IdentityMask access = accessMasks.forIdentity(identity);
+        // the database resolves version and timestamp parameters to the archived values.
         nodes = myNodeDatabase.getNodeRecord(address, parameters);
 
+        final TreeMap<String, InternalNode> validNodes = filterAccessible(nodes, access);
+        if (parameters.getRequestedVersion() < 0 && parameters.getToTimestamp() < 0) {
+            fillListElements(validNodes, access);
+        }
+        checkAccessible(address, validNodes, identity);
+
+        final Map<String, VslNode> resultNodes = new HashMap<String, VslNode>();
+        resultNodes.put("",
+                nodeFactory.createImmutableLeaf(validNodes.get(address).getType(),
+                        validNodes.get(address).getValue(), validNodes.get(address).getTimestamp(),
+                        validNodes.get(address).getVersion(),
+                        getAccessFlag(access.get(address, validNodes.get(address))),
+                        Restrictions.splitRestrictions(validNodes.get(address).getRestriction())));
+        validNodes.remove(address);
+
+        // iterate through all possible children and add them to the VslNode
+        String parent;
+        if (address.equals("/")) {
+            parent = address;
+        } else {
+            parent = address + "/";
+        }
+        for (final Entry<String, InternalNode> node : validNodes.entrySet()) {
+
+            resultNodes.put(node.getKey().replaceFirst(parent, ""),
+                    nodeFactory.createImmutableLeaf(node.getValue().getType(),
+                            node.getValue().getValue(), node.getValue().getTimestamp(),
+                            node.getValue().getVersion(),
+                            getAccessFlag(access.get(node.getKey(), node.getValue())),
+                            Restrictions.splitRestrictions(node.getValue().getRestriction())));
+            // LOGGER.debug(node.getKey() + " " +node.getValue().getReaderIDs().toString() +" " +
+            // node.getValue().getValue());
+        }
+
+        final VslMutableNode resultNode = nodeFactory.createMutableNode(resultNodes.entrySet());
+        if (parameters.getRequestedVersion() < 0 && parameters.getToTimestamp() < 0) {
+            // uncommitted values of locked nodes are newer than any archived value.
+            lockControl.updateGetResultWithLockedData(address, resultNode,
+                    identity.getClientId());
+        }
+        return resultNode;
+    }
+
+    /**
+     * Returns the retrieved nodes the requester may see. Nodes that aren't readable get dummy
+     * values and are only kept if they are writable or needed for the structure of readable or
+     * writable nodes below them.
+     *
+     * @param nodes
+     *            The retrieved nodes, modified in place.
+     * @param access
+     *            The access rights of the requester.
+     * @return The nodes to return to the requester.
+     */
+    private static TreeMap<String, InternalNode> filterAccessible(
+            final TreeMap<String, InternalNode> nodes, final AccessMasks.IdentityMask access) {
         final TreeMap<String, InternalNode> validNodes = new TreeMap<String, InternalNode>();
         // if a subtree is retrieved, check access rights for all child nodes, and return
         // only additional data for those nodes, the requester has access rights to. Inner nodes
         // that are required for maintaining the node structure in the response should be
         // returned but all data should be nulled.
         for (final Entry<String, InternalNode> node : nodes.descendingMap().entrySet()) {
-            if (!node.getValue().isReadableBy(identity)) {
+            final int mask = access.get(node.getKey(), node.getValue());
+            if ((mask & AccessMasks.READ) == 0) {
                 // if not readable use dummyvalues
                 node.getValue().setValue(null);
                 node.getValue().setType(new LinkedList<String>());
@@ -215,17 +258,17 @@ public class NodeTree implements VslNodeTree {
                 node.getValue().setVersion(-1);
                 node.getValue().setRestriction("");
                 // if writable, store with dummyvalues.
-                if (node.getValue().isWritableBy(identity)) {
+                if ((mask & AccessMasks.WRITE) != 0) {
                     validNodes.put(node.getKey(), node.getValue());
                 } else {
                     // if there is any child already in the validList nodes, add the with dummy
                     // values, even though not read and writable, since we want to keep the
-                    // structure intact.
-                    for (final String addr : validNodes.keySet()) {
-                        if (addr.startsWith(node.getKey())) {
-                            validNodes.put(node.getKey(), node.getValue());
-                            break;
-                        }
+                    // structure intact. Children are visited first and sorted directly after
+                    // the prefix of their parent, so looking at the next valid address suffices.
+                    final String prefix = node.getKey().equals("/") ? "/" : node.getKey() + "/";
+                    final String child = validNodes.ceilingKey(prefix);
+                    if (child != null && child.startsWith(prefix)) {
+                        validNodes.put(node.getKey(), node.getValue());
                     }
                 }
             } else {
@@ -233,61 +276,111 @@ public class NodeTree implements VslNodeTree {
             }
 
         }
+        return validNodes;
+    }
+
+    /**
+     * Checks that the requester may see any node of the requested subtree.
+     *
+     * @param address
+     *            The requested address.
+     * @param validNodes
+     *            The nodes the requester may see, see
+     *            {@link #filterAccessible(TreeMap, AccessMasks.IdentityMask)}.
+     * @param identity
+     *            The requester.
+     * @throws NoPermissionException
+     *             If the node and none of its children is readable or writable.
+     */
+    private static void checkAccessible(final String address,
+            final TreeMap<String, InternalNode> validNodes, final VslIdentity identity)
+            throws NoPermissionException {
         if (validNodes.size() == 0) {
             throw new NoPermissionException(Arrays.deepToString(identity.getAccessIDs().toArray())
                     + " cannot read node at " + address + " or any child");
         }
+    }
 
-        final Map<String, VslNode> resultNodes = new HashMap<String, VslNode>();
-        resultNodes.put("",
-                nodeFactory.createImmutableLeaf(validNodes.get(address).getType(),
-                        validNodes.get(address).getValue(), validNodes.get(address).getTimestamp(),
-                        validNodes.get(address).getVersion(),
-                        getAccessFlag(validNodes.get(address), identity),
-                        Restrictions.splitRestrictions(validNodes.get(address).getRestriction())));
-        validNodes.remove(address);
-
-        // iterate through all possible children and add them to the VslNode
-        String parent;
-        if (address.equals("/")) {
-            parent = address;
-        } else {
-            parent = address + "/";
-        }
+    /**
+     * Sets the value of the elements nodes of retrieved lists to the list elements stored in the
+     * list table of the database, the stored value isn't updated when elements change. Lists that
+     * weren't migrated yet still keep their elements as value of the elements node and are left
+     * untouched, as are nodes named elements that aren't part of a list (they have no entries in
+     * the list table) and nodes the requester can't read.
+     *
+     * @param validNodes
+     *            The nodes returned to the requester, modified in place.
+     * @param access
+     *            The access rights of the requester.
+     */
+    private void fillListElements(final TreeMap<String, InternalNode> validNodes,
+            final AccessMasks.IdentityMask access) {
         for (final Entry<String, InternalNode> node : validNodes.entrySet()) {
-
-            resultNodes.put(node.getKey().replaceFirst(parent, ""),
-                    nodeFactory.createImmutableLeaf(node.getValue().getType(),
-                            node.getValue().getValue(), node.getValue().getTimestamp(),
-                            node.getValue().getVersion(), getAccessFlag(node.getValue(), identity),
-                            Restrictions.splitRestrictions(node.getValue().getRestriction())));
-            // LOGGER.debug(node.getKey() + " " +node.getValue().getReaderIDs().toString() +" " +
-            // node.getValue().getValue());
+            if (!node.getKey().endsWith("/elements")
+                    || !access.canRead(node.getKey(), node.getValue())) {
+                continue;
+            }
+            final String listAddress = node.getKey().substring(0,
+                    node.getKey().length() - "/elements".length());
+            final Map<String, Long> elements = myNodeDatabase.getListElements(listAddress);
+            if (!elements.isEmpty()) {
+                node.getValue().setValue(
+                        StringUtils.join(elements.keySet(), VslNodeDatabase.LIST_SEPARATOR));
+            }
         }
+    }
 
-        final VslMutableNode resultNode = nodeFactory.createMutableNode(resultNodes.entrySet());
-        lockControl.updateGetResultWithLockedData(address, resultNode, identity.getClientId());
-        return resultNode;
+    @Override
+    public final Map<String, List<VslNode>> getHistory(final String address,
+            final VslAddressParameters parameters, final VslIdentity identity)
+            throws NoPermissionException, NodeNotExistingException {
+        final AccessMasks.IdentityMask access = accessMasks.forIdentity(identity);
+        // the same rules as for gets apply, based on the current access rights of the subtree.
+        final TreeMap<String, InternalNode> validNodes = filterAccessible(
+                myNodeDatabase.getNodeRecord(address,
+                        new AddressParameters().withDepth(parameters.getDepth())),
+                access);
+        checkAccessible(address, validNodes, identity);
+        final TreeMap<String, List<InternalNode>> history = myNodeDatabase
+                .getNodeHistory(address, parameters);
+        final Map<String, List<VslNode>> result = new LinkedHashMap<String, List<VslNode>>();
+        for (final Entry<String, List<InternalNode>> node : history.entrySet()) {
+            final InternalNode current = validNodes.get(node.getKey());
+            if (current == null) {
+                continue;
+            }
+            final int mask = access.get(node.getKey(), current);
+            if ((mask & AccessMasks.READ) == 0) {
+                // kept for the structure only, the values stay hidden.
+                continue;
+            }
+            final List<VslNode> values = new ArrayList<VslNode>(node.getValue().size());
+            for (final InternalNode value : node.getValue()) {
+                values.add(nodeFactory.createImmutableLeaf(value.getType(), value.getValue(),
+                        value.getTimestamp(), value.getVersion(), getAccessFlag(mask),
+                        Restrictions.splitRestrictions(value.getRestriction())));
+            }
+            result.put(node.getKey(), values);
+        }
+        return result;
     }
 
     /**
-     * Returns the access flag for the given internal node.
+     * Returns the access flag for the given access rights.
      *
-     * @param node
-     *            The {@link InternalNode} to check.
-     * @param id
-     *            The {@link VslIdentity} to check.
+     * @param mask
+     *            The access rights, see {@link AccessMasks}.
      * @return the access flags for the given node.
      */
-    private String getAccessFlag(final InternalNode node, final VslIdentity id) {
-        if (node.isReadableBy(id)) {
-            if (!node.isWritableBy(id)) {
+    private String getAccessFlag(final int mask) {
+        if ((mask & AccessMasks.READ) != 0) {
+            if ((mask & AccessMasks.WRITE) == 0) {
                 return "r"; // read only
             } else {
                 return ""; // read+write
             }
         } else {
-            if (node.isWritableBy(id)) {
+            if ((mask & AccessMasks.WRITE) != 0) {
                 return "w"; // write only
             } else {
                 return "-"; // no access
@@ -317,6 +410,7 @@ public class NodeTree implements VslNodeTree {
     public final void removeNode(final String address) throws NodeNotExistingException {
         if (myNodeDatabase.nodeExists(address)) {
             myNodeDatabase.removeNode(address);
+            accessMasks.invalidate(address);
         } else {
             throw new NodeNotExistingException(
                     "Can't remove Node " + address + " since it doesn't exist");
@@ -327,6 +421,7 @@ public class NodeTree implements VslNodeTree {
     public final Collection<String> setValue(final String address, final VslIdentity identity,
             final VslNode node) throws NoPermissionException, NodeNotExistingException,
             InvalidValueException, NodeLockedException {
+        final AccessMasks.IdentityMask access = accessMasks.forIdentity(identity);
         final TreeMap<String, MetaNode> metaData = myNodeDatabase.getNodeMetaData(address, true);
         // Collect all nodes that actually should be written (can't write directly since we need to
         // check access first for all nodes)
@@ -336,12 +431,12 @@ public class NodeTree implements VslNodeTree {
         // check initial node first, only check nodes which have values set
         if (node.getValue() != null) {
             try {
-                if (!metaData.get(address).isWritableBy(identity)) {
+                if (!access.canWrite(address, metaData.get(address))) {
                     throw new NoPermissionException(identity.getAccessIDs().toString()
                             + " cannot write node at " + address + ", nothing changed.");
                 }
-                if (!Restrictions.evaluateNumberText(node.getValue(),
-                        metaData.get(address).getRestriction())) {
+                if (!Restrictions.getValidator(metaData.get(address).getRestriction())
+                        .isValid(node.getValue())) {
                     throw new InvalidValueException("Invalid value: " + node.getValue()
                             + " for restriction: " + metaData.get(address).getRestriction()
                             + " at node: " + address);
@@ -357,13 +452,16 @@ public class NodeTree implements VslNodeTree {
         for (final Entry<String, VslNode> child : node.getAllChildren()) {
             if (child.getValue().getValue() != null) {
                 try {
-                    if (!metaData.get(address + "/" + child.getKey()).isWritableBy(identity)) {
+                    final String childAddress = address + "/" + child.getKey();
+                    if (!access.canWrite(childAddress, metaData.get(childAddress))) {
                         throw new NoPermissionException(
                                 identity.getAccessIDs().toString() + " cannot write node at "
                                         + address + "/" + child.getKey() + ", nothing changed.");
                     }
-                    if (!Restrictions.evaluateNumberText(child.getValue().getValue(),
-                            metaData.get(address + "/" + child.getKey()).getRestriction())) {
+                    if (!Restrictions
+                            .getValidator(
+                                    metaData.get(address + "/" + child.getKey()).getRestriction())
+                            .isValid(child.getValue().getValue())) {
                         throw new InvalidValueException("Invalid value: "
                                 + child.getValue().getValue() + " for restriction: "
                                 + metaData.get(address + "/" + child.getKey()).getRestriction()
@@ -2,8 +2,12 @@ package org.ds2os.vsl.kor;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -17,6 +21,7 @@ import org.ds2os.vsl.core.utils.VslAddressParameters;
 import org.ds2os.vsl.exception.NodeNotExistingException;
 import org.ds2os.vsl.kor.dataStructures.InternalNode;
 import org.ds2os.vsl.kor.dataStructures.MetaNode;
+import org.ds2os.vsl.kor.dataStructures.StructureHashTree;
 
 import com.orientechnologies.orient.client.remote.OServerAdmin;
 import com.orientechnologies.orient.core.sql.OCommandSQL;
@@ -71,6 +76,8 @@ public class OrientdbDatabase implements VslNodeDatabase {
                     .execute();
             graph.command(new OCommandSQL("CREATE PROPERTY vslNode.version LONG")).execute();
             graph.command(new OCommandSQL("CREATE PROPERTY vslNode.archive EMBEDDEDMAP")).execute();
+            graph.command(new OCommandSQL("CREATE PROPERTY vslNode.listElements EMBEDDEDMAP"))
+                    .execute();
             graph.command(new OCommandSQL("CREATE PROPERTY vslNode.timestamp DATETIME")).execute();
 
             graph.shutdown();
@@ -138,7 +145,7 @@ public class OrientdbDatabase implements VslNodeDatabase {
 
     @Override
     public String getHashOfSubtree(final String rootAddress, final List<String> exludeSubtrees) {
-        long result = 17;
+        long result = 0;
 
         final String cmd = "SELECT FROM vslNode WHERE address LIKE '" + rootAddress + "%'";
         final List<String> exludeSubtreesFormated = makeSubtreeAddressAbsolute(rootAddress,
@@ -159,8 +166,7 @@ public class OrientdbDatabase implements VslNodeDatabase {
                 final List<String> currentTypes = (List<String>) currentVertex.getProperty("types");
                 final String currentTypesFormated = StringUtils.join(currentTypes, LIST_SEPARATOR);
 
-                result = 37 * result + currentAddress.hashCode();
-                result = 37 * result + currentTypesFormated.hashCode();
+                result += StructureHashTree.hashOfNode(currentAddress, currentTypesFormated);
 
             }
         } catch (final Exception e) {
@@ -170,7 +176,7 @@ public class OrientdbDatabase implements VslNodeDatabase {
             graph.shutdown();
         }
 
-        return Long.toHexString(result);
+        return StructureHashTree.hashToString(result);
     }
 
     private List<String> makeSubtreeAddressAbsolute(final String rootAddress,
@@ -259,6 +265,100 @@ public class OrientdbDatabase implements VslNodeDatabase {
 
     }
 
+    @Override
+    public LinkedHashMap<String, Long> getListElements(final String listAddress) {
+        final LinkedHashMap<String, Long> result = new LinkedHashMap<String, Long>();
+        final Map<String, Long> elements = loadListElements(listAddress);
+        final List<Map.Entry<String, Long>> sorted = new ArrayList<Map.Entry<String, Long>>(
+                elements.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(final Map.Entry<String, Long> o1, final Map.Entry<String, Long> o2) {
+                return o1.getValue().compareTo(o2.getValue());
+            }
+        });
+        for (final Map.Entry<String, Long> element : sorted) {
+            result.put(element.getKey(), element.getValue());
+        }
+        return result;
+    }
+
+    @Override
+    public void putListElements(final String listAddress, final Map<String, Long> elements) {
+        final Map<String, Long> stored = loadListElements(listAddress);
+        stored.putAll(elements);
+        storeListElements(listAddress, stored);
+    }
+
+    @Override
+    public void removeListElement(final String listAddress, final String element) {
+        final Map<String, Long> stored = loadListElements(listAddress);
+        stored.remove(element);
+        storeListElements(listAddress, stored);
+    }
+
+    // Returns the list elements stored at the vertex of the list node. They are kept as embedded
+    // map of the vertex, so unlike the other backends every change rewrites the whole map.
+    private Map<String, Long> loadListElements(final String listAddress) {
+        final Map<String, Long> result = new HashMap<String, Long>();
+        final OrientGraph graph = graphFactory.getTx();
+        try {
+            final Iterable<Vertex> query = graph
+                    .command(new OCommandSQL("SELECT FROM vslNode WHERE address = ?"))
+                    .execute(listAddress);
+            final Iterator<Vertex> vertices = query.iterator();
+            if (vertices.hasNext()) {
+                final Map<String, Long> elements = vertices.next().getProperty("listElements");
+                if (elements != null) {
+                    result.putAll(elements);
+                }
+            }
+        } finally {
+            graph.shutdown();
+        }
+        return result;
+    }
+
+    // Stores the list elements at the vertex of the list node and increments the versions of the
+    // elements node and its parents in the same transaction.
+    private void storeListElements(final String listAddress, final Map<String, Long> elements) {
+        final List<String> affectedNodes = new LinkedList<String>();
+        affectedNodes.add(listAddress + "/elements");
+        affectedNodes.addAll(AddressParser.getAllParentsOfAddress(listAddress + "/elements", 2));
+
+        final OrientGraph graph = graphFactory.getTx();
+        try {
+            graph.command(new OCommandSQL("UPDATE vslNode SET listElements = ? WHERE address = ?"))
+                    .execute(elements, listAddress);
+
+            for (final String address : affectedNodes) {
+                final Iterable<Vertex> query = graph
+                        .command(new OCommandSQL("SELECT FROM vslNode WHERE address = ?"))
+                        .execute(address);
+                final Iterator<Vertex> vertices = query.iterator();
+                if (!vertices.hasNext()) {
+                    continue;
+                }
+                final Vertex currentNode = vertices.next();
+                final Map<Long, String> archive = currentNode.getProperty("archive");
+                long currentVersion = currentNode.getProperty("version");
+                currentVersion++;
+                final String currentValue = currentNode.getProperty("value");
+                archive.put(currentVersion, currentValue);
+
+                graph.command(new OCommandSQL(
+                        "UPDATE vslNode SET version = ?, archive = ? WHERE address = ?"))
+                        .execute(currentVersion, archive, address);
+            }
+            graph.commit();
+        } catch (final RuntimeException e) {
+            graph.rollback();
+            throw e;
+        } finally {
+            graph.shutdown();
+        }
+    }
+
     @Override
     public void setValueTree(final Map<String, String> values) throws NodeNotExistingException {
 
@@ -407,6 +507,27 @@ public class OrientdbDatabase implements VslNodeDatabase {
         return results;
     }
 
+    @Override
+    public TreeMap<String, List<InternalNode>> getNodeHistory(final String address,
+            final VslAddressParameters params) throws NodeNotExistingException {
+        // the archive of a vertex maps versions to values without their timestamps, so only the
+        // newest value of each node can be checked against the requested time range.
+        final TreeMap<String, List<InternalNode>> results =
+                new TreeMap<String, List<InternalNode>>();
+        final long from = Math.max(0, params.getFromTimestamp());
+        final long to = params.getToTimestamp() < 0 ? Long.MAX_VALUE : params.getToTimestamp();
+        for (final Map.Entry<String, InternalNode> node : getNodeRecord(address, params)
+                .entrySet()) {
+            final Date timestamp = node.getValue().getTimestamp();
+            if (timestamp != null && timestamp.getTime() >= from && timestamp.getTime() <= to) {
+                final List<InternalNode> values = new ArrayList<InternalNode>();
+                values.add(node.getValue());
+                results.put(node.getKey(), values);
+            }
+        }
+        return results;
+    }
+
     // Creates an InternalNode depending on parameters
     private InternalNode constructInternalNode(final Vertex vertex, final VslAddressParameters params) {
         InternalNode node;
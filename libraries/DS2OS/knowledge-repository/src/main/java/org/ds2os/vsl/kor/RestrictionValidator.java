@@ -0,0 +1,236 @@
+package org.ds2os.vsl.kor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The compiled form of a restriction string (e.g. "minimumValue='3',regularExpression='[0-9]*'").
+ * The string is parsed once by {@link #compile(String)}, regular expressions are precompiled and
+ * numeric bounds are parsed, so checking a value doesn't need to parse the restrictions again.
+ * Instances are immutable and can be shared between threads, usually they are retrieved via
+ * {@link Restrictions#getValidator(String)}.
+ */
+public final class RestrictionValidator {
+
+    /**
+     * Get the logger instance for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RestrictionValidator.class);
+
+    /**
+     * Validator for nodes without restrictions.
+     */
+    public static final RestrictionValidator EMPTY = new RestrictionValidator("");
+
+    /**
+     * The restriction string this validator was compiled from.
+     */
+    private final String restrictions;
+
+    /**
+     * Whether any value must be rejected, e.g. because a numeric bound couldn't be parsed.
+     */
+    private final boolean rejectAll;
+
+    /**
+     * Whether a minimumValue restriction is given.
+     */
+    private final boolean hasMinimum;
+
+    /**
+     * The minimum value, if {@link #hasMinimum} is true.
+     */
+    private final int minimum;
+
+    /**
+     * Whether a maximumValue restriction is given.
+     */
+    private final boolean hasMaximum;
+
+    /**
+     * The maximum value, if {@link #hasMaximum} is true.
+     */
+    private final int maximum;
+
+    /**
+     * The compiled regularExpression restrictions a value must match.
+     */
+    private final Pattern[] patterns;
+
+    /**
+     * The types allowed as list entries, null if all types are allowed.
+     */
+    private final List<String> allowedListTypes;
+
+    /**
+     * The maximum amount of entries of a list.
+     */
+    private final int maxListEntries;
+
+    /**
+     * The minimum amount of entries of a list.
+     */
+    private final int minListEntries;
+
+    /**
+     * Constructor, parses the restriction string.
+     *
+     * @param restrictions
+     *            The restriction string.
+     */
+    private RestrictionValidator(final String restrictions) {
+        this.restrictions = restrictions;
+        boolean reject = false;
+        Integer min = null;
+        Integer max = null;
+        final List<Pattern> regularExpressions = new ArrayList<Pattern>();
+        List<String> listTypes = null;
+        Integer maxEntries = null;
+        Integer minEntries = null;
+
+        for (final String restriction : Restrictions.getRestrictionArray(restrictions)) {
+            final String[] s = Restrictions.parseRestriction(restriction);
+            final String name = s[0];
+            final String value = s.length == 2 ? s[1] : null;
+            if (name.equals("minimumValue")) {
+                try {
+                    final int bound = Integer.parseInt(value);
+                    min = min == null ? bound : Math.max(min, bound);
+                } catch (final NumberFormatException e) {
+                    reject = true;
+                }
+            } else if (name.equals("maximumValue")) {
+                try {
+                    final int bound = Integer.parseInt(value);
+                    max = max == null ? bound : Math.min(max, bound);
+                } catch (final NumberFormatException e) {
+                    reject = true;
+                }
+            } else if (name.equals("regularExpression") && value != null) {
+                try {
+                    regularExpressions.add(Pattern.compile(value));
+                } catch (final PatternSyntaxException e) {
+                    LOGGER.error("Invalid regularExpression restriction {}: {}", value,
+                            e.getMessage());
+                    reject = true;
+                }
+            } else if (name.equals("allowedTypes") && value != null) {
+                listTypes = Collections.unmodifiableList(
+                        new ArrayList<String>(Arrays.asList(StringUtils.split(value, ";,"))));
+            } else if (name.equals("maximumEntries") && maxEntries == null) {
+                try {
+                    maxEntries = Integer.parseInt(value);
+                } catch (final NumberFormatException e) {
+                    maxEntries = Integer.MAX_VALUE;
+                }
+            } else if (name.equals("minimumEntries") && minEntries == null) {
+                try {
+                    minEntries = Integer.parseInt(value);
+                } catch (final NumberFormatException e) {
+                    minEntries = 0;
+                }
+            }
+        }
+
+        rejectAll = reject;
+        hasMinimum = min != null;
+        minimum = hasMinimum ? min : 0;
+        hasMaximum = max != null;
+        maximum = hasMaximum ? max : 0;
+        patterns = regularExpressions.toArray(new Pattern[regularExpressions.size()]);
+        allowedListTypes = listTypes;
+        maxListEntries = maxEntries == null ? Integer.MAX_VALUE : maxEntries;
+        minListEntries = minEntries == null ? 0 : minEntries;
+    }
+
+    /**
+     * Compiles the given restriction string. Use {@link Restrictions#getValidator(String)} to reuse
+     * already compiled restrictions.
+     *
+     * @param restrictions
+     *            The restrictions to compile. Format:
+     *            restriction1='restriction',restriction2='restriction'
+     * @return The compiled restrictions.
+     */
+    public static RestrictionValidator compile(final String restrictions) {
+        if (restrictions == null || restrictions.trim().isEmpty()) {
+            return EMPTY;
+        }
+        return new RestrictionValidator(restrictions);
+    }
+
+    /**
+     * Returns the restriction string this validator was compiled from.
+     *
+     * @return The restriction string.
+     */
+    public String getRestrictions() {
+        return restrictions;
+    }
+
+    /**
+     * Checks if a given value matches all restrictions.
+     *
+     * @param value
+     *            The value to be evaluated, null is treated as empty value.
+     * @return True if all restrictions are matched or empty, false otherwise
+     */
+    public boolean isValid(final String value) {
+        if (rejectAll) {
+            return false;
+        }
+        final String valueToTest = value == null ? "" : value;
+        if (hasMinimum || hasMaximum) {
+            final int number;
+            try {
+                number = Integer.parseInt(valueToTest);
+            } catch (final NumberFormatException e) {
+                return false;
+            }
+            if (hasMinimum && number < minimum || hasMaximum && number > maximum) {
+                return false;
+            }
+        }
+        for (final Pattern pattern : patterns) {
+            if (!pattern.matcher(valueToTest).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the types a VSL list can have as entries.
+     *
+     * @return The unmodifiable list of allowed types. If all types are allowed, null is returned.
+     */
+    public List<String> getAllowedListTypes() {
+        return allowedListTypes;
+    }
+
+    /**
+     * Returns the maximum amount of entries that is allowed in a VSL list.
+     *
+     * @return The maximum amount of entries, Integer.MAX_VALUE if not restricted.
+     */
+    public int getMaxListEntries() {
+        return maxListEntries;
+    }
+
+    /**
+     * Returns the minimum amount of entries that a VSL list must contain.
+     *
+     * @return The minimum amount of entries, 0 if not restricted.
+     */
+    public int getMinListEntries() {
+        return minListEntries;
+    }
+}
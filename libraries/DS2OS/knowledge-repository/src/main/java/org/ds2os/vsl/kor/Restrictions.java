@@ -1,14 +1,10 @@
 package org.ds2os.vsl.kor;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
-import org.apache.commons.lang3.StringUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This utility class provides methods to evaluate the restrictions that come with certain models.
@@ -18,9 +14,44 @@ import org.slf4j.LoggerFactory;
 public final class Restrictions {
 
     /**
-     * Get the logger instance for this class.
+     * The maximum number of compiled restrictions kept in {@link #VALIDATORS}. Further restrictions
+     * are compiled on every use, which only happens if nodes are created with arbitrary
+     * restrictions instead of the ones defined by models.
+     */
+    private static final int MAX_CACHED_VALIDATORS = 4096;
+
+    /**
+     * The compiled restrictions, keyed by their restriction string. Nodes of the same type share
+     * the restriction string of their model, so they share the validator as well.
      */
-    private static final Logger LOGGER = LoggerFactory.getLogger(Restrictions.class);
+    private static final ConcurrentMap<String, RestrictionValidator> VALIDATORS =
+            new ConcurrentHashMap<String, RestrictionValidator>();
+
+    /**
+     * Returns the compiled form of the given restrictions. Restrictions are compiled once, usually
+     * when a model that contains them is instantiated, and reused afterwards.
+     *
+     * @param restrictions
+     *            The restrictions. Format: restriction1='restriction',restriction2='restriction'
+     * @return The compiled restrictions.
+     */
+    public static RestrictionValidator getValidator(final String restrictions) {
+        if (restrictions == null || restrictions.isEmpty()) {
+            return RestrictionValidator.EMPTY;
+        }
+        RestrictionValidator validator = VALIDATORS.get(restrictions);
+        if (validator == null) {
+            validator = RestrictionValidator.compile(restrictions);
+            if (VALIDATORS.size() < MAX_CACHED_VALIDATORS) {
+                final RestrictionValidator existing = VALIDATORS.putIfAbsent(restrictions,
+                        validator);
+                if (existing != null) {
+                    validator = existing;
+                }
+            }
+        }
+        return validator;
+    }
 
     /**
      * This method evaluates if a given value is matched by a restriction String.
@@ -33,40 +64,7 @@ public final class Restrictions {
      * @return True if all restrictions are matched or empty, false otherwise
      */
     public static boolean evaluateNumberText(final String value, final String restrictions) {
-        String valueToTest = value;
-        if (restrictions == null || restrictions.equals("")) {
-            return true;
-        }
-        if (value == null) {
-            valueToTest = "";
-        }
-
-        Boolean result = true;
-
-        // Split the restrictions (e.g. minimumValue, maximumValue)
-        for (final String restriction : getRestrictionArray(restrictions)) {
-            final String[] s = parseRestriction(restriction);
-            if (s[0].equals("minimumValue")) {
-                try {
-                    if (Integer.parseInt(valueToTest) < Integer.parseInt(s[1])) {
-                        result = false;
-                    }
-                } catch (final Exception e) {
-                    result = false;
-                }
-            } else if (s[0].equals("maximumValue")) {
-                try {
-                    if (Integer.parseInt(valueToTest) > Integer.parseInt(s[1])) {
-                        result = false;
-                    }
-                } catch (final Exception e) {
-                    result = false;
-                }
-            } else if (s[0].equals("regularExpression") && !valueToTest.matches(s[1])) {
-                result = false;
-            }
-        }
-        return result;
+        return getValidator(restrictions).isValid(value);
     }
 
     /**
@@ -78,26 +76,7 @@ public final class Restrictions {
      * @return The List of allowed types. If all types are allowed, null is returned.
      */
     public static List<String> getAllowedListTypes(final String restrictions) {
-        if (restrictions == null || restrictions.isEmpty()) {
-            return null;
-        }
-        List<String> allowedTypes = null;
-        for (final String restriction : getRestrictionArray(restrictions)) {
-            final String[] s = parseRestriction(restriction);
-
-            if (s[0].equals("allowedTypes")) {
-
-                try {
-                    allowedTypes = new ArrayList<String>(
-                            Arrays.asList(StringUtils.split(s[1], ";,")));
-                    // LOGGER.debug(allowedTypes.toString());
-                } catch (final Exception e) {
-                    LOGGER.error("Exception retrieving allowedTypes restrictions: {}",
-                            e.getMessage());
-                }
-            }
-        }
-        return allowedTypes;
+        return getValidator(restrictions).getAllowedListTypes();
     }
 
     /**
@@ -110,17 +89,7 @@ public final class Restrictions {
      * @return The maximum amount of entries a VSL list can have.
      */
     public static int getMaxListEntries(final String restrictions) {
-        for (final String restriction : getRestrictionArray(restrictions)) {
-            final String[] s = parseRestriction(restriction);
-            if (s[0].equals("maximumEntries")) {
-                try {
-                    return Integer.parseInt(s[1]);
-                } catch (final NumberFormatException e) {
-                    return Integer.MAX_VALUE;
-                }
-            }
-        }
-        return Integer.MAX_VALUE;
+        return getValidator(restrictions).getMaxListEntries();
     }
 
     /**
@@ -132,17 +101,7 @@ public final class Restrictions {
      * @return The minimum amount of entries a VSL list must have.
      */
     public static int getMinListEntries(final String restrictions) {
-        for (final String restriction : getRestrictionArray(restrictions)) {
-            final String[] s = parseRestriction(restriction);
-            if (s[0].equals("minimumEntries")) {
-                try {
-                    return Integer.parseInt(s[1]);
-                } catch (final NumberFormatException e) {
-                    return 0;
-                }
-            }
-        }
-        return 0;
+        return getValidator(restrictions).getMinListEntries();
     }
 
     /**
@@ -153,7 +112,7 @@ public final class Restrictions {
      *            The restrictions String that should be split.
      * @return A String array containing the single constrictions.
      */
-    private static String[] getRestrictionArray(final String restrictions) {
+    static String[] getRestrictionArray(final String restrictions) {
         final String res = restrictions;
         if (res == null || res.trim().isEmpty()) {
             return new String[0];
@@ -174,7 +133,7 @@ public final class Restrictions {
      * @return A string array with two elements, s[0] is the restriction name, s[1] the restricion
      *         value
      */
-    private static String[] parseRestriction(final String restriction) {
+    static String[] parseRestriction(final String restriction) {
         final String[] result = restriction.split("=(?=([^']*'[^']*')*[^']*$)", -1);
         // remove enclosing ''
         if (result.length == 2) {
@@ -1,12 +1,19 @@
 package org.ds2os.vsl.kor;
 
+import java.util.List;
+import java.util.Map;
+
 import org.ds2os.vsl.core.VslConnector;
+import org.ds2os.vsl.core.VslIdentity;
 import org.ds2os.vsl.core.VslKORCacheHandler;
 import org.ds2os.vsl.core.VslKORHash;
 import org.ds2os.vsl.core.VslKORStructureHandler;
 import org.ds2os.vsl.core.VslKORUpdateHandler;
 import org.ds2os.vsl.core.VslRequestHandler;
 import org.ds2os.vsl.core.config.VslKORConfig;
+import org.ds2os.vsl.core.node.VslNode;
+import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.ds2os.vsl.exception.VslException;
 
 /**
  * Interface for the KnowledgeRepository.
@@ -29,4 +36,22 @@ public interface VslKnowledgeRepository extends VslRequestHandler, VslModelInsta
      */
     void activate(VslKORConfig configService, VslConnector connector) throws Exception;
 
+    /**
+     * Returns all values of the node at address and its children (up to the requested depth) that
+     * were written within the time range given by {@link VslAddressParameters#getFromTimestamp()}
+     * and {@link VslAddressParameters#getToTimestamp()}. Only archived values can be returned.
+     *
+     * @param address
+     *            The address of the requested node.
+     * @param params
+     *            The parameters of the request, including the time range.
+     * @param identity
+     *            The identity of the requester.
+     * @return The values of all readable nodes by their address, oldest first.
+     * @throws VslException
+     *             If the node doesn't exist or none of the nodes is readable by identity.
+     */
+    Map<String, List<VslNode>> getHistory(String address, VslAddressParameters params,
+            VslIdentity identity) throws VslException;
+
 }
@@ -1,5 +1,6 @@
 package org.ds2os.vsl.kor;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -79,7 +80,9 @@ public interface VslNodeDatabase {
 
     /**
      * Returns the hash of the structural information of the tree at the given rootAddress
-     * (including rootAddress, excluding given subtrees).
+     * (including rootAddress, excluding given subtrees). The hash is the sum of the
+     * {@link org.ds2os.vsl.kor.dataStructures.StructureHashTree#hashOfNode(String, String)} of all
+     * nodes in the subtree, so all implementations return the same hash for the same structure.
      *
      * @param rootAddress
      *            The root Address of the subtree for which the hash is wanted.
@@ -260,7 +263,9 @@ public interface VslNodeDatabase {
 
     /**
      * Returns a TreeMap (ordered by node addresses) containing the specified node at the given
-     * address and his children.
+     * address and his children. If a version or the end of a time range is requested by the
+     * params, the nodes are returned as they were at the time the requested version of the node
+     * was written, or at the end of the time range.
      *
      * @param address
      *            The address of the node to fetch.
@@ -273,4 +278,64 @@ public interface VslNodeDatabase {
     TreeMap<String, InternalNode> getNodeRecord(String address, VslAddressParameters params)
             throws NodeNotExistingException;
 
+    /**
+     * Returns all archived values of the specified node and his children (depending on the depth
+     * of the params) that were written in the time range given by the params. Nodes without values
+     * in the range are omitted.
+     *
+     * @param address
+     *            The address of the node to fetch.
+     * @param params
+     *            Defines the time range, depth and what information about the values should be
+     *            returned.
+     * @return A TreeMap of the found values of each node, ordered by their timestamp (oldest
+     *         first).
+     * @throws NodeNotExistingException
+     *             Thrown if there is no node at address.
+     */
+    TreeMap<String, List<InternalNode>> getNodeHistory(String address,
+            VslAddressParameters params) throws NodeNotExistingException;
+
+
+    /**
+     * Returns the elements of the list node at listAddress together with their sort keys, ordered
+     * by the sort keys. The elements are stored separately from the node values, so single
+     * elements can be added or removed without rewriting the whole list.
+     *
+     * @param listAddress
+     *            The address of the list node.
+     * @return The names of the list elements mapped to their sort keys, in list order. Empty if the
+     *         list has no stored elements.
+     */
+    LinkedHashMap<String, Long> getListElements(String listAddress);
+
+    /**
+     * Stores elements of the list node at listAddress with the given sort keys. Elements that are
+     * already stored get the new sort key. In the same write the version of the elements node of
+     * the list and its parents is incremented, as if its value was set, but the value itself isn't
+     * touched.
+     *
+     * @param listAddress
+     *            The address of the list node.
+     * @param elements
+     *            The names of the elements mapped to their sort keys.
+     * @throws RuntimeException
+     *             If the elements couldn't be stored, nothing is changed then.
+     */
+    void putListElements(String listAddress, Map<String, Long> elements);
+
+    /**
+     * Removes an element from the list node at listAddress and increments the version of the
+     * elements node of the list and its parents in the same write, like
+     * {@link #putListElements(String, Map)}. Elements of removed list nodes are removed together
+     * with the node by {@link #removeNode(String)}.
+     *
+     * @param listAddress
+     *            The address of the list node.
+     * @param element
+     *            The name of the element.
+     * @throws RuntimeException
+     *             If the element couldn't be removed, nothing is changed then.
+     */
+    void removeListElement(String listAddress, String element);
 }
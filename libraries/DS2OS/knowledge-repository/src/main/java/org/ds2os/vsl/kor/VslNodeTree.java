@@ -2,6 +2,7 @@ package org.ds2os.vsl.kor;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 
 import org.ds2os.vsl.core.VslIdentity;
@@ -91,6 +92,27 @@ public interface VslNodeTree {
     VslNode get(String address, VslAddressParameters params, VslIdentity identity)
             throws NoPermissionException, NodeNotExistingException, InvalidValueException;
 
+    /**
+     * Returns all archived values of the node at address and its children that were written
+     * within the time range of params. Access is checked like for
+     * {@link #get(String, VslAddressParameters, VslIdentity)}, based on the current access rights
+     * of the subtree. Values of nodes identity can't read are left out.
+     *
+     * @param address
+     *            The address of the node the action should happen.
+     * @param params
+     *            Parameters of the request, including the time range and depth.
+     * @param identity
+     *            The IDs of the reader.
+     * @return The values of each readable node by its address, oldest first.
+     * @throws NoPermissionException
+     *             if the node and none of his children is readable or writable by identity.
+     * @throws NodeNotExistingException
+     *             If there is no node at address.
+     */
+    Map<String, List<VslNode>> getHistory(String address, VslAddressParameters params,
+            VslIdentity identity) throws NoPermissionException, NodeNotExistingException;
+
     /**
      * Returns the Meta Data (Types, readers/writers, restriction) for the give address.
      *
@@ -36,6 +36,11 @@ public class InterMediateConfig implements VslKORConfig {
         }
     }
 
+    @Override
+    public final int getArchiveMaxAge() {
+        return Math.max(0, initialConfig.getIntProperty("kor.archive.maxAge", 0));
+    }
+
     @Override
     public final Boolean isDatabasePersistent() {
         return initialConfig.getBooleanProperty("kor.db.persist", false);
@@ -87,6 +92,51 @@ public class InterMediateConfig implements VslKORConfig {
         return initialConfig.getProperty("kor.db.memoryMode", "CACHED").toUpperCase();
     }
 
+    @Override
+    public final int getDatabaseConnectionPoolSize() {
+        final int result = initialConfig.getIntProperty("kor.db.connectionPoolSize", 4);
+        if (result <= 0) {
+            return 4;
+        } else {
+            return result;
+        }
+    }
+
+    @Override
+    public final int getDatabaseMaintenanceBudget() {
+        final int result = initialConfig.getIntProperty("kor.db.maintenanceBudget", 50);
+        if (result <= 0) {
+            return 50;
+        } else {
+            return result;
+        }
+    }
+
+    @Override
+    public final int getDatabaseCommitWindow() {
+        final int result = initialConfig.getIntProperty("kor.db.commitWindow", 2);
+        if (result < 0) {
+            return 2;
+        } else {
+            return result;
+        }
+    }
+
+    @Override
+    public final int getDatabaseCommitBatchSize() {
+        final int result = initialConfig.getIntProperty("kor.db.commitBatchSize", 64);
+        if (result <= 0) {
+            return 64;
+        } else {
+            return result;
+        }
+    }
+
+    @Override
+    public final boolean isDatabaseSyncCommit() {
+        return initialConfig.getBooleanProperty("kor.db.syncCommit", false);
+    }
+
     @Override
     public String getDatabaseType() {
         return initialConfig.getProperty("kor.db.type", "hsqldb").toLowerCase();
@@ -0,0 +1,169 @@
+package org.ds2os.vsl.kor.dataStructures;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single revision of the value or version of a node, linked to the revision it replaced. The
+ * revisions of a node form an immutable chain, newest first, so a chain can be shared by several
+ * states of the database and extended without copying.
+ */
+public final class NodeRevision {
+
+    /**
+     * The value of the node, null if the revision only changed the version.
+     */
+    private final String value;
+
+    /**
+     * The version of the node.
+     */
+    private final long version;
+
+    /**
+     * The tick of the write, a timestamp that is unique for every write and increases with every
+     * write.
+     */
+    private final long tick;
+
+    /**
+     * The revision this revision replaced, null if it is the oldest one.
+     */
+    private final NodeRevision previous;
+
+    /**
+     * The number of revisions in the chain starting at this revision.
+     */
+    private final int length;
+
+    /**
+     * Constructor.
+     *
+     * @param value
+     *            The value of the node, null if the revision only changed the version.
+     * @param version
+     *            The version of the node.
+     * @param tick
+     *            The tick of the write.
+     * @param previous
+     *            The revision this revision replaces, null if there is none.
+     */
+    public NodeRevision(final String value, final long version, final long tick,
+            final NodeRevision previous) {
+        this.value = value;
+        this.version = version;
+        this.tick = tick;
+        this.previous = previous;
+        if (previous == null) {
+            length = 1;
+        } else {
+            length = previous.length + 1;
+        }
+    }
+
+    /**
+     * Returns the value of the node.
+     *
+     * @return The value, null if the revision only changed the version.
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the version of the node.
+     *
+     * @return The version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the tick of the write.
+     *
+     * @return The tick.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Returns the revision this revision replaced.
+     *
+     * @return The previous revision, null if this is the oldest one.
+     */
+    public NodeRevision getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Returns the number of revisions in the chain starting at this revision.
+     *
+     * @return The length of the chain.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the newest revision of the chain starting at this revision that was written before
+     * the given tick.
+     *
+     * @param beforeTick
+     *            The exclusive upper bound of the tick.
+     * @return The revision, null if all revisions were written later.
+     */
+    public NodeRevision findBefore(final long beforeTick) {
+        NodeRevision revision = this;
+        while (revision != null && revision.tick >= beforeTick) {
+            revision = revision.previous;
+        }
+        return revision;
+    }
+
+    /**
+     * Returns the revisions of the chain starting at this revision, oldest first.
+     *
+     * @return The revisions.
+     */
+    public List<NodeRevision> toList() {
+        final List<NodeRevision> revisions = new ArrayList<NodeRevision>(length);
+        for (NodeRevision revision = this; revision != null; revision = revision.previous) {
+            revisions.add(revision);
+        }
+        Collections.reverse(revisions);
+        return revisions;
+    }
+
+    /**
+     * Returns a chain that only contains the newest revisions of this chain. The newest revision
+     * is always kept.
+     *
+     * @param maxLength
+     *            The maximum number of revisions to keep.
+     * @param minTick
+     *            Revisions written before this tick are dropped.
+     * @return The shortened chain, or this chain if nothing was dropped.
+     */
+    public NodeRevision trim(final int maxLength, final long minTick) {
+        final List<NodeRevision> kept = new ArrayList<NodeRevision>();
+        NodeRevision revision = this;
+        while (revision != null && kept.size() < maxLength
+                && (kept.isEmpty() || revision.tick >= minTick)) {
+            kept.add(revision);
+            revision = revision.previous;
+        }
+        if (revision == null) {
+            return this;
+        }
+        NodeRevision result = null;
+        for (int i = kept.size() - 1; i >= 0; i--) {
+            final NodeRevision keptRevision = kept.get(i);
+            result = new NodeRevision(keptRevision.value, keptRevision.version,
+                    keptRevision.tick, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,363 @@
+package org.ds2os.vsl.kor.dataStructures;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * An immutable map ordered by its String keys, implemented as AVL tree. Every modification
+ * returns a new map sharing all unchanged nodes with the old one (only the O(log n) nodes on the
+ * path to the modified key are copied), so old versions stay valid and can be read without any
+ * locking while new versions are created.
+ *
+ * @param <V>
+ *            The type of the values.
+ */
+public final class PersistentTreeMap<V> {
+
+    /**
+     * The empty map.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static final PersistentTreeMap EMPTY = new PersistentTreeMap(null, 0);
+
+    /**
+     * The root of the tree, null if the map is empty.
+     */
+    private final Node<V> root;
+
+    /**
+     * The number of entries of the map.
+     */
+    private final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param root
+     *            The root of the tree.
+     * @param size
+     *            The number of entries.
+     */
+    private PersistentTreeMap(final Node<V> root, final int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     *
+     * @param <V>
+     *            The type of the values.
+     * @return The empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentTreeMap<V> empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the map is empty.
+     *
+     * @return True if the map has no entries.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the value stored for the given key.
+     *
+     * @param key
+     *            The key.
+     * @return The value, null if the key isn't contained.
+     */
+    public V get(final String key) {
+        Node<V> node = root;
+        while (node != null) {
+            final int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                return node.value;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the given key is contained.
+     *
+     * @param key
+     *            The key.
+     * @return True if the map has an entry for the key.
+     */
+    public boolean containsKey(final String key) {
+        Node<V> node = root;
+        while (node != null) {
+            final int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                return true;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a map that additionally maps the given key to the given value. An existing value of
+     * the key is replaced.
+     *
+     * @param key
+     *            The key.
+     * @param value
+     *            The value.
+     * @return The new map.
+     */
+    public PersistentTreeMap<V> put(final String key, final V value) {
+        final int newSize = containsKey(key) ? size : size + 1;
+        return new PersistentTreeMap<V>(put(root, key, value), newSize);
+    }
+
+    /**
+     * Returns a map without the entry of the given key.
+     *
+     * @param key
+     *            The key.
+     * @return The new map, or this map if the key isn't contained.
+     */
+    public PersistentTreeMap<V> remove(final String key) {
+        if (!containsKey(key)) {
+            return this;
+        }
+        return new PersistentTreeMap<V>(remove(root, key), size - 1);
+    }
+
+    /**
+     * Returns the entries whose keys lie in the given range, ordered by their keys.
+     *
+     * @param fromKey
+     *            The inclusive lower bound of the keys, null for no lower bound.
+     * @param toKey
+     *            The exclusive upper bound of the keys, null for no upper bound.
+     * @return The entries in the range.
+     */
+    public List<Entry<String, V>> entries(final String fromKey, final String toKey) {
+        final List<Entry<String, V>> result = new ArrayList<Entry<String, V>>();
+        collect(root, fromKey, toKey, result);
+        return result;
+    }
+
+    /**
+     * Adds the entries of the given subtree whose keys lie in the given range to the result.
+     *
+     * @param node
+     *            The root of the subtree.
+     * @param fromKey
+     *            The inclusive lower bound of the keys, null for no lower bound.
+     * @param toKey
+     *            The exclusive upper bound of the keys, null for no upper bound.
+     * @param result
+     *            The list the entries are added to, in key order.
+     */
+    private static <V> void collect(final Node<V> node, final String fromKey, final String toKey,
+            final List<Entry<String, V>> result) {
+        if (node == null) {
+            return;
+        }
+        final boolean aboveFrom = fromKey == null || node.key.compareTo(fromKey) >= 0;
+        final boolean belowTo = toKey == null || node.key.compareTo(toKey) < 0;
+        if (aboveFrom) {
+            collect(node.left, fromKey, toKey, result);
+        }
+        if (aboveFrom && belowTo) {
+            result.add(new SimpleImmutableEntry<String, V>(node.key, node.value));
+        }
+        if (belowTo) {
+            collect(node.right, fromKey, toKey, result);
+        }
+    }
+
+    /**
+     * Returns the given subtree with the given entry added or replaced.
+     *
+     * @param node
+     *            The root of the subtree.
+     * @param key
+     *            The key.
+     * @param value
+     *            The value.
+     * @return The root of the new subtree.
+     */
+    private static <V> Node<V> put(final Node<V> node, final String key, final V value) {
+        if (node == null) {
+            return new Node<V>(key, value, null, null);
+        }
+        final int cmp = key.compareTo(node.key);
+        if (cmp < 0) {
+            return balance(node.key, node.value, put(node.left, key, value), node.right);
+        } else if (cmp > 0) {
+            return balance(node.key, node.value, node.left, put(node.right, key, value));
+        }
+        return new Node<V>(key, value, node.left, node.right);
+    }
+
+    /**
+     * Returns the given subtree without the entry of the given key.
+     *
+     * @param node
+     *            The root of the subtree.
+     * @param key
+     *            The key.
+     * @return The root of the new subtree.
+     */
+    private static <V> Node<V> remove(final Node<V> node, final String key) {
+        if (node == null) {
+            return null;
+        }
+        final int cmp = key.compareTo(node.key);
+        if (cmp < 0) {
+            return balance(node.key, node.value, remove(node.left, key), node.right);
+        } else if (cmp > 0) {
+            return balance(node.key, node.value, node.left, remove(node.right, key));
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node<V> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.key, successor.value, node.left, removeMin(node.right));
+    }
+
+    /**
+     * Returns the given subtree without its smallest entry.
+     *
+     * @param node
+     *            The root of the subtree.
+     * @return The root of the new subtree.
+     */
+    private static <V> Node<V> removeMin(final Node<V> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.key, node.value, removeMin(node.left), node.right);
+    }
+
+    /**
+     * Returns the height of the given subtree.
+     *
+     * @param node
+     *            The root of the subtree.
+     * @return The height, 0 for an empty subtree.
+     */
+    private static int height(final Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * Creates a node with the given entry and children, rotating it if the heights of the
+     * children differ by more than one.
+     *
+     * @param key
+     *            The key of the node.
+     * @param value
+     *            The value of the node.
+     * @param left
+     *            The left child.
+     * @param right
+     *            The right child.
+     * @return The root of the balanced subtree.
+     */
+    private static <V> Node<V> balance(final String key, final V value, final Node<V> left,
+            final Node<V> right) {
+        final int heightLeft = height(left);
+        final int heightRight = height(right);
+        if (heightLeft > heightRight + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node<V>(left.key, left.value, left.left,
+                        new Node<V>(key, value, left.right, right));
+            }
+            return new Node<V>(left.right.key, left.right.value,
+                    new Node<V>(left.key, left.value, left.left, left.right.left),
+                    new Node<V>(key, value, left.right.right, right));
+        }
+        if (heightRight > heightLeft + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node<V>(right.key, right.value,
+                        new Node<V>(key, value, left, right.left), right.right);
+            }
+            return new Node<V>(right.left.key, right.left.value,
+                    new Node<V>(key, value, left, right.left.left),
+                    new Node<V>(right.key, right.value, right.left.right, right.right));
+        }
+        return new Node<V>(key, value, left, right);
+    }
+
+    /**
+     * A node of the tree. Nodes are never modified after their creation.
+     *
+     * @param <V>
+     *            The type of the value.
+     */
+    private static final class Node<V> {
+
+        /**
+         * The key.
+         */
+        private final String key;
+
+        /**
+         * The value.
+         */
+        private final V value;
+
+        /**
+         * The subtree with smaller keys.
+         */
+        private final Node<V> left;
+
+        /**
+         * The subtree with larger keys.
+         */
+        private final Node<V> right;
+
+        /**
+         * The height of the subtree rooted at this node.
+         */
+        private final int height;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            The key.
+         * @param value
+         *            The value.
+         * @param left
+         *            The subtree with smaller keys.
+         * @param right
+         *            The subtree with larger keys.
+         */
+        Node(final String key, final V value, final Node<V> left, final Node<V> right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package org.ds2os.vsl.kor.dataStructures;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Hash tree over the structure (addresses and types) of the nodes in the KOR. Every node of the
+ * tree stores the combined hash of its subtree, which is the sum of the hashes of all nodes in
+ * the subtree. Adding or removing a node therefore only updates the sums along its ancestor path,
+ * and the hash of any subtree can be read without visiting it. Two subtrees with the same hash
+ * have the same structure, so if the hashes of two KORs differ, only the branches whose hashes
+ * differ have to be compared.
+ */
+public final class StructureHashTree {
+
+    /**
+     * The hash returned for an empty subtree.
+     */
+    public static final String EMPTY_HASH = hashToString(0L);
+
+    /**
+     * The root entry, belongs to the address "/".
+     */
+    private final Entry root = new Entry(null, null);
+
+    /**
+     * Returns the hash of a single node.
+     *
+     * @param address
+     *            The address of the node.
+     * @param typeString
+     *            The types of the node, separated like they are stored.
+     * @return The hash of the node.
+     */
+    public static long hashOfNode(final String address, final String typeString) {
+        // FNV-1a over address and types, finalized with the mixing function of MurmurHash3 so
+        // the sum over many nodes doesn't cancel out similar addresses.
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < address.length(); i++) {
+            hash = (hash ^ address.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ '\n') * 0x100000001b3L;
+        if (typeString != null) {
+            for (int i = 0; i < typeString.length(); i++) {
+                hash = (hash ^ typeString.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Returns the String representation of a subtree hash, as returned by
+     * {@link org.ds2os.vsl.kor.VslNodeDatabase#getHashOfSubtree(String, List)}.
+     *
+     * @param hash
+     *            The hash.
+     * @return The hash as hex String.
+     */
+    public static String hashToString(final long hash) {
+        return Long.toHexString(hash);
+    }
+
+    /**
+     * Adds a node to the tree. If the node exists already, its types are replaced.
+     *
+     * @param address
+     *            The address of the node.
+     * @param typeString
+     *            The types of the node, separated like they are stored.
+     */
+    public synchronized void addNode(final String address, final String typeString) {
+        Entry entry = root;
+        for (final String segment : split(address)) {
+            Entry child = entry.children.get(segment);
+            if (child == null) {
+                child = new Entry(entry, segment);
+                entry.children.put(segment, child);
+            }
+            entry = child;
+        }
+        final long newHash = hashOfNode(address, typeString);
+        final long delta = newHash - entry.nodeHash;
+        entry.nodeHash = newHash;
+        entry.exists = true;
+        for (Entry current = entry; current != null; current = current.parent) {
+            current.subtreeHash += delta;
+        }
+    }
+
+    /**
+     * Removes a node and its subtree from the tree.
+     *
+     * @param address
+     *            The address of the node.
+     */
+    public synchronized void removeNode(final String address) {
+        final Entry entry = find(address);
+        if (entry == null) {
+            return;
+        }
+        final long delta = entry.subtreeHash;
+        for (Entry current = entry; current != null; current = current.parent) {
+            current.subtreeHash -= delta;
+        }
+        entry.children.clear();
+        entry.nodeHash = 0;
+        entry.exists = false;
+        // drop entries that only connected the removed subtree to the tree.
+        Entry current = entry;
+        while (current.parent != null && !current.exists && current.children.isEmpty()) {
+            current.parent.children.remove(current.segment);
+            current = current.parent;
+        }
+    }
+
+    /**
+     * Removes all nodes.
+     */
+    public synchronized void clear() {
+        root.children.clear();
+        root.nodeHash = 0;
+        root.subtreeHash = 0;
+        root.exists = false;
+    }
+
+    /**
+     * Returns the hash of the given subtree.
+     *
+     * @param rootAddress
+     *            The root address of the subtree.
+     * @param excludeSubtrees
+     *            Subtrees that are excluded from the hash, relative to the root address.
+     * @return The hash of the subtree, {@link #EMPTY_HASH} if it contains no nodes.
+     */
+    public synchronized String getHash(final String rootAddress,
+            final List<String> excludeSubtrees) {
+        final Entry entry = find(rootAddress);
+        if (entry == null) {
+            return EMPTY_HASH;
+        }
+        long hash = entry.subtreeHash;
+        for (final String excluded : excludeSubtrees) {
+            final Entry excludedEntry = find(entry, split(excluded));
+            if (excludedEntry != null) {
+                hash -= excludedEntry.subtreeHash;
+            }
+        }
+        return hashToString(hash);
+    }
+
+    /**
+     * Returns the entry of the given address.
+     *
+     * @param address
+     *            The address.
+     * @return The entry, null if there is no node at or below the address.
+     */
+    private Entry find(final String address) {
+        return find(root, split(address));
+    }
+
+    /**
+     * Returns the entry reached by following the given segments from the given entry.
+     *
+     * @param start
+     *            The entry to start at.
+     * @param segments
+     *            The segments of the relative address.
+     * @return The entry, null if there is none.
+     */
+    private static Entry find(final Entry start, final String[] segments) {
+        Entry entry = start;
+        for (final String segment : segments) {
+            entry = entry.children.get(segment);
+            if (entry == null) {
+                return null;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Splits the given address into its segments.
+     *
+     * @param address
+     *            The address, absolute or relative.
+     * @return The non empty segments of the address.
+     */
+    private static String[] split(final String address) {
+        if (address == null) {
+            return new String[0];
+        }
+        return StringUtils.split(address, '/');
+    }
+
+    /**
+     * A node of the hash tree. Entries also exist for addresses without a node in the KOR if there
+     * are nodes below them.
+     */
+    private static final class Entry {
+
+        /**
+         * The parent entry, null for the root.
+         */
+        private final Entry parent;
+
+        /**
+         * The last segment of the address of this entry, null for the root.
+         */
+        private final String segment;
+
+        /**
+         * The children by segment.
+         */
+        private final Map<String, Entry> children = new HashMap<String, Entry>();
+
+        /**
+         * The hash of the node itself, 0 if there is no node at this address.
+         */
+        private long nodeHash;
+
+        /**
+         * The sum of the hashes of all nodes in the subtree, including this one.
+         */
+        private long subtreeHash;
+
+        /**
+         * True if there is a node at this address.
+         */
+        private boolean exists;
+
+        /**
+         * Constructor.
+         *
+         * @param parent
+         *            The parent entry, null for the root.
+         * @param segment
+         *            The last segment of the address, null for the root.
+         */
+        Entry(final Entry parent, final String segment) {
+            this.parent = parent;
+            this.segment = segment;
+        }
+    }
+}
@@ -4,10 +4,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 
-import org.apache.commons.lang3.StringUtils;
 import org.ds2os.vsl.core.VslIdentity;
 import org.ds2os.vsl.core.VslVirtualNodeHandler;
-import org.ds2os.vsl.core.impl.ServiceIdentity;
 import org.ds2os.vsl.core.node.VslNode;
 import org.ds2os.vsl.core.node.VslNodeFactory;
 import org.ds2os.vsl.core.utils.VslAddressParameters;
@@ -16,7 +14,6 @@ import org.ds2os.vsl.exception.NodeAlreadyExistingException;
 import org.ds2os.vsl.exception.VslException;
 import org.ds2os.vsl.kor.Restrictions;
 import org.ds2os.vsl.kor.VslKnowledgeRepository;
-import org.ds2os.vsl.kor.VslNodeDatabase;
 import org.ds2os.vsl.kor.VslNodeTree;
 
 /**
@@ -56,6 +53,8 @@ public class ListAddHandler extends ListHandler implements VslVirtualNodeHandler
      *            after this is the position in the list).
      * @param kor
      *            the ModelInstantiationHandler used for adding a model as list element.
+     * @param elements
+     *            The elements of the list, shared by all handlers of the list.
      * @param creatorID
      *            The ID of the creator of the list.
      * @param restrictions
@@ -66,9 +65,9 @@ public class ListAddHandler extends ListHandler implements VslVirtualNodeHandler
      *            The {@link VslNodeFactory} used to create VslNodes.
      */
     public ListAddHandler(final String listRootAddress, final VslKnowledgeRepository kor,
-            final String creatorID, final String restrictions, final List<String> accessIDs,
-            final VslNodeFactory nodeFactory) {
-        super(listRootAddress, kor, nodeFactory);
+            final ListElements elements, final String creatorID, final String restrictions,
+            final List<String> accessIDs, final VslNodeFactory nodeFactory) {
+        super(listRootAddress, kor, elements, nodeFactory);
         this.creatorID = creatorID;
         this.maxEntries = Restrictions.getMaxListEntries(restrictions);
         this.allowedTypes = Restrictions.getAllowedListTypes(restrictions);
@@ -134,7 +133,7 @@ public class ListAddHandler extends ListHandler implements VslVirtualNodeHandler
             throw new ListOperationInvalidException(
                     "You don't have the necessary rights to add a node to the list.");
         }
-        final List<String> elements = getListElements();
+        final ListElements elements = getListElements();
 
         if (elements.size() + 1 > maxEntries) {
             throw new ListOperationInvalidException(
@@ -195,18 +194,9 @@ public class ListAddHandler extends ListHandler implements VslVirtualNodeHandler
         // add model
         getKor().addSubtreeFromModelID(getListRootAddress(), modelToAdd, creatorID, newNodeName);
 
-        if (position > elements.size()) {
-            position = elements.size();
-        } else if (position < 0) {
-            position = 0;
-        }
-
-        // set the elements string
+        // add the new element, positions out of range are handled by the list.
         elements.add(position, newNodeName);
-        getKor().set(getListRootAddress() + "/elements",
-                getNodeFactory().createImmutableLeaf(
-                        StringUtils.join(elements, VslNodeDatabase.LIST_SEPARATOR)),
-                new ServiceIdentity(creatorID, VslNodeTree.SYSTEM_USER_ID));
+        notifyElementsChanged(creatorID);
 
         return getNodeFactory().createImmutableLeaf(getListRootAddress() + "/" + newNodeName);
     }
@@ -1,11 +1,7 @@
 package org.ds2os.vsl.kor.lists;
 
-import java.util.List;
-
-import org.apache.commons.lang3.StringUtils;
 import org.ds2os.vsl.core.VslIdentity;
 import org.ds2os.vsl.core.VslVirtualNodeHandler;
-import org.ds2os.vsl.core.impl.ServiceIdentity;
 import org.ds2os.vsl.core.node.VslNode;
 import org.ds2os.vsl.core.node.VslNodeFactory;
 import org.ds2os.vsl.core.utils.VslAddressParameters;
@@ -13,8 +9,6 @@ import org.ds2os.vsl.exception.ListOperationInvalidException;
 import org.ds2os.vsl.exception.VslException;
 import org.ds2os.vsl.kor.Restrictions;
 import org.ds2os.vsl.kor.VslKnowledgeRepository;
-import org.ds2os.vsl.kor.VslNodeDatabase;
-import org.ds2os.vsl.kor.VslNodeTree;
 
 /**
  * This Handler is called when the delete (del) operation/virtualNode of the List is called it was
@@ -43,6 +37,8 @@ public class ListDelHandler extends ListHandler implements VslVirtualNodeHandler
      *            after this is the position in the list).
      * @param kor
      *            the ModelInstantiationHandler used for deleting a list element.
+     * @param elements
+     *            The elements of the list, shared by all handlers of the list.
      * @param restrictions
      *            The restrictions of the list. .
      * @param creatorID
@@ -51,8 +47,9 @@ public class ListDelHandler extends ListHandler implements VslVirtualNodeHandler
      *            The {@link VslNodeFactory} used to create VslNodes.
      */
     public ListDelHandler(final String listRootAddress, final VslKnowledgeRepository kor,
-            final String creatorID, final String restrictions, final VslNodeFactory nodeFactory) {
-        super(listRootAddress, kor, nodeFactory);
+            final ListElements elements, final String creatorID, final String restrictions,
+            final VslNodeFactory nodeFactory) {
+        super(listRootAddress, kor, elements, nodeFactory);
         this.minEntries = Restrictions.getMinListEntries(restrictions);
         this.creatorID = creatorID;
     }
@@ -75,7 +72,7 @@ public class ListDelHandler extends ListHandler implements VslVirtualNodeHandler
                             + " from the list. Required right: " + creatorID + " your rights: "
                             + identity.getAccessIDs().toString());
         }
-        final List<String> elements = getListElements();
+        final ListElements elements = getListElements();
 
         // restriction checking
         if (elements.size() - 1 < minEntries) {
@@ -92,12 +89,8 @@ public class ListDelHandler extends ListHandler implements VslVirtualNodeHandler
         }
 
         getKor().removeNode(getListRootAddress() + "/" + nodeName);
-        elements.remove(elements.indexOf(nodeName));
-
-        getKor().set(getListRootAddress() + "/elements",
-                getNodeFactory().createImmutableLeaf(
-                        StringUtils.join(elements, VslNodeDatabase.LIST_SEPARATOR)),
-                new ServiceIdentity(creatorID, VslNodeTree.SYSTEM_USER_ID));
+        elements.remove(nodeName);
+        notifyElementsChanged(creatorID);
         return getNodeFactory()
                 .createImmutableLeaf("Removed " + nodeName + " from list " + getListRootAddress());
     }
@@ -0,0 +1,610 @@
+package org.ds2os.vsl.kor.lists;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ds2os.vsl.core.utils.AddressParameters;
+import org.ds2os.vsl.exception.NodeNotExistingException;
+import org.ds2os.vsl.kor.VslNodeDatabase;
+import org.ds2os.vsl.kor.dataStructures.InternalNode;
+
+/**
+ * The ordered elements of a single VSL list. Every element has a sort key which is stored with the
+ * element in the {@link VslNodeDatabase}, so adding or removing an element only stores or removes
+ * that element. In memory the elements are kept in a tree ordered by their sort keys that also
+ * counts the elements of each subtree, so elements can be looked up by their position in O(log n).
+ * <p>
+ * The elements are loaded from the database on first access. Lists that were stored before
+ * elements were kept separately have their elements in the value of the elements node, these are
+ * imported once and the value is cleared afterwards.
+ * </p>
+ * <p>
+ * Every change also increments the version of the elements node and its parents, but the value of
+ * the elements node isn't rewritten: reads of the current elements build it from the stored
+ * elements instead.
+ * </p>
+ */
+public class ListElements {
+
+    /**
+     * The distance between the sort keys of neighbouring elements when keys are assigned from
+     * scratch. Elements inserted between two others get the key in the middle, so about 20
+     * elements can be inserted at the same position before the keys have to be reassigned.
+     */
+    static final long KEY_GAP = 1L << 20;
+
+    /**
+     * The address of the list node.
+     */
+    private final String listAddress;
+
+    /**
+     * The database the elements are stored in.
+     */
+    private final VslNodeDatabase database;
+
+    /**
+     * Source of the random priorities that keep the tree balanced.
+     */
+    private final Random random;
+
+    /**
+     * The sort keys of all elements.
+     */
+    private final Map<String, Long> keys;
+
+    /**
+     * The root of the tree of all elements ordered by their sort keys, null if the list is empty.
+     */
+    private TreeNode root;
+
+    /**
+     * Whether the elements were loaded from the database already.
+     */
+    private boolean loaded;
+
+    /**
+     * Constructor.
+     *
+     * @param listAddress
+     *            The address of the list node.
+     * @param database
+     *            The database the elements are stored in.
+     */
+    public ListElements(final String listAddress, final VslNodeDatabase database) {
+        this.listAddress = listAddress;
+        this.database = database;
+        random = new Random();
+        keys = new HashMap<String, Long>();
+    }
+
+    /**
+     * Returns the number of elements of the list.
+     *
+     * @return The number of elements.
+     */
+    public final synchronized int size() {
+        load();
+        return size(root);
+    }
+
+    /**
+     * Checks whether the list contains the given element.
+     *
+     * @param element
+     *            The name of the element.
+     * @return True if the element is part of the list.
+     */
+    public final synchronized boolean contains(final String element) {
+        load();
+        return keys.containsKey(element);
+    }
+
+    /**
+     * Returns the element at the given position.
+     *
+     * @param position
+     *            The position of the element, starting with 0.
+     * @return The name of the element.
+     * @throws IndexOutOfBoundsException
+     *             If there is no element at the given position.
+     */
+    public final synchronized String get(final int position) {
+        load();
+        if (position < 0 || position >= size(root)) {
+            throw new IndexOutOfBoundsException(
+                    "Position " + position + " of list " + listAddress + " doesn't exist");
+        }
+        return nodeAt(root, position).element;
+    }
+
+    /**
+     * Returns the position of the given element.
+     *
+     * @param element
+     *            The name of the element.
+     * @return The position of the element, or -1 if it isn't part of the list.
+     */
+    public final synchronized int indexOf(final String element) {
+        load();
+        final Long key = keys.get(element);
+        if (key == null) {
+            return -1;
+        }
+        return countLess(root, key);
+    }
+
+    /**
+     * Returns the elements in the given range of positions.
+     *
+     * @param offset
+     *            The position of the first returned element.
+     * @param count
+     *            The maximum number of returned elements.
+     * @return The names of the elements, in list order. Empty if offset is beyond the end of the
+     *         list.
+     */
+    public final synchronized List<String> getRange(final int offset, final int count) {
+        load();
+        final int start = Math.max(0, offset);
+        final int end = (int) Math.min(size(root), (long) start + Math.max(0, count));
+        if (start >= end) {
+            return Collections.emptyList();
+        }
+        final List<String> result = new ArrayList<String>(end - start);
+        collect(root, start, end, 0, result);
+        return result;
+    }
+
+    /**
+     * Returns all elements of the list.
+     *
+     * @return The names of the elements, in list order.
+     */
+    public final synchronized List<String> getAll() {
+        return getRange(0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Adds an element at the given position. Positions beyond the end of the list add the
+     * element at the end, negative positions at the beginning.
+     *
+     * @param position
+     *            The position of the new element.
+     * @param element
+     *            The name of the new element, must not be part of the list.
+     */
+    public final synchronized void add(final int position, final String element) {
+        load();
+        final int size = size(root);
+        final int index = Math.max(0, Math.min(position, size));
+        Long before = index > 0 ? nodeAt(root, index - 1).key : null;
+        Long after = index < size ? nodeAt(root, index).key : null;
+        final Map<String, Long> changed = new HashMap<String, Long>();
+        if (before != null && after != null && after - before < 2) {
+            changed.putAll(reassignKeys());
+            before = changed.get(nodeAt(root, index - 1).element);
+            after = changed.get(nodeAt(root, index).element);
+        }
+
+        final long key;
+        if (before == null && after == null) {
+            key = 0;
+        } else if (after == null) {
+            key = before + KEY_GAP;
+        } else if (before == null) {
+            key = after - KEY_GAP;
+        } else {
+            key = before + (after - before) / 2;
+        }
+        changed.put(element, key);
+        // store first, so the elements stay unchanged if the database fails.
+        database.putListElements(listAddress, changed);
+        if (changed.size() > 1) {
+            applyKeys(changed);
+        }
+        root = insert(root, new TreeNode(key, element, random.nextInt()));
+        keys.put(element, key);
+    }
+
+    /**
+     * Removes an element from the list.
+     *
+     * @param element
+     *            The name of the element.
+     * @return True if the element was part of the list.
+     */
+    public final synchronized boolean remove(final String element) {
+        load();
+        final Long key = keys.get(element);
+        if (key == null) {
+            return false;
+        }
+        database.removeListElement(listAddress, element);
+        keys.remove(element);
+        root = remove(root, key);
+        return true;
+    }
+
+    @Override
+    public final synchronized String toString() {
+        return StringUtils.join(getAll(), VslNodeDatabase.LIST_SEPARATOR);
+    }
+
+    /**
+     * Loads the elements from the database, if not done already.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        final String elementsAddress = listAddress + "/elements";
+        String value;
+        try {
+            final InternalNode node = database
+                    .getNodeRecord(elementsAddress, new AddressParameters()).get(elementsAddress);
+            value = node == null ? null : node.getValue();
+        } catch (final NodeNotExistingException e) {
+            value = null;
+        }
+        final LinkedHashMap<String, Long> stored = database.getListElements(listAddress);
+        if (stored.isEmpty()) {
+            importElementsValue(value);
+        } else {
+            for (final Entry<String, Long> element : stored.entrySet()) {
+                root = insert(root, new TreeNode(element.getValue(), element.getKey(),
+                        random.nextInt()));
+                keys.put(element.getKey(), element.getValue());
+            }
+        }
+        loaded = true;
+        if (value != null && !value.isEmpty()) {
+            // the value isn't updated on changes anymore, so it must not show removed elements.
+            try {
+                database.setValueTree(Collections.singletonMap(elementsAddress, ""));
+            } catch (final NodeNotExistingException e) {
+                // removed meanwhile, nothing to clear.
+            }
+        }
+    }
+
+    /**
+     * Imports the elements stored in the value of the elements node of the list, which is where
+     * models define their initial elements and where lists were stored before.
+     *
+     * @param value
+     *            The value of the elements node, null if there is none.
+     */
+    private void importElementsValue(final String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        final Map<String, Long> imported = new LinkedHashMap<String, Long>();
+        long key = 0;
+        for (final String element : value.split(VslNodeDatabase.LIST_SEPARATOR + "|;|,")) {
+            if (!element.isEmpty() && !imported.containsKey(element)) {
+                imported.put(element, key);
+                key += KEY_GAP;
+            }
+        }
+        database.putListElements(listAddress, imported);
+        for (final Entry<String, Long> element : imported.entrySet()) {
+            root = insert(root, new TreeNode(element.getValue(), element.getKey(),
+                    random.nextInt()));
+            keys.put(element.getKey(), element.getValue());
+        }
+    }
+
+    /**
+     * Computes new sort keys with a distance of {@link #KEY_GAP} for all elements, keeping their
+     * order. Only needed if too many elements were inserted at the same position. The keys are
+     * applied by {@link #applyKeys(Map)} once they are stored.
+     *
+     * @return The names of all elements mapped to their new sort keys.
+     */
+    private Map<String, Long> reassignKeys() {
+        final List<TreeNode> nodes = new ArrayList<TreeNode>(size(root));
+        inOrder(root, nodes);
+        final Map<String, Long> changed = new HashMap<String, Long>();
+        long key = 0;
+        for (final TreeNode node : nodes) {
+            changed.put(node.element, key);
+            key += KEY_GAP;
+        }
+        return changed;
+    }
+
+    /**
+     * Sets new sort keys of elements of the tree. The keys must keep the order of the elements.
+     *
+     * @param changed
+     *            The names of the elements mapped to their new sort keys, may contain elements
+     *            that aren't part of the tree yet.
+     */
+    private void applyKeys(final Map<String, Long> changed) {
+        final List<TreeNode> nodes = new ArrayList<TreeNode>(size(root));
+        inOrder(root, nodes);
+        for (final TreeNode node : nodes) {
+            // the order of the nodes doesn't change, so the tree stays valid.
+            node.key = changed.get(node.element);
+            keys.put(node.element, node.key);
+        }
+    }
+
+    /**
+     * Returns the number of nodes of a subtree.
+     *
+     * @param node
+     *            The root of the subtree, may be null.
+     * @return The number of nodes.
+     */
+    private static int size(final TreeNode node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Returns the node at the given position of a subtree.
+     *
+     * @param subtree
+     *            The root of the subtree.
+     * @param position
+     *            The position, must be within the subtree.
+     * @return The node.
+     */
+    private static TreeNode nodeAt(final TreeNode subtree, final int position) {
+        TreeNode node = subtree;
+        int index = position;
+        while (true) {
+            final int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Counts the nodes of a subtree whose key is smaller than the given key.
+     *
+     * @param subtree
+     *            The root of the subtree.
+     * @param key
+     *            The key.
+     * @return The number of nodes with smaller keys.
+     */
+    private static int countLess(final TreeNode subtree, final long key) {
+        TreeNode node = subtree;
+        int count = 0;
+        while (node != null) {
+            if (key <= node.key) {
+                node = node.left;
+            } else {
+                count += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds the elements of a subtree at positions in [start, end) to the result.
+     *
+     * @param node
+     *            The root of the subtree.
+     * @param start
+     *            The first position to add.
+     * @param end
+     *            The position after the last one to add.
+     * @param offset
+     *            The position of the first node of the subtree.
+     * @param result
+     *            The list to add the elements to.
+     */
+    private static void collect(final TreeNode node, final int start, final int end,
+            final int offset, final List<String> result) {
+        if (node == null || offset >= end || offset + node.size <= start) {
+            return;
+        }
+        collect(node.left, start, end, offset, result);
+        final int position = offset + size(node.left);
+        if (position >= start && position < end) {
+            result.add(node.element);
+        }
+        collect(node.right, start, end, position + 1, result);
+    }
+
+    /**
+     * Adds all nodes of a subtree to the result, in order.
+     *
+     * @param node
+     *            The root of the subtree.
+     * @param result
+     *            The list to add the nodes to.
+     */
+    private static void inOrder(final TreeNode node, final List<TreeNode> result) {
+        if (node == null) {
+            return;
+        }
+        inOrder(node.left, result);
+        result.add(node);
+        inOrder(node.right, result);
+    }
+
+    /**
+     * Inserts a node into a subtree.
+     *
+     * @param subtree
+     *            The root of the subtree, may be null.
+     * @param node
+     *            The node to insert.
+     * @return The new root of the subtree.
+     */
+    private static TreeNode insert(final TreeNode subtree, final TreeNode node) {
+        if (subtree == null) {
+            return node;
+        }
+        if (node.priority > subtree.priority) {
+            final TreeNode[] parts = split(subtree, node.key);
+            node.left = parts[0];
+            node.right = parts[1];
+            node.update();
+            return node;
+        }
+        if (node.key < subtree.key) {
+            subtree.left = insert(subtree.left, node);
+        } else {
+            subtree.right = insert(subtree.right, node);
+        }
+        subtree.update();
+        return subtree;
+    }
+
+    /**
+     * Removes the node with the given key from a subtree.
+     *
+     * @param subtree
+     *            The root of the subtree, may be null.
+     * @param key
+     *            The key of the node to remove.
+     * @return The new root of the subtree.
+     */
+    private static TreeNode remove(final TreeNode subtree, final long key) {
+        if (subtree == null) {
+            return null;
+        }
+        if (key == subtree.key) {
+            return merge(subtree.left, subtree.right);
+        }
+        if (key < subtree.key) {
+            subtree.left = remove(subtree.left, key);
+        } else {
+            subtree.right = remove(subtree.right, key);
+        }
+        subtree.update();
+        return subtree;
+    }
+
+    /**
+     * Splits a subtree into the nodes with keys smaller than the given key and all others.
+     *
+     * @param subtree
+     *            The root of the subtree, may be null.
+     * @param key
+     *            The key to split at.
+     * @return The roots of both parts.
+     */
+    private static TreeNode[] split(final TreeNode subtree, final long key) {
+        if (subtree == null) {
+            return new TreeNode[2];
+        }
+        if (subtree.key < key) {
+            final TreeNode[] parts = split(subtree.right, key);
+            subtree.right = parts[0];
+            subtree.update();
+            parts[0] = subtree;
+            return parts;
+        }
+        final TreeNode[] parts = split(subtree.left, key);
+        subtree.left = parts[1];
+        subtree.update();
+        parts[1] = subtree;
+        return parts;
+    }
+
+    /**
+     * Merges two subtrees, all keys of the first one must be smaller than the keys of the second.
+     *
+     * @param left
+     *            The subtree with the smaller keys, may be null.
+     * @param right
+     *            The subtree with the larger keys, may be null.
+     * @return The root of the merged tree.
+     */
+    private static TreeNode merge(final TreeNode left, final TreeNode right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    /**
+     * A node of the tree, holding a single element.
+     */
+    private static final class TreeNode {
+
+        /**
+         * The sort key of the element.
+         */
+        private long key;
+
+        /**
+         * The name of the element.
+         */
+        private final String element;
+
+        /**
+         * The random priority of the node, parents have higher priorities than their children.
+         */
+        private final int priority;
+
+        /**
+         * The number of nodes of the subtree of this node.
+         */
+        private int size;
+
+        /**
+         * The left child, holding smaller keys.
+         */
+        private TreeNode left;
+
+        /**
+         * The right child, holding larger keys.
+         */
+        private TreeNode right;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            The sort key of the element.
+         * @param element
+         *            The name of the element.
+         * @param priority
+         *            The random priority of the node.
+         */
+        TreeNode(final long key, final String element, final int priority) {
+            this.key = key;
+            this.element = element;
+            this.priority = priority;
+            size = 1;
+        }
+
+        /**
+         * Updates the size after the children changed.
+         */
+        void update() {
+            size = 1 + ListElements.size(left) + ListElements.size(right);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.ds2os.vsl.kor.lists;
+
+import org.apache.commons.lang3.StringUtils;
+import org.ds2os.vsl.core.VslIdentity;
+import org.ds2os.vsl.core.VslVirtualNodeHandler;
+import org.ds2os.vsl.core.impl.ServiceIdentity;
+import org.ds2os.vsl.core.node.VslMutableNode;
+import org.ds2os.vsl.core.node.VslNode;
+import org.ds2os.vsl.core.node.VslNodeFactory;
+import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.ds2os.vsl.exception.ListOperationInvalidException;
+import org.ds2os.vsl.exception.NodeNotExistingException;
+import org.ds2os.vsl.exception.VslException;
+import org.ds2os.vsl.kor.VslKnowledgeRepository;
+import org.ds2os.vsl.kor.VslNodeDatabase;
+import org.ds2os.vsl.kor.VslNodeTree;
+
+/**
+ * This Handler is called when the elements node of the List is accessed it was registered for. A
+ * get on the elements node returns the stored node (including its version) with all elements of
+ * the list as value, a get on elements/offset/count returns up to count elements starting at
+ * position offset (e.g. /list/elements/20/10).
+ */
+public class ListElementsHandler extends ListHandler implements VslVirtualNodeHandler {
+
+    /**
+     * Constructor for a ListElementsHandler.
+     *
+     * @param listRootAddress
+     *            The address of the lists main/root node in the KOR.
+     * @param kor
+     *            Reference to the KOR.
+     * @param elements
+     *            The elements of the list, shared by all handlers of the list.
+     * @param nodeFactory
+     *            The {@link VslNodeFactory} used to create VslNodes.
+     */
+    public ListElementsHandler(final String listRootAddress, final VslKnowledgeRepository kor,
+            final ListElements elements, final VslNodeFactory nodeFactory) {
+        super(listRootAddress, kor, elements, nodeFactory);
+    }
+
+    @Override
+    public final VslNode get(final String address, final VslAddressParameters params,
+            final VslIdentity identity) throws VslException {
+        final String elementsAddress = getListRootAddress() + "/elements";
+        if (address.equals(elementsAddress)) {
+            // the node tree provides version, timestamp and reads of older versions.
+            final VslNode stored = getKor().getVslNodeTree().get(address, params,
+                    new ServiceIdentity(VslNodeTree.SYSTEM_USER_ID, VslNodeTree.SYSTEM_USER_ID));
+            if (params.getRequestedVersion() >= 0 || params.getToTimestamp() >= 0) {
+                return stored;
+            }
+            // the value of the elements node isn't rewritten on changes, build it instead.
+            final VslMutableNode current = getNodeFactory().createMutableClone(stored);
+            current.setValue(getListElements().toString());
+            return current;
+        }
+        if (!address.startsWith(elementsAddress + "/")) {
+            throw new ListOperationInvalidException(
+                    "The given address isn't a valid address for reading list elements.");
+        }
+        // offset and optional count, e.g. /list/elements/20/10
+        final String[] range = address.substring(elementsAddress.length() + 1).split("/");
+        final int offset;
+        final int count;
+        try {
+            offset = Integer.parseInt(range[0]);
+            count = range.length > 1 ? Integer.parseInt(range[1]) : Integer.MAX_VALUE;
+            if (offset < 0 || count < 0 || range.length > 2) {
+                throw new NumberFormatException();
+            }
+        } catch (final NumberFormatException e) {
+            throw new NodeNotExistingException(
+                    "Invalid Address, use elements/<offset>/<count>: " + address);
+        }
+        return getNodeFactory().createImmutableLeaf(StringUtils
+                .join(getListElements().getRange(offset, count), VslNodeDatabase.LIST_SEPARATOR));
+    }
+
+    @Override
+    public final void set(final String address, final VslNode value, final VslIdentity identity)
+            throws VslException {
+        throw new ListOperationInvalidException(
+                "Can't set the elements of a list, use the add and del nodes instead!");
+    }
+
+}
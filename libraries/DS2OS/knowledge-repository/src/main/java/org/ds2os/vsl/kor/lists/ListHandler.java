@@ -1,14 +1,11 @@
 package org.ds2os.vsl.kor.lists;
 
-import java.util.LinkedList;
-
 import org.ds2os.vsl.core.VslVirtualNodeHandler;
 import org.ds2os.vsl.core.adapter.VirtualNodeAdapter;
 import org.ds2os.vsl.core.impl.ServiceIdentity;
 import org.ds2os.vsl.core.node.VslNodeFactory;
 import org.ds2os.vsl.exception.VslException;
 import org.ds2os.vsl.kor.VslKnowledgeRepository;
-import org.ds2os.vsl.kor.VslNodeDatabase;
 import org.ds2os.vsl.kor.VslNodeTree;
 
 /**
@@ -39,6 +36,11 @@ public abstract class ListHandler extends VirtualNodeAdapter implements VslVirtu
      */
     private final String listRootAddress;
 
+    /**
+     * The elements of the list, shared by all handlers of the list.
+     */
+    private final ListElements elements;
+
     /**
      * Set the Root Address of the List.
      *
@@ -46,13 +48,16 @@ public abstract class ListHandler extends VirtualNodeAdapter implements VslVirtu
      *            The address of the lists main/root node in the KOR.
      * @param kor
      *            Reference to the KOR.
+     * @param elements
+     *            The elements of the list, shared by all handlers of the list.
      * @param nodeFactory
      *            The {@link VslNodeFactory} used to create VslNodes.
      */
     public ListHandler(final String listRootAddress, final VslKnowledgeRepository kor,
-            final VslNodeFactory nodeFactory) {
+            final ListElements elements, final VslNodeFactory nodeFactory) {
         this.listRootAddress = listRootAddress;
         this.kor = kor;
+        this.elements = elements;
         this.nodeFactory = nodeFactory;
     }
 
@@ -66,32 +71,29 @@ public abstract class ListHandler extends VirtualNodeAdapter implements VslVirtu
     }
 
     /**
-     * Returns the list of all current elements of the list (excluding the add, del and element
-     * nodes).
+     * Returns the current elements of the list (excluding the add, del and element nodes).
      *
-     * @return A Linked List including all root names of the elements which are part of the list.
-     * @throws VslException
-     *             Thrown when an exception on retrieving the Node from the KOR happens.
+     * @return The elements of the list.
      */
-    public final LinkedList<String> getListElements() throws VslException {
-        final String elementString = kor.get(getListRootAddress() + "/elements",
-                new ServiceIdentity("system", VslNodeTree.SYSTEM_USER_ID)).getValue();
-
-        final LinkedList<String> elements = new LinkedList<String>();
-        if (elementString != null && !elementString.isEmpty()) {
-            if (!(elementString.contains(VslNodeDatabase.LIST_SEPARATOR)
-                    || elementString.contains(","))) {
-                elements.add(elementString);
-            } else {
-                for (final String string : elementString
-                        .split(VslNodeDatabase.LIST_SEPARATOR + "|;|,")) {
-                    elements.add(string);
-                }
-            }
-        }
+    public final ListElements getListElements() {
         return elements;
     }
 
+    /**
+     * Notifies the subscribers of the list and its elements node that the elements changed. The
+     * version of the list was incremented already when the change was stored.
+     *
+     * @param identity
+     *            The identity that changed the list.
+     * @throws VslException
+     *             Thrown if the subscribers couldn't be notified.
+     */
+    protected final void notifyElementsChanged(final String identity) throws VslException {
+        final ServiceIdentity id = new ServiceIdentity(identity, VslNodeTree.SYSTEM_USER_ID);
+        kor.notify(getListRootAddress() + "/elements", id);
+        kor.notify(getListRootAddress(), id);
+    }
+
     /**
      * Returns the root address of the list that is handled.
      *
@@ -1,7 +1,5 @@
 package org.ds2os.vsl.kor.lists;
 
-import java.util.List;
-
 import org.ds2os.vsl.core.VslIdentity;
 import org.ds2os.vsl.core.VslVirtualNodeHandler;
 import org.ds2os.vsl.core.impl.ServiceIdentity;
@@ -31,12 +29,14 @@ public class ListRootHandler extends ListHandler implements VslVirtualNodeHandle
      *            after this is the position in the list).
      * @param kor
      *            the ModelInstantiationHandler used for adding a model as list element.
+     * @param elements
+     *            The elements of the list, shared by all handlers of the list.
      * @param nodeFactory
      *            The {@link VslNodeFactory} used to create VslNodes.
      */
     public ListRootHandler(final String listRootAddress, final VslKnowledgeRepository kor,
-            final VslNodeFactory nodeFactory) {
-        super(listRootAddress, kor, nodeFactory);
+            final ListElements elements, final VslNodeFactory nodeFactory) {
+        super(listRootAddress, kor, elements, nodeFactory);
     }
 
     @Override
@@ -51,7 +51,7 @@ public class ListRootHandler extends ListHandler implements VslVirtualNodeHandle
             // handle access on childs (e.g. translating positon to fully qualified name)
             final String suffix = address.substring(getListRootAddress().length() + 1,
                     address.length());
-            final List<String> elements = getListElements();
+            final ListElements elements = getListElements();
             if (suffix.equals("size")) {
                 return getNodeFactory().createImmutableLeaf(Integer.toString(elements.size()));
             }
@@ -69,12 +69,12 @@ public class ListRootHandler extends ListHandler implements VslVirtualNodeHandle
      * @param suffix
      *            Suffix/Subtree of the list.
      * @param elements
-     *            list of all list elements
+     *            the elements of the list
      * @return The fqn address of the node.
      * @throws NodeNotExistingException
      *             Throw when the node doesn't exist.
      */
-    private String getFQNaddress(final String suffix, final List<String> elements)
+    private String getFQNaddress(final String suffix, final ListElements elements)
             throws NodeNotExistingException {
         // LOGGER.debug("get FQN for suffix: {}", suffix);
         String position = suffix;
@@ -89,7 +89,7 @@ public class ListRootHandler extends ListHandler implements VslVirtualNodeHandle
         int pos = -1;
         try {
             pos = Integer.parseInt(position);
-            if (pos < 0 || pos > elements.size() - 1) {
+            if (pos < 0 || pos >= elements.size()) {
                 throw new NumberFormatException();
             }
         } catch (final NumberFormatException e) {
@@ -117,7 +117,7 @@ public class ListRootHandler extends ListHandler implements VslVirtualNodeHandle
             // handle access on childs (e.g. translating positon to fqn)
             final String suffix = address.substring(getListRootAddress().length() + 1,
                     address.length());
-            final List<String> elements = getListElements();
+            final ListElements elements = getListElements();
 
             if (suffix.equals("size")) {
                 throw new ListOperationInvalidException("Can't set the value of the list size!");
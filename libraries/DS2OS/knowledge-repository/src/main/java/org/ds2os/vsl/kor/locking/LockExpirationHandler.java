@@ -1,8 +1,8 @@
 package org.ds2os.vsl.kor.locking;
 
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
 
 import org.ds2os.vsl.core.config.VslKORLockingConfig;
 import org.ds2os.vsl.exception.VslException;
@@ -10,8 +10,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This class is responsible for periodically checking if locks are still valid or if they exist for
- * too long and should be removed.
+ * This class is responsible for notifying lock holders when their locks will expire soon and for
+ * removing locks that exist for too long. Every acquired lock is scheduled with
+ * {@link #schedule(String, LockedNode)}, which queues its warning and expiration deadline, so the
+ * handler only wakes up when a deadline is due instead of periodically checking all locks.
  *
  * @author liebald
  */
@@ -23,67 +25,172 @@ public class LockExpirationHandler implements Runnable {
     private static final Logger LOGGER = LoggerFactory.getLogger(LockExpirationHandler.class);
 
     /**
-     * The list of active locks that should be observed.
+     * The minimum time in milliseconds a lock lives after it was acquired, so a lock with a
+     * validity of 0 seconds isn't removed before its holder can use it.
      */
-    final Map<String, LockedNode> activeLocks;
+    private static final long MIN_LOCK_LIFETIME = 1000L;
+
+    /**
+     * The table of active locks that should be observed.
+     */
+    private final LockTable activeLocks;
 
     /**
      * Config service.
      */
     private final VslKORLockingConfig configService;
 
+    /**
+     * The pending deadlines, ordered by the time they are due. Deadlines of locks that were
+     * committed or rolled back in the meantime stay queued and are skipped once they are due.
+     */
+    private final DelayQueue<Deadline> deadlines;
+
     /**
      * Constructor for LockExpirationHandler.
      *
      * @param activeLocks
-     *            The list of active locks that should be observed.
+     *            The table of active locks that should be observed.
      * @param configService
      *            The config service for the Locker.
      */
-    public LockExpirationHandler(final Map<String, LockedNode> activeLocks,
+    public LockExpirationHandler(final LockTable activeLocks,
             final VslKORLockingConfig configService) {
         this.activeLocks = activeLocks;
         this.configService = configService;
+        deadlines = new DelayQueue<Deadline>();
+    }
+
+    /**
+     * Schedules the warning and the expiration of a newly acquired lock.
+     *
+     * @param address
+     *            The address of the lock.
+     * @param lock
+     *            The lock.
+     */
+    public final void schedule(final String address, final LockedNode lock) {
+        final long expiration = lock.getLockAquirationTime()
+                + Math.max(lock.getLockValidityPeriod() * 1000, MIN_LOCK_LIFETIME);
+        final long warning = expiration - configService.getLockExpirationWarningTime() * 1000L;
+        deadlines.add(new Deadline(address, lock, warning, false));
+        deadlines.add(new Deadline(address, lock, expiration, true));
     }
 
     @Override
     public final void run() {
         while (!Thread.interrupted()) {
-            synchronized (activeLocks) {
-                for (final Iterator<Entry<String, LockedNode>> iterator = activeLocks.entrySet()
-                        .iterator(); iterator.hasNext();) {
-                    final Entry<String, LockedNode> lock = iterator.next();
-
-                    // if the lock has only a few time left, notify the holder if not done already.
-                    if (!lock.getValue().isLockHolderNotifiedAboutWillExpire()
-                            && lock.getValue().getTimeLockIsStillValid() <= configService
-                                    .getLockExpirationWarningTime()) {
-                        try {
-                            lock.getValue().getLockHandler().lockWillExpire(lock.getKey());
-                            lock.getValue().notifiedLockWillExpire();
-                        } catch (final VslException e) {
-                            LOGGER.error("Error on calling lockWillExpired on VslLockHandler: {}",
-                                    e);
-                        }
-                    } else if (lock.getValue().getTimeLockIsStillValid() <= 0) {
-                        // if the lock is no longer valid, remove it and notify the lockHolder.
-                        LOGGER.info("removed {} from locks since it expired!", lock.getKey());
-                        try {
-                            lock.getValue().getLockHandler().lockExpired(lock.getKey());
-                        } catch (final VslException e) {
-                            LOGGER.error("Error on calling lockExpired on VslLockHandler: {}", e);
-                        }
-                        iterator.remove();
-                    }
-                }
-            }
             try {
-                Thread.yield();
-                Thread.sleep(1000);
+                handle(deadlines.take());
             } catch (final InterruptedException e) {
                 break;
             }
         }
     }
 
+    /**
+     * Handles a due deadline, if its lock is still active.
+     *
+     * @param deadline
+     *            The due deadline.
+     */
+    private void handle(final Deadline deadline) {
+        final LockedNode lock = deadline.lock;
+        boolean notify = false;
+        final LockTable.Guard guard = activeLocks.guard(deadline.address);
+        try {
+            if (activeLocks.get(deadline.address) != lock) {
+                return;
+            }
+            if (!deadline.expiration) {
+                // the lock has only a few time left, notify the holder if not done already.
+                if (!lock.isLockHolderNotifiedAboutWillExpire()) {
+                    lock.notifiedLockWillExpire();
+                    notify = true;
+                }
+            } else {
+                // the lock is no longer valid, remove it and notify the lockHolder.
+                activeLocks.remove(deadline.address);
+                LOGGER.info("removed {} from locks since it expired!", deadline.address);
+                notify = true;
+            }
+        } finally {
+            guard.release();
+        }
+
+        if (!notify) {
+            return;
+        }
+        try {
+            if (deadline.expiration) {
+                lock.getLockHandler().lockExpired(deadline.address);
+            } else {
+                lock.getLockHandler().lockWillExpire(deadline.address);
+            }
+        } catch (final VslException e) {
+            LOGGER.error("Error on notifying the lockholder about the expiration of {}: ",
+                    deadline.address, e);
+        }
+    }
+
+    /**
+     * The warning or expiration deadline of a lock.
+     */
+    private static final class Deadline implements Delayed {
+
+        /**
+         * The address of the lock.
+         */
+        private final String address;
+
+        /**
+         * The lock, used to detect if the address was unlocked or locked again in the meantime.
+         */
+        private final LockedNode lock;
+
+        /**
+         * The time the deadline is due in Unix time.
+         */
+        private final long due;
+
+        /**
+         * True for the expiration, false for the warning.
+         */
+        private final boolean expiration;
+
+        /**
+         * Constructor.
+         *
+         * @param address
+         *            The address of the lock.
+         * @param lock
+         *            The lock.
+         * @param due
+         *            The time the deadline is due in Unix time.
+         * @param expiration
+         *            True for the expiration, false for the warning.
+         */
+        Deadline(final String address, final LockedNode lock, final long due,
+                final boolean expiration) {
+            this.address = address;
+            this.lock = lock;
+            this.due = due;
+            this.expiration = expiration;
+        }
+
+        @Override
+        public long getDelay(final TimeUnit unit) {
+            return unit.convert(due - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(final Delayed o) {
+            final Deadline other = (Deadline) o;
+            if (due != other.due) {
+                return due < other.due ? -1 : 1;
+            }
+            // warnings go first if both are due at the same time.
+            return Boolean.compare(expiration, other.expiration);
+        }
+    }
 }
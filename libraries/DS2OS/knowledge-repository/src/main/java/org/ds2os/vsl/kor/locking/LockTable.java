@@ -0,0 +1,459 @@
+package org.ds2os.vsl.kor.locking;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Table of all active locks. Locks are stored in a trie following the segments of their addresses,
+ * and every node of the trie counts the locks below it, so lookups of the lock responsible for an
+ * address or of locks below an address only need to follow the path of the address.
+ * <p>
+ * Lookups don't block. Changes must be done while holding the {@link Guard} returned by
+ * {@link #guard(String)}. Guards of addresses below different nodes of depth
+ * {@link #STRIPE_DEPTH} (usually services) are independent of each other, only locks on higher
+ * levels of the tree need exclusive access to the whole table.
+ * </p>
+ */
+public class LockTable {
+
+    /**
+     * The depth of the nodes that guard their subtrees independently of each other.
+     */
+    static final int STRIPE_DEPTH = 2;
+
+    /**
+     * The root of the trie, representing the address "/".
+     */
+    private final TrieNode root;
+
+    /**
+     * Held exclusively for changes above {@link #STRIPE_DEPTH}, shared for all other changes.
+     */
+    private final ReentrantReadWriteLock shallowLock;
+
+    /**
+     * Constructor.
+     */
+    public LockTable() {
+        root = new TrieNode(0);
+        shallowLock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Returns the segments of an address, e.g. [ka, service] for /ka/service.
+     *
+     * @param address
+     *            The address to split.
+     * @return The segments of the address, empty for the root address.
+     */
+    private static String[] segments(final String address) {
+        return StringUtils.split(address, '/');
+    }
+
+    /**
+     * Returns the trie node of the given address.
+     *
+     * @param address
+     *            The address of the node.
+     * @param create
+     *            Whether missing nodes on the path should be created.
+     * @return The trie node, or null if it doesn't exist and create is false.
+     */
+    private TrieNode find(final String address, final boolean create) {
+        TrieNode node = root;
+        for (final String segment : segments(address)) {
+            TrieNode child = node.children.get(segment);
+            if (child == null) {
+                if (!create) {
+                    return null;
+                }
+                final TrieNode newChild = new TrieNode(node.depth + 1);
+                child = node.children.putIfAbsent(segment, newChild);
+                if (child == null) {
+                    child = newChild;
+                }
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * Returns the lock at exactly the given address.
+     *
+     * @param address
+     *            The address of the lock.
+     * @return The lock, or null if the address isn't locked.
+     */
+    public final LockedNode get(final String address) {
+        final TrieNode node = find(address, false);
+        if (node == null) {
+            return null;
+        }
+        return node.lock;
+    }
+
+    /**
+     * Returns the address of the lock responsible for the given address, which is either a lock on
+     * the address itself or on one of its parents.
+     *
+     * @param address
+     *            The address to check.
+     * @return The address of the responsible lock, or null if neither the address nor a parent is
+     *         locked.
+     */
+    public final String getResponsibleLockAddress(final String address) {
+        TrieNode node = root;
+        if (node.lock != null) {
+            return "/";
+        }
+        final StringBuilder path = new StringBuilder();
+        for (final String segment : segments(address)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return null;
+            }
+            path.append('/').append(segment);
+            if (node.lock != null) {
+                return path.toString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if a lock exists below the given address. As before the trie was introduced, children
+     * are the addresses starting with the given address followed by a slash, so the root address
+     * "/" has none.
+     *
+     * @param address
+     *            The address to check.
+     * @return True if any child of the address is locked.
+     */
+    public final boolean isChildLocked(final String address) {
+        if (address.endsWith("/")) {
+            return false;
+        }
+        final TrieNode node = find(address, false);
+        return node != null && node.locksBelow.get() > 0;
+    }
+
+    /**
+     * Returns the lock on the given address, or if it isn't locked all locks below it.
+     *
+     * @param address
+     *            Address to check for locks.
+     * @return Map of the found locks by their addresses.
+     */
+    public final Map<String, LockedNode> getLocksBelow(final String address) {
+        final Map<String, LockedNode> result = new HashMap<String, LockedNode>();
+        final TrieNode node = find(address, false);
+        if (node == null) {
+            return result;
+        }
+        final LockedNode lock = node.lock;
+        if (lock != null) {
+            // if address itself is a lock, there can be no child with a lock.
+            result.put(address, lock);
+        } else if (!address.endsWith("/")) {
+            collectLocks(node, address, result);
+        }
+        return result;
+    }
+
+    /**
+     * Adds all locks below the given trie node to the result.
+     *
+     * @param node
+     *            The trie node.
+     * @param address
+     *            The address of the trie node.
+     * @param result
+     *            The map to add the locks to.
+     */
+    private void collectLocks(final TrieNode node, final String address,
+            final Map<String, LockedNode> result) {
+        for (final Entry<String, TrieNode> child : node.children.entrySet()) {
+            final TrieNode childNode = child.getValue();
+            final String childAddress = address + "/" + child.getKey();
+            final LockedNode lock = childNode.lock;
+            if (lock != null) {
+                result.put(childAddress, lock);
+            }
+            if (childNode.locksBelow.get() > 0) {
+                collectLocks(childNode, childAddress, result);
+            }
+        }
+    }
+
+    /**
+     * Stores a lock. The caller must hold the guard of the address.
+     *
+     * @param address
+     *            The locked address.
+     * @param lock
+     *            The lock.
+     */
+    public final void put(final String address, final LockedNode lock) {
+        final TrieNode node = find(address, true);
+        if (node.lock == null) {
+            updateLocksBelow(address, 1);
+        }
+        node.lock = lock;
+    }
+
+    /**
+     * Removes a lock. The caller must hold the guard of the address.
+     *
+     * @param address
+     *            The locked address.
+     * @return The removed lock, or null if the address wasn't locked.
+     */
+    public final LockedNode remove(final String address) {
+        final TrieNode node = find(address, false);
+        if (node == null || node.lock == null) {
+            return null;
+        }
+        final LockedNode lock = node.lock;
+        node.lock = null;
+        updateLocksBelow(address, -1);
+        prune(address);
+        return lock;
+    }
+
+    /**
+     * Removes the trie nodes on the path of the given address that neither hold nor lead to a lock
+     * anymore, the deepest first. The nodes up to {@link #STRIPE_DEPTH} are only removed while the
+     * whole table is guarded, since other threads may be about to acquire their stripe locks. The
+     * caller must hold the guard of the address.
+     *
+     * @param address
+     *            The address of the removed lock.
+     */
+    private void prune(final String address) {
+        final String[] segments = segments(address);
+        final TrieNode[] path = new TrieNode[segments.length + 1];
+        path[0] = root;
+        for (int i = 0; i < segments.length; i++) {
+            path[i + 1] = path[i].children.get(segments[i]);
+        }
+        if (shallowLock.isWriteLockedByCurrentThread()) {
+            // no other thread changes the trie, so all empty subtrees along the path can go.
+            for (int i = segments.length; i >= 0; i--) {
+                for (final Iterator<TrieNode> it = path[i].children.values().iterator(); it
+                        .hasNext();) {
+                    final TrieNode child = it.next();
+                    if (child.lock == null && child.locksBelow.get() == 0) {
+                        it.remove();
+                    }
+                }
+            }
+            return;
+        }
+        for (int i = segments.length; i > 0 && path[i].depth > STRIPE_DEPTH; i--) {
+            final TrieNode node = path[i];
+            if (node.lock != null || node.locksBelow.get() > 0 || !node.children.isEmpty()) {
+                return;
+            }
+            path[i - 1].children.remove(segments[i - 1], node);
+        }
+    }
+
+    /**
+     * Returns the number of nodes in the trie, including the root.
+     *
+     * @return The number of trie nodes.
+     */
+    final int size() {
+        return size(root);
+    }
+
+    /**
+     * Returns the number of nodes in the subtree of the given trie node.
+     *
+     * @param node
+     *            The trie node.
+     * @return The number of trie nodes, including the given one.
+     */
+    private int size(final TrieNode node) {
+        int size = 1;
+        for (final TrieNode child : node.children.values()) {
+            size += size(child);
+        }
+        return size;
+    }
+
+    /**
+     * Adds delta to the lock counters of all parents of the given address.
+     *
+     * @param address
+     *            The address of the added or removed lock.
+     * @param delta
+     *            1 if a lock was added, -1 if one was removed.
+     */
+    private void updateLocksBelow(final String address, final int delta) {
+        TrieNode node = root;
+        for (final String segment : segments(address)) {
+            node.locksBelow.addAndGet(delta);
+            node = node.children.get(segment);
+        }
+    }
+
+    /**
+     * Acquires the guard that must be held to change the locks on or below the given address and
+     * the lock responsible for it. The guard must be released with {@link Guard#release()}.
+     *
+     * @param address
+     *            The address that is about to be changed.
+     * @return The acquired guard.
+     */
+    public final Guard guard(final String address) {
+        String scope = address;
+        while (true) {
+            final String responsible = getResponsibleLockAddress(scope);
+            if (responsible != null
+                    && segments(responsible).length < segments(scope).length) {
+                scope = responsible;
+            }
+            final Guard guard = acquire(scope);
+
+            // a responsible lock above the stripe depth may have been added before the guard was
+            // acquired. Since adding such a lock needs the exclusive guard, this can't change
+            // anymore after the check.
+            final String check = getResponsibleLockAddress(address);
+            if (check == null || guard.covers(check)) {
+                return guard;
+            }
+            guard.release();
+            scope = check;
+        }
+    }
+
+    /**
+     * Acquires the guard of the given address without considering its responsible lock.
+     *
+     * @param address
+     *            The address.
+     * @return The acquired guard.
+     */
+    private Guard acquire(final String address) {
+        final String[] segments = segments(address);
+        if (segments.length < STRIPE_DEPTH) {
+            shallowLock.writeLock().lock();
+            return new Guard(null);
+        }
+        final StringBuilder stripe = new StringBuilder();
+        for (int i = 0; i < STRIPE_DEPTH; i++) {
+            stripe.append('/').append(segments[i]);
+        }
+        // the stripe node is looked up after the shared lock was acquired, so it can't be pruned
+        // before its stripe lock is held.
+        shallowLock.readLock().lock();
+        final ReentrantLock stripeLock = find(stripe.toString(), true).stripeLock;
+        stripeLock.lock();
+        return new Guard(stripeLock);
+    }
+
+    /**
+     * Exclusive access to a part of the {@link LockTable}.
+     */
+    public final class Guard {
+
+        /**
+         * The lock of the guarded stripe, or null if the whole table is guarded.
+         */
+        private final ReentrantLock stripeLock;
+
+        /**
+         * Constructor.
+         *
+         * @param stripeLock
+         *            The lock of the guarded stripe, or null if the whole table is guarded.
+         */
+        private Guard(final ReentrantLock stripeLock) {
+            this.stripeLock = stripeLock;
+        }
+
+        /**
+         * Checks if the lock at the given address, which belongs to the address the guard was
+         * acquired for, can be changed while holding this guard.
+         *
+         * @param lockAddress
+         *            The address of the lock.
+         * @return True if the lock is covered.
+         */
+        private boolean covers(final String lockAddress) {
+            return stripeLock == null || segments(lockAddress).length >= STRIPE_DEPTH;
+        }
+
+        /**
+         * Releases the guard.
+         */
+        public void release() {
+            if (stripeLock == null) {
+                shallowLock.writeLock().unlock();
+            } else {
+                stripeLock.unlock();
+                shallowLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * A node of the trie.
+     */
+    private static final class TrieNode {
+
+        /**
+         * The depth of the node, 0 for the root.
+         */
+        private final int depth;
+
+        /**
+         * The children of the node by their address segment.
+         */
+        private final ConcurrentMap<String, TrieNode> children;
+
+        /**
+         * The number of locks below this node.
+         */
+        private final AtomicInteger locksBelow;
+
+        /**
+         * The lock guarding the subtree of this node, only set for nodes at
+         * {@link LockTable#STRIPE_DEPTH}.
+         */
+        private final ReentrantLock stripeLock;
+
+        /**
+         * The lock on this node, null if it isn't locked.
+         */
+        private volatile LockedNode lock;
+
+        /**
+         * Constructor.
+         *
+         * @param depth
+         *            The depth of the node.
+         */
+        TrieNode(final int depth) {
+            this.depth = depth;
+            children = new ConcurrentHashMap<String, TrieNode>();
+            locksBelow = new AtomicInteger();
+            if (depth == STRIPE_DEPTH) {
+                stripeLock = new ReentrantLock();
+            } else {
+                stripeLock = null;
+            }
+        }
+    }
+}
@@ -4,7 +4,6 @@ import org.ds2os.vsl.core.VslIdentity;
 import org.ds2os.vsl.core.VslLockHandler;
 import org.ds2os.vsl.core.config.VslKORLockingConfig;
 import org.ds2os.vsl.core.node.VslMutableNode;
-import org.ds2os.vsl.core.utils.AddressParser;
 import org.ds2os.vsl.exception.AlreadyLockedException;
 import org.ds2os.vsl.exception.NoPermissionException;
 import org.ds2os.vsl.exception.NodeNotLockedException;
@@ -30,9 +29,14 @@ public class Locker implements VslLocker {
     private static final Logger LOGGER = LoggerFactory.getLogger(Locker.class);
 
     /**
-     * List/Map of all active Locks.
+     * Table of all active Locks.
      */
-    private final Map<String, LockedNode> activeLocks;
+    private final LockTable activeLocks;
+
+    /**
+     * Handler that notifies lock holders about expiring locks and removes expired ones.
+     */
+    private final LockExpirationHandler expirationHandler;
 
     /**
      * The VslNodeDatabase of the running implementation, which is used to commit locks/subtrees.
@@ -53,15 +57,13 @@ public class Locker implements VslLocker {
     public Locker(final VslNodeDatabase db, final VslKORLockingConfig configService) {
         myNodeDatabase = db;
         this.configService = configService;
-        activeLocks = new HashMap<String, LockedNode>();
-
+        activeLocks = new LockTable();
+        expirationHandler = new LockExpirationHandler(activeLocks, configService);
     }
 
     @Override
     public final void activate() {
-        // Start the LockExpirationHandler to regularly check for expired locks.
-        final LockExpirationHandler expirationHandler = new LockExpirationHandler(activeLocks,
-                configService);
+        // Start the LockExpirationHandler to handle the deadlines of acquired locks.
         final Thread t = new Thread(expirationHandler);
         t.setDaemon(true);
         t.start();
@@ -70,9 +72,12 @@ public class Locker implements VslLocker {
     @Override
     public final void addNodeValueForCommit(final String address, final String value)
             throws NodeNotLockedException {
-        synchronized (activeLocks) {
+        final LockTable.Guard guard = activeLocks.guard(address);
+        try {
             activeLocks.get(getResponsibleLockAddress(address)).addNodeToLockedSubtree(address,
                     value);
+        } finally {
+            guard.release();
         }
     }
 
@@ -111,56 +116,45 @@ public class Locker implements VslLocker {
     @Override
     public final void commitSubtree(final String address, final VslIdentity identity)
             throws VslException {
-        synchronized (activeLocks) {
-
-            // first check if there is even a lock
-            // then check if the one who wants a commit is the owner of the lock
-            // if all checks pass, commit all stored node updates to the database
-            if (!activeLocks.containsKey(address)) {
-                throw new NodeNotLockedException(
-                        "Node " + address + " is not locked, cannot rollback Subtree.");
-            } else if (!activeLocks.get(address).getLockHolder().equals(identity.getClientId())) {
-                throw new NoPermissionException(
-                        "No permission to commit/release the lock, lock was acquired by "
-                                + activeLocks.get(address).getLockHolder() + ", your ID is "
-                                + identity.getClientId());
-            } else {
-                // Access checks and so on are directly done before adding nodes to the locked
-                // updateList, so we can directly add the nodes to the Database.
-                // TODO: catch exceptions here instead of handing them over?
-                myNodeDatabase.setValueTree(activeLocks.get(address).getUpdatedNodes());
-                // remove the lock after commit is finished.
-                activeLocks.remove(address);
-            }
+        final LockTable.Guard guard = activeLocks.guard(address);
+        try {
+            commitLockedSubtree(address, identity);
+        } finally {
+            guard.release();
         }
     }
 
     /**
-     * Helper function to receive all Locks that are below a certain address.
+     * Commits the lock on the given address. The caller must hold the guard of the address.
      *
-     * @param address Address to check for child locks.
-     * @return Map of all locks that are below the address and belong to the lockHolder.
+     * @param address
+     *            The address of the lock.
+     * @param identity
+     *            The identity of the committer.
+     * @throws VslException
+     *             If the address isn't locked by the committer or the commit fails.
      */
-    private Map<String, LockedNode> getLocksBelowAddress(final String address) {
-        final Map<String, LockedNode> result = new HashMap<String, LockedNode>();
-
-        synchronized (activeLocks) {
-
-            // if address itself is a lock, there can be no child with a lock, so we can directly
-            // return.
-            if (activeLocks.containsKey(address)) {
-                result.put(address, activeLocks.get(address));
-                return result;
-            }
-
-            // otherwise check if there are any locks below address.
-            for (final Entry<String, LockedNode> entry : activeLocks.entrySet()) {
-                if (entry.getKey().startsWith(address + "/")) {
-                    result.put(entry.getKey(), entry.getValue());
-                }
-            }
+    private void commitLockedSubtree(final String address, final VslIdentity identity)
+            throws VslException {
+        // first check if there is even a lock
+        // then check if the one who wants a commit is the owner of the lock
+        // if all checks pass, commit all stored node updates to the database
+        final LockedNode lock = activeLocks.get(address);
+        if (lock == null) {
+            throw new NodeNotLockedException(
+                    "Node " + address + " is not locked, cannot rollback Subtree.");
+        } else if (!lock.getLockHolder().equals(identity.getClientId())) {
+            throw new NoPermissionException(
+                    "No permission to commit/release the lock, lock was acquired by "
+                            + lock.getLockHolder() + ", your ID is " + identity.getClientId());
+        } else {
+            // Access checks and so on are directly done before adding nodes to the locked
+            // updateList, so we can directly add the nodes to the Database.
+            // TODO: catch exceptions here instead of handing them over?
+            myNodeDatabase.setValueTree(lock.getUpdatedNodes());
+            // remove the lock after commit is finished.
+            activeLocks.remove(address);
         }
-        return result;
     }
 
     /**
@@ -174,22 +168,10 @@ public class Locker implements VslLocker {
     private Map<String, LockedNode> getLocksBelowAddress(final String address,
                                                          final String lockHolder) {
         final Map<String, LockedNode> result = new HashMap<String, LockedNode>();
-        synchronized (activeLocks) {
-
-            // if address itself is a lock, there can be no child with a lock, so we can directly
-            // return.
-            if (activeLocks.containsKey(address)
-                    && activeLocks.get(address).getLockHolder().equals(lockHolder)) {
-                result.put(address, activeLocks.get(address));
-                return result;
-            }
-
-            // otherwise check if there are any locks below address.
-            for (final Entry<String, LockedNode> entry : activeLocks.entrySet()) {
-                if (entry.getKey().startsWith(address + "/")
-                        && entry.getValue().getLockHolder().equals(lockHolder)) {
-                    result.put(entry.getKey(), entry.getValue());
-                }
+        for (final Entry<String, LockedNode> entry : activeLocks.getLocksBelow(address)
+                .entrySet()) {
+            if (entry.getValue().getLockHolder().equals(lockHolder)) {
+                result.put(entry.getKey(), entry.getValue());
             }
         }
         return result;
@@ -203,75 +185,32 @@ public class Locker implements VslLocker {
      * @throws NodeNotLockedException Thrown if one tries to store a node for a non existing lock.
      */
     private String getResponsibleLockAddress(final String address) throws NodeNotLockedException {
-        synchronized (activeLocks) {
-
-            if (activeLocks.containsKey(address)) {
-                return address;
-            }
-            for (final String parent : AddressParser.getAllParentsOfAddress(address)) {
-                if (activeLocks.containsKey(parent)) {
-                    return parent;
-                }
-            }
+        final String responsible = activeLocks.getResponsibleLockAddress(address);
+        if (responsible == null) {
             throw new NodeNotLockedException("Can't return responsible lock address, neither "
                     + address + " nor any parent is locked.");
         }
+        return responsible;
     }
 
     @Override
     public final boolean isChildLocked(final String address) {
-        synchronized (activeLocks) {
-
-            for (final String lockedNode : activeLocks.keySet()) {
-                if (lockedNode.startsWith(address + "/")) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return activeLocks.isChildLocked(address);
     }
 
     @Override
     public final boolean isLocked(final String address) {
-        synchronized (activeLocks) {
-            return activeLocks.containsKey(address) || isParentLocked(address);
-        }
+        return activeLocks.getResponsibleLockAddress(address) != null;
     }
 
     @Override
     public final boolean isLockedBy(final String address, final String lockerId) {
-
-        if (!isLocked(address)) {
+        final String responsible = activeLocks.getResponsibleLockAddress(address);
+        if (responsible == null) {
             return false;
-        } else {
-            try {
-                synchronized (activeLocks) {
-                    // LOGGER.debug("{},{}", getResponsibleLock(address).getLockHolder(), lockerId);
-                    return activeLocks.get(getResponsibleLockAddress(address)).getLockHolder()
-                            .equals(lockerId);
-                }
-            } catch (final NodeNotLockedException e) {
-                LOGGER.debug("NodeNotLockedException that shouldn't happen");
-                return false;
-            }
-        }
-    }
-
-    /**
-     * Checks if a parent of the given node is locked.
-     *
-     * @param address The address to check.
-     * @return Returns true if any parent is locked.
-     */
-    private boolean isParentLocked(final String address) {
-        synchronized (activeLocks) {
-            for (final String parentNode : AddressParser.getAllParentsOfAddress(address)) {
-                if (activeLocks.containsKey(parentNode)) {
-                    return true;
-                }
-            }
         }
-        return false;
+        final LockedNode lock = activeLocks.get(responsible);
+        return lock != null && lock.getLockHolder().equals(lockerId);
     }
 
     @Override
@@ -306,99 +245,113 @@ public class Locker implements VslLocker {
         if (!canAcquireLock) {
             throw new NoPermissionException("No permission to acquire a lock at " + address
                     + ". You need read or write access in order to lock an subtree.");
-        } else {
-            synchronized (activeLocks) {
+        }
 
-                if (activeLocks.containsKey(address)) {
-                    throw new AlreadyLockedException(address + " is already locked");
-                } else if (isParentLocked(address)) {
-                    // check if there is a higher level lock from the same locker, if so commit it
-                    // and
-                    // then continue with the smaller lock.
-                    if (activeLocks.get(getResponsibleLockAddress(address)).getLockHolder()
-                            .equals(identity.getClientId())) {
-                        commitSubtree(getResponsibleLockAddress(address), identity);
-                    } else {
-                        throw new AlreadyLockedException("A Parent of node " + address
-                                + " is already locked, wait for the release"
-                                + " of this lock before trying again.");
-                    }
+        final LockedNode newLock = new LockedNode(identity.getClientId(), lockHandler,
+                configService.getLockExpirationTime());
+        final LockTable.Guard guard = activeLocks.guard(address);
+        try {
+            final String responsible = activeLocks.getResponsibleLockAddress(address);
+            if (address.equals(responsible)) {
+                throw new AlreadyLockedException(address + " is already locked");
+            } else if (responsible != null) {
+                // check if there is a higher level lock from the same locker, if so commit it and
+                // then continue with the smaller lock.
+                if (activeLocks.get(responsible).getLockHolder().equals(identity.getClientId())) {
+                    commitLockedSubtree(responsible, identity);
+                } else {
+                    throw new AlreadyLockedException("A Parent of node " + address
+                            + " is already locked, wait for the release"
+                            + " of this lock before trying again.");
+                }
 
-                } else if (isChildLocked(address)) {
-                    // if one or more childs are locked commit all of them (if they belong to the
-                    // lockholder) then continue
-                    boolean allChildLocksFromSameLocker = true;
-                    final Map<String, LockedNode> childLocks = getLocksBelowAddress(address);
-                    for (final Entry<String, LockedNode> lock : childLocks.entrySet()) {
-                        if (!lock.getValue().getLockHolder().equals(identity.getClientId())) {
-                            allChildLocksFromSameLocker = false;
-                            break;
-                        }
+            } else if (activeLocks.isChildLocked(address)) {
+                // if one or more childs are locked commit all of them (if they belong to the
+                // lockholder) then continue
+                boolean allChildLocksFromSameLocker = true;
+                final Map<String, LockedNode> childLocks = activeLocks.getLocksBelow(address);
+                for (final Entry<String, LockedNode> lock : childLocks.entrySet()) {
+                    if (!lock.getValue().getLockHolder().equals(identity.getClientId())) {
+                        allChildLocksFromSameLocker = false;
+                        break;
                     }
-                    // If all childs that are locked belong to the one who requested the lock on a
-                    // parent, commit them all before requesting the new lock.
-                    if (allChildLocksFromSameLocker) {
-                        for (final Entry<String, LockedNode> lock : childLocks.entrySet()) {
-                            commitSubtree(lock.getKey(), identity);
-                        }
-                    } else {
-                        throw new AlreadyLockedException("A Child of node " + address
-                                + " is already locked by someone else, wait for the release"
-                                + " of this lock before trying again.");
+                }
+                // If all childs that are locked belong to the one who requested the lock on a
+                // parent, commit them all before requesting the new lock.
+                if (allChildLocksFromSameLocker) {
+                    for (final Entry<String, LockedNode> lock : childLocks.entrySet()) {
+                        commitLockedSubtree(lock.getKey(), identity);
                     }
-
+                } else {
+                    throw new AlreadyLockedException("A Child of node " + address
+                            + " is already locked by someone else, wait for the release"
+                            + " of this lock before trying again.");
                 }
-                // finally acquire the lock.
-                activeLocks.put(address, new LockedNode(identity.getClientId(), lockHandler,
-                        configService.getLockExpirationTime()));
 
-                try {
-                    lockHandler.lockAcquired(address);
-                } catch (final VslException e) {
-                    LOGGER.error("Error on notifying the lockholder that he aquired his lock: ", e);
-                }
             }
+            // finally acquire the lock.
+            activeLocks.put(address, newLock);
+        } finally {
+            guard.release();
         }
+
+        try {
+            lockHandler.lockAcquired(address);
+        } catch (final VslException e) {
+            LOGGER.error("Error on notifying the lockholder that he aquired his lock: ", e);
+        }
+        expirationHandler.schedule(address, newLock);
     }
 
     @Override
     public final void rollbackSubtree(final String address, final VslIdentity identity)
             throws VslException {
-        synchronized (activeLocks) {
-
+        final LockTable.Guard guard = activeLocks.guard(address);
+        try {
             // first check if there is even a lock
             // then check if the one who wants a rollback is the owner of the lock
             // if all checks pass, remove the lock, which also removes all stored node updates.
-            if (!activeLocks.containsKey(address)) {
+            final LockedNode lock = activeLocks.get(address);
+            if (lock == null) {
                 throw new NodeNotLockedException(
                         "Node " + address + " is not locked, cannot rollback Subtree.");
-            } else if (!activeLocks.get(address).getLockHolder().equals(identity.getClientId())) {
+            } else if (!lock.getLockHolder().equals(identity.getClientId())) {
                 throw new NoPermissionException(
                         "No permission to rollback/release the lock, lock was acquired by "
-                                + activeLocks.get(address).getLockHolder() + ", your ID is "
+                                + lock.getLockHolder() + ", your ID is "
                                 + identity.getClientId());
             } else {
                 activeLocks.remove(address);
             }
+        } finally {
+            guard.release();
         }
-
     }
 
     @Override
     public final void updateGetResultWithLockedData(final String address, final VslMutableNode node,
                                                     final String issuerId) {
-        final Map<String, LockedNode> affectedLocks = getLocksBelowAddress(address, issuerId);
-
-        for (final Entry<String, LockedNode> lockEntry : affectedLocks.entrySet()) {
-            for (final Entry<String, String> nodeUpdate : lockEntry.getValue().getUpdatedNodes()
-                    .entrySet()) {
-                if (nodeUpdate.getKey().equals(address)) {
-                    applyUpdateToVslNode(node, "", nodeUpdate.getValue());
-                } else {
-                    applyUpdateToVslNode(node, nodeUpdate.getKey().substring(address.length() + 1
-                    ), nodeUpdate.getValue());
+        // most gets don't touch locked subtrees, so don't wait for a guard in that case.
+        if (activeLocks.get(address) == null && !activeLocks.isChildLocked(address)) {
+            return;
+        }
+        final LockTable.Guard guard = activeLocks.guard(address);
+        try {
+            final Map<String, LockedNode> affectedLocks = getLocksBelowAddress(address, issuerId);
+
+            for (final Entry<String, LockedNode> lockEntry : affectedLocks.entrySet()) {
+                for (final Entry<String, String> nodeUpdate : lockEntry.getValue()
+                        .getUpdatedNodes().entrySet()) {
+                    if (nodeUpdate.getKey().equals(address)) {
+                        applyUpdateToVslNode(node, "", nodeUpdate.getValue());
+                    } else {
+                        applyUpdateToVslNode(node, nodeUpdate.getKey().substring(
+                                address.length() + 1), nodeUpdate.getValue());
+                    }
                 }
             }
+        } finally {
+            guard.release();
         }
     }
 
@@ -1,10 +1,14 @@
 package org.ds2os.vsl.kor.structureLogger;
 
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import org.ds2os.vsl.core.utils.AddressParser;
 import org.slf4j.Logger;
@@ -12,6 +16,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * The Structure Logger is used to log all changes to the local KOR structure (add/del of nodes).
+ * The log points are kept in a ring buffer and numbered with monotonically increasing sequence
+ * numbers. An index maps the hash of each stored log point to its sequence number, so the changes
+ * since a hash can be collected without walking older log points, and requests for hashes that
+ * were already dropped from the ring are answered with a full update right away.
  *
  * @author liebald, pahl
  */
@@ -40,9 +48,51 @@ public class StructureLogger {
     private String myCurrentLogHash;
 
     /**
-     * The structure to store the updates.
+     * The ring buffer storing the log points, the log point with sequence number seq is stored at
+     * index seq % AMOUNT_OF_LOGPOINTS_TO_STORE.
      */
-    private final LinkedHashMap<String, LinkedList<String>> myStructureUpdates;
+    private final LogPoint[] myStructureUpdates;
+
+    /**
+     * Maps the hashes of the stored log points to their sequence numbers.
+     */
+    private final Map<String, Long> sequenceOfHash;
+
+    /**
+     * The sequence number the next log point gets.
+     */
+    private long nextSequence;
+
+    /**
+     * A log point, storing the addresses that changed while its hash was the current one.
+     */
+    private static final class LogPoint {
+
+        /**
+         * The hash of the log point.
+         */
+        private final String hash;
+
+        /**
+         * The addresses that changed, each address is stored only once.
+         */
+        private final Set<String> addresses = new LinkedHashSet<String>();
+
+        /**
+         * Constructor.
+         *
+         * @param hash
+         *            The hash of the log point.
+         */
+        LogPoint(final String hash) {
+            this.hash = hash;
+        }
+
+        @Override
+        public String toString() {
+            return hash + "=" + addresses;
+        }
+    }
 
     /**
      * Constructor.
@@ -51,11 +101,45 @@ public class StructureLogger {
      *            The ID of the local KA.
      */
     public StructureLogger(final String localID) {
-        myStructureUpdates = new LinkedHashMap<String, LinkedList<String>>();
+        myStructureUpdates = new LogPoint[AMOUNT_OF_LOGPOINTS_TO_STORE];
+        sequenceOfHash = new HashMap<String, Long>();
+        nextSequence = 0;
         this.localID = localID;
         LOGGER.trace("Constructed StructureLogger.");
     }
 
+    /**
+     * Returns the log point with the given sequence number.
+     *
+     * @param sequence
+     *            The sequence number, must belong to a log point that is still stored.
+     * @return The log point.
+     */
+    private LogPoint getLogPoint(final long sequence) {
+        return myStructureUpdates[(int) (sequence % AMOUNT_OF_LOGPOINTS_TO_STORE)];
+    }
+
+    /**
+     * Appends a new log point for the given hash and makes it the current one. If the ring is
+     * full, the oldest log point is dropped.
+     *
+     * @param hash
+     *            The hash of the new log point.
+     */
+    private void appendLogPoint(final String hash) {
+        final int index = (int) (nextSequence % AMOUNT_OF_LOGPOINTS_TO_STORE);
+        final LogPoint dropped = myStructureUpdates[index];
+        if (dropped != null) {
+            sequenceOfHash.remove(dropped.hash);
+            LOGGER.debug("Removed an entry from the StructureUpdate map to many (>{}) entries",
+                    AMOUNT_OF_LOGPOINTS_TO_STORE);
+        }
+        myStructureUpdates[index] = new LogPoint(hash);
+        sequenceOfHash.put(hash, nextSequence);
+        nextSequence++;
+        myCurrentLogHash = hash;
+    }
+
     /**
      * Adds the given address to the StructureUpdate list/map. The address is added to the List of
      * the current hash.
@@ -64,9 +148,7 @@ public class StructureLogger {
      *            Address that has changed.
      */
     private void addToStructureUpdateList(final String address) {
-        final LinkedList<String> changesOnCurrentHash = myStructureUpdates.get(myCurrentLogHash);
-        changesOnCurrentHash.add(address);
-        myStructureUpdates.put(myCurrentLogHash, changesOnCurrentHash);
+        getLogPoint(sequenceOfHash.get(myCurrentLogHash)).addresses.add(address);
     }
 
     /**
@@ -78,59 +160,56 @@ public class StructureLogger {
      *         ("/localka") and if the hash wasn't found a full update.
      */
     public final List<String> getChangeLogSincehash(final String fromHash) {
+        final Long fromSequence = fromHash == null ? null : sequenceOfHash.get(fromHash);
+        if (fromSequence == null) {
+            // indicate that we need a full update by returning "/localKA" as address)
+            LOGGER.debug("full update requested, fromHash not found in logger");
+            return new ArrayList<String>(Collections.singletonList("/" + localID));
+        }
 
-        final LinkedList<String> changedAddresses = new LinkedList<String>();
-
-        boolean includeHash = false;
+        // the changed addresses in the order they were added, and sorted for finding children.
+        final Set<String> changedAddresses = new LinkedHashSet<String>();
+        final TreeSet<String> sortedAddresses = new TreeSet<String>();
 
-        // Iterate through the log list until we reach the fromHash hash as a key.
-        // From there on include all changed addresses to the result, aside from the last one (since
-        // this one can still change).
-        for (final Entry<String, LinkedList<String>> entry : myStructureUpdates.entrySet()) {
-            if (entry.getKey() == null) {
-                continue;
-            }
-            if (entry.getKey().equals(fromHash)) {
-                includeHash = true;
-            }
-            // only include changed addresses which changed after fromHash and are already
-            // propagated (so not the current hash)
-            if (includeHash && !entry.getKey().equals(myCurrentLogHash)) {
-                for (final String address : entry.getValue()) {
-                    if (!changedAddresses.contains(address)) {
-                        // if a child of the current node is already included in the return list,
-                        // remove it.
-
-                        for (final Iterator<String> iterator = changedAddresses.iterator(); iterator
-                                .hasNext();) {
-                            final String add = iterator.next();
-                            if (add.startsWith(address + "/")) {
-                                iterator.remove();
-                            }
-                        }
-
-                        // if a parent node is already in the list, we don't need to add it.
-                        Boolean parentAlreadyIncluded = false;
-                        for (final String add : AddressParser.getAllParentsOfAddress(address)) {
-                            if (changedAddresses.contains(add)) {
-                                parentAlreadyIncluded = true;
-                            }
-                        }
-                        if (!parentAlreadyIncluded) {
-                            changedAddresses.add(address);
-                        }
-                    }
+        // include all changed addresses from fromHash on, aside from the ones of the current hash
+        // (since this one can still change).
+        final long currentSequence = sequenceOfHash.get(myCurrentLogHash);
+        for (long sequence = fromSequence; sequence < currentSequence; sequence++) {
+            for (final String address : getLogPoint(sequence).addresses) {
+                if (changedAddresses.contains(address)
+                        || hasIncludedParent(address, changedAddresses)) {
+                    // if a parent node is already in the list, we don't need to add it.
+                    continue;
                 }
+                // if a child of the current node is already included in the return list, remove
+                // it.
+                final SortedSet<String> children = sortedAddresses.subSet(address + "/",
+                        address + "0");
+                changedAddresses.removeAll(children);
+                children.clear();
+                changedAddresses.add(address);
+                sortedAddresses.add(address);
             }
         }
+        return new ArrayList<String>(changedAddresses);
+    }
 
-        if (!includeHash) {
-            // indicate that we need a full update by returning "/localKA" as address)
-            changedAddresses.add("/" + localID);
-            LOGGER.debug("full update requested, fromHash not found in logger");
+    /**
+     * Checks if a parent of the given address is part of the given addresses.
+     *
+     * @param address
+     *            The address whose parents are checked.
+     * @param addresses
+     *            The addresses to search.
+     * @return True if any parent is included.
+     */
+    private boolean hasIncludedParent(final String address, final Set<String> addresses) {
+        for (final String parent : AddressParser.getAllParentsOfAddress(address)) {
+            if (addresses.contains(parent)) {
+                return true;
+            }
         }
-
-        return changedAddresses;
+        return false;
     }
 
     /**
@@ -162,21 +241,19 @@ public class StructureLogger {
      */
     public final void newLogpointHash(final String hash) {
         LOGGER.trace("Setting new logID: {}", hash);
-        if (!myStructureUpdates.containsKey(hash)) {
-            this.myCurrentLogHash = hash;
-            myStructureUpdates.put(myCurrentLogHash, new LinkedList<String>());
-            // Delete older log points.
-            while (myStructureUpdates.size() > AMOUNT_OF_LOGPOINTS_TO_STORE) {
-                myStructureUpdates.remove(myStructureUpdates.entrySet().iterator().next().getKey());
-                LOGGER.debug("Removed an entry from the StructureUpdate map to many (>{}) entries",
-                        AMOUNT_OF_LOGPOINTS_TO_STORE);
-            }
+        if (!sequenceOfHash.containsKey(hash)) {
+            appendLogPoint(hash);
         }
     }
 
     @Override
     public final String toString() {
-        return myStructureUpdates.toString();
+        final List<LogPoint> logPoints = new ArrayList<LogPoint>();
+        for (long sequence = Math.max(0, nextSequence - AMOUNT_OF_LOGPOINTS_TO_STORE);
+                sequence < nextSequence; sequence++) {
+            logPoints.add(getLogPoint(sequence));
+        }
+        return logPoints.toString();
     }
 
     /**
@@ -186,12 +263,13 @@ public class StructureLogger {
      *            hash of the current local structure
      */
     public final void activate(final String hash) {
-        if (hash == null) {
-            myCurrentLogHash = "";
+        final String initialHash = hash == null ? "" : hash;
+        if (sequenceOfHash.containsKey(initialHash)) {
+            getLogPoint(sequenceOfHash.get(initialHash)).addresses.clear();
+            myCurrentLogHash = initialHash;
         } else {
-            myCurrentLogHash = hash;
+            appendLogPoint(initialHash);
         }
-        myStructureUpdates.put(myCurrentLogHash, new LinkedList<String>());
     }
 
     // /**
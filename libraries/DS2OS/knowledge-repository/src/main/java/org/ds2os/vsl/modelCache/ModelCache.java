@@ -43,6 +43,7 @@ import org.ds2os.vsl.exception.ModelIDExistsAlreadyException;
 import org.ds2os.vsl.exception.ModelNotFoundException;
 import org.ds2os.vsl.exception.RequiredDataMissingException;
 import org.ds2os.vsl.exception.TypeMissingException;
+import org.ds2os.vsl.kor.Restrictions;
 import org.ds2os.vsl.kor.VslNodeDatabase;
 import org.ds2os.vsl.kor.dataStructures.InternalNode;
 import org.slf4j.Logger;
@@ -171,6 +172,12 @@ public final class ModelCache implements VslModelCache {
             newTypes.addAll(types);
             result.get(serviceID).setType(newTypes);
         }
+
+        // compile the restrictions of the model now, so writes to its nodes only need to look up
+        // the compiled form.
+        for (final InternalNode node : result.values()) {
+            Restrictions.getValidator(node.getRestriction());
+        }
         return result;
     }
 
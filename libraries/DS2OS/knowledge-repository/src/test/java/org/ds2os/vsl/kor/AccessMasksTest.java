@@ -0,0 +1,103 @@
+package org.ds2os.vsl.kor;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.ds2os.vsl.core.impl.ServiceIdentity;
+import org.ds2os.vsl.kor.dataStructures.MetaNode;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testclass for {@link AccessMasks}.
+ */
+public class AccessMasksTest {
+
+    /**
+     * Unit under test.
+     */
+    private AccessMasks masks;
+
+    /**
+     * Identity used for the tests.
+     */
+    private final ServiceIdentity identity = new ServiceIdentity("service1", "id1");
+
+    /**
+     * Setup function.
+     */
+    @Before
+    public final void setUp() {
+        masks = new AccessMasks();
+    }
+
+    /**
+     * Creates a node with the given reader and writer IDs.
+     *
+     * @param readers
+     *            The reader IDs.
+     * @param writers
+     *            The writer IDs.
+     * @return The node.
+     */
+    private MetaNode node(final List<String> readers, final List<String> writers) {
+        return new MetaNode(Collections.<String>emptyList(), readers, writers, "", "");
+    }
+
+    /**
+     * Test method for {@link AccessMasks.IdentityMask#get(String, MetaNode)}.
+     */
+    @Test
+    public final void testGet() {
+        final AccessMasks.IdentityMask mask = masks.forIdentity(identity);
+        assertThat(mask.get("/ka/a", node(Arrays.asList("id1"), Arrays.asList("id2"))),
+                is(equalTo(AccessMasks.READ)));
+        assertThat(mask.get("/ka/b", node(Arrays.asList("*"), Arrays.asList("id1"))),
+                is(equalTo(AccessMasks.READ | AccessMasks.WRITE)));
+        assertThat(mask.get("/ka/c", node(Arrays.asList("id2"), Arrays.asList("id2"))),
+                is(equalTo(0)));
+        assertThat(mask.canWrite("/ka/b", node(Arrays.asList("*"), Arrays.asList("id1"))),
+                is(equalTo(true)));
+    }
+
+    /**
+     * Test method for {@link AccessMasks#invalidate(String)}.
+     */
+    @Test
+    public final void testInvalidate() {
+        final MetaNode readable = node(Arrays.asList("id1"), Arrays.asList("id1"));
+        final MetaNode hidden = node(Arrays.asList("id2"), Arrays.asList("id2"));
+        AccessMasks.IdentityMask mask = masks.forIdentity(identity);
+        mask.get("/ka/a", readable);
+        mask.get("/ka/a/b", readable);
+        mask.get("/ka/ab", readable);
+
+        // cached rights are used as long as the structure doesn't change
+        mask = masks.forIdentity(new ServiceIdentity("service1", "id1"));
+        assertThat(mask.canRead("/ka/a/b", hidden), is(equalTo(true)));
+
+        masks.invalidate("/ka/a");
+        mask = masks.forIdentity(identity);
+        assertThat(mask.canRead("/ka/a", hidden), is(equalTo(false)));
+        assertThat(mask.canRead("/ka/a/b", hidden), is(equalTo(false)));
+        assertThat(mask.canRead("/ka/ab", hidden), is(equalTo(true)));
+    }
+
+    /**
+     * Test that rights computed with a mask retrieved before an invalidation aren't cached.
+     */
+    @Test
+    public final void testInvalidateWhileReading() {
+        final AccessMasks.IdentityMask mask = masks.forIdentity(identity);
+        masks.invalidate("/ka/a");
+        mask.get("/ka/a", node(Arrays.asList("id1"), Arrays.asList("id1")));
+
+        assertThat(masks.forIdentity(identity).canRead("/ka/a",
+                node(Arrays.asList("id2"), Arrays.asList("id2"))), is(equalTo(false)));
+    }
+}
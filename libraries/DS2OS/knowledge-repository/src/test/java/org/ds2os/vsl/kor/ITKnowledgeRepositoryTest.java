@@ -184,6 +184,7 @@ public class ITKnowledgeRepositoryTest {
         when(configMock.getProperty("kor.db.memoryMode", "CACHED")).thenReturn("CACHED");
         when(configMock.getProperty("kor.db.maxValueLength", "16M")).thenReturn("16M");
         when(configMock.getProperty("kor.db.type", "hsqldb")).thenReturn("hsqldb");
+        when(configMock.getIntProperty("kor.locking.expirationTime", 30)).thenReturn(30);
 
         when(configMock.getProperty("ka.agentName", "agent1")).thenReturn("agent1");
 
@@ -296,6 +297,53 @@ public class ITKnowledgeRepositoryTest {
                 is(equalTo("[/basic/text]")));
     }
 
+    /**
+     * Test for {@link KnowledgeRepository#applyKORUpdate(VslKORUpdate)} with an update that only
+     * changes access rights and restrictions, which leaves the structure hash unchanged.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testApplyKORUpdateChangedAccess() throws Exception {
+        final List<String> readers = Arrays.asList("creator", "system", "reader");
+        final List<String> writers = Arrays.asList("creator", "system", "writer");
+        final List<String> newReaders = Arrays.asList("creator", "system", "otherReader");
+
+        final Map<String, VslStructureNode> addedNodes = new HashMap<String, VslStructureNode>();
+        final VslStructureNodeImpl node = new VslStructureNodeImpl(readers, writers, "",
+                Arrays.asList("/treeRoot"), "");
+        node.putChild("service", new VslStructureNodeImpl(readers, writers, "",
+                Arrays.asList("/basic/composed"), ""));
+        node.putChild("service/a",
+                new VslStructureNodeImpl(readers, writers, "", Arrays.asList("/basic/text"), ""));
+        node.putChild("service/b", new VslStructureNodeImpl(readers, writers, "",
+                Arrays.asList("/basic/number"), ""));
+        addedNodes.put("/KA2", node);
+        kor.applyKORUpdate(new KORUpdate("", "", addedNodes, new HashSet<String>(), "KA2"));
+        final String hash = kor.getCurrentKORHashOf("/KA2");
+
+        final Map<String, VslStructureNode> changedNodes = new HashMap<String, VslStructureNode>();
+        final VslStructureNodeImpl changed = new VslStructureNodeImpl(readers, writers, "",
+                Arrays.asList("/treeRoot"), "");
+        changed.putChild("service", new VslStructureNodeImpl(readers, writers, "",
+                Arrays.asList("/basic/composed"), ""));
+        changed.putChild("service/a", new VslStructureNodeImpl(newReaders, writers, "",
+                Arrays.asList("/basic/text"), ""));
+        changed.putChild("service/b", new VslStructureNodeImpl(readers, writers,
+                "minimum='0'", Arrays.asList("/basic/number"), ""));
+        changedNodes.put("/KA2", changed);
+        kor.applyKORUpdate(new KORUpdate("", "", changedNodes, new HashSet<String>(), "KA2"));
+
+        final TreeMap<String, MetaNode> metaData = kor.getVslNodeTree().getMetaData("/KA2", true);
+        assertThat(kor.getCurrentKORHashOf("/KA2"), is(equalTo(hash)));
+        assertThat(metaData.get("/KA2/service").getReaderIDs().toString(),
+                is(equalTo("[creator, system, reader]")));
+        assertThat(metaData.get("/KA2/service/a").getReaderIDs().toString(),
+                is(equalTo("[creator, system, otherReader]")));
+        assertThat(metaData.get("/KA2/service/b").getRestriction(), is(equalTo("minimum='0'")));
+    }
+
     /**
      * Test for {@link KnowledgeRepository#commitSubtree(String, VslIdentity)}.
      *
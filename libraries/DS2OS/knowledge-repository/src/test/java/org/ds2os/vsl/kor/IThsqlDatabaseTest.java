@@ -126,10 +126,12 @@ public class IThsqlDatabaseTest {
         when(configMock.getArchiveNodeVersionLimit()).thenReturn(10);
         when(configMock.getDatabaseMemoryMode()).thenReturn("CACHED");
         when(configMock.getDatabaseMaxValueLength()).thenReturn("16M");
+        when(configMock.getDatabaseCommitWindow()).thenReturn(2);
+        when(configMock.getDatabaseCommitBatchSize()).thenReturn(16);
 
         final VslStatisticsProvider statisticsProvider = new DummyStatisticsProvider();
 
-        db = new HSQLDatabase(configMock, statisticsProvider);
+        db = createDatabase(configMock, statisticsProvider);
         db.activate();
         types = new ArrayList<String>();
         types.add("/type1");
@@ -144,6 +146,21 @@ public class IThsqlDatabaseTest {
         writers.add("ID2");
     }
 
+    /**
+     * Creates the database under test. Overridden by the tests of other {@link VslNodeDatabase}
+     * implementations, which run the same tests.
+     *
+     * @param config
+     *            The configuration of the database.
+     * @param statisticsProvider
+     *            The statistics provider.
+     * @return The database, not yet activated.
+     */
+    protected VslNodeDatabase createDatabase(final VslKORDatabaseConfig config,
+            final VslStatisticsProvider statisticsProvider) {
+        return new HSQLDatabase(config, statisticsProvider);
+    }
+
     /**
      * Test method for {@link VslNodeDatabase#addNode(String, List, List, List, String, String)} .
      *
@@ -256,10 +273,10 @@ public class IThsqlDatabaseTest {
         final String hash3 = db.getHashOfSubtree(service2, Collections.<String>emptyList());
         final String hash4 = db.getHashOfSubtree(localKA,
                 Arrays.asList(service2.substring(service2.lastIndexOf("/") + 1)));
-        assertThat(hash0, is(equalTo("fff3136b71500ffc")));
-        assertThat(hash1, is(equalTo("200c8b0b88aa")));
-        assertThat(hash2, is(equalTo("fffffff2ec411d0c")));
-        assertThat(hash3, is(equalTo("11")));
+        assertThat(hash0, is(equalTo("30ddea47210f2051")));
+        assertThat(hash1, is(equalTo("a11d9c63582c2da9")));
+        assertThat(hash2, is(equalTo("ba29324f99b373e8")));
+        assertThat(hash3, is(equalTo("0")));
         assertThat(hash4, is(equalTo(hash1)));
 
         db.addNode(service2, types, readers, writers, "", "");
@@ -269,10 +286,10 @@ public class IThsqlDatabaseTest {
         final String hash31 = db.getHashOfSubtree(service2, Collections.<String>emptyList());
         final String hash41 = db.getHashOfSubtree(localKA,
                 Arrays.asList(service2.substring(service2.lastIndexOf("/") + 1)));
-        assertThat(hash01, is(equalTo("bae2d983e1663ce4")));
-        assertThat(hash11, is(equalTo("ab63067cee9762")));
+        assertThat(hash01, is(equalTo("cab31eb9a9c81068")));
+        assertThat(hash11, is(equalTo("3af2d0d5e0e51dc0")));
         assertThat(hash21, is(equalTo(hash2)));
-        assertThat(hash31, is(equalTo("fffffff2ec411d31")));
+        assertThat(hash31, is(equalTo("99d5347288b8f017")));
         assertThat(hash41, is(equalTo(hash4)));
 
     }
@@ -366,6 +383,83 @@ public class IThsqlDatabaseTest {
                                        // ok
     }
 
+    /**
+     * Test method for {@link VslNodeDatabase#getNodeRecord(String, VslAddressParameters)} with a
+     * requested version or an upper bound of the time range.
+     *
+     * @throws NodeNotExistingException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testGetNodeRecordArchived() throws NodeNotExistingException {
+        db.addNode(localKA, types, readers, writers, "", "");
+        db.addNode(service1, types, readers, writers, "", "");
+        final LinkedHashMap<String, String> nodesToSet = new LinkedHashMap<String, String>();
+        nodesToSet.put(service1, "first");
+        db.setValueTree(nodesToSet);
+        delay(5);
+        final long afterFirst = System.currentTimeMillis();
+        delay(5);
+        nodesToSet.put(service1, "second");
+        db.setValueTree(nodesToSet);
+
+        final long version = db.getNodeRecord(service1, paramsExcludeSubtree).get(service1)
+                .getVersion();
+        final VslAddressParameters archived = new AddressParameters()
+                .withNodeInformationScope(NodeInformationScope.COMPLETE);
+        final InternalNode byVersion = db
+                .getNodeRecord(service1, archived.withVersion((int) version - 1)).get(service1);
+        assertThat(byVersion.getValue(), is(equalTo("first")));
+        assertThat(byVersion.getVersion(), is(equalTo(version - 1)));
+
+        final InternalNode byTime = db.getNodeRecord(service1,
+                archived.withVersion(-1).withTimeRange(-1, afterFirst)).get(service1);
+        assertThat(byTime.getValue(), is(equalTo("first")));
+
+        expectedException.expect(NodeNotExistingException.class);
+        db.getNodeRecord(service1, archived.withTimeRange(-1, -1).withVersion((int) version + 1));
+    }
+
+    /**
+     * Test method for {@link VslNodeDatabase#getNodeHistory(String, VslAddressParameters)}.
+     *
+     * @throws NodeNotExistingException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testGetNodeHistory() throws NodeNotExistingException {
+        final String subnode = service1 + "/a";
+        db.addNode(localKA, types, readers, writers, "", "");
+        db.addNode(service1, types, readers, writers, "", "");
+        db.addNode(subnode, types, readers, writers, "", "");
+        final LinkedHashMap<String, String> nodesToSet = new LinkedHashMap<String, String>();
+        nodesToSet.put(subnode, "sub1");
+        db.setValueTree(nodesToSet);
+        delay(5);
+        final long from = System.currentTimeMillis();
+        delay(5);
+        nodesToSet.put(subnode, "sub2");
+        db.setValueTree(nodesToSet);
+        nodesToSet.put(subnode, "sub3");
+        db.setValueTree(nodesToSet);
+        delay(5);
+        final long to = System.currentTimeMillis();
+        delay(5);
+        nodesToSet.put(subnode, "sub4");
+        db.setValueTree(nodesToSet);
+
+        final TreeMap<String, List<InternalNode>> history = db.getNodeHistory(service1,
+                paramsIncludeSubtree.withTimeRange(from, to));
+        assertThat(history.get(subnode).size(), is(equalTo(2)));
+        assertThat(history.get(subnode).get(0).getValue(), is(equalTo("sub2")));
+        assertThat(history.get(subnode).get(1).getValue(), is(equalTo("sub3")));
+
+        assertThat(db.getNodeHistory(service1, paramsExcludeSubtree.withTimeRange(from, to))
+                .containsKey(subnode), is(equalTo(false)));
+        assertThat(db.getNodeHistory(subnode, paramsExcludeSubtree.withTimeRange(from, -1))
+                .get(subnode).size(), is(equalTo(3)));
+    }
+
     // /**
     // * Test method for {@link VslNodeDatabase#getNodeRecord(String, boolean)}.
     // *
@@ -675,6 +769,102 @@ public class IThsqlDatabaseTest {
 
     }
 
+    /**
+     * Test method for {@link VslNodeDatabase#getNodeRecord(String, VslAddressParameters)} with a
+     * limited depth. Siblings sharing a prefix with the requested node must not be included.
+     *
+     * @throws NodeNotExistingException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testGetNodeRecordDepth() throws NodeNotExistingException {
+        db.addNode(localKA, types, readers, writers, "", "");
+        db.addNode(service1, types, readers, writers, "", "");
+        db.addNode(service1 + "/a", types, readers, writers, "", "");
+        db.addNode(service1 + "/a/b", types, readers, writers, "", "");
+        db.addNode(service1 + "0", types, readers, writers, "", "");
+        final LinkedHashMap<String, String> nodesToSet = new LinkedHashMap<String, String>();
+        for (int i = 0; i < 5; i++) {
+            nodesToSet.put(service1 + "/a", "a" + i);
+            nodesToSet.put(service1 + "/a/b", "b" + i);
+            db.setValueTree(nodesToSet);
+        }
+
+        final TreeMap<String, InternalNode> depthOne = db.getNodeRecord(service1,
+                new AddressParameters().withDepth(1)
+                        .withNodeInformationScope(NodeInformationScope.VALUE));
+        assertThat(depthOne.keySet().toString(),
+                is(equalTo("[" + service1 + ", " + service1 + "/a]")));
+        assertThat(depthOne.get(service1 + "/a").getValue(), is(equalTo("a4")));
+
+        final TreeMap<String, InternalNode> subtree = db.getNodeRecord(service1,
+                paramsIncludeSubtree);
+        assertThat(subtree.size(), is(equalTo(3)));
+        assertThat(subtree.get(service1).getVersion(), is(equalTo(4L)));
+        assertThat(subtree.get(service1 + "/a").getVersion(), is(equalTo(4L)));
+        assertThat(subtree.get(service1 + "/a/b").getValue(), is(equalTo("b4")));
+        assertThat(subtree.get(service1 + "/a/b").getVersion(), is(equalTo(4L)));
+
+        final TreeMap<String, InternalNode> root = db.getNodeRecord("/",
+                new AddressParameters().withDepth(2)
+                        .withNodeInformationScope(NodeInformationScope.METADATA));
+        assertThat(root.keySet().toString(),
+                is(equalTo("[" + localKA + ", " + service1 + ", " + service1 + "0]")));
+    }
+
+    /**
+     * Test that reads on the pooled connections can run while values are set, always seeing a
+     * complete committed state.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testConcurrentReadsAndWrites() throws Exception {
+        db.addNode(localKA, types, readers, writers, "", "");
+        db.addNode(service1, types, readers, writers, "", "");
+        db.addNode(service1 + "/a", types, readers, writers, "", "");
+        final LinkedHashMap<String, String> nodesToSet = new LinkedHashMap<String, String>();
+        nodesToSet.put(service1, "0");
+        nodesToSet.put(service1 + "/a", "0");
+        db.setValueTree(nodesToSet);
+
+        final List<Throwable> failures = Collections.synchronizedList(new LinkedList<Throwable>());
+        final List<Thread> readerThreads = new LinkedList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final Thread reader = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 50; j++) {
+                            final TreeMap<String, InternalNode> nodes = db
+                                    .getNodeRecord(service1, paramsIncludeSubtree);
+                            // both values are set in the same transaction.
+                            assertThat(nodes.get(service1 + "/a").getValue(),
+                                    is(equalTo(nodes.get(service1).getValue())));
+                        }
+                    } catch (final Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            };
+            readerThreads.add(reader);
+            reader.start();
+        }
+        for (int i = 1; i <= 50; i++) {
+            nodesToSet.put(service1, Integer.toString(i));
+            nodesToSet.put(service1 + "/a", Integer.toString(i));
+            db.setValueTree(nodesToSet);
+        }
+        for (final Thread reader : readerThreads) {
+            reader.join();
+        }
+
+        assertThat(failures.toString(), failures.isEmpty(), is(equalTo(true)));
+        assertThat(db.getNodeRecord(service1, paramsExcludeSubtree).get(service1).getValue(),
+                is(equalTo("50")));
+    }
+
     // /**
     // * Test method for {@link VslNodeDatabase#getNumberOfNodes()}.
     // */
@@ -914,4 +1104,123 @@ public class IThsqlDatabaseTest {
         assertThat(result.get(service1 + "/b/d").getVersion(), is(equalTo(1L)));
     }
 
+    /**
+     * Test method for {@link VslNodeDatabase#putListElements(String, Map)},
+     * {@link VslNodeDatabase#getListElements(String)} and
+     * {@link VslNodeDatabase#removeListElement(String, String)}.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testListElements() throws Exception {
+        db.addNode(localKA, types, readers, writers, "", "");
+        db.addNode(service1, types, readers, writers, "", "");
+
+        final Map<String, Long> elements = new LinkedHashMap<String, Long>();
+        elements.put("c", 30L);
+        elements.put("a", 10L);
+        db.putListElements(service1, elements);
+        db.putListElements(service1, Collections.singletonMap("b", 20L));
+        db.putListElements(localKA, Collections.singletonMap("x", 0L));
+
+        assertThat(new ArrayList<String>(db.getListElements(service1).keySet()),
+                is(equalTo(Arrays.asList("a", "b", "c"))));
+
+        // updating the sort key moves the element
+        db.putListElements(service1, Collections.singletonMap("a", 40L));
+        db.removeListElement(service1, "b");
+        assertThat(new ArrayList<String>(db.getListElements(service1).keySet()),
+                is(equalTo(Arrays.asList("c", "a"))));
+
+        db.removeNode(service1);
+        assertThat(db.getListElements(service1).isEmpty(), is(equalTo(true)));
+        assertThat(db.getListElements(localKA).size(), is(equalTo(1)));
+    }
+
+    /**
+     * Test that changing list elements increments the version of the elements node and its
+     * parents without rewriting its value.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testListElementsVersion() throws Exception {
+        final String elementsNode = service1 + "/elements";
+        db.addNode(localKA, types, readers, writers, "", "");
+        db.addNode(service1, types, readers, writers, "", "");
+        db.addNode(elementsNode, types, readers, writers, "", "");
+        db.setValueTree(Collections.singletonMap(elementsNode, ""));
+        final long version = db.getNodeRecord(elementsNode, paramsExcludeSubtree)
+                .get(elementsNode).getVersion();
+        final long serviceVersion = db.getNodeRecord(service1, paramsExcludeSubtree)
+                .get(service1).getVersion();
+
+        db.putListElements(service1, Collections.singletonMap("a", 10L));
+        db.removeListElement(service1, "a");
+
+        final InternalNode node = db.getNodeRecord(elementsNode, paramsExcludeSubtree)
+                .get(elementsNode);
+        assertThat(node.getValue(), is(equalTo("")));
+        assertThat(node.getVersion(), is(equalTo(version + 2)));
+        assertThat(db.getNodeRecord(service1, paramsExcludeSubtree).get(service1).getVersion(),
+                is(equalTo(serviceVersion + 2)));
+    }
+
+    /**
+     * Test method for {@link VslNodeDatabase#setValueTree(Map)} with concurrent writers, whose
+     * writes are committed together.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testSetValueTreeConcurrent() throws Exception {
+        final int threads = 8;
+        final int writesPerThread = 20;
+        db.addNode(localKA, types, readers, writers, "", "");
+        db.addNode(service1, types, readers, writers, "", "");
+        for (int i = 0; i < threads; i++) {
+            db.addNode(service1 + "/n" + i, types, readers, writers, "", "");
+        }
+
+        final List<Thread> writerThreads = new ArrayList<Thread>();
+        final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+        for (int i = 0; i < threads; i++) {
+            final String address = service1 + "/n" + i;
+            final Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < writesPerThread; j++) {
+                            db.setValueTree(Collections.singletonMap(address, Integer.toString(j)));
+                            // read your writes
+                            if (!db.getNodeRecord(address, paramsExcludeSubtree).get(address)
+                                    .getValue().equals(Integer.toString(j))) {
+                                throw new IllegalStateException("lost write on " + address);
+                            }
+                        }
+                    } catch (final Exception e) {
+                        errors.add(e);
+                    }
+                }
+            });
+            writerThreads.add(t);
+            t.start();
+        }
+        for (final Thread t : writerThreads) {
+            t.join();
+        }
+
+        assertThat(errors.isEmpty(), is(equalTo(true)));
+        final TreeMap<String, InternalNode> result = db.getNodeRecord(service1,
+                paramsIncludeSubtree);
+        assertThat(result.get(service1).getVersion(),
+                is(equalTo((long) threads * writesPerThread - 1)));
+        for (int i = 0; i < threads; i++) {
+            assertThat(result.get(service1 + "/n" + i).getVersion(),
+                    is(equalTo((long) writesPerThread - 1)));
+        }
+    }
 }
@@ -0,0 +1,126 @@
+package org.ds2os.vsl.kor;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.ds2os.vsl.core.config.VslKORDatabaseConfig;
+import org.ds2os.vsl.core.statistics.VslStatisticsProvider;
+import org.ds2os.vsl.core.utils.AddressParameters;
+import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.ds2os.vsl.core.utils.VslAddressParameters.NodeInformationScope;
+import org.ds2os.vsl.kor.dataStructures.InternalNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Integration test for {@link VslNodeDatabase} using the specific implementation
+ * {@link MemoryDatabase}. Runs all tests of {@link IThsqlDatabaseTest}.
+ */
+public class ITmemoryDatabaseTest extends IThsqlDatabaseTest {
+
+    /**
+     * Folder for the snapshot and journal of the persistent database.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Override
+    protected final VslNodeDatabase createDatabase(final VslKORDatabaseConfig config,
+            final VslStatisticsProvider statisticsProvider) {
+        return new MemoryDatabase(config);
+    }
+
+    /**
+     * Test that a persistent {@link MemoryDatabase} restores its nodes from the journal, with and
+     * without a snapshot written on shutdown.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testPersistence() throws Exception {
+        when(configMock.isDatabasePersistent()).thenReturn(true);
+        when(configMock.getDatabasePath())
+                .thenReturn(new File(folder.getRoot(), "db").getAbsolutePath());
+        final List<String> types = Arrays.asList("/type1");
+        final List<String> ids = Arrays.asList("ID1");
+        final VslAddressParameters params = new AddressParameters().withDepth(-1)
+                .withNodeInformationScope(NodeInformationScope.COMPLETE);
+
+        final MemoryDatabase first = new MemoryDatabase(configMock);
+        first.activate();
+        first.addNode("/localKA", types, ids, ids, "", "");
+        first.addNode("/localKA/s1", types, ids, ids, "", "TTL='5'");
+        for (int i = 0; i < 3; i++) {
+            first.setValueTree(Collections.singletonMap("/localKA/s1", "value" + i));
+        }
+        first.putListElements("/localKA/s1", Collections.singletonMap("elem", 1L));
+
+        // not shut down, the second database only has the journal.
+        final MemoryDatabase second = new MemoryDatabase(configMock);
+        second.activate();
+        Map<String, InternalNode> nodes = second.getNodeRecord("/localKA", params);
+        assertThat(nodes.get("/localKA/s1").getValue(), is(equalTo("value2")));
+        // changing the list elements incremented the version without changing the value.
+        assertThat(nodes.get("/localKA/s1").getVersion(), is(equalTo(3L)));
+        assertThat(nodes.get("/localKA/s1").getCacheParameters(), is(equalTo("TTL='5'")));
+        assertThat(second.getListElements("/localKA/s1").get("elem"), is(equalTo(1L)));
+        second.setValueTree(Collections.singletonMap("/localKA/s1", "value3"));
+        second.shutdown();
+
+        final MemoryDatabase third = new MemoryDatabase(configMock);
+        third.activate();
+        nodes = third.getNodeRecord("/localKA", params);
+        assertThat(nodes.get("/localKA/s1").getValue(), is(equalTo("value3")));
+        assertThat(nodes.get("/localKA/s1").getVersion(), is(equalTo(4L)));
+        assertThat(third.getNodeHistory("/localKA/s1", new AddressParameters())
+                .get("/localKA/s1").size(), is(equalTo(4)));
+        third.shutdown();
+    }
+
+    /**
+     * Test that a persistent {@link MemoryDatabase} compacts its journal once it grew larger than
+     * the snapshot, without a restart.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testJournalCompaction() throws Exception {
+        final String path = new File(folder.getRoot(), "db").getAbsolutePath();
+        when(configMock.isDatabasePersistent()).thenReturn(true);
+        when(configMock.getDatabasePath()).thenReturn(path);
+        final List<String> ids = Arrays.asList("ID1");
+        final char[] chars = new char[1024 * 1024];
+        Arrays.fill(chars, 'x');
+        final String largeValue = new String(chars);
+
+        final MemoryDatabase db = new MemoryDatabase(configMock);
+        db.activate();
+        db.addNode("/localKA", Arrays.asList("/type1"), ids, ids, "", "");
+        assertThat(new File(path + ".journal.1").exists(), is(equalTo(true)));
+        for (int i = 0; i < 5; i++) {
+            db.setValueTree(Collections.singletonMap("/localKA", largeValue + i));
+        }
+
+        // the journal outgrew the snapshot and was replaced by a new snapshot and journal.
+        assertThat(new File(path + ".journal.1").exists(), is(equalTo(false)));
+        assertThat(new File(path + ".journal.2").exists(), is(equalTo(true)));
+        db.shutdown();
+
+        final MemoryDatabase restarted = new MemoryDatabase(configMock);
+        restarted.activate();
+        assertThat(restarted.getNodeRecord("/localKA", new AddressParameters()).get("/localKA")
+                .getValue(), is(equalTo(largeValue + 4)));
+        restarted.shutdown();
+    }
+}
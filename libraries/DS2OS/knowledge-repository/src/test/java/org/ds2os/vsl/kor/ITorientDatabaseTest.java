@@ -267,10 +267,10 @@ public class ITorientDatabaseTest {
         final String hash3 = db.getHashOfSubtree(service2, Collections.<String>emptyList());
         final String hash4 = db.getHashOfSubtree(localKA,
                 Arrays.asList(service2.substring(service2.lastIndexOf("/") + 1)));
-        assertThat(hash0, is(equalTo("fff3136b71500ffc")));
-        assertThat(hash1, is(equalTo("200c8b0b88aa")));
-        assertThat(hash2, is(equalTo("fffffff2ec411d0c")));
-        assertThat(hash3, is(equalTo("11")));
+        assertThat(hash0, is(equalTo("30ddea47210f2051")));
+        assertThat(hash1, is(equalTo("a11d9c63582c2da9")));
+        assertThat(hash2, is(equalTo("ba29324f99b373e8")));
+        assertThat(hash3, is(equalTo("0")));
         assertThat(hash4, is(equalTo(hash1)));
 
         db.addNode(service2, types, readers, writers, "", "");
@@ -280,10 +280,10 @@ public class ITorientDatabaseTest {
         final String hash31 = db.getHashOfSubtree(service2, Collections.<String>emptyList());
         final String hash41 = db.getHashOfSubtree(localKA,
                 Arrays.asList(service2.substring(service2.lastIndexOf("/") + 1)));
-        assertThat(hash01, is(equalTo("bae2d983e1663ce4")));
-        assertThat(hash11, is(equalTo("ab63067cee9762")));
+        assertThat(hash01, is(equalTo("cab31eb9a9c81068")));
+        assertThat(hash11, is(equalTo("3af2d0d5e0e51dc0")));
         assertThat(hash21, is(equalTo(hash2)));
-        assertThat(hash31, is(equalTo("fffffff2ec411d31")));
+        assertThat(hash31, is(equalTo("99d5347288b8f017")));
         assertThat(hash41, is(equalTo(hash4)));
 
     }
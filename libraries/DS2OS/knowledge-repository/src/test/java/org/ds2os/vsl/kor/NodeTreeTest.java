@@ -4,15 +4,19 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -39,7 +43,6 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
-import org.mockito.Matchers;
 
 /**
  * @author liebald
@@ -285,9 +288,9 @@ public class NodeTreeTest {
         final VslNode result = nt.get(address, params, id);
 
         // assert
-        verify(id, times(9)).getAccessIDs();
         verify(mockedDB).getNodeRecord(address, params);
         assertThat(result.getValue(), is(equalTo("TestResult")));
+        assertThat(result.getAccess(), is(equalTo("")));
         assertThat(result.getTypes().toString(), is(equalTo("[/type/1]")));
         assertThat(getSize(result.getDirectChildren()), is(equalTo(1)));
         assertThat(getSize(result.getAllChildren()), is(equalTo(2)));
@@ -298,6 +301,7 @@ public class NodeTreeTest {
         assertThat(result.getChild("intermediary").getTypes().toString(), is(equalTo("[/type/1]")));
         assertThat(getSize(result.getChild("intermediary").getAllChildren()), is(equalTo(1)));
         assertThat(result.getChild("intermediary").getVersion(), is(equalTo(3L)));
+        assertThat(result.getChild("intermediary").getAccess(), is(equalTo("")));
         assertThat(result.getChild("intermediary").getTimestamp(), is(equalTo(ts)));
 
         assertThat(result.getChild("intermediary").getChild("leaf").getValue(),
@@ -307,6 +311,8 @@ public class NodeTreeTest {
         assertThat(getSize(result.getChild("intermediary").getChild("leaf").getAllChildren()),
                 is(equalTo(0)));
         assertThat(result.getChild("intermediary").getChild("leaf").getVersion(), is(equalTo(5L)));
+        assertThat(result.getChild("intermediary").getChild("leaf").getAccess(),
+                is(equalTo("")));
         assertThat(result.getChild("intermediary").getChild("leaf").getTimestamp(),
                 is(equalTo(ts)));
 
@@ -395,14 +401,15 @@ public class NodeTreeTest {
 
         // assert
         // first child should be empty, everything else ok.
-        verify(id, times(10)).getAccessIDs();
         verify(mockedDB).getNodeRecord(address, params);
         assertThat(result.getValue(), is(equalTo("TestResult")));
+        assertThat(result.getAccess(), is(equalTo("")));
         assertThat(result.getTypes().toString(), is(equalTo("[/type/1]")));
         assertThat(getSize(result.getDirectChildren()), is(equalTo(1)));
         assertThat(getSize(result.getAllChildren()), is(equalTo(2)));
 
         assertThat(result.getChild("intermediary").getValue(), is(nullValue()));
+        assertThat(result.getChild("intermediary").getAccess(), is(equalTo("-")));
         assertThat(result.getChild("intermediary").getTypes().toString(), is(equalTo("[]")));
         assertThat(result.getChild("intermediary").getTimestamp(), is(nullValue()));
         assertThat(result.getChild("intermediary").getVersion(), is(equalTo(-1L)));
@@ -411,6 +418,8 @@ public class NodeTreeTest {
 
         assertThat(result.getChild("intermediary").getChild("leaf").getValue(),
                 is(equalTo("leafValue")));
+        assertThat(result.getChild("intermediary").getChild("leaf").getAccess(),
+                is(equalTo("")));
         assertThat(result.getChild("intermediary").getChild("leaf").getTypes().toString(),
                 is(equalTo("[/type/1]")));
         assertThat(getSize(result.getChild("intermediary").getChild("leaf").getAllChildren()),
@@ -456,14 +465,15 @@ public class NodeTreeTest {
 
         // assert
         // leaf should be missing (hiding structure), everything else ok.
-        verify(id, times(8)).getAccessIDs();
         verify(mockedDB).getNodeRecord(address, params);
         assertThat(result.getValue(), is(equalTo("TestResult")));
+        assertThat(result.getAccess(), is(equalTo("")));
         assertThat(result.getTypes().toString(), is(equalTo("[/type/1]")));
         assertThat(getSize(result.getDirectChildren()), is(equalTo(1)));
         assertThat(getSize(result.getAllChildren()), is(equalTo(1))); // leaf should be missing now.
 
         assertThat(result.getChild("intermediary").getValue(), is(equalTo("intermediaryValue")));
+        assertThat(result.getChild("intermediary").getAccess(), is(equalTo("")));
         assertThat(result.getChild("intermediary").getTypes().toString(), is(equalTo("[/type/1]")));
         assertThat(getSize(result.getChild("intermediary").getAllChildren()), is(equalTo(0)));
     }
@@ -507,10 +517,9 @@ public class NodeTreeTest {
 
         // assert
         // intermediary node should be empty, everything else ok.
-
-        verify(id, times(10)).getAccessIDs();
         verify(mockedDB).getNodeRecord(address, params);
         assertThat(result.getValue(), is(nullValue()));
+        assertThat(result.getAccess(), is(equalTo("-")));
         assertThat(result.getTypes().toString(), is(equalTo("[]")));
         assertThat(result.getTimestamp(), is(nullValue()));
         assertThat(result.getVersion(), is(equalTo(-1L)));
@@ -518,11 +527,14 @@ public class NodeTreeTest {
         assertThat(getSize(result.getAllChildren()), is(equalTo(2)));
 
         assertThat(result.getChild("intermediary").getValue(), is(equalTo("intermediaryValue")));
+        assertThat(result.getChild("intermediary").getAccess(), is(equalTo("")));
         assertThat(result.getChild("intermediary").getTypes().toString(), is(equalTo("[/type/1]")));
         assertThat(getSize(result.getChild("intermediary").getAllChildren()), is(equalTo(1)));
 
         assertThat(result.getChild("intermediary").getChild("leaf").getValue(),
                 is(equalTo("leafValue")));
+        assertThat(result.getChild("intermediary").getChild("leaf").getAccess(),
+                is(equalTo("")));
         assertThat(result.getChild("intermediary").getChild("leaf").getTypes().toString(),
                 is(equalTo("[/type/1]")));
         assertThat(getSize(result.getChild("intermediary").getChild("leaf").getAllChildren()),
@@ -556,6 +568,119 @@ public class NodeTreeTest {
         // nothing, expect exception
     }
 
+    /**
+     * Test method for {@link NodeTree#get(String, VslAddressParameters, VslIdentity)}. Tests that
+     * the elements of a list are read from the list table, also if the scope omits the types.
+     *
+     * @throws NodeNotExistingException
+     *             shouldn't happen.
+     * @throws NoPermissionException
+     *             shouldn't happen.
+     * @throws InvalidValueException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testGetListElements()
+            throws NoPermissionException, NodeNotExistingException, InvalidValueException {
+        // arrange
+        final String address = "/" + localID + "/list";
+        final VslAddressParameters params = new AddressParameters().withDepth(-1);
+        final TreeMap<String, InternalNode> queryResult = new TreeMap<String, InternalNode>();
+        queryResult.put(address, new InternalNode(null, "", access, access, -1, null, "", ""));
+        queryResult.put(address + "/elements",
+                new InternalNode(null, "", access, access, -1, null, "", ""));
+        when(mockedDB.getNodeRecord(address, params)).thenReturn(queryResult);
+        final LinkedHashMap<String, Long> elements = new LinkedHashMap<String, Long>();
+        elements.put("a", 1L);
+        elements.put("b", 2L);
+        when(mockedDB.getListElements(address)).thenReturn(elements);
+
+        // act
+        final VslNode result = nt.get(address, params, id);
+
+        // assert
+        assertThat(result.getChild("elements").getValue(), is(equalTo("a;b")));
+    }
+
+    /**
+     * Test method for {@link NodeTree#getHistory(String, VslAddressParameters, VslIdentity)}.
+     * Tests that the values of intermediary nodes without read access are left out, while the
+     * values of readable nodes below them are returned.
+     *
+     * @throws NodeNotExistingException
+     *             shouldn't happen.
+     * @throws NoPermissionException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testGetHistoryNoPermissionOnIntermediary()
+            throws NoPermissionException, NodeNotExistingException {
+        // arrange
+        final String address = "/" + localID + "/Hallo/Welt";
+        final String intermediaryAddress = address + "/intermediary";
+        final String leafAddress = intermediaryAddress + "/leaf";
+        final VslAddressParameters params =
+                new AddressParameters().withDepth(-1).withTimeRange(0L, 10L);
+        final LinkedList<String> types = new LinkedList<String>();
+        types.add("/type/1");
+        final LinkedList<String> invalidAccess = new LinkedList<String>();
+        invalidAccess.add("ID2");
+        final TreeMap<String, InternalNode> records = new TreeMap<String, InternalNode>();
+        records.put(address,
+                new InternalNode(types, "TestResult", access, access, 0, null, "", ""));
+        records.put(intermediaryAddress, new InternalNode(types, "intermediaryValue",
+                invalidAccess, invalidAccess, 0, null, "", ""));
+        records.put(leafAddress,
+                new InternalNode(types, "leafValue", access, access, 0, null, "", ""));
+        when(mockedDB.getNodeRecord(eq(address), any(VslAddressParameters.class)))
+                .thenReturn(records);
+        final TreeMap<String, List<InternalNode>> history =
+                new TreeMap<String, List<InternalNode>>();
+        history.put(intermediaryAddress, Collections.singletonList(new InternalNode(types,
+                "oldIntermediaryValue", invalidAccess, invalidAccess, 0, new Date(5L), "", "")));
+        history.put(leafAddress, Collections.singletonList(new InternalNode(types, "oldLeafValue",
+                access, access, 0, new Date(5L), "", "")));
+        when(mockedDB.getNodeHistory(address, params)).thenReturn(history);
+
+        // act
+        final Map<String, List<VslNode>> result = nt.getHistory(address, params, id);
+
+        // assert
+        assertThat(result.size(), is(equalTo(1)));
+        assertThat(result.get(leafAddress).get(0).getValue(), is(equalTo("oldLeafValue")));
+    }
+
+    /**
+     * Test method for {@link NodeTree#getHistory(String, VslAddressParameters, VslIdentity)}.
+     * Tests that a subtree without any accessible node is rejected even if it has no values in the
+     * requested time range.
+     *
+     * @throws NodeNotExistingException
+     *             shouldn't happen.
+     * @throws NoPermissionException
+     *             under test.
+     */
+    @Test
+    public final void testGetHistoryNoPermission()
+            throws NoPermissionException, NodeNotExistingException {
+        // arrange
+        final String address = "/" + localID + "/Hallo/Welt";
+        final VslAddressParameters params = new AddressParameters().withTimeRange(0L, 10L);
+        final LinkedList<String> invalidAccess = new LinkedList<String>();
+        invalidAccess.add("ID2");
+        final TreeMap<String, InternalNode> records = new TreeMap<String, InternalNode>();
+        records.put(address, new InternalNode(new LinkedList<String>(), "TestResult",
+                invalidAccess, invalidAccess, 0, null, "", ""));
+        when(mockedDB.getNodeRecord(eq(address), any(VslAddressParameters.class)))
+                .thenReturn(records);
+        when(mockedDB.getNodeHistory(address, params))
+                .thenReturn(new TreeMap<String, List<InternalNode>>());
+        // set expected Exception.
+        expectedException.expect(NoPermissionException.class);
+        // act
+        nt.getHistory(address, params, id);
+    }
+
     /**
      * Test method for {@link NodeTree#removeNode(java.lang.String)}.
      *
@@ -786,9 +911,11 @@ public class NodeTreeTest {
         nt.setValue(address, id, node);
 
         // assert/verify
-        verify(id, times(2)).getAccessIDs();
+        final Map<String, String> expected = new HashMap<String, String>();
+        expected.put(address, "TestValue");
+        expected.put(childaddress, "TestValue2");
         verify(mockedDB).getNodeMetaData(address, true);
-        verify(mockedDB, times(1)).setValueTree(Matchers.<Map<String, String>>any());
+        verify(mockedDB, times(1)).setValueTree(expected);
     }
 
     /**
@@ -897,8 +1024,7 @@ public class NodeTreeTest {
         nt.setValue(address, id, node);
 
         // assert/verify
-        verify(id).getAccessIDs();
         verify(mockedDB).getNodeMetaData(address, true);
-        verify(mockedDB).setValueTree(Matchers.<Map<String, String>>any());
+        verify(mockedDB).setValueTree(Collections.singletonMap(address, "TestValue"));
     }
 }
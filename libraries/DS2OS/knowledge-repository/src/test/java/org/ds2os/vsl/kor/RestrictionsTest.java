@@ -3,6 +3,7 @@ package org.ds2os.vsl.kor;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import org.junit.Test;
@@ -105,4 +106,25 @@ public class RestrictionsTest {
         assertThat(Restrictions.getMinListEntries(""), is(equalTo(0)));
     }
 
+    /**
+     * Test the {@link Restrictions#getValidator(String)} function.
+     */
+    @Test
+    public final void testGetValidator() {
+        final String restriction = "minimumValue='3',regularExpression='[0-9]'";
+        final RestrictionValidator validator = Restrictions.getValidator(restriction);
+        assertThat(Restrictions.getValidator(new String(restriction)),
+                is(sameInstance(validator)));
+        assertThat(Restrictions.getValidator(""), is(sameInstance(RestrictionValidator.EMPTY)));
+        assertThat(Restrictions.getValidator(null), is(sameInstance(RestrictionValidator.EMPTY)));
+
+        assertThat(validator.getRestrictions(), is(equalTo(restriction)));
+        assertThat(validator.isValid("5"), is(equalTo(true)));
+        assertThat(validator.isValid("2"), is(equalTo(false)));
+        assertThat(validator.isValid("15"), is(equalTo(false)));
+        assertThat(validator.isValid(null), is(equalTo(false)));
+        assertThat(Restrictions.getValidator("regularExpression='('").isValid("("),
+                is(equalTo(false)));
+    }
+
 }
@@ -0,0 +1,96 @@
+package org.ds2os.vsl.kor.dataStructures;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testclass for {@link StructureHashTree}.
+ */
+public class StructureHashTreeTest {
+
+    /**
+     * Unit under test.
+     */
+    private StructureHashTree tree;
+
+    /**
+     * No excluded subtrees.
+     */
+    private final List<String> none = Collections.<String>emptyList();
+
+    /**
+     * Setup function.
+     */
+    @Before
+    public final void setUp() {
+        tree = new StructureHashTree();
+        tree.addNode("/ka", "/type");
+        tree.addNode("/ka/a", "/type");
+        tree.addNode("/ka/a/b", "/type");
+        tree.addNode("/ka/system", "/system");
+    }
+
+    /**
+     * Test method for {@link StructureHashTree#getHash(String, List)}.
+     */
+    @Test
+    public final void testGetHash() {
+        final long expected = StructureHashTree.hashOfNode("/ka", "/type")
+                + StructureHashTree.hashOfNode("/ka/a", "/type")
+                + StructureHashTree.hashOfNode("/ka/a/b", "/type");
+        assertThat(tree.getHash("/ka", Arrays.asList("system")),
+                is(equalTo(StructureHashTree.hashToString(expected))));
+        assertThat(tree.getHash("/ka/a/b", none), is(equalTo(
+                StructureHashTree.hashToString(StructureHashTree.hashOfNode("/ka/a/b", "/type")))));
+        assertThat(tree.getHash("/other", none), is(equalTo(StructureHashTree.EMPTY_HASH)));
+    }
+
+    /**
+     * Test that the hash only depends on the structure, not on the order of the modifications.
+     */
+    @Test
+    public final void testOrderIndependent() {
+        final StructureHashTree other = new StructureHashTree();
+        other.addNode("/ka/system", "/system");
+        other.addNode("/ka/a/b", "/type");
+        other.addNode("/ka/a", "/type");
+        other.addNode("/ka/c", "/type");
+        other.addNode("/ka", "/type");
+        assertThat(other.getHash("/ka", none), is(not(equalTo(tree.getHash("/ka", none)))));
+        // only the changed branch differs.
+        assertThat(other.getHash("/ka/a", none), is(equalTo(tree.getHash("/ka/a", none))));
+
+        other.removeNode("/ka/c");
+        assertThat(other.getHash("/", none), is(equalTo(tree.getHash("/", none))));
+    }
+
+    /**
+     * Test method for {@link StructureHashTree#addNode(String, String)} with changed types and
+     * {@link StructureHashTree#removeNode(String)}.
+     */
+    @Test
+    public final void testModify() {
+        final String before = tree.getHash("/ka", none);
+        tree.addNode("/ka/a", "/otherType");
+        assertThat(tree.getHash("/ka", none), is(not(equalTo(before))));
+        tree.addNode("/ka/a", "/type");
+        assertThat(tree.getHash("/ka", none), is(equalTo(before)));
+
+        tree.removeNode("/ka/a");
+        assertThat(tree.getHash("/ka/a/b", none), is(equalTo(StructureHashTree.EMPTY_HASH)));
+        assertThat(tree.getHash("/ka", Arrays.asList("system")), is(equalTo(
+                StructureHashTree.hashToString(StructureHashTree.hashOfNode("/ka", "/type")))));
+
+        tree.removeNode("/ka");
+        assertThat(tree.getHash("/", none), is(equalTo(StructureHashTree.EMPTY_HASH)));
+    }
+}
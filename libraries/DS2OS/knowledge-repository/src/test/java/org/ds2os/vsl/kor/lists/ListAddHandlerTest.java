@@ -1,11 +1,14 @@
 package org.ds2os.vsl.kor.lists;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -48,6 +51,11 @@ public class ListAddHandlerTest {
      */
     private VslKnowledgeRepository korMock;
 
+    /**
+     * The database mock storing the list elements.
+     */
+    private VslNodeDatabase dbMock;
+
     /**
      * address of the service node we use for tests.
      */
@@ -64,6 +72,7 @@ public class ListAddHandlerTest {
     @Before
     public final void setUp() {
         korMock = mock(VslKnowledgeRepository.class);
+        dbMock = mock(VslNodeDatabase.class);
         accessIDs = new LinkedList<String>();
         accessIDs.add("ID1");
         accessIDs.add("ID2");
@@ -78,21 +87,22 @@ public class ListAddHandlerTest {
      */
     @Test
     public final void testGet() throws VslException {
-        final ListAddHandler lAdd = new ListAddHandler(service + "/listNode", korMock, "creator",
+        final ListAddHandler lAdd = new ListAddHandler(service + "/listNode", korMock,
+                new ListElements(service + "/listNode", dbMock), "creator",
                 "minimumEntries='1',maximumEntries='5'"
                         + ",allowedTypes='/basic/number,/derived/boolean,/basic/text'",
                 accessIDs, nodeFactory);
 
-        when(korMock.get(eq(service + "/listNode/elements"), any(VslIdentity.class)))
-                .thenReturn(nodeFactory.createImmutableLeaf(
-                        "element1" + VslNodeDatabase.LIST_SEPARATOR + "element2"));
+        when(dbMock.getListElements(service + "/listNode"))
+                .thenReturn(storedElements("element1", "element2"));
 
         lAdd.get(service + "/listNode/add/5/basic/text", new AddressParameters(),
                 new ServiceIdentity("", accessIDs));
 
-        verify(korMock).get(eq(service + "/listNode/elements"), any(VslIdentity.class));
-        verify(korMock).set(eq(service + "/listNode/elements"), any(VslNode.class),
-                any(VslIdentity.class));
+        verify(dbMock).putListElements(eq(service + "/listNode"), anyMapOf(String.class,
+                Long.class));
+        verify(dbMock, never()).setValueTree(anyMapOf(String.class, String.class));
+        verify(korMock).notify(eq(service + "/listNode/elements"), any(VslIdentity.class));
         verify(korMock).addSubtreeFromModelID(eq(service + "/listNode"), eq("/basic/text"),
                 eq("creator"), any(String.class));
     }
@@ -105,14 +115,14 @@ public class ListAddHandlerTest {
      */
     @Test
     public final void testGetInvalidListType() throws VslException {
-        final ListAddHandler lAdd = new ListAddHandler(service + "/listNode", korMock, "creator",
+        final ListAddHandler lAdd = new ListAddHandler(service + "/listNode", korMock,
+                new ListElements(service + "/listNode", dbMock), "creator",
                 "minimumEntries='1',maximumEntries='6'"
                         + ",allowedTypes='/basic/number,/derived/boolean'",
                 accessIDs, nodeFactory);
 
-        when(korMock.get(eq(service + "/listNode/elements"), any(VslIdentity.class)))
-                .thenReturn(nodeFactory.createImmutableLeaf(
-                        "element1" + VslNodeDatabase.LIST_SEPARATOR + "element2"));
+        when(dbMock.getListElements(service + "/listNode"))
+                .thenReturn(storedElements("element1", "element2"));
         expectedException.expectMessage("Only models of the following");
 
         expectedException.expect(ListOperationInvalidException.class);
@@ -128,14 +138,14 @@ public class ListAddHandlerTest {
      */
     @Test
     public final void testGetListToBig() throws VslException {
-        final ListAddHandler lAdd = new ListAddHandler(service + "/listNode", korMock, "creator",
+        final ListAddHandler lAdd = new ListAddHandler(service + "/listNode", korMock,
+                new ListElements(service + "/listNode", dbMock), "creator",
                 "minimumEntries='1',maximumEntries='2'"
                         + ",allowedTypes='/basic/number,/derived/boolean'",
                 accessIDs, nodeFactory);
 
-        when(korMock.get(eq(service + "/listNode/elements"), any(VslIdentity.class)))
-                .thenReturn(nodeFactory.createImmutableLeaf(
-                        "element1" + VslNodeDatabase.LIST_SEPARATOR + "element2"));
+        when(dbMock.getListElements(service + "/listNode"))
+                .thenReturn(storedElements("element1", "element2"));
         expectedException.expectMessage("The list already has its maximum");
 
         expectedException.expect(ListOperationInvalidException.class);
@@ -153,14 +163,14 @@ public class ListAddHandlerTest {
     public final void testGetNoWriteAccess() throws VslException {
         final List<String> fakeID = new LinkedList<String>();
         fakeID.add("ID3");
-        final ListAddHandler lAdd = new ListAddHandler(service + "/listNode", korMock, "creator",
+        final ListAddHandler lAdd = new ListAddHandler(service + "/listNode", korMock,
+                new ListElements(service + "/listNode", dbMock), "creator",
                 "minimumEntries='1',maximumEntries='5'"
                         + ",allowedTypes='/basic/text,/derived/boolean'",
                 accessIDs, nodeFactory);
 
-        when(korMock.get(eq(service + "/listNode/elements"), any(VslIdentity.class)))
-                .thenReturn(nodeFactory.createImmutableLeaf(
-                        "element1" + VslNodeDatabase.LIST_SEPARATOR + "element2"));
+        when(dbMock.getListElements(service + "/listNode"))
+                .thenReturn(storedElements("element1", "element2"));
 
         expectedException.expectMessage("necessary rights to add a node");
         expectedException.expect(ListOperationInvalidException.class);
@@ -177,14 +187,14 @@ public class ListAddHandlerTest {
      */
     @Test
     public final void testGetInvalidNodeName() throws VslException {
-        final ListAddHandler lAdd = new ListAddHandler(service + "/listNode", korMock, "creator",
+        final ListAddHandler lAdd = new ListAddHandler(service + "/listNode", korMock,
+                new ListElements(service + "/listNode", dbMock), "creator",
                 "minimumEntries='1',maximumEntries='5'"
                         + ",allowedTypes='/basic/text,/derived/boolean'",
                 accessIDs, nodeFactory);
 
-        when(korMock.get(eq(service + "/listNode/elements"), any(VslIdentity.class)))
-                .thenReturn(nodeFactory.createImmutableLeaf(
-                        "element1" + VslNodeDatabase.LIST_SEPARATOR + "element2"));
+        when(dbMock.getListElements(service + "/listNode"))
+                .thenReturn(storedElements("element1", "element2"));
 
         expectedException.expectMessage("Invalid custom nodename for new list element");
         expectedException.expect(ListOperationInvalidException.class);
@@ -201,10 +211,26 @@ public class ListAddHandlerTest {
      */
     @Test
     public final void testSet() throws VslException {
-        final ListAddHandler lAdd = new ListAddHandler(service + "/listNode", korMock, "creator",
+        final ListAddHandler lAdd = new ListAddHandler(service + "/listNode", korMock,
+                new ListElements(service + "/listNode", dbMock), "creator",
                 "", accessIDs, nodeFactory);
         expectedException.expect(InvalidOperationException.class);
         lAdd.set(service + "/listNode", nodeFactory.createImmutableLeaf(""),
                 new ServiceIdentity("", accessIDs));
     }
+
+    /**
+     * Creates the elements of a list as the database returns them.
+     *
+     * @param names
+     *            The names of the elements, in list order.
+     * @return The elements mapped to their sort keys.
+     */
+    private LinkedHashMap<String, Long> storedElements(final String... names) {
+        final LinkedHashMap<String, Long> result = new LinkedHashMap<String, Long>();
+        for (final String name : names) {
+            result.put(name, (long) result.size() << 20);
+        }
+        return result;
+    }
 }
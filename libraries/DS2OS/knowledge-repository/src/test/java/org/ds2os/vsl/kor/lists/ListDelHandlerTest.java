@@ -1,11 +1,14 @@
 package org.ds2os.vsl.kor.lists;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -48,6 +51,11 @@ public class ListDelHandlerTest {
      */
     private VslKnowledgeRepository korMock;
 
+    /**
+     * The database mock storing the list elements.
+     */
+    private VslNodeDatabase dbMock;
+
     /**
      * address of the service node we use for tests.
      */
@@ -64,6 +72,7 @@ public class ListDelHandlerTest {
     @Before
     public final void setUp() {
         korMock = mock(VslKnowledgeRepository.class);
+        dbMock = mock(VslNodeDatabase.class);
         accessIDs = new LinkedList<String>();
         accessIDs.add("ID1");
         accessIDs.add("creator");
@@ -78,21 +87,21 @@ public class ListDelHandlerTest {
      */
     @Test
     public final void testGet() throws VslException {
-        final ListDelHandler lAdd = new ListDelHandler(service + "/listNode", korMock, "creator",
+        final ListDelHandler lAdd = new ListDelHandler(service + "/listNode", korMock,
+                new ListElements(service + "/listNode", dbMock), "creator",
                 "minimumEntries='1',maximumEntries='5'"
                         + ",allowedTypes='/basic/number,/derived/boolean,/basic/text'",
                 nodeFactory);
 
-        when(korMock.get(eq(service + "/listNode/elements"), any(VslIdentity.class)))
-                .thenReturn(nodeFactory.createImmutableLeaf(
-                        "element1" + VslNodeDatabase.LIST_SEPARATOR + "element2"));
+        when(dbMock.getListElements(service + "/listNode"))
+                .thenReturn(storedElements("element1", "element2"));
 
         lAdd.get(service + "/listNode/del/element1", new AddressParameters(),
                 new ServiceIdentity("", accessIDs));
 
-        verify(korMock).get(eq(service + "/listNode/elements"), any(VslIdentity.class));
-        verify(korMock).set(eq(service + "/listNode/elements"), any(VslNode.class),
-                any(VslIdentity.class));
+        verify(dbMock).removeListElement(service + "/listNode", "element1");
+        verify(dbMock, never()).setValueTree(anyMapOf(String.class, String.class));
+        verify(korMock).notify(eq(service + "/listNode/elements"), any(VslIdentity.class));
         verify(korMock).removeNode(service + "/listNode/element1");
     }
 
@@ -105,14 +114,14 @@ public class ListDelHandlerTest {
     @Test
     public final void testGetListToSmall() throws VslException {
 
-        final ListDelHandler lAdd = new ListDelHandler(service + "/listNode", korMock, "creator",
+        final ListDelHandler lAdd = new ListDelHandler(service + "/listNode", korMock,
+                new ListElements(service + "/listNode", dbMock), "creator",
                 "minimumEntries='2',maximumEntries='6'"
                         + ",allowedTypes='/basic/number,/derived/boolean'",
                 nodeFactory);
 
-        when(korMock.get(eq(service + "/listNode/elements"), any(VslIdentity.class)))
-                .thenReturn(nodeFactory.createImmutableLeaf(
-                        "element1" + VslNodeDatabase.LIST_SEPARATOR + "element2"));
+        when(dbMock.getListElements(service + "/listNode"))
+                .thenReturn(storedElements("element1", "element2"));
         expectedException.expectMessage("already has its minimum amount of entries");
 
         expectedException.expect(ListOperationInvalidException.class);
@@ -129,14 +138,14 @@ public class ListDelHandlerTest {
     @Test
     public final void testGetNodeNotExisting() throws VslException {
 
-        final ListDelHandler lAdd = new ListDelHandler(service + "/listNode", korMock, "creator",
+        final ListDelHandler lAdd = new ListDelHandler(service + "/listNode", korMock,
+                new ListElements(service + "/listNode", dbMock), "creator",
                 "minimumEntries='1',maximumEntries='6'"
                         + ",allowedTypes='/basic/number,/derived/boolean'",
                 nodeFactory);
 
-        when(korMock.get(eq(service + "/listNode/elements"), any(VslIdentity.class)))
-                .thenReturn(nodeFactory.createImmutableLeaf(
-                        "element1" + VslNodeDatabase.LIST_SEPARATOR + "element2"));
+        when(dbMock.getListElements(service + "/listNode"))
+                .thenReturn(storedElements("element1", "element2"));
         expectedException
                 .expectMessage("doesn't contain an direct child  with relative address element3.");
 
@@ -155,14 +164,14 @@ public class ListDelHandlerTest {
     public final void testGetNoWriteAccess() throws VslException {
         final List<String> fakeID = new LinkedList<String>();
         fakeID.add("ID3");
-        final ListDelHandler lAdd = new ListDelHandler(service + "/listNode", korMock, "creator",
+        final ListDelHandler lAdd = new ListDelHandler(service + "/listNode", korMock,
+                new ListElements(service + "/listNode", dbMock), "creator",
                 "minimumEntries='1',maximumEntries='6'"
                         + ",allowedTypes='/basic/number,/derived/boolean'",
                 nodeFactory);
 
-        when(korMock.get(eq(service + "/listNode/elements"), any(VslIdentity.class)))
-                .thenReturn(nodeFactory.createImmutableLeaf(
-                        "element1" + VslNodeDatabase.LIST_SEPARATOR + "element2"));
+        when(dbMock.getListElements(service + "/listNode"))
+                .thenReturn(storedElements("element1", "element2"));
         expectedException.expectMessage("have the necessary rights to remove the node element1");
 
         expectedException.expect(ListOperationInvalidException.class);
@@ -178,10 +187,26 @@ public class ListDelHandlerTest {
      */
     @Test
     public final void testSet() throws VslException {
-        final ListDelHandler del = new ListDelHandler(service + "/listNode", korMock, "creator", "",
+        final ListDelHandler del = new ListDelHandler(service + "/listNode", korMock,
+                new ListElements(service + "/listNode", dbMock), "creator", "",
                 nodeFactory);
         expectedException.expect(InvalidOperationException.class);
         del.set(service + "/listNode/del", nodeFactory.createImmutableLeaf(""),
                 new ServiceIdentity("", accessIDs));
     }
+
+    /**
+     * Creates the elements of a list as the database returns them.
+     *
+     * @param names
+     *            The names of the elements, in list order.
+     * @return The elements mapped to their sort keys.
+     */
+    private LinkedHashMap<String, Long> storedElements(final String... names) {
+        final LinkedHashMap<String, Long> result = new LinkedHashMap<String, Long>();
+        for (final String name : names) {
+            result.put(name, (long) result.size() << 20);
+        }
+        return result;
+    }
 }
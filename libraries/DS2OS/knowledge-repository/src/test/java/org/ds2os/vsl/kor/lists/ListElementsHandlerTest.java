@@ -0,0 +1,131 @@
+package org.ds2os.vsl.kor.lists;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.LinkedHashMap;
+
+import org.ds2os.vsl.core.VslIdentity;
+import org.ds2os.vsl.core.impl.ServiceIdentity;
+import org.ds2os.vsl.core.node.VslNode;
+import org.ds2os.vsl.core.node.VslNodeFactory;
+import org.ds2os.vsl.core.node.VslNodeFactoryImpl;
+import org.ds2os.vsl.core.utils.AddressParameters;
+import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.ds2os.vsl.exception.ListOperationInvalidException;
+import org.ds2os.vsl.exception.NodeNotExistingException;
+import org.ds2os.vsl.exception.VslException;
+import org.ds2os.vsl.kor.VslKnowledgeRepository;
+import org.ds2os.vsl.kor.VslNodeDatabase;
+import org.ds2os.vsl.kor.VslNodeTree;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Testclass for {@link ListElementsHandler}.
+ */
+public class ListElementsHandlerTest {
+
+    /**
+     * Rule for Exception testing. By default no Exception is expected.
+     */
+    @Rule
+    public ExpectedException expectedException = ExpectedException.none();
+
+    /**
+     * address of the list node we use for tests.
+     */
+    private final String list = "/KA/service/listNode";
+
+    /**
+     * The {@link VslNodeFactory} for creating VslNodes.
+     */
+    private final VslNodeFactory nodeFactory = new VslNodeFactoryImpl();
+
+    /**
+     * Unit under test.
+     */
+    private ListElementsHandler handler;
+
+    /**
+     * The node tree mock serving the stored elements node.
+     */
+    private VslNodeTree treeMock;
+
+    /**
+     * Setup the mocks for the test.
+     */
+    @Before
+    public final void setUp() {
+        final VslNodeDatabase dbMock = mock(VslNodeDatabase.class);
+        final LinkedHashMap<String, Long> stored = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < 5; i++) {
+            stored.put("element" + i, (long) i);
+        }
+        when(dbMock.getListElements(list)).thenReturn(stored);
+        final VslKnowledgeRepository korMock = mock(VslKnowledgeRepository.class);
+        treeMock = mock(VslNodeTree.class);
+        when(korMock.getVslNodeTree()).thenReturn(treeMock);
+        handler = new ListElementsHandler(list, korMock, new ListElements(list, dbMock),
+                nodeFactory);
+    }
+
+    /**
+     * Test method for {@link ListElementsHandler#get(String, VslAddressParameters, VslIdentity)}.
+     *
+     * @throws VslException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testGet() throws VslException {
+        final ServiceIdentity id = new ServiceIdentity("id", "id");
+        final AddressParameters params = new AddressParameters();
+        // the stored value isn't rewritten on changes, the elements are built on read.
+        when(treeMock.get(eq(list + "/elements"), eq(params), any(VslIdentity.class)))
+                .thenReturn(nodeFactory.createImmutableLeaf(null, "", null, 3, "", null));
+        final VslNode elements = handler.get(list + "/elements", params, id);
+        assertThat(elements.getValue(),
+                is(equalTo("element0;element1;element2;element3;element4")));
+        assertThat(elements.getVersion(), is(equalTo(3L)));
+        assertThat(handler.get(list + "/elements/1/2", new AddressParameters(), id).getValue(),
+                is(equalTo("element1;element2")));
+        assertThat(handler.get(list + "/elements/3", new AddressParameters(), id).getValue(),
+                is(equalTo("element3;element4")));
+        assertThat(handler.get(list + "/elements/7/2", new AddressParameters(), id).getValue(),
+                is(equalTo("")));
+    }
+
+    /**
+     * Test method for {@link ListElementsHandler#get(String, VslAddressParameters, VslIdentity)}
+     * with an invalid range.
+     *
+     * @throws VslException
+     *             tested
+     */
+    @Test
+    public final void testGetInvalidRange() throws VslException {
+        expectedException.expect(NodeNotExistingException.class);
+        handler.get(list + "/elements/a/2", new AddressParameters(),
+                new ServiceIdentity("id", "id"));
+    }
+
+    /**
+     * Test method for {@link ListElementsHandler#set(String, VslNode, VslIdentity)}.
+     *
+     * @throws VslException
+     *             tested
+     */
+    @Test
+    public final void testSet() throws VslException {
+        expectedException.expect(ListOperationInvalidException.class);
+        handler.set(list + "/elements", nodeFactory.createImmutableLeaf("a;b"),
+                new ServiceIdentity("id", "id"));
+    }
+}
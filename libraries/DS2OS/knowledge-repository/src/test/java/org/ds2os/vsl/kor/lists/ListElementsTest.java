@@ -0,0 +1,169 @@
+package org.ds2os.vsl.kor.lists;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.ds2os.vsl.exception.NodeNotExistingException;
+import org.ds2os.vsl.kor.VslNodeDatabase;
+import org.ds2os.vsl.kor.dataStructures.InternalNode;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Testclass for {@link ListElements}.
+ */
+public class ListElementsTest {
+
+    /**
+     * Address of the list used for tests.
+     */
+    private final String list = "/KA/service/listNode";
+
+    /**
+     * The database mock storing the list elements.
+     */
+    private VslNodeDatabase dbMock;
+
+    /**
+     * Setup the mocks for the test.
+     */
+    @Before
+    public final void setUp() {
+        dbMock = mock(VslNodeDatabase.class);
+        when(dbMock.getListElements(list)).thenReturn(new LinkedHashMap<String, Long>());
+    }
+
+    /**
+     * Test method for {@link ListElements#add(int, String)} and {@link ListElements#get(int)}.
+     */
+    @Test
+    public final void testAdd() {
+        final ListElements elements = new ListElements(list, dbMock);
+        elements.add(0, "b");
+        elements.add(0, "a");
+        elements.add(5, "d");
+        elements.add(2, "c");
+
+        assertThat(elements.size(), is(equalTo(4)));
+        assertThat(elements.getAll(), is(equalTo(Arrays.asList("a", "b", "c", "d"))));
+        assertThat(elements.get(2), is(equalTo("c")));
+        assertThat(elements.indexOf("d"), is(equalTo(3)));
+        assertThat(elements.indexOf("e"), is(equalTo(-1)));
+        assertThat(elements.toString(), is(equalTo("a;b;c;d")));
+    }
+
+    /**
+     * Test method for {@link ListElements#add(int, String)} when many elements are inserted at the
+     * same position and the sort keys have to be reassigned.
+     */
+    @Test
+    public final void testAddSamePosition() {
+        final ListElements elements = new ListElements(list, dbMock);
+        final List<String> expected = new ArrayList<String>();
+        elements.add(0, "first");
+        elements.add(1, "last");
+        for (int i = 0; i < 100; i++) {
+            elements.add(1, "e" + i);
+            expected.add(0, "e" + i);
+        }
+        expected.add(0, "first");
+        expected.add("last");
+        assertThat(elements.getAll(), is(equalTo(expected)));
+    }
+
+    /**
+     * Test method for {@link ListElements#remove(String)}.
+     */
+    @Test
+    public final void testRemove() {
+        final LinkedHashMap<String, Long> stored = new LinkedHashMap<String, Long>();
+        stored.put("a", 1L);
+        stored.put("b", 2L);
+        stored.put("c", 3L);
+        when(dbMock.getListElements(list)).thenReturn(stored);
+        final ListElements elements = new ListElements(list, dbMock);
+
+        assertThat(elements.remove("b"), is(equalTo(true)));
+        assertThat(elements.remove("b"), is(equalTo(false)));
+        assertThat(elements.getAll(), is(equalTo(Arrays.asList("a", "c"))));
+        assertThat(elements.contains("b"), is(equalTo(false)));
+        verify(dbMock).removeListElement(list, "b");
+    }
+
+    /**
+     * Test method for {@link ListElements#getRange(int, int)}.
+     */
+    @Test
+    public final void testGetRange() {
+        final ListElements elements = new ListElements(list, dbMock);
+        for (int i = 0; i < 10; i++) {
+            elements.add(i, "e" + i);
+        }
+        assertThat(elements.getRange(3, 2), is(equalTo(Arrays.asList("e3", "e4"))));
+        assertThat(elements.getRange(8, 5), is(equalTo(Arrays.asList("e8", "e9"))));
+        assertThat(elements.getRange(10, 5).isEmpty(), is(equalTo(true)));
+    }
+
+    /**
+     * Test that elements stored as value of the elements node are imported.
+     *
+     * @throws NodeNotExistingException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testImportElementsValue() throws NodeNotExistingException {
+        final TreeMap<String, InternalNode> record = new TreeMap<String, InternalNode>();
+        record.put(list + "/elements", new InternalNode(null, "a;b", null, null, 1, null, "", ""));
+        when(dbMock.getNodeRecord(eq(list + "/elements"), any(VslAddressParameters.class)))
+                .thenReturn(record);
+        final ListElements elements = new ListElements(list, dbMock);
+
+        assertThat(elements.getAll(), is(equalTo(Arrays.asList("a", "b"))));
+        verify(dbMock).putListElements(eq(list), anyMapOf(String.class, Long.class));
+        // the value isn't kept up to date, so it must not show removed elements later.
+        verify(dbMock).setValueTree(Collections.singletonMap(list + "/elements", ""));
+    }
+
+    /**
+     * Test that the elements stay unchanged if the database can't store a change.
+     */
+    @Test
+    public final void testDatabaseFailure() {
+        final ListElements elements = new ListElements(list, dbMock);
+        elements.add(0, "a");
+        doThrow(new RuntimeException("failed")).when(dbMock).putListElements(eq(list),
+                anyMapOf(String.class, Long.class));
+        doThrow(new RuntimeException("failed")).when(dbMock).removeListElement(list, "a");
+
+        try {
+            elements.add(1, "b");
+            fail("The failed add wasn't reported");
+        } catch (final RuntimeException e) {
+            assertThat(e.getMessage(), is(equalTo("failed")));
+        }
+        try {
+            elements.remove("a");
+            fail("The failed remove wasn't reported");
+        } catch (final RuntimeException e) {
+            assertThat(e.getMessage(), is(equalTo("failed")));
+        }
+        assertThat(elements.getAll(), is(equalTo(Arrays.asList("a"))));
+    }
+}
@@ -3,8 +3,10 @@ package org.ds2os.vsl.kor.lists;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -43,6 +45,11 @@ public class ListRootHandlerTest {
      * The KOR mock used for testing.
      */
     private VslKnowledgeRepository korMock;
+
+    /**
+     * The database mock storing the list elements.
+     */
+    private VslNodeDatabase dbMock;
     /**
      * address of the service node we use for tests.
      */
@@ -59,6 +66,7 @@ public class ListRootHandlerTest {
     @Before
     public final void setUp() {
         korMock = mock(VslKnowledgeRepository.class);
+        dbMock = mock(VslNodeDatabase.class);
         accessIDs = new LinkedList<String>();
         accessIDs.add("ID1");
         accessIDs.add("ID2");
@@ -73,13 +81,28 @@ public class ListRootHandlerTest {
     @Test
     public final void testGet() throws VslException {
         final ListRootHandler rHandler = new ListRootHandler(service + "/listNode", korMock,
-                nodeFactory);
+                new ListElements(service + "/listNode", dbMock), nodeFactory);
 
-        when(korMock.get(eq(service + "/listNode/elements"), any(VslIdentity.class)))
-                .thenReturn(nodeFactory.createImmutableLeaf(
-                        "element1" + VslNodeDatabase.LIST_SEPARATOR + "element2"));
+        when(dbMock.getListElements(service + "/listNode"))
+                .thenReturn(storedElements("element1", "element2"));
 
         rHandler.get(service + "/listNode/1", new AddressParameters(),
                 new ServiceIdentity("", accessIDs));
+        verify(korMock).get(eq(service + "/listNode/element2"), any(VslIdentity.class));
+    }
+
+    /**
+     * Creates the elements of a list as the database returns them.
+     *
+     * @param names
+     *            The names of the elements, in list order.
+     * @return The elements mapped to their sort keys.
+     */
+    private LinkedHashMap<String, Long> storedElements(final String... names) {
+        final LinkedHashMap<String, Long> result = new LinkedHashMap<String, Long>();
+        for (final String name : names) {
+            result.put(name, (long) result.size() << 20);
+        }
+        return result;
     }
 }
@@ -0,0 +1,185 @@
+package org.ds2os.vsl.kor.locking;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.ds2os.vsl.core.VslLockHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ */
+public class LockTableTest {
+
+    /**
+     * Unit under Test.
+     */
+    private LockTable table;
+
+    /**
+     * Lock for tests.
+     */
+    private LockedNode lock;
+
+    /**
+     * Setup function.
+     */
+    @Before
+    public final void setUp() {
+        table = new LockTable();
+        lock = new LockedNode("id1", mock(VslLockHandler.class), 60);
+    }
+
+    /**
+     * Puts a lock while holding its guard.
+     *
+     * @param address
+     *            The address to lock.
+     */
+    private void put(final String address) {
+        final LockTable.Guard guard = table.guard(address);
+        try {
+            table.put(address, lock);
+        } finally {
+            guard.release();
+        }
+    }
+
+    /**
+     * Test method for {@link LockTable#getResponsibleLockAddress(String)}.
+     */
+    @Test
+    public final void testGetResponsibleLockAddress() {
+        put("/ka/service/child1");
+        assertThat(table.getResponsibleLockAddress("/ka/service/child1/a/b"),
+                is(equalTo("/ka/service/child1")));
+        assertThat(table.getResponsibleLockAddress("/ka/service/child1"),
+                is(equalTo("/ka/service/child1")));
+        assertThat(table.getResponsibleLockAddress("/ka/service/child10"), is(nullValue()));
+        assertThat(table.getResponsibleLockAddress("/ka/service"), is(nullValue()));
+
+        put("/");
+        assertThat(table.getResponsibleLockAddress("/ka/service"), is(equalTo("/")));
+    }
+
+    /**
+     * Test method for {@link LockTable#isChildLocked(String)} and
+     * {@link LockTable#getLocksBelow(String)}.
+     */
+    @Test
+    public final void testLocksBelow() {
+        put("/ka/service/child1/a");
+        put("/ka/service/child2");
+        put("/kb/service");
+
+        assertThat(table.isChildLocked("/ka"), is(equalTo(true)));
+        assertThat(table.isChildLocked("/ka/service/child2"), is(equalTo(false)));
+        assertThat(table.isChildLocked("/kc"), is(equalTo(false)));
+
+        final Map<String, LockedNode> locks = table.getLocksBelow("/ka");
+        assertThat(locks.size(), is(equalTo(2)));
+        assertThat(locks.containsKey("/ka/service/child1/a"), is(equalTo(true)));
+        assertThat(locks.containsKey("/ka/service/child2"), is(equalTo(true)));
+
+        final LockTable.Guard guard = table.guard("/ka/service/child1/a");
+        try {
+            assertThat(table.remove("/ka/service/child1/a"), is(equalTo(lock)));
+            assertThat(table.remove("/ka/service/child1/a"), is(nullValue()));
+        } finally {
+            guard.release();
+        }
+        assertThat(table.isChildLocked("/ka/service/child1"), is(equalTo(false)));
+        assertThat(table.getLocksBelow("/ka").size(), is(equalTo(1)));
+    }
+
+    /**
+     * Test that removing locks prunes the trie nodes that were only needed for them.
+     */
+    @Test
+    public final void testPruning() {
+        for (int i = 0; i < 100; i++) {
+            put("/ka/service/child" + i + "/a");
+        }
+        put("/ka/service/child0");
+        assertThat(table.size(), is(equalTo(203)));
+
+        for (int i = 0; i < 100; i++) {
+            remove("/ka/service/child" + i + "/a");
+        }
+        // the stripe node /ka/service is kept, child0 is still locked.
+        assertThat(table.size(), is(equalTo(4)));
+        remove("/ka/service/child0");
+        assertThat(table.size(), is(equalTo(3)));
+
+        // shallow locks are removed while the whole table is guarded, so the stripe goes as well.
+        put("/kb");
+        remove("/kb");
+        assertThat(table.size(), is(equalTo(1)));
+    }
+
+    /**
+     * Removes a lock while holding its guard.
+     *
+     * @param address
+     *            The address to unlock.
+     */
+    private void remove(final String address) {
+        final LockTable.Guard guard = table.guard(address);
+        try {
+            table.remove(address);
+        } finally {
+            guard.release();
+        }
+    }
+
+    /**
+     * Test method for {@link LockTable#guard(String)} to make sure guards of independent subtrees
+     * don't block each other, while guards of a subtree and its parent do.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testGuard() throws Exception {
+        final LockTable.Guard guard = table.guard("/ka/service1/child");
+        try {
+            assertThat(tryGuard("/ka/service2/child"), is(equalTo(true)));
+            assertThat(tryGuard("/ka/service1"), is(equalTo(false)));
+            assertThat(tryGuard("/ka"), is(equalTo(false)));
+        } finally {
+            guard.release();
+        }
+        assertThat(tryGuard("/ka"), is(equalTo(true)));
+    }
+
+    /**
+     * Tries to acquire the guard of the given address in another thread.
+     *
+     * @param address
+     *            The address to guard.
+     * @return True if the guard was acquired within a short time.
+     * @throws InterruptedException
+     *             shouldn't happen.
+     */
+    private boolean tryGuard(final String address) throws InterruptedException {
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final LockTable.Guard guard = table.guard(address);
+                acquired.countDown();
+                guard.release();
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+        return acquired.await(200, TimeUnit.MILLISECONDS);
+    }
+}
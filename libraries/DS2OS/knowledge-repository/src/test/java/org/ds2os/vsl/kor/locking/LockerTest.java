@@ -3,13 +3,22 @@ package org.ds2os.vsl.kor.locking;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.ds2os.vsl.core.VslIdentity;
 import org.ds2os.vsl.core.VslLockHandler;
@@ -18,6 +27,7 @@ import org.ds2os.vsl.core.impl.ServiceIdentity;
 import org.ds2os.vsl.core.node.VslMutableNode;
 import org.ds2os.vsl.core.node.VslNodeFactory;
 import org.ds2os.vsl.core.node.VslNodeFactoryImpl;
+import org.ds2os.vsl.exception.AlreadyLockedException;
 import org.ds2os.vsl.exception.VslException;
 import org.ds2os.vsl.kor.VslNodeDatabase;
 import org.junit.Before;
@@ -311,4 +321,78 @@ public class LockerTest {
         verify(lockHandlerMock).lockExpired(address);
     }
 
+    /**
+     * Test method for {@link Locker#lockSubtree} to make sure own locks below or above the
+     * requested address are committed first, while locks of others block the request.
+     *
+     * @throws VslException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testLockSubtreeCommitsOwnLocks() throws VslException {
+        final String address = "/ka/service";
+        locker.lockSubtree(address + "/child1", id1, new LinkedList<String>(id1.getAccessIDs()),
+                lockHandlerMock);
+        locker.lockSubtree(address + "/child2", id1, new LinkedList<String>(id1.getAccessIDs()),
+                lockHandlerMock);
+
+        // parent lock of the same holder commits the child locks.
+        locker.lockSubtree("/ka", id1, new LinkedList<String>(id1.getAccessIDs()),
+                lockHandlerMock);
+        verify(dbMock, times(2)).setValueTree(Matchers.<Map<String, String>>any());
+        assertThat(locker.isChildLocked("/ka"), is(equalTo(false)));
+        assertThat(locker.isLockedBy(address + "/child3", "id1"), is(equalTo(true)));
+
+        // child lock of another holder is blocked by the parent lock.
+        try {
+            locker.lockSubtree(address, id2, Collections.singletonList("*"), lockHandlerMock);
+            fail("AlreadyLockedException expected");
+        } catch (final AlreadyLockedException e) {
+            // expected
+        }
+
+        // child lock of the same holder commits the parent lock.
+        locker.lockSubtree(address, id1, new LinkedList<String>(id1.getAccessIDs()),
+                lockHandlerMock);
+        verify(dbMock, times(3)).setValueTree(Matchers.<Map<String, String>>any());
+        assertThat(locker.isLocked("/ka"), is(equalTo(false)));
+        assertThat(locker.isChildLocked("/ka"), is(equalTo(true)));
+    }
+
+    /**
+     * Test method for {@link Locker} to make sure locks in independent subtrees can be acquired and
+     * committed concurrently.
+     *
+     * @throws Exception
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testConcurrentLocksInIndependentSubtrees() throws Exception {
+        final int threads = 8;
+        final int rounds = 200;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for (int i = 0; i < threads; i++) {
+            final String address = "/ka/service" + i + "/child";
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int round = 0; round < rounds; round++) {
+                        locker.lockSubtree(address, id1,
+                                new LinkedList<String>(id1.getAccessIDs()), lockHandlerMock);
+                        locker.addNodeValueForCommit(address, Integer.toString(round));
+                        locker.commitSubtree(address, id1);
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (final Future<Void> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        verify(dbMock, times(threads * rounds)).setValueTree(Matchers.<Map<String, String>>any());
+        assertThat(locker.isChildLocked("/ka"), is(equalTo(false)));
+    }
 }
@@ -78,6 +78,37 @@ public class StructureLoggerTest {
                 is(equalTo("[/1/2, /1/3, /1/32, /1/4]")));
     }
 
+    /**
+     * Test method for {@link StructureLogger#getChangeLogSincehash(String)} with addresses that
+     * were logged more than once.
+     */
+    @Test
+    public final void testGetChangeLogSincehashDuplicates() {
+        log.logChangedAddress("/1/2");
+        log.logChangedAddress("/1/2");
+        log.newLogpointHash("1111111111");
+        log.logChangedAddress("/1/2");
+        log.logChangedAddress("/1/3");
+        log.newLogpointHash("2222222222");
+
+        assertThat(log.getChangeLogSincehash(initHash).toString(), is(equalTo("[/1/2, /1/3]")));
+    }
+
+    /**
+     * Test method for {@link StructureLogger#getChangeLogSincehash(String)} for hashes that were
+     * dropped from the log.
+     */
+    @Test
+    public final void testGetChangeLogSincehashDroppedHash() {
+        for (int i = 0; i < StructureLogger.AMOUNT_OF_LOGPOINTS_TO_STORE; i++) {
+            log.logChangedAddress("/1/" + i);
+            log.newLogpointHash("hash" + i);
+        }
+        assertThat(log.getChangeLogSincehash(initHash).toString(), is(equalTo("[/localKA]")));
+        assertThat(log.getChangeLogSincehash("hash997").toString(),
+                is(equalTo("[/1/998, /1/999]")));
+    }
+
     /**
      * Test method for {@link StructureLogger#getCurrentLogHash()} .
      */
@@ -3,9 +3,11 @@ package org.ds2os.vsl.rest.client;
 import org.ds2os.vsl.core.*;
 import org.ds2os.vsl.core.node.VslNode;
 import org.ds2os.vsl.core.node.VslNodeFactory;
+import org.ds2os.vsl.core.transport.BatchOperation;
 import org.ds2os.vsl.core.transport.PostOperation;
 import org.ds2os.vsl.core.transport.PostOperation.OperationType;
 import org.ds2os.vsl.core.utils.AddressParameters;
+import org.ds2os.vsl.core.utils.AddressParser;
 import org.ds2os.vsl.core.utils.Stream;
 import org.ds2os.vsl.core.utils.VslAddressParameters;
 import org.ds2os.vsl.exception.VslException;
@@ -18,16 +20,20 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
 
 /**
- * Generic REST connector operating on a {@link RestTransportClient}.
+ * Generic REST connector operating on a {@link RestTransportClient}. Batch requests are sent as a
+ * single POST to the batch operations of the KA.
  *
  * @author borchers
  * @author felix
  */
 public final class RestConnector extends AbstractRestConnector
-        implements VslParametrizedConnector, WebSocketClientHandler {
+        implements VslBatchConnector, WebSocketClientHandler {
 
     /**
      * The logger instance of this class.
@@ -149,6 +155,45 @@ public final class RestConnector extends AbstractRestConnector
         }
     }
 
+    @Override
+    public Map<String, VslNode> getBatch(final Collection<String> addresses,
+            final VslAddressParameters params) throws VslException {
+        String operation = "batch/get";
+        if (params != null) {
+            operation += AddressParser.getParametersAsURIQuery(params.getParametersAsMap());
+        }
+        final RestTransportRequest request = client.doPost(getOperationURI(operation));
+        request.accept(getRestTransportContext().getContentTypePreference());
+        try {
+            sendWithBody(request, new BatchOperation(new ArrayList<>(addresses), null));
+
+            final int httpCode = request.syncRequest();
+            if (httpCode != 200) {
+                throw toVslException(httpCode, request);
+            }
+
+            return readResponse(request, httpCode, BatchOperation.class).getNodes();
+        } catch (final IOException e) {
+            throw toVslException(e);
+        }
+    }
+
+    @Override
+    public void setBatch(final Map<String, VslNode> knowledge) throws VslException {
+        final RestTransportRequest request = client.doPost(getOperationURI("batch/set"));
+        request.accept(getRestTransportContext().getContentTypePreference());
+        try {
+            sendWithBody(request, new BatchOperation(null, knowledge));
+
+            final int httpCode = request.syncRequest();
+            if (httpCode < 200 || httpCode >= 300) {
+                throw toVslException(httpCode, request);
+            }
+        } catch (final IOException e) {
+            throw toVslException(e);
+        }
+    }
+
     @Override
     public InputStream getStream(final String address) throws VslException {
         return getStream(getURI(address));
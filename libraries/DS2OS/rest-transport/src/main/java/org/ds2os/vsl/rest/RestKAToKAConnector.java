@@ -2,9 +2,11 @@ package org.ds2os.vsl.rest;
 
 import org.ds2os.vsl.core.*;
 import org.ds2os.vsl.core.node.VslNode;
+import org.ds2os.vsl.core.transport.BatchOperation;
 import org.ds2os.vsl.core.transport.PostOperation;
 import org.ds2os.vsl.core.transport.PostOperation.OperationType;
 import org.ds2os.vsl.core.utils.AddressParameters;
+import org.ds2os.vsl.core.utils.AddressParser;
 import org.ds2os.vsl.core.utils.Base64;
 import org.ds2os.vsl.core.utils.Stream;
 import org.ds2os.vsl.core.utils.VslAddressParameters;
@@ -21,16 +23,21 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
 
 /**
- * {@link VslRequestHandler} implementation for the REST transport.
+ * {@link VslRequestHandler} implementation for the REST transport. Batch requests are sent as a
+ * single POST to the batch operations of the remote KA.
  *
  * @see org.ds2os.vsl.rest.client.RestConnector
  * @author borchers
  * @author felix
  */
-public final class RestKAToKAConnector extends AbstractRestConnector implements VslRequestHandler {
+public final class RestKAToKAConnector extends AbstractRestConnector
+        implements VslBatchRequestHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(RestKAToKAConnector.class);
 
@@ -170,6 +177,48 @@ public final class RestKAToKAConnector extends AbstractRestConnector implements
         }
     }
 
+    @Override
+    public Map<String, VslNode> getBatch(final Collection<String> addresses,
+            final VslAddressParameters params, final VslIdentity identity) throws VslException {
+        String operation = "batch/get";
+        if (params != null) {
+            operation += AddressParser.getParametersAsURIQuery(params.getParametersAsMap());
+        }
+        final RestTransportRequest request = client.doPost(getOperationURI(operation));
+        request.accept(getRestTransportContext().getContentTypePreference());
+        identifyAs(request, identity);
+        try {
+            sendWithBody(request, new BatchOperation(new ArrayList<>(addresses), null));
+
+            final int httpCode = request.syncRequest();
+            if (httpCode != 200) {
+                throw toVslException(httpCode, request);
+            }
+
+            return readResponse(request, httpCode, BatchOperation.class).getNodes();
+        } catch (final IOException e) {
+            throw toVslException(e);
+        }
+    }
+
+    @Override
+    public void setBatch(final Map<String, VslNode> knowledge, final VslIdentity identity)
+            throws VslException {
+        final RestTransportRequest request = client.doPost(getOperationURI("batch/set"));
+        request.accept(getRestTransportContext().getContentTypePreference());
+        identifyAs(request, identity);
+        try {
+            sendWithBody(request, new BatchOperation(null, knowledge));
+
+            final int httpCode = request.syncRequest();
+            if (httpCode < 200 || httpCode >= 300) {
+                throw toVslException(httpCode, request);
+            }
+        } catch (final IOException e) {
+            throw toVslException(e);
+        }
+    }
+
     @Override
     public InputStream getStream(String address, VslIdentity identity) throws VslException {
         final RestTransportRequest request = client.doGet(getURI(address));
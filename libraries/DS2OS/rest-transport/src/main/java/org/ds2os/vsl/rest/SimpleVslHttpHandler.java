@@ -6,6 +6,7 @@ import org.ds2os.vsl.core.impl.KAIdentity;
 import org.ds2os.vsl.core.impl.KORUpdateRequest;
 import org.ds2os.vsl.core.impl.ServiceManifest;
 import org.ds2os.vsl.core.node.VslNode;
+import org.ds2os.vsl.core.transport.BatchOperation;
 import org.ds2os.vsl.core.transport.ExceptionMessage;
 import org.ds2os.vsl.core.transport.PostOperation;
 import org.ds2os.vsl.core.utils.AddressParameters;
@@ -24,7 +25,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Jetty handler for the VSL REST transport with a single content mapper.
@@ -260,6 +263,10 @@ public final class SimpleVslHttpHandler extends AbstractVslHttpHandler {
                 performKAHandshake(input, response, vslIdentity, mapper);
             } else if ("/ka/requestKorUpdate".equals(address)) {
                 performKORUpdateRequest(input, response, vslIdentity, mapper);
+            } else if ("/batch/get".equals(address)) {
+                performBatchGet(input, query, response, vslIdentity, mapper);
+            } else if ("/batch/set".equals(address)) {
+                performBatchSet(input, response, vslIdentity, mapper);
             } else if (address.startsWith("/vsl/")) {
                 final String vslAddress = address.substring("/vsl".length());
                 final PostOperation operation = mapper.readValue(input, PostOperation.class);
@@ -402,6 +409,79 @@ public final class SimpleVslHttpHandler extends AbstractVslHttpHandler {
         mapper.writeValue(response.getOutputStream(), korUpdate);
     }
 
+    /**
+     * Perform a get of several addresses in one request.
+     *
+     * @param input
+     *            the {@link InputStream} to read the {@link BatchOperation} with the addresses.
+     * @param query
+     *            Query parameters applying to all addresses.
+     * @param response
+     *            the {@link HttpServletResponse} object for sending an answer.
+     * @param vslIdentity
+     *            the authenticated {@link VslIdentity}.
+     * @param mapper
+     *            the {@link VslMapper} to use with the provided content type.
+     * @throws VslException
+     *             If a VslException occurs during VSL operation.
+     * @throws IOException
+     *             If an I/O exception occurs during data transmission.
+     */
+    private void performBatchGet(final InputStream input, final String query,
+            final HttpServletResponse response, final VslIdentity vslIdentity,
+            final VslMapper mapper) throws VslException, IOException {
+        final BatchOperation operation = mapper.readValue(input, BatchOperation.class);
+        final AddressParameters params;
+        if (query != null) {
+            params = new AddressParameters(AddressParser.getParametersFromURIQuery(query));
+        } else {
+            params = new AddressParameters();
+        }
+        final Map<String, VslNode> nodes;
+        if (vslHandler instanceof VslBatchRequestHandler) {
+            nodes = ((VslBatchRequestHandler) vslHandler).getBatch(operation.getAddresses(),
+                    params, vslIdentity);
+        } else {
+            nodes = new LinkedHashMap<>();
+            for (final String vslAddress : operation.getAddresses()) {
+                nodes.put(vslAddress, vslHandler.get(vslAddress, params, vslIdentity));
+            }
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(mapper.getContentType());
+        mapper.writeValue(response.getOutputStream(), new BatchOperation(null, nodes));
+    }
+
+    /**
+     * Perform a set of several addresses in one request.
+     *
+     * @param input
+     *            the {@link InputStream} to read the {@link BatchOperation} with the nodes.
+     * @param response
+     *            the {@link HttpServletResponse} object for sending an answer.
+     * @param vslIdentity
+     *            the authenticated {@link VslIdentity}.
+     * @param mapper
+     *            the {@link VslMapper} to use with the provided content type.
+     * @throws VslException
+     *             If a VslException occurs during VSL operation.
+     * @throws IOException
+     *             If an I/O exception occurs during data transmission.
+     */
+    private void performBatchSet(final InputStream input, final HttpServletResponse response,
+            final VslIdentity vslIdentity, final VslMapper mapper)
+            throws VslException, IOException {
+        final BatchOperation operation = mapper.readValue(input, BatchOperation.class);
+        if (vslHandler instanceof VslBatchRequestHandler) {
+            ((VslBatchRequestHandler) vslHandler).setBatch(operation.getNodes(), vslIdentity);
+        } else {
+            for (final Map.Entry<String, VslNode> entry : operation.getNodes().entrySet()) {
+                vslHandler.set(entry.getKey(), entry.getValue(), vslIdentity);
+            }
+        }
+        response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+
     /**
      * Perform the {@link PostOperation} on the specified VSL address.
      *
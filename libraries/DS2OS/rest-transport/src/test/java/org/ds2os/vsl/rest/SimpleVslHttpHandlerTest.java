@@ -0,0 +1,471 @@
+package org.ds2os.vsl.rest;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.ds2os.vsl.core.VslBatchRequestHandler;
+import org.ds2os.vsl.core.VslCallback;
+import org.ds2os.vsl.core.VslIdentity;
+import org.ds2os.vsl.core.VslRequestHandler;
+import org.ds2os.vsl.core.VslX509Authenticator;
+import org.ds2os.vsl.core.node.VslNode;
+import org.ds2os.vsl.core.node.VslNodeFactory;
+import org.ds2os.vsl.core.node.VslNodeFactoryImpl;
+import org.ds2os.vsl.core.utils.AddressParameters;
+import org.ds2os.vsl.core.utils.StaticConfig;
+import org.ds2os.vsl.core.utils.VslAddressParameters;
+import org.ds2os.vsl.exception.NodeNotExistingException;
+import org.ds2os.vsl.exception.VslException;
+import org.ds2os.vsl.mapper.DatabindMapperFactory;
+import org.ds2os.vsl.rest.client.RestConnector;
+import org.ds2os.vsl.rest.client.RestTransportClient;
+import org.ds2os.vsl.rest.client.RestTransportRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Round trips of the batch operations from a {@link RestConnector} through the
+ * {@link SimpleVslHttpHandler} and the databind mapper, without a network in between.
+ */
+public class SimpleVslHttpHandlerTest {
+
+    /**
+     * The node factory used on both sides.
+     */
+    private VslNodeFactory nodeFactory;
+
+    /**
+     * The transport context used on both sides.
+     */
+    private RestTransportContext context;
+
+    /**
+     * The identity with which the requests arrive at the handler.
+     */
+    private VslIdentity identity;
+
+    /**
+     * The request handler behind the unit under test.
+     */
+    private VslBatchRequestHandler vslHandler;
+
+    /**
+     * The connector sending its requests to the unit under test.
+     */
+    private RestConnector connector;
+
+    /**
+     * Creates the handler and the connector.
+     */
+    @Before
+    public final void setUp() {
+        nodeFactory = new VslNodeFactoryImpl();
+        context = new RestTransportContext(StaticConfig.DEFAULT_REST_CONFIG, null, null,
+                new DatabindMapperFactory(nodeFactory));
+        identity = mock(VslIdentity.class);
+        vslHandler = mock(VslBatchRequestHandler.class);
+        connector = connectTo(vslHandler);
+    }
+
+    /**
+     * Creates a connector whose requests are handled by a {@link SimpleVslHttpHandler}.
+     *
+     * @param handler
+     *            the request handler behind the {@link SimpleVslHttpHandler}.
+     * @return the connector.
+     */
+    private RestConnector connectTo(final VslRequestHandler handler) {
+        final SimpleVslHttpHandler httpHandler = new SimpleVslHttpHandler(
+                mock(VslX509Authenticator.class), handler, null, null, context);
+        return new RestConnector(new LoopbackClient(httpHandler), "https://localhost:8080",
+                context, nodeFactory);
+    }
+
+    /**
+     * Test a batch get through /batch/get, including the address parameters.
+     *
+     * @throws VslException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testGetBatch() throws VslException {
+        final Map<String, VslNode> nodes = new LinkedHashMap<String, VslNode>();
+        nodes.put("/agent1/b", nodeFactory.createImmutableLeaf("2"));
+        nodes.put("/agent1/a", nodeFactory.createImmutableLeaf("1"));
+        when(vslHandler.getBatch(eq(Arrays.asList("/agent1/b", "/agent1/a")),
+                any(VslAddressParameters.class), eq(identity))).thenReturn(nodes);
+
+        final Map<String, VslNode> result = connector.getBatch(
+                Arrays.asList("/agent1/b", "/agent1/a"), new AddressParameters().withDepth(1));
+
+        assertThat(new ArrayList<String>(result.keySet()),
+                is(equalTo(Arrays.asList("/agent1/b", "/agent1/a"))));
+        assertThat(result.get("/agent1/b").getValue(), is(equalTo("2")));
+        assertThat(result.get("/agent1/a").getValue(), is(equalTo("1")));
+        final ArgumentCaptor<VslAddressParameters> params =
+                ArgumentCaptor.forClass(VslAddressParameters.class);
+        verify(vslHandler).getBatch(eq(Arrays.asList("/agent1/b", "/agent1/a")),
+                params.capture(), eq(identity));
+        assertThat(params.getValue().getDepth(), is(equalTo(1)));
+    }
+
+    /**
+     * Test that the error code of a failed batch get arrives at the connector.
+     *
+     * @throws VslException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testGetBatchNotExisting() throws VslException {
+        final NodeNotExistingException notExisting = new NodeNotExistingException("/agent1/c");
+        when(vslHandler.getBatch(eq(Arrays.asList("/agent1/c")), any(VslAddressParameters.class),
+                eq(identity))).thenThrow(notExisting);
+
+        try {
+            connector.getBatch(Arrays.asList("/agent1/c"), new AddressParameters());
+            fail("expected a VslException");
+        } catch (final VslException e) {
+            assertThat(e.getErrorCode(), is(equalTo(notExisting.getErrorCode())));
+        }
+    }
+
+    /**
+     * Test a batch set through /batch/set.
+     *
+     * @throws VslException
+     *             shouldn't happen.
+     */
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public final void testSetBatch() throws VslException {
+        final Map<String, VslNode> knowledge = new LinkedHashMap<String, VslNode>();
+        knowledge.put("/agent1/a", nodeFactory.createImmutableLeaf("1"));
+        knowledge.put("/agent2/b", nodeFactory.createImmutableLeaf("2"));
+
+        connector.setBatch(knowledge);
+
+        final ArgumentCaptor<Map> sent = ArgumentCaptor.forClass(Map.class);
+        verify(vslHandler).setBatch(sent.capture(), eq(identity));
+        final Map<String, VslNode> received = sent.getValue();
+        assertThat(new ArrayList<String>(received.keySet()),
+                is(equalTo(Arrays.asList("/agent1/a", "/agent2/b"))));
+        assertThat(received.get("/agent1/a").getValue(), is(equalTo("1")));
+        assertThat(received.get("/agent2/b").getValue(), is(equalTo("2")));
+    }
+
+    /**
+     * Test that a handler without batch support gets single gets and sets.
+     *
+     * @throws VslException
+     *             shouldn't happen.
+     */
+    @Test
+    public final void testBatchWithoutBatchHandler() throws VslException {
+        final VslRequestHandler singleHandler = mock(VslRequestHandler.class);
+        when(singleHandler.get(eq("/agent1/a"), any(VslAddressParameters.class), eq(identity)))
+                .thenReturn(nodeFactory.createImmutableLeaf("1"));
+        final RestConnector singleConnector = connectTo(singleHandler);
+
+        final Map<String, VslNode> result =
+                singleConnector.getBatch(Arrays.asList("/agent1/a"), new AddressParameters());
+        assertThat(result.get("/agent1/a").getValue(), is(equalTo("1")));
+
+        singleConnector.setBatch(Collections.singletonMap("/agent1/b",
+                nodeFactory.createImmutableLeaf("2")));
+        final ArgumentCaptor<VslNode> node = ArgumentCaptor.forClass(VslNode.class);
+        verify(singleHandler).set(eq("/agent1/b"), node.capture(), eq(identity));
+        assertThat(node.getValue().getValue(), is(equalTo("2")));
+    }
+
+    /**
+     * {@link RestTransportClient} which passes its requests directly to a {@link HttpHandler}.
+     */
+    private final class LoopbackClient implements RestTransportClient {
+
+        /**
+         * The handler of the requests.
+         */
+        private final HttpHandler httpHandler;
+
+        /**
+         * Constructor.
+         *
+         * @param httpHandler
+         *            the handler of the requests.
+         */
+        LoopbackClient(final HttpHandler httpHandler) {
+            this.httpHandler = httpHandler;
+        }
+
+        @Override
+        public RestTransportRequest doGet(final URI uri) {
+            return new LoopbackRequest(httpHandler, "GET", uri);
+        }
+
+        @Override
+        public RestTransportRequest doPut(final URI uri) {
+            return new LoopbackRequest(httpHandler, "PUT", uri);
+        }
+
+        @Override
+        public RestTransportRequest doPost(final URI uri) {
+            return new LoopbackRequest(httpHandler, "POST", uri);
+        }
+
+        @Override
+        public UUID registerCallback(final URI uri, final VslCallback callback) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * {@link RestTransportRequest} which is handled by a {@link HttpHandler} on
+     * {@link #syncRequest()}.
+     */
+    private final class LoopbackRequest implements RestTransportRequest {
+
+        /**
+         * The handler of this request.
+         */
+        private final HttpHandler httpHandler;
+
+        /**
+         * The HTTP method.
+         */
+        private final String method;
+
+        /**
+         * The requested URI.
+         */
+        private final URI uri;
+
+        /**
+         * The request body.
+         */
+        private final ByteArrayOutputStream requestBody = new ByteArrayOutputStream();
+
+        /**
+         * The response body.
+         */
+        private final ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+
+        /**
+         * The accepted content types.
+         */
+        private String accept;
+
+        /**
+         * The content type of the request.
+         */
+        private String contentType;
+
+        /**
+         * The HTTP status of the response.
+         */
+        private int status;
+
+        /**
+         * The content type of the response.
+         */
+        private String responseType;
+
+        /**
+         * Constructor.
+         *
+         * @param httpHandler
+         *            the handler of this request.
+         * @param method
+         *            the HTTP method.
+         * @param uri
+         *            the requested URI.
+         */
+        LoopbackRequest(final HttpHandler httpHandler, final String method, final URI uri) {
+            this.httpHandler = httpHandler;
+            this.method = method;
+            this.uri = uri;
+        }
+
+        @Override
+        public void accept(final String... contentTypes) {
+            final StringBuilder builder = new StringBuilder();
+            for (final String type : contentTypes) {
+                if (builder.length() > 0) {
+                    builder.append(", ");
+                }
+                builder.append(type);
+            }
+            accept = builder.toString();
+        }
+
+        @Override
+        public void setHeader(final String header, final String value) {
+        }
+
+        @Override
+        public OutputStream getRequestStream(final String requestContentType) {
+            contentType = requestContentType;
+            return requestBody;
+        }
+
+        @Override
+        public InputStream getResponseStream() {
+            return new ByteArrayInputStream(responseBody.toByteArray());
+        }
+
+        @Override
+        public String getResponseType() {
+            return responseType;
+        }
+
+        @Override
+        public void send() {
+        }
+
+        @Override
+        public int syncRequest() throws VslException {
+            final HttpServletRequest request = mock(HttpServletRequest.class);
+            when(request.getMethod()).thenReturn(method);
+            when(request.getPathInfo()).thenReturn(uri.getPath());
+            when(request.getQueryString()).thenReturn(uri.getRawQuery());
+            when(request.getContentType()).thenReturn(contentType);
+            when(request.getHeader("accept")).thenReturn(accept);
+
+            final HttpServletResponse response = mock(HttpServletResponse.class);
+            doAnswer(new Answer<Void>() {
+                @Override
+                public Void answer(final InvocationOnMock invocation) {
+                    status = (Integer) invocation.getArguments()[0];
+                    return null;
+                }
+            }).when(response).setStatus(anyInt());
+            doAnswer(new Answer<Void>() {
+                @Override
+                public Void answer(final InvocationOnMock invocation) {
+                    responseType = (String) invocation.getArguments()[0];
+                    return null;
+                }
+            }).when(response).setContentType(anyString());
+
+            try {
+                when(request.getInputStream())
+                        .thenReturn(new BodyInputStream(requestBody.toByteArray()));
+                when(response.getOutputStream()).thenReturn(new BodyOutputStream(responseBody));
+                httpHandler.handle(request, response, identity);
+            } catch (final IOException | ServletException e) {
+                throw new AssertionError(e);
+            }
+            return status;
+        }
+    }
+
+    /**
+     * {@link ServletInputStream} reading a request body.
+     */
+    private static final class BodyInputStream extends ServletInputStream {
+
+        /**
+         * The request body.
+         */
+        private final ByteArrayInputStream body;
+
+        /**
+         * Constructor.
+         *
+         * @param body
+         *            the request body.
+         */
+        BodyInputStream(final byte[] body) {
+            this.body = new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public int read() {
+            return body.read();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return body.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(final ReadListener readListener) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * {@link ServletOutputStream} writing a response body.
+     */
+    private static final class BodyOutputStream extends ServletOutputStream {
+
+        /**
+         * The response body.
+         */
+        private final ByteArrayOutputStream body;
+
+        /**
+         * Constructor.
+         *
+         * @param body
+         *            the response body.
+         */
+        BodyOutputStream(final ByteArrayOutputStream body) {
+            this.body = body;
+        }
+
+        @Override
+        public void write(final int b) {
+            body.write(b);
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(final WriteListener writeListener) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -79,4 +79,60 @@ public class Access {
 
   }
 
+  /**
+   * This constructor creates an Access instance directly from its features,
+   * without going through the csv form. Live accesses are never labeled, so
+   * their normality is unknown.
+   *
+   * @param accessingID
+   *          the ID of the service accessing
+   * @param accessingAddress
+   *          the address of the accessing service
+   * @param accessingType
+   *          the type of the accessing service
+   * @param accessingLocation
+   *          the location of the accessing service
+   * @param accessedServiceAddress
+   *          the address of the service containing the accessed node
+   * @param accessedServiceType
+   *          the type of this service
+   * @param accessedLocation
+   *          the location of this service
+   * @param accessedNodeAddress
+   *          the address that is accessed
+   * @param accessedNodeType
+   *          the type of this address
+   * @param operation
+   *          the operation performed
+   * @param value
+   *          the value exchanged
+   * @param timestamp
+   *          the time at which the access took place
+   */
+  public Access(final String accessingID, final String accessingAddress,
+      final String accessingType, final String accessingLocation,
+      final String accessedServiceAddress, final String accessedServiceType,
+      final String accessedLocation, final String accessedNodeAddress,
+      final String accessedNodeType, final String operation, final String value,
+      final long timestamp) {
+    this.accessingID = accessingID;
+    this.accessingAddress = accessingAddress;
+    this.accessingType = accessingType;
+    this.accessingLocation = accessingLocation;
+    this.accessedServiceAddress = accessedServiceAddress;
+    this.accessedServiceType = accessedServiceType;
+    this.accessedLocation = accessedLocation;
+    this.accessedNodeAddress = accessedNodeAddress;
+    this.accessedNodeType = accessedNodeType;
+
+    typeOfValue = ValueType.parse(accessedNodeType);
+    this.operation = OperationType.parse(operation);
+    this.value = value;
+    this.timestamp = timestamp;
+    StateX.actualTimestamp = timestamp;
+
+    norm = Normality.UNKNOWN;
+    normalityString = "";
+  }
+
 }
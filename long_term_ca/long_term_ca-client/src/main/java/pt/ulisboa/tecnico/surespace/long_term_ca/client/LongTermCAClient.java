@@ -6,59 +6,55 @@
 
 package pt.ulisboa.tecnico.surespace.long_term_ca.client;
 
-import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
-import io.grpc.StatusRuntimeException;
 import pt.ulisboa.tecnico.surespace.common.connection.Client;
 import pt.ulisboa.tecnico.surespace.long_term_ca.common.message.SignedRegisterEntityRequest;
 import pt.ulisboa.tecnico.surespace.long_term_ca.common.message.SignedRegisterEntityResponse;
+import pt.ulisboa.tecnico.surespace.long_term_ca.grpc.LongTermCAAdapter;
 import pt.ulisboa.tecnico.surespace.long_term_ca.grpc.LongTermCAServiceGrpc;
 import pt.ulisboa.tecnico.surespace.long_term_ca.grpc.LongTermCAServiceGrpc.LongTermCAServiceFutureStub;
 import pt.ulisboa.tecnico.surespace.long_term_ca.grpc.PingRequest;
 
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static pt.ulisboa.tecnico.surespace.long_term_ca.grpc.LongTermCAAdapter.adapt;
 
 public final class LongTermCAClient extends Client<LongTermCAClientException> {
-  private final ManagedChannel channel;
-  private final LongTermCAServiceFutureStub stub;
-
   public LongTermCAClient(String host, int port) {
-    super(host, port);
-
-    channel = ManagedChannelBuilder.forAddress(getHost(), getPort()).usePlaintext().build();
-    stub = LongTermCAServiceGrpc.newFutureStub(channel);
+    this(host, port, 1);
   }
 
-  @Override
-  public void close() {
-    channel.shutdownNow();
+  public LongTermCAClient(String host, int port, int instances) {
+    super(
+        host,
+        port,
+        instances,
+        LongTermCAServiceGrpc.SERVICE_NAME,
+        LongTermCAClientException.class,
+        LongTermCAClientException::new);
   }
 
   @Override
   public void ping() throws LongTermCAClientException {
-    try {
-      stub.ping(PingRequest.getDefaultInstance()).get();
-
-    } catch (StatusRuntimeException e) {
-      throw new LongTermCAClientException(e.getStatus().getDescription());
+    await(pingAsync());
+  }
 
-    } catch (InterruptedException | ExecutionException e) {
-      throw new LongTermCAClientException(e.getMessage());
-    }
+  public CompletableFuture<Void> pingAsync() {
+    return call(stub().ping(PingRequest.getDefaultInstance()), response -> null);
   }
 
   public SignedRegisterEntityResponse registerEntity(SignedRegisterEntityRequest request)
       throws LongTermCAClientException {
-    try {
-      return adapt(stub.registerEntity(adapt(request)).get());
+    return await(registerEntityAsync(request));
+  }
 
-    } catch (StatusRuntimeException e) {
-      throw new LongTermCAClientException(e.getStatus().getDescription());
+  public CompletableFuture<SignedRegisterEntityResponse> registerEntityAsync(
+      SignedRegisterEntityRequest request) {
+    return call(stub().registerEntity(adapt(request)), LongTermCAAdapter::adapt);
+  }
 
-    } catch (InterruptedException | ExecutionException e) {
-      throw new LongTermCAClientException(e.getMessage());
-    }
+  private LongTermCAServiceFutureStub stub() {
+    return LongTermCAServiceGrpc.newFutureStub(nextChannel())
+        .withDeadlineAfter(TIMEOUT, MILLISECONDS);
   }
 }
@@ -7,94 +7,146 @@
 package pt.ulisboa.tecnico.surespace.orchestrator.client;
 
 import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
-import io.grpc.StatusRuntimeException;
+import io.grpc.Metadata;
+import io.grpc.stub.MetadataUtils;
 import pt.ulisboa.tecnico.surespace.common.connection.Client;
+import pt.ulisboa.tecnico.surespace.common.connection.ConsistentHashRing;
 import pt.ulisboa.tecnico.surespace.common.message.SignedProveLocationRequest;
 import pt.ulisboa.tecnico.surespace.common.message.SignedProveLocationResponse;
 import pt.ulisboa.tecnico.surespace.common.message.SignedRequestAuthorizationRequest;
 import pt.ulisboa.tecnico.surespace.common.message.SignedRequestAuthorizationResponse;
 import pt.ulisboa.tecnico.surespace.orchestrator.SignedRequestProofInformationRequest;
 import pt.ulisboa.tecnico.surespace.orchestrator.SignedRequestProofInformationResponse;
+import pt.ulisboa.tecnico.surespace.orchestrator.grpc.OrchestratorAdapter;
 import pt.ulisboa.tecnico.surespace.orchestrator.grpc.OrchestratorServiceGrpc;
 import pt.ulisboa.tecnico.surespace.orchestrator.grpc.OrchestratorServiceGrpc.OrchestratorServiceFutureStub;
 import pt.ulisboa.tecnico.surespace.orchestrator.grpc.PingRequest;
 
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.CompletableFuture;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static pt.ulisboa.tecnico.surespace.orchestrator.grpc.OrchestratorAdapter.adapt;
 
+/**
+ * Client of one or more orchestrator instances. Authorizations may be requested to any instance,
+ * but every later call about a proof is routed to the instance that owns its identifier.
+ */
 public final class OrchestratorClient extends Client<OrchestratorClientException> {
-  private final ManagedChannel channel;
-  private final OrchestratorServiceFutureStub stub;
+  /** Header carrying the id of the orchestrator instance that forwarded a call. */
+  public static final Metadata.Key<String> FORWARDED_BY =
+      Metadata.Key.of("surespace-forwarded-by", Metadata.ASCII_STRING_MARSHALLER);
+
+  private static final String ENTITY_PATH = "surespace://rca/oca/";
+
+  private final Metadata forwardedBy;
+  private final ConsistentHashRing ring;
 
   public OrchestratorClient(String host, int port) {
-    super(host, port);
+    this(host, port, 1);
+  }
 
-    channel = ManagedChannelBuilder.forAddress(host, port).usePlaintext().build();
-    stub = OrchestratorServiceGrpc.newFutureStub(channel);
+  public OrchestratorClient(String host, int port, int instances) {
+    this(host, port, instances, null);
   }
 
-  private static OrchestratorClientException exceptionFromStatus(StatusRuntimeException e) {
-    return new OrchestratorClientException(e.getStatus().getDescription());
+  private OrchestratorClient(String host, int port, int instances, Metadata forwardedBy) {
+    super(
+        host,
+        port,
+        instances,
+        OrchestratorServiceGrpc.SERVICE_NAME,
+        OrchestratorClientException.class,
+        OrchestratorClientException::new);
+    this.forwardedBy = forwardedBy;
+    ring = new ConsistentHashRing(instances);
   }
 
-  @Override
-  public void close() {
-    channel.shutdownNow();
+  /**
+   * Creates the client an orchestrator instance forwards misrouted calls with. Its calls carry the
+   * {@link #FORWARDED_BY} header, so that the receiving instance does not forward them again.
+   */
+  public static OrchestratorClient forwarding(String host, int port, int instances, int forwarder) {
+    Metadata forwardedBy = new Metadata();
+    forwardedBy.put(FORWARDED_BY, Integer.toString(forwarder));
+    return new OrchestratorClient(host, port, instances, forwardedBy);
+  }
+
+  /** @return the path of the entity of the orchestrator instance with the given id. */
+  public static String entityPath(int instance) {
+    return ENTITY_PATH + instance;
+  }
+
+  /**
+   * @return the id of the orchestrator instance that owns the proof, which is also the instance
+   *     that issued its authorization.
+   */
+  public int instanceOf(String identifier) {
+    return ring.instanceOf(identifier);
   }
 
   @Override
   public void ping() throws OrchestratorClientException {
-    try {
-      stub.ping(PingRequest.getDefaultInstance()).get(TIMEOUT, MILLISECONDS);
-
-    } catch (StatusRuntimeException e) {
-      throw exceptionFromStatus(e);
+    await(pingAsync());
+  }
 
-    } catch (InterruptedException | ExecutionException | TimeoutException e) {
-      throw new OrchestratorClientException(e.getMessage());
-    }
+  public CompletableFuture<Void> pingAsync() {
+    return call(stub().ping(PingRequest.getDefaultInstance()), response -> null);
   }
 
   public SignedProveLocationResponse proveLocation(SignedProveLocationRequest request)
       throws OrchestratorClientException {
-    try {
-      return adapt(stub.proveLocation(adapt(request)).get(TIMEOUT, MILLISECONDS));
-
-    } catch (StatusRuntimeException e) {
-      throw exceptionFromStatus(e);
+    return await(proveLocationAsync(request));
+  }
 
-    } catch (InterruptedException | ExecutionException | TimeoutException e) {
-      throw new OrchestratorClientException(e.getMessage());
-    }
+  public CompletableFuture<SignedProveLocationResponse> proveLocationAsync(
+      SignedProveLocationRequest request) {
+    String identifier =
+        request
+            .getMessage()
+            .getSignedRequestAuthorizationResponse()
+            .getMessage()
+            .getProperties()
+            .getIdentifier();
+
+    return call(stub(identifier).proveLocation(adapt(request)), OrchestratorAdapter::adapt);
   }
 
   public SignedRequestAuthorizationResponse requestAuthorization(
       SignedRequestAuthorizationRequest request) throws OrchestratorClientException {
-    try {
-      return adapt(stub.requestAuthorization(adapt(request)).get(TIMEOUT, MILLISECONDS));
-
-    } catch (StatusRuntimeException e) {
-      throw exceptionFromStatus(e);
+    return await(requestAuthorizationAsync(request));
+  }
 
-    } catch (InterruptedException | ExecutionException | TimeoutException e) {
-      throw new OrchestratorClientException(e.getMessage());
-    }
+  public CompletableFuture<SignedRequestAuthorizationResponse> requestAuthorizationAsync(
+      SignedRequestAuthorizationRequest request) {
+    return call(stub().requestAuthorization(adapt(request)), OrchestratorAdapter::adapt);
   }
 
   public SignedRequestProofInformationResponse requestProofInformation(
       SignedRequestProofInformationRequest request) throws OrchestratorClientException {
-    try {
-      return adapt(stub.requestProofInformation(adapt(request)).get(TIMEOUT, MILLISECONDS));
+    return await(requestProofInformationAsync(request));
+  }
 
-    } catch (StatusRuntimeException e) {
-      throw exceptionFromStatus(e);
+  public CompletableFuture<SignedRequestProofInformationResponse> requestProofInformationAsync(
+      SignedRequestProofInformationRequest request) {
+    String identifier = request.getMessage().getIdentifier();
+    return call(
+        stub(identifier).requestProofInformation(adapt(request)), OrchestratorAdapter::adapt);
+  }
+
+  private OrchestratorServiceFutureStub stub() {
+    return stub(nextChannel());
+  }
+
+  private OrchestratorServiceFutureStub stub(ManagedChannel channel) {
+    OrchestratorServiceFutureStub stub =
+        OrchestratorServiceGrpc.newFutureStub(channel).withDeadlineAfter(TIMEOUT, MILLISECONDS);
+    if (forwardedBy == null) return stub;
+
+    return stub.withInterceptors(MetadataUtils.newAttachHeadersInterceptor(forwardedBy));
+  }
 
-    } catch (InterruptedException | ExecutionException | TimeoutException e) {
-      throw new OrchestratorClientException(e.getMessage());
-    }
+  private OrchestratorServiceFutureStub stub(String identifier) {
+    // Instance identifiers start at 1, whereas pooled channels are indexed from 0.
+    return stub(channels().get(instanceOf(identifier) - 1));
   }
 }
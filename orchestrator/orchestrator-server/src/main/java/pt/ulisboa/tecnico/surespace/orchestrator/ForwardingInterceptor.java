@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2020 The SureThing project
+ * @author João Tiago <joao.marques.tiago@tecnico.ulisboa.pt>
+ * http://surething.tecnico.ulisboa.pt/en/
+ */
+
+package pt.ulisboa.tecnico.surespace.orchestrator;
+
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import pt.ulisboa.tecnico.surespace.orchestrator.client.OrchestratorClient;
+
+/** Exposes to the call handlers whether a call was forwarded by another orchestrator instance. */
+public final class ForwardingInterceptor implements ServerInterceptor {
+  private static final Context.Key<String> FORWARDED_BY = Context.key("surespace-forwarded-by");
+
+  /** @return whether the call being handled was forwarded by another orchestrator instance. */
+  public static boolean isForwarded() {
+    return FORWARDED_BY.get() != null;
+  }
+
+  @Override
+  public <Request, Response> ServerCall.Listener<Request> interceptCall(
+      ServerCall<Request, Response> call,
+      Metadata headers,
+      ServerCallHandler<Request, Response> next) {
+    String forwarder = headers.get(OrchestratorClient.FORWARDED_BY);
+    if (forwarder == null) return next.startCall(call, headers);
+
+    Context context = Context.current().withValue(FORWARDED_BY, forwarder);
+    return Contexts.interceptCall(context, call, headers, next);
+  }
+}
@@ -7,8 +7,8 @@
 package pt.ulisboa.tecnico.surespace.orchestrator.domain;
 
 import io.grpc.Server;
+import io.grpc.ServerInterceptors;
 import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
-import org.apache.commons.lang3.RandomStringUtils;
 import org.ds2os.vsl.exception.VslException;
 import pt.ulisboa.tecnico.surespace.common.async.AsyncListener;
 import pt.ulisboa.tecnico.surespace.common.connection.ServerInitializer;
@@ -35,12 +35,17 @@ import pt.ulisboa.tecnico.surespace.ds2os.service.OrchestrationService;
 import pt.ulisboa.tecnico.surespace.ds2os.service.ServiceInitializer;
 import pt.ulisboa.tecnico.surespace.ds2os.service.exception.OrchestrationServiceException;
 import pt.ulisboa.tecnico.surespace.ds2os.service.view.AdaptationServiceView;
+import pt.ulisboa.tecnico.surespace.orchestrator.ForwardingInterceptor;
 import pt.ulisboa.tecnico.surespace.orchestrator.OrchestratorServiceImpl;
 import pt.ulisboa.tecnico.surespace.orchestrator.SignedRequestProofInformationRequest;
 import pt.ulisboa.tecnico.surespace.orchestrator.SignedRequestProofInformationResponse;
+import pt.ulisboa.tecnico.surespace.orchestrator.client.OrchestratorClient;
+import pt.ulisboa.tecnico.surespace.orchestrator.client.OrchestratorClientException;
 import pt.ulisboa.tecnico.surespace.orchestrator.domain.OrchestratorDatabase.DatabaseEntry;
 import pt.ulisboa.tecnico.surespace.orchestrator.domain.exception.OrchestratorException;
 import pt.ulisboa.tecnico.surespace.orchestrator.manager.OrchestratorManager;
+import pt.ulisboa.tecnico.surespace.verifier.message.SignedPushProofInformationRequest;
+import pt.ulisboa.tecnico.surespace.verifier.message.SignedPushProofInformationRequest.PushProofInformationRequest;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -63,6 +68,8 @@ public final class Orchestrator implements AutoCloseable {
   public final OrchestratorManager manager;
   private final OrchestratorDatabase database;
   private final OrchestrationService orchestrationService;
+  private final OrchestratorClient peers;
+  private final ShardRouter router;
   private final Server server;
 
   public Orchestrator(ServerInitializer init)
@@ -79,6 +86,12 @@ public final class Orchestrator implements AutoCloseable {
       init.setPort(manager.property().get("orchestrator", "port").asInt() + init.getId());
     }
 
+    // Proofs are sharded among all instances, which listen on consecutive ports.
+    int instances = manager.property().get("orchestrator", "instances").asInt();
+    int firstPort = manager.property().get("orchestrator", "port").asInt() + 1;
+    router = new ShardRouter(init.getId(), instances);
+    peers = OrchestratorClient.forwarding(init.getHost(), firstPort, instances, init.getId());
+
     try {
       // Make sure this Orchestrator is registered.
       manager.keyStore().registerOrchestrator();
@@ -86,7 +99,10 @@ public final class Orchestrator implements AutoCloseable {
       // Start the Orchestrator.
       InetSocketAddress address = new InetSocketAddress(init.getHost(), init.getPort());
       OrchestratorServiceImpl service = new OrchestratorServiceImpl(this);
-      server = NettyServerBuilder.forAddress(address).addService(service).build();
+      server =
+          NettyServerBuilder.forAddress(address)
+              .addService(ServerInterceptors.intercept(service, new ForwardingInterceptor()))
+              .build();
       start(init);
 
       // Create the database.
@@ -110,6 +126,7 @@ public final class Orchestrator implements AutoCloseable {
   public void close() {
     if (orchestrationService != null) orchestrationService.close();
     if (server != null) server.shutdownNow();
+    peers.close();
 
     manager.log().info("[+] Server has been shut down.");
   }
@@ -149,6 +166,26 @@ public final class Orchestrator implements AutoCloseable {
     SignedMessageValidator verifier = new SignedMessageValidator(manager);
     ProveLocationRequest request = signedRequest.getMessage();
 
+    // Get proof identifier.
+    String identifier =
+        request
+            .getSignedRequestAuthorizationResponse()
+            .getMessage()
+            .getProperties()
+            .getIdentifier();
+
+    // Forward misrouted requests to the instance that owns the proof.
+    if (router.mustForward(identifier, ForwardingInterceptor.isForwarded())) {
+      manager.log().info("[+] Forwarding proveLocation of proof '%s'.", identifier);
+
+      try {
+        return peers.proveLocation(signedRequest);
+
+      } catch (OrchestratorClientException e) {
+        throw new OrchestratorException(e.getMessage());
+      }
+    }
+
     new MessageValidator(manager)
         .init(request)
         .assertReceiver(orchestrator)
@@ -162,14 +199,6 @@ public final class Orchestrator implements AutoCloseable {
     // Start signed message assertions.
     verifier.assertSignature();
 
-    // Get proof identifier.
-    String identifier =
-        request
-            .getSignedRequestAuthorizationResponse()
-            .getMessage()
-            .getProperties()
-            .getIdentifier();
-
     // Make sure a previous entry exists.
     if (!database.hasEntry(identifier))
       throw new OrchestratorException("An authorization is required to prove your location");
@@ -191,7 +220,7 @@ public final class Orchestrator implements AutoCloseable {
     // Time to begin the proof of location.
     try {
       orchestrationService.proveLocation(
-          auth.getProperties(), entry.getServices(), new HandleProof(entry));
+          auth.getProperties(), entry.getServices(), new HandleProof(identifier, entry));
 
     } catch (BroadException e) {
       e.printStackTrace();
@@ -211,6 +240,44 @@ public final class Orchestrator implements AutoCloseable {
         .build();
   }
 
+  private void pushProofInformation(String identifier, LinkedHashSet<Signal> signals) {
+    SignedPushProofInformationRequest signedRequest;
+    try {
+      signedRequest =
+          SignedPushProofInformationRequest.newBuilder()
+              .setMessage(
+                  PushProofInformationRequest.newBuilder()
+                      .setIdentifier(identifier)
+                      .setSignals(new LinkedList<>(signals))
+                      .setSender(manager.entity().current())
+                      .setReceiver(manager.getVerifier())
+                      .setCertificateBytes(manager.keyStore())
+                      .setNonce(manager.nonce())
+                      .build())
+              .setSignature(manager.keyStore())
+              .build();
+
+    } catch (EntityManagerException | KeyStoreManagerException e) {
+      manager.log().error("[-] Could not push proof '%s': %s", identifier, e.getMessage());
+      return;
+    }
+
+    // The verifier falls back to requestProofInformation if the push is lost.
+    manager
+        .getVerifierClient()
+        .pushProofInformationAsync(signedRequest)
+        .whenComplete(
+            (result, throwable) -> {
+              if (throwable == null) {
+                manager.log().info("[+] Pushed information of proof '%s'.", identifier);
+
+              } else {
+                String reason = throwable.getMessage();
+                manager.log().warning("[-] Could not push proof '%s': %s", identifier, reason);
+              }
+            });
+  }
+
   public SignedRequestAuthorizationResponse requestAuthorization(
       SignedRequestAuthorizationRequest signedRequest)
       throws EntityManagerException, KeyStoreManagerException, MessageValidatorException,
@@ -235,7 +302,7 @@ public final class Orchestrator implements AutoCloseable {
 
     // Generate proof properties.
     LocationProofProperties properties = new LocationProofProperties();
-    properties.setIdentifier(RandomStringUtils.randomAlphanumeric(10)); // Random proof identifier.
+    properties.setIdentifier(router.newIdentifier()); // Random identifier, owned by this instance.
     properties.setFragmentCount(2); // TODO Random?
     properties.setFragmentLength(15000); // TODO Random?
     properties.setSeed(new SecureRandom().nextLong()); // Random seed to generate quirky properties.
@@ -288,6 +355,19 @@ public final class Orchestrator implements AutoCloseable {
     final Entity orchestrator = manager.entity().current();
     final Entity verifier = manager.getVerifier();
 
+    // Forward misrouted requests to the instance that owns the proof.
+    String identifierToLookup = signedRequest.getMessage().getIdentifier();
+    if (router.mustForward(identifierToLookup, ForwardingInterceptor.isForwarded())) {
+      manager.log().info("[+] Forwarding requestProofInformation of '%s'.", identifierToLookup);
+
+      try {
+        return peers.requestProofInformation(signedRequest);
+
+      } catch (OrchestratorClientException e) {
+        throw new OrchestratorException(e.getMessage());
+      }
+    }
+
     // Validate the request.
     new MessageValidator(manager)
         .init(signedRequest.getMessage())
@@ -299,7 +379,6 @@ public final class Orchestrator implements AutoCloseable {
 
     new SignedMessageValidator(manager).init(signedRequest).assertSignature().validate();
 
-    String identifierToLookup = signedRequest.getMessage().getIdentifier();
     if (!database.hasEntry(identifierToLookup))
       throw new OrchestratorException("Unrecognized proof identifier '%s'.", identifierToLookup);
 
@@ -330,17 +409,23 @@ public final class Orchestrator implements AutoCloseable {
     }
   }
 
-  private static final class HandleProof
+  private final class HandleProof
       implements AsyncListener<LinkedHashSet<AdaptationServiceView>, BroadException> {
     private final DatabaseEntry entry;
+    private final String identifier;
 
-    public HandleProof(DatabaseEntry entry) {
+    public HandleProof(String identifier, DatabaseEntry entry) {
+      this.identifier = identifier;
       this.entry = entry.clone();
     }
 
     @Override
     public void onComplete(LinkedHashSet<AdaptationServiceView> services) {
       for (AdaptationServiceView service : services) entry.addSignals(service.getSignal());
+
+      if (manager.property().get("verifier", "push").asBoolean()) {
+        pushProofInformation(identifier, entry.getSignals());
+      }
     }
   }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2020 The SureThing project
+ * @author João Tiago <joao.marques.tiago@tecnico.ulisboa.pt>
+ * http://surething.tecnico.ulisboa.pt/en/
+ */
+
+package pt.ulisboa.tecnico.surespace.orchestrator.domain;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import pt.ulisboa.tecnico.surespace.common.connection.ConsistentHashRing;
+import pt.ulisboa.tecnico.surespace.orchestrator.domain.exception.OrchestratorException;
+
+/**
+ * Decides which of the orchestrator instances owns each proof, and whether a call about a proof
+ * has to be forwarded to its owner. Calls are forwarded at most once, so a misconfigured instance
+ * cannot make them bounce between instances.
+ */
+public final class ShardRouter {
+  private final int id;
+  private final ConsistentHashRing ring;
+
+  public ShardRouter(int id, int instances) throws OrchestratorException {
+    if (instances <= 0)
+      throw new OrchestratorException("Invalid instances '%d': must be positive", instances);
+
+    if (id < 1 || id > instances)
+      throw new OrchestratorException(
+          "Invalid orchestrator id '%d': must be between 1 and %d", id, instances);
+
+    this.id = id;
+    this.ring = new ConsistentHashRing(instances);
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public boolean isOwner(String identifier) {
+    return ring.instanceOf(identifier) == id;
+  }
+
+  /**
+   * @param identifier the proof identifier the call is about.
+   * @param forwarded whether another instance already forwarded the call.
+   * @return whether the call has to be forwarded to the owner of the proof.
+   * @throws OrchestratorException if the call was forwarded to an instance that does not own the
+   *     proof either.
+   */
+  public boolean mustForward(String identifier, boolean forwarded) throws OrchestratorException {
+    if (isOwner(identifier)) return false;
+
+    if (forwarded)
+      throw new OrchestratorException(
+          "Proof '%s' was forwarded to instance %d, which does not own it", identifier, id);
+
+    return true;
+  }
+
+  /** @return a random proof identifier owned by this instance. */
+  public String newIdentifier() {
+    String identifier;
+    do {
+      identifier = RandomStringUtils.randomAlphanumeric(10);
+    } while (!isOwner(identifier));
+
+    return identifier;
+  }
+}
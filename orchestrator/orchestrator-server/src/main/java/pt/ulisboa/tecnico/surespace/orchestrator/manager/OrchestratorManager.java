@@ -17,6 +17,7 @@ import pt.ulisboa.tecnico.surespace.common.manager.exception.EntityManagerExcept
 import pt.ulisboa.tecnico.surespace.common.manager.exception.KeyStoreManagerException;
 import pt.ulisboa.tecnico.surespace.common.manager.exception.LogManagerException;
 import pt.ulisboa.tecnico.surespace.common.manager.exception.PropertyManagerException;
+import pt.ulisboa.tecnico.surespace.orchestrator.client.OrchestratorClient;
 import pt.ulisboa.tecnico.surespace.verifier.client.VerifierClient;
 
 import java.security.Security;
@@ -44,13 +45,14 @@ public final class OrchestratorManager implements GlobalManagerInterface {
 
     this.entityManager = new EntityManager(propertyManager);
     String name = "Orchestrator " + initializer.getId();
-    String path = "surespace://rca/oca/" + initializer.getId();
+    String path = OrchestratorClient.entityPath(initializer.getId());
     entityManager.current(new Entity(name, path));
 
     // Get a client for Verifier 1.
     String verifierHost = propertyManager.get("verifier", "host").asString();
     int verifierPort = propertyManager.get("verifier", "port").asInt();
-    verifierClient = new VerifierClient(verifierHost, verifierPort);
+    int verifierInstances = propertyManager.get("verifier", "instances").asInt();
+    verifierClient = new VerifierClient(verifierHost, verifierPort, verifierInstances);
 
     String verifierPath = propertyManager.get("verifier", "path").asString();
     verifier = entityManager.getByPath(verifierPath);
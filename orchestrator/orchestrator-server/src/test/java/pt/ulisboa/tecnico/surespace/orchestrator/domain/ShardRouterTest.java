@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2020 The SureThing project
+ * @author João Tiago <joao.marques.tiago@tecnico.ulisboa.pt>
+ * http://surething.tecnico.ulisboa.pt/en/
+ */
+
+package pt.ulisboa.tecnico.surespace.orchestrator.domain;
+
+import org.junit.Before;
+import org.junit.Test;
+import pt.ulisboa.tecnico.surespace.orchestrator.client.OrchestratorClient;
+import pt.ulisboa.tecnico.surespace.orchestrator.domain.exception.OrchestratorException;
+
+import static org.junit.Assert.*;
+
+/** Routing of proofs among three orchestrator instances, as started locally with ids 1 to 3. */
+public final class ShardRouterTest {
+  private static final int INSTANCES = 3;
+  private ShardRouter[] routers;
+
+  @Before
+  public void setUp() throws OrchestratorException {
+    routers = new ShardRouter[INSTANCES];
+    for (int i = 0; i < INSTANCES; i++) routers[i] = new ShardRouter(i + 1, INSTANCES);
+  }
+
+  @Test
+  public void everyProofHasExactlyOneOwner() {
+    int[] owned = new int[INSTANCES];
+    for (int proof = 0; proof < 1000; proof++) {
+      int owners = 0;
+      for (int i = 0; i < INSTANCES; i++) {
+        if (routers[i].isOwner("proof" + proof)) {
+          owners++;
+          owned[i]++;
+        }
+      }
+      assertEquals(1, owners);
+    }
+
+    for (int i = 0; i < INSTANCES; i++) assertTrue(owned[i] > 0);
+  }
+
+  @Test
+  public void newIdentifiersAreOwnedByTheirIssuer() {
+    for (ShardRouter issuer : routers) {
+      for (int attempt = 0; attempt < 50; attempt++) {
+        String identifier = issuer.newIdentifier();
+        for (ShardRouter router : routers) {
+          assertEquals(router == issuer, router.isOwner(identifier));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void clientsResolveTheIssuerOfEveryProof() {
+    // Verifiers check proof information against the instance the client resolves.
+    try (OrchestratorClient client = new OrchestratorClient("localhost", 8000, INSTANCES)) {
+      for (ShardRouter issuer : routers) {
+        for (int attempt = 0; attempt < 50; attempt++) {
+          assertEquals(issuer.getId(), client.instanceOf(issuer.newIdentifier()));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void misroutedCallsAreForwardedOnceToTheOwner() throws OrchestratorException {
+    String identifier = routers[0].newIdentifier();
+
+    assertFalse(routers[0].mustForward(identifier, false));
+    assertTrue(routers[1].mustForward(identifier, false));
+    assertTrue(routers[2].mustForward(identifier, false));
+
+    // The owner handles forwarded calls itself.
+    assertFalse(routers[0].mustForward(identifier, true));
+  }
+
+  @Test(expected = OrchestratorException.class)
+  public void forwardedCallsAreNotForwardedAgain() throws OrchestratorException {
+    routers[1].mustForward(routers[0].newIdentifier(), true);
+  }
+
+  @Test(expected = OrchestratorException.class)
+  public void idOutsideInstancesIsRejected() throws OrchestratorException {
+    new ShardRouter(2, 1);
+  }
+
+  @Test(expected = OrchestratorException.class)
+  public void nonPositiveIdIsRejected() throws OrchestratorException {
+    new ShardRouter(0, INSTANCES);
+  }
+}
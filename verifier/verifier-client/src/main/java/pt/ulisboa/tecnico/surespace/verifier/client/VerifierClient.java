@@ -6,96 +6,75 @@
 
 package pt.ulisboa.tecnico.surespace.verifier.client;
 
-import com.google.common.util.concurrent.FutureCallback;
-import com.google.common.util.concurrent.Futures;
-import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
-import io.grpc.StatusRuntimeException;
-import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 import pt.ulisboa.tecnico.surespace.common.async.AsyncListener;
 import pt.ulisboa.tecnico.surespace.common.connection.Client;
 import pt.ulisboa.tecnico.surespace.verifier.grpc.PingRequest;
+import pt.ulisboa.tecnico.surespace.verifier.grpc.VerifierAdapter;
 import pt.ulisboa.tecnico.surespace.verifier.grpc.VerifierServiceGrpc;
 import pt.ulisboa.tecnico.surespace.verifier.grpc.VerifierServiceGrpc.VerifierServiceFutureStub;
-import pt.ulisboa.tecnico.surespace.verifier.grpc.VerifyProofResponse;
+import pt.ulisboa.tecnico.surespace.verifier.message.SignedPushProofInformationRequest;
 import pt.ulisboa.tecnico.surespace.verifier.message.SignedVerifyProofRequest;
 import pt.ulisboa.tecnico.surespace.verifier.message.SignedVerifyProofResponse;
 
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.CompletableFuture;
 
-import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static pt.ulisboa.tecnico.surespace.verifier.grpc.VerifierAdapter.adapt;
 
 public final class VerifierClient extends Client<VerifierClientException> {
-  private final ManagedChannel channel;
-  private final VerifierServiceFutureStub stub;
+  /** Verifying a proof runs MATLAB and may fetch its information first, so it gets longer. */
+  private static final long VERIFY_TIMEOUT = 60000;
 
   public VerifierClient(String host, int port) {
-    super(host, port);
-
-    channel = ManagedChannelBuilder.forAddress(host, port).usePlaintext().build();
-    stub = VerifierServiceGrpc.newFutureStub(channel);
+    this(host, port, 1);
   }
 
-  private static VerifierClientException exceptionFromStatus(StatusRuntimeException e) {
-    return new VerifierClientException(e.getStatus().getDescription());
+  public VerifierClient(String host, int port, int instances) {
+    super(
+        host,
+        port,
+        instances,
+        VerifierServiceGrpc.SERVICE_NAME,
+        VerifierClientException.class,
+        VerifierClientException::new);
   }
 
   @Override
-  public void close() {
-    channel.shutdownNow();
+  public void ping() throws VerifierClientException {
+    await(pingAsync());
   }
 
-  @Override
-  public void ping() throws VerifierClientException {
-    try {
-      stub.ping(PingRequest.getDefaultInstance()).get(TIMEOUT, MILLISECONDS);
+  public CompletableFuture<Void> pingAsync() {
+    return call(stub().ping(PingRequest.getDefaultInstance()), response -> null);
+  }
+
+  public CompletableFuture<Void> pushProofInformationAsync(
+      SignedPushProofInformationRequest request) {
+    return call(stub().pushProofInformation(adapt(request)), response -> null);
+  }
 
-    } catch (StatusRuntimeException e) {
-      throw new VerifierClientException(e.getStatus().getDescription());
+  private VerifierServiceFutureStub stub() {
+    return stub(TIMEOUT);
+  }
 
-    } catch (InterruptedException | ExecutionException | TimeoutException e) {
-      throw new VerifierClientException(e.getMessage());
-    }
+  private VerifierServiceFutureStub stub(long timeout) {
+    return VerifierServiceGrpc.newFutureStub(nextChannel())
+        .withDeadlineAfter(timeout, MILLISECONDS);
   }
 
   public SignedVerifyProofResponse verifyProof(SignedVerifyProofRequest request)
       throws VerifierClientException {
-    try {
-      return adapt(stub.verifyProof(adapt(request)).get(TIMEOUT, MILLISECONDS));
-
-    } catch (StatusRuntimeException e) {
-      throw exceptionFromStatus(e);
-
-    } catch (InterruptedException | ExecutionException | TimeoutException e) {
-      throw new VerifierClientException(e.getMessage());
-    }
+    return await(verifyProofAsync(request));
   }
 
   public void verifyProof(
       SignedVerifyProofRequest request,
       AsyncListener<SignedVerifyProofResponse, VerifierClientException> listener) {
-    Futures.addCallback(
-        stub.verifyProof(adapt(request)),
-        new FutureCallback<>() {
-          @Override
-          public void onFailure(@NotNull Throwable throwable) {
-            if (throwable instanceof StatusRuntimeException) {
-              listener.onError(exceptionFromStatus((StatusRuntimeException) throwable));
-
-            } else {
-              listener.onError(new VerifierClientException(throwable.getMessage()));
-            }
-          }
+    listen(verifyProofAsync(request), listener);
+  }
 
-          @Override
-          public void onSuccess(@Nullable VerifyProofResponse verifyProofResponse) {
-            if (verifyProofResponse != null) listener.onComplete(adapt(verifyProofResponse));
-          }
-        },
-        newCachedThreadPool());
+  public CompletableFuture<SignedVerifyProofResponse> verifyProofAsync(
+      SignedVerifyProofRequest request) {
+    return call(stub(VERIFY_TIMEOUT).verifyProof(adapt(request)), VerifierAdapter::adapt);
   }
 }
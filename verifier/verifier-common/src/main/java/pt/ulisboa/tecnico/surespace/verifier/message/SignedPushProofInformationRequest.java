@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2020 The SureThing project
+ * @author João Tiago <joao.marques.tiago@tecnico.ulisboa.pt>
+ * http://surething.tecnico.ulisboa.pt/en/
+ */
+
+package pt.ulisboa.tecnico.surespace.verifier.message;
+
+import pt.ulisboa.tecnico.surespace.common.message.Message;
+import pt.ulisboa.tecnico.surespace.common.message.SignedMessage;
+import pt.ulisboa.tecnico.surespace.common.signal.Signal;
+
+import java.util.LinkedList;
+
+import static pt.ulisboa.tecnico.surespace.verifier.message.SignedPushProofInformationRequest.PushProofInformationRequest;
+
+public final class SignedPushProofInformationRequest
+    extends SignedMessage<PushProofInformationRequest> {
+  private static final long serialVersionUID = 3390718546457416519L;
+
+  private SignedPushProofInformationRequest() {}
+
+  public static SignedPushProofInformationRequestBuilder newBuilder() {
+    return new SignedPushProofInformationRequestBuilder();
+  }
+
+  @Override
+  public SignedPushProofInformationRequest clone() {
+    return this;
+  }
+
+  public static final class PushProofInformationRequest
+      extends Message<PushProofInformationRequest> {
+    private static final long serialVersionUID = -1519475186512307262L;
+
+    private String identifier;
+    private LinkedList<Signal> signals;
+
+    private PushProofInformationRequest() {}
+
+    public static PushProofInformationRequestBuilder newBuilder() {
+      return new PushProofInformationRequestBuilder();
+    }
+
+    @Override
+    public PushProofInformationRequest clone() {
+      return this;
+    }
+
+    public String getIdentifier() {
+      return identifier;
+    }
+
+    private void setIdentifier(String identifier) {
+      this.identifier = identifier;
+    }
+
+    public LinkedList<Signal> getSignals() {
+      LinkedList<Signal> signals = new LinkedList<>();
+      for (Signal signal : this.signals) signals.add(signal.clone());
+      return signals;
+    }
+
+    private void setSignals(LinkedList<Signal> signals) {
+      this.signals = new LinkedList<>();
+      for (Signal signal : signals) this.signals.add(signal.clone());
+    }
+
+    public static final class PushProofInformationRequestBuilder
+        extends MessageBuilder<PushProofInformationRequestBuilder, PushProofInformationRequest> {
+      public PushProofInformationRequestBuilder() {
+        super(new PushProofInformationRequest());
+      }
+
+      public PushProofInformationRequestBuilder setIdentifier(String identifier) {
+        message.setIdentifier(identifier);
+        return this;
+      }
+
+      public PushProofInformationRequestBuilder setSignals(LinkedList<Signal> signals) {
+        message.setSignals(signals);
+        return this;
+      }
+    }
+  }
+
+  public static final class SignedPushProofInformationRequestBuilder
+      extends SignedMessageBuilder<
+          SignedPushProofInformationRequestBuilder,
+          PushProofInformationRequest,
+          SignedPushProofInformationRequest> {
+    public SignedPushProofInformationRequestBuilder() {
+      super(new SignedPushProofInformationRequest());
+    }
+  }
+}
@@ -8,6 +8,7 @@ package pt.ulisboa.tecnico.surespace.verifier.grpc;
 
 import com.google.protobuf.ByteString;
 import pt.ulisboa.tecnico.surespace.common.domain.Object;
+import pt.ulisboa.tecnico.surespace.verifier.message.SignedPushProofInformationRequest;
 import pt.ulisboa.tecnico.surespace.verifier.message.SignedVerifyProofRequest;
 import pt.ulisboa.tecnico.surespace.verifier.message.SignedVerifyProofResponse;
 
@@ -35,4 +36,17 @@ public final class VerifierAdapter {
     return Object.fromBytes(
         request.getSignedContent().toByteArray(), SignedVerifyProofResponse.class);
   }
+
+  // PushProofInformation
+
+  public static PushProofInformationRequest adapt(SignedPushProofInformationRequest request) {
+    return PushProofInformationRequest.newBuilder()
+        .setSignedContent(ByteString.copyFrom(request.getBytes()))
+        .build();
+  }
+
+  public static SignedPushProofInformationRequest adapt(PushProofInformationRequest request) {
+    return Object.fromBytes(
+        request.getSignedContent().toByteArray(), SignedPushProofInformationRequest.class);
+  }
 }
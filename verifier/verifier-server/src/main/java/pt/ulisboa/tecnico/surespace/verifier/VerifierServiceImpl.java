@@ -12,6 +12,8 @@ import io.grpc.stub.StreamObserver;
 import pt.ulisboa.tecnico.surespace.verifier.domain.Verifier;
 import pt.ulisboa.tecnico.surespace.verifier.grpc.PingRequest;
 import pt.ulisboa.tecnico.surespace.verifier.grpc.PingResponse;
+import pt.ulisboa.tecnico.surespace.verifier.grpc.PushProofInformationRequest;
+import pt.ulisboa.tecnico.surespace.verifier.grpc.PushProofInformationResponse;
 import pt.ulisboa.tecnico.surespace.verifier.grpc.VerifierServiceGrpc.VerifierServiceImplBase;
 import pt.ulisboa.tecnico.surespace.verifier.grpc.VerifyProofRequest;
 import pt.ulisboa.tecnico.surespace.verifier.grpc.VerifyProofResponse;
@@ -36,6 +38,23 @@ public final class VerifierServiceImpl extends VerifierServiceImplBase {
     responseObserver.onCompleted();
   }
 
+  @Override
+  public void pushProofInformation(
+      PushProofInformationRequest request,
+      StreamObserver<PushProofInformationResponse> responseObserver) {
+    verifier.managerLog().info("[+] Handling pushProofInformation.");
+
+    try {
+      verifier.pushProofInformation(adapt(request));
+      responseObserver.onNext(PushProofInformationResponse.getDefaultInstance());
+      responseObserver.onCompleted();
+
+    } catch (Exception e) {
+      e.printStackTrace();
+      responseObserver.onError(exceptionFromDomain(e));
+    }
+  }
+
   @Override
   public void verifyProof(
       VerifyProofRequest request, StreamObserver<VerifyProofResponse> responseObserver) {
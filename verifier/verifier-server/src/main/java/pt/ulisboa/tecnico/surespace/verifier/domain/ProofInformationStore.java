@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2020 The SureThing project
+ * @author João Tiago <joao.marques.tiago@tecnico.ulisboa.pt>
+ * http://surething.tecnico.ulisboa.pt/en/
+ */
+
+package pt.ulisboa.tecnico.surespace.verifier.domain;
+
+import pt.ulisboa.tecnico.surespace.common.signal.Signal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Bounded store of the trusted signals pushed by the orchestrator, indexed by proof identifier.
+ * Entries expire after a fixed time-to-live and, once the capacity is reached, the oldest entry is
+ * evicted to make room for the newest one.
+ */
+public final class ProofInformationStore {
+  private final int capacity;
+  private final LinkedHashMap<String, StoreEntry> entries;
+  private final long timeToLive;
+
+  public ProofInformationStore(int capacity, long timeToLive) {
+    if (capacity <= 0)
+      throw new IllegalArgumentException("Invalid capacity '" + capacity + "': must be positive");
+
+    if (timeToLive <= 0)
+      throw new IllegalArgumentException("Invalid TTL '" + timeToLive + "': must be positive");
+
+    this.capacity = capacity;
+    this.timeToLive = timeToLive;
+    this.entries =
+        new LinkedHashMap<>() {
+          private static final long serialVersionUID = 4093722129541186473L;
+
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, StoreEntry> eldest) {
+            return size() > ProofInformationStore.this.capacity;
+          }
+        };
+  }
+
+  private void expire(long now) {
+    // Entries are kept in insertion order, hence expiration order.
+    Iterator<StoreEntry> iterator = entries.values().iterator();
+    while (iterator.hasNext() && iterator.next().isExpired(now)) iterator.remove();
+  }
+
+  public synchronized void put(String identifier, LinkedList<Signal> signals) {
+    long now = System.currentTimeMillis();
+    expire(now);
+
+    // Re-inserting moves the entry to the tail, keeping the map ordered by expiration.
+    entries.remove(identifier);
+    entries.put(identifier, new StoreEntry(signals, now + timeToLive));
+  }
+
+  public synchronized int size() {
+    expire(System.currentTimeMillis());
+    return entries.size();
+  }
+
+  /**
+   * Removes and returns the signals stored for a proof identifier.
+   *
+   * @return the signals, or <code>null</code> if there is no valid entry for the identifier.
+   */
+  public synchronized LinkedList<Signal> take(String identifier) {
+    long now = System.currentTimeMillis();
+    expire(now);
+
+    StoreEntry entry = entries.remove(identifier);
+    return entry == null ? null : entry.getSignals();
+  }
+
+  private static final class StoreEntry {
+    private final long expiration;
+    private final LinkedList<Signal> signals;
+
+    private StoreEntry(LinkedList<Signal> signals, long expiration) {
+      this.signals = signals;
+      this.expiration = expiration;
+    }
+
+    private LinkedList<Signal> getSignals() {
+      return signals;
+    }
+
+    private boolean isExpired(long now) {
+      return now >= expiration;
+    }
+  }
+}
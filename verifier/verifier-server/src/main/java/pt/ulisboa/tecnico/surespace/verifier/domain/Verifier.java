@@ -21,6 +21,7 @@ import pt.ulisboa.tecnico.surespace.common.message.SignedMessageValidator;
 import pt.ulisboa.tecnico.surespace.common.message.exception.MessageValidatorException;
 import pt.ulisboa.tecnico.surespace.common.proof.LocationProof;
 import pt.ulisboa.tecnico.surespace.common.proof.LocationProofProperties;
+import pt.ulisboa.tecnico.surespace.common.signal.Signal;
 import pt.ulisboa.tecnico.surespace.orchestrator.SignedRequestProofInformationRequest;
 import pt.ulisboa.tecnico.surespace.orchestrator.SignedRequestProofInformationRequest.RequestProofInformationRequest;
 import pt.ulisboa.tecnico.surespace.orchestrator.SignedRequestProofInformationResponse;
@@ -34,16 +35,20 @@ import pt.ulisboa.tecnico.surespace.verifier.manager.VerifierPropertyManager;
 import pt.ulisboa.tecnico.surespace.verifier.matlab.LocationProofView;
 import pt.ulisboa.tecnico.surespace.verifier.matlab.Wrapper;
 import pt.ulisboa.tecnico.surespace.verifier.matlab.exception.WrapperException;
+import pt.ulisboa.tecnico.surespace.verifier.message.SignedPushProofInformationRequest;
+import pt.ulisboa.tecnico.surespace.verifier.message.SignedPushProofInformationRequest.PushProofInformationRequest;
 import pt.ulisboa.tecnico.surespace.verifier.message.SignedVerifyProofRequest;
 import pt.ulisboa.tecnico.surespace.verifier.message.SignedVerifyProofResponse;
 import pt.ulisboa.tecnico.surespace.verifier.message.SignedVerifyProofResponse.VerifyProofResponse;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.LinkedList;
 
 public final class Verifier implements AutoCloseable {
   private final VerifierManager manager;
   private final Wrapper matlab;
+  private final ProofInformationStore proofInformation;
   private final Server server;
 
   public Verifier(ServerInitializer init)
@@ -63,6 +68,11 @@ public final class Verifier implements AutoCloseable {
     matlab = new Wrapper();
     managerLog().info("[+] Started MATLAB wrapper.");
 
+    // Create the store for the proof information pushed by the orchestrator.
+    int pushCapacity = managerProperty().get("verifier", "push", "capacity").asInt();
+    long pushTimeToLive = managerProperty().get("verifier", "push", "ttl").asLong();
+    proofInformation = new ProofInformationStore(pushCapacity, pushTimeToLive);
+
     // Get port from properties.
     InetSocketAddress address = new InetSocketAddress(init.getHost(), init.getPort());
     VerifierServiceImpl service = new VerifierServiceImpl(this);
@@ -95,46 +105,34 @@ public final class Verifier implements AutoCloseable {
     return manager.property();
   }
 
-  public void start(ServerInitializer init) throws VerifierException {
-    try {
-      server.start();
-      managerLog().info("[+] Started server at %s:%d.", init.getHost(), init.getPort());
-
-    } catch (IOException e) {
-      e.printStackTrace();
-      throw new VerifierException(e.getMessage());
-    }
-  }
-
-  public SignedVerifyProofResponse verifyProof(SignedVerifyProofRequest signedRequest)
-      throws MessageValidatorException, EntityManagerException, KeyStoreManagerException,
-          OrchestratorClientException {
-    final Entity verifier = managerEntity().current();
-    final Entity orchestrator = manager.getOrchestrator();
+  public void pushProofInformation(SignedPushProofInformationRequest signedRequest)
+      throws EntityManagerException, MessageValidatorException, KeyStoreManagerException {
+    PushProofInformationRequest request = signedRequest.getMessage();
 
-    // Basic validation.
     new MessageValidator(manager)
-        .init(signedRequest.getMessage())
-        .assertReceiver(verifier)
+        .init(request)
+        .assertSender(manager.getOrchestrator(request.getIdentifier()))
+        .assertReceiver(managerEntity().current())
         .assertCertificateValid()
         .assertNonceValid()
         .validate();
 
     new SignedMessageValidator(manager).init(signedRequest).assertSignature().validate();
 
-    // Get proof identifier.
-    LocationProofProperties properties =
-        signedRequest
-            .getMessage()
-            .getLocationProof()
-            .getAuthorization()
-            .getMessage()
-            .getProperties();
+    proofInformation.put(request.getIdentifier(), request.getSignals());
+    managerLog().info("[+] Stored information of proof '%s'.", request.getIdentifier());
+  }
+
+  private LinkedList<Signal> requestProofInformation(String identifier)
+      throws EntityManagerException, KeyStoreManagerException, OrchestratorClientException,
+          MessageValidatorException {
+    final Entity verifier = managerEntity().current();
+    final Entity orchestrator = manager.getOrchestrator(identifier);
 
     // Request proof information to the orchestrator.
     RequestProofInformationRequest orchestratorRequest =
         RequestProofInformationRequest.newBuilder()
-            .setIdentifier(properties.getIdentifier())
+            .setIdentifier(identifier)
             .setSender(verifier)
             .setReceiver(orchestrator)
             .setCertificateBytes(managerKeyStore())
@@ -164,15 +162,57 @@ public final class Verifier implements AutoCloseable {
         .assertSignature()
         .validate();
 
+    return orchestratorSignedResponse.getMessage().getSignals();
+  }
+
+  public void start(ServerInitializer init) throws VerifierException {
+    try {
+      server.start();
+      managerLog().info("[+] Started server at %s:%d.", init.getHost(), init.getPort());
+
+    } catch (IOException e) {
+      e.printStackTrace();
+      throw new VerifierException(e.getMessage());
+    }
+  }
+
+  public SignedVerifyProofResponse verifyProof(SignedVerifyProofRequest signedRequest)
+      throws MessageValidatorException, EntityManagerException, KeyStoreManagerException,
+          OrchestratorClientException {
+    final Entity verifier = managerEntity().current();
+
+    // Basic validation.
+    new MessageValidator(manager)
+        .init(signedRequest.getMessage())
+        .assertReceiver(verifier)
+        .assertCertificateValid()
+        .assertNonceValid()
+        .validate();
+
+    new SignedMessageValidator(manager).init(signedRequest).assertSignature().validate();
+
+    // Get proof identifier.
+    LocationProofProperties properties =
+        signedRequest
+            .getMessage()
+            .getLocationProof()
+            .getAuthorization()
+            .getMessage()
+            .getProperties();
+
+    // Use the proof information pushed by the orchestrator, if any, or request it otherwise.
+    LinkedList<Signal> trustedSignals = proofInformation.take(properties.getIdentifier());
+    if (trustedSignals == null) {
+      managerLog().info("[+] Requesting information of proof '%s'.", properties.getIdentifier());
+      trustedSignals = requestProofInformation(properties.getIdentifier());
+    }
+
     boolean proofAccepted = false;
     try {
       // Init wrapper with current location proof.
       LocationProof locationProof = signedRequest.getMessage().getLocationProof();
       matlab.locationProofInit(
-          new LocationProofView(
-              locationProof,
-              orchestratorSignedResponse.getMessage().getSignals(),
-              locationProof.getSignals()));
+          new LocationProofView(locationProof, trustedSignals, locationProof.getSignals()));
 
       // Write signals to files.
       matlab.locationProofWriteToDirectory();
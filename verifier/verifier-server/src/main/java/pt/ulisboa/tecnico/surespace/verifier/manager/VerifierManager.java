@@ -26,7 +26,6 @@ public final class VerifierManager implements GlobalManagerInterface {
   private final VerifierKeyStoreManager keyStoreManager;
   private final VerifierLogManager logManager;
   private final NonceManager nonceManager;
-  private final Entity orchestrator;
   private final OrchestratorClient orchestratorClient;
   private final VerifierPropertyManager propertyManager;
 
@@ -47,13 +46,17 @@ public final class VerifierManager implements GlobalManagerInterface {
     String path = "surespace://rca/vca/" + initializer.getId();
     entityManager.current(new Entity(name, path));
 
-    // Get a client for Orchestrator 1.
+    // Get a client for all Orchestrator instances.
     String orchestratorHost = propertyManager.get("orchestrator", "host").asString();
     int orchestratorPort = propertyManager.get("orchestrator", "port").asInt();
-    orchestratorClient = new OrchestratorClient(orchestratorHost, orchestratorPort);
+    int orchestratorInstances = propertyManager.get("orchestrator", "instances").asInt();
+    orchestratorClient =
+        new OrchestratorClient(orchestratorHost, orchestratorPort, orchestratorInstances);
 
-    String orchestratorPath = propertyManager.get("orchestrator", "path").asString();
-    orchestrator = entityManager.getByPath(orchestratorPath);
+    // Every instance signs the proofs it owns as itself.
+    for (int id = 1; id <= orchestratorInstances; id++) {
+      entityManager.register(new Entity("Orchestrator " + id, OrchestratorClient.entityPath(id)));
+    }
 
     this.nonceManager = new NonceManager();
     this.keyStoreManager = new VerifierKeyStoreManager(this);
@@ -64,8 +67,10 @@ public final class VerifierManager implements GlobalManagerInterface {
     return entityManager;
   }
 
-  public Entity getOrchestrator() {
-    return orchestrator.clone();
+  /** @return the orchestrator instance that issued the authorization of the given proof. */
+  public Entity getOrchestrator(String identifier) throws EntityManagerException {
+    int instance = orchestratorClient.instanceOf(identifier);
+    return entityManager.getByPath(OrchestratorClient.entityPath(instance));
   }
 
   public OrchestratorClient getOrchestratorClient() {